@@ -13,6 +13,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import com.carrotsearch.hppcrt.maps.IntCounter;
 import com.carrotsearch.hppcrt.maps.IntIntHashMap;
 
 public class BigramCountingBase
@@ -50,6 +51,24 @@ public class BigramCountingBase
         return count;
     }
 
+    public int hppcCounter()
+    {
+        final char[] CHARS = this.data;
+
+        // Same counting with a dedicated counter: a single probe per increment.
+        final IntCounter counter = new IntCounter();
+
+        int count = 0;
+
+        for (int i = 0; i < CHARS.length - 1; i++)
+        {
+            final int bigram = CHARS[i] << 16 | CHARS[i + 1];
+            count += counter.increment(bigram);
+        }
+
+        return count;
+    }
+
     public int fastutilOpenHashMap()
     {
         final char[] CHARS = this.data;
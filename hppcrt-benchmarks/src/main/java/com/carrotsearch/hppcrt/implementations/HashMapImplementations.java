@@ -14,6 +14,15 @@ public enum HashMapImplementations
         }
     },
 
+    HPPCRT_SWISS_INT_INT
+    {
+        @Override
+        public MapImplementation<?> getInstance(final int size, final float loadFactor)
+        {
+            return new HppcrtSwissIntIntMap(size, loadFactor);
+        }
+    },
+
     HPPC_INT_INT {
         @Override
         public MapImplementation<?> getInstance(final int size, final float loadFactor) {
@@ -77,6 +86,21 @@ public enum HashMapImplementations
         }
     },
 
+    HPPCRT_SWISS_OBJ_INT
+    {
+        @Override
+        public MapImplementation<?> getInstance(final int size, final float loadFactor)
+        {
+            return new HppcrtSwissObjectIntMap(size, loadFactor);
+        }
+
+        @Override
+        public boolean isHashQualityApplicable() {
+
+            return true;
+        }
+    },
+
 
     HPPC_OBJ_INT {
         @Override
@@ -0,0 +1,124 @@
+package com.carrotsearch.hppcrt.implementations;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import com.carrotsearch.hppcrt.Util;
+import com.carrotsearch.hppcrt.XorShift128P;
+import com.carrotsearch.hppcrt.maps.IntIntSwissHashMap;
+
+public class HppcrtSwissIntIntMap extends MapImplementation<IntIntSwissHashMap>
+{
+    private int[] insertKeys;
+    private int[] containsKeys;
+    private int[] removedKeys;
+    private int[] insertValues;
+
+    protected HppcrtSwissIntIntMap(final int size, final float loadFactor)
+    {
+        super(new IntIntSwissHashMap(size, loadFactor));
+    }
+
+    /**
+     * Setup
+     */
+    @Override
+    public void setup(final int[] keysToInsert, final MapImplementation.HASH_QUALITY hashQ, final int[] keysForContainsQuery, final int[] keysForRemovalQuery) {
+
+        final Random prng = new XorShift128P(0x122335577L);
+
+        //make a full copy
+        this.insertKeys = Arrays.copyOf(keysToInsert, keysToInsert.length);
+        this.containsKeys = Arrays.copyOf(keysForContainsQuery, keysForContainsQuery.length);
+        this.removedKeys = Arrays.copyOf(keysForRemovalQuery, keysForRemovalQuery.length);
+
+        this.insertValues = new int[keysToInsert.length];
+
+        for (int i = 0; i < this.insertValues.length; i++) {
+
+            this.insertValues[i] = prng.nextInt();
+        }
+    }
+
+    @Override
+    public void clear() {
+        this.instance.clear();
+    }
+
+    @Override
+    public int size() {
+
+        return this.instance.size();
+    }
+
+    @Override
+    public int benchPutAll() {
+
+        final IntIntSwissHashMap instance = this.instance;
+        final int[] values = this.insertValues;
+
+        int count = 0;
+
+        final int[] keys = this.insertKeys;
+
+        for (int i = 0; i < keys.length; i++) {
+
+            count += instance.put(keys[i], values[i]);
+        }
+
+        return count;
+    }
+
+    @Override
+    public int benchContainKeys()
+    {
+        final IntIntSwissHashMap instance = this.instance;
+
+        int count = 0;
+
+        final int[] keys = this.containsKeys;
+
+        for (int i = 0; i < keys.length; i++) {
+
+            count += instance.containsKey(keys[i]) ? 1 : 0;
+        }
+
+        return count;
+    }
+
+    @Override
+    public int benchRemoveKeys() {
+
+        final IntIntSwissHashMap instance = this.instance;
+
+        int count = 0;
+
+        final int[] keys = this.removedKeys;
+
+        for (int i = 0; i < keys.length; i++) {
+
+            count += instance.remove(keys[i]);
+        }
+
+        return count;
+    }
+
+    @Override
+    public void setCopyOfInstance(final MapImplementation<?> toCloneFrom) {
+
+        this.instance = ((IntIntSwissHashMap) toCloneFrom.instance).clone();
+
+    }
+
+    @Override
+    public void reshuffleInsertedKeys(final Random rand) {
+        Util.shuffle(this.insertKeys, rand);
+
+    }
+
+    @Override
+    public void reshuffleInsertedValues(final Random rand) {
+        Util.shuffle(this.insertValues, rand);
+
+    }
+}
\ No newline at end of file
@@ -25,6 +25,7 @@ public class BenchmarkBigramCounting
     public static enum Library
     {
         HPPC,
+        HPPC_COUNTER,
         FASTUTIL_OPEN,
         FASTUTIL_LINKED,
         JAVA_NAIVE,
@@ -48,6 +49,9 @@ public class BenchmarkBigramCounting
             case HPPC:
                 count += this.bc.hppc();
                 break;
+            case HPPC_COUNTER:
+                count += this.bc.hppcCounter();
+                break;
             case FASTUTIL_LINKED:
                 this.bc.fastutilLinkedOpenHashMap();
                 break;
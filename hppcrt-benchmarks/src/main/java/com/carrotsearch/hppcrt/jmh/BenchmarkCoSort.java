@@ -0,0 +1,105 @@
+package com.carrotsearch.hppcrt.jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.RunnerException;
+
+import com.carrotsearch.hppcrt.BenchmarkSuiteRunner;
+import com.carrotsearch.hppcrt.XorShift128P;
+import com.carrotsearch.hppcrt.sorting.IndirectComparator;
+import com.carrotsearch.hppcrt.sorting.IndirectSort;
+import com.carrotsearch.hppcrt.sorting.IntFloatSort;
+
+/**
+ * Benchmark the sorting of parallel int[] ids + float[] scores columns by ids,
+ * by IndirectSort then permutation of both columns, or by co-sorting them with IntFloatSort.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class BenchmarkCoSort
+{
+    @Param("1000000")
+    public int size;
+
+    @Param
+    public Algorithm algorithm;
+
+    public static enum Algorithm
+    {
+        INDIRECT_SORT_AND_PERMUTE,
+        CO_SORT
+    }
+
+    private int[] idsData;
+    private float[] scoresData;
+
+    private int[] ids;
+    private float[] scores;
+
+    private int[] order;
+    private int[] permutedIds;
+    private float[] permutedScores;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        final Random prng = new XorShift128P(0x11223344);
+
+        this.idsData = new int[this.size];
+        this.scoresData = new float[this.size];
+
+        for (int i = 0; i < this.size; i++)
+        {
+            this.idsData[i] = prng.nextInt();
+            this.scoresData[i] = prng.nextFloat();
+        }
+
+        this.ids = new int[this.size];
+        this.scores = new float[this.size];
+
+        this.order = new int[this.size];
+        this.permutedIds = new int[this.size];
+        this.permutedScores = new float[this.size];
+    }
+
+    @Benchmark
+    public long timeSort()
+    {
+        System.arraycopy(this.idsData, 0, this.ids, 0, this.size);
+        System.arraycopy(this.scoresData, 0, this.scores, 0, this.size);
+
+        switch (this.algorithm)
+        {
+            case INDIRECT_SORT_AND_PERMUTE:
+                IndirectSort.quicksort(0, this.size, new IndirectComparator.AscendingIntComparator(this.ids), this.order);
+
+                for (int i = 0; i < this.size; i++)
+                {
+                    this.permutedIds[i] = this.ids[this.order[i]];
+                    this.permutedScores[i] = this.scores[this.order[i]];
+                }
+
+                return this.permutedIds[this.size >> 1] + (long) this.permutedScores[this.size >> 1];
+
+            case CO_SORT:
+                IntFloatSort.quicksort(this.ids, this.scores);
+
+                return this.ids[this.size >> 1] + (long) this.scores[this.size >> 1];
+
+            default:
+                return 0L;
+        }
+    }
+
+    public static void main(final String[] args) throws RunnerException
+    {
+        BenchmarkSuiteRunner.runJmhBasicBenchmarkWithCommandLine(BenchmarkCoSort.class, args, 500, 1000);
+    }
+}
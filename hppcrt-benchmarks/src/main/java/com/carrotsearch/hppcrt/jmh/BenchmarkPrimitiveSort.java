@@ -0,0 +1,230 @@
+package com.carrotsearch.hppcrt.jmh;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.RunnerException;
+
+import com.carrotsearch.hppcrt.BenchmarkSuiteRunner;
+import com.carrotsearch.hppcrt.XorShift128P;
+import com.carrotsearch.hppcrt.sorting.DoubleSort;
+import com.carrotsearch.hppcrt.sorting.IntSort;
+import com.carrotsearch.hppcrt.sorting.LongSort;
+
+/**
+ * Benchmark the sorting of primitive arrays by java.util.Arrays and the KTypeSort algorithms,
+ * against the selection of the median only.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class BenchmarkPrimitiveSort
+{
+    @Param("1000000")
+    public int size;
+
+    @Param
+    public ElementType type;
+
+    @Param
+    public Algorithm algorithm;
+
+    @Param
+    public Distribution distribution;
+
+    public static enum ElementType
+    {
+        INT,
+        LONG,
+        DOUBLE
+    }
+
+    public static enum Algorithm
+    {
+        JAVA_ARRAYS,
+        QUICKSORT,
+        PARALLEL_QUICKSORT,
+        RADIXSORT,
+        ADAPTIVE_SORT,
+        /**
+         * Only select the median returned by all the algorithms
+         */
+        SELECT_MEDIAN
+    }
+
+    public static enum Distribution
+    {
+        RANDOM,
+        /**
+         * Ascending, but for a random tail of 1% of the elements
+         */
+        NEARLY_SORTED
+    }
+
+    private int[] intData;
+    private int[] intTable;
+    private int[] intBuffer;
+
+    private long[] longData;
+    private long[] longTable;
+    private long[] longBuffer;
+
+    private double[] doubleData;
+    private double[] doubleTable;
+    private double[] doubleBuffer;
+
+    private ExecutorService executor;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        final Random prng = new XorShift128P(0x11223344);
+
+        this.intData = new int[this.size];
+        this.longData = new long[this.size];
+        this.doubleData = new double[this.size];
+
+        for (int i = 0; i < this.size; i++)
+        {
+            this.intData[i] = prng.nextInt();
+            this.longData[i] = prng.nextLong();
+            this.doubleData[i] = prng.nextGaussian() * 1e6;
+        }
+
+        if (this.distribution == Distribution.NEARLY_SORTED)
+        {
+            final int sortedLength = this.size - this.size / 100;
+
+            Arrays.sort(this.intData, 0, sortedLength);
+            Arrays.sort(this.longData, 0, sortedLength);
+            Arrays.sort(this.doubleData, 0, sortedLength);
+        }
+
+        this.intTable = new int[this.size];
+        this.intBuffer = new int[this.size];
+        this.longTable = new long[this.size];
+        this.longBuffer = new long[this.size];
+        this.doubleTable = new double[this.size];
+        this.doubleBuffer = new double[this.size];
+
+        this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        this.executor.shutdown();
+        this.executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public long timeSort()
+    {
+        switch (this.type)
+        {
+            case INT:
+                System.arraycopy(this.intData, 0, this.intTable, 0, this.size);
+
+                switch (this.algorithm)
+                {
+                    case JAVA_ARRAYS:
+                        Arrays.sort(this.intTable);
+                        break;
+                    case QUICKSORT:
+                        IntSort.quicksort(this.intTable);
+                        break;
+                    case PARALLEL_QUICKSORT:
+                        IntSort.parallelQuicksort(this.intTable, this.executor);
+                        break;
+                    case RADIXSORT:
+                        IntSort.radixsort(this.intTable, 0, this.size, this.intBuffer);
+                        break;
+                    case ADAPTIVE_SORT:
+                        IntSort.adaptiveSort(this.intTable, 0, this.size, this.intBuffer);
+                        break;
+                    case SELECT_MEDIAN:
+                        IntSort.select(this.intTable, this.size >> 1);
+                        break;
+                    default:
+                        break;
+                }
+
+                return this.intTable[this.size >> 1];
+
+            case LONG:
+                System.arraycopy(this.longData, 0, this.longTable, 0, this.size);
+
+                switch (this.algorithm)
+                {
+                    case JAVA_ARRAYS:
+                        Arrays.sort(this.longTable);
+                        break;
+                    case QUICKSORT:
+                        LongSort.quicksort(this.longTable);
+                        break;
+                    case PARALLEL_QUICKSORT:
+                        LongSort.parallelQuicksort(this.longTable, this.executor);
+                        break;
+                    case RADIXSORT:
+                        LongSort.radixsort(this.longTable, 0, this.size, this.longBuffer);
+                        break;
+                    case ADAPTIVE_SORT:
+                        LongSort.adaptiveSort(this.longTable, 0, this.size, this.longBuffer);
+                        break;
+                    case SELECT_MEDIAN:
+                        LongSort.select(this.longTable, this.size >> 1);
+                        break;
+                    default:
+                        break;
+                }
+
+                return this.longTable[this.size >> 1];
+
+            case DOUBLE:
+                System.arraycopy(this.doubleData, 0, this.doubleTable, 0, this.size);
+
+                switch (this.algorithm)
+                {
+                    case JAVA_ARRAYS:
+                        Arrays.sort(this.doubleTable);
+                        break;
+                    case QUICKSORT:
+                        DoubleSort.quicksort(this.doubleTable);
+                        break;
+                    case PARALLEL_QUICKSORT:
+                        DoubleSort.parallelQuicksort(this.doubleTable, this.executor);
+                        break;
+                    case RADIXSORT:
+                        DoubleSort.radixsort(this.doubleTable, 0, this.size, this.doubleBuffer);
+                        break;
+                    case ADAPTIVE_SORT:
+                        DoubleSort.adaptiveSort(this.doubleTable, 0, this.size, this.doubleBuffer);
+                        break;
+                    case SELECT_MEDIAN:
+                        DoubleSort.select(this.doubleTable, this.size >> 1);
+                        break;
+                    default:
+                        break;
+                }
+
+                return (long) this.doubleTable[this.size >> 1];
+
+            default:
+                return 0L;
+        }
+    }
+
+    public static void main(final String[] args) throws RunnerException
+    {
+        BenchmarkSuiteRunner.runJmhBasicBenchmarkWithCommandLine(BenchmarkPrimitiveSort.class, args, 500, 1000);
+    }
+}
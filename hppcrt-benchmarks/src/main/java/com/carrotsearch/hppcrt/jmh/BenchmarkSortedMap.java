@@ -0,0 +1,224 @@
+package com.carrotsearch.hppcrt.jmh;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.RunnerException;
+
+import com.carrotsearch.hppcrt.BenchmarkSuiteRunner;
+import com.carrotsearch.hppcrt.maps.IntIntSortedMap;
+import com.carrotsearch.hppcrt.procedures.IntIntProcedure;
+
+/**
+ * Benchmark the B+-tree {@link IntIntSortedMap} against a boxed {@link TreeMap}: random puts, random lookups,
+ * and range scans of about {@link #rangeLength} entries, by {@link IntIntSortedMap#forEach(IntIntProcedure, int, int)}
+ * vs. {@link TreeMap#subMap(Object, Object)}.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class BenchmarkSortedMap
+{
+    @Param({ "10000", "1000000" })
+    public int size;
+
+    /**
+     * Number of lookups / range scans per call
+     */
+    @Param("100000")
+    public int nbQueries;
+
+    /**
+     * Average number of keys of a scanned range
+     */
+    @Param("100")
+    public int rangeLength;
+
+    private IntIntSortedMap hppcrtMap;
+
+    private TreeMap<Integer, Integer> treeMap;
+
+    private int[] keys;
+
+    private int[] queries;
+
+    /**
+     * Keys are spread over [0; size * KEY_SPREAD[.
+     */
+    private static final int KEY_SPREAD = 4;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        final Random prng = new Random(0xdeadbeef);
+
+        this.keys = new int[this.size];
+
+        for (int i = 0; i < this.size; i++) {
+
+            this.keys[i] = prng.nextInt(this.size * BenchmarkSortedMap.KEY_SPREAD);
+        }
+
+        this.hppcrtMap = new IntIntSortedMap(this.size);
+        this.treeMap = new TreeMap<Integer, Integer>();
+
+        for (int i = 0; i < this.size; i++) {
+
+            this.hppcrtMap.put(this.keys[i], i);
+            this.treeMap.put(this.keys[i], i);
+        }
+
+        this.queries = new int[this.nbQueries];
+
+        for (int i = 0; i < this.nbQueries; i++) {
+
+            this.queries[i] = prng.nextInt(this.size * BenchmarkSortedMap.KEY_SPREAD);
+        }
+    }
+
+    /*
+     *
+     */
+    @Benchmark
+    public int timeHppcrtPut()
+    {
+        final IntIntSortedMap map = new IntIntSortedMap();
+        final int[] keys = this.keys;
+
+        for (int i = 0; i < keys.length; i++) {
+
+            map.put(keys[i], i);
+        }
+
+        return map.size();
+    }
+
+    /*
+     *
+     */
+    @Benchmark
+    public int timeTreeMapPut()
+    {
+        final TreeMap<Integer, Integer> map = new TreeMap<Integer, Integer>();
+        final int[] keys = this.keys;
+
+        for (int i = 0; i < keys.length; i++) {
+
+            map.put(keys[i], i);
+        }
+
+        return map.size();
+    }
+
+    /*
+     *
+     */
+    @Benchmark
+    public int timeHppcrtGet()
+    {
+        final IntIntSortedMap map = this.hppcrtMap;
+        final int[] queries = this.queries;
+
+        int sum = 0;
+
+        for (int i = 0; i < queries.length; i++) {
+
+            sum += map.get(queries[i]);
+        }
+
+        return sum;
+    }
+
+    /*
+     *
+     */
+    @Benchmark
+    public int timeTreeMapGet()
+    {
+        final TreeMap<Integer, Integer> map = this.treeMap;
+        final int[] queries = this.queries;
+
+        int sum = 0;
+
+        for (int i = 0; i < queries.length; i++) {
+
+            final Integer value = map.get(queries[i]);
+
+            if (value != null) {
+                sum += value.intValue();
+            }
+        }
+
+        return sum;
+    }
+
+    /*
+     * Sum the values of the ranges.
+     */
+    @Benchmark
+    public int timeHppcrtRangeScan()
+    {
+        final IntIntSortedMap map = this.hppcrtMap;
+        final int[] queries = this.queries;
+        final int rangeWidth = this.rangeLength * BenchmarkSortedMap.KEY_SPREAD;
+
+        final SumProcedure sum = new SumProcedure();
+
+        for (int i = 0; i < queries.length; i++) {
+
+            map.forEach(sum, queries[i], queries[i] + rangeWidth);
+        }
+
+        return sum.sum;
+    }
+
+    /*
+     * Sum the values of the ranges.
+     */
+    @Benchmark
+    public int timeTreeMapRangeScan()
+    {
+        final TreeMap<Integer, Integer> map = this.treeMap;
+        final int[] queries = this.queries;
+        final int rangeWidth = this.rangeLength * BenchmarkSortedMap.KEY_SPREAD;
+
+        int sum = 0;
+
+        for (int i = 0; i < queries.length; i++) {
+
+            for (final Map.Entry<Integer, Integer> entry : map.subMap(queries[i], queries[i] + rangeWidth).entrySet()) {
+
+                sum += entry.getValue().intValue();
+            }
+        }
+
+        return sum;
+    }
+
+    private static final class SumProcedure implements IntIntProcedure
+    {
+        int sum;
+
+        SumProcedure() {
+            //nothing
+        }
+
+        @Override
+        public void apply(final int key, final int value) {
+
+            this.sum += value;
+        }
+    }
+
+    public static void main(final String[] args) throws RunnerException
+    {
+        BenchmarkSuiteRunner.runJmhBasicBenchmarkWithCommandLine(BenchmarkSortedMap.class, args, 1000, 2000);
+    }
+}
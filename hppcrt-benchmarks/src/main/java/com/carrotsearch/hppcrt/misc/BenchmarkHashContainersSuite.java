@@ -4,6 +4,7 @@ import java.util.Arrays;
 
 import com.carrotsearch.hppcrt.BenchmarkSuiteRunner;
 import com.carrotsearch.hppcrt.jmh.BenchmarkHashCollisions;
+import com.carrotsearch.hppcrt.jmh.BenchmarkHashMapBatched;
 import com.carrotsearch.hppcrt.jmh.BenchmarkHashMapContains;
 import com.carrotsearch.hppcrt.jmh.BenchmarkHashMapPut;
 import com.carrotsearch.hppcrt.jmh.BenchmarkHashMapRemove;
@@ -19,6 +20,7 @@ public class BenchmarkHashContainersSuite
             BenchmarkHashMapPut.class,
         BenchmarkHashMapContains.class,
         BenchmarkHashMapRemove.class,
+        BenchmarkHashMapBatched.class,
 
     };
 
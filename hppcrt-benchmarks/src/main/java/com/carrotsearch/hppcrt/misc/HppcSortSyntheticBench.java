@@ -213,11 +213,13 @@ public class HppcSortSyntheticBench
         }
 
         final long[] arrayToSort = arrayToSortReference.clone();
+        final long[] radixBuffer = new long[arrayToSortReference.length];
 
         long tBefore = 0;
         long tAfter = 0;
         double stdSortRunMS = 0.0;
         double quicksortSortRunMS = 0.0;
+        double radixSortRunMS = 0.0;
 
         long dummyValue = 0;
 
@@ -248,10 +250,22 @@ public class HppcSortSyntheticBench
 
             //this is used to defeat optimizations. That way, arrayToSort is forced to be used.
             dummyValue += arrayToSort[arrayToSort.length % 11];
+
+            //reinit the sort array
+            System.arraycopy(arrayToSortReference, 0, arrayToSort, 0, arrayToSortReference.length);
+
+            tBefore = System.nanoTime();
+            LongSort.radixsort(arrayToSort, 0, arrayToSort.length, radixBuffer);
+            tAfter = System.nanoTime();
+
+            radixSortRunMS = (tAfter - tBefore) / 1e6;
+
+            //this is used to defeat optimizations. That way, arrayToSort is forced to be used.
+            dummyValue += arrayToSort[arrayToSort.length % 13];
         }
 
-        System.out.println(String.format(">>>> BENCH: Sorting %d elements of kind (%s), java.util.Arrays: %f ms, HPPC: %f ms, (dummy = %d)",
-                arrayToSort.length, "long-" + benchType, stdSortRunMS, quicksortSortRunMS, dummyValue));
+        System.out.println(String.format(">>>> BENCH: Sorting %d elements of kind (%s), java.util.Arrays: %f ms, HPPC: %f ms, HPPC radix: %f ms, (dummy = %d)",
+                arrayToSort.length, "long-" + benchType, stdSortRunMS, quicksortSortRunMS, radixSortRunMS, dummyValue));
     }
 
     private void runBenchTypeDouble(final String benchType, final int nbwarmupRuns, final ComparableLong[] inputArray)
@@ -265,11 +279,13 @@ public class HppcSortSyntheticBench
         }
 
         final double[] arrayToSort = arrayToSortReference.clone();
+        final double[] radixBuffer = new double[arrayToSortReference.length];
 
         long tBefore = 0;
         long tAfter = 0;
         double stdSortRunMS = 0.0;
         double quicksortSortRunMS = 0.0;
+        double radixSortRunMS = 0.0;
 
         long dummyValue = 0;
 
@@ -300,10 +316,22 @@ public class HppcSortSyntheticBench
 
             //this is used to defeat optimizations. That way, arrayToSort is forced to be used.
             dummyValue += arrayToSort[arrayToSort.length % 11];
+
+            //reinit the sort array
+            System.arraycopy(arrayToSortReference, 0, arrayToSort, 0, arrayToSortReference.length);
+
+            tBefore = System.nanoTime();
+            DoubleSort.radixsort(arrayToSort, 0, arrayToSort.length, radixBuffer);
+            tAfter = System.nanoTime();
+
+            radixSortRunMS = (tAfter - tBefore) / 1e6;
+
+            //this is used to defeat optimizations. That way, arrayToSort is forced to be used.
+            dummyValue += arrayToSort[arrayToSort.length % 13];
         }
 
-        System.out.println(String.format(">>>> BENCH: Sorting %d elements of kind (%s), java.util.Arrays: %f ms, HPPC: %f ms, (dummy = %d)",
-                arrayToSort.length, "double-" + benchType, stdSortRunMS, quicksortSortRunMS, dummyValue));
+        System.out.println(String.format(">>>> BENCH: Sorting %d elements of kind (%s), java.util.Arrays: %f ms, HPPC: %f ms, HPPC radix: %f ms, (dummy = %d)",
+                arrayToSort.length, "double-" + benchType, stdSortRunMS, quicksortSortRunMS, radixSortRunMS, dummyValue));
     }
 
     /**
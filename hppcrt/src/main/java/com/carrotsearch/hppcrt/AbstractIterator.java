@@ -51,8 +51,9 @@ public abstract class AbstractIterator<E> implements Iterator<E>
         //the hidden iterator automatically when exiting the fully iterated for-each.
         if (this.state == AbstractIterator.AT_END && this.iteratorPool != null && !this.isFree)
         {
-            this.iteratorPool.release(this);
+            //flag as free before releasing: once in the pool, the iterator may be borrowed again at once.
             this.isFree = true;
+            this.iteratorPool.release(this);
         }
 
         return (this.state == AbstractIterator.CACHED);
@@ -144,8 +145,8 @@ public abstract class AbstractIterator<E> implements Iterator<E>
 
         if (this.iteratorPool != null && !this.isFree)
         {
-            this.iteratorPool.release(this);
             this.isFree = true;
+            this.iteratorPool.release(this);
         }
     }
 }
@@ -0,0 +1,937 @@
+package com.carrotsearch.hppcrt;
+
+import com.carrotsearch.hppcrt.cursors.IntCursor;
+import com.carrotsearch.hppcrt.predicates.IntPredicate;
+import com.carrotsearch.hppcrt.procedures.IntProcedure;
+
+/**
+ * A growable set of bits indexed by non-negative <code>int</code>s, as a plain <code>long[]</code>:
+ * bit <code>index</code> is bit <code>index % 64</code> of the word <code>bits[index / 64]</code>.
+ * <p>
+ * Unlike {@link java.util.BitSet}, the words are public and the bulk operations, the cardinality computations
+ * of {@link #intersectionCount(BitSet, BitSet)} and al. by {@link BitUtil}, work on the words in use only,
+ * see {@link #wlen}. Use {@link LongBitSet} for more than 2<sup>31</sup> bits.
+ * </p>
+ * <p>
+ * {@link #asIntLookupContainer()} views the indices of the set bits as an {@link IntLookupContainer}.
+ * </p>
+ */
+public class BitSet implements Cloneable
+{
+    /**
+     * Default number of bits of a new set.
+     */
+    public static final int DEFAULT_NUM_BITS = 64;
+
+    /**
+     * Internal representation of bits in this bit set.
+     */
+    public long[] bits;
+
+    /**
+     * The number of words (longs) used in the {@link #bits} array, all the others being zero.
+     */
+    public int wlen;
+
+    /**
+     * Lazily created view of the set bits.
+     */
+    private IntView view;
+
+    /**
+     * Create a set of {@link #DEFAULT_NUM_BITS} bits, all clear.
+     */
+    public BitSet() {
+
+        this(BitSet.DEFAULT_NUM_BITS);
+    }
+
+    /**
+     * Create a set able to hold bits of indices up to numBits - 1 without growing, all clear.
+     */
+    public BitSet(final int numBits) {
+
+        this.bits = BitSet.allocate(BitSet.wordsFor(numBits), 0, null);
+    }
+
+    /**
+     * Create a set viewing the first numWords words of bits: they are not copied.
+     */
+    public BitSet(final long[] bits, final int numWords) {
+
+        this.bits = bits;
+        this.wlen = numWords;
+    }
+
+    /**
+     * @return the number of bits the set can hold without growing.
+     */
+    public long capacity() {
+
+        return (long) this.bits.length << 6;
+    }
+
+    /**
+     * Grow the set to hold bits of indices up to numBits - 1 without growing again.
+     */
+    public void ensureCapacity(final int numBits) {
+
+        ensureCapacityWords(BitSet.wordsFor(numBits));
+    }
+
+    /**
+     * @return the number of set bits.
+     */
+    public long cardinality() {
+
+        return BitUtil.pop_array(this.bits, 0, this.wlen);
+    }
+
+    /**
+     * @return the index of the highest set bit + 1, or 0 if no bit is set.
+     */
+    public int length() {
+
+        trimTrailingZeros();
+
+        if (this.wlen == 0) {
+
+            return 0;
+        }
+
+        return (this.wlen << 6) - Long.numberOfLeadingZeros(this.bits[this.wlen - 1]);
+    }
+
+    /**
+     * @return true if no bit is set.
+     */
+    public boolean isEmpty() {
+
+        for (int i = 0; i < this.wlen; i++) {
+
+            if (this.bits[i] != 0L) {
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return true if the bit of index is set.
+     */
+    public boolean get(final int index) {
+
+        final int i = index >> 6;
+
+        if (i >= this.wlen) {
+
+            return false;
+        }
+
+        return (this.bits[i] & (1L << index)) != 0L;
+    }
+
+    /**
+     * Set the bit of index, growing the set if needed.
+     */
+    public void set(final int index) {
+
+        final int i = expandingWordNum(index >> 6);
+
+        this.bits[i] |= 1L << index;
+    }
+
+    /**
+     * Set the bits of [fromIndex; toIndex[, growing the set if needed.
+     */
+    public void set(final int fromIndex, final int toIndex) {
+
+        if (toIndex <= fromIndex) {
+
+            return;
+        }
+
+        final int startWord = fromIndex >> 6;
+        final int endWord = expandingWordNum((toIndex - 1) >> 6);
+
+        final long startMask = -1L << fromIndex;
+        final long endMask = -1L >>> -toIndex;
+
+        if (startWord == endWord) {
+
+            this.bits[startWord] |= startMask & endMask;
+            return;
+        }
+
+        this.bits[startWord] |= startMask;
+
+        for (int i = startWord + 1; i < endWord; i++) {
+
+            this.bits[i] = -1L;
+        }
+
+        this.bits[endWord] |= endMask;
+    }
+
+    /**
+     * Set the bit of index, growing the set if needed.
+     * @return true if it was already set.
+     */
+    public boolean getAndSet(final int index) {
+
+        final int i = expandingWordNum(index >> 6);
+        final long mask = 1L << index;
+
+        final boolean previous = (this.bits[i] & mask) != 0L;
+        this.bits[i] |= mask;
+
+        return previous;
+    }
+
+    /**
+     * Clear the bit of index.
+     */
+    public void clear(final int index) {
+
+        final int i = index >> 6;
+
+        if (i < this.wlen) {
+
+            this.bits[i] &= ~(1L << index);
+        }
+    }
+
+    /**
+     * Clear the bits of [fromIndex; toIndex[.
+     */
+    public void clear(final int fromIndex, final int toIndex) {
+
+        if (toIndex <= fromIndex) {
+
+            return;
+        }
+
+        final int startWord = fromIndex >> 6;
+
+        if (startWord >= this.wlen) {
+
+            return;
+        }
+
+        int endWord = (toIndex - 1) >> 6;
+
+        final long startMask = ~(-1L << fromIndex);
+        long endMask = ~(-1L >>> -toIndex);
+
+        if (endWord >= this.wlen) {
+
+            endWord = this.wlen - 1;
+            endMask = 0L;
+        }
+
+        if (startWord == endWord) {
+
+            this.bits[startWord] &= startMask | endMask;
+            return;
+        }
+
+        this.bits[startWord] &= startMask;
+
+        for (int i = startWord + 1; i < endWord; i++) {
+
+            this.bits[i] = 0L;
+        }
+
+        this.bits[endWord] &= endMask;
+    }
+
+    /**
+     * Clear the bit of index.
+     * @return true if it was set.
+     */
+    public boolean getAndClear(final int index) {
+
+        final int i = index >> 6;
+
+        if (i >= this.wlen) {
+
+            return false;
+        }
+
+        final long mask = 1L << index;
+
+        final boolean previous = (this.bits[i] & mask) != 0L;
+        this.bits[i] &= ~mask;
+
+        return previous;
+    }
+
+    /**
+     * Flip the bit of index, growing the set if needed.
+     */
+    public void flip(final int index) {
+
+        final int i = expandingWordNum(index >> 6);
+
+        this.bits[i] ^= 1L << index;
+    }
+
+    /**
+     * Flip the bits of [fromIndex; toIndex[, growing the set if needed.
+     */
+    public void flip(final int fromIndex, final int toIndex) {
+
+        if (toIndex <= fromIndex) {
+
+            return;
+        }
+
+        final int startWord = fromIndex >> 6;
+        final int endWord = expandingWordNum((toIndex - 1) >> 6);
+
+        final long startMask = -1L << fromIndex;
+        final long endMask = -1L >>> -toIndex;
+
+        if (startWord == endWord) {
+
+            this.bits[startWord] ^= startMask & endMask;
+            return;
+        }
+
+        this.bits[startWord] ^= startMask;
+
+        for (int i = startWord + 1; i < endWord; i++) {
+
+            this.bits[i] = ~this.bits[i];
+        }
+
+        this.bits[endWord] ^= endMask;
+    }
+
+    /**
+     * @return the index of the first set bit at or after index, or -1 if there is none.
+     */
+    public int nextSetBit(final int index) {
+
+        int i = index >> 6;
+
+        if (i >= this.wlen) {
+
+            return -1;
+        }
+
+        long word = this.bits[i] & (-1L << index);
+
+        while (word == 0L) {
+
+            if (++i == this.wlen) {
+
+                return -1;
+            }
+
+            word = this.bits[i];
+        }
+
+        return (i << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * @return the index of the last set bit at or before index, or -1 if there is none.
+     */
+    public int prevSetBit(final int index) {
+
+        if (index < 0) {
+
+            return -1;
+        }
+
+        int i = index >> 6;
+        long word;
+
+        if (i >= this.wlen) {
+
+            i = this.wlen - 1;
+
+            if (i < 0) {
+
+                return -1;
+            }
+
+            word = this.bits[i];
+        } else {
+
+            word = this.bits[i] & (-1L >>> (63 - (index & 63)));
+        }
+
+        while (word == 0L) {
+
+            if (--i < 0) {
+
+                return -1;
+            }
+
+            word = this.bits[i];
+        }
+
+        return (i << 6) + 63 - Long.numberOfLeadingZeros(word);
+    }
+
+    /**
+     * @return the index of the first clear bit at or after index.
+     */
+    public int nextClearBit(final int index) {
+
+        int i = index >> 6;
+
+        if (i >= this.wlen) {
+
+            return index;
+        }
+
+        long word = ~this.bits[i] & (-1L << index);
+
+        while (word == 0L) {
+
+            if (++i == this.wlen) {
+
+                return i << 6;
+            }
+
+            word = ~this.bits[i];
+        }
+
+        return (i << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * Keep only the bits also set in other.
+     */
+    public void and(final BitSet other) {
+
+        final int newLen = Math.min(this.wlen, other.wlen);
+
+        final long[] bits = this.bits;
+        final long[] otherBits = other.bits;
+
+        for (int i = 0; i < newLen; i++) {
+
+            bits[i] &= otherBits[i];
+        }
+
+        for (int i = newLen; i < this.wlen; i++) {
+
+            bits[i] = 0L;
+        }
+
+        this.wlen = newLen;
+    }
+
+    /**
+     * Set the bits set in other, growing the set if needed.
+     */
+    public void or(final BitSet other) {
+
+        ensureCapacityWords(other.wlen);
+
+        final long[] bits = this.bits;
+        final long[] otherBits = other.bits;
+
+        for (int i = 0; i < other.wlen; i++) {
+
+            bits[i] |= otherBits[i];
+        }
+
+        this.wlen = Math.max(this.wlen, other.wlen);
+    }
+
+    /**
+     * Clear the bits set in other.
+     */
+    public void andNot(final BitSet other) {
+
+        final int len = Math.min(this.wlen, other.wlen);
+
+        final long[] bits = this.bits;
+        final long[] otherBits = other.bits;
+
+        for (int i = 0; i < len; i++) {
+
+            bits[i] &= ~otherBits[i];
+        }
+    }
+
+    /**
+     * Flip the bits set in other, growing the set if needed.
+     */
+    public void xor(final BitSet other) {
+
+        ensureCapacityWords(other.wlen);
+
+        final long[] bits = this.bits;
+        final long[] otherBits = other.bits;
+
+        for (int i = 0; i < other.wlen; i++) {
+
+            bits[i] ^= otherBits[i];
+        }
+
+        this.wlen = Math.max(this.wlen, other.wlen);
+    }
+
+    /**
+     * @return true if this set and other have at least one set bit in common.
+     */
+    public boolean intersects(final BitSet other) {
+
+        final int len = Math.min(this.wlen, other.wlen);
+
+        for (int i = 0; i < len; i++) {
+
+            if ((this.bits[i] & other.bits[i]) != 0L) {
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the number of bits set in both a and b, without building their intersection.
+     */
+    public static long intersectionCount(final BitSet a, final BitSet b) {
+
+        return BitUtil.pop_intersect(a.bits, b.bits, 0, Math.min(a.wlen, b.wlen));
+    }
+
+    /**
+     * @return the number of bits set in a or b, without building their union.
+     */
+    public static long unionCount(final BitSet a, final BitSet b) {
+
+        final long count = BitUtil.pop_union(a.bits, b.bits, 0, Math.min(a.wlen, b.wlen));
+
+        if (a.wlen < b.wlen) {
+
+            return count + BitUtil.pop_array(b.bits, a.wlen, b.wlen - a.wlen);
+        }
+
+        return count + BitUtil.pop_array(a.bits, b.wlen, a.wlen - b.wlen);
+    }
+
+    /**
+     * @return the number of bits set in a but not in b, without building their difference.
+     */
+    public static long andNotCount(final BitSet a, final BitSet b) {
+
+        final long count = BitUtil.pop_andnot(a.bits, b.bits, 0, Math.min(a.wlen, b.wlen));
+
+        if (a.wlen > b.wlen) {
+
+            return count + BitUtil.pop_array(a.bits, b.wlen, a.wlen - b.wlen);
+        }
+
+        return count;
+    }
+
+    /**
+     * @return the number of bits set either in a or in b but not in both, without building their symmetric difference.
+     */
+    public static long xorCount(final BitSet a, final BitSet b) {
+
+        final long count = BitUtil.pop_xor(a.bits, b.bits, 0, Math.min(a.wlen, b.wlen));
+
+        if (a.wlen < b.wlen) {
+
+            return count + BitUtil.pop_array(b.bits, a.wlen, b.wlen - a.wlen);
+        }
+
+        return count + BitUtil.pop_array(a.bits, b.wlen, a.wlen - b.wlen);
+    }
+
+    /**
+     * Clear all the bits, keeping the capacity.
+     */
+    public void clear() {
+
+        for (int i = 0; i < this.wlen; i++) {
+
+            this.bits[i] = 0L;
+        }
+
+        this.wlen = 0;
+    }
+
+    /**
+     * Lower {@link #wlen}, ignoring the trailing zero words.
+     */
+    public void trimTrailingZeros() {
+
+        int i = this.wlen - 1;
+
+        while (i >= 0 && this.bits[i] == 0L) {
+            i--;
+        }
+
+        this.wlen = i + 1;
+    }
+
+    /**
+     * @return a view of the indices of the set bits, in ascending order; adding to the
+     * set is not supported but removing from the view clears the bits.
+     */
+    public IntView asIntLookupContainer() {
+
+        if (this.view == null) {
+
+            this.view = new IntView();
+        }
+
+        return this.view;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(final Object obj) {
+
+        if (obj == this) {
+            return true;
+        }
+
+        if (obj == null || obj.getClass() != this.getClass()) {
+            return false;
+        }
+
+        final BitSet other = (BitSet) obj;
+
+        final int len = Math.max(this.wlen, other.wlen);
+
+        for (int i = 0; i < len; i++) {
+
+            final long word = i < this.wlen ? this.bits[i] : 0L;
+            final long otherWord = i < other.wlen ? other.bits[i] : 0L;
+
+            if (word != otherWord) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+
+        //trailing zero words do not change the hash, like in equals()
+        long h = 0;
+
+        for (int i = this.wlen - 1; i >= 0; i--) {
+
+            h ^= this.bits[i];
+            h = (h << 1) | (h >>> 63);
+        }
+
+        return (int) ((h >> 32) ^ h) + 0x98761234;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BitSet clone() {
+
+        try {
+            final BitSet cloned = (BitSet) super.clone();
+
+            cloned.bits = this.bits.clone();
+            cloned.view = null;
+
+            return cloned;
+        } catch (final CloneNotSupportedException e) {
+
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return the indices of the set bits, as "{1, 5, 7}".
+     */
+    @Override
+    public String toString() {
+
+        final StringBuilder b = new StringBuilder();
+
+        b.append('{');
+
+        for (int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)) {
+
+            if (b.length() > 1) {
+                b.append(", ");
+            }
+
+            b.append(i);
+
+            if (i == Integer.MAX_VALUE) {
+                break;
+            }
+        }
+
+        return b.append('}').toString();
+    }
+
+    /**
+     * View of the indices of the set bits of a {@link BitSet}, in ascending order.
+     */
+    public final class IntView extends AbstractIntCollection implements IntLookupContainer
+    {
+        /**
+         * internal pool of ValueIterator
+         */
+        protected final IteratorPool<IntCursor, ValueIterator> valueIteratorPool = new IteratorPool<IntCursor, ValueIterator>(
+                new ObjectFactory<ValueIterator>() {
+
+                    @Override
+                    public ValueIterator create() {
+                        return new ValueIterator();
+                    }
+
+                    @Override
+                    public void initialize(final ValueIterator obj) {
+                        obj.cursor.index = -1;
+                        obj.cursor.value = -1;
+                    }
+
+                    @Override
+                    public void reset(final ValueIterator obj) {
+                        //nothing
+                    }
+                });
+
+        IntView() {
+            //nothing
+        }
+
+        @Override
+        public ValueIterator iterator() {
+            //return new ValueIterator();
+            return this.valueIteratorPool.borrow();
+        }
+
+        @Override
+        public boolean contains(final int index) {
+
+            return index >= 0 && BitSet.this.get(index);
+        }
+
+        @Override
+        public int size() {
+
+            return (int) BitSet.this.cardinality();
+        }
+
+        @Override
+        public boolean isEmpty() {
+
+            return BitSet.this.isEmpty();
+        }
+
+        @Override
+        public int capacity() {
+
+            return (int) Math.min(BitSet.this.capacity(), Integer.MAX_VALUE);
+        }
+
+        @Override
+        public int[] toArray(final int[] target) {
+
+            int count = 0;
+
+            for (int i = BitSet.this.nextSetBit(0); i >= 0; i = BitSet.this.nextSetBit(i + 1)) {
+
+                target[count++] = i;
+
+                if (i == Integer.MAX_VALUE) {
+                    break;
+                }
+            }
+
+            return target;
+        }
+
+        @Override
+        public <T extends IntProcedure> T forEach(final T procedure) {
+
+            final long[] bits = BitSet.this.bits;
+            final int wlen = BitSet.this.wlen;
+
+            for (int i = 0; i < wlen; i++) {
+
+                long word = bits[i];
+
+                while (word != 0L) {
+
+                    procedure.apply((i << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+
+            return procedure;
+        }
+
+        @Override
+        public <T extends IntPredicate> T forEach(final T predicate) {
+
+            final long[] bits = BitSet.this.bits;
+            final int wlen = BitSet.this.wlen;
+
+            for (int i = 0; i < wlen; i++) {
+
+                long word = bits[i];
+
+                while (word != 0L) {
+
+                    if (!predicate.apply((i << 6) + Long.numberOfTrailingZeros(word))) {
+                        return predicate;
+                    }
+
+                    word &= word - 1;
+                }
+            }
+
+            return predicate;
+        }
+
+        @Override
+        public int removeAll(final int index) {
+
+            return index >= 0 && BitSet.this.getAndClear(index) ? 1 : 0;
+        }
+
+        @Override
+        public int removeAll(final IntPredicate predicate) {
+
+            final long[] bits = BitSet.this.bits;
+            final int wlen = BitSet.this.wlen;
+
+            int count = 0;
+
+            for (int i = 0; i < wlen; i++) {
+
+                long word = bits[i];
+
+                while (word != 0L) {
+
+                    final int bit = Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+
+                    if (predicate.apply((i << 6) + bit)) {
+
+                        bits[i] &= ~(1L << bit);
+                        count++;
+                    }
+                }
+            }
+
+            return count;
+        }
+
+        @Override
+        public void clear() {
+
+            BitSet.this.clear();
+        }
+
+        /**
+         * Iterator of the set bits, holding a IntCursor (value, index) = (index of the bit, rank of the bit in the set).
+         */
+        public final class ValueIterator extends AbstractIterator<IntCursor>
+        {
+            public final IntCursor cursor;
+
+            public ValueIterator() {
+                this.cursor = new IntCursor();
+            }
+
+            @Override
+            protected IntCursor fetch() {
+
+                if (this.cursor.value == Integer.MAX_VALUE) {
+
+                    return done();
+                }
+
+                final int next = BitSet.this.nextSetBit(this.cursor.value + 1);
+
+                if (next < 0) {
+
+                    return done();
+                }
+
+                this.cursor.index++;
+                this.cursor.value = next;
+
+                return this.cursor;
+            }
+        }
+    }
+
+    /**
+     * Grow the set to hold numWords words without growing again.
+     */
+    private void ensureCapacityWords(final int numWords) {
+
+        if (this.bits.length < numWords) {
+
+            this.bits = BitSet.allocate(Math.max(numWords, this.bits.length + (this.bits.length >>> 1)), this.wlen, this.bits);
+        }
+    }
+
+    /**
+     * Grow the set to hold the word wordNum, and the words in use to include it.
+     * @return wordNum
+     */
+    private int expandingWordNum(final int wordNum) {
+
+        if (wordNum >= this.wlen) {
+
+            ensureCapacityWords(wordNum + 1);
+            this.wlen = wordNum + 1;
+        }
+
+        return wordNum;
+    }
+
+    private static int wordsFor(final int numBits) {
+
+        return (int) (((long) numBits + 63) >>> 6);
+    }
+
+    private static long[] allocate(final int numWords, final int copied, final long[] bits) {
+
+        try {
+            final long[] newBits = new long[numWords];
+
+            if (copied > 0) {
+
+                System.arraycopy(bits, 0, newBits, 0, copied);
+            }
+
+            return newBits;
+
+        } catch (final OutOfMemoryError e) {
+
+            throw new BufferAllocationException(
+                    "Not enough memory to allocate buffers to grow from %d -> %d elements",
+                    e,
+                    (long) copied << 6,
+                    (long) numWords << 6);
+        }
+    }
+}
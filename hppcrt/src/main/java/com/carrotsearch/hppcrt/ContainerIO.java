@@ -0,0 +1,398 @@
+package com.carrotsearch.hppcrt;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Bulk binary transfer of container buffers, the building block of the
+ * <code>writeTo()</code> / <code>readFrom()</code> methods of the containers.
+ * <p>
+ * Primitive arrays are written in big-endian order (the {@link DataOutput} convention) by blocks of
+ * {@link #BLOCK_SIZE} bytes, with no per-element call nor boxing. <code>Object</code> arrays
+ * are written element by element, and require an {@link ObjectOutput} (resp. {@link ObjectInput}).
+ * </p>
+ */
+public final class ContainerIO
+{
+    /**
+     * Size in bytes of the intermediate blocks of the primitive transfers,
+     * and of the buffered streams over channels.
+     */
+    public static final int BLOCK_SIZE = 8192;
+
+    /**
+     * Number of elements gathered at once by containers whose elements are not contiguous (hash containers, linked lists),
+     * before being transferred in bulk.
+     */
+    public static final int CHUNK_SIZE = 1024;
+
+    /**
+     * No instances.
+     */
+    private ContainerIO() {
+        //nothing
+    }
+
+    /**
+     * Buffered output stream over channel, to be flushed (not closed) after use.
+     */
+    public static DataOutputStream newDataOutput(final WritableByteChannel channel) {
+
+        return new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), ContainerIO.BLOCK_SIZE));
+    }
+
+    /**
+     * Buffered object output stream over channel, to be flushed (not closed) after use.
+     */
+    public static ObjectOutputStream newObjectOutput(final WritableByteChannel channel) throws IOException {
+
+        return new ObjectOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), ContainerIO.BLOCK_SIZE));
+    }
+
+    /**
+     * Input stream over channel. It is not buffered, so that no more bytes than the container
+     * ones are consumed from the channel.
+     */
+    public static DataInputStream newDataInput(final ReadableByteChannel channel) {
+
+        return new DataInputStream(Channels.newInputStream(channel));
+    }
+
+    /**
+     * Object input stream over channel, see {@link #newDataInput(ReadableByteChannel)}.
+     */
+    public static ObjectInputStream newObjectInput(final ReadableByteChannel channel) throws IOException {
+
+        return new ObjectInputStream(Channels.newInputStream(channel));
+    }
+
+    /**
+     * Read a number of elements, written by {@link DataOutput#writeInt(int)}.
+     * @throws IOException if the read value is negative.
+     */
+    public static int readSize(final DataInput in) throws IOException {
+
+        final int size = in.readInt();
+
+        if (size < 0) {
+
+            throw new IOException("Corrupted stream: invalid number of elements " + size);
+        }
+
+        return size;
+    }
+
+    /**
+     * Write <code>length</code> elements of <code>a</code>, starting at <code>from</code>.
+     */
+    public static void write(final DataOutput out, final byte[] a, final int from, final int length) throws IOException {
+
+        out.write(a, from, length);
+    }
+
+    /**
+     * Read <code>length</code> elements into <code>a</code>, starting at <code>from</code>.
+     */
+    public static void read(final DataInput in, final byte[] a, final int from, final int length) throws IOException {
+
+        in.readFully(a, from, length);
+    }
+
+    /**
+     * Write <code>length</code> elements of <code>a</code>, starting at <code>from</code>.
+     */
+    public static void write(final DataOutput out, final char[] a, final int from, final int length) throws IOException {
+
+        final byte[] block = new byte[ContainerIO.blockSize(length, 2)];
+        final CharBuffer view = ByteBuffer.wrap(block).asCharBuffer();
+
+        for (int done = 0; done < length;) {
+
+            final int count = Math.min(length - done, view.capacity());
+
+            view.clear();
+            view.put(a, from + done, count);
+            out.write(block, 0, count << 1);
+
+            done += count;
+        }
+    }
+
+    /**
+     * Read <code>length</code> elements into <code>a</code>, starting at <code>from</code>.
+     */
+    public static void read(final DataInput in, final char[] a, final int from, final int length) throws IOException {
+
+        final byte[] block = new byte[ContainerIO.blockSize(length, 2)];
+        final CharBuffer view = ByteBuffer.wrap(block).asCharBuffer();
+
+        for (int done = 0; done < length;) {
+
+            final int count = Math.min(length - done, view.capacity());
+
+            in.readFully(block, 0, count << 1);
+            view.clear();
+            view.get(a, from + done, count);
+
+            done += count;
+        }
+    }
+
+    /**
+     * Write <code>length</code> elements of <code>a</code>, starting at <code>from</code>.
+     */
+    public static void write(final DataOutput out, final short[] a, final int from, final int length) throws IOException {
+
+        final byte[] block = new byte[ContainerIO.blockSize(length, 2)];
+        final ShortBuffer view = ByteBuffer.wrap(block).asShortBuffer();
+
+        for (int done = 0; done < length;) {
+
+            final int count = Math.min(length - done, view.capacity());
+
+            view.clear();
+            view.put(a, from + done, count);
+            out.write(block, 0, count << 1);
+
+            done += count;
+        }
+    }
+
+    /**
+     * Read <code>length</code> elements into <code>a</code>, starting at <code>from</code>.
+     */
+    public static void read(final DataInput in, final short[] a, final int from, final int length) throws IOException {
+
+        final byte[] block = new byte[ContainerIO.blockSize(length, 2)];
+        final ShortBuffer view = ByteBuffer.wrap(block).asShortBuffer();
+
+        for (int done = 0; done < length;) {
+
+            final int count = Math.min(length - done, view.capacity());
+
+            in.readFully(block, 0, count << 1);
+            view.clear();
+            view.get(a, from + done, count);
+
+            done += count;
+        }
+    }
+
+    /**
+     * Write <code>length</code> elements of <code>a</code>, starting at <code>from</code>.
+     */
+    public static void write(final DataOutput out, final int[] a, final int from, final int length) throws IOException {
+
+        final byte[] block = new byte[ContainerIO.blockSize(length, 4)];
+        final IntBuffer view = ByteBuffer.wrap(block).asIntBuffer();
+
+        for (int done = 0; done < length;) {
+
+            final int count = Math.min(length - done, view.capacity());
+
+            view.clear();
+            view.put(a, from + done, count);
+            out.write(block, 0, count << 2);
+
+            done += count;
+        }
+    }
+
+    /**
+     * Read <code>length</code> elements into <code>a</code>, starting at <code>from</code>.
+     */
+    public static void read(final DataInput in, final int[] a, final int from, final int length) throws IOException {
+
+        final byte[] block = new byte[ContainerIO.blockSize(length, 4)];
+        final IntBuffer view = ByteBuffer.wrap(block).asIntBuffer();
+
+        for (int done = 0; done < length;) {
+
+            final int count = Math.min(length - done, view.capacity());
+
+            in.readFully(block, 0, count << 2);
+            view.clear();
+            view.get(a, from + done, count);
+
+            done += count;
+        }
+    }
+
+    /**
+     * Write <code>length</code> elements of <code>a</code>, starting at <code>from</code>.
+     */
+    public static void write(final DataOutput out, final long[] a, final int from, final int length) throws IOException {
+
+        final byte[] block = new byte[ContainerIO.blockSize(length, 8)];
+        final LongBuffer view = ByteBuffer.wrap(block).asLongBuffer();
+
+        for (int done = 0; done < length;) {
+
+            final int count = Math.min(length - done, view.capacity());
+
+            view.clear();
+            view.put(a, from + done, count);
+            out.write(block, 0, count << 3);
+
+            done += count;
+        }
+    }
+
+    /**
+     * Read <code>length</code> elements into <code>a</code>, starting at <code>from</code>.
+     */
+    public static void read(final DataInput in, final long[] a, final int from, final int length) throws IOException {
+
+        final byte[] block = new byte[ContainerIO.blockSize(length, 8)];
+        final LongBuffer view = ByteBuffer.wrap(block).asLongBuffer();
+
+        for (int done = 0; done < length;) {
+
+            final int count = Math.min(length - done, view.capacity());
+
+            in.readFully(block, 0, count << 3);
+            view.clear();
+            view.get(a, from + done, count);
+
+            done += count;
+        }
+    }
+
+    /**
+     * Write <code>length</code> elements of <code>a</code>, starting at <code>from</code>.
+     */
+    public static void write(final DataOutput out, final float[] a, final int from, final int length) throws IOException {
+
+        final byte[] block = new byte[ContainerIO.blockSize(length, 4)];
+        final FloatBuffer view = ByteBuffer.wrap(block).asFloatBuffer();
+
+        for (int done = 0; done < length;) {
+
+            final int count = Math.min(length - done, view.capacity());
+
+            view.clear();
+            view.put(a, from + done, count);
+            out.write(block, 0, count << 2);
+
+            done += count;
+        }
+    }
+
+    /**
+     * Read <code>length</code> elements into <code>a</code>, starting at <code>from</code>.
+     */
+    public static void read(final DataInput in, final float[] a, final int from, final int length) throws IOException {
+
+        final byte[] block = new byte[ContainerIO.blockSize(length, 4)];
+        final FloatBuffer view = ByteBuffer.wrap(block).asFloatBuffer();
+
+        for (int done = 0; done < length;) {
+
+            final int count = Math.min(length - done, view.capacity());
+
+            in.readFully(block, 0, count << 2);
+            view.clear();
+            view.get(a, from + done, count);
+
+            done += count;
+        }
+    }
+
+    /**
+     * Write <code>length</code> elements of <code>a</code>, starting at <code>from</code>.
+     */
+    public static void write(final DataOutput out, final double[] a, final int from, final int length) throws IOException {
+
+        final byte[] block = new byte[ContainerIO.blockSize(length, 8)];
+        final DoubleBuffer view = ByteBuffer.wrap(block).asDoubleBuffer();
+
+        for (int done = 0; done < length;) {
+
+            final int count = Math.min(length - done, view.capacity());
+
+            view.clear();
+            view.put(a, from + done, count);
+            out.write(block, 0, count << 3);
+
+            done += count;
+        }
+    }
+
+    /**
+     * Read <code>length</code> elements into <code>a</code>, starting at <code>from</code>.
+     */
+    public static void read(final DataInput in, final double[] a, final int from, final int length) throws IOException {
+
+        final byte[] block = new byte[ContainerIO.blockSize(length, 8)];
+        final DoubleBuffer view = ByteBuffer.wrap(block).asDoubleBuffer();
+
+        for (int done = 0; done < length;) {
+
+            final int count = Math.min(length - done, view.capacity());
+
+            in.readFully(block, 0, count << 3);
+            view.clear();
+            view.get(a, from + done, count);
+
+            done += count;
+        }
+    }
+
+    /**
+     * Write <code>length</code> elements of <code>a</code>, starting at <code>from</code>.
+     * @throws UnsupportedOperationException if out is not an {@link ObjectOutput}.
+     */
+    public static void write(final DataOutput out, final Object[] a, final int from, final int length) throws IOException {
+
+        if (!(out instanceof ObjectOutput)) {
+
+            throw new UnsupportedOperationException("Object elements can only be written to an ObjectOutput");
+        }
+
+        final ObjectOutput objectOut = (ObjectOutput) out;
+
+        for (int i = from; i < from + length; i++) {
+
+            objectOut.writeObject(a[i]);
+        }
+    }
+
+    /**
+     * Read <code>length</code> elements into <code>a</code>, starting at <code>from</code>.
+     * @throws UnsupportedOperationException if in is not an {@link ObjectInput}.
+     * @throws IOException also wrapping a {@link ClassNotFoundException}.
+     */
+    public static void read(final DataInput in, final Object[] a, final int from, final int length) throws IOException {
+
+        if (!(in instanceof ObjectInput)) {
+
+            throw new UnsupportedOperationException("Object elements can only be read from an ObjectInput");
+        }
+
+        final ObjectInput objectIn = (ObjectInput) in;
+
+        try {
+            for (int i = from; i < from + length; i++) {
+
+                a[i] = objectIn.readObject();
+            }
+        } catch (final ClassNotFoundException e) {
+
+            //No IOException(String, Throwable) constructor in Java 5
+            final IOException ioe = new IOException("Cannot read element: " + e.getMessage());
+            ioe.initCause(e);
+            throw ioe;
+        }
+    }
+
+    /**
+     * Size of the intermediate byte block for length elements of elementBytes each.
+     */
+    private static int blockSize(final int length, final int elementBytes) {
+
+        return Math.max(1, Math.min(length, ContainerIO.BLOCK_SIZE / elementBytes)) * elementBytes;
+    }
+}
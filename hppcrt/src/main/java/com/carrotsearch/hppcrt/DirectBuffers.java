@@ -0,0 +1,123 @@
+package com.carrotsearch.hppcrt;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Allocation and explicit release of direct (off-heap) {@link ByteBuffer}s,
+ * the native memory storage of the off-heap containers.
+ */
+public final class DirectBuffers
+{
+    /**
+     * Frees the native memory of a direct buffer on JDK 9+ : sun.misc.Unsafe.invokeCleaner(ByteBuffer), or null.
+     */
+    private static final Method UNSAFE_INVOKE_CLEANER;
+
+    /**
+     * The sun.misc.Unsafe instance for {@link #UNSAFE_INVOKE_CLEANER}, or null.
+     */
+    private static final Object UNSAFE;
+
+    static {
+
+        Method invokeCleaner = null;
+        Object unsafe = null;
+
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+
+            final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+
+        } catch (final Throwable e) {
+
+            //JDK < 9 or not available: use the cleaner() of the buffer itself, see free().
+            invokeCleaner = null;
+            unsafe = null;
+        }
+
+        UNSAFE_INVOKE_CLEANER = invokeCleaner;
+        UNSAFE = unsafe;
+    } //end static initializer
+
+    /**
+     * No instances.
+     */
+    private DirectBuffers() {
+        //nothing
+    }
+
+    /**
+     * Allocate a zero-filled direct buffer of nbBytes, in native byte order.
+     * @throws BufferAllocationException if the native memory is exhausted.
+     */
+    @SuppressWarnings("boxing")
+    public static ByteBuffer allocate(final int nbBytes) {
+
+        try {
+            return ByteBuffer.allocateDirect(nbBytes).order(ByteOrder.nativeOrder());
+
+        } catch (final OutOfMemoryError e) {
+
+            throw new BufferAllocationException("Not enough native memory to allocate a buffer of %d bytes", e, nbBytes);
+        }
+    }
+
+    /**
+     * Fill the whole buffer with zeros, whatever its position and limit.
+     * The capacity must be a multiple of 8.
+     */
+    public static void zero(final ByteBuffer buffer) {
+
+        assert (buffer.capacity() & 7) == 0;
+
+        final int size = buffer.capacity();
+
+        for (int i = 0; i < size; i += 8) {
+
+            buffer.putLong(i, 0L);
+        }
+    }
+
+    /**
+     * Release the native memory of a direct buffer immediately, instead of waiting for the buffer
+     * to be garbage collected. This is a best effort: if the running JVM does not allow it,
+     * the memory is released by the GC as usual. Using the buffer after this call is a logical error
+     * that may crash the JVM.
+     */
+    public static void free(final ByteBuffer buffer) {
+
+        if (buffer == null || !buffer.isDirect()) {
+
+            return;
+        }
+
+        try {
+            if (DirectBuffers.UNSAFE_INVOKE_CLEANER != null) {
+
+                DirectBuffers.UNSAFE_INVOKE_CLEANER.invoke(DirectBuffers.UNSAFE, buffer);
+
+            } else {
+
+                final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+
+                final Object cleaner = cleanerMethod.invoke(buffer);
+
+                if (cleaner != null) {
+
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (final Throwable e) {
+
+            //not supported, let the GC do it.
+        }
+    }
+}
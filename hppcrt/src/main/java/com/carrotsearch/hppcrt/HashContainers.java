@@ -28,6 +28,32 @@ public final class HashContainers
      */
     public final static double MAX_LOAD_FACTOR = 90.0 / 100.0;
 
+    /**
+     * Number of keys hashed at once by the batched lookups of the hash containers,
+     * before their slots are probed.
+     */
+    public final static int LOOKUP_BATCH_SIZE = 64;
+
+    /**
+     * Number of lookups whose probe chains are walked together by the interleaved batched lookups,
+     * like KTypeVTypeHashMap.getAll(). It is in the order of the number of cache misses
+     * a core can have in flight, and must not exceed {@link #LOOKUP_BATCH_SIZE}.
+     */
+    public final static int INTERLEAVED_LOOKUP_BATCH_SIZE = 16;
+
+    /**
+     * Minimal number of slots of the previous buffers migrated by each lookup or update
+     * of a hash container in incremental rehash mode, so that the migration is complete long before
+     * the new buffers are full.
+     */
+    public final static int REHASH_STEP = 64;
+
+    /**
+     * Maximal shrink factor of the hash containers: a shrunk container is at least half full,
+     * so that it cannot shrink again right after, nor after an expansion.
+     */
+    public final static double MAX_SHRINK_FACTOR = 0.25;
+
     /**
      * No instances.
      */
@@ -113,6 +139,53 @@ public final class HashContainers
         return Math.min(arraySize - 1, (int) Math.ceil(arraySize * loadFactor));
     }
 
+    /**
+     * Compute the number of elements under which a hash container with power of two arraySize buffers
+     * is shrunk, given its loadFactor and shrinkFactor, the fraction of its {@link #expandAtCount(int, double)} capacity
+     * to keep filled.
+     * @return 0 if shrinkFactor is 0 or if arraySize is already the minimal buffer size.
+     */
+    public static int shrinkAtCount(final int arraySize, final double loadFactor, final double shrinkFactor) {
+
+        if (arraySize <= HashContainers.MIN_HASH_ARRAY_LENGTH) {
+
+            return 0;
+        }
+
+        return (int) (HashContainers.expandAtCount(arraySize, loadFactor) * shrinkFactor);
+    }
+
+    /**
+     * @throws IllegalArgumentException if shrinkFactor is not in [0; {@link #MAX_SHRINK_FACTOR}].
+     */
+    public static void checkShrinkFactor(final double shrinkFactor) {
+
+        if (shrinkFactor < 0 || shrinkFactor > HashContainers.MAX_SHRINK_FACTOR) {
+
+            throw new IllegalArgumentException("The shrink factor should be in range [0, "
+                    + HashContainers.MAX_SHRINK_FACTOR + "]: " + shrinkFactor);
+        }
+    }
+
+    /**
+     * Check the range [offset; offset + length[ of a batched lookup, which must be within both the queries
+     * and the results arrays.
+     * @throws IndexOutOfBoundsException if the range is not within queriesLength or resultsLength.
+     */
+    public static void checkBatchRange(final int offset, final int length, final int queriesLength, final int resultsLength) {
+
+        if (offset < 0 || length < 0 || offset + length < 0) {
+
+            throw new IndexOutOfBoundsException("Bad range: offset " + offset + ", length " + length + ".");
+        }
+
+        if (offset + length > queriesLength || offset + length > resultsLength) {
+
+            throw new IndexOutOfBoundsException("Range [" + offset + ", " + (offset + length) + "[ out of bounds of queries [0, "
+                    + queriesLength + "] or results [0, " + resultsLength + "].");
+        }
+    }
+
     /** */
     @SuppressWarnings("boxing")
     private static void checkLoadFactor(final double loadFactor, final double minAllowedInclusive,
@@ -12,6 +12,17 @@ package com.carrotsearch.hppcrt;
  * - Grows by chunks of initial size,
  * - When its size gets bigger than MAX_SIZE_GROWTH_FACTOR * initial size,
  *   capacity remains constant while 'initial size'  old objects are disposed of.
+ * </pre>
+ * 
+ * By default, a pool is not thread-safe: iterating the same container from several threads
+ * at the same time corrupts it. A thread-safe pooling strategy can be selected either globally by
+ * {@link #configureThreadSafePooling(boolean)}, by system property "HPPC_ITERATOR_POOL_THREADSAFE",
+ * or per pool at construction. In that mode, borrowing and releasing are done on the pool above under its lock,
+ * so concurrent read-only iterations remain allocation-free in the steady state. No per-thread state is kept,
+ * so a pool never retains its container beyond the container own lifetime.
+ * The strategy of a pool is fixed at construction, so {@link #configureThreadSafePooling(boolean)} only impacts
+ * containers created afterwards.
+ * 
  * @param <ITERATOR_TYPE>
  * @param <OBJECT_TYPE>
  */
@@ -23,9 +34,12 @@ public class IteratorPool<OBJECT_TYPE, ITERATOR_TYPE extends AbstractIterator<OB
      */
     public static final int MAX_SIZE_GROWTH_FACTOR = 4;
     public static final String POOL_INITIAL_SIZE_PROPERTY = "HPPC_ITERATOR_POOLSIZE";
+    public static final String POOL_THREADSAFE_PROPERTY = "HPPC_ITERATOR_POOL_THREADSAFE";
 
     private static int INITIAL_SIZE;
 
+    private static volatile boolean THREADSAFE_POOLING = Boolean.parseBoolean(System.getProperty(IteratorPool.POOL_THREADSAFE_PROPERTY));
+
     static
     {
         try
@@ -47,7 +61,25 @@ public class IteratorPool<OBJECT_TYPE, ITERATOR_TYPE extends AbstractIterator<OB
     private static int MAX_SIZE = IteratorPool.MAX_SIZE_GROWTH_FACTOR * IteratorPool.LINEAR_GROWTH_SIZE;
     private static int DISCARDING_SIZE = IteratorPool.LINEAR_GROWTH_SIZE;
 
+    /**
+     * true if borrow() and release() are synchronized on this pool.
+     */
+    private final boolean threadSafe;
+
+    /**
+     * Create a pool with the globally configured pooling strategy.
+     * @see #configureThreadSafePooling(boolean)
+     */
     public IteratorPool(final ObjectFactory<ITERATOR_TYPE> objFactory) {
+        this(objFactory, IteratorPool.THREADSAFE_POOLING);
+    }
+
+    /**
+     * Create a pool, thread-safe or not.
+     * @param objFactory
+     * @param threadSafe if true, the pool can be used by several threads concurrently.
+     */
+    public IteratorPool(final ObjectFactory<ITERATOR_TYPE> objFactory, final boolean threadSafe) {
         super(objFactory, IteratorPool.INITIAL_SIZE, new ArraySizingStrategy() {
 
             @Override
@@ -65,6 +97,8 @@ public class IteratorPool<OBJECT_TYPE, ITERATOR_TYPE extends AbstractIterator<OB
                 return newSize;
             }
         });
+
+        this.threadSafe = threadSafe;
     }
 
     /**
@@ -72,10 +106,27 @@ public class IteratorPool<OBJECT_TYPE, ITERATOR_TYPE extends AbstractIterator<OB
      * corresponding pool and resets it to allow iteration as if the iterator was
      * created for the first time.
      */
-    @SuppressWarnings({ "unchecked", "rawtypes" })
     @Override
     public ITERATOR_TYPE borrow() {
 
+        if (this.threadSafe) {
+
+            //prepare the iterator under the same lock, so that it is never seen free once out of the pool
+            synchronized (this) {
+
+                return borrowAndReset();
+            }
+        }
+
+        return borrowAndReset();
+    }
+
+    /**
+     * Borrow an iterator, attached to this pool and reset for a new iteration.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private ITERATOR_TYPE borrowAndReset() {
+
         //extract an initialized object, never null by construction
         final ITERATOR_TYPE newObject = super.borrow();
 
@@ -91,6 +142,68 @@ public class IteratorPool<OBJECT_TYPE, ITERATOR_TYPE extends AbstractIterator<OB
         return newObject;
     }
 
+    /**
+     * Customized release(), synchronized in thread-safe mode.
+     */
+    @Override
+    public void release(final ITERATOR_TYPE releasedObject) {
+
+        if (this.threadSafe) {
+
+            synchronized (this) {
+
+                super.release(releasedObject);
+            }
+        } else {
+
+            super.release(releasedObject);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>In thread-safe mode, this is only a snapshot, which may be already stale when returned.</p>
+     */
+    @Override
+    public int size() {
+
+        if (this.threadSafe) {
+
+            synchronized (this) {
+
+                return super.size();
+            }
+        }
+
+        return super.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>In thread-safe mode, this is only a snapshot, which may be already stale when returned.</p>
+     */
+    @Override
+    public int capacity() {
+
+        if (this.threadSafe) {
+
+            synchronized (this) {
+
+                return super.capacity();
+            }
+        }
+
+        return super.capacity();
+    }
+
+    /**
+     * true if this pool can be used by several threads concurrently.
+     */
+    public boolean isThreadSafe() {
+
+        return this.threadSafe;
+    }
+
     /**
      * Configure the initial pool size for all iterators, for all containers.
      * This is primarily destined to be used at application startup.
@@ -105,6 +218,23 @@ public class IteratorPool<OBJECT_TYPE, ITERATOR_TYPE extends AbstractIterator<OB
         IteratorPool.MAX_SIZE = IteratorPool.MAX_SIZE_GROWTH_FACTOR * IteratorPool.LINEAR_GROWTH_SIZE;
     }
 
+    /**
+     * Select the pooling strategy of all iterator pools created from now on: if threadSafe is true,
+     * containers created afterwards can be iterated concurrently by several threads,
+     * at the price of a lock on each borrow and release. This is primarily destined to be used at application startup.
+     * @param threadSafe
+     */
+    public static final void configureThreadSafePooling(final boolean threadSafe) {
+        IteratorPool.THREADSAFE_POOLING = threadSafe;
+    }
+
+    /**
+     * Returns true if iterator pools created from now on are thread-safe.
+     */
+    public static final boolean isThreadSafePooling() {
+        return IteratorPool.THREADSAFE_POOLING;
+    }
+
     /**
      * Returns the expected max size all iterator pools will be limited to.
      */
@@ -0,0 +1,135 @@
+package com.carrotsearch.hppcrt;
+
+/**
+ * Control bytes of the Swiss-table hash containers, packed by groups of {@link #GROUP_SIZE} in a <code>long</code>
+ * so that a whole group is matched at once with SWAR (SIMD within a register) arithmetic.
+ * <p>
+ * Slot <code>i</code> control byte is the byte <code>(i &amp; 7)</code> (little end first) of <code>ctrl[i &gt;&gt;&gt; 3]</code>, and is either:
+ * <ul>
+ * <li>{@link #EMPTY} (0x80): the slot was never used since the last rehash, so probing can stop at its group,</li>
+ * <li>{@link #DELETED} (0xFE): a removed slot (tombstone), free for insertion but not stopping the probing,</li>
+ * <li>a full slot: the 7 low bits of the key hash, in [0; 127], see {@link #h2(int)}.</li>
+ * </ul>
+ * Lookups compare the 7-bit hash fragment against all the slots of a group first, so that keys are only read
+ * for fragment hits: about one in 128 for a miss.
+ * </p>
+ */
+public final class SwissGroups
+{
+    /**
+     * Number of control bytes, i.e slots, per group.
+     */
+    public static final int GROUP_SIZE = 8;
+
+    /**
+     * Control byte of an empty slot.
+     */
+    public static final int EMPTY = 0x80;
+
+    /**
+     * Control byte of a deleted slot (tombstone).
+     */
+    public static final int DELETED = 0xFE;
+
+    /**
+     * A group of empty slots.
+     */
+    public static final long EMPTY_GROUP = 0x8080808080808080L;
+
+    private static final long LSBS = 0x0101010101010101L;
+    private static final long MSBS = 0x8080808080808080L;
+
+    /**
+     * No instances.
+     */
+    private SwissGroups() {
+        //nothing
+    }
+
+    /**
+     * The 7-bit fragment of hash stored in the control byte of a full slot.
+     */
+    public static int h2(final int hash) {
+
+        return hash & 0x7F;
+    }
+
+    /**
+     * The start group hash of hash, to be masked by the number of groups - 1.
+     */
+    public static int h1(final int hash) {
+
+        return hash >>> 7;
+    }
+
+    /**
+     * The 7-bit fragment repeated in all the bytes of a long, for {@link #matchFragment(long, long)}.
+     */
+    public static long broadcast(final int h2) {
+
+        return SwissGroups.LSBS * h2;
+    }
+
+    /**
+     * Matches of the fragment broadcast by {@link #broadcast(int)} in a group: the high bit of each matching byte is set.
+     * There may be false positives (never false negatives) for the byte following a real match, so that the
+     * full slot control byte must be verified, see {@link #isFull(long, int, int)}.
+     */
+    public static long matchFragment(final long group, final long broadcastH2) {
+
+        final long x = group ^ broadcastH2;
+
+        return (x - SwissGroups.LSBS) & ~x & SwissGroups.MSBS;
+    }
+
+    /**
+     * Matches of the {@link #EMPTY} slots of a group: the high bit of each matching byte is set.
+     */
+    public static long matchEmpty(final long group) {
+
+        return group & ~(group << 6) & SwissGroups.MSBS;
+    }
+
+    /**
+     * Matches of the {@link #EMPTY} or {@link #DELETED} slots of a group: the high bit of each matching byte is set.
+     */
+    public static long matchFree(final long group) {
+
+        return group & ~(group << 7) & SwissGroups.MSBS;
+    }
+
+    /**
+     * Index in its group [0; GROUP_SIZE[ of the lowest match of a non-zero match set.
+     */
+    public static int lowestMatch(final long matches) {
+
+        return Long.numberOfTrailingZeros(matches) >>> 3;
+    }
+
+    /**
+     * True if the byte at index in group is a full slot of fragment h2.
+     */
+    public static boolean isFull(final long group, final int index, final int h2) {
+
+        return ((int) (group >>> (index << 3)) & 0xFF) == h2;
+    }
+
+    /**
+     * Control byte of slot.
+     */
+    public static int get(final long[] ctrl, final int slot) {
+
+        return (int) (ctrl[slot >>> 3] >>> ((slot & 7) << 3)) & 0xFF;
+    }
+
+    /**
+     * Set the control byte of slot.
+     */
+    public static void set(final long[] ctrl, final int slot, final int controlByte) {
+
+        final int shift = (slot & 7) << 3;
+        final int g = slot >>> 3;
+
+        ctrl[g] = (ctrl[g] & ~(0xFFL << shift)) | ((long) controlByte << shift);
+    }
+}
@@ -0,0 +1,31 @@
+package com.carrotsearch.hppcrt.caches;
+
+/**
+ * Eviction policies of the bounded caches.
+ */
+public enum CachePolicy
+{
+    /**
+     * Least recently used: evict the entry accessed the longest time ago.
+     */
+    LRU,
+
+    /**
+     * Least frequently used: evict the entry with the fewest accesses since its insertion, counted up to
+     * {@link #MAX_LFU_FREQUENCY}, the least recently used first among them.
+     */
+    LFU,
+
+    /**
+     * Window TinyLFU: new entries enter a small LRU window (1% of the capacity); the entry leaving the window is only admitted
+     * in the main segmented LRU (probation, then protected for 80% of the main space once accessed again)
+     * if its frequency, estimated by a {@link CountMinSketch}, beats the one of the main victim.
+     * Resists scans and one-hit wonders better than {@link #LRU}, while following changes faster than {@link #LFU}.
+     */
+    W_TINY_LFU;
+
+    /**
+     * Saturation of the access counts of {@link #LFU}.
+     */
+    public static final int MAX_LFU_FREQUENCY = 255;
+}
@@ -0,0 +1,155 @@
+package com.carrotsearch.hppcrt.caches;
+
+import com.carrotsearch.hppcrt.BitUtil;
+
+/**
+ * A compact count-min sketch estimating the access frequencies of keys from their hashes,
+ * for the admission policy of {@link CachePolicy#W_TINY_LFU}.
+ * <p>
+ * Counters are 4 bits wide, 16 per <code>long</code>: a key has 4 counters, one per hash function, all in the same
+ * quarter of their <code>long</code> words, and its frequency is the minimum of them, saturated at 15.
+ * The counters are halved every {@link #getSampleSize()} increments, so that frequencies age and follow the
+ * recent history.
+ * </p>
+ * <p>
+ * The table is allocated once by the constructor: {@link #increment(int)} and {@link #frequency(int)} never allocate.
+ * </p>
+ */
+public final class CountMinSketch
+{
+    /**
+     * Maximum frequency, the 4-bit counters saturate at this value.
+     */
+    public static final int MAX_FREQUENCY = 15;
+
+    /**
+     * Seeds of the 4 hash functions (large odd constants).
+     */
+    private static final long[] SEEDS = new long[] { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+    /**
+     * Clear the high bit of each counter after a right shift of a whole word.
+     */
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    /**
+     * The counters.
+     */
+    private final long[] table;
+
+    private final int tableMask;
+
+    private final int sampleSize;
+
+    /**
+     * Number of increments since the last aging.
+     */
+    private int additions;
+
+    /**
+     * Create a sketch for expectedElements distinct keys in the cache.
+     */
+    public CountMinSketch(final int expectedElements) {
+
+        final int elements = Math.max(expectedElements, 1);
+
+        //one word, i.e. 16 counters, per element
+        this.table = new long[BitUtil.nextHighestPowerOfTwo(Math.max(elements, 8))];
+        this.tableMask = this.table.length - 1;
+
+        this.sampleSize = (int) Math.min(10L * elements, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return the estimated frequency of the key of hash, in [0; {@link #MAX_FREQUENCY}].
+     */
+    public int frequency(final int hash) {
+
+        final int start = (hash & 3) << 2;
+
+        int frequency = CountMinSketch.MAX_FREQUENCY;
+
+        for (int i = 0; i < 4; i++) {
+
+            final int shift = (start + i) << 2;
+
+            final int count = (int) ((this.table[indexOf(hash, i)] >>> shift) & 0xFL);
+
+            if (count < frequency) {
+                frequency = count;
+            }
+        }
+
+        return frequency;
+    }
+
+    /**
+     * Count one more access of the key of hash, halving all the counters if the sample size is reached.
+     */
+    public void increment(final int hash) {
+
+        final int start = (hash & 3) << 2;
+
+        boolean added = false;
+
+        for (int i = 0; i < 4; i++) {
+
+            final int index = indexOf(hash, i);
+            final int shift = (start + i) << 2;
+
+            if (((this.table[index] >>> shift) & 0xFL) != 0xFL) {
+
+                this.table[index] += 1L << shift;
+                added = true;
+            }
+        }
+
+        if (added && ++this.additions == this.sampleSize) {
+
+            age();
+        }
+    }
+
+    /**
+     * Halve all the counters.
+     */
+    public void age() {
+
+        final long[] table = this.table;
+
+        for (int i = 0; i < table.length; i++) {
+
+            table[i] = (table[i] >>> 1) & CountMinSketch.RESET_MASK;
+        }
+
+        this.additions >>>= 1;
+    }
+
+    /**
+     * Reset all the counters to 0.
+     */
+    public void clear() {
+
+        java.util.Arrays.fill(this.table, 0L);
+        this.additions = 0;
+    }
+
+    /**
+     * @return the number of increments between two agings.
+     */
+    public int getSampleSize() {
+
+        return this.sampleSize;
+    }
+
+    /**
+     * Index of the word of hash function i.
+     */
+    private int indexOf(final int hash, final int i) {
+
+        long h = (hash + CountMinSketch.SEEDS[i]) * CountMinSketch.SEEDS[i];
+        h += h >>> 32;
+
+        return (int) h & this.tableMask;
+    }
+}
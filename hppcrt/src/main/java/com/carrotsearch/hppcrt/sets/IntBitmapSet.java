@@ -0,0 +1,1958 @@
+package com.carrotsearch.hppcrt.sets;
+
+import com.carrotsearch.hppcrt.*;
+import com.carrotsearch.hppcrt.cursors.*;
+import com.carrotsearch.hppcrt.hash.*;
+import com.carrotsearch.hppcrt.predicates.*;
+import com.carrotsearch.hppcrt.procedures.*;
+
+/**
+ * A compressed set of <code>int</code>s, in the spirit of the
+ * <a href="http://roaringbitmap.org">Roaring bitmaps</a>.
+ * <p>
+ * The values are split by their 16 highest bits into chunks of 65536 values, each chunk being stored
+ * in a container adapted to its density:
+ * <ul>
+ * <li>an array container: the sorted 16 lowest bits of its values, up to {@link #ARRAY_MAX_SIZE} values,</li>
+ * <li>a bitmap container: 1024 <code>long</code> words, above {@link #ARRAY_MAX_SIZE} values,</li>
+ * <li>a run container: the sorted runs of consecutive values, as (start, length - 1) pairs,
+ * created by {@link #addRange(int, int)} and {@link #runOptimize()} when smaller than the two others.</li>
+ * </ul>
+ * Dense sets of identifiers then cost a fraction of a bit to 2 bytes per value, instead of the 8 to 16 bytes of an {@link IntHashSet},
+ * see {@link #sizeInBytes()}. Adding or removing values of a run container converts it back to an array or a bitmap container,
+ * so call {@link #runOptimize()} again after bulk modifications.
+ * </p>
+ * <p>
+ * The set operations {@link #or(IntBitmapSet)}, {@link #and(IntBitmapSet)}, {@link #andNot(IntBitmapSet)}
+ * and {@link #xor(IntBitmapSet)} work container by container, word by word on bitmaps, and the cardinalities
+ * of their results can be computed without building them, see {@link #intersectionCount(IntBitmapSet, IntBitmapSet)}.
+ * </p>
+ * <p>
+ * The values are iterated in ascending order, without allocation by {@link #forEach(IntProcedure)} or by the pooled
+ * {@link #iterator()}.
+ * </p>
+ */
+public class IntBitmapSet extends AbstractIntCollection implements IntSet, IntLookupContainer, Cloneable
+{
+    /**
+     * Maximum number of values of an array container: above, the bitmap container is smaller.
+     */
+    public static final int ARRAY_MAX_SIZE = 4096;
+
+    /**
+     * Container types.
+     */
+    protected static final byte ARRAY = 0;
+    protected static final byte BITMAP = 1;
+    protected static final byte RUN = 2;
+
+    /**
+     * Number of words of a bitmap container.
+     */
+    private static final int BITMAP_WORDS = 1024;
+
+    /**
+     * Number of containers allocated by the default constructor.
+     */
+    private static final int DEFAULT_CONTAINERS = 4;
+
+    /**
+     * Chunk of each container, in ascending order: the 16 highest bits of its values, with the sign bit flipped
+     * so that the containers are sorted like signed values.
+     */
+    protected int[] highs;
+
+    /**
+     * Type of each container: {@link #ARRAY}, {@link #BITMAP} or {@link #RUN}.
+     */
+    protected byte[] types;
+
+    /**
+     * Number of values of each container.
+     */
+    protected int[] cardinalities;
+
+    /**
+     * Values of the array containers, in [0; cardinality[, or (start, length - 1) pairs of the run containers, else null.
+     */
+    protected char[][] shorts;
+
+    /**
+     * Words of the bitmap containers, else null.
+     */
+    protected long[][] bitmaps;
+
+    /**
+     * Number of containers.
+     */
+    protected int containerCount;
+
+    /**
+     * Number of values.
+     */
+    protected int size;
+
+    /**
+     * Words of a non-bitmap container of another set, in set operations.
+     */
+    private long[] scratch;
+
+    /**
+     * Create an empty set.
+     */
+    public IntBitmapSet() {
+
+        allocateContainers(IntBitmapSet.DEFAULT_CONTAINERS);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean add(final int value) {
+
+        final int high = IntBitmapSet.highOf(value);
+        final char low = (char) value;
+
+        int i = containerIndex(high);
+
+        if (i < 0) {
+
+            i = ~i;
+            insertContainer(i, high, IntBitmapSet.ARRAY, new char[] { low, 0, 0, 0 }, null, 1);
+            this.size++;
+
+            return true;
+        }
+
+        if (this.types[i] == IntBitmapSet.RUN) {
+
+            if (IntBitmapSet.runContains(this.shorts[i], low)) {
+
+                return false;
+            }
+
+            expand(i);
+        }
+
+        if (this.types[i] == IntBitmapSet.ARRAY) {
+
+            final int cardinality = this.cardinalities[i];
+            final int position = IntBitmapSet.search(this.shorts[i], cardinality, low);
+
+            if (position >= 0) {
+
+                return false;
+            }
+
+            if (cardinality == IntBitmapSet.ARRAY_MAX_SIZE) {
+
+                toBitmap(i);
+                IntBitmapSet.setBit(this.bitmaps[i], low);
+            } else {
+
+                insertInArray(i, ~position, low);
+            }
+        } else {
+
+            final long[] words = this.bitmaps[i];
+
+            if ((words[low >>> 6] & (1L << low)) != 0) {
+
+                return false;
+            }
+
+            words[low >>> 6] |= 1L << low;
+        }
+
+        this.cardinalities[i]++;
+        this.size++;
+
+        return true;
+    }
+
+    /**
+     * Add all the values of [fromValue; toValue[, as run containers for the chunks not yet in the set.
+     */
+    public void addRange(final int fromValue, final int toValue) {
+
+        long value = fromValue;
+
+        while (value < toValue) {
+
+            final long chunkEnd = Math.min(toValue, ((value >> 16) + 1) << 16);
+
+            final int high = IntBitmapSet.highOf((int) value);
+            final int fromLow = (int) value & 0xFFFF;
+            final int toLow = (int) (chunkEnd - 1) & 0xFFFF;
+
+            int i = containerIndex(high);
+
+            if (i < 0) {
+
+                i = ~i;
+                insertContainer(i, high, IntBitmapSet.RUN, new char[] { (char) fromLow, (char) (toLow - fromLow) }, null, toLow - fromLow + 1);
+                this.size += toLow - fromLow + 1;
+            } else {
+
+                final int cardinality = this.cardinalities[i];
+
+                if (this.types[i] != IntBitmapSet.BITMAP) {
+
+                    toBitmap(i);
+                }
+
+                final long[] words = this.bitmaps[i];
+
+                IntBitmapSet.setRange(words, fromLow, toLow);
+
+                this.cardinalities[i] = (int) BitUtil.pop_array(words, 0, IntBitmapSet.BITMAP_WORDS);
+                this.size += this.cardinalities[i] - cardinality;
+
+                normalize(i);
+            }
+
+            value = chunkEnd;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int addAll(final IntContainer container) {
+
+        if (container instanceof IntBitmapSet) {
+
+            final int count = this.size;
+            or((IntBitmapSet) container);
+
+            return this.size - count;
+        }
+
+        return addAll((Iterable<? extends IntCursor>) container);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int addAll(final Iterable<? extends IntCursor> iterable) {
+
+        int count = 0;
+
+        for (final IntCursor cursor : iterable) {
+
+            if (add(cursor.value)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Adds all values from the given array to this set.
+     * @return Returns the number of values actually added as a result of this call.
+     */
+    public int add(final int... values) {
+
+        int count = 0;
+
+        for (final int value : values) {
+
+            if (add(value)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean contains(final int value) {
+
+        final int i = containerIndex(IntBitmapSet.highOf(value));
+
+        return i >= 0 && containsLow(i, (char) value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean remove(final int value) {
+
+        final int i = containerIndex(IntBitmapSet.highOf(value));
+        final char low = (char) value;
+
+        if (i < 0) {
+
+            return false;
+        }
+
+        if (this.types[i] == IntBitmapSet.RUN) {
+
+            if (!IntBitmapSet.runContains(this.shorts[i], low)) {
+
+                return false;
+            }
+
+            expand(i);
+        }
+
+        if (this.types[i] == IntBitmapSet.ARRAY) {
+
+            final char[] values = this.shorts[i];
+            final int cardinality = this.cardinalities[i];
+            final int position = IntBitmapSet.search(values, cardinality, low);
+
+            if (position < 0) {
+
+                return false;
+            }
+
+            System.arraycopy(values, position + 1, values, position, cardinality - position - 1);
+        } else {
+
+            final long[] words = this.bitmaps[i];
+
+            if ((words[low >>> 6] & (1L << low)) == 0) {
+
+                return false;
+            }
+
+            words[low >>> 6] &= ~(1L << low);
+        }
+
+        this.cardinalities[i]--;
+        this.size--;
+
+        if (this.cardinalities[i] == 0) {
+
+            removeContainer(i);
+        } else {
+
+            normalize(i);
+        }
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int removeAll(final int value) {
+
+        return remove(value) ? 1 : 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int removeAll(final IntLookupContainer c) {
+
+        if (c instanceof IntBitmapSet) {
+
+            final int count = this.size;
+            andNot((IntBitmapSet) c);
+
+            return count - this.size;
+        }
+
+        return super.removeAll(c);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int retainAll(final IntLookupContainer c) {
+
+        if (c instanceof IntBitmapSet) {
+
+            final int count = this.size;
+            and((IntBitmapSet) c);
+
+            return count - this.size;
+        }
+
+        return super.retainAll(c);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int removeAll(final IntPredicate predicate) {
+
+        final int count = this.size;
+
+        try {
+            for (int i = 0; i < this.containerCount; i++) {
+
+                if (this.types[i] == IntBitmapSet.RUN) {
+
+                    expand(i);
+                }
+
+                final int base = IntBitmapSet.baseOf(this.highs[i]);
+                final int cardinality = this.cardinalities[i];
+
+                if (this.types[i] == IntBitmapSet.ARRAY) {
+
+                    final char[] values = this.shorts[i];
+
+                    int kept = 0;
+                    int tested = 0;
+
+                    try {
+                        for (; tested < cardinality; tested++) {
+
+                            final char low = values[tested];
+
+                            if (!predicate.apply(base | low)) {
+
+                                values[kept++] = low;
+                            }
+                        }
+                    } finally {
+
+                        //keep the values not tested, on exception
+                        System.arraycopy(values, tested, values, kept, cardinality - tested);
+
+                        this.cardinalities[i] = kept + cardinality - tested;
+                        this.size -= tested - kept;
+                    }
+                } else {
+
+                    final long[] words = this.bitmaps[i];
+
+                    for (int w = 0; w < IntBitmapSet.BITMAP_WORDS; w++) {
+
+                        long word = words[w];
+
+                        while (word != 0) {
+
+                            final int bit = Long.numberOfTrailingZeros(word);
+                            word &= word - 1;
+
+                            if (predicate.apply(base | (w << 6) | bit)) {
+
+                                words[w] &= ~(1L << bit);
+                                this.cardinalities[i]--;
+                                this.size--;
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+
+            compact();
+        }
+
+        return count - this.size;
+    }
+
+    /**
+     * Add all the values of other to this set.
+     */
+    public void or(final IntBitmapSet other) {
+
+        if (other == this) {
+
+            return;
+        }
+
+        for (int j = 0; j < other.containerCount; j++) {
+
+            int i = containerIndex(other.highs[j]);
+
+            if (i < 0) {
+
+                i = ~i;
+                insertContainer(i, other.highs[j], other.types[j], other.shorts[j] == null ? null : other.shorts[j].clone(),
+                        other.bitmaps[j] == null ? null : other.bitmaps[j].clone(), other.cardinalities[j]);
+                this.size += other.cardinalities[j];
+                continue;
+            }
+
+            final int cardinality = this.cardinalities[i];
+
+            if (this.types[i] == IntBitmapSet.ARRAY && other.types[j] == IntBitmapSet.ARRAY
+                    && cardinality + other.cardinalities[j] <= IntBitmapSet.ARRAY_MAX_SIZE) {
+
+                mergeArrays(i, other.shorts[j], other.cardinalities[j]);
+            } else {
+
+                if (this.types[i] != IntBitmapSet.BITMAP) {
+
+                    toBitmap(i);
+                }
+
+                final long[] words = this.bitmaps[i];
+                final long[] otherWords = other.wordsOf(j, scratch());
+
+                for (int w = 0; w < IntBitmapSet.BITMAP_WORDS; w++) {
+
+                    words[w] |= otherWords[w];
+                }
+
+                this.cardinalities[i] = (int) BitUtil.pop_array(words, 0, IntBitmapSet.BITMAP_WORDS);
+                normalize(i);
+            }
+
+            this.size += this.cardinalities[i] - cardinality;
+        }
+    }
+
+    /**
+     * Keep only the values of this set also in other.
+     */
+    public void and(final IntBitmapSet other) {
+
+        if (other == this) {
+
+            return;
+        }
+
+        for (int i = 0; i < this.containerCount; i++) {
+
+            final int j = other.containerIndex(this.highs[i]);
+            final int cardinality = this.cardinalities[i];
+
+            if (j < 0) {
+
+                this.cardinalities[i] = 0;
+            } else {
+
+                if (this.types[i] == IntBitmapSet.RUN) {
+
+                    expand(i);
+                }
+
+                if (this.types[i] == IntBitmapSet.ARRAY) {
+
+                    final char[] values = this.shorts[i];
+
+                    int kept = 0;
+
+                    for (int k = 0; k < cardinality; k++) {
+
+                        if (other.containsLow(j, values[k])) {
+
+                            values[kept++] = values[k];
+                        }
+                    }
+
+                    this.cardinalities[i] = kept;
+                } else {
+
+                    final long[] words = this.bitmaps[i];
+                    final long[] otherWords = other.wordsOf(j, scratch());
+
+                    for (int w = 0; w < IntBitmapSet.BITMAP_WORDS; w++) {
+
+                        words[w] &= otherWords[w];
+                    }
+
+                    this.cardinalities[i] = (int) BitUtil.pop_array(words, 0, IntBitmapSet.BITMAP_WORDS);
+                    normalize(i);
+                }
+            }
+
+            this.size += this.cardinalities[i] - cardinality;
+        }
+
+        compact();
+    }
+
+    /**
+     * Remove the values of other from this set.
+     */
+    public void andNot(final IntBitmapSet other) {
+
+        if (other == this) {
+
+            clear();
+            return;
+        }
+
+        for (int i = 0; i < this.containerCount; i++) {
+
+            final int j = other.containerIndex(this.highs[i]);
+
+            if (j < 0) {
+
+                continue;
+            }
+
+            final int cardinality = this.cardinalities[i];
+
+            if (this.types[i] == IntBitmapSet.RUN) {
+
+                expand(i);
+            }
+
+            if (this.types[i] == IntBitmapSet.ARRAY) {
+
+                final char[] values = this.shorts[i];
+
+                int kept = 0;
+
+                for (int k = 0; k < cardinality; k++) {
+
+                    if (!other.containsLow(j, values[k])) {
+
+                        values[kept++] = values[k];
+                    }
+                }
+
+                this.cardinalities[i] = kept;
+            } else {
+
+                final long[] words = this.bitmaps[i];
+                final long[] otherWords = other.wordsOf(j, scratch());
+
+                for (int w = 0; w < IntBitmapSet.BITMAP_WORDS; w++) {
+
+                    words[w] &= ~otherWords[w];
+                }
+
+                this.cardinalities[i] = (int) BitUtil.pop_array(words, 0, IntBitmapSet.BITMAP_WORDS);
+                normalize(i);
+            }
+
+            this.size += this.cardinalities[i] - cardinality;
+        }
+
+        compact();
+    }
+
+    /**
+     * Keep the values either in this set or in other, but not in both.
+     */
+    public void xor(final IntBitmapSet other) {
+
+        if (other == this) {
+
+            clear();
+            return;
+        }
+
+        for (int j = 0; j < other.containerCount; j++) {
+
+            int i = containerIndex(other.highs[j]);
+
+            if (i < 0) {
+
+                i = ~i;
+                insertContainer(i, other.highs[j], other.types[j], other.shorts[j] == null ? null : other.shorts[j].clone(),
+                        other.bitmaps[j] == null ? null : other.bitmaps[j].clone(), other.cardinalities[j]);
+                this.size += other.cardinalities[j];
+                continue;
+            }
+
+            final int cardinality = this.cardinalities[i];
+
+            if (this.types[i] != IntBitmapSet.BITMAP) {
+
+                toBitmap(i);
+            }
+
+            final long[] words = this.bitmaps[i];
+            final long[] otherWords = other.wordsOf(j, scratch());
+
+            for (int w = 0; w < IntBitmapSet.BITMAP_WORDS; w++) {
+
+                words[w] ^= otherWords[w];
+            }
+
+            this.cardinalities[i] = (int) BitUtil.pop_array(words, 0, IntBitmapSet.BITMAP_WORDS);
+            normalize(i);
+
+            this.size += this.cardinalities[i] - cardinality;
+        }
+
+        compact();
+    }
+
+    /**
+     * @return the number of values in both a and b, without building their intersection.
+     */
+    public static int intersectionCount(final IntBitmapSet a, final IntBitmapSet b) {
+
+        return IntBitmapSet.combinationCount(a, b, IntBitmapSet.AND);
+    }
+
+    /**
+     * @return the number of values in a or b, without building their union.
+     */
+    public static int unionCount(final IntBitmapSet a, final IntBitmapSet b) {
+
+        return IntBitmapSet.combinationCount(a, b, IntBitmapSet.OR);
+    }
+
+    /**
+     * @return the number of values in a but not in b, without building their difference.
+     */
+    public static int andNotCount(final IntBitmapSet a, final IntBitmapSet b) {
+
+        return IntBitmapSet.combinationCount(a, b, IntBitmapSet.AND_NOT);
+    }
+
+    /**
+     * @return the number of values either in a or in b, but not in both, without building their symmetric difference.
+     */
+    public static int xorCount(final IntBitmapSet a, final IntBitmapSet b) {
+
+        return IntBitmapSet.combinationCount(a, b, IntBitmapSet.XOR);
+    }
+
+    /**
+     * Convert the containers to run containers where smaller.
+     * @return true if at least one container was converted.
+     */
+    public boolean runOptimize() {
+
+        boolean converted = false;
+
+        for (int i = 0; i < this.containerCount; i++) {
+
+            if (this.types[i] == IntBitmapSet.RUN) {
+
+                continue;
+            }
+
+            final int runs = countRuns(i);
+            final int currentBytes = this.types[i] == IntBitmapSet.ARRAY ? 2 * this.cardinalities[i] : 8 * IntBitmapSet.BITMAP_WORDS;
+
+            if (4 * runs < currentBytes) {
+
+                toRun(i, runs);
+                converted = true;
+            }
+        }
+
+        return converted;
+    }
+
+    /**
+     * @return an estimate of the memory used by the values, in bytes.
+     */
+    public long sizeInBytes() {
+
+        //high, type, cardinality and references
+        long bytes = 17L * this.highs.length;
+
+        for (int i = 0; i < this.containerCount; i++) {
+
+            bytes += this.types[i] == IntBitmapSet.BITMAP ? 8L * IntBitmapSet.BITMAP_WORDS : 2L * this.shorts[i].length;
+        }
+
+        return bytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+
+        for (int i = 0; i < this.containerCount; i++) {
+
+            this.shorts[i] = null;
+            this.bitmaps[i] = null;
+        }
+
+        this.containerCount = 0;
+        this.size = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+
+        return this.size;
+    }
+
+    /**
+     * @return the number of values the allocated containers can hold without allocating.
+     */
+    @Override
+    public int capacity() {
+
+        long capacity = 0;
+
+        for (int i = 0; i < this.containerCount; i++) {
+
+            if (this.types[i] == IntBitmapSet.BITMAP) {
+
+                capacity += 64 * IntBitmapSet.BITMAP_WORDS;
+            } else if (this.types[i] == IntBitmapSet.ARRAY) {
+
+                capacity += this.shorts[i].length;
+            } else {
+
+                capacity += this.cardinalities[i];
+            }
+        }
+
+        return (int) Math.min(capacity, Integer.MAX_VALUE);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int[] toArray(final int[] target) {
+
+        int count = 0;
+
+        for (int i = 0; i < this.containerCount; i++) {
+
+            final int base = IntBitmapSet.baseOf(this.highs[i]);
+
+            if (this.types[i] == IntBitmapSet.ARRAY) {
+
+                final char[] values = this.shorts[i];
+
+                for (int k = 0; k < this.cardinalities[i]; k++) {
+
+                    target[count++] = base | values[k];
+                }
+            } else if (this.types[i] == IntBitmapSet.BITMAP) {
+
+                final long[] words = this.bitmaps[i];
+
+                for (int w = 0; w < IntBitmapSet.BITMAP_WORDS; w++) {
+
+                    long word = words[w];
+
+                    while (word != 0) {
+
+                        target[count++] = base | (w << 6) | Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                    }
+                }
+            } else {
+
+                final char[] runs = this.shorts[i];
+
+                for (int r = 0; r < runs.length; r += 2) {
+
+                    final int end = runs[r] + runs[r + 1];
+
+                    for (int low = runs[r]; low <= end; low++) {
+
+                        target[count++] = base | low;
+                    }
+                }
+            }
+        }
+
+        return target;
+    }
+
+    /**
+     * Applies a given procedure to all values in ascending order.
+     */
+    @Override
+    public <T extends IntProcedure> T forEach(final T procedure) {
+
+        for (int i = 0; i < this.containerCount; i++) {
+
+            final int base = IntBitmapSet.baseOf(this.highs[i]);
+
+            if (this.types[i] == IntBitmapSet.ARRAY) {
+
+                final char[] values = this.shorts[i];
+
+                for (int k = 0; k < this.cardinalities[i]; k++) {
+
+                    procedure.apply(base | values[k]);
+                }
+            } else if (this.types[i] == IntBitmapSet.BITMAP) {
+
+                final long[] words = this.bitmaps[i];
+
+                for (int w = 0; w < IntBitmapSet.BITMAP_WORDS; w++) {
+
+                    long word = words[w];
+
+                    while (word != 0) {
+
+                        procedure.apply(base | (w << 6) | Long.numberOfTrailingZeros(word));
+                        word &= word - 1;
+                    }
+                }
+            } else {
+
+                final char[] runs = this.shorts[i];
+
+                for (int r = 0; r < runs.length; r += 2) {
+
+                    final int end = runs[r] + runs[r + 1];
+
+                    for (int low = runs[r]; low <= end; low++) {
+
+                        procedure.apply(base | low);
+                    }
+                }
+            }
+        }
+
+        return procedure;
+    }
+
+    /**
+     * Applies a given predicate to all values in ascending order, until the predicate returns <code>false</code>.
+     */
+    @Override
+    public <T extends IntPredicate> T forEach(final T predicate) {
+
+        for (int i = 0; i < this.containerCount; i++) {
+
+            final int base = IntBitmapSet.baseOf(this.highs[i]);
+
+            if (this.types[i] == IntBitmapSet.ARRAY) {
+
+                final char[] values = this.shorts[i];
+
+                for (int k = 0; k < this.cardinalities[i]; k++) {
+
+                    if (!predicate.apply(base | values[k])) {
+                        return predicate;
+                    }
+                }
+            } else if (this.types[i] == IntBitmapSet.BITMAP) {
+
+                final long[] words = this.bitmaps[i];
+
+                for (int w = 0; w < IntBitmapSet.BITMAP_WORDS; w++) {
+
+                    long word = words[w];
+
+                    while (word != 0) {
+
+                        if (!predicate.apply(base | (w << 6) | Long.numberOfTrailingZeros(word))) {
+                            return predicate;
+                        }
+
+                        word &= word - 1;
+                    }
+                }
+            } else {
+
+                final char[] runs = this.shorts[i];
+
+                for (int r = 0; r < runs.length; r += 2) {
+
+                    final int end = runs[r] + runs[r + 1];
+
+                    for (int low = runs[r]; low <= end; low++) {
+
+                        if (!predicate.apply(base | low)) {
+                            return predicate;
+                        }
+                    }
+                }
+            }
+        }
+
+        return predicate;
+    }
+
+    /**
+     * An iterator implementation for {@link #iterator}, in ascending order.
+     * Holds a IntCursor returning (value, index) = (int value, index the rank of the value in the set).
+     */
+    public final class EntryIterator extends AbstractIterator<IntCursor>
+    {
+        public final IntCursor cursor;
+
+        /**
+         * Current container.
+         */
+        private int container;
+
+        /**
+         * Next value in an array container, next word in a bitmap container, current run in a run container.
+         */
+        private int position;
+
+        /**
+         * Bits of the current word not iterated yet, in a bitmap container.
+         */
+        private long word;
+
+        /**
+         * Next value in the current run, relative to its start, in a run container.
+         */
+        private int offset;
+
+        public EntryIterator() {
+            this.cursor = new IntCursor();
+        }
+
+        void reset() {
+
+            this.cursor.index = -1;
+            this.container = 0;
+            this.position = 0;
+            this.word = 0L;
+            this.offset = 0;
+        }
+
+        @Override
+        protected IntCursor fetch() {
+
+            final IntBitmapSet owner = IntBitmapSet.this;
+
+            while (this.container < owner.containerCount) {
+
+                final int i = this.container;
+                final int base = IntBitmapSet.baseOf(owner.highs[i]);
+
+                if (owner.types[i] == IntBitmapSet.ARRAY) {
+
+                    if (this.position < owner.cardinalities[i]) {
+
+                        return next(base | owner.shorts[i][this.position++]);
+                    }
+                } else if (owner.types[i] == IntBitmapSet.BITMAP) {
+
+                    final long[] words = owner.bitmaps[i];
+
+                    while (this.word == 0L && this.position < IntBitmapSet.BITMAP_WORDS) {
+
+                        this.word = words[this.position++];
+                    }
+
+                    if (this.word != 0L) {
+
+                        final int value = base | ((this.position - 1) << 6) | Long.numberOfTrailingZeros(this.word);
+                        this.word &= this.word - 1;
+
+                        return next(value);
+                    }
+                } else {
+
+                    final char[] runs = owner.shorts[i];
+
+                    if (2 * this.position < runs.length) {
+
+                        final int value = base | (runs[2 * this.position] + this.offset);
+
+                        if (this.offset == runs[2 * this.position + 1]) {
+
+                            this.position++;
+                            this.offset = 0;
+                        } else {
+
+                            this.offset++;
+                        }
+
+                        return next(value);
+                    }
+                }
+
+                this.container++;
+                this.position = 0;
+                this.word = 0L;
+                this.offset = 0;
+            }
+
+            return done();
+        }
+
+        private IntCursor next(final int value) {
+
+            this.cursor.index++;
+            this.cursor.value = value;
+
+            return this.cursor;
+        }
+    }
+
+    /**
+     * internal pool of EntryIterator
+     */
+    protected final IteratorPool<IntCursor, EntryIterator> entryIteratorPool = new IteratorPool<IntCursor, EntryIterator>(
+            new ObjectFactory<EntryIterator>() {
+
+                @Override
+                public EntryIterator create() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public void initialize(final EntryIterator obj) {
+                    obj.reset();
+                }
+
+                @Override
+                public void reset(final EntryIterator obj) {
+                    //nothing
+                }
+            });
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public EntryIterator iterator() {
+        //return new EntryIterator();
+        return this.entryIteratorPool.borrow();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+
+        int h = 0;
+
+        final EntryIterator it = iterator();
+
+        while (it.hasNext()) {
+
+            h += BitMixer.mix(it.next().value);
+        }
+
+        return h;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(final Object obj) {
+
+        if (obj != null) {
+            if (obj == this) {
+                return true;
+            }
+
+            //must be of the same class, subclasses are not comparable
+            if (obj.getClass() != this.getClass()) {
+
+                return false;
+            }
+
+            final IntBitmapSet other = (IntBitmapSet) obj;
+
+            //must be of the same size
+            if (other.size() != this.size()) {
+                return false;
+            }
+
+            final EntryIterator it = this.iterator();
+
+            while (it.hasNext()) {
+                if (!other.contains(it.next().value)) {
+                    //recycle
+                    it.release();
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IntBitmapSet clone() {
+
+        final IntBitmapSet cloned = new IntBitmapSet();
+
+        cloned.allocateContainers(Math.max(this.containerCount, IntBitmapSet.DEFAULT_CONTAINERS));
+
+        for (int i = 0; i < this.containerCount; i++) {
+
+            cloned.highs[i] = this.highs[i];
+            cloned.types[i] = this.types[i];
+            cloned.cardinalities[i] = this.cardinalities[i];
+            cloned.shorts[i] = this.shorts[i] == null ? null : this.shorts[i].clone();
+            cloned.bitmaps[i] = this.bitmaps[i] == null ? null : this.bitmaps[i].clone();
+        }
+
+        cloned.containerCount = this.containerCount;
+        cloned.size = this.size;
+
+        return cloned;
+    }
+
+    /**
+     * Create a set from a variable number of arguments or an array of <code>int</code>.
+     */
+    public static IntBitmapSet from(final int... values) {
+
+        final IntBitmapSet set = new IntBitmapSet();
+        set.add(values);
+
+        return set;
+    }
+
+    /**
+     * Create a set from elements of another container.
+     */
+    public static IntBitmapSet from(final IntContainer container) {
+
+        final IntBitmapSet set = new IntBitmapSet();
+        set.addAll(container);
+
+        return set;
+    }
+
+    /**
+     * Create a new set (constructor shortcut).
+     */
+    public static IntBitmapSet newInstance() {
+        return new IntBitmapSet();
+    }
+
+    /**
+     * Operations of {@link #combinationCount(IntBitmapSet, IntBitmapSet, int)}.
+     */
+    private static final int AND = 0;
+    private static final int OR = 1;
+    private static final int AND_NOT = 2;
+    private static final int XOR = 3;
+
+    /**
+     * @return the cardinality of the combination of a and b by operation, container by container.
+     */
+    private static int combinationCount(final IntBitmapSet a, final IntBitmapSet b, final int operation) {
+
+        long count = 0;
+
+        int i = 0;
+        int j = 0;
+
+        while (i < a.containerCount || j < b.containerCount) {
+
+            final int highA = i < a.containerCount ? a.highs[i] : Integer.MAX_VALUE;
+            final int highB = j < b.containerCount ? b.highs[j] : Integer.MAX_VALUE;
+
+            if (highA < highB) {
+
+                //only in a
+                if (operation != IntBitmapSet.AND) {
+                    count += a.cardinalities[i];
+                }
+
+                i++;
+            } else if (highB < highA) {
+
+                //only in b
+                if (operation == IntBitmapSet.OR || operation == IntBitmapSet.XOR) {
+                    count += b.cardinalities[j];
+                }
+
+                j++;
+            } else {
+
+                if (a.types[i] == IntBitmapSet.BITMAP && b.types[j] == IntBitmapSet.BITMAP) {
+
+                    final long[] wordsA = a.bitmaps[i];
+                    final long[] wordsB = b.bitmaps[j];
+
+                    switch (operation) {
+
+                        case AND:
+                            count += BitUtil.pop_intersect(wordsA, wordsB, 0, IntBitmapSet.BITMAP_WORDS);
+                            break;
+                        case OR:
+                            count += BitUtil.pop_union(wordsA, wordsB, 0, IntBitmapSet.BITMAP_WORDS);
+                            break;
+                        case AND_NOT:
+                            count += BitUtil.pop_andnot(wordsA, wordsB, 0, IntBitmapSet.BITMAP_WORDS);
+                            break;
+                        default:
+                            count += BitUtil.pop_xor(wordsA, wordsB, 0, IntBitmapSet.BITMAP_WORDS);
+                            break;
+                    }
+                } else {
+
+                    final int intersection = IntBitmapSet.intersectionCount(a, i, b, j);
+
+                    switch (operation) {
+
+                        case AND:
+                            count += intersection;
+                            break;
+                        case OR:
+                            count += a.cardinalities[i] + b.cardinalities[j] - intersection;
+                            break;
+                        case AND_NOT:
+                            count += a.cardinalities[i] - intersection;
+                            break;
+                        default:
+                            count += a.cardinalities[i] + b.cardinalities[j] - 2 * intersection;
+                            break;
+                    }
+                }
+
+                i++;
+                j++;
+            }
+        }
+
+        return (int) count;
+    }
+
+    /**
+     * @return the number of values in both the container i of a and the container j of b, not both bitmaps.
+     */
+    private static int intersectionCount(final IntBitmapSet a, final int i, final IntBitmapSet b, final int j) {
+
+        //enumerate the smallest array container
+        if (a.types[i] == IntBitmapSet.ARRAY || b.types[j] == IntBitmapSet.ARRAY) {
+
+            final boolean enumerateA = a.types[i] == IntBitmapSet.ARRAY
+                    && (b.types[j] != IntBitmapSet.ARRAY || a.cardinalities[i] <= b.cardinalities[j]);
+
+            final IntBitmapSet enumerated = enumerateA ? a : b;
+            final IntBitmapSet tested = enumerateA ? b : a;
+            final int e = enumerateA ? i : j;
+            final int t = enumerateA ? j : i;
+
+            final char[] values = enumerated.shorts[e];
+
+            int count = 0;
+
+            for (int k = 0; k < enumerated.cardinalities[e]; k++) {
+
+                if (tested.containsLow(t, values[k])) {
+                    count++;
+                }
+            }
+
+            return count;
+        }
+
+        //at least one run container, the other a run or a bitmap container
+        final boolean runA = a.types[i] == IntBitmapSet.RUN;
+
+        final char[] runs = runA ? a.shorts[i] : b.shorts[j];
+        final IntBitmapSet other = runA ? b : a;
+        final int o = runA ? j : i;
+
+        int count = 0;
+
+        if (other.types[o] == IntBitmapSet.BITMAP) {
+
+            final long[] words = other.bitmaps[o];
+
+            for (int r = 0; r < runs.length; r += 2) {
+
+                count += IntBitmapSet.countRange(words, runs[r], runs[r] + runs[r + 1]);
+            }
+        } else {
+
+            //overlaps of the two sorted lists of runs
+            final char[] otherRuns = other.shorts[o];
+
+            int r = 0;
+            int s = 0;
+
+            while (r < runs.length && s < otherRuns.length) {
+
+                final int end = runs[r] + runs[r + 1];
+                final int otherEnd = otherRuns[s] + otherRuns[s + 1];
+
+                final int overlap = Math.min(end, otherEnd) - Math.max(runs[r], otherRuns[s]) + 1;
+
+                if (overlap > 0) {
+                    count += overlap;
+                }
+
+                if (end < otherEnd) {
+                    r += 2;
+                } else {
+                    s += 2;
+                }
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * @return the number of set bits of words in [from; to].
+     */
+    private static int countRange(final long[] words, final int from, final int to) {
+
+        final int fromWord = from >>> 6;
+        final int toWord = to >>> 6;
+
+        final long fromMask = -1L << from;
+        final long toMask = -1L >>> (63 - (to & 63));
+
+        if (fromWord == toWord) {
+
+            return Long.bitCount(words[fromWord] & fromMask & toMask);
+        }
+
+        int count = Long.bitCount(words[fromWord] & fromMask);
+
+        for (int w = fromWord + 1; w < toWord; w++) {
+
+            count += Long.bitCount(words[w]);
+        }
+
+        return count + Long.bitCount(words[toWord] & toMask);
+    }
+
+    /**
+     * Set the bits of words in [from; to].
+     */
+    private static void setRange(final long[] words, final int from, final int to) {
+
+        final int fromWord = from >>> 6;
+        final int toWord = to >>> 6;
+
+        final long fromMask = -1L << from;
+        final long toMask = -1L >>> (63 - (to & 63));
+
+        if (fromWord == toWord) {
+
+            words[fromWord] |= fromMask & toMask;
+            return;
+        }
+
+        words[fromWord] |= fromMask;
+
+        for (int w = fromWord + 1; w < toWord; w++) {
+
+            words[w] = -1L;
+        }
+
+        words[toWord] |= toMask;
+    }
+
+    private static void setBit(final long[] words, final int bit) {
+
+        words[bit >>> 6] |= 1L << bit;
+    }
+
+    /**
+     * @return the chunk of value: its 16 highest bits, sign bit flipped.
+     */
+    private static int highOf(final int value) {
+
+        return (value >>> 16) ^ 0x8000;
+    }
+
+    /**
+     * @return the lowest value of the chunk high.
+     */
+    private static int baseOf(final int high) {
+
+        return (high ^ 0x8000) << 16;
+    }
+
+    /**
+     * Binary search of low in values[0; length[.
+     * @return the index of low, or ~(the index where to insert it).
+     */
+    private static int search(final char[] values, final int length, final char low) {
+
+        int from = 0;
+        int to = length - 1;
+
+        while (from <= to) {
+
+            final int mid = (from + to) >>> 1;
+            final char midValue = values[mid];
+
+            if (midValue < low) {
+
+                from = mid + 1;
+            } else if (midValue > low) {
+
+                to = mid - 1;
+            } else {
+
+                return mid;
+            }
+        }
+
+        return ~from;
+    }
+
+    /**
+     * @return true if low is in one of the runs.
+     */
+    private static boolean runContains(final char[] runs, final char low) {
+
+        //last run starting at or before low
+        int from = 0;
+        int to = runs.length / 2 - 1;
+
+        while (from <= to) {
+
+            final int mid = (from + to) >>> 1;
+
+            if (runs[2 * mid] <= low) {
+
+                from = mid + 1;
+            } else {
+
+                to = mid - 1;
+            }
+        }
+
+        return to >= 0 && low <= runs[2 * to] + runs[2 * to + 1];
+    }
+
+    /**
+     * @return the index of the container of high, or ~(the index where to insert it).
+     */
+    private int containerIndex(final int high) {
+
+        final int[] highs = this.highs;
+
+        int from = 0;
+        int to = this.containerCount - 1;
+
+        while (from <= to) {
+
+            final int mid = (from + to) >>> 1;
+            final int midHigh = highs[mid];
+
+            if (midHigh < high) {
+
+                from = mid + 1;
+            } else if (midHigh > high) {
+
+                to = mid - 1;
+            } else {
+
+                return mid;
+            }
+        }
+
+        return ~from;
+    }
+
+    /**
+     * @return true if the container i holds low.
+     */
+    private boolean containsLow(final int i, final char low) {
+
+        switch (this.types[i]) {
+
+            case ARRAY:
+                return IntBitmapSet.search(this.shorts[i], this.cardinalities[i], low) >= 0;
+            case BITMAP:
+                return (this.bitmaps[i][low >>> 6] & (1L << low)) != 0;
+            default:
+                return IntBitmapSet.runContains(this.shorts[i], low);
+        }
+    }
+
+    /**
+     * @return the words of the container i: its own for a bitmap container, else filled in buffer.
+     */
+    private long[] wordsOf(final int i, final long[] buffer) {
+
+        if (this.types[i] == IntBitmapSet.BITMAP) {
+
+            return this.bitmaps[i];
+        }
+
+        java.util.Arrays.fill(buffer, 0L);
+
+        final char[] values = this.shorts[i];
+
+        if (this.types[i] == IntBitmapSet.ARRAY) {
+
+            for (int k = 0; k < this.cardinalities[i]; k++) {
+
+                IntBitmapSet.setBit(buffer, values[k]);
+            }
+        } else {
+
+            for (int r = 0; r < values.length; r += 2) {
+
+                IntBitmapSet.setRange(buffer, values[r], values[r] + values[r + 1]);
+            }
+        }
+
+        return buffer;
+    }
+
+    private long[] scratch() {
+
+        if (this.scratch == null) {
+
+            this.scratch = new long[IntBitmapSet.BITMAP_WORDS];
+        }
+
+        return this.scratch;
+    }
+
+    /**
+     * Insert low at position of the array container i, not full.
+     */
+    private void insertInArray(final int i, final int position, final char low) {
+
+        char[] values = this.shorts[i];
+        final int cardinality = this.cardinalities[i];
+
+        if (cardinality == values.length) {
+
+            final char[] newValues = new char[Math.min(IntBitmapSet.ARRAY_MAX_SIZE, 2 * cardinality)];
+            System.arraycopy(values, 0, newValues, 0, cardinality);
+
+            values = newValues;
+            this.shorts[i] = values;
+        }
+
+        System.arraycopy(values, position, values, position + 1, cardinality - position);
+        values[position] = low;
+    }
+
+    /**
+     * Merge the sorted values of an array container of another set into the array container i,
+     * their union holding at most {@link #ARRAY_MAX_SIZE} values.
+     */
+    private void mergeArrays(final int i, final char[] otherValues, final int otherCardinality) {
+
+        final char[] values = this.shorts[i];
+        final int cardinality = this.cardinalities[i];
+
+        final char[] merged = new char[Math.max(4, cardinality + otherCardinality)];
+
+        int k = 0;
+        int l = 0;
+        int count = 0;
+
+        while (k < cardinality && l < otherCardinality) {
+
+            if (values[k] < otherValues[l]) {
+
+                merged[count++] = values[k++];
+            } else if (values[k] > otherValues[l]) {
+
+                merged[count++] = otherValues[l++];
+            } else {
+
+                merged[count++] = values[k++];
+                l++;
+            }
+        }
+
+        while (k < cardinality) {
+            merged[count++] = values[k++];
+        }
+
+        while (l < otherCardinality) {
+            merged[count++] = otherValues[l++];
+        }
+
+        this.shorts[i] = merged;
+        this.cardinalities[i] = count;
+    }
+
+    /**
+     * Convert the array or run container i to a bitmap container.
+     */
+    private void toBitmap(final int i) {
+
+        final long[] words = new long[IntBitmapSet.BITMAP_WORDS];
+
+        this.bitmaps[i] = wordsOf(i, words);
+        this.shorts[i] = null;
+        this.types[i] = IntBitmapSet.BITMAP;
+    }
+
+    /**
+     * Convert the bitmap or run container i to an array container.
+     */
+    private void toArrayContainer(final int i) {
+
+        final char[] values = new char[Math.max(4, this.cardinalities[i])];
+
+        int count = 0;
+
+        if (this.types[i] == IntBitmapSet.BITMAP) {
+
+            final long[] words = this.bitmaps[i];
+
+            for (int w = 0; w < IntBitmapSet.BITMAP_WORDS; w++) {
+
+                long word = words[w];
+
+                while (word != 0) {
+
+                    values[count++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        } else {
+
+            final char[] runs = this.shorts[i];
+
+            for (int r = 0; r < runs.length; r += 2) {
+
+                final int end = runs[r] + runs[r + 1];
+
+                for (int low = runs[r]; low <= end; low++) {
+
+                    values[count++] = (char) low;
+                }
+            }
+        }
+
+        this.shorts[i] = values;
+        this.bitmaps[i] = null;
+        this.types[i] = IntBitmapSet.ARRAY;
+    }
+
+    /**
+     * Convert the run container i to an array or a bitmap container, according to its cardinality.
+     */
+    private void expand(final int i) {
+
+        if (this.cardinalities[i] <= IntBitmapSet.ARRAY_MAX_SIZE) {
+
+            toArrayContainer(i);
+        } else {
+
+            toBitmap(i);
+        }
+    }
+
+    /**
+     * Convert the non-empty container i to the array or the bitmap type its cardinality calls for.
+     */
+    private void normalize(final int i) {
+
+        if (this.types[i] == IntBitmapSet.BITMAP && this.cardinalities[i] > 0
+                && this.cardinalities[i] <= IntBitmapSet.ARRAY_MAX_SIZE) {
+
+            toArrayContainer(i);
+        } else if (this.types[i] == IntBitmapSet.ARRAY && this.cardinalities[i] > IntBitmapSet.ARRAY_MAX_SIZE) {
+
+            toBitmap(i);
+        }
+    }
+
+    /**
+     * @return the number of runs of consecutive values of the array or bitmap container i.
+     */
+    private int countRuns(final int i) {
+
+        int runs = 0;
+
+        if (this.types[i] == IntBitmapSet.ARRAY) {
+
+            final char[] values = this.shorts[i];
+
+            for (int k = 0; k < this.cardinalities[i]; k++) {
+
+                if (k == 0 || values[k] != values[k - 1] + 1) {
+                    runs++;
+                }
+            }
+        } else {
+
+            final long[] words = this.bitmaps[i];
+
+            long previous = 0L;
+
+            for (int w = 0; w < IntBitmapSet.BITMAP_WORDS; w++) {
+
+                final long word = words[w];
+
+                //bits set whose lower neighbour is not
+                runs += Long.bitCount(word & ~((word << 1) | (previous >>> 63)));
+                previous = word;
+            }
+        }
+
+        return runs;
+    }
+
+    /**
+     * Convert the array or bitmap container i of the given number of runs to a run container.
+     */
+    private void toRun(final int i, final int runCount) {
+
+        final char[] runs = new char[2 * runCount];
+
+        int r = -2;
+        int previous = -2;
+
+        if (this.types[i] == IntBitmapSet.ARRAY) {
+
+            final char[] values = this.shorts[i];
+
+            for (int k = 0; k < this.cardinalities[i]; k++) {
+
+                final int low = values[k];
+
+                if (low != previous + 1) {
+
+                    r += 2;
+                    runs[r] = (char) low;
+                }
+
+                runs[r + 1] = (char) (low - runs[r]);
+                previous = low;
+            }
+        } else {
+
+            final long[] words = this.bitmaps[i];
+
+            for (int w = 0; w < IntBitmapSet.BITMAP_WORDS; w++) {
+
+                long word = words[w];
+
+                while (word != 0) {
+
+                    final int low = (w << 6) | Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+
+                    if (low != previous + 1) {
+
+                        r += 2;
+                        runs[r] = (char) low;
+                    }
+
+                    runs[r + 1] = (char) (low - runs[r]);
+                    previous = low;
+                }
+            }
+        }
+
+        this.shorts[i] = runs;
+        this.bitmaps[i] = null;
+        this.types[i] = IntBitmapSet.RUN;
+    }
+
+    /**
+     * Insert a container at index i.
+     */
+    private void insertContainer(final int i, final int high, final byte type, final char[] values, final long[] words, final int cardinality) {
+
+        final int count = this.containerCount;
+
+        if (count == this.highs.length) {
+
+            final int[] highs = this.highs;
+            final byte[] types = this.types;
+            final int[] cardinalities = this.cardinalities;
+            final char[][] shorts = this.shorts;
+            final long[][] bitmaps = this.bitmaps;
+
+            allocateContainers(2 * count);
+
+            System.arraycopy(highs, 0, this.highs, 0, count);
+            System.arraycopy(types, 0, this.types, 0, count);
+            System.arraycopy(cardinalities, 0, this.cardinalities, 0, count);
+            System.arraycopy(shorts, 0, this.shorts, 0, count);
+            System.arraycopy(bitmaps, 0, this.bitmaps, 0, count);
+        }
+
+        System.arraycopy(this.highs, i, this.highs, i + 1, count - i);
+        System.arraycopy(this.types, i, this.types, i + 1, count - i);
+        System.arraycopy(this.cardinalities, i, this.cardinalities, i + 1, count - i);
+        System.arraycopy(this.shorts, i, this.shorts, i + 1, count - i);
+        System.arraycopy(this.bitmaps, i, this.bitmaps, i + 1, count - i);
+
+        this.highs[i] = high;
+        this.types[i] = type;
+        this.cardinalities[i] = cardinality;
+        this.shorts[i] = values;
+        this.bitmaps[i] = words;
+
+        this.containerCount++;
+    }
+
+    /**
+     * Remove the container at index i.
+     */
+    private void removeContainer(final int i) {
+
+        final int moved = this.containerCount - i - 1;
+
+        System.arraycopy(this.highs, i + 1, this.highs, i, moved);
+        System.arraycopy(this.types, i + 1, this.types, i, moved);
+        System.arraycopy(this.cardinalities, i + 1, this.cardinalities, i, moved);
+        System.arraycopy(this.shorts, i + 1, this.shorts, i, moved);
+        System.arraycopy(this.bitmaps, i + 1, this.bitmaps, i, moved);
+
+        this.containerCount--;
+
+        this.shorts[this.containerCount] = null;
+        this.bitmaps[this.containerCount] = null;
+    }
+
+    /**
+     * Remove the empty containers, and normalize the others.
+     */
+    private void compact() {
+
+        int count = 0;
+
+        for (int i = 0; i < this.containerCount; i++) {
+
+            if (this.cardinalities[i] == 0) {
+
+                continue;
+            }
+
+            normalize(i);
+
+            this.highs[count] = this.highs[i];
+            this.types[count] = this.types[i];
+            this.cardinalities[count] = this.cardinalities[i];
+            this.shorts[count] = this.shorts[i];
+            this.bitmaps[count] = this.bitmaps[i];
+            count++;
+        }
+
+        for (int i = count; i < this.containerCount; i++) {
+
+            this.shorts[i] = null;
+            this.bitmaps[i] = null;
+        }
+
+        this.containerCount = count;
+    }
+
+    private void allocateContainers(final int capacity) {
+
+        try {
+            this.highs = new int[capacity];
+            this.types = new byte[capacity];
+            this.cardinalities = new int[capacity];
+            this.shorts = new char[capacity][];
+            this.bitmaps = new long[capacity][];
+
+        } catch (final OutOfMemoryError e) {
+
+            throw new BufferAllocationException(
+                    "Not enough memory to allocate buffers to grow from %d -> %d elements",
+                    e,
+                    this.containerCount,
+                    capacity);
+        }
+    }
+}
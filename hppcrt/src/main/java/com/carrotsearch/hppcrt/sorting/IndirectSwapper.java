@@ -0,0 +1,14 @@
+package com.carrotsearch.hppcrt.sorting;
+
+/**
+ * Swap the elements at two given indices of whatever data the implementation is holding,
+ * for instance to apply the moves of a sort of some array to other arrays of the same length,
+ * as the KTypeVTypeSort co-sorting routines (IntFloatSort...) do with their companion arrays.
+ */
+public interface IndirectSwapper
+{
+    /**
+     * See class documentation.
+     */
+    public void swap(int indexA, int indexB);
+}
@@ -0,0 +1,284 @@
+package com.carrotsearch.hppcrt;
+
+import com.carrotsearch.hppcrt.hash.*;
+
+/*! #import("com/carrotsearch/hppcrt/Intrinsics.java") !*/
+/**
+ * An open addressing hash index of <code>KType</code> keys stored by slot in an array owned by a container,
+ * such as the caches, <code>KTypeVTypeMultiMap</code> or <code>KTypeCounter</code>, which keep their entries
+ * in dense arrays of slots and only need the slot of a key.
+ * <p>
+ * Each position of {@link #buffer} holds slot + 1 of a key, or 0 if it is empty. Keys are probed linearly
+ * and removed by shifting back the conflicting ones as <code>KTypeVTypeHashMap</code>. The keys array is passed
+ * to each method, since the container owns and reallocates it. Keys 0/null are not supported
+ * for <code>Object</code>s.
+ * </p>
+ */
+/*! ${TemplateOptions.generatedAnnotation} !*/
+public final class KTypeHashIndex<KType> implements Cloneable
+{
+    /**
+     * Hash-indexed array: slot + 1 of each indexed key, or 0 for an empty position.
+     */
+    public int[] buffer;
+
+    /**
+     * Number of indexed slots.
+     */
+    private int assigned;
+
+    /**
+     * Expand {@link #buffer} when {@link #assigned} exceeds this value.
+     */
+    private int resizeAt;
+
+    /**
+     * The load factor of {@link #buffer}.
+     */
+    private final double loadFactor;
+
+    /**
+     * Per-instance perturbation
+     * introduced in rehashing to create a unique key distribution.
+     */
+    private final int perturbation = Containers.randomSeed32();
+
+    /**
+     * Create an index able to hold expectedKeys slots without expanding.
+     */
+    public KTypeHashIndex(final int expectedKeys, final double loadFactor) {
+
+        this.loadFactor = loadFactor;
+
+        final int bufferSize = HashContainers.minBufferSize(expectedKeys, loadFactor);
+
+        try {
+            this.buffer = new int[bufferSize];
+
+        } catch (final OutOfMemoryError e) {
+
+            throw new BufferAllocationException(
+                    "Not enough memory to allocate buffers to grow from %d -> %d elements",
+                    e,
+                    0,
+                    bufferSize);
+        }
+
+        this.resizeAt = HashContainers.expandAtCount(bufferSize, loadFactor);
+    }
+
+    /**
+     * @return the position of key in {@link #buffer}, or ~(the empty position where to insert it) if key is not indexed.
+     */
+    public int positionOf(final KType key, final KType[] keys) {
+
+        final int[] buffer = this.buffer;
+        final int mask = buffer.length - 1;
+
+        int position = REHASH(key) & mask;
+        int entry;
+
+        while ((entry = buffer[position]) != 0) {
+
+            if (KEYEQUALS(key, keys[entry - 1])) {
+
+                return position;
+            }
+
+            position = (position + 1) & mask;
+        }
+
+        return ~position;
+    }
+
+    /**
+     * @return the slot of key, or -1 if key is not indexed.
+     */
+    public int slotOf(final KType key, final KType[] keys) {
+
+        final int position = positionOf(key, keys);
+
+        return position < 0 ? -1 : this.buffer[position] - 1;
+    }
+
+    /**
+     * @return the slot at the used position.
+     */
+    public int slotAt(final int position) {
+
+        return this.buffer[position] - 1;
+    }
+
+    /**
+     * Make the used position point to slot, for a key moved to slot by the container.
+     */
+    public void setSlotAt(final int position, final int slot) {
+
+        this.buffer[position] = slot + 1;
+    }
+
+    /**
+     * Index slot, of key keys[slot], at ~freePosition as returned by {@link #positionOf(Object, Object[])}
+     * for that key, expanding {@link #buffer} if needed.
+     */
+    public void insert(final int freePosition, final int slot, final KType[] keys) {
+
+        assert freePosition < 0 && this.buffer[~freePosition] == 0;
+
+        this.buffer[~freePosition] = slot + 1;
+
+        if (++this.assigned > this.resizeAt) {
+
+            expand(keys);
+        }
+    }
+
+    /**
+     * Remove the used position, shifting back the conflicting slots.
+     */
+    public void removeAt(int gapPosition, final KType[] keys) {
+
+        final int[] buffer = this.buffer;
+        final int mask = buffer.length - 1;
+
+        int distance = 0;
+
+        while (true) {
+
+            final int position = (gapPosition + (++distance)) & mask;
+            final int entry = buffer[position];
+
+            if (entry == 0) {
+                break;
+            }
+
+            final int idealPositionModMask = REHASH(keys[entry - 1]) & mask;
+
+            if (((position - idealPositionModMask) & mask) >= distance) {
+
+                buffer[gapPosition] = entry;
+                gapPosition = position;
+                distance = 0;
+            }
+        }
+
+        buffer[gapPosition] = 0;
+        this.assigned--;
+    }
+
+    /**
+     * @return the number of indexed slots.
+     */
+    public int size() {
+
+        return this.assigned;
+    }
+
+    /**
+     * @return the number of slots the index can hold without expanding.
+     */
+    public int capacity() {
+
+        return this.resizeAt;
+    }
+
+    /**
+     * Remove all the slots, keeping the current buffer.
+     */
+    public void clear() {
+
+        java.util.Arrays.fill(this.buffer, 0);
+        this.assigned = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public KTypeHashIndex<KType> clone() {
+
+        try {
+            @SuppressWarnings("unchecked")
+            final KTypeHashIndex<KType> cloned = (KTypeHashIndex<KType>) super.clone();
+
+            cloned.buffer = this.buffer.clone();
+
+            return cloned;
+
+        } catch (final CloneNotSupportedException e) {
+
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Double {@link #buffer}, re-inserting all the slots.
+     */
+    private void expand(final KType[] keys) {
+
+        final int[] oldBuffer = this.buffer;
+        final int newSize = HashContainers.nextBufferSize(oldBuffer.length, this.assigned, this.loadFactor);
+
+        final int[] buffer;
+
+        try {
+            buffer = new int[newSize];
+
+        } catch (final OutOfMemoryError e) {
+
+            throw new BufferAllocationException(
+                    "Not enough memory to allocate buffers to grow from %d -> %d elements",
+                    e,
+                    this.assigned,
+                    newSize);
+        }
+
+        final int mask = buffer.length - 1;
+
+        for (int i = oldBuffer.length; --i >= 0;) {
+
+            final int entry = oldBuffer[i];
+
+            if (entry != 0) {
+
+                int position = REHASH(keys[entry - 1]) & mask;
+
+                while (buffer[position] != 0) {
+
+                    position = (position + 1) & mask;
+                }
+
+                buffer[position] = entry;
+            }
+        }
+
+        this.buffer = buffer;
+        this.resizeAt = HashContainers.expandAtCount(newSize, this.loadFactor);
+    }
+
+    /*! #if ($TemplateOptions.declareInline("REHASH(value)",
+    "<Object>==>BitMixer.mix(value.hashCode() , this.perturbation)",
+    "<*>==>BitMixer.mix(value , this.perturbation)")) !*/
+    /**
+     * REHASH method for rehashing the keys.
+     * (inlined in generated code)
+     */
+    private int REHASH(final KType value) {
+
+        return BitMixer.mix(value.hashCode(), this.perturbation);
+    }
+
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.declareInline("KEYEQUALS(key1, key2)",
+    "<*>==>Intrinsics.<KType> equalsNotNull(key1, key2)")) !*/
+    /**
+     * macro which hides the applied equality criteria
+     */
+    private boolean KEYEQUALS(final KType key1, final KType key2) {
+
+        return Intrinsics.<KType> equalsNotNull(key1, key2);
+    }
+
+    /*! #end !*/
+}
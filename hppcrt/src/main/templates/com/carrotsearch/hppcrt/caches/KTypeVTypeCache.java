@@ -0,0 +1,758 @@
+package com.carrotsearch.hppcrt.caches;
+
+import com.carrotsearch.hppcrt.*;
+import com.carrotsearch.hppcrt.maps.*;
+import com.carrotsearch.hppcrt.procedures.*;
+import com.carrotsearch.hppcrt.hash.*;
+
+/*! #import("com/carrotsearch/hppcrt/Intrinsics.java") !*/
+/**
+ * A bounded cache of <code>KType</code> to <code>VType</code>, holding at most {@link #capacity()} entries,
+ * evicted according to a {@link CachePolicy}: {@link CachePolicy#LRU}, {@link CachePolicy#LFU} or {@link CachePolicy#W_TINY_LFU}.
+ * <p>
+ * Entries are stored in preallocated arrays of {@link #capacity()} slots, indexed by a {@link KTypeHashIndex},
+ * and threaded in the policy lists with the packed before / after pointers of
+ * {@link KTypeVTypeLinkedHashMap}: once constructed, the cache never allocates, whatever the operations.
+ * </p>
+ * <p>
+ * {@link #get(Object)} counts hits and misses, evictions are counted too, and can be observed
+ * by overriding {@link #evicted(Object, Object)}.
+ * </p>
+#if ($TemplateOptions.VTypeGeneric)
+ * <p>This implementation supports <code>null</code> values.</p>
+#end
+ */
+/*! ${TemplateOptions.doNotGenerateKType("BYTE", "CHAR", "SHORT", "FLOAT", "DOUBLE", "OBJECT")} !*/
+/*! ${TemplateOptions.generatedAnnotation} !*/
+public class KTypeVTypeCache<KType, VType>
+{
+    /**
+     * Lists of {@link CachePolicy#W_TINY_LFU}.
+     */
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    protected VType defaultValue = Intrinsics.<VType> empty();
+
+    /**
+     * Index of the slots of the keys in {@link #keys},
+     * sized for {@link #capacity()} keys at {@link HashContainers#DEFAULT_LOAD_FACTOR}.
+     */
+    public final KTypeHashIndex<KType> index;
+
+    /**
+     * Keys of the entries, by slot.
+     */
+    public final/*! #if ($TemplateOptions.KTypePrimitive)
+          KType []
+          #else !*/
+    Object[]
+    /*! #end !*/
+    keys;
+
+    /**
+     * Values of the entries, by slot.
+     */
+    public final/*! #if ($TemplateOptions.VTypePrimitive)
+          VType []
+          #else !*/
+    Object[]
+    /*! #end !*/
+    values;
+
+    /**
+     * Represent the before / after nodes of each slot in its list,
+     * such as the links of slot i are beforeAfterPointers[i] where
+     * the 32 highest bits represent the before node, the 32 lowest bits represent the after node.
+     * Node capacity + l is the circular head of list l: its after node is the eldest entry of l, its before node the latest one.
+     */
+    protected final long[] beforeAfterPointers;
+
+    /**
+     * List of each used slot: always 0 for {@link CachePolicy#LRU}, the access count for {@link CachePolicy#LFU},
+     * the window, probation or protected segment for {@link CachePolicy#W_TINY_LFU}.
+     */
+    protected final int[] lists;
+
+    /**
+     * Number of entries of each list.
+     */
+    protected final int[] listSizes;
+
+    /**
+     * Stack of the free slots.
+     */
+    private final int[] freeSlots;
+
+    private int freeCount;
+
+    protected final CachePolicy policy;
+
+    /**
+     * Access frequencies sketch of {@link CachePolicy#W_TINY_LFU}, else null.
+     */
+    protected final CountMinSketch sketch;
+
+    /**
+     * Maximum size of the window of {@link CachePolicy#W_TINY_LFU}.
+     */
+    private final int windowCapacity;
+
+    /**
+     * Maximum size of the protected segment of {@link CachePolicy#W_TINY_LFU}.
+     */
+    private final int protectedCapacity;
+
+    /**
+     * Lowest possibly non-empty list of {@link CachePolicy#LFU}.
+     */
+    private int minFrequency = 1;
+
+    protected long hits;
+    protected long misses;
+    protected long evictions;
+
+    /**
+     * Creates a cache of at most capacity entries, evicted according to policy.
+     * @throws IllegalArgumentException if capacity is smaller than 1.
+     */
+    public KTypeVTypeCache(final int capacity, final CachePolicy policy) {
+
+        if (capacity < 1) {
+
+            throw new IllegalArgumentException("The capacity should be at least 1: " + capacity);
+        }
+
+        this.policy = policy;
+
+        this.index = new KTypeHashIndex<KType>(capacity, HashContainers.DEFAULT_LOAD_FACTOR);
+
+        this.keys = Intrinsics.<KType> newArray(capacity);
+        this.values = Intrinsics.<VType> newArray(capacity);
+        this.lists = new int[capacity];
+
+        final int nbLists;
+
+        if (policy == CachePolicy.LFU) {
+
+            nbLists = CachePolicy.MAX_LFU_FREQUENCY + 1;
+        } else if (policy == CachePolicy.W_TINY_LFU) {
+
+            nbLists = 3;
+        } else {
+
+            nbLists = 1;
+        }
+
+        this.listSizes = new int[nbLists];
+        this.beforeAfterPointers = new long[capacity + nbLists];
+
+        this.freeSlots = new int[capacity];
+
+        if (policy == CachePolicy.W_TINY_LFU) {
+
+            this.sketch = new CountMinSketch(capacity);
+            this.windowCapacity = Math.max(1, capacity / 100);
+            this.protectedCapacity = (int) ((capacity - this.windowCapacity) * 0.8);
+        } else {
+
+            this.sketch = null;
+            this.windowCapacity = 0;
+            this.protectedCapacity = 0;
+        }
+
+        initLists();
+    }
+
+    /**
+     * Look up key, counting a hit or a miss. A hit is an access for the eviction policy.
+     * @return the value of key, or the default value if key is not in the cache.
+     */
+    public VType get(final KType key) {
+
+        if (this.sketch != null) {
+
+            this.sketch.increment(BitMixer.mix(key));
+        }
+
+        final int slot = slotOf(key);
+
+        if (slot < 0) {
+
+            this.misses++;
+            return this.defaultValue;
+        }
+
+        this.hits++;
+        access(slot);
+
+        return Intrinsics.<VType> cast(this.values[slot]);
+    }
+
+    /**
+     * Look up key without counting it, nor changing its eviction order.
+     * @return the value of key, or the default value if key is not in the cache.
+     */
+    public VType peek(final KType key) {
+
+        final int slot = slotOf(key);
+
+        if (slot < 0) {
+
+            return this.defaultValue;
+        }
+
+        return Intrinsics.<VType> cast(this.values[slot]);
+    }
+
+    /**
+     * @return true if key is in the cache, without counting it, nor changing its eviction order.
+     */
+    public boolean containsKey(final KType key) {
+
+        return slotOf(key) >= 0;
+    }
+
+    /**
+     * Place a given key and value in the cache, which is an access of key for the eviction policy.
+     * A new key may evict another entry of a full cache, or with {@link CachePolicy#W_TINY_LFU}
+     * not be kept itself later on.
+     * @return the previous value associated with key, or the default value if there was none.
+     */
+    public VType put(final KType key, final VType value) {
+
+        if (this.sketch != null) {
+
+            this.sketch.increment(BitMixer.mix(key));
+        }
+
+        final int position = positionOf(key);
+
+        if (position >= 0) {
+
+            final int slot = this.index.slotAt(position);
+
+            final VType previousValue = Intrinsics.<VType> cast(this.values[slot]);
+            this.values[slot] = value;
+            access(slot);
+
+            return previousValue;
+        }
+
+        final int list;
+
+        if (this.policy == CachePolicy.LFU) {
+
+            if (this.freeCount == 0) {
+
+                while (this.listSizes[this.minFrequency] == 0) {
+                    this.minFrequency++;
+                }
+
+                evict(eldest(this.minFrequency));
+            }
+
+            list = 1;
+            this.minFrequency = 1;
+
+        } else if (this.policy == CachePolicy.W_TINY_LFU) {
+
+            makeRoomInWindow();
+            list = KTypeVTypeCache.WINDOW;
+
+        } else {
+
+            if (this.freeCount == 0) {
+
+                evict(eldest(0));
+            }
+
+            list = 0;
+        }
+
+        final int slot = this.freeSlots[--this.freeCount];
+
+        this.keys[slot] = key;
+        this.values[slot] = value;
+        //evictions may have shifted the index, so look up the free position again
+        this.index.insert(positionOf(key), slot, Intrinsics.<KType[]> cast(this.keys));
+        link(slot, list);
+
+        return this.defaultValue;
+    }
+
+    /**
+     * Remove key and its associated value from the cache, which is not an eviction.
+     * @return the removed value, or the default value if key was not in the cache.
+     */
+    public VType remove(final KType key) {
+
+        final int position = positionOf(key);
+
+        if (position < 0) {
+
+            return this.defaultValue;
+        }
+
+        final int slot = this.index.slotAt(position);
+        final VType previousValue = Intrinsics.<VType> cast(this.values[slot]);
+
+        removeAt(position);
+        free(slot);
+
+        return previousValue;
+    }
+
+    /**
+     * Remove all the entries. Statistics are kept, see {@link #resetStatistics()}.
+     */
+    public void clear() {
+
+        this.index.clear();
+
+        /*! #if ($TemplateOptions.VTypeGeneric) !*/
+        VTypeArrays.blankArray(this.values, 0, this.values.length);
+        /*! #end !*/
+
+        if (this.sketch != null) {
+
+            this.sketch.clear();
+        }
+
+        initLists();
+    }
+
+    /**
+     * Called after the eviction of key by the policy. Does nothing by default.
+     */
+    protected void evicted(final KType key, final VType value) {
+
+        //nothing
+    }
+
+    /**
+     * Applies a given procedure to all the entries, in no particular order.
+     * @return the input procedure.
+     */
+    public <T extends KTypeVTypeProcedure<? super KType, ? super VType>> T forEach(final T procedure) {
+
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+        final VType[] values = Intrinsics.<VType[]> cast(this.values);
+        final long[] pointers = this.beforeAfterPointers;
+
+        for (int list = 0; list < this.listSizes.length; list++) {
+
+            final int head = keys.length + list;
+
+            for (int node = getLinkAfter(pointers[head]); node != head; node = getLinkAfter(pointers[node])) {
+
+                procedure.apply(keys[node], values[node]);
+            }
+        }
+
+        return procedure;
+    }
+
+    /**
+     * @return the number of entries.
+     */
+    public int size() {
+
+        return this.keys.length - this.freeCount;
+    }
+
+    /**
+     * @return true if the cache is empty.
+     */
+    public boolean isEmpty() {
+
+        return size() == 0;
+    }
+
+    /**
+     * @return the maximum number of entries.
+     */
+    public int capacity() {
+
+        return this.keys.length;
+    }
+
+    /**
+     * @return the eviction policy.
+     */
+    public CachePolicy getPolicy() {
+
+        return this.policy;
+    }
+
+    /**
+     * @return the number of {@link #get(Object)} finding their key.
+     */
+    public long getHits() {
+
+        return this.hits;
+    }
+
+    /**
+     * @return the number of {@link #get(Object)} not finding their key.
+     */
+    public long getMisses() {
+
+        return this.misses;
+    }
+
+    /**
+     * @return the number of entries evicted by the policy, including the new entries not admitted by {@link CachePolicy#W_TINY_LFU}.
+     */
+    public long getEvictions() {
+
+        return this.evictions;
+    }
+
+    /**
+     * @return the ratio of hits to lookups by {@link #get(Object)}, 0 before any lookup.
+     */
+    public double getHitRate() {
+
+        final long lookups = this.hits + this.misses;
+
+        return lookups == 0 ? 0.0 : (double) this.hits / lookups;
+    }
+
+    /**
+     * Reset the hits, misses and evictions counters to 0.
+     */
+    public void resetStatistics() {
+
+        this.hits = 0;
+        this.misses = 0;
+        this.evictions = 0;
+    }
+
+    /**
+     * Returns the "default value" value used
+     * in methods returning "default value"
+     */
+    public VType getDefaultValue() {
+
+        return this.defaultValue;
+    }
+
+    /**
+     * Set the "default value" value to be used
+     * in methods returning "default value"
+     */
+    public void setDefaultValue(final VType defaultValue) {
+
+        this.defaultValue = defaultValue;
+    }
+
+    /**
+     * Convert the contents of this cache to a human-friendly string.
+     */
+    @Override
+    public String toString() {
+
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[");
+
+        forEach(new KTypeVTypeProcedure<KType, VType>() {
+
+            boolean first = true;
+
+            @Override
+            public void apply(final KType key, final VType value) {
+
+                if (!this.first) {
+                    buffer.append(", ");
+                }
+                buffer.append(key);
+                buffer.append("=>");
+                buffer.append(value);
+                this.first = false;
+            }
+        });
+
+        buffer.append("]");
+        return buffer.toString();
+    }
+
+    /**
+     * Create a new cache without providing the full generic signature
+     * (constructor shortcut).
+     */
+    public static <KType, VType> KTypeVTypeCache<KType, VType> newInstance(final int capacity, final CachePolicy policy) {
+        return new KTypeVTypeCache<KType, VType>(capacity, policy);
+    }
+
+    /**
+     * Record an access of the entry of slot.
+     */
+    private void access(final int slot) {
+
+        final int list = this.lists[slot];
+
+        if (this.policy == CachePolicy.LFU) {
+
+            if (list < CachePolicy.MAX_LFU_FREQUENCY) {
+
+                unlink(slot);
+                link(slot, list + 1);
+            } else {
+
+                moveToLast(slot);
+            }
+
+        } else if (this.policy == CachePolicy.W_TINY_LFU && list == KTypeVTypeCache.PROBATION) {
+
+            //accessed again in the main space: promote
+            unlink(slot);
+            link(slot, KTypeVTypeCache.PROTECTED);
+
+            if (this.listSizes[KTypeVTypeCache.PROTECTED] > this.protectedCapacity) {
+
+                final int demoted = eldest(KTypeVTypeCache.PROTECTED);
+
+                unlink(demoted);
+                link(demoted, KTypeVTypeCache.PROBATION);
+            }
+        } else {
+
+            moveToLast(slot);
+        }
+    }
+
+    /**
+     * {@link CachePolicy#W_TINY_LFU}: make room for a new entry in the window, and for it in the cache.
+     */
+    private void makeRoomInWindow() {
+
+        if (this.listSizes[KTypeVTypeCache.WINDOW] < this.windowCapacity) {
+
+            if (this.freeCount == 0) {
+
+                //the window was emptied by removals
+                evict(mainVictim());
+            }
+
+            return;
+        }
+
+        final int candidate = eldest(KTypeVTypeCache.WINDOW);
+
+        if (this.freeCount == 0) {
+
+            final int victim = mainVictim();
+
+            if (victim < 0 || this.sketch.frequency(BitMixer.mix(this.keys[candidate])) <= this.sketch.frequency(BitMixer.mix(this.keys[victim]))) {
+
+                //not admitted
+                evict(candidate);
+                return;
+            }
+
+            evict(victim);
+        }
+
+        unlink(candidate);
+        link(candidate, KTypeVTypeCache.PROBATION);
+    }
+
+    /**
+     * @return the next entry to evict from the main space of {@link CachePolicy#W_TINY_LFU}, or -1 if it is empty.
+     */
+    private int mainVictim() {
+
+        if (this.listSizes[KTypeVTypeCache.PROBATION] > 0) {
+
+            return eldest(KTypeVTypeCache.PROBATION);
+        }
+
+        if (this.listSizes[KTypeVTypeCache.PROTECTED] > 0) {
+
+            return eldest(KTypeVTypeCache.PROTECTED);
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return the slot of the entry of key, or -1 if key is not in the cache.
+     */
+    private int slotOf(final KType key) {
+
+        return this.index.slotOf(key, Intrinsics.<KType[]> cast(this.keys));
+    }
+
+    /**
+     * @return the position of key in {@link #index}, or ~(the empty position where to insert it) if key is not in the cache.
+     */
+    private int positionOf(final KType key) {
+
+        return this.index.positionOf(key, Intrinsics.<KType[]> cast(this.keys));
+    }
+
+    /**
+     * Remove the entry at position of {@link #index}.
+     */
+    private void removeAt(final int position) {
+
+        this.index.removeAt(position, Intrinsics.<KType[]> cast(this.keys));
+    }
+
+    /**
+     * Evict the entry of slot.
+     */
+    private void evict(final int slot) {
+
+        final KType key = Intrinsics.<KType> cast(this.keys[slot]);
+        final VType value = Intrinsics.<VType> cast(this.values[slot]);
+
+        removeAt(positionOf(key));
+        free(slot);
+
+        this.evictions++;
+
+        evicted(key, value);
+    }
+
+    /**
+     * Unlink the entry of slot and free it.
+     */
+    private void free(final int slot) {
+
+        unlink(slot);
+
+        /*! #if ($TemplateOptions.VTypeGeneric) !*/
+        //help the GC
+        this.values[slot] = Intrinsics.<VType> empty();
+        /*! #end !*/
+
+        this.freeSlots[this.freeCount++] = slot;
+    }
+
+    /**
+     * @return the slot of the eldest entry of the non-empty list.
+     */
+    private int eldest(final int list) {
+
+        return getLinkAfter(this.beforeAfterPointers[this.keys.length + list]);
+    }
+
+    /**
+     * Empty all lists, all slots being free.
+     */
+    private void initLists() {
+
+        final int capacity = this.keys.length;
+
+        for (int list = 0; list < this.listSizes.length; list++) {
+
+            final int head = capacity + list;
+
+            this.beforeAfterPointers[head] = getLinkNodeValue(head, head);
+            this.listSizes[list] = 0;
+        }
+
+        //pop the lowest slots first
+        for (int i = 0; i < capacity; i++) {
+
+            this.freeSlots[i] = capacity - 1 - i;
+        }
+
+        this.freeCount = capacity;
+        this.minFrequency = 1;
+    }
+
+    /**
+     * Link slot at the end of list.
+     */
+    private void link(final int slot, final int list) {
+
+        final long[] pointers = this.beforeAfterPointers;
+        final int head = this.keys.length + list;
+
+        final int last = getLinkBefore(pointers[head]);
+
+        pointers[slot] = getLinkNodeValue(last, head);
+        pointers[last] = setLinkAfterNodeValue(pointers[last], slot);
+        pointers[head] = setLinkBeforeNodeValue(pointers[head], slot);
+
+        this.lists[slot] = list;
+        this.listSizes[list]++;
+    }
+
+    /**
+     * Unlink slot from its list.
+     */
+    private void unlink(final int slot) {
+
+        final long[] pointers = this.beforeAfterPointers;
+
+        final long links = pointers[slot];
+        final int before = getLinkBefore(links);
+        final int after = getLinkAfter(links);
+
+        pointers[before] = setLinkAfterNodeValue(pointers[before], after);
+        pointers[after] = setLinkBeforeNodeValue(pointers[after], before);
+
+        this.listSizes[this.lists[slot]]--;
+    }
+
+    /**
+     * Move slot to the end of its list.
+     */
+    private void moveToLast(final int slot) {
+
+        final int list = this.lists[slot];
+
+        if (getLinkAfter(this.beforeAfterPointers[slot]) != this.keys.length + list) {
+
+            unlink(slot);
+            link(slot, list);
+        }
+    }
+
+    /*! #if ($TemplateOptions.declareInline("getLinkNodeValue(beforeIndex, afterIndex)",
+     "<*,*>==>((long) beforeIndex << 32) | afterIndex")) !*/
+    /**
+     * Builds a node value from its before an after links.
+     * (actual method is inlined in generated code)
+     */
+    private long getLinkNodeValue(final int beforeIndex, final int afterIndex) {
+        return ((long) beforeIndex << 32) | afterIndex;
+    }
+
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.declareInline("getLinkBefore(nodeValue)", "<*,*>==>(int) (nodeValue >> 32)")) !*/
+    private int getLinkBefore(final long nodeValue) {
+        return (int) (nodeValue >> 32);
+    }
+
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.declareInline("getLinkAfter(nodeValue)",
+       "<*,*>==>(int) (nodeValue & 0x00000000FFFFFFFFL)")) !*/
+    private int getLinkAfter(final long nodeValue) {
+        return (int) (nodeValue & 0x00000000FFFFFFFFL);
+    }
+
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.declareInline("setLinkBeforeNodeValue(nodeValue, newBefore)",
+     "<*,*>==>((long) newBefore << 32) | (nodeValue & 0x00000000FFFFFFFFL)")) !*/
+    private long setLinkBeforeNodeValue(final long nodeValue, final int newBefore) {
+        return ((long) newBefore << 32) | (nodeValue & 0x00000000FFFFFFFFL);
+    }
+
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.declareInline("setLinkAfterNodeValue(nodeValue, newAfter)",
+      "<*,*>==> newAfter | (nodeValue & 0xFFFFFFFF00000000L)")) !*/
+    private long setLinkAfterNodeValue(final long nodeValue, final int newAfter) {
+        return newAfter | (nodeValue & 0xFFFFFFFF00000000L);
+    }
+    /*! #end !*/
+}
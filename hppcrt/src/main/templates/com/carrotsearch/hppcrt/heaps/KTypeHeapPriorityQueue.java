@@ -1,5 +1,8 @@
 package com.carrotsearch.hppcrt.heaps;
 
+import java.io.*;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.*;
 
 import com.carrotsearch.hppcrt.*;
@@ -234,6 +237,79 @@ implements KTypePriorityQueue<KType>, Cloneable
         return heap;
     }
 
+    /**
+     * Write the heap to <code>out</code> in a compact binary form: the size, followed by the elements
+     * in internal buffer order, transferred in bulk. The comparator is not part of the binary form.
+     #if ($TemplateOptions.KTypeGeneric)
+     * <code>out</code> must be an {@link ObjectOutput}.
+     #end
+     * @see #readFrom
+     */
+    public void writeTo(final DataOutput out) throws IOException {
+
+        out.writeInt(this.elementsCount);
+        ContainerIO.write(out, this.buffer, 1, this.elementsCount);
+    }
+
+    /**
+     * Write the heap to <code>channel</code>, same format as {@link #writeTo(DataOutput)}.
+     * The channel is not closed.
+     */
+    public void writeTo(final WritableByteChannel channel) throws IOException {
+
+        /*! #if ($TemplateOptions.KTypeGeneric) !*/
+        final ObjectOutputStream out = ContainerIO.newObjectOutput(channel);
+        /*! #else
+        final DataOutputStream out = ContainerIO.newDataOutput(channel);
+        #end !*/
+        writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Create a heap ordered by <code>comp</code> (natural ordering if null) from the binary form written by {@link #writeTo(DataOutput)}, the elements
+     * being transferred in bulk into a heap pre-sized to hold them, then re-heapified
+     * so that any comparator may be used.
+     #if ($TemplateOptions.KTypeGeneric)
+     * <code>in</code> must be an {@link ObjectInput}.
+     #end
+     */
+    public static/* #if ($TemplateOptions.KTypeGeneric) */<KType> /* #end */
+    KTypeHeapPriorityQueue<KType> readFrom(final DataInput in, /*! #if ($TemplateOptions.KTypeGeneric) !*/final Comparator<? super KType> comp
+            /*! #else
+            final KTypeComparator<? super KType> comp
+            #end !*/) throws IOException {
+
+        final int size = ContainerIO.readSize(in);
+
+        final KTypeHeapPriorityQueue<KType> heap = new KTypeHeapPriorityQueue<KType>(comp, size);
+        heap.ensureBufferSpace(size);
+
+        ContainerIO.read(in, heap.buffer, 1, size);
+        heap.elementsCount = size;
+
+        heap.updatePriorities();
+
+        return heap;
+    }
+
+    /**
+     * Create a heap from the binary form written by {@link #writeTo(WritableByteChannel)}.
+     * The channel is not closed.
+     */
+    public static/* #if ($TemplateOptions.KTypeGeneric) */<KType> /* #end */
+    KTypeHeapPriorityQueue<KType> readFrom(final ReadableByteChannel channel, /*! #if ($TemplateOptions.KTypeGeneric) !*/final Comparator<? super KType> comp
+            /*! #else
+            final KTypeComparator<? super KType> comp
+            #end !*/) throws IOException {
+
+        /*! #if ($TemplateOptions.KTypeGeneric) !*/
+        return readFrom(ContainerIO.newObjectInput(channel), comp);
+        /*! #else
+        return readFrom(ContainerIO.newDataInput(channel), comp);
+        #end !*/
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -424,6 +500,46 @@ implements KTypePriorityQueue<KType>, Cloneable
         swim(this.elementsCount);
     }
 
+    /**
+     * Insert a KType into the queue bounded to maxSize elements, so that the queue retains the maxSize
+     * greatest elements offered: once the queue holds maxSize elements, element replaces {@link #top()}
+     * if it is greater, else it is rejected.
+     * cost: O(1) if rejected, O(log(N)) for a N sized queue else.
+     * @return true if element is inserted.
+     */
+    public boolean offer(final KType element, final int maxSize) {
+
+        if (this.elementsCount < maxSize) {
+
+            add(element);
+            return true;
+        }
+
+        //full: only an element greater than the top gets in.
+        if (this.elementsCount == 0) {
+
+            return false;
+        }
+
+        final KType top = Intrinsics.<KType> cast(this.buffer[1]);
+
+        if (this.comparator == null) {
+
+            if (!Intrinsics.<KType> isCompSupUnchecked(element, top)) {
+
+                return false;
+            }
+        } else if (this.comparator.compare(element, top) <= 0) {
+
+            return false;
+        }
+
+        this.buffer[1] = element;
+        sink(1);
+
+        return true;
+    }
+
     /**
      * {@inheritDoc}
      * cost: O(1)
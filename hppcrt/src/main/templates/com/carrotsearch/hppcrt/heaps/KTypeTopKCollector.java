@@ -0,0 +1,331 @@
+package com.carrotsearch.hppcrt.heaps;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.carrotsearch.hppcrt.*;
+import com.carrotsearch.hppcrt.procedures.*;
+import com.carrotsearch.hppcrt.strategies.*;
+
+/*! #import("com/carrotsearch/hppcrt/Intrinsics.java") !*/
+/**
+ * A bounded collector of the K greatest <code>KType</code>s offered to it, i.e the top-K selection of a stream of values.
+ * <p>
+ * The collector is a {@link KTypeHeapPriorityQueue} of K elements, allocated once in constructor, bounded by
+ * {@link KTypeHeapPriorityQueue#offer(Object, int)}: its {@link #top()} is the smallest of the K retained elements,
+ * so that once the collector is full, an element not greater than {@link #top()} is rejected in O(1),
+ * else it replaces the top in O(log(K)). Collecting never allocates nor grows beyond K.
+ * </p>
+ * <p>
+ * Ordering of elements is defined either
+ * #if ($TemplateOptions.KTypeGeneric)
+ * by {@link Comparable}
+ * #else
+ * by natural ordering
+ * #end
+ * or by a custom comparator provided in constructors, for instance an inverse one to collect the K smallest elements.
+ * Collectors filled separately, e.g by different threads, are combined by {@link #merge(KTypeTopKCollector)}
+ * or in parallel by {@link #mergeAll(List, ExecutorService)}.
+ * </p>
+ */
+/*! ${TemplateOptions.generatedAnnotation} !*/
+public class KTypeTopKCollector<KType> implements Cloneable
+{
+    /**
+     * Internal min-heap of the retained elements, never holding more than {@link #k} elements.
+     */
+    protected final KTypeHeapPriorityQueue<KType> heap;
+
+    /**
+     * Maximum number of retained elements.
+     */
+    protected final int k;
+
+    /*! #if ($TemplateOptions.KTypeGeneric) !*/
+    /**
+     * Create a collector of the k greatest elements,
+     * using the Comparable natural ordering.
+     */
+    /*! #else !*/
+    /**
+     * Create a collector of the k greatest elements,
+     * using the natural ordering of <code>KType</code>s.
+     */
+    /*! #end !*/
+    public KTypeTopKCollector(final int k) {
+
+        this(null, k);
+    }
+
+    /**
+     * Create a collector of the k greatest elements as defined by a Comparator.
+     */
+    public KTypeTopKCollector(/*! #if ($TemplateOptions.KTypeGeneric) !*/final Comparator<? super KType> comp,
+            /*! #else
+            KTypeComparator<? super KType> comp,
+            #end !*/final int k) {
+
+        if (k < 0) {
+
+            throw new IllegalArgumentException("k must be >= 0: " + k);
+        }
+
+        this.k = k;
+        this.heap = new KTypeHeapPriorityQueue<KType>(comp, k);
+    }
+
+    /**
+     * Offer an element to the collector.
+     * cost: O(1) if rejected, O(log(K)) if retained.
+     * @return true if the element is retained, i.e the collector is not full
+     * or the element is greater than {@link #top()}, which is then evicted.
+     */
+    public boolean offer(final KType element) {
+
+        return this.heap.offer(element, this.k);
+    }
+
+    /**
+     * Offer length elements of an array, starting from offset.
+     * @return the number of retained elements.
+     * @throws IndexOutOfBoundsException if [offset; offset + length[ is out of elements.
+     */
+    public int offerAll(final KType[] elements, final int offset, final int length) {
+
+        if (offset < 0 || length < 0 || offset + length < 0 || offset + length > elements.length) {
+
+            throw new IndexOutOfBoundsException("Range [" + offset + ", " + (offset + length) + "[ out of bounds [0, " + elements.length + "].");
+        }
+
+        int count = 0;
+
+        for (int i = offset; i < offset + length; i++) {
+
+            if (offer(elements[i])) {
+
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Offer all the retained elements of other to this collector, which keeps its own capacity.
+     * Both collectors must use the same ordering.
+     * @return the number of retained elements of other.
+     */
+    public int merge(final KTypeTopKCollector<KType> other) {
+
+        final KType[] otherBuffer = Intrinsics.<KType[]> cast(other.heap.buffer);
+        final int otherSize = other.heap.size();
+
+        int count = 0;
+
+        for (int i = 1; i <= otherSize; i++) {
+
+            if (offer(otherBuffer[i])) {
+
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Merge collectors filled separately, for instance by different threads, by pairs in log2(collectors.size())
+     * rounds, the merges of a round running in parallel in executor.
+     * The collectors must use the same ordering, and must not be modified during the merge.
+     * @param executor runs the merges of each round, or null to merge in the calling thread.
+     * @return the first of collectors, holding the top-K of all collectors, K being its own capacity.
+     * The other collectors are left in an unspecified state.
+     */
+    public static/* #if ($TemplateOptions.KTypeGeneric) */<KType> /* #end */
+    KTypeTopKCollector<KType> mergeAll(final List<KTypeTopKCollector<KType>> collectors, final ExecutorService executor) {
+
+        final int size = collectors.size();
+
+        if (size == 0) {
+
+            return null;
+        }
+
+        final List<Future<?>> merges = new ArrayList<Future<?>>(size / 2);
+
+        for (int step = 1; step < size; step <<= 1) {
+
+            merges.clear();
+
+            for (int i = 0; i + step < size; i += step << 1) {
+
+                final KTypeTopKCollector<KType> target = collectors.get(i);
+                final KTypeTopKCollector<KType> source = collectors.get(i + step);
+
+                if (executor == null) {
+
+                    target.merge(source);
+                } else {
+
+                    merges.add(executor.submit(new Runnable() {
+
+                        @Override
+                        public void run() {
+
+                            target.merge(source);
+                        }
+                    }));
+                }
+            }
+
+            //the next round merges the results of this one
+            for (final Future<?> merge : merges) {
+
+                try {
+                    merge.get();
+
+                } catch (final InterruptedException e) {
+
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+
+                } catch (final ExecutionException e) {
+
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        }
+
+        return collectors.get(0);
+    }
+
+    /**
+     * Move the retained elements to target from offset, greatest first, leaving the collector empty.
+     * cost: O(K*log(K))
+     * @return the number of elements moved, the former {@link #size()}.
+     * @throws IndexOutOfBoundsException if target cannot hold them from offset, the collector being then left unchanged.
+     */
+    public int drainTo(final KType[] target, final int offset) {
+
+        final int size = this.heap.size();
+
+        if (offset < 0 || offset + size > target.length) {
+
+            throw new IndexOutOfBoundsException("Cannot drain " + size + " elements to [" + offset + ", " + (offset + size) + "[ out of bounds [0, " + target.length + "].");
+        }
+
+        //pop the smallest first, filling target from the end
+        for (int i = offset + size - 1; i >= offset; i--) {
+
+            target[i] = this.heap.popTop();
+        }
+
+        return size;
+    }
+
+    /**
+     * The smallest retained element, i.e the threshold an element must exceed to be retained once the collector is full.
+     * cost: O(1)
+     * @return the smallest retained element, or the default value if the collector is empty.
+     * @see #getDefaultValue()
+     */
+    public KType top() {
+
+        return this.heap.top();
+    }
+
+    /**
+     * Applies procedure to the retained elements, in heap order.
+     */
+    public <T extends KTypeProcedure<? super KType>> T forEach(final T procedure) {
+
+        return this.heap.forEach(procedure);
+    }
+
+    /**
+     * @return the number of retained elements.
+     */
+    public int size() {
+
+        return this.heap.size();
+    }
+
+    public boolean isEmpty() {
+
+        return this.heap.isEmpty();
+    }
+
+    /**
+     * @return true if K elements are retained, so that offered elements are compared to {@link #top()}.
+     */
+    public boolean isFull() {
+
+        return this.heap.size() == this.k;
+    }
+
+    /**
+     * @return K, the maximum number of retained elements.
+     */
+    public int capacity() {
+
+        return this.k;
+    }
+
+    /**
+     * Remove all the retained elements, keeping the buffer.
+     */
+    public void clear() {
+
+        this.heap.clear();
+    }
+
+    /**
+     * Get the custom comparator used for comparing elements
+     * @return null if no custom comparator was set, i.e natural ordering
+     * of <code>KType</code>s is used instead
+     * #if($TemplateOptions.KTypeGeneric) , which means objects in this case must be {@link Comparable}.
+     * #end
+     */
+    /*! #if ($TemplateOptions.KTypeGeneric) !*/
+    public Comparator<? super KType>
+    /*! #else
+    public KTypeComparator<? super KType>
+    #end !*/
+    comparator() {
+
+        return this.heap.comparator();
+    }
+
+    /**
+     * Returns the "default value" value used
+     * in methods returning "default value"
+     */
+    public KType getDefaultValue()
+    {
+        return this.heap.getDefaultValue();
+    }
+
+    /**
+     * Set the "default value" value to be used
+     * in methods returning "default value"
+     */
+    public void setDefaultValue(final KType defaultValue)
+    {
+        this.heap.setDefaultValue(defaultValue);
+    }
+
+    /**
+     * Clone this object. The returned clone will use the same comparator.
+     */
+    @Override
+    public KTypeTopKCollector<KType> clone() {
+
+        final KTypeTopKCollector<KType> cloned = new KTypeTopKCollector<KType>(this.heap.comparator(), this.k);
+
+        cloned.heap.buffer = this.heap.buffer.clone();
+        cloned.heap.elementsCount = this.heap.size();
+        cloned.heap.setDefaultValue(this.heap.getDefaultValue());
+
+        return cloned;
+    }
+}
@@ -1,5 +1,8 @@
 package com.carrotsearch.hppcrt.lists;
 
+import java.io.*;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.*;
 
 import com.carrotsearch.hppcrt.*;
@@ -1074,6 +1077,81 @@ extends AbstractKTypeCollection<KType> implements KTypeDeque<KType>, KTypeIndexe
         return new KTypeArrayDeque<KType>(container);
     }
 
+    /**
+     * Write the deque to <code>out</code> in a compact binary form: the size, followed by the elements from head to tail,
+     * transferred in bulk from the internal buffer.
+     #if ($TemplateOptions.KTypeGeneric)
+     * <code>out</code> must be an {@link ObjectOutput}.
+     #end
+     * @see #readFrom(DataInput)
+     */
+    public void writeTo(final DataOutput out) throws IOException {
+
+        out.writeInt(size());
+
+        if (this.head <= this.tail) {
+
+            ContainerIO.write(out, this.buffer, this.head, this.tail - this.head);
+
+        } else {
+
+            //wrapped around: [head...buffer.length - 1][0, tail - 1]
+            ContainerIO.write(out, this.buffer, this.head, this.buffer.length - this.head);
+            ContainerIO.write(out, this.buffer, 0, this.tail);
+        }
+    }
+
+    /**
+     * Write the deque to <code>channel</code>, same format as {@link #writeTo(DataOutput)}.
+     * The channel is not closed.
+     */
+    public void writeTo(final WritableByteChannel channel) throws IOException {
+
+        /*! #if ($TemplateOptions.KTypeGeneric) !*/
+        final ObjectOutputStream out = ContainerIO.newObjectOutput(channel);
+        /*! #else
+        final DataOutputStream out = ContainerIO.newDataOutput(channel);
+        #end !*/
+        writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Create a deque from the binary form written by {@link #writeTo(DataOutput)}, the elements
+     * being transferred in bulk into a deque pre-sized to hold them.
+     #if ($TemplateOptions.KTypeGeneric)
+     * <code>in</code> must be an {@link ObjectInput}.
+     #end
+     */
+    public static/* #if ($TemplateOptions.KTypeGeneric) */<KType> /* #end */
+    KTypeArrayDeque<KType> readFrom(final DataInput in) throws IOException {
+
+        final int size = ContainerIO.readSize(in);
+
+        final KTypeArrayDeque<KType> deque = new KTypeArrayDeque<KType>(size);
+        deque.ensureBufferSpace(size);
+
+        ContainerIO.read(in, deque.buffer, 0, size);
+        deque.head = 0;
+        deque.tail = size;
+
+        return deque;
+    }
+
+    /**
+     * Create a deque from the binary form written by {@link #writeTo(WritableByteChannel)}.
+     * The channel is not closed.
+     */
+    public static/* #if ($TemplateOptions.KTypeGeneric) */<KType> /* #end */
+    KTypeArrayDeque<KType> readFrom(final ReadableByteChannel channel) throws IOException {
+
+        /*! #if ($TemplateOptions.KTypeGeneric) !*/
+        return readFrom(ContainerIO.newObjectInput(channel));
+        /*! #else
+        return readFrom(ContainerIO.newDataInput(channel));
+        #end !*/
+    }
+
     ////////////////////////////
     /**
      * In-place sort the dequeue from [beginIndex, endIndex[
@@ -1,5 +1,8 @@
 package com.carrotsearch.hppcrt.lists;
 
+import java.io.*;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.*;
 
 import com.carrotsearch.hppcrt.*;
@@ -819,6 +822,69 @@ public class KTypeArrayList<KType>
         return new KTypeArrayList<KType>(container);
     }
 
+    /**
+     * Write the list to <code>out</code> in a compact binary form: the size, followed by the elements in list order,
+     * transferred in bulk from the internal buffer.
+     #if ($TemplateOptions.KTypeGeneric)
+     * <code>out</code> must be an {@link ObjectOutput}.
+     #end
+     * @see #readFrom(DataInput)
+     */
+    public void writeTo(final DataOutput out) throws IOException {
+
+        out.writeInt(this.elementsCount);
+        ContainerIO.write(out, this.buffer, 0, this.elementsCount);
+    }
+
+    /**
+     * Write the list to <code>channel</code>, same format as {@link #writeTo(DataOutput)}.
+     * The channel is not closed.
+     */
+    public void writeTo(final WritableByteChannel channel) throws IOException {
+
+        /*! #if ($TemplateOptions.KTypeGeneric) !*/
+        final ObjectOutputStream out = ContainerIO.newObjectOutput(channel);
+        /*! #else
+        final DataOutputStream out = ContainerIO.newDataOutput(channel);
+        #end !*/
+        writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Create a list from the binary form written by {@link #writeTo(DataOutput)}, the elements
+     * being transferred in bulk into a list pre-sized to hold them.
+     #if ($TemplateOptions.KTypeGeneric)
+     * <code>in</code> must be an {@link ObjectInput}.
+     #end
+     */
+    public static/* #if ($TemplateOptions.KTypeGeneric) */<KType> /* #end */
+            KTypeArrayList<KType> readFrom(final DataInput in) throws IOException {
+
+        final int size = ContainerIO.readSize(in);
+
+        final KTypeArrayList<KType> list = new KTypeArrayList<KType>(size);
+
+        ContainerIO.read(in, list.buffer, 0, size);
+        list.elementsCount = size;
+
+        return list;
+    }
+
+    /**
+     * Create a list from the binary form written by {@link #writeTo(WritableByteChannel)}.
+     * The channel is not closed.
+     */
+    public static/* #if ($TemplateOptions.KTypeGeneric) */<KType> /* #end */
+            KTypeArrayList<KType> readFrom(final ReadableByteChannel channel) throws IOException {
+
+        /*! #if ($TemplateOptions.KTypeGeneric) !*/
+        return readFrom(ContainerIO.newObjectInput(channel));
+        /*! #else
+        return readFrom(ContainerIO.newDataInput(channel));
+        #end !*/
+    }
+
     /**
      * In-place sort the list from [beginIndex, endIndex[
      * by natural ordering (smaller first)
@@ -1,5 +1,8 @@
 package com.carrotsearch.hppcrt.lists;
 
+import java.io.*;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.*;
 
 import com.carrotsearch.hppcrt.*;
@@ -1601,6 +1604,103 @@ public class KTypeLinkedList<KType>
         return new KTypeLinkedList<KType>(container);
     }
 
+    /**
+     * Write the list to <code>out</code> in a compact binary form: the size, followed by the elements in list order,
+     * gathered by chunks of {@link ContainerIO#CHUNK_SIZE} and transferred in bulk.
+     #if ($TemplateOptions.KTypeGeneric)
+     * <code>out</code> must be an {@link ObjectOutput}.
+     #end
+     * @see #readFrom(DataInput)
+     */
+    public void writeTo(final DataOutput out) throws IOException {
+
+        final int size = size();
+
+        out.writeInt(size);
+
+        final long[] pointers = this.beforeAfterPointers;
+        final KType[] buffer = Intrinsics.<KType[]> cast(this.buffer);
+
+        final KType[] chunk = Intrinsics.<KType> newArray(Math.min(size, ContainerIO.CHUNK_SIZE));
+
+        int count = 0;
+
+        int currentPos = getLinkAfter(pointers[KTypeLinkedList.HEAD_POSITION]);
+
+        while (currentPos != KTypeLinkedList.TAIL_POSITION) {
+
+            chunk[count++] = buffer[currentPos];
+
+            if (count == chunk.length) {
+
+                ContainerIO.write(out, chunk, 0, count);
+                count = 0;
+            }
+
+            currentPos = getLinkAfter(pointers[currentPos]);
+        }
+
+        ContainerIO.write(out, chunk, 0, count);
+    }
+
+    /**
+     * Write the list to <code>channel</code>, same format as {@link #writeTo(DataOutput)}.
+     * The channel is not closed.
+     */
+    public void writeTo(final WritableByteChannel channel) throws IOException {
+
+        /*! #if ($TemplateOptions.KTypeGeneric) !*/
+        final ObjectOutputStream out = ContainerIO.newObjectOutput(channel);
+        /*! #else
+        final DataOutputStream out = ContainerIO.newDataOutput(channel);
+        #end !*/
+        writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Create a list from the binary form written by {@link #writeTo(DataOutput)}, the elements
+     * being read by chunks into a list pre-sized to hold them.
+     #if ($TemplateOptions.KTypeGeneric)
+     * <code>in</code> must be an {@link ObjectInput}.
+     #end
+     */
+    public static/* #if ($TemplateOptions.KTypeGeneric) */<KType> /* #end */
+            KTypeLinkedList<KType> readFrom(final DataInput in) throws IOException {
+
+        final int size = ContainerIO.readSize(in);
+
+        final KTypeLinkedList<KType> list = new KTypeLinkedList<KType>(size);
+
+        final KType[] chunk = Intrinsics.<KType> newArray(Math.min(size, ContainerIO.CHUNK_SIZE));
+
+        for (int done = 0; done < size;) {
+
+            final int count = Math.min(size - done, chunk.length);
+
+            ContainerIO.read(in, chunk, 0, count);
+            list.addLast(chunk, 0, count);
+
+            done += count;
+        }
+
+        return list;
+    }
+
+    /**
+     * Create a list from the binary form written by {@link #writeTo(WritableByteChannel)}.
+     * The channel is not closed.
+     */
+    public static/* #if ($TemplateOptions.KTypeGeneric) */<KType> /* #end */
+            KTypeLinkedList<KType> readFrom(final ReadableByteChannel channel) throws IOException {
+
+        /*! #if ($TemplateOptions.KTypeGeneric) !*/
+        return readFrom(ContainerIO.newObjectInput(channel));
+        /*! #else
+        return readFrom(ContainerIO.newDataInput(channel));
+        #end !*/
+    }
+
     /**
      * In-place sort the list from [beginIndex, endIndex[
      * by natural ordering (smaller first)
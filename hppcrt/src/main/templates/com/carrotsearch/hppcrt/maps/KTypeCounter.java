@@ -0,0 +1,698 @@
+package com.carrotsearch.hppcrt.maps;
+
+import com.carrotsearch.hppcrt.*;
+import com.carrotsearch.hppcrt.hash.*;
+import com.carrotsearch.hppcrt.heaps.*;
+
+/*! #import("com/carrotsearch/hppcrt/Intrinsics.java") !*/
+/**
+ * A hash map counting occurrences of <code>KType</code>s, as a replacement for the
+ * <code>KTypeVTypeHashMap&lt;KType, int&gt;.addTo(key, 1)</code> idiom: {@link #add(Object, int)} looks up
+ * and updates the count of a key in a single probe of the {@link KTypeHashIndex} of its slot, and indexes the key
+ * at the free position found by the same probe if it is absent. Keys and counts are stored in dense arrays of slots.
+ * <p>
+ * Counts are non-negative and saturate at {@link Integer#MAX_VALUE} instead of overflowing. With narrow counters,
+ * they are stored in a <code>byte[]</code> promoted to a <code>short[]</code>, then to an <code>int[]</code>, when
+ * a count exceeds its capacity, to save memory when most counts are small.
+ * </p>
+ * <p>
+ * {@link #topK(int, Object[], int[])} extracts the most frequent keys with a bounded
+ * <code>LongHeapPriorityQueue</code>, and {@link #merge(KTypeCounter)} adds the counts of another counter.
+ * </p>
+ */
+/*! ${TemplateOptions.generatedAnnotation} !*/
+public class KTypeCounter<KType> implements Cloneable
+{
+    /**
+     * Index of the slots of the keys in {@link #keys}, 0/null excluded.
+     */
+    public KTypeHashIndex<KType> index;
+
+    /**
+     * Keys, by slot in [0; {@link #assigned}[, of count {@link #get(Object)};
+     * {0/null} is counted apart if {@link #allocatedDefaultKey} = true.
+     */
+    public/*! #if ($TemplateOptions.KTypePrimitive)
+          KType []
+          #else !*/
+    Object[]
+    /*! #end !*/
+    keys;
+
+    /**
+     * Counts of each slot of {@link #keys}, while narrow counters are at most 255.
+     */
+    protected byte[] byteCounts;
+
+    /**
+     * Counts of each slot of {@link #keys}, while narrow counters are at most 65535.
+     */
+    protected short[] shortCounts;
+
+    /**
+     * Counts of each slot of {@link #keys}, for wide counters or once promoted.
+     */
+    protected int[] intCounts;
+
+    /**
+     * True if key = 0/null is counted.
+     */
+    public boolean allocatedDefaultKey = false;
+
+    /**
+     * Count of key = 0/null.
+     */
+    protected int defaultKeyCount;
+
+    /**
+     * Number of used slots in {@link #keys}.
+     */
+    protected int assigned;
+
+    /**
+     * Procedure applied to the (key, count) pairs by {@link KTypeCounter#forEach(KTypeCountProcedure)}.
+     */
+    public interface KTypeCountProcedure<KType>
+    {
+        void apply(KType key, int count);
+    }
+
+    /**
+     * Creates a counter with a default capacity of {@link Containers#DEFAULT_EXPECTED_ELEMENTS},
+     * load factor of {@link HashContainers#DEFAULT_LOAD_FACTOR}, and <code>int</code> counters.
+     */
+    public KTypeCounter() {
+
+        this(Containers.DEFAULT_EXPECTED_ELEMENTS);
+    }
+
+    /**
+     * Creates a counter with the given capacity,
+     * load factor of {@link HashContainers#DEFAULT_LOAD_FACTOR}, and <code>int</code> counters.
+     */
+    public KTypeCounter(final int initialCapacity) {
+
+        this(initialCapacity, HashContainers.DEFAULT_LOAD_FACTOR, false);
+    }
+
+    /**
+     * Creates a counter with the given capacity, and load factor of its index.
+     * @param narrowCounters if true, counts are stored in a <code>byte[]</code> first, promoted to
+     * <code>short[]</code> then <code>int[]</code> as they grow.
+     */
+    public KTypeCounter(final int initialCapacity, final double loadFactor, final boolean narrowCounters) {
+
+        this.index = new KTypeHashIndex<KType>(initialCapacity, loadFactor);
+
+        try {
+            this.keys = Intrinsics.<KType> newArray(initialCapacity);
+
+            if (narrowCounters) {
+
+                this.byteCounts = new byte[initialCapacity];
+            } else {
+
+                this.intCounts = new int[initialCapacity];
+            }
+
+        } catch (final OutOfMemoryError e) {
+
+            throw new BufferAllocationException(
+                    "Not enough memory to allocate buffers to grow from %d -> %d elements",
+                    e,
+                    0,
+                    initialCapacity);
+        }
+    }
+
+    /**
+     * Increment the count of key by one.
+     * @return the count of key after the increment.
+     */
+    public int increment(final KType key) {
+
+        return add(key, 1);
+    }
+
+    /**
+     * Add increment to the count of key, inserting key with a count of increment if absent.
+     * The count saturates at {@link Integer#MAX_VALUE}.
+     * @param increment a non-negative increment.
+     * @return the count of key after the increment.
+     * @throws IllegalArgumentException if increment is negative.
+     */
+    public int add(final KType key, final int increment) {
+
+        if (increment < 0) {
+
+            throw new IllegalArgumentException("Negative increment: " + increment);
+        }
+
+        if (Intrinsics.<KType> isEmpty(key)) {
+
+            this.allocatedDefaultKey = true;
+            this.defaultKeyCount = KTypeCounter.saturatedAdd(this.defaultKeyCount, increment);
+
+            return this.defaultKeyCount;
+        }
+
+        final int position = this.index.positionOf(key, Intrinsics.<KType[]> cast(this.keys));
+
+        if (position >= 0) {
+
+            //the single probe found the key: update in place
+            final int slot = this.index.slotAt(position);
+            final int[] intCounts = this.intCounts;
+
+            if (intCounts != null) {
+
+                final int count = KTypeCounter.saturatedAdd(intCounts[slot], increment);
+                intCounts[slot] = count;
+
+                return count;
+            }
+
+            final int count = KTypeCounter.saturatedAdd(countAt(slot), increment);
+            setCount(slot, count);
+
+            return count;
+        }
+
+        //absent: index a new slot at the free position the probe ended on
+        final int slot = this.assigned;
+
+        if (slot == this.keys.length) {
+
+            growSlots();
+        }
+
+        this.keys[slot] = key;
+        setCount(slot, increment);
+
+        this.assigned++;
+        this.index.insert(position, slot, Intrinsics.<KType[]> cast(this.keys));
+
+        return increment;
+    }
+
+    /**
+     * @return the count of key, or 0 if key is not counted.
+     */
+    public int get(final KType key) {
+
+        if (Intrinsics.<KType> isEmpty(key)) {
+
+            return this.defaultKeyCount;
+        }
+
+        final int slot = slotOf(key);
+
+        return slot < 0 ? 0 : countAt(slot);
+    }
+
+    /**
+     * @return true if key is counted, even with a count of 0.
+     */
+    public boolean containsKey(final KType key) {
+
+        if (Intrinsics.<KType> isEmpty(key)) {
+
+            return this.allocatedDefaultKey;
+        }
+
+        return slotOf(key) >= 0;
+    }
+
+    /**
+     * Remove key.
+     * @return the count of key before the removal, or 0 if key is not counted.
+     */
+    public int remove(final KType key) {
+
+        if (Intrinsics.<KType> isEmpty(key)) {
+
+            final int count = this.defaultKeyCount;
+
+            this.allocatedDefaultKey = false;
+            this.defaultKeyCount = 0;
+
+            return count;
+        }
+
+        final int position = this.index.positionOf(key, Intrinsics.<KType[]> cast(this.keys));
+
+        if (position < 0) {
+
+            return 0;
+        }
+
+        final int slot = this.index.slotAt(position);
+        final int count = countAt(slot);
+
+        this.index.removeAt(position, Intrinsics.<KType[]> cast(this.keys));
+
+        //move the last slot in the hole
+        final int last = --this.assigned;
+
+        if (slot != last) {
+
+            this.keys[slot] = this.keys[last];
+            copyCount(last, slot);
+
+            this.index.setSlotAt(this.index.positionOf(Intrinsics.<KType> cast(this.keys[slot]), Intrinsics.<KType[]> cast(this.keys)), slot);
+        }
+
+        /*! #if ($TemplateOptions.KTypeGeneric) !*/
+        //help the GC
+        this.keys[last] = null;
+        /*! #end !*/
+
+        return count;
+    }
+
+    /**
+     * Add the counts of other to this counter.
+     */
+    public void merge(final KTypeCounter<KType> other) {
+
+        if (other.allocatedDefaultKey) {
+
+            add(Intrinsics.<KType> empty(), other.defaultKeyCount);
+        }
+
+        final KType[] otherKeys = Intrinsics.<KType[]> cast(other.keys);
+
+        for (int slot = 0; slot < other.assigned; slot++) {
+
+            add(otherKeys[slot], other.countAt(slot));
+        }
+    }
+
+    /**
+     * Extract the n keys of highest counts, by decreasing counts, ties in no particular order.
+     * @param topKeys receives the keys, from index 0.
+     * @param topCounts receives their counts, from index 0.
+     * @return the number of extracted keys, min(n, {@link #size()}).
+     */
+    public int topK(final int n, final KType[] topKeys, final int[] topCounts) {
+
+        final int k = Math.min(n, size());
+
+        if (k <= 0) {
+
+            return 0;
+        }
+
+        //min-heap of the k best (count, slot) pairs, packed in longs ordered by count first,
+        //slot keys.length standing for the default key.
+        final LongHeapPriorityQueue heap = new LongHeapPriorityQueue(k);
+
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+
+        if (this.allocatedDefaultKey) {
+
+            heap.add(KTypeCounter.pack(this.defaultKeyCount, keys.length));
+        }
+
+        for (int slot = 0; slot < this.assigned; slot++) {
+
+            heap.offer(KTypeCounter.pack(countAt(slot), slot), k);
+        }
+
+        //pop by increasing counts
+        for (int i = k; --i >= 0;) {
+
+            final long packed = heap.popTop();
+            final int slot = (int) packed;
+
+            topKeys[i] = slot == keys.length ? Intrinsics.<KType> empty() : keys[slot];
+            topCounts[i] = (int) (packed >>> 32);
+        }
+
+        return k;
+    }
+
+    /**
+     * Applies procedure to all (key, count) pairs.
+     */
+    public <T extends KTypeCountProcedure<? super KType>> T forEach(final T procedure) {
+
+        if (this.allocatedDefaultKey) {
+
+            procedure.apply(Intrinsics.<KType> empty(), this.defaultKeyCount);
+        }
+
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+
+        for (int slot = 0; slot < this.assigned; slot++) {
+
+            procedure.apply(keys[slot], countAt(slot));
+        }
+
+        return procedure;
+    }
+
+    /**
+     * @return the number of counted keys.
+     */
+    public int size() {
+
+        return this.assigned + (this.allocatedDefaultKey ? 1 : 0);
+    }
+
+    public boolean isEmpty() {
+
+        return size() == 0;
+    }
+
+    /**
+     * @return the number of keys the counter can hold without reallocating.
+     */
+    public int capacity() {
+
+        return Math.min(this.keys.length, this.index.capacity());
+    }
+
+    /**
+     * @return the number of bytes of each count: 1 or 2 for narrow counters not promoted yet, else 4.
+     */
+    public int counterBytes() {
+
+        return this.intCounts != null ? 4 : this.shortCounts != null ? 2 : 1;
+    }
+
+    /**
+     * Remove all keys, keeping the current buffers and counter width.
+     */
+    public void clear() {
+
+        KTypeArrays.blankArray(this.keys, 0, this.assigned);
+        this.index.clear();
+
+        this.assigned = 0;
+        this.allocatedDefaultKey = false;
+        this.defaultKeyCount = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+
+        int h = 0;
+
+        if (this.allocatedDefaultKey) {
+
+            h += BitMixer.mix(this.defaultKeyCount);
+        }
+
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+
+        for (int slot = 0; slot < this.assigned; slot++) {
+
+            h += BitMixer.mix(keys[slot]) ^ BitMixer.mix(countAt(slot));
+        }
+
+        return h;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(final Object obj) {
+
+        if (obj == this) {
+            return true;
+        }
+
+        //must be of the same class, subclasses are not comparable
+        if (obj == null || obj.getClass() != this.getClass()) {
+            return false;
+        }
+
+        @SuppressWarnings("unchecked")
+        final KTypeCounter<KType> other = (KTypeCounter<KType>) obj;
+
+        if (other.size() != size() || other.allocatedDefaultKey != this.allocatedDefaultKey
+                || other.defaultKeyCount != this.defaultKeyCount) {
+            return false;
+        }
+
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+
+        for (int slot = 0; slot < this.assigned; slot++) {
+
+            final int otherSlot = other.slotOf(keys[slot]);
+
+            if (otherSlot < 0 || other.countAt(otherSlot) != countAt(slot)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public KTypeCounter<KType> clone() {
+
+        try {
+            @SuppressWarnings("unchecked")
+            final KTypeCounter<KType> cloned = (KTypeCounter<KType>) super.clone();
+
+            cloned.index = this.index.clone();
+            cloned.keys = this.keys.clone();
+            cloned.byteCounts = this.byteCounts == null ? null : this.byteCounts.clone();
+            cloned.shortCounts = this.shortCounts == null ? null : this.shortCounts.clone();
+            cloned.intCounts = this.intCounts == null ? null : this.intCounts.clone();
+
+            return cloned;
+
+        } catch (final CloneNotSupportedException e) {
+
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Convert the contents of this counter to a human-friendly string, as [key=>count, ...].
+     */
+    @Override
+    public String toString() {
+
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[");
+
+        forEach(new KTypeCountProcedure<KType>() {
+
+            boolean first = true;
+
+            @Override
+            public void apply(final KType key, final int count) {
+
+                if (!this.first) {
+                    buffer.append(", ");
+                }
+
+                buffer.append(key);
+                buffer.append("=>");
+                buffer.append(count);
+                this.first = false;
+            }
+        });
+
+        buffer.append("]");
+
+        return buffer.toString();
+    }
+
+    /**
+     * Create a new counter (constructor shortcut).
+     */
+    public static <KType> KTypeCounter<KType> newInstance() {
+
+        return new KTypeCounter<KType>();
+    }
+
+    /**
+     * Create a new counter with narrow counters, see {@link #KTypeCounter(int, double, boolean)}.
+     */
+    public static <KType> KTypeCounter<KType> newNarrowInstance(final int initialCapacity) {
+
+        return new KTypeCounter<KType>(initialCapacity, HashContainers.DEFAULT_LOAD_FACTOR, true);
+    }
+
+    /**
+     * @return a + b, or {@link Integer#MAX_VALUE} on overflow, for a, b non-negative.
+     */
+    private static int saturatedAdd(final int a, final int b) {
+
+        final int sum = a + b;
+
+        return sum < 0 ? Integer.MAX_VALUE : sum;
+    }
+
+    private static long pack(final int count, final int slot) {
+
+        return ((long) count << 32) | slot;
+    }
+
+    /**
+     * @return the count of the assigned slot.
+     */
+    private int countAt(final int slot) {
+
+        if (this.intCounts != null) {
+
+            return this.intCounts[slot];
+        }
+
+        if (this.shortCounts != null) {
+
+            return this.shortCounts[slot] & 0xFFFF;
+        }
+
+        return this.byteCounts[slot] & 0xFF;
+    }
+
+    /**
+     * Set the count of slot, promoting the narrow counters if count exceeds their capacity.
+     */
+    private void setCount(final int slot, final int count) {
+
+        if (this.intCounts != null) {
+
+            this.intCounts[slot] = count;
+            return;
+        }
+
+        if (this.shortCounts != null) {
+
+            if (count > 0xFFFF) {
+
+                promote();
+                this.intCounts[slot] = count;
+                return;
+            }
+
+            this.shortCounts[slot] = (short) count;
+            return;
+        }
+
+        if (count > 0xFF) {
+
+            promote();
+            setCount(slot, count);
+            return;
+        }
+
+        this.byteCounts[slot] = (byte) count;
+    }
+
+    /**
+     * Widen the narrow counters, from byte to short or from short to int.
+     */
+    private void promote() {
+
+        final int length = this.keys.length;
+
+        try {
+            if (this.shortCounts == null) {
+
+                final short[] counts = new short[length];
+
+                for (int i = 0; i < length; i++) {
+
+                    counts[i] = (short) (this.byteCounts[i] & 0xFF);
+                }
+
+                this.shortCounts = counts;
+                this.byteCounts = null;
+            } else {
+
+                final int[] counts = new int[length];
+
+                for (int i = 0; i < length; i++) {
+
+                    counts[i] = this.shortCounts[i] & 0xFFFF;
+                }
+
+                this.intCounts = counts;
+                this.shortCounts = null;
+            }
+        } catch (final OutOfMemoryError e) {
+
+            throw new BufferAllocationException(
+                    "Not enough memory to allocate buffers to grow from %d -> %d elements",
+                    e,
+                    length,
+                    length);
+        }
+    }
+
+    /**
+     * @return the slot of key, not 0/null, or -1 if key is not counted.
+     */
+    private int slotOf(final KType key) {
+
+        return this.index.slotOf(key, Intrinsics.<KType[]> cast(this.keys));
+    }
+
+    private void copyCount(final int fromSlot, final int toSlot) {
+
+        if (this.intCounts != null) {
+
+            this.intCounts[toSlot] = this.intCounts[fromSlot];
+        } else if (this.shortCounts != null) {
+
+            this.shortCounts[toSlot] = this.shortCounts[fromSlot];
+        } else {
+
+            this.byteCounts[toSlot] = this.byteCounts[fromSlot];
+        }
+    }
+
+    /**
+     * Double the arrays of slots, with the current counter width.
+     */
+    private void growSlots() {
+
+        final int length = this.keys.length;
+        final int newLength = Math.max(length << 1, Containers.DEFAULT_EXPECTED_ELEMENTS);
+
+        try {
+            final KType[] newKeys = Intrinsics.<KType> newArray(newLength);
+            System.arraycopy(this.keys, 0, newKeys, 0, length);
+            this.keys = newKeys;
+
+            if (this.intCounts != null) {
+
+                final int[] counts = new int[newLength];
+                System.arraycopy(this.intCounts, 0, counts, 0, length);
+                this.intCounts = counts;
+            } else if (this.shortCounts != null) {
+
+                final short[] counts = new short[newLength];
+                System.arraycopy(this.shortCounts, 0, counts, 0, length);
+                this.shortCounts = counts;
+            } else {
+
+                final byte[] counts = new byte[newLength];
+                System.arraycopy(this.byteCounts, 0, counts, 0, length);
+                this.byteCounts = counts;
+            }
+
+        } catch (final OutOfMemoryError e) {
+
+            throw new BufferAllocationException(
+                    "Not enough memory to allocate buffers to grow from %d -> %d elements",
+                    e,
+                    length,
+                    newLength);
+        }
+    }
+}
@@ -0,0 +1,530 @@
+package com.carrotsearch.hppcrt.maps;
+
+import com.carrotsearch.hppcrt.*;
+import com.carrotsearch.hppcrt.predicates.*;
+import com.carrotsearch.hppcrt.procedures.*;
+import com.carrotsearch.hppcrt.hash.*;
+
+/*! #import("com/carrotsearch/hppcrt/Intrinsics.java") !*/
+/**
+ * A thread-safe hash map of <code>KType</code> to <code>VType</code>, using lock striping:
+ * the key space is partitioned into a power-of-two number of segments, each segment being a plain
+ * {@link KTypeVTypeHashMap} guarded by its own lock.
+ * <p>
+ * Each segment keeps the very same open addressing layout as {@link KTypeVTypeHashMap},
+ * including its own {@link KTypeVTypeHashMap#allocatedDefaultKey} handling for the key 0/null,
+ * so that operations on keys falling into different segments never contend with each other.
+ * </p>
+ * <p>
+ * Single-key operations ({@link #get}, {@link #put}, {@link #remove}
+#if ($TemplateOptions.VTypePrimitive)
+ * , {@link #putOrAdd}, {@link #addTo}
+#end
+ * ...) are atomic and allocation-free. Bulk operations ({@link #size()}, {@link #forEach(KTypeVTypeProcedure)},
+ * {@link #removeAll(KTypeVTypePredicate)}...) lock one segment at a time, so they are not atomic with respect to
+ * the whole map, but reflect the state of each segment at the time it has been visited.
+ * </p>
+ * <p>
+ * This class intentionally does not provide iterators: pooled cursor iterators cannot be safely
+ * shared between threads. Use {@link #forEach(KTypeVTypeProcedure)}, or {@link #snapshot()} to get a private
+ * {@link KTypeVTypeHashMap} copy which can then be iterated as usual.
+ * </p>
+ *
+#if ($TemplateOptions.KTypeGeneric)
+ * <p>This implementation supports <code>null</code> keys.</p>
+#end
+#if ($TemplateOptions.VTypeGeneric)
+ * <p>This implementation supports <code>null</code> values.</p>
+#end
+ */
+/*! ${TemplateOptions.generatedAnnotation} !*/
+public class KTypeVTypeConcurrentHashMap<KType, VType>
+{
+    /**
+     * Default number of segments, i.e the number of threads expected to
+     * concurrently update the map without contending.
+     */
+    public final static int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    /**
+     * Maximum number of segments.
+     */
+    public final static int MAX_CONCURRENCY_LEVEL = 1 << 16;
+
+    /**
+     * The segments, each one used as its own lock.
+     */
+    protected final KTypeVTypeHashMap<KType, VType>[] segments;
+
+    /**
+     * Right shift applied to the mixed hash of a key to obtain its segment index
+     */
+    private final int segmentShift;
+
+    /**
+     * segments.length - 1
+     */
+    private final int segmentMask;
+
+    /**
+     * The load factor for each segment.
+     */
+    protected final double loadFactor;
+
+    protected volatile VType defaultValue = Intrinsics.<VType> empty();
+
+    /**
+     * Default constructor: Creates a concurrent hash map with the default capacity of {@link Containers#DEFAULT_EXPECTED_ELEMENTS},
+     * load factor of {@link HashContainers#DEFAULT_LOAD_FACTOR} and {@link #DEFAULT_CONCURRENCY_LEVEL} segments.
+     */
+    public KTypeVTypeConcurrentHashMap() {
+        this(Containers.DEFAULT_EXPECTED_ELEMENTS);
+    }
+
+    /**
+     * Creates a concurrent hash map with the given initial capacity, default load factor of
+     * {@link HashContainers#DEFAULT_LOAD_FACTOR} and {@link #DEFAULT_CONCURRENCY_LEVEL} segments.
+     *
+     * @param initialCapacity Initial capacity (greater than zero), spread evenly over the segments.
+     */
+    public KTypeVTypeConcurrentHashMap(final int initialCapacity) {
+        this(initialCapacity, HashContainers.DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Creates a concurrent hash map with the given initial capacity,
+     * load factor and {@link #DEFAULT_CONCURRENCY_LEVEL} segments.
+     *
+     * @param loadFactor The load factor (greater than zero and smaller than 1).
+     */
+    public KTypeVTypeConcurrentHashMap(final int initialCapacity, final double loadFactor) {
+        this(initialCapacity, loadFactor, KTypeVTypeConcurrentHashMap.DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Creates a concurrent hash map with the given initial capacity,
+     * load factor and concurrency level.
+     *
+     * @param initialCapacity Initial capacity (greater than zero), spread evenly over the segments.
+     * @param loadFactor The load factor (greater than zero and smaller than 1).
+     * @param concurrencyLevel The expected number of concurrently updating threads, rounded to the next power of two
+     *  to give the number of segments.
+     */
+    @SuppressWarnings({ "unchecked", "boxing" })
+    public KTypeVTypeConcurrentHashMap(final int initialCapacity, final double loadFactor, final int concurrencyLevel) {
+
+        if (concurrencyLevel < 1 || concurrencyLevel > KTypeVTypeConcurrentHashMap.MAX_CONCURRENCY_LEVEL) {
+
+            throw new IllegalArgumentException("concurrencyLevel must be in range [1, "
+                    + KTypeVTypeConcurrentHashMap.MAX_CONCURRENCY_LEVEL + "]: " + concurrencyLevel);
+        }
+
+        this.loadFactor = loadFactor;
+
+        final int nbSegments = BitUtil.nextHighestPowerOfTwo(concurrencyLevel);
+
+        this.segmentMask = nbSegments - 1;
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(nbSegments);
+
+        //each segment is pre-sized so that the whole map accommodates initialCapacity without reallocations,
+        //provided the keys are evenly distributed.
+        final int segmentCapacity = (Math.max(0, initialCapacity) + nbSegments - 1) / nbSegments;
+
+        this.segments = new KTypeVTypeHashMap[nbSegments];
+
+        for (int i = 0; i < nbSegments; i++) {
+
+            this.segments[i] = new KTypeVTypeHashMap<KType, VType>(segmentCapacity, loadFactor);
+        }
+    }
+
+    /**
+     * Create a concurrent hash map from all key-value pairs of another container.
+     */
+    public KTypeVTypeConcurrentHashMap(final KTypeVTypeAssociativeContainer<KType, VType> container) {
+        this(container.size());
+        putAll(container);
+    }
+
+    /**
+     * Returns the segment responsible for key. Uses the highest bits of the mixed
+     * hash, because the segment {@link KTypeVTypeHashMap} itself consumes the lowest bits of its own
+     * (perturbed) hash.
+     */
+    protected final KTypeVTypeHashMap<KType, VType> segmentFor(final KType key) {
+
+        return this.segments[(BitMixer.mix(key) >>> this.segmentShift) & this.segmentMask];
+    }
+
+    /**
+     * Place a given key and value in the map.
+     * @see KTypeVTypeHashMap#put
+     */
+    public VType put(final KType key, final VType value) {
+
+        final KTypeVTypeHashMap<KType, VType> segment = segmentFor(key);
+
+        synchronized (segment) {
+
+            return segment.put(key, value);
+        }
+    }
+
+    /**
+     * Atomically insert the (key, value) pair if key is not already in the map.
+     * @see KTypeVTypeHashMap#putIfAbsent
+     */
+    public boolean putIfAbsent(final KType key, final VType value) {
+
+        final KTypeVTypeHashMap<KType, VType> segment = segmentFor(key);
+
+        synchronized (segment) {
+
+            return segment.putIfAbsent(key, value);
+        }
+    }
+
+    /**
+     * Puts all keys from another container to this map, replacing the values
+     * of existing keys, if such keys are present.
+     * @return Returns the number of keys added to the map as a result of this
+     * call (not previously present in the map).
+     */
+    public int putAll(final KTypeVTypeAssociativeContainer<? extends KType, ? extends VType> container) {
+
+        final int count = this.size();
+
+        container.forEach(new KTypeVTypeProcedure<KType, VType>() {
+
+            @Override
+            public void apply(final KType key, final VType value) {
+
+                put(key, value);
+            }
+        });
+
+        return this.size() - count;
+    }
+
+    /*! #if ($TemplateOptions.VTypePrimitive) !*/
+    /**
+     * Atomically, if <code>key</code> exists, <code>putValue</code> is inserted into the map,
+     * otherwise any existing value is incremented by <code>additionValue</code>.
+     * @see KTypeVTypeHashMap#putOrAdd
+     */
+    public VType putOrAdd(final KType key, final VType putValue, final VType incrementValue) {
+
+        final KTypeVTypeHashMap<KType, VType> segment = segmentFor(key);
+
+        synchronized (segment) {
+
+            return segment.putOrAdd(key, putValue, incrementValue);
+        }
+    }
+
+    /**
+     * Atomically adds <code>incrementValue</code> to any existing value for the given <code>key</code>
+     * or inserts <code>incrementValue</code> if <code>key</code> did not previously exist.
+     * @see KTypeVTypeHashMap#addTo
+     */
+    public VType addTo(final KType key, final VType incrementValue) {
+
+        final KTypeVTypeHashMap<KType, VType> segment = segmentFor(key);
+
+        synchronized (segment) {
+
+            return segment.addTo(key, incrementValue);
+        }
+    }
+
+    /*! #end !*/
+
+    /**
+     * @return Returns the value associated with the given key, or the default value
+     * if the key is not associated with any value.
+     */
+    public VType get(final KType key) {
+
+        final KTypeVTypeHashMap<KType, VType> segment = segmentFor(key);
+
+        synchronized (segment) {
+
+            return segment.get(key);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if this map has an association to a value for
+     * the given key.
+     */
+    public boolean containsKey(final KType key) {
+
+        final KTypeVTypeHashMap<KType, VType> segment = segmentFor(key);
+
+        synchronized (segment) {
+
+            return segment.containsKey(key);
+        }
+    }
+
+    /**
+     * Remove the (key, value) pair associated with the given key, and returns the associated value.
+     * The default value is returned if the key did not exist in the map.
+     */
+    public VType remove(final KType key) {
+
+        final KTypeVTypeHashMap<KType, VType> segment = segmentFor(key);
+
+        synchronized (segment) {
+
+            return segment.remove(key);
+        }
+    }
+
+    /**
+     * Removes all keys (and associated values) for which the predicate on keys returns <code>true</code>.
+     * The predicate is called while the segment containing the key is locked.
+     * @return Returns the number of elements actually removed as a result of this call.
+     */
+    public int removeAll(final KTypePredicate<? super KType> predicate) {
+
+        int count = 0;
+
+        for (final KTypeVTypeHashMap<KType, VType> segment : this.segments) {
+
+            synchronized (segment) {
+
+                count += segment.removeAll(predicate);
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Removes all keys (and associated values) for which the predicate on (key, value) pairs returns <code>true</code>.
+     * The predicate is called while the segment containing the key is locked.
+     * @return Returns the number of elements actually removed as a result of this call.
+     */
+    public int removeAll(final KTypeVTypePredicate<? super KType, ? super VType> predicate) {
+
+        int count = 0;
+
+        for (final KTypeVTypeHashMap<KType, VType> segment : this.segments) {
+
+            synchronized (segment) {
+
+                count += segment.removeAll(predicate);
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Applies a given procedure to all keys-value pairs in this map, one segment at a time.
+     * The procedure is called while the segment containing the key is locked, so it must not
+     * access this map.
+     */
+    public <T extends KTypeVTypeProcedure<? super KType, ? super VType>> T forEach(final T procedure) {
+
+        for (final KTypeVTypeHashMap<KType, VType> segment : this.segments) {
+
+            synchronized (segment) {
+
+                segment.forEach(procedure);
+            }
+        }
+
+        return procedure;
+    }
+
+    /**
+     * Applies a <code>predicate</code> to all keys-value pairs in this map, one segment at a time,
+     * as long as the predicate returns <code>true</code>. The iteration is interrupted otherwise.
+     * The predicate is called while the segment containing the key is locked, so it must not
+     * access this map.
+     */
+    public <T extends KTypeVTypePredicate<? super KType, ? super VType>> T forEach(final T predicate) {
+
+        for (final KTypeVTypeHashMap<KType, VType> segment : this.segments) {
+
+            synchronized (segment) {
+
+                if (segment.allocatedDefaultKey) {
+
+                    if (!predicate.apply(Intrinsics.<KType> empty(), segment.allocatedDefaultKeyValue)) {
+
+                        return predicate;
+                    }
+                }
+
+                final KType[] keys = Intrinsics.<KType[]> cast(segment.keys);
+                final VType[] values = Intrinsics.<VType[]> cast(segment.values);
+
+                for (int i = keys.length - 1; i >= 0; i--) {
+                    KType existing;
+                    if (!Intrinsics.<KType> isEmpty(existing = keys[i])) {
+                        if (!predicate.apply(existing, values[i])) {
+
+                            return predicate;
+                        }
+                    }
+                } //end for
+            }
+        }
+
+        return predicate;
+    }
+
+    /**
+     * Returns a new {@link KTypeVTypeHashMap} containing a copy of the key-value pairs of this map,
+     * each segment being copied atomically.
+     */
+    public KTypeVTypeHashMap<KType, VType> snapshot() {
+
+        final KTypeVTypeHashMap<KType, VType> copy = new KTypeVTypeHashMap<KType, VType>(this.size(), this.loadFactor);
+
+        copy.setDefaultValue(this.defaultValue);
+
+        for (final KTypeVTypeHashMap<KType, VType> segment : this.segments) {
+
+            synchronized (segment) {
+
+                copy.putAll(segment);
+            }
+        }
+
+        return copy;
+    }
+
+    /**
+     * Clear all keys and values in the map, one segment at a time.
+     */
+    public void clear() {
+
+        for (final KTypeVTypeHashMap<KType, VType> segment : this.segments) {
+
+            synchronized (segment) {
+
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * @return Returns the current number of keys in the map, summed over
+     * all segments.
+     */
+    public int size() {
+
+        int size = 0;
+
+        for (final KTypeVTypeHashMap<KType, VType> segment : this.segments) {
+
+            synchronized (segment) {
+
+                size += segment.size();
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * @return Return <code>true</code> if this map contains no assigned keys.
+     */
+    public boolean isEmpty() {
+
+        for (final KTypeVTypeHashMap<KType, VType> segment : this.segments) {
+
+            synchronized (segment) {
+
+                if (!segment.isEmpty()) {
+
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Return the maximum number of keys this map is guaranteed to hold without reallocating
+     * any segment, provided the keys are evenly distributed among segments.
+     */
+    public int capacity() {
+
+        int minSegmentCapacity = Integer.MAX_VALUE;
+
+        for (final KTypeVTypeHashMap<KType, VType> segment : this.segments) {
+
+            synchronized (segment) {
+
+                minSegmentCapacity = Math.min(minSegmentCapacity, segment.capacity());
+            }
+        }
+
+        return (int) Math.min(Integer.MAX_VALUE, (long) minSegmentCapacity * this.segments.length);
+    }
+
+    /**
+     * Returns the number of segments (independent locks) of this map.
+     */
+    public int concurrencyLevel() {
+
+        return this.segments.length;
+    }
+
+    /**
+     * Returns the "default value" value used in methods returning
+     * "default value"
+     */
+    public VType getDefaultValue() {
+        return this.defaultValue;
+    }
+
+    /**
+     * Set the "default value" value to be used in methods returning
+     * "default value"
+     */
+    public void setDefaultValue(final VType defaultValue) {
+
+        this.defaultValue = defaultValue;
+
+        for (final KTypeVTypeHashMap<KType, VType> segment : this.segments) {
+
+            synchronized (segment) {
+
+                segment.setDefaultValue(defaultValue);
+            }
+        }
+    }
+
+    /**
+     * Convert the contents of this map to a human-friendly string.
+     */
+    @Override
+    public String toString() {
+
+        return snapshot().toString();
+    }
+
+    /**
+     * Create a new concurrent hash map without providing the full generic signature
+     * (constructor shortcut).
+     */
+    public static <KType, VType> KTypeVTypeConcurrentHashMap<KType, VType> newInstance() {
+        return new KTypeVTypeConcurrentHashMap<KType, VType>();
+    }
+
+    /**
+     * Create a new concurrent hash map with initial capacity, load factor and concurrency level control.
+     * (constructor shortcut).
+     */
+    public static <KType, VType> KTypeVTypeConcurrentHashMap<KType, VType> newInstance(final int initialCapacity,
+            final double loadFactor, final int concurrencyLevel) {
+        return new KTypeVTypeConcurrentHashMap<KType, VType>(initialCapacity, loadFactor, concurrencyLevel);
+    }
+}
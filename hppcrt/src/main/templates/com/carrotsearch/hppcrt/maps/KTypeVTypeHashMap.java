@@ -1,5 +1,9 @@
 package com.carrotsearch.hppcrt.maps;
 
+import java.io.*;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
 import com.carrotsearch.hppcrt.*;
 import com.carrotsearch.hppcrt.cursors.*;
 import com.carrotsearch.hppcrt.predicates.*;
@@ -28,6 +32,10 @@ import com.carrotsearch.hppcrt.hash.*;
  * are always allocated to the nearest size that is a power of two. When
  * the capacity exceeds the given load factor, the buffer size is doubled.
  * </p>
+ * <p>
+ * By default, all the keys are rehashed at once into the doubled buffers, which is a latency spike for big maps.
+ * Alternatively the rehash can be incremental, see {@link #setIncrementalRehash(boolean)}.
+ * </p>
  *
 #if ($TemplateOptions.KTypeGeneric)
  * <p>This implementation supports <code>null</code> keys.</p>
@@ -127,7 +135,66 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
      * Per-instance size perturbation
      * introduced in rehashing to create a unique key distribution.
      */
-    private final int perturbation = Containers.randomSeed32();
+    protected final int perturbation = Containers.randomSeed32();
+
+    /**
+     * Start slots of a block of the batched lookups, preallocated so that they do not generate garbage.
+     */
+    private final int[] lookupSlots = new int[HashContainers.LOOKUP_BATCH_SIZE];
+
+    /**
+     * Indices in the queries of the pending lookups of a {@link #getAll} block.
+     */
+    private final int[] pendingQueries = new int[HashContainers.INTERLEAVED_LOOKUP_BATCH_SIZE];
+
+    /*! #if ($RH) !*/
+    /**
+     * Probe distances of the pending lookups of a {@link #getAll} block.
+     */
+    private final int[] pendingDists = new int[HashContainers.INTERLEAVED_LOOKUP_BATCH_SIZE];
+    /*! #end !*/
+
+    /**
+     * True if the buffers are rehashed incrementally, see {@link #setIncrementalRehash(boolean)}.
+     */
+    protected boolean incrementalRehash = false;
+
+    /**
+     * During an incremental rehash, the previous keys buffer, holding the keys not migrated
+     * into {@link #keys} yet, else null.
+     */
+    protected/*! #if ($TemplateOptions.KTypePrimitive)
+          KType []
+          #else !*/
+    Object[]
+            /*! #end !*/
+            rehashKeys;
+
+    /**
+     * During an incremental rehash, the values associated to {@link #rehashKeys}.
+     */
+    protected/*! #if ($TemplateOptions.VTypePrimitive)
+          VType []
+          #else !*/
+    Object[]
+            /*! #end !*/
+            rehashValues;
+
+    /**
+     * During an incremental rehash, the number of slots of {@link #rehashKeys} already visited by the migration.
+     */
+    private int rehashSlot;
+
+    /**
+     * Fraction of {@link #capacity()} under which removals shrink the buffers, 0 for never,
+     * see {@link #setShrinkFactor(double)}.
+     */
+    protected double shrinkFactor = 0.0;
+
+    /**
+     * Shrink buffers when the number of keys in {@link #keys} falls under this value.
+     */
+    private int shrinkAt;
 
     /*! #if ($TemplateOptions.KTypeGeneric) !*/
 
@@ -233,6 +300,11 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
             return this.defaultValue;
         }
 
+        if (this.rehashKeys != null) {
+
+            rehashStep(key);
+        }
+
         final int mask = this.keys.length - 1;
 
         final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
@@ -446,6 +518,12 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
         //default sentinel value is never in the keys[] array, so never trigger reallocs
         assert !Intrinsics.<KType> isEmpty(pendingKey);
 
+        if (this.incrementalRehash) {
+
+            expandIncrementally(pendingKey, pendingValue);
+            return;
+        }
+
         // Try to allocate new buffers first. If we OOM, it'll be now without
         // leaving the data structure in an inconsistent state.
         final KType[] oldKeys = Intrinsics.<KType[]> cast(this.keys);
@@ -556,6 +634,224 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
         }
     }
 
+    /**
+     * Incremental version of {@link #expandAndPut}: the current buffers become the previous ones
+     * ({@link #rehashKeys}), to be migrated little by little into the new buffers by the following operations.
+     */
+    private void expandIncrementally(final KType pendingKey, final VType pendingValue) {
+
+        //the previous migration must be over before starting a new one. As every update migrates
+        //at least HashContainers.REHASH_STEP slots, this is normally the case long ago.
+        //assigned already counts all the keys, so the current buffers cannot overflow.
+        completeRehash();
+
+        final KType[] oldKeys = Intrinsics.<KType[]> cast(this.keys);
+        final VType[] oldValues = Intrinsics.<VType[]> cast(this.values);
+
+        allocateBuffers(HashContainers.nextBufferSize(this.keys.length, this.assigned, this.loadFactor));
+
+        this.rehashKeys = oldKeys;
+        this.rehashValues = oldValues;
+        this.rehashSlot = 0;
+
+        //the previous buffers may be completely full with the pending key, so it goes to the new ones.
+        this.assigned++;
+        insertRehashed(pendingKey, pendingValue);
+
+        rehashStep(pendingKey);
+    }
+
+    /**
+     * Make key, if it is in the map, present in {@link #keys} only by migrating the part of its
+     * conflict chain in {@link #rehashKeys}, then migrate at least {@link HashContainers#REHASH_STEP} more slots.
+     */
+    private void rehashStep(final KType key) {
+
+        final KType[] oldKeys = Intrinsics.<KType[]> cast(this.rehashKeys);
+        final int mask = oldKeys.length - 1;
+
+        migrateChain(REHASH(key) & mask);
+
+        int slot = this.rehashSlot;
+        final int stepEnd = Math.min(slot + HashContainers.REHASH_STEP, oldKeys.length);
+
+        while (slot < stepEnd) {
+
+            //skip the migrated slots at once
+            slot += Math.max(1, migrateChain(slot & mask));
+        }
+
+        this.rehashSlot = slot;
+
+        if (slot >= oldKeys.length) {
+
+            this.rehashKeys = null;
+            this.rehashValues = null;
+        }
+    }
+
+    /**
+     * Migrate the keys of {@link #rehashKeys} from slot to the next empty slot.
+     * The keys before slot in the same cluster are left in place: their conflict chains end before slot,
+     * so they are still found in {@link #rehashKeys}.
+     * @return the number of migrated keys.
+     */
+    private int migrateChain(int slot) {
+
+        final KType[] oldKeys = Intrinsics.<KType[]> cast(this.rehashKeys);
+        final VType[] oldValues = Intrinsics.<VType[]> cast(this.rehashValues);
+        final int mask = oldKeys.length - 1;
+
+        int count = 0;
+        KType key;
+
+        while (!Intrinsics.<KType> isEmpty(key = oldKeys[slot])) {
+
+            insertRehashed(key, oldValues[slot]);
+
+            oldKeys[slot] = Intrinsics.<KType> empty();
+
+            /*! #if ($TemplateOptions.VTypeGeneric) !*/
+            oldValues[slot] = Intrinsics.<VType> empty();
+            /*! #end !*/
+
+            slot = (slot + 1) & mask;
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Insert a key known to be absent from {@link #keys}, without any size check, as in {@link #expandAndPut}.
+     */
+    private void insertRehashed(KType key, VType value) {
+
+        final int mask = this.keys.length - 1;
+
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+        final VType[] values = Intrinsics.<VType[]> cast(this.values);
+
+        int slot = REHASH(key) & mask;
+
+        /*! #if ($RH) !*/
+        final int[] cached = this.hash_cache;
+
+        KType tmpKey;
+        VType tmpValue;
+        int tmpAllocated;
+        int initial_slot = slot;
+        int dist = 0;
+        int existing_distance;
+        /*! #end !*/
+
+        while (is_allocated(slot, keys)) {
+            /*! #if ($RH) !*/
+            //re-shuffle keys to minimize variance
+            existing_distance = probe_distance(slot, cached);
+
+            if (dist > existing_distance) {
+                //swap current (key, value, initial_slot) with slot places
+                tmpKey = keys[slot];
+                keys[slot] = key;
+                key = tmpKey;
+
+                tmpAllocated = cached[slot];
+                cached[slot] = initial_slot;
+                initial_slot = tmpAllocated;
+
+                tmpValue = values[slot];
+                values[slot] = value;
+                value = tmpValue;
+
+                dist = existing_distance;
+            }
+            /*! #end !*/
+
+            slot = (slot + 1) & mask;
+
+            /*! #if ($RH) !*/
+            dist++;
+            /*! #end !*/
+        } //end while
+
+        /*! #if ($RH) !*/
+        cached[slot] = initial_slot;
+        /*! #end !*/
+
+        keys[slot] = key;
+        values[slot] = value;
+    }
+
+    /**
+     * Rehash all the keys into new buffers of capacity slots, able to hold them all.
+     */
+    private void rehash(final int capacity) {
+
+        final KType[] oldKeys = Intrinsics.<KType[]> cast(this.keys);
+        final VType[] oldValues = Intrinsics.<VType[]> cast(this.values);
+
+        allocateBuffers(capacity);
+
+        //iterate backwards to minimize the conflict chain length, as in expandAndPut()
+        for (int i = oldKeys.length; --i >= 0;) {
+            KType key;
+            if (!Intrinsics.<KType> isEmpty(key = oldKeys[i])) {
+
+                insertRehashed(key, oldValues[i]);
+            }
+        }
+    }
+
+    /**
+     * Complete a pending incremental rehash at once, see {@link #setIncrementalRehash(boolean)}.
+     * This must be called before iterating directly over {@link #keys} and {@link #values}. Methods
+     * iterating over the whole map call it by themselves.
+     */
+    public void completeRehash() {
+
+        if (this.rehashKeys != null) {
+
+            final int length = this.rehashKeys.length;
+
+            for (int slot = this.rehashSlot; slot < length; slot++) {
+
+                migrateChain(slot);
+            }
+
+            this.rehashKeys = null;
+            this.rehashValues = null;
+        }
+    }
+
+    /**
+     * Enable or disable incremental rehashing: when enabled, the keys are not rehashed all at once
+     * when the buffers are expanded, but the previous buffers are kept and their keys are migrated
+     * by the following put(), get(), containsKey() and remove() calls, including the batched lookups for each of their keys,
+     * at least {@link HashContainers#REHASH_STEP}
+     * slots at a time, bounding the worst-case latency of these operations.
+     * The price is a second lookup in the previous buffers while they exist, and holding both buffers meanwhile.
+     * Methods iterating over the whole map complete a pending rehash first.
+     * Disabling it completes a pending rehash.
+     */
+    public void setIncrementalRehash(final boolean incremental) {
+
+        if (!incremental) {
+
+            completeRehash();
+        }
+
+        this.incrementalRehash = incremental;
+    }
+
+    /**
+     * @return true if the rehash is incremental, see {@link #setIncrementalRehash(boolean)}.
+     */
+    public boolean isIncrementalRehash() {
+
+        return this.incrementalRehash;
+    }
+
     /**
      * Allocate internal buffers for a given capacity.
      *
@@ -582,6 +878,7 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
             //allocate so that there is at least one slot that remains allocated = false
             //this is compulsory to guarantee proper stop in searching loops
             this.resizeAt = HashContainers.expandAtCount(capacity, this.loadFactor);
+            this.shrinkAt = HashContainers.shrinkAtCount(capacity, this.loadFactor, this.shrinkFactor);
         } catch (final OutOfMemoryError e) {
 
             throw new BufferAllocationException(
@@ -616,6 +913,11 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
             return this.defaultValue;
         }
 
+        if (this.rehashKeys != null) {
+
+            rehashStep(key);
+        }
+
         final int mask = this.keys.length - 1;
 
         final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
@@ -637,6 +939,11 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
 
                 shiftConflictingKeys(slot);
 
+                if (this.assigned < this.shrinkAt) {
+
+                    trimToSize();
+                }
+
                 return value;
             }
             slot = (slot + 1) & mask;
@@ -723,6 +1030,103 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
         this.assigned--;
     }
 
+    /**
+     * Remove the key of slot for a bulk removal, without shifting the conflicting keys:
+     * {@link #rebuildProbeChains(int)} must be called once all the keys to remove are removed.
+     */
+    private void removeSlot(final int slot) {
+
+        this.keys[slot] = Intrinsics.<KType> empty();
+
+        /*! #if ($TemplateOptions.VTypeGeneric) !*/
+        //help the GC
+        this.values[slot] = Intrinsics.<VType> empty();
+        /*! #end !*/
+
+        this.assigned--;
+    }
+
+    /**
+     * @return an empty slot of {@link #keys}, there is always one.
+     */
+    private int emptySlot() {
+
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+
+        int slot = 0;
+
+        while (!Intrinsics.<KType> isEmpty(keys[slot])) {
+            slot++;
+        }
+
+        return slot;
+    }
+
+    /**
+     * Restore the probe chains broken by bulk removals with {@link #removeSlot(int)}, in a single sweep
+     * of the buffers instead of one shift of the conflicting keys per removed key:
+     * each remaining key, visited from startSlot, is moved to the first empty slot from its ideal slot.
+     * No key is moved past another one, so the keys stay sorted by ideal slot in their chains, as Robin-hood
+     * hashing requires.
+     * @param startSlot a slot which was already empty before the removals, where no probe chain
+     * can start before and end after.
+     */
+    private void rebuildProbeChains(final int startSlot) {
+
+        final int mask = this.keys.length - 1;
+
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+        final VType[] values = Intrinsics.<VType[]> cast(this.values);
+
+        /*! #if ($RH) !*/
+        final int[] cached = this.hash_cache;
+        /*!  #else
+         final int perturb = this.perturbation;
+         #end !*/
+
+        int slot = startSlot;
+
+        for (int n = mask; n > 0; n--) {
+
+            slot = (slot + 1) & mask;
+
+            final KType existing = keys[slot];
+
+            if (Intrinsics.<KType> isEmpty(existing)) {
+                continue;
+            }
+
+            /*! #if ($RH) !*/
+            final int idealSlotModMask = cached[slot];
+            /*! #else
+            final int idealSlotModMask = REHASH2(existing, perturb) & mask;
+            #end !*/
+
+            //all the slots from the ideal one are already visited, up to slot
+            int target = idealSlotModMask;
+
+            while (target != slot && !Intrinsics.<KType> isEmpty(keys[target])) {
+                target = (target + 1) & mask;
+            }
+
+            if (target != slot) {
+
+                keys[target] = existing;
+                values[target] = values[slot];
+
+                /*! #if ($RH) !*/
+                cached[target] = idealSlotModMask;
+                /*! #end !*/
+
+                keys[slot] = Intrinsics.<KType> empty();
+
+                /*! #if ($TemplateOptions.VTypeGeneric) !*/
+                values[slot] = Intrinsics.<VType> empty();
+                /*! #end !*/
+            }
+        } //end for
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -748,16 +1152,25 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
                 }
             }
 
+            completeRehash();
+
             final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
 
-            for (int i = 0; i < keys.length;) {
-                KType existing;
-                if (!Intrinsics.<KType> isEmpty(existing = keys[i]) && other.contains(existing)) {
+            final int startSlot = emptySlot();
+            final int assignedBefore = this.assigned;
 
-                    shiftConflictingKeys(i);
-                    // Shift, do not increment slot.
-                } else {
-                    i++;
+            try {
+                for (int i = 0; i < keys.length; i++) {
+                    KType existing;
+                    if (!Intrinsics.<KType> isEmpty(existing = keys[i]) && other.contains(existing)) {
+
+                        removeSlot(i);
+                    }
+                }
+            } finally {
+                if (this.assigned != assignedBefore) {
+
+                    rebuildProbeChains(startSlot);
                 }
             }
         } else {
@@ -769,6 +1182,11 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
             }
         }
 
+        if (this.assigned < this.shrinkAt) {
+
+            trimToSize();
+        }
+
         return before - this.size();
     }
 
@@ -791,19 +1209,33 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
             }
         }
 
+        completeRehash();
+
         final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
 
-        for (int i = 0; i < keys.length;) {
-            KType existing;
-            if (!Intrinsics.<KType> isEmpty(existing = keys[i]) && predicate.apply(existing)) {
+        final int startSlot = emptySlot();
+        final int assignedBefore = this.assigned;
+
+        try {
+            for (int i = 0; i < keys.length; i++) {
+                KType existing;
+                if (!Intrinsics.<KType> isEmpty(existing = keys[i]) && predicate.apply(existing)) {
+
+                    removeSlot(i);
+                }
+            }
+        } finally {
+            if (this.assigned != assignedBefore) {
 
-                shiftConflictingKeys(i);
-                // Shift, do not increment slot.
-            } else {
-                i++;
+                rebuildProbeChains(startSlot);
             }
         }
 
+        if (this.assigned < this.shrinkAt) {
+
+            trimToSize();
+        }
+
         return before - this.size();
     }
 
@@ -827,20 +1259,34 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
             }
         }
 
+        completeRehash();
+
         final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
         final VType[] values = Intrinsics.<VType[]> cast(this.values);
 
-        for (int i = 0; i < keys.length;) {
-            KType existing;
-            if (!Intrinsics.<KType> isEmpty(existing = keys[i]) && predicate.apply(existing, values[i])) {
+        final int startSlot = emptySlot();
+        final int assignedBefore = this.assigned;
+
+        try {
+            for (int i = 0; i < keys.length; i++) {
+                KType existing;
+                if (!Intrinsics.<KType> isEmpty(existing = keys[i]) && predicate.apply(existing, values[i])) {
+
+                    removeSlot(i);
+                }
+            }
+        } finally {
+            if (this.assigned != assignedBefore) {
 
-                shiftConflictingKeys(i);
-                // Shift, do not increment slot.
-            } else {
-                i++;
+                rebuildProbeChains(startSlot);
             }
         }
 
+        if (this.assigned < this.shrinkAt) {
+
+            trimToSize();
+        }
+
         return before - this.size();
     }
 
@@ -859,6 +1305,11 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
             return this.defaultValue;
         }
 
+        if (this.rehashKeys != null) {
+
+            rehashStep(key);
+        }
+
         final int mask = this.keys.length - 1;
 
         final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
@@ -899,6 +1350,11 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
             return this.allocatedDefaultKey;
         }
 
+        if (this.rehashKeys != null) {
+
+            rehashStep(key);
+        }
+
         final int mask = this.keys.length - 1;
 
         final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
@@ -927,6 +1383,213 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
         return false;
     }
 
+    /**
+     * Batched {@link #containsKey(KType)}: <code>results[i] = containsKey(queries[i])</code> for i in [offset; offset + length[.
+     * <p>
+     * The queries are processed by blocks of {@link HashContainers#LOOKUP_BATCH_SIZE}: the start slots of
+     * a whole block are computed first, as a sequence of independent hash computations, then all the block is probed.
+     * This amortizes the hashing over the block and lets the CPU overlap it with the (likely cache-missing) probes.
+     * </p>
+     * @return the number of queries found.
+     * @throws IndexOutOfBoundsException if [offset; offset + length[ is out of queries or results.
+     */
+    public int containsKey(final KType[] queries, final int offset, final int length, final boolean[] results) {
+
+        HashContainers.checkBatchRange(offset, length, queries.length, results.length);
+
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+        final int mask = keys.length - 1;
+
+        /*! #if ($RH) !*/
+        final int[] cached = this.hash_cache;
+        /*! #end !*/
+
+        final int[] slots = this.lookupSlots;
+
+        final int end = offset + length;
+        int found = 0;
+
+        for (int start = offset; start < end; start += slots.length) {
+
+            final int batchEnd = Math.min(end, start + slots.length);
+
+            //1) hash the whole batch, -1 meaning the default key
+            for (int i = start; i < batchEnd; i++) {
+
+                final KType key = queries[i];
+
+                if (Intrinsics.<KType> isEmpty(key)) {
+
+                    slots[i - start] = -1;
+                    continue;
+                }
+
+                if (this.rehashKeys != null) {
+
+                    //as in containsKey(KType), before the probes of the batch
+                    rehashStep(key);
+                }
+
+                slots[i - start] = REHASH(key) & mask;
+            }
+
+            //2) probe
+            for (int i = start; i < batchEnd; i++) {
+
+                int slot = slots[i - start];
+                boolean result = false;
+
+                if (slot == -1) {
+
+                    result = this.allocatedDefaultKey;
+
+                } else {
+
+                    final KType key = queries[i];
+                    KType existing;
+
+                    /*! #if ($RH) !*/
+                    int dist = 0;
+                    /*! #end !*/
+
+                    while (!Intrinsics.<KType> isEmpty(existing = keys[slot])
+                            /*! #if ($RH) !*/&& dist <= probe_distance(slot, cached) /*! #end !*/) {
+
+                        if (KEYEQUALS(key, existing)) {
+
+                            result = true;
+                            break;
+                        }
+                        slot = (slot + 1) & mask;
+
+                        /*! #if ($RH) !*/
+                        dist++;
+                        /*! #end !*/
+                    } //end while
+                }
+
+                results[i] = result;
+
+                if (result) {
+                    found++;
+                }
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Batched {@link #get(KType)}: <code>results[i] = get(queries[i])</code> for i in [offset; offset + length[.
+     * <p>
+     * The queries are processed by blocks of {@link HashContainers#INTERLEAVED_LOOKUP_BATCH_SIZE}: the start slots of
+     * a whole block are computed first, then the probe chains of the block are walked in an interleaved way, one slot
+     * of each pending query per round. The memory loads of a round are independent, so that several cache misses are
+     * in flight at the same time instead of one per lookup.
+     * </p>
+     * @return the number of queries found.
+     * @throws IndexOutOfBoundsException if [offset; offset + length[ is out of queries or results.
+     */
+    public int getAll(final KType[] queries, final int offset, final int length, final VType[] results) {
+
+        HashContainers.checkBatchRange(offset, length, queries.length, results.length);
+
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+        final VType[] values = Intrinsics.<VType[]> cast(this.values);
+        final int mask = keys.length - 1;
+
+        final int batchSize = HashContainers.INTERLEAVED_LOOKUP_BATCH_SIZE;
+
+        //slots and indices in queries of the pending queries of a batch
+        final int[] slots = this.lookupSlots;
+        final int[] pending = this.pendingQueries;
+
+        /*! #if ($RH) !*/
+        final int[] cached = this.hash_cache;
+        final int[] dists = this.pendingDists;
+        /*! #end !*/
+
+        final int end = offset + length;
+        int found = 0;
+
+        for (int start = offset; start < end; start += batchSize) {
+
+            final int batchEnd = Math.min(end, start + batchSize);
+
+            //1) hash the whole batch
+            int nbPending = 0;
+
+            for (int i = start; i < batchEnd; i++) {
+
+                final KType key = queries[i];
+
+                if (Intrinsics.<KType> isEmpty(key)) {
+
+                    if (this.allocatedDefaultKey) {
+
+                        results[i] = this.allocatedDefaultKeyValue;
+                        found++;
+                    } else {
+
+                        results[i] = this.defaultValue;
+                    }
+                } else {
+
+                    if (this.rehashKeys != null) {
+
+                        //as in get(KType), before the probes of the batch
+                        rehashStep(key);
+                    }
+
+                    slots[nbPending] = REHASH(key) & mask;
+                    pending[nbPending] = i;
+                    /*! #if ($RH) !*/
+                    dists[nbPending] = 0;
+                    /*! #end !*/
+                    nbPending++;
+                }
+            }
+
+            //2) probe one slot of each pending query per round, compacting the still pending ones.
+            while (nbPending > 0) {
+
+                int stillPending = 0;
+
+                for (int p = 0; p < nbPending; p++) {
+
+                    final int i = pending[p];
+                    final int slot = slots[p];
+                    final KType key = queries[i];
+                    final KType existing = keys[slot];
+
+                    if (Intrinsics.<KType> isEmpty(existing)
+                            /*! #if ($RH) !*/|| dists[p] > probe_distance(slot, cached) /*! #end !*/) {
+
+                        results[i] = this.defaultValue;
+
+                    } else if (KEYEQUALS(key, existing)) {
+
+                        results[i] = values[slot];
+                        found++;
+
+                    } else {
+
+                        slots[stillPending] = (slot + 1) & mask;
+                        pending[stillPending] = i;
+                        /*! #if ($RH) !*/
+                        dists[stillPending] = dists[p] + 1;
+                        /*! #end !*/
+                        stillPending++;
+                    }
+                }
+
+                nbPending = stillPending;
+            }
+        }
+
+        return found;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -937,6 +1600,10 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
         // States are always cleared.
         this.allocatedDefaultKey = false;
 
+        //drop a pending incremental rehash
+        this.rehashKeys = null;
+        this.rehashValues = null;
+
         /*! #if ($TemplateOptions.VTypeGeneric) !*/
         //help the GC
         this.allocatedDefaultKeyValue = Intrinsics.<VType> empty();
@@ -968,6 +1635,52 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
         return this.resizeAt;
     }
 
+    /**
+     * Shrink the internal buffers to the smallest ones able to hold max(expectedElements, size()) keys
+     * without expansion, if they are smaller than the current ones.
+     */
+    public void shrink(final int expectedElements) {
+
+        completeRehash();
+
+        final int capacity = HashContainers.minBufferSize(Math.max(expectedElements, this.assigned), this.loadFactor);
+
+        if (capacity < this.keys.length) {
+
+            rehash(capacity);
+        }
+    }
+
+    /**
+     * Shrink the internal buffers to the smallest ones able to hold the current keys, see {@link #shrink(int)}.
+     */
+    public void trimToSize() {
+
+        shrink(0);
+    }
+
+    /**
+     * Enable the automatic shrinking of the buffers by the removal methods: the buffers are trimmed to size
+     * as soon as the number of keys falls under shrinkFactor * {@link #capacity()}, so that memory tracks
+     * the current size rather than the peak size. 0 (the default) disables it.
+     * @param shrinkFactor in [0; {@link HashContainers#MAX_SHRINK_FACTOR}].
+     */
+    public void setShrinkFactor(final double shrinkFactor) {
+
+        HashContainers.checkShrinkFactor(shrinkFactor);
+
+        this.shrinkFactor = shrinkFactor;
+        this.shrinkAt = HashContainers.shrinkAtCount(this.keys.length, this.loadFactor, shrinkFactor);
+    }
+
+    /**
+     * @return the shrink factor, see {@link #setShrinkFactor(double)}.
+     */
+    public double getShrinkFactor() {
+
+        return this.shrinkFactor;
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -990,6 +1703,8 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
             h += BitMixer.mix(this.allocatedDefaultKeyValue);
         }
 
+        completeRehash();
+
         final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
         final VType[] values = Intrinsics.<VType[]> cast(this.values);
 
@@ -1120,6 +1835,7 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
 
                 @Override
                 public void initialize(final EntryIterator obj) {
+                    completeRehash();
                     obj.cursor.index = KTypeVTypeHashMap.this.keys.length + 1;
                 }
 
@@ -1155,6 +1871,8 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
             procedure.apply(Intrinsics.<KType> empty(), this.allocatedDefaultKeyValue);
         }
 
+        completeRehash();
+
         final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
         final VType[] values = Intrinsics.<VType[]> cast(this.values);
 
@@ -1183,6 +1901,8 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
             }
         }
 
+        completeRehash();
+
         final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
         final VType[] values = Intrinsics.<VType[]> cast(this.values);
 
@@ -1228,6 +1948,8 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
                 procedure.apply(Intrinsics.<KType> empty());
             }
 
+            this.owner.completeRehash();
+
             final KType[] keys = Intrinsics.<KType[]> cast(this.owner.keys);
 
             //Iterate in reverse for side-stepping the longest conflict chain
@@ -1253,6 +1975,8 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
                 }
             }
 
+            this.owner.completeRehash();
+
             final KType[] keys = Intrinsics.<KType[]> cast(this.owner.keys);
 
             //Iterate in reverse for side-stepping the longest conflict chain
@@ -1329,6 +2053,7 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
 
                     @Override
                     public void initialize(final KeysIterator obj) {
+                        completeRehash();
                         obj.cursor.index = KTypeVTypeHashMap.this.keys.length + 1;
                     }
 
@@ -1350,6 +2075,8 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
                 target[count++] = Intrinsics.<KType> empty();
             }
 
+            this.owner.completeRehash();
+
             final KType[] keys = Intrinsics.<KType[]> cast(this.owner.keys);
 
             for (int i = 0; i < keys.length; i++) {
@@ -1458,6 +2185,8 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
 
             // This is a linear scan over the values, but it's in the contract, so be it.
 
+            this.owner.completeRehash();
+
             final KType[] keys = Intrinsics.<KType[]> cast(this.owner.keys);
             final VType[] values = Intrinsics.<VType[]> cast(this.owner.values);
 
@@ -1476,6 +2205,8 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
                 procedure.apply(this.owner.allocatedDefaultKeyValue);
             }
 
+            this.owner.completeRehash();
+
             final KType[] keys = Intrinsics.<KType[]> cast(this.owner.keys);
             final VType[] values = Intrinsics.<VType[]> cast(this.owner.values);
 
@@ -1498,6 +2229,8 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
                 }
             }
 
+            this.owner.completeRehash();
+
             final KType[] keys = Intrinsics.<KType[]> cast(this.owner.keys);
             final VType[] values = Intrinsics.<VType[]> cast(this.owner.values);
 
@@ -1540,18 +2273,33 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
                 }
             }
 
+            this.owner.completeRehash();
+
             final KType[] keys = Intrinsics.<KType[]> cast(this.owner.keys);
             final VType[] values = Intrinsics.<VType[]> cast(this.owner.values);
 
-            for (int slot = 0; slot < keys.length;) {
-                if (is_allocated(slot, keys) && Intrinsics.<VType> equals(e, values[slot])) {
+            final int startSlot = this.owner.emptySlot();
+            final int assignedBefore = this.owner.assigned;
 
-                    shiftConflictingKeys(slot);
-                    // Shift, do not increment slot.
-                } else {
-                    slot++;
+            try {
+                for (int slot = 0; slot < keys.length; slot++) {
+                    if (is_allocated(slot, keys) && Intrinsics.<VType> equals(e, values[slot])) {
+
+                        this.owner.removeSlot(slot);
+                    }
+                }
+            } finally {
+                if (this.owner.assigned != assignedBefore) {
+
+                    this.owner.rebuildProbeChains(startSlot);
                 }
             }
+
+            if (this.owner.assigned < this.owner.shrinkAt) {
+
+                this.owner.trimToSize();
+            }
+
             return before - this.owner.size();
         }
 
@@ -1577,18 +2325,33 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
                 }
             }
 
+            this.owner.completeRehash();
+
             final KType[] keys = Intrinsics.<KType[]> cast(this.owner.keys);
             final VType[] values = Intrinsics.<VType[]> cast(this.owner.values);
 
-            for (int slot = 0; slot < keys.length;) {
-                if (is_allocated(slot, keys) && predicate.apply(values[slot])) {
+            final int startSlot = this.owner.emptySlot();
+            final int assignedBefore = this.owner.assigned;
 
-                    shiftConflictingKeys(slot);
-                    // Shift, do not increment slot.
-                } else {
-                    slot++;
+            try {
+                for (int slot = 0; slot < keys.length; slot++) {
+                    if (is_allocated(slot, keys) && predicate.apply(values[slot])) {
+
+                        this.owner.removeSlot(slot);
+                    }
                 }
+            } finally {
+                if (this.owner.assigned != assignedBefore) {
+
+                    this.owner.rebuildProbeChains(startSlot);
+                }
+            }
+
+            if (this.owner.assigned < this.owner.shrinkAt) {
+
+                this.owner.trimToSize();
             }
+
             return before - this.owner.size();
         }
 
@@ -1614,6 +2377,7 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
 
                     @Override
                     public void initialize(final ValuesIterator obj) {
+                        completeRehash();
                         obj.cursor.index = KTypeVTypeHashMap.this.keys.length + 1;
                     }
 
@@ -1635,6 +2399,8 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
                 target[count++] = this.owner.allocatedDefaultKeyValue;
             }
 
+            this.owner.completeRehash();
+
             final KType[] keys = Intrinsics.<KType[]> cast(this.owner.keys);
 
             final VType[] values = Intrinsics.<VType[]> cast(this.owner.values);
@@ -1713,6 +2479,9 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
         //We must NOT clone because of independent perturbations seeds
         cloned.putAll(this);
 
+        cloned.incrementalRehash = this.incrementalRehash;
+        cloned.setShrinkFactor(this.shrinkFactor);
+
         return cloned;
     }
 
@@ -1762,6 +2531,125 @@ implements KTypeVTypeMap<KType, VType>, Cloneable
         return new KTypeVTypeHashMap<KType, VType>(container);
     }
 
+    /**
+     * Write the map to <code>out</code> in a compact binary form: the size, followed by the entries
+     * of the assigned slots only, gathered by chunks of {@link ContainerIO#CHUNK_SIZE} entries, each chunk being transferred in bulk
+     * as its keys then its values.
+     #if ($TemplateOptions.KTypeGeneric || $TemplateOptions.VTypeGeneric)
+     * <code>out</code> must be an {@link ObjectOutput}.
+     #end
+     * @see #readFrom(DataInput)
+     */
+    public void writeTo(final DataOutput out) throws IOException {
+
+        final int size = size();
+
+        out.writeInt(size);
+
+        completeRehash();
+
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+        final VType[] values = Intrinsics.<VType[]> cast(this.values);
+
+        final int chunkSize = Math.min(size, ContainerIO.CHUNK_SIZE);
+
+        final KType[] keysChunk = Intrinsics.<KType> newArray(chunkSize);
+        final VType[] valuesChunk = Intrinsics.<VType> newArray(chunkSize);
+
+        int count = 0;
+
+        if (this.allocatedDefaultKey) {
+
+            keysChunk[count] = Intrinsics.<KType> empty();
+            valuesChunk[count] = this.allocatedDefaultKeyValue;
+            count++;
+        }
+
+        for (int i = 0; i < keys.length; i++) {
+            KType existing;
+            if (!Intrinsics.<KType> isEmpty(existing = keys[i])) {
+
+                if (count == chunkSize) {
+
+                    ContainerIO.write(out, keysChunk, 0, count);
+                    ContainerIO.write(out, valuesChunk, 0, count);
+                    count = 0;
+                }
+
+                keysChunk[count] = existing;
+                valuesChunk[count] = values[i];
+                count++;
+            }
+        }
+
+        ContainerIO.write(out, keysChunk, 0, count);
+        ContainerIO.write(out, valuesChunk, 0, count);
+    }
+
+    /**
+     * Write the map to <code>channel</code>, same format as {@link #writeTo(DataOutput)}.
+     * The channel is not closed.
+     */
+    public void writeTo(final WritableByteChannel channel) throws IOException {
+
+        /*! #if ($TemplateOptions.KTypeGeneric || $TemplateOptions.VTypeGeneric) !*/
+        final ObjectOutputStream out = ContainerIO.newObjectOutput(channel);
+        /*! #else
+        final DataOutputStream out = ContainerIO.newDataOutput(channel);
+        #end !*/
+        writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Create a map from the binary form written by {@link #writeTo(DataOutput)}, the entries
+     * being read by chunks into a map pre-sized to hold them, so that no rehash occurs.
+     #if ($TemplateOptions.KTypeGeneric || $TemplateOptions.VTypeGeneric)
+     * <code>in</code> must be an {@link ObjectInput}.
+     #end
+     */
+    public static <KType, VType> KTypeVTypeHashMap<KType, VType> readFrom(final DataInput in) throws IOException {
+
+        final int size = ContainerIO.readSize(in);
+
+        final KTypeVTypeHashMap<KType, VType> map = new KTypeVTypeHashMap<KType, VType>(size);
+
+        final int chunkSize = Math.min(size, ContainerIO.CHUNK_SIZE);
+
+        final KType[] keysChunk = Intrinsics.<KType> newArray(chunkSize);
+        final VType[] valuesChunk = Intrinsics.<VType> newArray(chunkSize);
+
+        for (int done = 0; done < size;) {
+
+            final int count = Math.min(size - done, chunkSize);
+
+            ContainerIO.read(in, keysChunk, 0, count);
+            ContainerIO.read(in, valuesChunk, 0, count);
+
+            for (int i = 0; i < count; i++) {
+
+                map.put(keysChunk[i], valuesChunk[i]);
+            }
+
+            done += count;
+        }
+
+        return map;
+    }
+
+    /**
+     * Create a map from the binary form written by {@link #writeTo(WritableByteChannel)}.
+     * The channel is not closed.
+     */
+    public static <KType, VType> KTypeVTypeHashMap<KType, VType> readFrom(final ReadableByteChannel channel) throws IOException {
+
+        /*! #if ($TemplateOptions.KTypeGeneric || $TemplateOptions.VTypeGeneric) !*/
+        return readFrom(ContainerIO.newObjectInput(channel));
+        /*! #else
+        return readFrom(ContainerIO.newDataInput(channel));
+        #end !*/
+    }
+
     /**
      * Create a new hash map without providing the full generic signature
      * (constructor shortcut).
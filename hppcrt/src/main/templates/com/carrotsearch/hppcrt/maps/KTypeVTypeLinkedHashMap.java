@@ -0,0 +1,1283 @@
+package com.carrotsearch.hppcrt.maps;
+
+import java.util.NoSuchElementException;
+
+import com.carrotsearch.hppcrt.*;
+import com.carrotsearch.hppcrt.cursors.*;
+import com.carrotsearch.hppcrt.predicates.*;
+import com.carrotsearch.hppcrt.procedures.*;
+import com.carrotsearch.hppcrt.hash.*;
+
+/*! #import("com/carrotsearch/hppcrt/Intrinsics.java") !*/
+/**
+ * A hash map of <code>KType</code> to <code>VType</code> with a predictable iteration order,
+ * implemented using open addressing with linear probing as {@link KTypeVTypeHashMap}, whose slots
+ * are threaded in a doubly-linked list with the packed before / after pointers of {@link com.carrotsearch.hppcrt.lists.KTypeLinkedList}:
+ * see {@link #beforeAfterPointers}.
+ * <p>
+ * The order is the insertion order by default, or the access order, from the least recently accessed entry
+ * to the most recently accessed one, see {@link #KTypeVTypeLinkedHashMap(int, double, boolean)}.
+ * In both cases, the first entry of the order, the eldest, can be removed in constant time by {@link #removeEldest()},
+ * and the map can be bounded to a maximum size by evicting its eldest entry on insertion, see {@link #setMaxSize(int)}
+ * and {@link #removeEldestEntry()}: an access-ordered bounded map is an LRU cache.
+ * </p>
+ * <p>
+ * Iteration follows the order, without allocation, by {@link #forEach(KTypeVTypeProcedure)} or
+ * by the pooled {@link #iterator()}.
+ * </p>
+ *
+#if ($TemplateOptions.KTypeGeneric)
+ * <p> As in {@link KTypeVTypeHashMap}, the hashing strategy can be changed
+ * by overriding ({@link #equalKeys(Object, Object)} and {@link #hashKey(Object)}) together.
+ * </p>
+ * <p>This implementation supports <code>null</code> keys.</p>
+#end
+#if ($TemplateOptions.VTypeGeneric)
+ * <p>This implementation supports <code>null</code> values.</p>
+#end
+ */
+/*! ${TemplateOptions.generatedAnnotation} !*/
+public class KTypeVTypeLinkedHashMap<KType, VType> implements Iterable<KTypeVTypeCursor<KType, VType>>, Cloneable
+{
+    protected VType defaultValue = Intrinsics.<VType> empty();
+
+    /**
+     * Hash-indexed array holding all keys.
+     * <p>
+     * Direct map iteration, out of order: iterate  {keys[i], values[i]} for i in [0; keys.length[ where keys[i] != 0/null, then also
+     * {0/null, {@link #allocatedDefaultKeyValue} } is in the map if {@link #allocatedDefaultKey} = true.
+     * </p>
+     */
+    public/*! #if ($TemplateOptions.KTypePrimitive)
+          KType []
+          #else !*/
+    Object[]
+            /*! #end !*/
+            keys;
+
+    /**
+     * Hash-indexed array holding all values associated to the keys.
+     * stored in {@link #keys}.
+     */
+    public/*! #if ($TemplateOptions.VTypePrimitive)
+          VType []
+          #else !*/
+    Object[]
+            /*! #end !*/
+            values;
+
+    /**
+     * Represent the before / after nodes of each slot of {@link #keys} in the order,
+     * such as the links of slot i are beforeAfterPointers[i] where
+     * the 32 highest bits represent the before node : (beforeAfterPointers[i] & 0xFFFFFFFF00000000) >> 32
+     * the 32 lowest bits represent the after node : (beforeAfterPointers[i] & 0x00000000FFFFFFFF).
+     * <p>
+     * In addition to the slots, there are 3 nodes beyond keys.length: the head (keys.length), whose after node is the eldest entry,
+     * the tail (keys.length + 1), whose before node is the latest entry, and the node of the key 0/null (keys.length + 2).
+     * </p>
+     */
+    protected long[] beforeAfterPointers;
+
+    /**
+     * True if key = 0/null is in the map.
+     */
+    public boolean allocatedDefaultKey = false;
+
+    /**
+     * if allocatedDefaultKey = true, contains the associated V to the key = 0/null
+     */
+    public VType allocatedDefaultKeyValue;
+
+    /**
+     * Cached number of assigned slots in {@link #keys}.
+     */
+    protected int assigned;
+
+    /**
+     * The load factor for this map (fraction of allocated slots
+     * before the buffers must be rehashed or reallocated).
+     */
+    protected final double loadFactor;
+
+    /**
+     * True if the order is the access order, false for the insertion order.
+     */
+    protected final boolean accessOrder;
+
+    /**
+     * Maximum size of the map, see {@link #setMaxSize(int)}.
+     */
+    protected int maxSize = Integer.MAX_VALUE;
+
+    /**
+     * Resize buffers when {@link #keys} hits this value.
+     */
+    private int resizeAt;
+
+    /**
+     * Per-instance perturbation
+     * introduced in rehashing to create a unique key distribution.
+     */
+    protected final int perturbation = Containers.randomSeed32();
+
+    /*! #if ($TemplateOptions.KTypeGeneric) !*/
+
+    /**
+     * Override this method, together with {@link #equalKeys(Object, Object)}
+     * to customize the hashing strategy. Note that this method is guaranteed
+     * to be called with a non-null key argument.
+     * By default, this method calls key.{@link #hashCode()}.
+     */
+    protected int hashKey(final KType key) {
+
+        //default maps on Object.hashCode()
+        return key.hashCode();
+    }
+
+    /**
+     * Override this method together with {@link #hashKey(Object)}
+     * to customize the hashing strategy. Note that this method is guaranteed
+     * to be called with both non-null arguments.
+     * By default, this method calls a.{@link #equals(b)}.
+     */
+    protected boolean equalKeys(final KType a, final KType b) {
+
+        //default maps on Object.equals()
+        return Intrinsics.<KType> equalsNotNull(a, b);
+    }
+
+    /*! #end !*/
+
+    /**
+     * Default constructor: Creates an insertion-ordered hash map with the default capacity of {@link Containers#DEFAULT_EXPECTED_ELEMENTS},
+     * load factor of {@link HashContainers#DEFAULT_LOAD_FACTOR}.
+     */
+    public KTypeVTypeLinkedHashMap() {
+        this(Containers.DEFAULT_EXPECTED_ELEMENTS);
+    }
+
+    /**
+     * Creates an insertion-ordered hash map with the given initial capacity, default load factor of
+     * {@link HashContainers#DEFAULT_LOAD_FACTOR}.
+     */
+    public KTypeVTypeLinkedHashMap(final int initialCapacity) {
+        this(initialCapacity, HashContainers.DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Creates an insertion-ordered hash map with the given initial capacity,
+     * load factor.
+     *
+     * @param loadFactor The load factor (greater than zero and smaller than 1).
+     */
+    public KTypeVTypeLinkedHashMap(final int initialCapacity, final double loadFactor) {
+        this(initialCapacity, loadFactor, false);
+    }
+
+    /**
+     * Creates a hash map with the given initial capacity,
+     * load factor and ordering mode.
+     *
+     * @param loadFactor The load factor (greater than zero and smaller than 1).
+     * @param accessOrder true for the access order, where {@link #get(Object)}, {@link #put(Object, Object)} and
+     * their variants move the accessed entry to the end of the order, false for the insertion order.
+     */
+    public KTypeVTypeLinkedHashMap(final int initialCapacity, final double loadFactor, final boolean accessOrder) {
+        this.loadFactor = loadFactor;
+        this.accessOrder = accessOrder;
+        //take into account of the load factor to guarantee no reallocations before reaching  initialCapacity.
+        allocateBuffers(HashContainers.minBufferSize(initialCapacity, loadFactor));
+    }
+
+    /**
+     * Place a given key and value in the map. A new key is placed at the end of the order,
+     * then the eldest entry is evicted if {@link #removeEldestEntry()} is true.
+     * @return the previous value associated with key, or the default value if there was none.
+     */
+    public VType put(final KType key, final VType value) {
+
+        if (Intrinsics.<KType> isEmpty(key)) {
+
+            final int defaultNode = this.keys.length + 2;
+
+            if (this.allocatedDefaultKey) {
+
+                final VType previousValue = this.allocatedDefaultKeyValue;
+                this.allocatedDefaultKeyValue = value;
+
+                if (this.accessOrder) {
+
+                    moveToLast(defaultNode);
+                }
+
+                return previousValue;
+            }
+
+            this.allocatedDefaultKeyValue = value;
+            this.allocatedDefaultKey = true;
+            linkLast(defaultNode);
+
+            evictEldest();
+
+            return this.defaultValue;
+        }
+
+        final int slot = slotOrFreeSlot(key);
+
+        if (slot >= 0) {
+
+            final VType previousValue = Intrinsics.<VType> cast(this.values[slot]);
+            this.values[slot] = value;
+
+            if (this.accessOrder) {
+
+                moveToLast(slot);
+            }
+
+            return previousValue;
+        }
+
+        insertAt(key, value, ~slot);
+
+        return this.defaultValue;
+    }
+
+    /**
+     * Put all the (keys[i], values[i]) pairs in order, for i in [0; keys.length[.
+     * @return the number of keys that were not in the map before.
+     * @throws IllegalArgumentException if keys and values do not have the same length.
+     */
+    public int putAll(final KType[] keys, final VType[] values) {
+
+        if (keys.length != values.length) {
+
+            throw new IllegalArgumentException("Arrays of keys and values must have an identical length.");
+        }
+
+        int count = 0;
+
+        for (int i = 0; i < keys.length; i++) {
+
+            if (!containsKey(keys[i])) {
+                count++;
+            }
+
+            put(keys[i], values[i]);
+        }
+
+        return count;
+    }
+
+    /**
+     * Put key and value only if key is not in the map.
+     * @return true if key was not in the map, and has been added.
+     */
+    public boolean putIfAbsent(final KType key, final VType value) {
+
+        if (Intrinsics.<KType> isEmpty(key)) {
+
+            if (this.allocatedDefaultKey) {
+
+                return false;
+            }
+
+            put(key, value);
+
+            return true;
+        }
+
+        final int slot = slotOrFreeSlot(key);
+
+        if (slot >= 0) {
+
+            return false;
+        }
+
+        insertAt(key, value, ~slot);
+
+        return true;
+    }
+
+    /*! #if ($TemplateOptions.VTypePrimitive) !*/
+    /**
+     * If <code>key</code> exists, <code>putValue</code> is inserted into the map,
+     * otherwise any existing value is incremented by <code>additionValue</code>.
+     *
+     * @return Returns the current value associated with <code>key</code> (after changes).
+     */
+    public VType putOrAdd(final KType key, VType putValue, final VType incrementValue) {
+
+        if (Intrinsics.<KType> isEmpty(key)) {
+
+            if (this.allocatedDefaultKey) {
+
+                putValue = (VType) (Intrinsics.<VType> add(this.allocatedDefaultKeyValue, incrementValue));
+            }
+
+            put(key, putValue);
+
+            return putValue;
+        }
+
+        //single probe, contrary to containsKey() + get() + put().
+        final int slot = slotOrFreeSlot(key);
+
+        if (slot >= 0) {
+
+            putValue = (VType) (Intrinsics.<VType> add(Intrinsics.<VType> cast(this.values[slot]), incrementValue));
+            this.values[slot] = putValue;
+
+            if (this.accessOrder) {
+
+                moveToLast(slot);
+            }
+
+            return putValue;
+        }
+
+        insertAt(key, putValue, ~slot);
+
+        return putValue;
+    }
+
+    /**
+     * Adds <code>incrementValue</code> to any existing value for the given <code>key</code>
+     * or inserts <code>incrementValue</code> if <code>key</code> did not previously exist.
+     *
+     * @return Returns the current value associated with <code>key</code> (after changes).
+     */
+    public VType addTo(final KType key, final VType incrementValue) {
+
+        return putOrAdd(key, incrementValue, incrementValue);
+    }
+
+    /*! #end !*/
+
+    /**
+     * In the access order, moves key to the end of the order.
+     * @return the value associated with key, or the default value if key is not in the map.
+     */
+    public VType get(final KType key) {
+
+        if (Intrinsics.<KType> isEmpty(key)) {
+
+            if (this.allocatedDefaultKey) {
+
+                if (this.accessOrder) {
+
+                    moveToLast(this.keys.length + 2);
+                }
+
+                return this.allocatedDefaultKeyValue;
+            }
+
+            return this.defaultValue;
+        }
+
+        final int slot = slotOf(key);
+
+        if (slot >= 0) {
+
+            if (this.accessOrder) {
+
+                moveToLast(slot);
+            }
+
+            return Intrinsics.<VType> cast(this.values[slot]);
+        }
+
+        return this.defaultValue;
+    }
+
+    /**
+     * Unlike {@link #get(Object)}, never changes the order.
+     * @return true if key is in the map.
+     */
+    public boolean containsKey(final KType key) {
+
+        if (Intrinsics.<KType> isEmpty(key)) {
+
+            return this.allocatedDefaultKey;
+        }
+
+        return slotOf(key) >= 0;
+    }
+
+    /**
+     * Remove key and its associated value from the map.
+     * @return the removed value, or the default value if key was not in the map.
+     */
+    public VType remove(final KType key) {
+
+        if (Intrinsics.<KType> isEmpty(key)) {
+
+            if (this.allocatedDefaultKey) {
+
+                return removeDefaultKey();
+            }
+
+            return this.defaultValue;
+        }
+
+        final int slot = slotOf(key);
+
+        if (slot < 0) {
+
+            return this.defaultValue;
+        }
+
+        final VType previousValue = Intrinsics.<VType> cast(this.values[slot]);
+
+        removeSlot(slot);
+
+        return previousValue;
+    }
+
+    /**
+     * @return the eldest key, first in the order.
+     * @throws NoSuchElementException if the map is empty.
+     */
+    public KType eldestKey() {
+
+        final int node = eldestNode();
+
+        if (node == this.keys.length + 2) {
+
+            return Intrinsics.<KType> empty();
+        }
+
+        return Intrinsics.<KType> cast(this.keys[node]);
+    }
+
+    /**
+     * @return the value of the eldest key, first in the order.
+     * @throws NoSuchElementException if the map is empty.
+     */
+    public VType eldestValue() {
+
+        final int node = eldestNode();
+
+        if (node == this.keys.length + 2) {
+
+            return this.allocatedDefaultKeyValue;
+        }
+
+        return Intrinsics.<VType> cast(this.values[node]);
+    }
+
+    /**
+     * Remove the eldest key, first in the order, and its associated value.
+     * @return the removed value.
+     * @throws NoSuchElementException if the map is empty.
+     */
+    public VType removeEldest() {
+
+        final int node = eldestNode();
+
+        if (node == this.keys.length + 2) {
+
+            return removeDefaultKey();
+        }
+
+        final VType previousValue = Intrinsics.<VType> cast(this.values[node]);
+
+        removeSlot(node);
+
+        return previousValue;
+    }
+
+    /**
+     * Called after the insertion of a new key to decide if the eldest entry must be evicted, as long
+     * as it returns true. By default, true if the size is over {@link #getMaxSize()}.
+     * <p>
+     * Override this method for another eviction policy, or to be notified of the evictions
+     * by reading {@link #eldestKey()} and {@link #eldestValue()} before returning true.
+     * </p>
+     */
+    protected boolean removeEldestEntry() {
+
+        return size() > this.maxSize;
+    }
+
+    /**
+     * Bound the map to maxSize entries: inserting a new key in a full map evicts the eldest entry,
+     * which is the least recently accessed one in the access order.
+     * Eldest entries are evicted right away if the map is bigger.
+     * @param maxSize at least 1, {@link Integer#MAX_VALUE} for an unbounded map (the default).
+     * @throws IllegalArgumentException if maxSize is smaller than 1.
+     */
+    public void setMaxSize(final int maxSize) {
+
+        if (maxSize < 1) {
+
+            throw new IllegalArgumentException("The maximum size should be at least 1: " + maxSize);
+        }
+
+        this.maxSize = maxSize;
+
+        evictEldest();
+    }
+
+    /**
+     * @return the maximum size, see {@link #setMaxSize(int)}.
+     */
+    public int getMaxSize() {
+
+        return this.maxSize;
+    }
+
+    /**
+     * @return true if the order is the access order, false for the insertion order.
+     */
+    public boolean isAccessOrder() {
+
+        return this.accessOrder;
+    }
+
+    /**
+     * Clear all keys and values in the container.
+     * <p>Does not release internal buffers.</p>
+     */
+    public void clear() {
+
+        this.assigned = 0;
+
+        this.allocatedDefaultKey = false;
+
+        /*! #if ($TemplateOptions.VTypeGeneric) !*/
+        this.allocatedDefaultKeyValue = null;
+        /*! #end !*/
+
+        //Faster than Arrays.fill(keys, null); // Help the GC.
+        KTypeArrays.blankArray(this.keys, 0, this.keys.length);
+
+        /*! #if ($TemplateOptions.VTypeGeneric) !*/
+        VTypeArrays.blankArray(this.values, 0, this.values.length);
+        /*! #end !*/
+
+        //only the head and tail pointers are ever read in an empty map.
+        final int head = this.keys.length;
+        final int tail = head + 1;
+
+        this.beforeAfterPointers[head] = getLinkNodeValue(head, tail);
+        this.beforeAfterPointers[tail] = getLinkNodeValue(head, tail);
+    }
+
+    /**
+     * @return the number of key-value pairs in the map.
+     */
+    public int size() {
+
+        return this.assigned + (this.allocatedDefaultKey ? 1 : 0);
+    }
+
+    /**
+     * @return true if the map is empty.
+     */
+    public boolean isEmpty() {
+
+        return size() == 0;
+    }
+
+    /**
+     * @return the number of keys the map can hold before its buffers are reallocated.
+     */
+    public int capacity() {
+
+        return this.resizeAt;
+    }
+
+    /**
+     * Applies a given procedure to all keys-value pairs in this container, in order.
+     * @return the input procedure.
+     */
+    public <T extends KTypeVTypeProcedure<? super KType, ? super VType>> T forEach(final T procedure) {
+
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+        final VType[] values = Intrinsics.<VType[]> cast(this.values);
+        final long[] pointers = this.beforeAfterPointers;
+
+        final int tail = keys.length + 1;
+        final int defaultNode = keys.length + 2;
+
+        for (int node = getLinkAfter(pointers[keys.length]); node != tail; node = getLinkAfter(pointers[node])) {
+
+            if (node == defaultNode) {
+
+                procedure.apply(Intrinsics.<KType> empty(), this.allocatedDefaultKeyValue);
+            } else {
+
+                procedure.apply(keys[node], values[node]);
+            }
+        }
+
+        return procedure;
+    }
+
+    /**
+     * Applies a given predicate to all keys-value pairs in this container, in order,
+     * until the predicate returns <code>false</code>.
+     * @return the input predicate.
+     */
+    public <T extends KTypeVTypePredicate<? super KType, ? super VType>> T forEach(final T predicate) {
+
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+        final VType[] values = Intrinsics.<VType[]> cast(this.values);
+        final long[] pointers = this.beforeAfterPointers;
+
+        final int tail = keys.length + 1;
+        final int defaultNode = keys.length + 2;
+
+        for (int node = getLinkAfter(pointers[keys.length]); node != tail; node = getLinkAfter(pointers[node])) {
+
+            if (node == defaultNode) {
+
+                if (!predicate.apply(Intrinsics.<KType> empty(), this.allocatedDefaultKeyValue)) {
+                    break;
+                }
+            } else if (!predicate.apply(keys[node], values[node])) {
+                break;
+            }
+        }
+
+        return predicate;
+    }
+
+    /**
+     * An iterator implementation for {@link #iterator}, in order.
+     * Holds a KTypeVTypeCursor returning
+     * (key, value, index) = (KType key, VType value, index the position in keys {@link KTypeVTypeLinkedHashMap#keys}, or keys.length + 2 for key = 0/null)
+     */
+    public final class EntryIterator extends AbstractIterator<KTypeVTypeCursor<KType, VType>>
+    {
+        public final KTypeVTypeCursor<KType, VType> cursor;
+
+        public EntryIterator() {
+            this.cursor = new KTypeVTypeCursor<KType, VType>();
+        }
+
+        @Override
+        protected KTypeVTypeCursor<KType, VType> fetch() {
+
+            final int length = KTypeVTypeLinkedHashMap.this.keys.length;
+
+            final int node = getLinkAfter(KTypeVTypeLinkedHashMap.this.beforeAfterPointers[this.cursor.index]);
+
+            if (node == length + 1) {
+                return done();
+            }
+
+            this.cursor.index = node;
+
+            if (node == length + 2) {
+
+                this.cursor.key = Intrinsics.<KType> empty();
+                this.cursor.value = KTypeVTypeLinkedHashMap.this.allocatedDefaultKeyValue;
+            } else {
+
+                this.cursor.key = Intrinsics.<KType> cast(KTypeVTypeLinkedHashMap.this.keys[node]);
+                this.cursor.value = Intrinsics.<VType> cast(KTypeVTypeLinkedHashMap.this.values[node]);
+            }
+
+            return this.cursor;
+        }
+    }
+
+    /**
+     * internal pool of EntryIterator
+     */
+    protected final IteratorPool<KTypeVTypeCursor<KType, VType>, EntryIterator> entryIteratorPool = new IteratorPool<KTypeVTypeCursor<KType, VType>, EntryIterator>(
+            new ObjectFactory<EntryIterator>() {
+
+                @Override
+                public EntryIterator create() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public void initialize(final EntryIterator obj) {
+                    //start from the head
+                    obj.cursor.index = KTypeVTypeLinkedHashMap.this.keys.length;
+                }
+
+                @Override
+                public void reset(final EntryIterator obj) {
+                    /*! #if ($TemplateOptions.KTypeGeneric) !*/
+                    obj.cursor.key = null;
+                    /*! #end !*/
+
+                    /*! #if ($TemplateOptions.VTypeGeneric) !*/
+                    obj.cursor.value = null;
+                    /*! #end !*/
+                }
+            });
+
+    /**
+     * Iterate the entries in order. The map must not be modified during the iteration,
+     * which includes {@link #get(Object)} in the access order.
+     */
+    @Override
+    public EntryIterator iterator() {
+        //return new EntryIterator();
+        return this.entryIteratorPool.borrow();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        int h = 0;
+
+        if (this.allocatedDefaultKey) {
+            h += BitMixer.mix(this.allocatedDefaultKeyValue);
+        }
+
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+        final VType[] values = Intrinsics.<VType[]> cast(this.values);
+
+        for (int i = keys.length; --i >= 0;) {
+            KType existing;
+            if (!Intrinsics.<KType> isEmpty(existing = keys[i])) {
+
+                h += BitMixer.mix(existing) ^ BitMixer.mix(values[i]);
+            }
+        }
+
+        return h;
+    }
+
+    /**
+     * Same entries, whatever their order.
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(final Object obj) {
+        if (obj != null) {
+            if (obj == this) {
+                return true;
+            }
+
+            //must be of the same class, subclasses are not comparable
+            if (obj.getClass() != this.getClass()) {
+                return false;
+            }
+
+            /* #if ($TemplateOptions.AnyGeneric) */
+            @SuppressWarnings("unchecked")
+            final/* #end */
+            KTypeVTypeLinkedHashMap<KType, VType> other = (KTypeVTypeLinkedHashMap<KType, VType>) obj;
+
+            //must be of the same size
+            if (other.size() != this.size()) {
+                return false;
+            }
+
+            if (this.allocatedDefaultKey && !(other.allocatedDefaultKey &&
+                    Intrinsics.<VType> equals(this.allocatedDefaultKeyValue, other.allocatedDefaultKeyValue))) {
+                return false;
+            }
+
+            final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+            final VType[] values = Intrinsics.<VType[]> cast(this.values);
+
+            for (int i = keys.length; --i >= 0;) {
+                KType existing;
+                if (!Intrinsics.<KType> isEmpty(existing = keys[i])) {
+
+                    //do not change the order of other
+                    final int otherSlot = other.slotOf(existing);
+
+                    if (otherSlot < 0 || !Intrinsics.<VType> equals(values[i], other.values[otherSlot])) {
+                        return false;
+                    }
+                }
+            }
+
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Clone with the same order, ordering mode and maximum size.
+     * {@inheritDoc}
+     */
+    @Override
+    public KTypeVTypeLinkedHashMap<KType, VType> clone() {
+
+        //clone to size() to prevent some cases of exponential sizes,
+        final KTypeVTypeLinkedHashMap<KType, VType> cloned = new KTypeVTypeLinkedHashMap<KType, VType>(size(), this.loadFactor,
+                this.accessOrder);
+
+        cloned.defaultValue = this.defaultValue;
+        cloned.maxSize = this.maxSize;
+
+        //We must NOT clone because of the independent perturbation seeds
+        forEach(new KTypeVTypeProcedure<KType, VType>() {
+
+            @Override
+            public void apply(final KType key, final VType value) {
+
+                cloned.put(key, value);
+            }
+        });
+
+        return cloned;
+    }
+
+    /**
+     * Convert the contents of this map to a human-friendly string, in order.
+     */
+    @Override
+    public String toString() {
+
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[");
+
+        forEach(new KTypeVTypeProcedure<KType, VType>() {
+
+            boolean first = true;
+
+            @Override
+            public void apply(final KType key, final VType value) {
+
+                if (!this.first) {
+                    buffer.append(", ");
+                }
+                buffer.append(key);
+                buffer.append("=>");
+                buffer.append(value);
+                this.first = false;
+            }
+        });
+
+        buffer.append("]");
+        return buffer.toString();
+    }
+
+    /**
+     * Returns the "default value" value used
+     * in methods returning "default value"
+     */
+    public VType getDefaultValue() {
+
+        return this.defaultValue;
+    }
+
+    /**
+     * Set the "default value" value to be used
+     * in methods returning "default value"
+     */
+    public void setDefaultValue(final VType defaultValue) {
+
+        this.defaultValue = defaultValue;
+    }
+
+    /**
+     * Create a new insertion-ordered hash map without providing the full generic signature
+     * (constructor shortcut).
+     */
+    public static <KType, VType> KTypeVTypeLinkedHashMap<KType, VType> newInstance() {
+        return new KTypeVTypeLinkedHashMap<KType, VType>();
+    }
+
+    /**
+     * Create a new hash map with initial capacity, load factor and ordering mode control.
+     * (constructor shortcut).
+     */
+    public static <KType, VType> KTypeVTypeLinkedHashMap<KType, VType> newInstance(final int initialCapacity,
+            final double loadFactor, final boolean accessOrder) {
+        return new KTypeVTypeLinkedHashMap<KType, VType>(initialCapacity, loadFactor, accessOrder);
+    }
+
+    /**
+     * Creates an insertion-ordered hash map from two index-aligned arrays of key-value pairs. Default load factor is used.
+     */
+    public static <KType, VType> KTypeVTypeLinkedHashMap<KType, VType> from(final KType[] keys, final VType[] values) {
+
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException("Arrays of keys and values must have an identical length.");
+        }
+
+        final KTypeVTypeLinkedHashMap<KType, VType> map = new KTypeVTypeLinkedHashMap<KType, VType>(keys.length);
+        map.putAll(keys, values);
+
+        return map;
+    }
+
+    /**
+     * Return the slot of key (not the default key), or -1 if key is not in the map.
+     */
+    private int slotOf(final KType key) {
+
+        final int slot = slotOrFreeSlot(key);
+
+        return slot >= 0 ? slot : -1;
+    }
+
+    /**
+     * Return the slot of key (not the default key), or ~(the empty slot ending its probe sequence)
+     * if key is not in the map.
+     */
+    private int slotOrFreeSlot(final KType key) {
+
+        final int mask = this.keys.length - 1;
+
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+
+        int slot = REHASH(key) & mask;
+
+        KType existing;
+
+        while (!Intrinsics.<KType> isEmpty(existing = keys[slot])) {
+
+            if (KEYEQUALS(key, existing)) {
+
+                return slot;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return ~slot;
+    }
+
+    /**
+     * Insert key (not the default key), known not to be in the map, at freeSlot as returned by
+     * {@link #slotOrFreeSlot(Object)}, at the end of the order. The buffers are first expanded if needed,
+     * then the eldest entry is evicted if {@link #removeEldestEntry()} is true.
+     */
+    private void insertAt(final KType key, final VType value, int freeSlot) {
+
+        if (this.assigned == this.resizeAt) {
+
+            rehash(HashContainers.nextBufferSize(this.keys.length, this.assigned, this.loadFactor));
+
+            freeSlot = freeSlot(key);
+        }
+
+        this.keys[freeSlot] = key;
+        this.values[freeSlot] = value;
+        linkLast(freeSlot);
+        this.assigned++;
+
+        evictEldest();
+    }
+
+    /**
+     * Return the first empty slot in the probe sequence of key.
+     */
+    private int freeSlot(final KType key) {
+
+        final int mask = this.keys.length - 1;
+
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+
+        int slot = REHASH(key) & mask;
+
+        while (!Intrinsics.<KType> isEmpty(keys[slot])) {
+
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    /**
+     * @return the node of the eldest entry.
+     * @throws NoSuchElementException if the map is empty.
+     */
+    private int eldestNode() {
+
+        final int node = getLinkAfter(this.beforeAfterPointers[this.keys.length]);
+
+        if (node == this.keys.length + 1) {
+
+            throw new NoSuchElementException("The map is empty");
+        }
+
+        return node;
+    }
+
+    /**
+     * Evict the eldest entries while {@link #removeEldestEntry()} is true.
+     */
+    private void evictEldest() {
+
+        while (!isEmpty() && removeEldestEntry()) {
+
+            removeEldest();
+        }
+    }
+
+    /**
+     * Remove the key 0/null, known to be in the map.
+     * @return its value.
+     */
+    private VType removeDefaultKey() {
+
+        final VType previousValue = this.allocatedDefaultKeyValue;
+
+        unlink(this.keys.length + 2);
+
+        this.allocatedDefaultKey = false;
+        /*! #if ($TemplateOptions.VTypeGeneric) !*/
+        this.allocatedDefaultKeyValue = null;
+        /*! #end !*/
+
+        return previousValue;
+    }
+
+    /**
+     * Remove the key of gapSlot, then shift back the conflicting keys, moving their nodes along.
+     */
+    private void removeSlot(int gapSlot) {
+
+        final int mask = this.keys.length - 1;
+
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+        final VType[] values = Intrinsics.<VType[]> cast(this.values);
+
+        unlink(gapSlot);
+
+        // Perform shifts of conflicting keys to fill in the gap.
+        int distance = 0;
+
+        while (true) {
+
+            final int slot = (gapSlot + (++distance)) & mask;
+
+            final KType existing = keys[slot];
+
+            if (Intrinsics.<KType> isEmpty(existing)) {
+                break;
+            }
+
+            final int idealSlotModMask = REHASH(existing) & mask;
+
+            final int shift = (slot - idealSlotModMask) & mask;
+
+            if (shift >= distance) {
+                // Entry at this position was originally at or before the gap slot.
+                // Move the conflict-shifted entry to the gap's position and repeat the procedure
+                // for any entries to the right of the current position, treating it
+                // as the new gap.
+                keys[gapSlot] = existing;
+                values[gapSlot] = values[slot];
+                moveNode(slot, gapSlot);
+
+                gapSlot = slot;
+                distance = 0;
+            }
+        } //end while
+
+        // Mark the last found gap slot without a conflict as empty.
+        keys[gapSlot] = Intrinsics.<KType> empty();
+
+        /*! #if ($TemplateOptions.VTypeGeneric) !*/
+        values[gapSlot] = Intrinsics.<VType> empty();
+        /*! #end !*/
+
+        this.assigned--;
+    }
+
+    /**
+     * Link node at the end of the order.
+     */
+    private void linkLast(final int node) {
+
+        final long[] pointers = this.beforeAfterPointers;
+        final int tail = this.keys.length + 1;
+
+        final int last = getLinkBefore(pointers[tail]);
+
+        pointers[node] = getLinkNodeValue(last, tail);
+        pointers[last] = setLinkAfterNodeValue(pointers[last], node);
+        pointers[tail] = setLinkBeforeNodeValue(pointers[tail], node);
+    }
+
+    /**
+     * Unlink node from the order.
+     */
+    private void unlink(final int node) {
+
+        final long[] pointers = this.beforeAfterPointers;
+
+        final long links = pointers[node];
+        final int before = getLinkBefore(links);
+        final int after = getLinkAfter(links);
+
+        pointers[before] = setLinkAfterNodeValue(pointers[before], after);
+        pointers[after] = setLinkBeforeNodeValue(pointers[after], before);
+    }
+
+    /**
+     * Move node to the end of the order.
+     */
+    private void moveToLast(final int node) {
+
+        if (getLinkAfter(this.beforeAfterPointers[node]) != this.keys.length + 1) {
+
+            unlink(node);
+            linkLast(node);
+        }
+    }
+
+    /**
+     * Move the node of an entry from slot from to the unlinked slot to, keeping its place in the order.
+     */
+    private void moveNode(final int from, final int to) {
+
+        final long[] pointers = this.beforeAfterPointers;
+
+        final long links = pointers[from];
+        final int before = getLinkBefore(links);
+        final int after = getLinkAfter(links);
+
+        pointers[to] = links;
+        pointers[before] = setLinkAfterNodeValue(pointers[before], to);
+        pointers[after] = setLinkBeforeNodeValue(pointers[after], to);
+    }
+
+    /**
+     * Re-insert all the keys in order into new buffers of capacity slots.
+     */
+    private void rehash(final int capacity) {
+
+        final KType[] oldKeys = Intrinsics.<KType[]> cast(this.keys);
+        final VType[] oldValues = Intrinsics.<VType[]> cast(this.values);
+        final long[] oldPointers = this.beforeAfterPointers;
+
+        final int oldTail = oldKeys.length + 1;
+        final int oldDefaultNode = oldKeys.length + 2;
+
+        allocateBuffers(capacity);
+
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+        final VType[] values = Intrinsics.<VType[]> cast(this.values);
+
+        for (int node = getLinkAfter(oldPointers[oldKeys.length]); node != oldTail; node = getLinkAfter(oldPointers[node])) {
+
+            if (node == oldDefaultNode) {
+
+                linkLast(keys.length + 2);
+            } else {
+
+                final KType key = oldKeys[node];
+                final int slot = freeSlot(key);
+
+                keys[slot] = key;
+                values[slot] = oldValues[node];
+                linkLast(slot);
+            }
+        }
+    }
+
+    /**
+     * Allocate internal buffers for a given capacity, with an empty order.
+     *
+     * @param capacity New capacity (must be a power of two).
+     */
+    @SuppressWarnings("boxing")
+    private void allocateBuffers(final int capacity) {
+        try {
+
+            final KType[] keys = Intrinsics.<KType> newArray(capacity);
+            final VType[] values = Intrinsics.<VType> newArray(capacity);
+            final long[] pointers = new long[capacity + 3];
+
+            //initialize head and tail: initially, they are linked to each other.
+            final int head = capacity;
+            final int tail = capacity + 1;
+
+            pointers[head] = getLinkNodeValue(head, tail);
+            pointers[tail] = getLinkNodeValue(head, tail);
+
+            this.keys = keys;
+            this.values = values;
+            this.beforeAfterPointers = pointers;
+
+            //allocate so that there is at least one slot that remains empty
+            //this is compulsory to guarantee proper stop in searching loops
+            this.resizeAt = HashContainers.expandAtCount(capacity, this.loadFactor);
+
+        } catch (final OutOfMemoryError e) {
+
+            throw new BufferAllocationException(
+                    "Not enough memory to allocate buffers to grow from %d -> %d elements",
+                    e,
+                    (this.keys == null) ? 0 : this.keys.length,
+                    capacity);
+        }
+    }
+
+    /*! #if ($TemplateOptions.declareInline("REHASH(value)",
+    "<Object,*>==>BitMixer.mix(hashKey(value) , this.perturbation)",
+    "<*,*>==>BitMixer.mix(value , this.perturbation)")) !*/
+    /**
+     * REHASH method for rehashing the keys.
+     * (inlined in generated code)
+     */
+    private int REHASH(final KType value) {
+
+        return BitMixer.mix(hashKey(value), this.perturbation);
+    }
+
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.declareInline("KEYEQUALS(key1, key2)",
+    "<Object,*>==>equalKeys(key1, key2)",
+    "<*,*>==>Intrinsics.<KType> equalsNotNull(key1, key2)")) !*/
+    /**
+     * macro which hides the applied equality criteria
+     */
+    private boolean KEYEQUALS(final KType key1, final KType key2) {
+
+        return equalKeys(key1, key2);
+    }
+
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.declareInline("getLinkNodeValue(beforeIndex, afterIndex)",
+     "<*,*>==>((long) beforeIndex << 32) | afterIndex")) !*/
+    /**
+     * Builds a node value from its before an after links.
+     * (actual method is inlined in generated code)
+     */
+    private long getLinkNodeValue(final int beforeIndex, final int afterIndex) {
+        return ((long) beforeIndex << 32) | afterIndex;
+    }
+
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.declareInline("getLinkBefore(nodeValue)", "<*,*>==>(int) (nodeValue >> 32)")) !*/
+    private int getLinkBefore(final long nodeValue) {
+        return (int) (nodeValue >> 32);
+    }
+
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.declareInline("getLinkAfter(nodeValue)",
+       "<*,*>==>(int) (nodeValue & 0x00000000FFFFFFFFL)")) !*/
+    private int getLinkAfter(final long nodeValue) {
+        return (int) (nodeValue & 0x00000000FFFFFFFFL);
+    }
+
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.declareInline("setLinkBeforeNodeValue(nodeValue, newBefore)",
+     "<*,*>==>((long) newBefore << 32) | (nodeValue & 0x00000000FFFFFFFFL)")) !*/
+    private long setLinkBeforeNodeValue(final long nodeValue, final int newBefore) {
+        return ((long) newBefore << 32) | (nodeValue & 0x00000000FFFFFFFFL);
+    }
+
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.declareInline("setLinkAfterNodeValue(nodeValue, newAfter)",
+      "<*,*>==> newAfter | (nodeValue & 0xFFFFFFFF00000000L)")) !*/
+    private long setLinkAfterNodeValue(final long nodeValue, final int newAfter) {
+        return newAfter | (nodeValue & 0xFFFFFFFF00000000L);
+    }
+    /*! #end !*/
+}
@@ -0,0 +1,784 @@
+package com.carrotsearch.hppcrt.maps;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.carrotsearch.hppcrt.*;
+import com.carrotsearch.hppcrt.predicates.*;
+import com.carrotsearch.hppcrt.procedures.*;
+import com.carrotsearch.hppcrt.hash.*;
+
+/*! #import("com/carrotsearch/hppcrt/Intrinsics.java") !*/
+/*! ${TemplateOptions.doNotGenerateKType("OBJECT")} !*/
+/*! ${TemplateOptions.doNotGenerateVType("OBJECT")} !*/
+/**
+ * A read-only hash map of <code>KType</code> to <code>VType</code>, memory-mapped from a snapshot file
+ * of a {@link KTypeVTypeHashMap} written by {@link #write(KTypeVTypeHashMap, File)}.
+ * <p>
+ * The snapshot is the very hash table of the original map, so opening it with {@link #open(File)}
+ * involves no deserialization at all: the file pages are loaded lazily by the OS as lookups touch them.
+ * The mapping is released by {@link #close()}, after which the map must no longer be used.
+ * </p>
+ * <p>
+ * Snapshot file layout, all numbers in big-endian order:
+ * </p>
+ * <pre>
+ * offset  size             content
+ * 0       4                magic number {@link #MAGIC}
+ * 4       4                layout version {@link #VERSION}
+ * 8       1                key type, as a JVM type descriptor ('B', 'C', 'S', 'I', 'J', 'F' or 'D')
+ * 9       1                value type, as a JVM type descriptor
+ * 10      1                1 if the map contains the key 0, else 0 (allocatedDefaultKey)
+ * 11      1                reserved, 0
+ * 12      4                perturbation of the hash function
+ * 16      4                number of slots N, a power of two (keys.length)
+ * 20      4                number of assigned slots in keys (i.e size, without the key 0)
+ * 24      8                value associated to the key 0 (allocatedDefaultKeyValue), left-aligned
+ * 32      N * sizeof(key)  the keys buffer, empty slots being 0
+ * V       N * sizeof(val)  the values buffer, V being the end of keys rounded up to a multiple of 8
+ * </pre>
+ * <p>
+ * The file is split into several mappings of at most {@link #PAGE_SIZE} slots, so that its size
+ * is not limited by the maximum size of a single {@link MappedByteBuffer}.
+ * </p>
+ */
+/*! ${TemplateOptions.generatedAnnotation} !*/
+public class KTypeVTypeMappedHashMap<KType, VType> implements Closeable
+{
+    /**
+     * Snapshot files magic number, "HPRM".
+     */
+    public static final int MAGIC = 0x4850524D;
+
+    /**
+     * Current version of the snapshot layout.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Size of the header, in bytes.
+     */
+    public static final int HEADER_SIZE = 32;
+
+    /**
+     * Max number of slots of a single mapping, a power of two.
+     */
+    public static final int PAGE_SIZE = 1 << 20;
+
+    /**
+     * Size of the write buffer of {@link #write(KTypeVTypeHashMap, File)}, a multiple of 8.
+     */
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    protected VType defaultValue = Intrinsics.<VType> empty();
+
+    /**
+     * Mapped pages of keys, each holding (1 &lt;&lt; {@link #pageShift}) slots.
+     * null once closed.
+     */
+    protected ByteBuffer[] keyPages;
+
+    /**
+     * Mapped pages of values, with the same layout as {@link #keyPages}.
+     */
+    protected ByteBuffer[] valuePages;
+
+    /**
+     * log2 of the number of slots per page.
+     */
+    protected int pageShift;
+
+    /**
+     * Number of slots per page - 1.
+     */
+    protected int pageMask;
+
+    /**
+     * Total number of slots, a power of two.
+     */
+    protected final int bufferSize;
+
+    /**
+     * True if key = 0 is in the map.
+     */
+    public final boolean allocatedDefaultKey;
+
+    /**
+     * if allocatedDefaultKey = true, contains the associated V to the key = 0
+     */
+    public final VType allocatedDefaultKeyValue;
+
+    /**
+     * Number of assigned slots in the buffers.
+     */
+    protected final int assigned;
+
+    /**
+     * Perturbation of the original map the snapshot was taken from.
+     */
+    protected final int perturbation;
+
+    /**
+     * Map the snapshot of channel.
+     */
+    protected KTypeVTypeMappedHashMap(final FileChannel channel) throws IOException {
+
+        if (channel.size() < KTypeVTypeMappedHashMap.HEADER_SIZE) {
+
+            throw new IOException("Not a hash map snapshot file.");
+        }
+
+        final ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, KTypeVTypeMappedHashMap.HEADER_SIZE);
+
+        if (header.getInt(0) != KTypeVTypeMappedHashMap.MAGIC) {
+
+            throw new IOException("Not a hash map snapshot file.");
+        }
+
+        if (header.getInt(4) != KTypeVTypeMappedHashMap.VERSION) {
+
+            throw new IOException("Unsupported snapshot version: " + header.getInt(4));
+        }
+
+        if (header.get(8) != KEY_TAG() || header.get(9) != VALUE_TAG()) {
+
+            throw new IOException("Snapshot of a map with different key or value types: " +
+                    (char) header.get(8) + "/" + (char) header.get(9));
+        }
+
+        this.allocatedDefaultKey = header.get(10) != 0;
+        this.perturbation = header.getInt(12);
+        this.bufferSize = header.getInt(16);
+        this.assigned = header.getInt(20);
+        final int defaultKeyValueIndex = 24 / VALUE_BYTES();
+        this.allocatedDefaultKeyValue = VALUE_GET(header, defaultKeyValueIndex);
+
+        DirectBuffers.free(header);
+
+        if (this.bufferSize < HashContainers.MIN_HASH_ARRAY_LENGTH || Integer.bitCount(this.bufferSize) != 1 ||
+                this.assigned < 0 || this.assigned >= this.bufferSize ||
+                channel.size() < KTypeVTypeMappedHashMap.valuesOffset(this.bufferSize, KEY_BYTES()) + (long) this.bufferSize * VALUE_BYTES()) {
+
+            throw new IOException("Corrupted snapshot file.");
+        }
+
+        final int pageSize = Math.min(this.bufferSize, KTypeVTypeMappedHashMap.PAGE_SIZE);
+        final int nbPages = this.bufferSize / pageSize;
+
+        final ByteBuffer[] keyPages = new ByteBuffer[nbPages];
+        final ByteBuffer[] valuePages = new ByteBuffer[nbPages];
+
+        final long keysOffset = KTypeVTypeMappedHashMap.HEADER_SIZE;
+        final long valuesOffset = KTypeVTypeMappedHashMap.valuesOffset(this.bufferSize, KEY_BYTES());
+
+        try {
+            for (int i = 0; i < nbPages; i++) {
+
+                keyPages[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        keysOffset + (long) i * pageSize * KEY_BYTES(), pageSize * KEY_BYTES());
+
+                valuePages[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        valuesOffset + (long) i * pageSize * VALUE_BYTES(), pageSize * VALUE_BYTES());
+            }
+        } catch (final IOException e) {
+
+            KTypeVTypeMappedHashMap.freePages(keyPages);
+            KTypeVTypeMappedHashMap.freePages(valuePages);
+
+            throw e;
+        }
+
+        this.keyPages = keyPages;
+        this.valuePages = valuePages;
+        this.pageShift = Integer.numberOfTrailingZeros(pageSize);
+        this.pageMask = pageSize - 1;
+    }
+
+    /**
+     * Open a snapshot file written by {@link #write(KTypeVTypeHashMap, File)}, as a read-only
+     * memory-mapped map. The file must not be modified while the map is open.
+     */
+    public static <KType, VType> KTypeVTypeMappedHashMap<KType, VType> open(final File file) throws IOException {
+
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+        try {
+            //the mappings remain valid once the channel is closed.
+            return new KTypeVTypeMappedHashMap<KType, VType>(raf.getChannel());
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Write a snapshot of map into file, replacing any previous content.
+     * The snapshot can be re-opened by {@link #open(File)}.
+     * A pending incremental rehash of map is completed first.
+     */
+    public static <KType, VType> void write(final KTypeVTypeHashMap<KType, VType> map, final File file) throws IOException {
+
+        map.completeRehash();
+
+        final FileOutputStream output = new FileOutputStream(file);
+
+        try {
+            final FileChannel channel = output.getChannel();
+
+            final KType[] keys = Intrinsics.<KType[]> cast(map.keys);
+            final VType[] values = Intrinsics.<VType[]> cast(map.values);
+
+            final ByteBuffer buffer = ByteBuffer.allocate(KTypeVTypeMappedHashMap.WRITE_BUFFER_SIZE);
+
+            //header
+            buffer.putInt(KTypeVTypeMappedHashMap.MAGIC);
+            buffer.putInt(KTypeVTypeMappedHashMap.VERSION);
+            buffer.put(KEY_TAG());
+            buffer.put(VALUE_TAG());
+            buffer.put((byte) (map.allocatedDefaultKey ? 1 : 0));
+            buffer.put((byte) 0);
+            buffer.putInt(map.perturbation);
+            buffer.putInt(keys.length);
+            buffer.putInt(map.size() - (map.allocatedDefaultKey ? 1 : 0));
+            buffer.putLong(0L);
+            KTypeVTypeMappedHashMap.appendValue(buffer, 24 / VALUE_BYTES(), map.allocatedDefaultKeyValue);
+            buffer.position(KTypeVTypeMappedHashMap.HEADER_SIZE);
+
+            //keys
+            for (int i = 0; i < keys.length; i++) {
+
+                //keys and values sizes divide the buffer size, so it is exactly full here.
+                if (!buffer.hasRemaining()) {
+                    KTypeVTypeMappedHashMap.flush(buffer, channel);
+                }
+
+                KTypeVTypeMappedHashMap.appendKey(buffer, buffer.position() / KEY_BYTES(), keys[i]);
+                buffer.position(buffer.position() + KEY_BYTES());
+            }
+
+            //padding: the buffer position is the file offset modulo the buffer size, a multiple of 8.
+            while ((buffer.position() & 7) != 0) {
+                buffer.put((byte) 0);
+            }
+
+            //values
+            for (int i = 0; i < values.length; i++) {
+
+                if (!buffer.hasRemaining()) {
+                    KTypeVTypeMappedHashMap.flush(buffer, channel);
+                }
+
+                KTypeVTypeMappedHashMap.appendValue(buffer, buffer.position() / VALUE_BYTES(), values[i]);
+                buffer.position(buffer.position() + VALUE_BYTES());
+            }
+
+            KTypeVTypeMappedHashMap.flush(buffer, channel);
+
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * @return Returns the value associated with the given key or the default value
+     * for the key type, if the key is not associated with any value.
+     */
+    public VType get(final KType key) {
+
+        ensureOpen();
+
+        if (Intrinsics.<KType> isEmpty(key)) {
+
+            if (this.allocatedDefaultKey) {
+
+                return this.allocatedDefaultKeyValue;
+            }
+
+            return this.defaultValue;
+        }
+
+        final int slot = slotOf(key);
+
+        if (slot < 0) {
+
+            return this.defaultValue;
+        }
+
+        final ByteBuffer valuePage = this.valuePages[slot >>> this.pageShift];
+        final int index = slot & this.pageMask;
+
+        return VALUE_GET(valuePage, index);
+    }
+
+    /**
+     * @return Returns <code>true</code> if this container has a mapping for the key.
+     */
+    public boolean containsKey(final KType key) {
+
+        ensureOpen();
+
+        if (Intrinsics.<KType> isEmpty(key)) {
+
+            return this.allocatedDefaultKey;
+        }
+
+        return slotOf(key) >= 0;
+    }
+
+    /**
+     * Applies a given procedure to all keys-value pairs in this container.
+     * @return the input procedure.
+     */
+    public <T extends KTypeVTypeProcedure<? super KType, ? super VType>> T forEach(final T procedure) {
+
+        ensureOpen();
+
+        if (this.allocatedDefaultKey) {
+
+            procedure.apply(Intrinsics.<KType> empty(), this.allocatedDefaultKeyValue);
+        }
+
+        final ByteBuffer[] keyPages = this.keyPages;
+        final ByteBuffer[] valuePages = this.valuePages;
+        final int pageSize = this.pageMask + 1;
+
+        //Iterate in reverse for side-stepping the longest conflict chain
+        //in another hash, in case apply() is actually used to fill another hash container.
+        for (int p = keyPages.length - 1; p >= 0; p--) {
+
+            final ByteBuffer keyPage = keyPages[p];
+            final ByteBuffer valuePage = valuePages[p];
+
+            for (int i = pageSize - 1; i >= 0; i--) {
+
+                final KType existing = KEY_GET(keyPage, i);
+
+                if (!Intrinsics.<KType> isEmpty(existing)) {
+
+                    procedure.apply(existing, VALUE_GET(valuePage, i));
+                }
+            }
+        }
+
+        return procedure;
+    }
+
+    /**
+     * Applies a given predicate to all keys-value pairs in this container,
+     * until the predicate returns <code>false</code>.
+     * @return the input predicate.
+     */
+    public <T extends KTypeVTypePredicate<? super KType, ? super VType>> T forEach(final T predicate) {
+
+        ensureOpen();
+
+        if (this.allocatedDefaultKey) {
+
+            if (!predicate.apply(Intrinsics.<KType> empty(), this.allocatedDefaultKeyValue)) {
+
+                return predicate;
+            }
+        }
+
+        final ByteBuffer[] keyPages = this.keyPages;
+        final ByteBuffer[] valuePages = this.valuePages;
+        final int pageSize = this.pageMask + 1;
+
+        for (int p = keyPages.length - 1; p >= 0; p--) {
+
+            final ByteBuffer keyPage = keyPages[p];
+            final ByteBuffer valuePage = valuePages[p];
+
+            for (int i = pageSize - 1; i >= 0; i--) {
+
+                final KType existing = KEY_GET(keyPage, i);
+
+                if (!Intrinsics.<KType> isEmpty(existing)) {
+
+                    if (!predicate.apply(existing, VALUE_GET(valuePage, i))) {
+
+                        return predicate;
+                    }
+                }
+            }
+        }
+
+        return predicate;
+    }
+
+    /**
+     * Copy all the key-value pairs into a new, modifiable, {@link KTypeVTypeHashMap}.
+     */
+    public KTypeVTypeHashMap<KType, VType> toHeapMap() {
+
+        final KTypeVTypeHashMap<KType, VType> heapMap = new KTypeVTypeHashMap<KType, VType>(size());
+
+        heapMap.setDefaultValue(this.defaultValue);
+
+        forEach(new KTypeVTypeProcedure<KType, VType>() {
+
+            @Override
+            public void apply(final KType key, final VType value) {
+
+                heapMap.put(key, value);
+            }
+        });
+
+        return heapMap;
+    }
+
+    /**
+     * @return the number of key-value pairs.
+     */
+    public int size() {
+
+        return this.assigned + (this.allocatedDefaultKey ? 1 : 0);
+    }
+
+    /**
+     * @return true if the map is empty.
+     */
+    public boolean isEmpty() {
+
+        return size() == 0;
+    }
+
+    /**
+     * Returns the "default value" value used in methods returning
+     * "default value"
+     */
+    public VType getDefaultValue() {
+        return this.defaultValue;
+    }
+
+    /**
+     * Set the "default value" value to be used in methods returning
+     * "default value"
+     */
+    public void setDefaultValue(final VType defaultValue) {
+        this.defaultValue = defaultValue;
+    }
+
+    /**
+     * Unmap the snapshot. The map is unusable afterwards.
+     * Closing an already closed map has no effect.
+     */
+    @Override
+    public void close() {
+
+        if (this.keyPages == null) {
+
+            return;
+        }
+
+        final ByteBuffer[] keyPages = this.keyPages;
+        final ByteBuffer[] valuePages = this.valuePages;
+
+        this.keyPages = null;
+        this.valuePages = null;
+
+        KTypeVTypeMappedHashMap.freePages(keyPages);
+        KTypeVTypeMappedHashMap.freePages(valuePages);
+    }
+
+    /**
+     * @return true if {@link #close()} has been called.
+     */
+    public boolean isClosed() {
+
+        return this.keyPages == null;
+    }
+
+    /**
+     * Convert the contents of this map to a human-friendly string.
+     */
+    @Override
+    public String toString() {
+
+        if (isClosed()) {
+
+            return "[closed]";
+        }
+
+        return toHeapMap().toString();
+    }
+
+    /**
+     * Return the slot of key (not the default key), or -1 if key is not in the map.
+     * The probe is bounded by the number of slots: a corrupted or forged file may have no empty slot at all.
+     */
+    private int slotOf(final KType key) {
+
+        final ByteBuffer[] keyPages = this.keyPages;
+        final int pageShift = this.pageShift;
+        final int pageMask = this.pageMask;
+        final int mask = this.bufferSize - 1;
+
+        int slot = REHASH(key) & mask;
+
+        for (int remaining = this.bufferSize; remaining > 0; remaining--) {
+
+            final ByteBuffer keyPage = keyPages[slot >>> pageShift];
+            final int index = slot & pageMask;
+
+            final KType existing = KEY_GET(keyPage, index);
+
+            if (Intrinsics.<KType> isEmpty(existing)) {
+
+                return -1;
+            }
+
+            if (KEYEQUALS(key, existing)) {
+
+                return slot;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    private void ensureOpen() {
+
+        if (this.keyPages == null) {
+
+            throw new IllegalStateException("The map has been closed.");
+        }
+    }
+
+    /**
+     * Start of the values buffer in the file.
+     */
+    private static long valuesOffset(final int bufferSize, final int keyBytes) {
+
+        return (KTypeVTypeMappedHashMap.HEADER_SIZE + (long) bufferSize * keyBytes + 7L) & ~7L;
+    }
+
+    private static void flush(final ByteBuffer buffer, final FileChannel channel) throws IOException {
+
+        buffer.flip();
+
+        while (buffer.hasRemaining()) {
+
+            channel.write(buffer);
+        }
+
+        buffer.clear();
+    }
+
+    private static void freePages(final ByteBuffer[] pages) {
+
+        for (int i = 0; i < pages.length; i++) {
+
+            DirectBuffers.free(pages[i]);
+            pages[i] = null;
+        }
+    }
+
+    /**
+     * Write the key at index of buffer.
+     */
+    private static <KType> void appendKey(final ByteBuffer buffer, final int index, final KType key) {
+
+        //the inlined put is an expression, which cannot be used as a statement by itself.
+        final ByteBuffer written = KEY_PUT(buffer, index, key);
+
+        assert written == buffer;
+    }
+
+    /**
+     * Write the value at index of buffer.
+     */
+    private static <VType> void appendValue(final ByteBuffer buffer, final int index, final VType value) {
+
+        final ByteBuffer written = VALUE_PUT(buffer, index, value);
+
+        assert written == buffer;
+    }
+
+    /*! #if ($TemplateOptions.declareInline("KEY_TAG()",
+    "<byte,*>==>(byte) 'B'",
+    "<char,*>==>(byte) 'C'",
+    "<short,*>==>(byte) 'S'",
+    "<int,*>==>(byte) 'I'",
+    "<float,*>==>(byte) 'F'",
+    "<long,*>==>(byte) 'J'",
+    "<double,*>==>(byte) 'D'")) !*/
+    /**
+     * JVM type descriptor of the keys.
+     * (inlined in generated code)
+     */
+    private static byte KEY_TAG() {
+
+        //template only: generic maps are not generated.
+        throw new UnsupportedOperationException();
+    }
+
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.declareInline("VALUE_TAG()",
+    "<*,byte>==>(byte) 'B'",
+    "<*,char>==>(byte) 'C'",
+    "<*,short>==>(byte) 'S'",
+    "<*,int>==>(byte) 'I'",
+    "<*,float>==>(byte) 'F'",
+    "<*,long>==>(byte) 'J'",
+    "<*,double>==>(byte) 'D'")) !*/
+    /**
+     * JVM type descriptor of the values.
+     * (inlined in generated code)
+     */
+    private static byte VALUE_TAG() {
+
+        //template only: generic maps are not generated.
+        throw new UnsupportedOperationException();
+    }
+
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.declareInline("KEY_BYTES()",
+    "<byte,*>==>1",
+    "<char,*>==>2",
+    "<short,*>==>2",
+    "<int,*>==>4",
+    "<float,*>==>4",
+    "<long,*>==>8",
+    "<double,*>==>8")) !*/
+    /**
+     * Size in bytes of a key.
+     * (inlined in generated code)
+     */
+    private static int KEY_BYTES() {
+
+        //template only: generic maps are not generated.
+        throw new UnsupportedOperationException();
+    }
+
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.declareInline("VALUE_BYTES()",
+    "<*,byte>==>1",
+    "<*,char>==>2",
+    "<*,short>==>2",
+    "<*,int>==>4",
+    "<*,float>==>4",
+    "<*,long>==>8",
+    "<*,double>==>8")) !*/
+    /**
+     * Size in bytes of a value.
+     * (inlined in generated code)
+     */
+    private static int VALUE_BYTES() {
+
+        //template only: generic maps are not generated.
+        throw new UnsupportedOperationException();
+    }
+
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.declareInline("KEY_GET(page, index)",
+    "<byte,*>==>page.get(index)",
+    "<char,*>==>page.getChar(index << 1)",
+    "<short,*>==>page.getShort(index << 1)",
+    "<int,*>==>page.getInt(index << 2)",
+    "<float,*>==>page.getFloat(index << 2)",
+    "<long,*>==>page.getLong(index << 3)",
+    "<double,*>==>page.getDouble(index << 3)")) !*/
+    /**
+     * Read the key at index of page.
+     * (inlined in generated code)
+     */
+    private static <KType> KType KEY_GET(final ByteBuffer page, final int index) {
+
+        //template only: generic maps are not generated.
+        throw new UnsupportedOperationException();
+    }
+
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.declareInline("KEY_PUT(page, index, key)",
+    "<byte,*>==>page.put(index, key)",
+    "<char,*>==>page.putChar(index << 1, key)",
+    "<short,*>==>page.putShort(index << 1, key)",
+    "<int,*>==>page.putInt(index << 2, key)",
+    "<float,*>==>page.putFloat(index << 2, key)",
+    "<long,*>==>page.putLong(index << 3, key)",
+    "<double,*>==>page.putDouble(index << 3, key)")) !*/
+    /**
+     * Write the key at index of page, returning page.
+     * (inlined in generated code)
+     */
+    private static <KType> ByteBuffer KEY_PUT(final ByteBuffer page, final int index, final KType key) {
+
+        //template only: generic maps are not generated.
+        throw new UnsupportedOperationException();
+    }
+
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.declareInline("VALUE_GET(page, index)",
+    "<*,byte>==>page.get(index)",
+    "<*,char>==>page.getChar(index << 1)",
+    "<*,short>==>page.getShort(index << 1)",
+    "<*,int>==>page.getInt(index << 2)",
+    "<*,float>==>page.getFloat(index << 2)",
+    "<*,long>==>page.getLong(index << 3)",
+    "<*,double>==>page.getDouble(index << 3)")) !*/
+    /**
+     * Read the value at index of page.
+     * (inlined in generated code)
+     */
+    private static <VType> VType VALUE_GET(final ByteBuffer page, final int index) {
+
+        //template only: generic maps are not generated.
+        throw new UnsupportedOperationException();
+    }
+
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.declareInline("VALUE_PUT(page, index, value)",
+    "<*,byte>==>page.put(index, value)",
+    "<*,char>==>page.putChar(index << 1, value)",
+    "<*,short>==>page.putShort(index << 1, value)",
+    "<*,int>==>page.putInt(index << 2, value)",
+    "<*,float>==>page.putFloat(index << 2, value)",
+    "<*,long>==>page.putLong(index << 3, value)",
+    "<*,double>==>page.putDouble(index << 3, value)")) !*/
+    /**
+     * Write the value at index of page, returning page.
+     * (inlined in generated code)
+     */
+    private static <VType> ByteBuffer VALUE_PUT(final ByteBuffer page, final int index, final VType value) {
+
+        //template only: generic maps are not generated.
+        throw new UnsupportedOperationException();
+    }
+
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.declareInline("REHASH(value)",
+    "<*,*>==>BitMixer.mix(value , this.perturbation)")) !*/
+    /**
+     * REHASH method for rehashing the keys, identical to the one of {@link KTypeVTypeHashMap}.
+     * (inlined in generated code)
+     */
+    private int REHASH(final KType value) {
+
+        return BitMixer.mix(value.hashCode(), this.perturbation);
+    }
+
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.declareInline("KEYEQUALS(key1, key2)",
+    "<*,*>==>Intrinsics.<KType> equalsNotNull(key1, key2)")) !*/
+    /**
+     * macro which hides the applied equality criteria
+     */
+    private boolean KEYEQUALS(final KType key1, final KType key2) {
+
+        return key1.equals(key2);
+    }
+    /*! #end !*/
+}
@@ -0,0 +1,874 @@
+package com.carrotsearch.hppcrt.maps;
+
+import com.carrotsearch.hppcrt.*;
+import com.carrotsearch.hppcrt.predicates.*;
+import com.carrotsearch.hppcrt.procedures.*;
+import com.carrotsearch.hppcrt.hash.*;
+
+/*! #import("com/carrotsearch/hppcrt/Intrinsics.java") !*/
+/**
+ * A multimap of <code>KType</code> to lists of <code>VType</code>, such as the postings of an inverted index,
+ * without one list object per key: the values of all the keys are stored in a single pool {@link #values}.
+ * <p>
+ * The values of a key are a chain of blocks of the pool, of {@link #MIN_BLOCK_SIZE} values for the first block,
+ * doubling up to {@link #MAX_BLOCK_SIZE} values for the next ones, so that the values of a key are mostly contiguous.
+ * The blocks of removed keys are recycled by size for the next blocks. The slots of the keys are indexed by a {@link KTypeHashIndex}.
+ * </p>
+ * <p>
+ * The values of a key are kept in insertion order, and are read without allocation by {@link #getAll(Object, Object[], int)}
+ * into a caller-supplied buffer, or by {@link #forEach(Object, KTypeProcedure)}.
+ * </p>
+ * <p>
+ * Keys are primitives only, all of them: the {@link KTypeHashIndex} of the keys does not support <code>null</code> keys.
+ * </p>
+#if ($TemplateOptions.VTypeGeneric)
+ * <p>This implementation supports <code>null</code> values.</p>
+#end
+ */
+/*! ${TemplateOptions.doNotGenerateKType("OBJECT")} !*/
+/*! ${TemplateOptions.generatedAnnotation} !*/
+public class KTypeVTypeMultiMap<KType, VType> implements Cloneable
+{
+    /**
+     * Size of the first block of values of a key.
+     */
+    public static final int MIN_BLOCK_SIZE = 4;
+
+    /**
+     * Maximum size of a block of values.
+     */
+    public static final int MAX_BLOCK_SIZE = 1024;
+
+    /**
+     * Number of block sizes, from {@link #MIN_BLOCK_SIZE} to {@link #MAX_BLOCK_SIZE}.
+     */
+    private static final int BLOCK_CLASSES = 9;
+
+    /**
+     * Index of the slots of the keys in {@link #keys}.
+     */
+    public KTypeHashIndex<KType> index;
+
+    /**
+     * Keys, by slot in [0; {@link #keyCount()}[.
+     */
+    public KType[] keys;
+
+    /**
+     * First block of values of each slot.
+     */
+    public int[] firstBlocks;
+
+    /**
+     * Last block of values of each slot.
+     */
+    public int[] lastBlocks;
+
+    /**
+     * Number of values in the last block of each slot.
+     */
+    protected int[] lastFills;
+
+    /**
+     * Number of values of each slot.
+     */
+    public int[] counts;
+
+    /**
+     * Offset in {@link #values} of each block.
+     */
+    public int[] blockOffsets;
+
+    /**
+     * Next block of each block in the chain of its slot, or in its free list; -1 at the end.
+     */
+    public int[] blockNexts;
+
+    /**
+     * Size of each block, as log2(size / {@link #MIN_BLOCK_SIZE}).
+     */
+    protected byte[] blockClasses;
+
+    /**
+     * Number of allocated blocks.
+     */
+    protected int blockCount;
+
+    /**
+     * Head of the list of free blocks of each size, or -1.
+     */
+    private int[] freeBlocks;
+
+    /**
+     * Pool of the values of all the blocks.
+     */
+    public/*! #if ($TemplateOptions.VTypePrimitive)
+          VType []
+          #else !*/
+    Object[]
+    /*! #end !*/
+    values;
+
+    /**
+     * End of the allocated blocks in {@link #values}.
+     */
+    protected int valuesEnd;
+
+    protected int keyCount;
+
+    protected int size;
+
+    /**
+     * Buffer resizing strategy of {@link #values}.
+     */
+    protected final ArraySizingStrategy resizer;
+
+    /**
+     * Create a multimap with the default expected numbers of keys and values.
+     */
+    public KTypeVTypeMultiMap() {
+
+        this(Containers.DEFAULT_EXPECTED_ELEMENTS, Containers.DEFAULT_EXPECTED_ELEMENTS);
+    }
+
+    /**
+     * Create a multimap able to hold expectedKeys keys and expectedValues values without reallocating.
+     */
+    public KTypeVTypeMultiMap(final int expectedKeys, final int expectedValues) {
+
+        this(expectedKeys, expectedValues, new BoundedProportionalArraySizingStrategy());
+    }
+
+    /**
+     * Create a multimap able to hold expectedKeys keys and expectedValues values without reallocating,
+     * growing the pool of values by resizer.
+     */
+    public KTypeVTypeMultiMap(final int expectedKeys, final int expectedValues, final ArraySizingStrategy resizer) {
+
+        assert resizer != null;
+
+        this.resizer = resizer;
+
+        final int keyCapacity = Math.max(expectedKeys, Containers.DEFAULT_EXPECTED_ELEMENTS);
+        final int blockCapacity = Math.max(keyCapacity, expectedValues / KTypeVTypeMultiMap.MIN_BLOCK_SIZE);
+
+        try {
+            this.index = new KTypeHashIndex<KType>(keyCapacity, HashContainers.DEFAULT_LOAD_FACTOR);
+
+            this.keys = Intrinsics.<KType> newArray(keyCapacity);
+            this.firstBlocks = new int[keyCapacity];
+            this.lastBlocks = new int[keyCapacity];
+            this.lastFills = new int[keyCapacity];
+            this.counts = new int[keyCapacity];
+
+            this.blockOffsets = new int[blockCapacity];
+            this.blockNexts = new int[blockCapacity];
+            this.blockClasses = new byte[blockCapacity];
+
+            this.values = Intrinsics.<VType> newArray(Math.max(expectedValues, KTypeVTypeMultiMap.MIN_BLOCK_SIZE * keyCapacity));
+
+        } catch (final OutOfMemoryError e) {
+
+            throw new BufferAllocationException(
+                    "Not enough memory to allocate buffers to grow from %d -> %d elements",
+                    e,
+                    0,
+                    expectedValues);
+        }
+
+        this.freeBlocks = new int[KTypeVTypeMultiMap.BLOCK_CLASSES];
+        java.util.Arrays.fill(this.freeBlocks, -1);
+    }
+
+    /**
+     * Append value to the values of key.
+     * @return the number of values of key, value included.
+     */
+    public int put(final KType key, final VType value) {
+
+        final int slot = slotFor(key);
+
+        int block = this.lastBlocks[slot];
+
+        if (this.lastFills[slot] == KTypeVTypeMultiMap.blockSize(this.blockClasses[block])) {
+
+            block = appendBlock(slot, block);
+        }
+
+        this.values[this.blockOffsets[block] + this.lastFills[slot]++] = value;
+
+        this.size++;
+
+        return ++this.counts[slot];
+    }
+
+    /**
+     * Append values[offset; offset + length[ to the values of key.
+     * @return the number of values of key, those included.
+     * @throws IndexOutOfBoundsException if [offset; offset + length[ is out of values.
+     */
+    public int putAll(final KType key, final VType[] values, final int offset, final int length) {
+
+        if (offset < 0 || length < 0 || offset + length < 0 || offset + length > values.length) {
+
+            throw new IndexOutOfBoundsException("Range [" + offset + ", " + (offset + length) + "[ out of bounds [0, " + values.length + "].");
+        }
+
+        final int slot = slotFor(key);
+
+        int copied = 0;
+
+        while (copied < length) {
+
+            int block = this.lastBlocks[slot];
+
+            final int free = KTypeVTypeMultiMap.blockSize(this.blockClasses[block]) - this.lastFills[slot];
+
+            if (free == 0) {
+
+                appendBlock(slot, block);
+                continue;
+            }
+
+            final int count = Math.min(free, length - copied);
+
+            System.arraycopy(values, offset + copied, this.values, this.blockOffsets[block] + this.lastFills[slot], count);
+
+            this.lastFills[slot] += count;
+            copied += count;
+        }
+
+        this.size += length;
+        this.counts[slot] += length;
+
+        return this.counts[slot];
+    }
+
+    /**
+     * Copy the values of key in insertion order into buffer, from offset, up to the end of buffer.
+     * @return the number of values of key, that may exceed the number of copied values.
+     */
+    public int getAll(final KType key, final VType[] buffer, final int offset) {
+
+        final int slot = slotOf(key);
+
+        if (slot < 0) {
+
+            return 0;
+        }
+
+        int remaining = Math.min(this.counts[slot], buffer.length - offset);
+        int position = offset;
+        int block = this.firstBlocks[slot];
+
+        while (remaining > 0) {
+
+            final int count = Math.min(remaining, KTypeVTypeMultiMap.blockSize(this.blockClasses[block]));
+
+            System.arraycopy(this.values, this.blockOffsets[block], buffer, position, count);
+
+            position += count;
+            remaining -= count;
+            block = this.blockNexts[block];
+        }
+
+        return this.counts[slot];
+    }
+
+    /**
+     * @return the number of values of key, 0 if key is not in the multimap.
+     */
+    public int count(final KType key) {
+
+        final int slot = slotOf(key);
+
+        return slot < 0 ? 0 : this.counts[slot];
+    }
+
+    /**
+     * @return true if key has at least one value.
+     */
+    public boolean containsKey(final KType key) {
+
+        return positionOf(key) >= 0;
+    }
+
+    /**
+     * Remove key and all its values, recycling their blocks.
+     * @return the number of removed values.
+     */
+    public int removeAll(final KType key) {
+
+        final int position = positionOf(key);
+
+        if (position < 0) {
+
+            return 0;
+        }
+
+        final int slot = this.index.slotAt(position);
+        final int removed = this.counts[slot];
+
+        freeBlocks(slot);
+        this.index.removeAt(position, this.keys);
+
+        //move the last slot in the hole
+        final int last = this.keyCount - 1;
+
+        if (slot != last) {
+
+            this.keys[slot] = this.keys[last];
+            this.firstBlocks[slot] = this.firstBlocks[last];
+            this.lastBlocks[slot] = this.lastBlocks[last];
+            this.lastFills[slot] = this.lastFills[last];
+            this.counts[slot] = this.counts[last];
+
+            this.index.setSlotAt(positionOf(this.keys[slot]), slot);
+        }
+
+        this.keyCount--;
+        this.size -= removed;
+
+        return removed;
+    }
+
+    /**
+     * Applies procedure to the values of key, in insertion order.
+     */
+    public <T extends KTypeProcedure<? super VType>> T forEach(final KType key, final T procedure) {
+
+        final int slot = slotOf(key);
+
+        if (slot < 0) {
+
+            return procedure;
+        }
+
+        final VType[] values = Intrinsics.<VType[]> cast(this.values);
+
+        int remaining = this.counts[slot];
+        int block = this.firstBlocks[slot];
+
+        while (remaining > 0) {
+
+            final int offset = this.blockOffsets[block];
+            final int end = offset + Math.min(remaining, KTypeVTypeMultiMap.blockSize(this.blockClasses[block]));
+
+            for (int i = offset; i < end; i++) {
+
+                procedure.apply(values[i]);
+            }
+
+            remaining -= end - offset;
+            block = this.blockNexts[block];
+        }
+
+        return procedure;
+    }
+
+    /**
+     * Applies predicate to the values of key, in insertion order, until it returns false.
+     */
+    public <T extends KTypePredicate<? super VType>> T forEach(final KType key, final T predicate) {
+
+        final int slot = slotOf(key);
+
+        if (slot < 0) {
+
+            return predicate;
+        }
+
+        final VType[] values = Intrinsics.<VType[]> cast(this.values);
+
+        int remaining = this.counts[slot];
+        int block = this.firstBlocks[slot];
+
+        while (remaining > 0) {
+
+            final int offset = this.blockOffsets[block];
+            final int end = offset + Math.min(remaining, KTypeVTypeMultiMap.blockSize(this.blockClasses[block]));
+
+            for (int i = offset; i < end; i++) {
+
+                if (!predicate.apply(values[i])) {
+                    return predicate;
+                }
+            }
+
+            remaining -= end - offset;
+            block = this.blockNexts[block];
+        }
+
+        return predicate;
+    }
+
+    /**
+     * Applies procedure to all (key, value) pairs, key by key in slot order, and in insertion order for the values of a key.
+     */
+    public <T extends KTypeVTypeProcedure<? super KType, ? super VType>> T forEach(final T procedure) {
+
+        final KType[] keys = this.keys;
+        final VType[] values = Intrinsics.<VType[]> cast(this.values);
+
+        for (int slot = 0; slot < this.keyCount; slot++) {
+
+            final KType key = keys[slot];
+
+            int remaining = this.counts[slot];
+            int block = this.firstBlocks[slot];
+
+            while (remaining > 0) {
+
+                final int offset = this.blockOffsets[block];
+                final int end = offset + Math.min(remaining, KTypeVTypeMultiMap.blockSize(this.blockClasses[block]));
+
+                for (int i = offset; i < end; i++) {
+
+                    procedure.apply(key, values[i]);
+                }
+
+                remaining -= end - offset;
+                block = this.blockNexts[block];
+            }
+        }
+
+        return procedure;
+    }
+
+    /**
+     * @return the number of keys.
+     */
+    public int keyCount() {
+
+        return this.keyCount;
+    }
+
+    /**
+     * @return the number of values of all the keys.
+     */
+    public int size() {
+
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+
+        return this.size == 0;
+    }
+
+    /**
+     * @return the number of values the pool can hold without reallocating.
+     */
+    public int capacity() {
+
+        return this.values.length;
+    }
+
+    /**
+     * Remove all the keys and values, keeping the allocated buffers.
+     */
+    public void clear() {
+
+        this.index.clear();
+
+        /*! #if ($TemplateOptions.VTypeGeneric) !*/
+        //help the GC
+        java.util.Arrays.fill(this.values, 0, this.valuesEnd, null);
+        /*! #end !*/
+
+        java.util.Arrays.fill(this.freeBlocks, -1);
+
+        this.keyCount = 0;
+        this.size = 0;
+        this.blockCount = 0;
+        this.valuesEnd = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+
+        final KType[] keys = this.keys;
+        final VType[] values = Intrinsics.<VType[]> cast(this.values);
+
+        int h = 0;
+
+        for (int slot = 0; slot < this.keyCount; slot++) {
+
+            //keys in any order, values in insertion order
+            int valuesHash = 0;
+
+            int remaining = this.counts[slot];
+            int block = this.firstBlocks[slot];
+
+            while (remaining > 0) {
+
+                final int offset = this.blockOffsets[block];
+                final int end = offset + Math.min(remaining, KTypeVTypeMultiMap.blockSize(this.blockClasses[block]));
+
+                for (int i = offset; i < end; i++) {
+
+                    valuesHash = 31 * valuesHash + BitMixer.mix(values[i]);
+                }
+
+                remaining -= end - offset;
+                block = this.blockNexts[block];
+            }
+
+            h += BitMixer.mix(keys[slot]) ^ valuesHash;
+        }
+
+        return h;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(final Object obj) {
+
+        if (obj == this) {
+            return true;
+        }
+
+        //must be of the same class, subclasses are not comparable
+        if (obj == null || obj.getClass() != this.getClass()) {
+            return false;
+        }
+
+        @SuppressWarnings("unchecked")
+        final KTypeVTypeMultiMap<KType, VType> other = (KTypeVTypeMultiMap<KType, VType>) obj;
+
+        if (other.keyCount != this.keyCount || other.size != this.size) {
+            return false;
+        }
+
+        final KType[] keys = this.keys;
+
+        for (int slot = 0; slot < this.keyCount; slot++) {
+
+            final int otherSlot = other.slotOf(keys[slot]);
+
+            if (otherSlot < 0 || other.counts[otherSlot] != this.counts[slot]) {
+                return false;
+            }
+
+            //walk both chains of blocks
+            int block = this.firstBlocks[slot];
+            int otherBlock = other.firstBlocks[otherSlot];
+            int position = 0;
+            int otherPosition = 0;
+
+            for (int i = 0; i < this.counts[slot]; i++) {
+
+                if (position == KTypeVTypeMultiMap.blockSize(this.blockClasses[block])) {
+
+                    block = this.blockNexts[block];
+                    position = 0;
+                }
+
+                if (otherPosition == KTypeVTypeMultiMap.blockSize(other.blockClasses[otherBlock])) {
+
+                    otherBlock = other.blockNexts[otherBlock];
+                    otherPosition = 0;
+                }
+
+                final VType value = Intrinsics.<VType> cast(this.values[this.blockOffsets[block] + position++]);
+                final VType otherValue = Intrinsics.<VType> cast(other.values[other.blockOffsets[otherBlock] + otherPosition++]);
+
+                if (!Intrinsics.<VType> equals(value, otherValue)) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public KTypeVTypeMultiMap<KType, VType> clone() {
+
+        try {
+            @SuppressWarnings("unchecked")
+            final KTypeVTypeMultiMap<KType, VType> cloned = (KTypeVTypeMultiMap<KType, VType>) super.clone();
+
+            cloned.index = this.index.clone();
+            cloned.keys = this.keys.clone();
+            cloned.firstBlocks = this.firstBlocks.clone();
+            cloned.lastBlocks = this.lastBlocks.clone();
+            cloned.lastFills = this.lastFills.clone();
+            cloned.counts = this.counts.clone();
+            cloned.blockOffsets = this.blockOffsets.clone();
+            cloned.blockNexts = this.blockNexts.clone();
+            cloned.blockClasses = this.blockClasses.clone();
+            cloned.freeBlocks = this.freeBlocks.clone();
+            cloned.values = this.values.clone();
+
+            return cloned;
+
+        } catch (final CloneNotSupportedException e) {
+
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Convert the contents of this multimap to a human-friendly string, as [key=>[value1, value2], ...].
+     */
+    @Override
+    public String toString() {
+
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[");
+
+        final KType[] keys = this.keys;
+
+        for (int slot = 0; slot < this.keyCount; slot++) {
+
+            if (slot > 0) {
+                buffer.append(", ");
+            }
+
+            buffer.append(keys[slot]);
+            buffer.append("=>[");
+
+            forEach(keys[slot], new KTypeProcedure<VType>() {
+
+                boolean first = true;
+
+                @Override
+                public void apply(final VType value) {
+
+                    if (!this.first) {
+                        buffer.append(", ");
+                    }
+
+                    buffer.append(value);
+                    this.first = false;
+                }
+            });
+
+            buffer.append("]");
+        }
+
+        buffer.append("]");
+
+        return buffer.toString();
+    }
+
+    /**
+     * Create a new multimap (constructor shortcut).
+     */
+    public static <KType, VType> KTypeVTypeMultiMap<KType, VType> newInstance() {
+
+        return new KTypeVTypeMultiMap<KType, VType>();
+    }
+
+    /**
+     * @return the size of the blocks of blockClass.
+     */
+    private static int blockSize(final int blockClass) {
+
+        return KTypeVTypeMultiMap.MIN_BLOCK_SIZE << blockClass;
+    }
+
+    /**
+     * @return the slot of key, or -1 if key is not in the multimap.
+     */
+    private int slotOf(final KType key) {
+
+        return this.index.slotOf(key, this.keys);
+    }
+
+    /**
+     * @return the slot of key, created with an empty first block if key is not in the multimap.
+     */
+    private int slotFor(final KType key) {
+
+        final int position = positionOf(key);
+
+        if (position >= 0) {
+
+            return this.index.slotAt(position);
+        }
+
+        final int slot = this.keyCount;
+
+        if (slot == this.keys.length) {
+
+            growSlots();
+        }
+
+        this.keys[slot] = key;
+        this.index.insert(position, slot, this.keys);
+
+        final int block = allocateBlock(0);
+
+        this.firstBlocks[slot] = block;
+        this.lastBlocks[slot] = block;
+        this.lastFills[slot] = 0;
+        this.counts[slot] = 0;
+
+        this.keyCount++;
+
+        return slot;
+    }
+
+    /**
+     * @return the position of key in {@link #index}, or ~(the empty position where to insert it) if key is not in the multimap.
+     */
+    private int positionOf(final KType key) {
+
+        return this.index.positionOf(key, this.keys);
+    }
+
+    /**
+     * Double the arrays of slots.
+     */
+    private void growSlots() {
+
+        final int length = this.keys.length;
+        final int newLength = length << 1;
+
+        try {
+            final KType[] newKeys = Intrinsics.<KType> newArray(newLength);
+            System.arraycopy(this.keys, 0, newKeys, 0, length);
+            this.keys = newKeys;
+
+            this.firstBlocks = KTypeVTypeMultiMap.grow(this.firstBlocks, newLength);
+            this.lastBlocks = KTypeVTypeMultiMap.grow(this.lastBlocks, newLength);
+            this.lastFills = KTypeVTypeMultiMap.grow(this.lastFills, newLength);
+            this.counts = KTypeVTypeMultiMap.grow(this.counts, newLength);
+
+        } catch (final OutOfMemoryError e) {
+
+            throw new BufferAllocationException(
+                    "Not enough memory to allocate buffers to grow from %d -> %d elements",
+                    e,
+                    length,
+                    newLength);
+        }
+    }
+
+    /**
+     * Chain a new block after the last block of slot.
+     * @return the new block.
+     */
+    private int appendBlock(final int slot, final int lastBlock) {
+
+        final int block = allocateBlock(Math.min(this.blockClasses[lastBlock] + 1, KTypeVTypeMultiMap.BLOCK_CLASSES - 1));
+
+        this.blockNexts[lastBlock] = block;
+        this.lastBlocks[slot] = block;
+        this.lastFills[slot] = 0;
+
+        return block;
+    }
+
+    /**
+     * @return a free block of blockClass, recycled or allocated at the end of the pool.
+     */
+    private int allocateBlock(final int blockClass) {
+
+        int block = this.freeBlocks[blockClass];
+
+        if (block != -1) {
+
+            this.freeBlocks[blockClass] = this.blockNexts[block];
+            this.blockNexts[block] = -1;
+
+            return block;
+        }
+
+        final int blockSize = KTypeVTypeMultiMap.blockSize(blockClass);
+
+        if (this.blockCount == this.blockOffsets.length) {
+
+            final int length = this.blockCount;
+
+            try {
+                this.blockOffsets = KTypeVTypeMultiMap.grow(this.blockOffsets, length << 1);
+                this.blockNexts = KTypeVTypeMultiMap.grow(this.blockNexts, length << 1);
+
+                final byte[] newClasses = new byte[length << 1];
+                System.arraycopy(this.blockClasses, 0, newClasses, 0, length);
+                this.blockClasses = newClasses;
+
+            } catch (final OutOfMemoryError e) {
+
+                throw new BufferAllocationException(
+                        "Not enough memory to allocate buffers to grow from %d -> %d elements",
+                        e,
+                        length,
+                        length << 1);
+            }
+        }
+
+        if (this.valuesEnd > this.values.length - blockSize) {
+
+            final int newLength = this.resizer.grow(this.values.length, this.valuesEnd, blockSize);
+
+            try {
+                final VType[] newValues = Intrinsics.<VType> newArray(newLength);
+                System.arraycopy(this.values, 0, newValues, 0, this.valuesEnd);
+                this.values = newValues;
+
+            } catch (final OutOfMemoryError e) {
+
+                throw new BufferAllocationException(
+                        "Not enough memory to allocate buffers to grow from %d -> %d elements",
+                        e,
+                        this.values.length,
+                        newLength);
+            }
+        }
+
+        block = this.blockCount++;
+
+        this.blockOffsets[block] = this.valuesEnd;
+        this.blockNexts[block] = -1;
+        this.blockClasses[block] = (byte) blockClass;
+
+        this.valuesEnd += blockSize;
+
+        return block;
+    }
+
+    /**
+     * Push the blocks of slot in the free lists.
+     */
+    private void freeBlocks(final int slot) {
+
+        int block = this.firstBlocks[slot];
+
+        while (block != -1) {
+
+            final int next = this.blockNexts[block];
+            final int blockClass = this.blockClasses[block];
+
+            /*! #if ($TemplateOptions.VTypeGeneric) !*/
+            //help the GC
+            final int offset = this.blockOffsets[block];
+            java.util.Arrays.fill(this.values, offset, offset + KTypeVTypeMultiMap.blockSize(blockClass), null);
+            /*! #end !*/
+
+            this.blockNexts[block] = this.freeBlocks[blockClass];
+            this.freeBlocks[blockClass] = block;
+
+            block = next;
+        }
+    }
+
+    private static int[] grow(final int[] array, final int newLength) {
+
+        final int[] newArray = new int[newLength];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+
+        return newArray;
+    }
+}
@@ -0,0 +1,1063 @@
+package com.carrotsearch.hppcrt.maps;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+
+import com.carrotsearch.hppcrt.*;
+import com.carrotsearch.hppcrt.cursors.*;
+import com.carrotsearch.hppcrt.predicates.*;
+import com.carrotsearch.hppcrt.procedures.*;
+import com.carrotsearch.hppcrt.hash.*;
+
+/*! #import("com/carrotsearch/hppcrt/Intrinsics.java") !*/
+/*! ${TemplateOptions.doNotGenerateKType("OBJECT")} !*/
+/*! ${TemplateOptions.doNotGenerateVType("OBJECT")} !*/
+/**
+ * A hash map of <code>KType</code> to <code>VType</code> whose keys and values are stored
+ * in native memory (direct {@link ByteBuffer}s) instead of the Java heap, so that very large maps
+ * do not weigh on the garbage collector.
+ * <p>
+ * The implementation is the same as {@link KTypeVTypeHashMap}: open addressing with linear
+ * probing, power-of-two buffers sized and grown following the {@link HashContainers} rules.
+ * Buffers are split in pages of at most {@link #PAGE_SIZE} slots, so that the capacity is not limited
+ * by the maximum size of a single {@link ByteBuffer}.
+ * </p>
+ * <p>
+ * The native memory is released by {@link #close()}, after which the map must no longer be used.
+ * If the map is not closed, the memory is released only when the map is garbage collected.
+ * </p>
+ * <p>
+ * This map is not a {@link KTypeVTypeMap}: it provides no iterators nor collection views,
+ * use {@link #forEach(KTypeVTypeProcedure)} to traverse it.
+ * </p>
+ */
+/*! ${TemplateOptions.generatedAnnotation} !*/
+public class KTypeVTypeOffHeapHashMap<KType, VType> implements Closeable
+{
+    /**
+     * Max number of slots of a single native page, a power of two.
+     */
+    public static final int PAGE_SIZE = 1 << 20;
+
+    protected VType defaultValue = Intrinsics.<VType> empty();
+
+    /**
+     * Native pages of keys, each holding (1 &lt;&lt; {@link #pageShift}) slots.
+     * Slot <code>i</code> is at index <code>(i &amp; pageMask)</code> of page <code>(i &gt;&gt;&gt; pageShift)</code>.
+     * Empty slots hold 0.
+     * null once closed.
+     */
+    protected ByteBuffer[] keyPages;
+
+    /**
+     * Native pages of values, with the same layout as {@link #keyPages}.
+     */
+    protected ByteBuffer[] valuePages;
+
+    /**
+     * log2 of the number of slots per page.
+     */
+    protected int pageShift;
+
+    /**
+     * Number of slots per page - 1.
+     */
+    protected int pageMask;
+
+    /**
+     * Total number of slots, a power of two.
+     */
+    protected int bufferSize;
+
+    /**
+     * True if key = 0 is in the map.
+     */
+    public boolean allocatedDefaultKey = false;
+
+    /**
+     * if allocatedDefaultKey = true, contains the associated V to the key = 0
+     */
+    public VType allocatedDefaultKeyValue;
+
+    /**
+     * Cached number of assigned slots in the buffers.
+     */
+    protected int assigned;
+
+    /**
+     * The load factor for this map (fraction of allocated slots
+     * before the buffers must be rehashed or reallocated).
+     */
+    protected final double loadFactor;
+
+    /**
+     * Resize buffers when {@link #assigned} hits this value.
+     */
+    private int resizeAt;
+
+    /**
+     * Per-instance perturbation
+     * introduced in rehashing to create a unique key distribution.
+     */
+    protected final int perturbation = Containers.randomSeed32();
+
+    /**
+     * Default constructor: Creates a hash map with the default capacity of {@link Containers#DEFAULT_EXPECTED_ELEMENTS},
+     * load factor of {@link HashContainers#DEFAULT_LOAD_FACTOR}.
+     */
+    public KTypeVTypeOffHeapHashMap() {
+        this(Containers.DEFAULT_EXPECTED_ELEMENTS);
+    }
+
+    /**
+     * Creates a hash map with the given initial capacity, default load factor of
+     * {@link HashContainers#DEFAULT_LOAD_FACTOR}.
+     *
+     * @param initialCapacity Initial capacity (greater than zero and automatically
+     *            rounded to the next power of two).
+     */
+    public KTypeVTypeOffHeapHashMap(final int initialCapacity) {
+        this(initialCapacity, HashContainers.DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Creates a hash map with the given initial capacity,
+     * load factor.
+     *
+     * @param loadFactor The load factor (greater than zero and smaller than 1).
+     */
+    public KTypeVTypeOffHeapHashMap(final int initialCapacity, final double loadFactor) {
+        this.loadFactor = loadFactor;
+        //take into account of the load factor to guarantee no reallocations before reaching  initialCapacity.
+        allocateBuffers(HashContainers.minBufferSize(initialCapacity, loadFactor));
+    }
+
+    /**
+     * Create a hash map from all key-value pairs of another container.
+     */
+    public KTypeVTypeOffHeapHashMap(final KTypeVTypeAssociativeContainer<KType, VType> container) {
+        this(container.size());
+        putAll(container);
+    }
+
+    /**
+     * Place a given key and value in the map.
+     * @return The value previously stored under the given key in the map is returned, else the default value.
+     */
+    public VType put(final KType key, final VType value) {
+
+        ensureOpen();
+
+        if (Intrinsics.<KType> isEmpty(key)) {
+
+            if (this.allocatedDefaultKey) {
+
+                final VType previousValue = this.allocatedDefaultKeyValue;
+                this.allocatedDefaultKeyValue = value;
+
+                return previousValue;
+            }
+
+            this.allocatedDefaultKeyValue = value;
+            this.allocatedDefaultKey = true;
+
+            return this.defaultValue;
+        }
+
+        final int slot = slotOrFreeSlot(key);
+
+        final ByteBuffer valuePage = this.valuePages[slot >>> this.pageShift];
+        final int index = slot & this.pageMask;
+
+        if (!isFreeSlot(slot)) {
+
+            final VType oldValue = VALUE_GET(valuePage, index);
+            writeValue(valuePage, index, value);
+
+            return oldValue;
+        }
+
+        insertAt(key, value, slot);
+
+        return this.defaultValue;
+    }
+
+    /**
+     * Puts all keys from another container to this map, replacing the values
+     * of existing keys, if such keys are present.
+     * @return Returns the number of keys added to the map as a result of this
+     * call (not previously present in the map). Values of existing keys are overwritten.
+     */
+    public int putAll(final KTypeVTypeAssociativeContainer<? extends KType, ? extends VType> container) {
+
+        final int count = this.size();
+
+        for (final KTypeVTypeCursor<? extends KType, ? extends VType> c : container) {
+            put(c.key, c.value);
+        }
+
+        return this.size() - count;
+    }
+
+    /**
+     * Insert the key-value pair only if the key is not already in the map.
+     * @return <code>true</code> if <code>key</code> did not exist and <code>value</code>
+     * was placed in the map.
+     */
+    public boolean putIfAbsent(final KType key, final VType value) {
+
+        if (!containsKey(key)) {
+            put(key, value);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * If <code>key</code> exists, <code>putValue</code> is inserted into the map,
+     * otherwise any existing value is incremented by <code>additionValue</code>.
+     *
+     * @param key
+     *          The key of the value to adjust.
+     * @param putValue
+     *          The value to put if <code>key</code> does not exist.
+     * @param incrementValue
+     *          The value to add to the existing value if <code>key</code> exists.
+     * @return Returns the current value associated with <code>key</code> (after
+     *         changes).
+     */
+    @SuppressWarnings("cast")
+    public VType putOrAdd(final KType key, VType putValue, final VType incrementValue) {
+
+        ensureOpen();
+
+        if (Intrinsics.<KType> isEmpty(key)) {
+
+            if (this.allocatedDefaultKey) {
+
+                putValue = (VType) (Intrinsics.<VType> add(this.allocatedDefaultKeyValue, incrementValue));
+            }
+
+            this.allocatedDefaultKeyValue = putValue;
+            this.allocatedDefaultKey = true;
+
+            return putValue;
+        }
+
+        //single probe, contrary to containsKey() + get() + put().
+        final int slot = slotOrFreeSlot(key);
+
+        if (!isFreeSlot(slot)) {
+
+            final ByteBuffer valuePage = this.valuePages[slot >>> this.pageShift];
+            final int index = slot & this.pageMask;
+
+            final VType existingValue = VALUE_GET(valuePage, index);
+
+            putValue = (VType) (Intrinsics.<VType> add(existingValue, incrementValue));
+
+            writeValue(valuePage, index, putValue);
+
+            return putValue;
+        }
+
+        insertAt(key, putValue, slot);
+
+        return putValue;
+    }
+
+    /**
+     * Adds <code>incrementValue</code> to any existing value for the given <code>key</code>
+     * or inserts <code>incrementValue</code> if <code>key</code> did not previously exist.
+     *
+     * @param key The key of the value to adjust.
+     * @param incrementValue The value to put or add to the existing value if <code>key</code> exists.
+     * @return Returns the current value associated with <code>key</code> (after changes).
+     */
+    public VType addTo(final KType key, final VType incrementValue)
+    {
+        return putOrAdd(key, incrementValue, incrementValue);
+    }
+
+    /**
+     * @return Returns the value associated with the given key or the default value
+     * for the key type, if the key is not associated with any value.
+     */
+    public VType get(final KType key) {
+
+        ensureOpen();
+
+        if (Intrinsics.<KType> isEmpty(key)) {
+
+            if (this.allocatedDefaultKey) {
+
+                return this.allocatedDefaultKeyValue;
+            }
+
+            return this.defaultValue;
+        }
+
+        final int slot = slotOrFreeSlot(key);
+
+        if (isFreeSlot(slot)) {
+
+            return this.defaultValue;
+        }
+
+        final ByteBuffer valuePage = this.valuePages[slot >>> this.pageShift];
+        final int index = slot & this.pageMask;
+
+        return VALUE_GET(valuePage, index);
+    }
+
+    /**
+     * @return Returns <code>true</code> if this container has a mapping for the key.
+     */
+    public boolean containsKey(final KType key) {
+
+        ensureOpen();
+
+        if (Intrinsics.<KType> isEmpty(key)) {
+
+            return this.allocatedDefaultKey;
+        }
+
+        return !isFreeSlot(slotOrFreeSlot(key));
+    }
+
+    /**
+     * Remove the mapping of the given key.
+     * @return The value associated with the removed key, else the default value.
+     */
+    public VType remove(final KType key) {
+
+        ensureOpen();
+
+        if (Intrinsics.<KType> isEmpty(key)) {
+
+            if (this.allocatedDefaultKey) {
+
+                final VType previousValue = this.allocatedDefaultKeyValue;
+
+                this.allocatedDefaultKey = false;
+                return previousValue;
+            }
+
+            return this.defaultValue;
+        }
+
+        final int slot = slotOrFreeSlot(key);
+
+        if (isFreeSlot(slot)) {
+
+            return this.defaultValue;
+        }
+
+        final ByteBuffer valuePage = this.valuePages[slot >>> this.pageShift];
+        final int index = slot & this.pageMask;
+
+        final VType value = VALUE_GET(valuePage, index);
+
+        shiftConflictingKeys(slot);
+
+        return value;
+    }
+
+    /**
+     * Applies a given procedure to all keys-value pairs in this container.
+     * @return the input procedure.
+     */
+    public <T extends KTypeVTypeProcedure<? super KType, ? super VType>> T forEach(final T procedure) {
+
+        ensureOpen();
+
+        if (this.allocatedDefaultKey) {
+
+            procedure.apply(Intrinsics.<KType> empty(), this.allocatedDefaultKeyValue);
+        }
+
+        final ByteBuffer[] keyPages = this.keyPages;
+        final ByteBuffer[] valuePages = this.valuePages;
+        final int pageSize = this.pageMask + 1;
+
+        //Iterate in reverse for side-stepping the longest conflict chain
+        //in another hash, in case apply() is actually used to fill another hash container.
+        for (int p = keyPages.length - 1; p >= 0; p--) {
+
+            final ByteBuffer keyPage = keyPages[p];
+            final ByteBuffer valuePage = valuePages[p];
+
+            for (int i = pageSize - 1; i >= 0; i--) {
+
+                final KType existing = KEY_GET(keyPage, i);
+
+                if (!Intrinsics.<KType> isEmpty(existing)) {
+
+                    procedure.apply(existing, VALUE_GET(valuePage, i));
+                }
+            }
+        }
+
+        return procedure;
+    }
+
+    /**
+     * Applies a given predicate to all keys-value pairs in this container,
+     * until the predicate returns <code>false</code>.
+     * @return the input predicate.
+     */
+    public <T extends KTypeVTypePredicate<? super KType, ? super VType>> T forEach(final T predicate) {
+
+        ensureOpen();
+
+        if (this.allocatedDefaultKey) {
+
+            if (!predicate.apply(Intrinsics.<KType> empty(), this.allocatedDefaultKeyValue)) {
+
+                return predicate;
+            }
+        }
+
+        final ByteBuffer[] keyPages = this.keyPages;
+        final ByteBuffer[] valuePages = this.valuePages;
+        final int pageSize = this.pageMask + 1;
+
+        for (int p = keyPages.length - 1; p >= 0; p--) {
+
+            final ByteBuffer keyPage = keyPages[p];
+            final ByteBuffer valuePage = valuePages[p];
+
+            for (int i = pageSize - 1; i >= 0; i--) {
+
+                final KType existing = KEY_GET(keyPage, i);
+
+                if (!Intrinsics.<KType> isEmpty(existing)) {
+
+                    if (!predicate.apply(existing, VALUE_GET(valuePage, i))) {
+
+                        return predicate;
+                    }
+                }
+            }
+        }
+
+        return predicate;
+    }
+
+    /**
+     * Copy all the key-value pairs into a new on-heap {@link KTypeVTypeHashMap}.
+     */
+    public KTypeVTypeHashMap<KType, VType> toHeapMap() {
+
+        final KTypeVTypeHashMap<KType, VType> heapMap = new KTypeVTypeHashMap<KType, VType>(size(), this.loadFactor);
+
+        heapMap.setDefaultValue(this.defaultValue);
+
+        forEach(new KTypeVTypeProcedure<KType, VType>() {
+
+            @Override
+            public void apply(final KType key, final VType value) {
+
+                heapMap.put(key, value);
+            }
+        });
+
+        return heapMap;
+    }
+
+    /**
+     * Remove all the key-value pairs, keeping the current capacity.
+     */
+    public void clear() {
+
+        ensureOpen();
+
+        this.assigned = 0;
+        this.allocatedDefaultKey = false;
+
+        //A clear of the keys is enough, the values are never read from empty slots.
+        for (final ByteBuffer keyPage : this.keyPages) {
+
+            DirectBuffers.zero(keyPage);
+        }
+    }
+
+    /**
+     * @return the number of key-value pairs.
+     */
+    public int size() {
+
+        return this.assigned + (this.allocatedDefaultKey ? 1 : 0);
+    }
+
+    /**
+     * @return true if the map is empty.
+     */
+    public boolean isEmpty() {
+
+        return size() == 0;
+    }
+
+    /**
+     * @return the maximum number of key-value pairs that can be stored before a reallocation.
+     */
+    public int capacity() {
+
+        return this.resizeAt - 1;
+    }
+
+    /**
+     * @return the number of bytes of native memory currently allocated by this map.
+     */
+    public long nativeMemoryUsed() {
+
+        if (this.keyPages == null) {
+
+            return 0L;
+        }
+
+        return (long) this.bufferSize * (KEY_BYTES() + VALUE_BYTES());
+    }
+
+    /**
+     * Returns the "default value" value used in methods returning
+     * "default value"
+     */
+    public VType getDefaultValue() {
+        return this.defaultValue;
+    }
+
+    /**
+     * Set the "default value" value to be used in methods returning
+     * "default value"
+     */
+    public void setDefaultValue(final VType defaultValue) {
+        this.defaultValue = defaultValue;
+    }
+
+    /**
+     * Release the native memory immediately. The map is unusable afterwards.
+     * Closing an already closed map has no effect.
+     */
+    @Override
+    public void close() {
+
+        if (this.keyPages == null) {
+
+            return;
+        }
+
+        final ByteBuffer[] keyPages = this.keyPages;
+        final ByteBuffer[] valuePages = this.valuePages;
+
+        this.keyPages = null;
+        this.valuePages = null;
+        this.assigned = 0;
+        this.allocatedDefaultKey = false;
+
+        KTypeVTypeOffHeapHashMap.freePages(keyPages);
+        KTypeVTypeOffHeapHashMap.freePages(valuePages);
+    }
+
+    /**
+     * @return true if {@link #close()} has been called.
+     */
+    public boolean isClosed() {
+
+        return this.keyPages == null;
+    }
+
+    /**
+     * Convert the contents of this map to a human-friendly string.
+     */
+    @Override
+    public String toString() {
+
+        if (isClosed()) {
+
+            return "[closed]";
+        }
+
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[");
+
+        forEach(new KTypeVTypeProcedure<KType, VType>() {
+
+            boolean first = true;
+
+            @Override
+            public void apply(final KType key, final VType value) {
+
+                if (!this.first) {
+                    buffer.append(", ");
+                }
+                buffer.append(key);
+                buffer.append("=>");
+                buffer.append(value);
+                this.first = false;
+            }
+        });
+
+        buffer.append("]");
+        return buffer.toString();
+    }
+
+    /**
+     * Create a new hash map without providing the full generic signature
+     * (constructor shortcut).
+     */
+    public static <KType, VType> KTypeVTypeOffHeapHashMap<KType, VType> newInstance() {
+        return new KTypeVTypeOffHeapHashMap<KType, VType>();
+    }
+
+    /**
+     * Create a new hash map with initial capacity and load factor control.
+     * (constructor shortcut).
+     */
+    public static <KType, VType> KTypeVTypeOffHeapHashMap<KType, VType> newInstance(final int initialCapacity,
+            final double loadFactor) {
+        return new KTypeVTypeOffHeapHashMap<KType, VType>(initialCapacity, loadFactor);
+    }
+
+    /**
+     * Return the slot of key (not the default key), or the free slot where key would be inserted
+     * if key is not in the map.
+     */
+    private int slotOrFreeSlot(final KType key) {
+
+        final ByteBuffer[] keyPages = this.keyPages;
+        final int pageShift = this.pageShift;
+        final int pageMask = this.pageMask;
+        final int mask = this.bufferSize - 1;
+
+        int slot = REHASH(key) & mask;
+
+        while (true) {
+
+            final ByteBuffer keyPage = keyPages[slot >>> pageShift];
+            final int index = slot & pageMask;
+
+            final KType existing = KEY_GET(keyPage, index);
+
+            if (Intrinsics.<KType> isEmpty(existing) || KEYEQUALS(key, existing)) {
+
+                return slot;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * @return true if slot is not assigned.
+     */
+    private boolean isFreeSlot(final int slot) {
+
+        final ByteBuffer keyPage = this.keyPages[slot >>> this.pageShift];
+        final int index = slot & this.pageMask;
+
+        return Intrinsics.<KType> isEmpty(KEY_GET(keyPage, index));
+    }
+
+    /**
+     * Insert a new key at the known free slot, growing the map if needed.
+     */
+    private void insertAt(final KType key, final VType value, final int freeSlot) {
+
+        // Check if we need to grow. If so, reallocate new data, fill in the last element
+        // and rehash.
+        if (this.assigned == this.resizeAt) {
+
+            expandAndPut(key, value, freeSlot);
+
+        } else {
+
+            this.assigned++;
+
+            final ByteBuffer keyPage = this.keyPages[freeSlot >>> this.pageShift];
+            final ByteBuffer valuePage = this.valuePages[freeSlot >>> this.pageShift];
+            final int index = freeSlot & this.pageMask;
+
+            writeKey(keyPage, index, key);
+            writeValue(valuePage, index, value);
+        }
+    }
+
+    /**
+     * Expand the internal storage buffers (capacity) and rehash.
+     */
+    private void expandAndPut(final KType pendingKey, final VType pendingValue, final int freeSlot) {
+        assert this.assigned == this.resizeAt;
+
+        //default sentinel value is never in the keys[] array, so never trigger reallocs
+        assert !Intrinsics.<KType> isEmpty(pendingKey);
+
+        // Try to allocate new buffers first. If we OOM, it'll be now without
+        // leaving the data structure in an inconsistent state.
+        final ByteBuffer[] oldKeyPages = this.keyPages;
+        final ByteBuffer[] oldValuePages = this.valuePages;
+        final int oldPageShift = this.pageShift;
+        final int oldPageMask = this.pageMask;
+        final int oldBufferSize = this.bufferSize;
+
+        allocateBuffers(HashContainers.nextBufferSize(this.bufferSize, this.assigned, this.loadFactor));
+
+        // We have succeeded at allocating new data so insert the pending key/value at
+        // the free slot in the old buffers before rehashing.
+        this.assigned++;
+
+        final ByteBuffer pendingKeyPage = oldKeyPages[freeSlot >>> oldPageShift];
+        final ByteBuffer pendingValuePage = oldValuePages[freeSlot >>> oldPageShift];
+        final int pendingIndex = freeSlot & oldPageMask;
+
+        writeKey(pendingKeyPage, pendingIndex, pendingKey);
+        writeValue(pendingValuePage, pendingIndex, pendingValue);
+
+        //for inserts
+        final int mask = this.bufferSize - 1;
+        final ByteBuffer[] keyPages = this.keyPages;
+        final ByteBuffer[] valuePages = this.valuePages;
+        final int pageShift = this.pageShift;
+        final int pageMask = this.pageMask;
+
+        //iterate all the old buffers to add in the newly allocated buffers
+        //It is important to iterate backwards to minimize the conflict chain length !
+        final int perturb = this.perturbation;
+
+        for (int i = oldBufferSize; --i >= 0;) {
+
+            final ByteBuffer oldKeyPage = oldKeyPages[i >>> oldPageShift];
+            final int oldIndex = i & oldPageMask;
+
+            final KType key = KEY_GET(oldKeyPage, oldIndex);
+
+            //only consider non-empty slots, of course
+            if (!Intrinsics.<KType> isEmpty(key)) {
+
+                final ByteBuffer oldValuePage = oldValuePages[i >>> oldPageShift];
+                final VType value = VALUE_GET(oldValuePage, oldIndex);
+
+                int slot = REHASH2(key, perturb) & mask;
+
+                ByteBuffer keyPage = keyPages[slot >>> pageShift];
+                int index = slot & pageMask;
+
+                //similar to put(), except all inserted keys are known to be unique.
+                while (!Intrinsics.<KType> isEmpty(KEY_GET(keyPage, index))) {
+
+                    slot = (slot + 1) & mask;
+
+                    keyPage = keyPages[slot >>> pageShift];
+                    index = slot & pageMask;
+                } //end while
+
+                final ByteBuffer valuePage = valuePages[slot >>> pageShift];
+
+                writeKey(keyPage, index, key);
+                writeValue(valuePage, index, value);
+            }
+        }
+
+        KTypeVTypeOffHeapHashMap.freePages(oldKeyPages);
+        KTypeVTypeOffHeapHashMap.freePages(oldValuePages);
+    }
+
+    /**
+     * Allocate internal buffers for a given capacity.
+     *
+     * @param capacity New capacity (must be a power of two).
+     */
+    private void allocateBuffers(final int capacity) {
+
+        final int pageSize = Math.min(capacity, KTypeVTypeOffHeapHashMap.PAGE_SIZE);
+        final int nbPages = capacity / pageSize;
+
+        final ByteBuffer[] keyPages = new ByteBuffer[nbPages];
+        final ByteBuffer[] valuePages = new ByteBuffer[nbPages];
+
+        try {
+            for (int i = 0; i < nbPages; i++) {
+
+                keyPages[i] = DirectBuffers.allocate(pageSize * KEY_BYTES());
+                valuePages[i] = DirectBuffers.allocate(pageSize * VALUE_BYTES());
+            }
+        } catch (final BufferAllocationException e) {
+
+            //release what could be allocated so far, the map itself is left unchanged.
+            KTypeVTypeOffHeapHashMap.freePages(keyPages);
+            KTypeVTypeOffHeapHashMap.freePages(valuePages);
+
+            throw e;
+        }
+
+        this.keyPages = keyPages;
+        this.valuePages = valuePages;
+        this.bufferSize = capacity;
+        this.pageShift = Integer.numberOfTrailingZeros(pageSize);
+        this.pageMask = pageSize - 1;
+
+        //allocate so that there is at least one slot that remains allocated = false
+        //this is compulsory to guarantee proper stop in searching loops
+        this.resizeAt = HashContainers.expandAtCount(capacity, this.loadFactor);
+    }
+
+    /**
+     * Shift all the slot-conflicting keys allocated to (and including) <code>slot</code>.
+     */
+    private void shiftConflictingKeys(int gapSlot) {
+
+        final int mask = this.bufferSize - 1;
+        final ByteBuffer[] keyPages = this.keyPages;
+        final ByteBuffer[] valuePages = this.valuePages;
+        final int pageShift = this.pageShift;
+        final int pageMask = this.pageMask;
+
+        final int perturb = this.perturbation;
+
+        // Perform shifts of conflicting keys to fill in the gap.
+        int distance = 0;
+
+        while (true) {
+
+            final int slot = (gapSlot + (++distance)) & mask;
+
+            final ByteBuffer keyPage = keyPages[slot >>> pageShift];
+            final int index = slot & pageMask;
+
+            final KType existing = KEY_GET(keyPage, index);
+
+            if (Intrinsics.<KType> isEmpty(existing)) {
+                break;
+            }
+
+            final int idealSlotModMask = REHASH2(existing, perturb) & mask;
+
+            //original HPPC code: shift = (slot - idealSlot) & mask;
+            //equivalent to shift = (slot & mask - idealSlot & mask) & mask;
+            //since slot and idealSlotModMask are already folded, we have :
+            final int shift = (slot - idealSlotModMask) & mask;
+
+            if (shift >= distance) {
+                // Entry at this position was originally at or before the gap slot.
+                // Move the conflict-shifted entry to the gap's position and repeat the procedure
+                // for any entries to the right of the current position, treating it
+                // as the new gap.
+                final ByteBuffer valuePage = valuePages[slot >>> pageShift];
+                final VType existingValue = VALUE_GET(valuePage, index);
+
+                final ByteBuffer gapKeyPage = keyPages[gapSlot >>> pageShift];
+                final ByteBuffer gapValuePage = valuePages[gapSlot >>> pageShift];
+                final int gapIndex = gapSlot & pageMask;
+
+                writeKey(gapKeyPage, gapIndex, existing);
+                writeValue(gapValuePage, gapIndex, existingValue);
+
+                gapSlot = slot;
+                distance = 0;
+            }
+        } //end while
+
+        // Mark the last found gap slot without a conflict as empty.
+        final ByteBuffer gapKeyPage = keyPages[gapSlot >>> pageShift];
+        final int gapIndex = gapSlot & pageMask;
+        final KType emptyKey = Intrinsics.<KType> empty();
+
+        writeKey(gapKeyPage, gapIndex, emptyKey);
+
+        this.assigned--;
+    }
+
+    /**
+     * Write the key at index of page.
+     */
+    private void writeKey(final ByteBuffer page, final int index, final KType key) {
+
+        //the inlined put is an expression, which cannot be used as a statement by itself.
+        final ByteBuffer written = KEY_PUT(page, index, key);
+
+        assert written == page;
+    }
+
+    /**
+     * Write the value at index of page.
+     */
+    private void writeValue(final ByteBuffer page, final int index, final VType value) {
+
+        final ByteBuffer written = VALUE_PUT(page, index, value);
+
+        assert written == page;
+    }
+
+    private void ensureOpen() {
+
+        if (this.keyPages == null) {
+
+            throw new IllegalStateException("The map has been closed.");
+        }
+    }
+
+    private static void freePages(final ByteBuffer[] pages) {
+
+        for (int i = 0; i < pages.length; i++) {
+
+            DirectBuffers.free(pages[i]);
+            pages[i] = null;
+        }
+    }
+
+    /*! #if ($TemplateOptions.declareInline("KEY_BYTES()",
+    "<byte,*>==>1",
+    "<char,*>==>2",
+    "<short,*>==>2",
+    "<int,*>==>4",
+    "<float,*>==>4",
+    "<long,*>==>8",
+    "<double,*>==>8")) !*/
+    /**
+     * Size in bytes of a key.
+     * (inlined in generated code)
+     */
+    private int KEY_BYTES() {
+
+        //template only: generic maps are not generated.
+        throw new UnsupportedOperationException();
+    }
+
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.declareInline("VALUE_BYTES()",
+    "<*,byte>==>1",
+    "<*,char>==>2",
+    "<*,short>==>2",
+    "<*,int>==>4",
+    "<*,float>==>4",
+    "<*,long>==>8",
+    "<*,double>==>8")) !*/
+    /**
+     * Size in bytes of a value.
+     * (inlined in generated code)
+     */
+    private int VALUE_BYTES() {
+
+        //template only: generic maps are not generated.
+        throw new UnsupportedOperationException();
+    }
+
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.declareInline("KEY_GET(page, index)",
+    "<byte,*>==>page.get(index)",
+    "<char,*>==>page.getChar(index << 1)",
+    "<short,*>==>page.getShort(index << 1)",
+    "<int,*>==>page.getInt(index << 2)",
+    "<float,*>==>page.getFloat(index << 2)",
+    "<long,*>==>page.getLong(index << 3)",
+    "<double,*>==>page.getDouble(index << 3)")) !*/
+    /**
+     * Read the key at index of page.
+     * (inlined in generated code)
+     */
+    private KType KEY_GET(final ByteBuffer page, final int index) {
+
+        //template only: generic maps are not generated.
+        throw new UnsupportedOperationException();
+    }
+
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.declareInline("KEY_PUT(page, index, key)",
+    "<byte,*>==>page.put(index, key)",
+    "<char,*>==>page.putChar(index << 1, key)",
+    "<short,*>==>page.putShort(index << 1, key)",
+    "<int,*>==>page.putInt(index << 2, key)",
+    "<float,*>==>page.putFloat(index << 2, key)",
+    "<long,*>==>page.putLong(index << 3, key)",
+    "<double,*>==>page.putDouble(index << 3, key)")) !*/
+    /**
+     * Write the key at index of page, returning page.
+     * (inlined in generated code)
+     */
+    private ByteBuffer KEY_PUT(final ByteBuffer page, final int index, final KType key) {
+
+        //template only: generic maps are not generated.
+        throw new UnsupportedOperationException();
+    }
+
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.declareInline("VALUE_GET(page, index)",
+    "<*,byte>==>page.get(index)",
+    "<*,char>==>page.getChar(index << 1)",
+    "<*,short>==>page.getShort(index << 1)",
+    "<*,int>==>page.getInt(index << 2)",
+    "<*,float>==>page.getFloat(index << 2)",
+    "<*,long>==>page.getLong(index << 3)",
+    "<*,double>==>page.getDouble(index << 3)")) !*/
+    /**
+     * Read the value at index of page.
+     * (inlined in generated code)
+     */
+    private VType VALUE_GET(final ByteBuffer page, final int index) {
+
+        //template only: generic maps are not generated.
+        throw new UnsupportedOperationException();
+    }
+
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.declareInline("VALUE_PUT(page, index, value)",
+    "<*,byte>==>page.put(index, value)",
+    "<*,char>==>page.putChar(index << 1, value)",
+    "<*,short>==>page.putShort(index << 1, value)",
+    "<*,int>==>page.putInt(index << 2, value)",
+    "<*,float>==>page.putFloat(index << 2, value)",
+    "<*,long>==>page.putLong(index << 3, value)",
+    "<*,double>==>page.putDouble(index << 3, value)")) !*/
+    /**
+     * Write the value at index of page, returning page.
+     * (inlined in generated code)
+     */
+    private ByteBuffer VALUE_PUT(final ByteBuffer page, final int index, final VType value) {
+
+        //template only: generic maps are not generated.
+        throw new UnsupportedOperationException();
+    }
+
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.declareInline("REHASH(value)",
+    "<*,*>==>BitMixer.mix(value , this.perturbation)")) !*/
+    /**
+     * REHASH method for rehashing the keys.
+     * (inlined in generated code)
+     */
+    private int REHASH(final KType value) {
+
+        return BitMixer.mix(value.hashCode(), this.perturbation);
+    }
+
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.declareInline("REHASH2(value, perturb)",
+    "<*,*>==>BitMixer.mix(value , perturb)")) !*/
+    /**
+     * REHASH2 method for rehashing the keys with perturbation seed as parameter
+     * (inlined in generated code)
+     */
+    private int REHASH2(final KType value, final int perturb) {
+
+        return BitMixer.mix(value.hashCode(), perturb);
+    }
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.declareInline("KEYEQUALS(key1, key2)",
+    "<*,*>==>Intrinsics.<KType> equalsNotNull(key1, key2)")) !*/
+    /**
+     * macro which hides the applied equality criteria
+     */
+    private boolean KEYEQUALS(final KType key1, final KType key2) {
+
+        return key1.equals(key2);
+    }
+    /*! #end !*/
+}
@@ -0,0 +1,736 @@
+package com.carrotsearch.hppcrt.maps;
+
+import com.carrotsearch.hppcrt.*;
+import com.carrotsearch.hppcrt.cursors.*;
+import com.carrotsearch.hppcrt.predicates.*;
+import com.carrotsearch.hppcrt.hash.*;
+
+/*! #import("com/carrotsearch/hppcrt/Intrinsics.java") !*/
+/**
+ * A {@link KTypeVTypeHashMap} tuned for read-mostly concurrent usage:
+ * {@link #get}, {@link #containsKey} and their batched versions never lock, never block on each other, and never allocate,
+ * while all write operations are serialized on the map monitor.
+ * <p>
+ * Readers probe an immutable copy of the buffers (copy-on-write), published through a volatile reference
+ * once each write is complete. A reader thus always sees a consistent state, the one of the last completed write,
+ * with the visibility guarantees of a volatile read only, which are the same from JDK 1.5 onwards.
+ * </p>
+ * <p>
+ * The copy is split into pages of {@link #SNAPSHOT_PAGE_SIZE} slots, so that a single key write only copies the pages
+ * of the slots it may have modified, i.e the probe run of the key, plus the page directory.
+ * The price is still on the write side: each write allocates, and the bulk writes, like
+ * {@link #putAll(KTypeVTypeAssociativeContainer)} or {@link #removeAll(KTypeContainer)}, or a write growing or shrinking
+ * the buffers, copy them as a whole once.
+ * </p>
+ * <p>
+ * Only the reads above are lock-free. All other methods, including iteration,
+ * are not thread-safe unless the caller synchronizes on the map itself, which is the very lock writers use.
+ * In particular, modifications through the {@link #keys()} or {@link #values()} views are not supported,
+ * as they are not seen by the lock-free reads until the next write operation.
+ * </p>
+ */
+/*! ${TemplateOptions.generatedAnnotation} !*/
+public class KTypeVTypeReadMostlyHashMap<KType, VType>
+extends KTypeVTypeHashMap<KType, VType>
+{
+    /**
+     * Number of slots of a snapshot page, a power of two.
+     */
+    public static final int SNAPSHOT_PAGE_SIZE = 256;
+
+    private static final int SNAPSHOT_PAGE_SHIFT = 8;
+
+    /**
+     * Immutable copy of the map content, probed by the lock-free reads.
+     * Slot i of the buffers is at index (i & ({@link #SNAPSHOT_PAGE_SIZE} - 1)) of the page (i >>> SNAPSHOT_PAGE_SHIFT).
+     */
+    private final class Snapshot
+    {
+        /**
+         * Pages of keys, never modified once published.
+         */
+        final KType[][] keyPages;
+
+        /**
+         * Pages of values, never modified once published.
+         */
+        final VType[][] valuePages;
+
+        final int mask;
+
+        final boolean allocatedDefaultKey;
+
+        final VType allocatedDefaultKeyValue;
+
+        /**
+         * Copy all the buffers.
+         */
+        @SuppressWarnings("unchecked")
+        Snapshot() {
+
+            final KTypeVTypeReadMostlyHashMap<KType, VType> map = KTypeVTypeReadMostlyHashMap.this;
+
+            final int nbPages = (map.keys.length + KTypeVTypeReadMostlyHashMap.SNAPSHOT_PAGE_SIZE - 1) >>> KTypeVTypeReadMostlyHashMap.SNAPSHOT_PAGE_SHIFT;
+
+            /*! #if ($TemplateOptions.KTypePrimitive)
+            this.keyPages = new KType[nbPages][];
+            #else !*/
+            this.keyPages = (KType[][]) new Object[nbPages][];
+            /*! #end !*/
+
+            /*! #if ($TemplateOptions.VTypePrimitive)
+            this.valuePages = new VType[nbPages][];
+            #else !*/
+            this.valuePages = (VType[][]) new Object[nbPages][];
+            /*! #end !*/
+
+            this.mask = map.keys.length - 1;
+            this.allocatedDefaultKey = map.allocatedDefaultKey;
+            this.allocatedDefaultKeyValue = map.allocatedDefaultKeyValue;
+
+            for (int page = 0; page < nbPages; page++) {
+
+                copyPage(page);
+            }
+        }
+
+        /**
+         * Share the pages of previous, of the same capacity, except the ones holding the slots
+         * from fromSlot to toSlot, circularly, which are copied. No page is copied if fromSlot is -1.
+         */
+        Snapshot(final Snapshot previous, final int fromSlot, final int toSlot) {
+
+            final KTypeVTypeReadMostlyHashMap<KType, VType> map = KTypeVTypeReadMostlyHashMap.this;
+
+            this.keyPages = previous.keyPages.clone();
+            this.valuePages = previous.valuePages.clone();
+            this.mask = previous.mask;
+            this.allocatedDefaultKey = map.allocatedDefaultKey;
+            this.allocatedDefaultKeyValue = map.allocatedDefaultKeyValue;
+
+            if (fromSlot != -1) {
+
+                final int lastPage = toSlot >>> KTypeVTypeReadMostlyHashMap.SNAPSHOT_PAGE_SHIFT;
+                int page = fromSlot >>> KTypeVTypeReadMostlyHashMap.SNAPSHOT_PAGE_SHIFT;
+
+                while (true) {
+
+                    copyPage(page);
+
+                    if (page == lastPage) {
+
+                        break;
+                    }
+
+                    page = (page + 1) & (this.keyPages.length - 1);
+                }
+            }
+        }
+
+        private void copyPage(final int page) {
+
+            final KTypeVTypeReadMostlyHashMap<KType, VType> map = KTypeVTypeReadMostlyHashMap.this;
+
+            final int from = page << KTypeVTypeReadMostlyHashMap.SNAPSHOT_PAGE_SHIFT;
+            final int length = Math.min(KTypeVTypeReadMostlyHashMap.SNAPSHOT_PAGE_SIZE, map.keys.length);
+
+            final KType[] keyPage = Intrinsics.<KType> newArray(length);
+            final VType[] valuePage = Intrinsics.<VType> newArray(length);
+
+            System.arraycopy(map.keys, from, keyPage, 0, length);
+            System.arraycopy(map.values, from, valuePage, 0, length);
+
+            this.keyPages[page] = keyPage;
+            this.valuePages[page] = valuePage;
+        }
+    }
+
+    /**
+     * Last published content, replaced at the end of each write.
+     */
+    private volatile Snapshot snapshot;
+
+    /**
+     * Nesting depth of the write operations of the thread currently owning the map monitor,
+     * so that a write calling another write only publishes once.
+     */
+    private int writeDepth = 0;
+
+    /**
+     * True if the current write must publish a full copy of the buffers.
+     */
+    private boolean fullPublish = false;
+
+    /**
+     * The key of the current single key write, if not {@link #fullPublish}.
+     */
+    private KType writtenKey = Intrinsics.<KType> empty();
+
+    /**
+     * Default constructor: Creates a hash map with the default capacity of {@link Containers#DEFAULT_EXPECTED_ELEMENTS},
+     * load factor of {@link HashContainers#DEFAULT_LOAD_FACTOR}.
+     */
+    public KTypeVTypeReadMostlyHashMap() {
+        this(Containers.DEFAULT_EXPECTED_ELEMENTS, HashContainers.DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Creates a hash map with the given initial capacity, default load factor of
+     * {@link HashContainers#DEFAULT_LOAD_FACTOR}.
+     *
+     * @param initialCapacity Initial capacity (greater than zero and automatically
+     *            rounded to the next power of two).
+     */
+    public KTypeVTypeReadMostlyHashMap(final int initialCapacity) {
+        this(initialCapacity, HashContainers.DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Creates a hash map with the given initial capacity,
+     * load factor.
+     *
+     * @param loadFactor The load factor (greater than zero and smaller than 1).
+     */
+    public KTypeVTypeReadMostlyHashMap(final int initialCapacity, final double loadFactor) {
+        super(initialCapacity, loadFactor);
+
+        this.snapshot = new Snapshot();
+    }
+
+    /**
+     * Create a hash map from all key-value pairs of another container.
+     */
+    public KTypeVTypeReadMostlyHashMap(final KTypeVTypeAssociativeContainer<KType, VType> container) {
+        this(container.size());
+        putAll(container);
+    }
+
+    /**
+     * Start a write of an unknown set of keys: must be called while holding the map monitor.
+     */
+    private void beginWrite() {
+
+        this.writeDepth++;
+        this.fullPublish = true;
+    }
+
+    /**
+     * Start a write of the single key: must be called while holding the map monitor.
+     */
+    private void beginWrite(final KType key) {
+
+        if (this.writeDepth++ == 0) {
+
+            this.writtenKey = key;
+        }
+    }
+
+    /**
+     * End a write: must be called while holding the map monitor.
+     */
+    private void endWrite() {
+
+        if (--this.writeDepth == 0) {
+
+            final Snapshot previous = this.snapshot;
+            final KType key = this.writtenKey;
+
+            this.writtenKey = Intrinsics.<KType> empty();
+
+            if (this.fullPublish || previous.mask != this.keys.length - 1) {
+
+                this.fullPublish = false;
+
+                //publish the new content to readers.
+                this.snapshot = new Snapshot();
+
+            } else if (Intrinsics.<KType> isEmpty(key)) {
+
+                this.snapshot = new Snapshot(previous, -1, -1);
+
+            } else {
+
+                //The insertion or removal of key only moves keys within its probe run,
+                //from its start slot to the first empty slot after it, both included.
+                final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+                final int mask = keys.length - 1;
+
+                final int fromSlot = REHASH(key) & mask;
+                int toSlot = fromSlot;
+
+                while (!Intrinsics.<KType> isEmpty(keys[toSlot])) {
+
+                    toSlot = (toSlot + 1) & mask;
+                }
+
+                if (((toSlot - fromSlot) & mask) >= keys.length - KTypeVTypeReadMostlyHashMap.SNAPSHOT_PAGE_SIZE) {
+
+                    //the run may wrap around into its first page
+                    this.snapshot = new Snapshot();
+                } else {
+
+                    this.snapshot = new Snapshot(previous, fromSlot, toSlot);
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>This read is lock-free.</p>
+     */
+    @Override
+    public VType get(final KType key) {
+
+        //Note that within a write, the snapshot is the state as of the start of the top-level write,
+        //which is what putIfAbsent() or putOrAdd() need as they read before modifying.
+        final Snapshot current = this.snapshot;
+
+        if (Intrinsics.<KType> isEmpty(key)) {
+
+            return current.allocatedDefaultKey ? current.allocatedDefaultKeyValue : this.defaultValue;
+        }
+
+        final int slot = snapshotSlot(current, key);
+
+        return slot >= 0 ? current.valuePages[slot >>> KTypeVTypeReadMostlyHashMap.SNAPSHOT_PAGE_SHIFT][slot
+                & (KTypeVTypeReadMostlyHashMap.SNAPSHOT_PAGE_SIZE - 1)] : this.defaultValue;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>This read is lock-free.</p>
+     */
+    @Override
+    public boolean containsKey(final KType key) {
+
+        final Snapshot current = this.snapshot;
+
+        if (Intrinsics.<KType> isEmpty(key)) {
+
+            return current.allocatedDefaultKey;
+        }
+
+        return snapshotSlot(current, key) >= 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>This batched read is lock-free, and all queries are looked up in the same consistent state of the map.</p>
+     */
+    @Override
+    public int containsKey(final KType[] queries, final int offset, final int length, final boolean[] results) {
+
+        HashContainers.checkBatchRange(offset, length, queries.length, results.length);
+
+        final Snapshot current = this.snapshot;
+
+        final int end = offset + length;
+        int found = 0;
+
+        for (int i = offset; i < end; i++) {
+
+            final KType key = queries[i];
+
+            final boolean result = Intrinsics.<KType> isEmpty(key) ? current.allocatedDefaultKey : snapshotSlot(current, key) >= 0;
+
+            results[i] = result;
+
+            if (result) {
+                found++;
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>This batched read is lock-free, and all queries are looked up in the same consistent state of the map.</p>
+     */
+    @Override
+    public int getAll(final KType[] queries, final int offset, final int length, final VType[] results) {
+
+        HashContainers.checkBatchRange(offset, length, queries.length, results.length);
+
+        final Snapshot current = this.snapshot;
+
+        final int end = offset + length;
+        int found = 0;
+
+        for (int i = offset; i < end; i++) {
+
+            final KType key = queries[i];
+
+            if (Intrinsics.<KType> isEmpty(key)) {
+
+                if (current.allocatedDefaultKey) {
+
+                    results[i] = current.allocatedDefaultKeyValue;
+                    found++;
+                } else {
+
+                    results[i] = this.defaultValue;
+                }
+            } else {
+
+                final int slot = snapshotSlot(current, key);
+
+                if (slot >= 0) {
+
+                    results[i] = current.valuePages[slot >>> KTypeVTypeReadMostlyHashMap.SNAPSHOT_PAGE_SHIFT][slot
+                            & (KTypeVTypeReadMostlyHashMap.SNAPSHOT_PAGE_SIZE - 1)];
+                    found++;
+                } else {
+
+                    results[i] = this.defaultValue;
+                }
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Search the non-empty key in the keys of snapshot, and return its slot or -1 if not found.
+     */
+    private int snapshotSlot(final Snapshot current, final KType key) {
+
+        final KType[][] keyPages = current.keyPages;
+        final int mask = current.mask;
+
+        int slot = REHASH(key) & mask;
+        KType existing;
+
+        //The load factor guarantees an empty slot, the snapshot being never modified.
+        while (!Intrinsics.<KType> isEmpty(existing = keyPages[slot >>> KTypeVTypeReadMostlyHashMap.SNAPSHOT_PAGE_SHIFT][slot
+                & (KTypeVTypeReadMostlyHashMap.SNAPSHOT_PAGE_SIZE - 1)])) {
+
+            if (KEYEQUALS(key, existing)) {
+
+                return slot;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public VType put(final KType key, final VType value) {
+
+        synchronized (this) {
+
+            beginWrite(key);
+
+            try {
+                return super.put(key, value);
+            } finally {
+                endWrite();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int putAll(final KTypeVTypeAssociativeContainer<? extends KType, ? extends VType> container) {
+
+        synchronized (this) {
+
+            beginWrite();
+
+            try {
+                return super.putAll(container);
+            } finally {
+                endWrite();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int putAll(final Iterable<? extends KTypeVTypeCursor<? extends KType, ? extends VType>> iterable) {
+
+        synchronized (this) {
+
+            beginWrite();
+
+            try {
+                return super.putAll(iterable);
+            } finally {
+                endWrite();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean putIfAbsent(final KType key, final VType value) {
+
+        synchronized (this) {
+
+            beginWrite(key);
+
+            try {
+                return super.putIfAbsent(key, value);
+            } finally {
+                endWrite();
+            }
+        }
+    }
+
+    /*! #if ($TemplateOptions.VTypePrimitive) !*/
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public VType putOrAdd(final KType key, final VType putValue, final VType incrementValue) {
+
+        synchronized (this) {
+
+            beginWrite(key);
+
+            try {
+                return super.putOrAdd(key, putValue, incrementValue);
+            } finally {
+                endWrite();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public VType addTo(final KType key, final VType incrementValue) {
+
+        synchronized (this) {
+
+            beginWrite(key);
+
+            try {
+                return super.addTo(key, incrementValue);
+            } finally {
+                endWrite();
+            }
+        }
+    }
+
+    /*! #end !*/
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public VType remove(final KType key) {
+
+        synchronized (this) {
+
+            beginWrite(key);
+
+            try {
+                return super.remove(key);
+            } finally {
+                endWrite();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int removeAll(final KTypeContainer<? super KType> other) {
+
+        synchronized (this) {
+
+            beginWrite();
+
+            try {
+                return super.removeAll(other);
+            } finally {
+                endWrite();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int removeAll(final KTypePredicate<? super KType> predicate) {
+
+        synchronized (this) {
+
+            beginWrite();
+
+            try {
+                return super.removeAll(predicate);
+            } finally {
+                endWrite();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int removeAll(final KTypeVTypePredicate<? super KType, ? super VType> predicate) {
+
+        synchronized (this) {
+
+            beginWrite();
+
+            try {
+                return super.removeAll(predicate);
+            } finally {
+                endWrite();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void shrink(final int expectedElements) {
+
+        synchronized (this) {
+
+            beginWrite();
+
+            try {
+                super.shrink(expectedElements);
+            } finally {
+                endWrite();
+            }
+        }
+    }
+
+    /**
+     * Not supported: the snapshots need all the keys in {@link #keys}.
+     * @throws UnsupportedOperationException if incremental is true.
+     */
+    @Override
+    public void setIncrementalRehash(final boolean incremental) {
+
+        if (incremental) {
+
+            throw new UnsupportedOperationException("Incremental rehash is not supported by the lock-free reads");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+
+        synchronized (this) {
+
+            beginWrite();
+
+            try {
+                super.clear();
+            } finally {
+                endWrite();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public KTypeVTypeReadMostlyHashMap<KType, VType> clone() {
+
+        synchronized (this) {
+
+            //clone to size() to prevent eventual exponential growth
+            final KTypeVTypeReadMostlyHashMap<KType, VType> cloned =
+                    new KTypeVTypeReadMostlyHashMap<KType, VType>(size(), this.loadFactor);
+
+            //We must NOT clone because of the independent perturbation seeds
+            cloned.putAll(this);
+
+            return cloned;
+        }
+    }
+
+    /**
+     * Creates a hash map from two index-aligned arrays of key-value pairs.
+     */
+    public static <KType, VType> KTypeVTypeReadMostlyHashMap<KType, VType> from(final KType[] keys, final VType[] values) {
+
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException("Arrays of keys and values must have an identical length.");
+        }
+
+        final KTypeVTypeReadMostlyHashMap<KType, VType> map = new KTypeVTypeReadMostlyHashMap<KType, VType>(keys.length);
+
+        for (int i = 0; i < keys.length; i++) {
+            map.put(keys[i], values[i]);
+        }
+        return map;
+    }
+
+    /**
+     * Create a hash map from another associative container.
+     */
+    public static <KType, VType> KTypeVTypeReadMostlyHashMap<KType, VType> from(final KTypeVTypeAssociativeContainer<KType, VType> container) {
+        return new KTypeVTypeReadMostlyHashMap<KType, VType>(container);
+    }
+
+    /**
+     * Create a new hash map without providing the full generic signature (constructor
+     * shortcut).
+     */
+    public static <KType, VType> KTypeVTypeReadMostlyHashMap<KType, VType> newInstance() {
+        return new KTypeVTypeReadMostlyHashMap<KType, VType>();
+    }
+
+    /**
+     * Create a new hash map with initial capacity and load factor control. (constructor
+     * shortcut).
+     */
+    public static <KType, VType> KTypeVTypeReadMostlyHashMap<KType, VType> newInstance(final int initialCapacity, final double loadFactor) {
+        return new KTypeVTypeReadMostlyHashMap<KType, VType>(initialCapacity, loadFactor);
+    }
+
+    /*! #if ($TemplateOptions.declareInline("REHASH(value)",
+    "<Object,*>==>BitMixer.mix(hashKey(value) , this.perturbation)",
+    "<*,*>==>BitMixer.mix(value , this.perturbation)")) !*/
+    /**
+     * REHASH method for rehashing the keys, identical to the one of {@link KTypeVTypeHashMap}.
+     * (inlined in generated code)
+     */
+    private int REHASH(final KType value) {
+
+        return BitMixer.mix(hashKey(value), this.perturbation);
+    }
+
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.declareInline("KEYEQUALS(key1, key2)",
+    "<Object,*>==>equalKeys(key1, key2)",
+    "<*,*>==>Intrinsics.<KType> equalsNotNull(key1, key2)")) !*/
+    /**
+     * macro which hides the applied equality criteria
+     */
+    private boolean KEYEQUALS(final KType key1, final KType key2) {
+
+        return equalKeys(key1, key2);
+    }
+    /*! #end !*/
+}
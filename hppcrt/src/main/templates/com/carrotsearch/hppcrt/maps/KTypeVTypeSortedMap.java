@@ -0,0 +1,1728 @@
+package com.carrotsearch.hppcrt.maps;
+
+import com.carrotsearch.hppcrt.*;
+import com.carrotsearch.hppcrt.cursors.*;
+import com.carrotsearch.hppcrt.predicates.*;
+import com.carrotsearch.hppcrt.procedures.*;
+import com.carrotsearch.hppcrt.hash.*;
+
+/*! #import("com/carrotsearch/hppcrt/Intrinsics.java") !*/
+/**
+ * A map of <code>KType</code> to <code>VType</code> sorted by ascending keys, implemented as a B+-tree.
+ * <p>
+ * The nodes are not objects, but ranges of {@link #NODE_SIZE} positions in flat arrays, so that
+ * a lookup only visits a few contiguous blocks of keys:
+ * the leaves hold up to {@link #NODE_SIZE} sorted entries each in {@link #keys} and {@link #values}, and are chained
+ * in ascending order by {@link #nextLeaves}; the inner nodes hold up to {@link #NODE_SIZE} children and their separating keys.
+ * Except for the root, the nodes are kept at least half-full by redistributing or merging them on removal,
+ * while an ascending sequence of insertions fills the leaves completely.
+ * </p>
+ * <p>
+ * Besides lookups, the map answers {@link #floorKey(Object)}, {@link #ceilingKey(Object)}, {@link #lowerKey(Object)}
+ * and {@link #higherKey(Object)} queries, and iterates in ascending order of keys, either all entries or those of a range
+ * [fromKey; toKey[, without allocation by {@link #forEach(KTypeVTypeProcedure, Object, Object)} or by the pooled
+ * {@link #iterator(Object, Object)}. These queries return {@link #getDefaultKey()} when there is no such key,
+ * which may also be a key of the map: {@link #floorIndex(Object)} and the other <code>xxxIndex()</code> variants
+ * return the index of the key found in {@link #keys} and {@link #values} instead, or -1 if there is none,
+ * to be read by {@link #keyAt(int)} and {@link #valueAt(int)}.
+ * </p>
+#if ($TemplateOptions.KTypeGeneric)
+ * <p>The keys are sorted by their natural ordering, so must be {@link Comparable}: <code>null</code> keys are not supported.</p>
+#end
+#if ($TemplateOptions.VTypeGeneric)
+ * <p>This implementation supports <code>null</code> values.</p>
+#end
+ */
+/*! ${TemplateOptions.generatedAnnotation} !*/
+public class KTypeVTypeSortedMap<KType, VType> implements Iterable<KTypeVTypeCursor<KType, VType>>, Cloneable
+{
+    /**
+     * Maximum number of entries of a leaf, and of children of an inner node.
+     */
+    public static final int NODE_SIZE = 64;
+
+    /**
+     * Minimum number of entries of a leaf, and of children of an inner node, except for the root.
+     */
+    private static final int MIN_NODE_SIZE = KTypeVTypeSortedMap.NODE_SIZE / 2;
+
+    /**
+     * Bound of the height of the tree, far beyond what half-full nodes of {@link #NODE_SIZE} can reach.
+     */
+    private static final int MAX_HEIGHT = 32;
+
+    protected VType defaultValue = Intrinsics.<VType> empty();
+
+    protected KType defaultKey = Intrinsics.<KType> empty();
+
+    /**
+     * Keys of the leaves: leaf l holds its entries in ascending order
+     * in keys[l * {@link #NODE_SIZE}; l * {@link #NODE_SIZE} + leafSizes[l][.
+     */
+    public/*! #if ($TemplateOptions.KTypePrimitive)
+          KType []
+          #else !*/
+    Object[]
+    /*! #end !*/
+    keys;
+
+    /**
+     * Values of the leaves, index-aligned with {@link #keys}.
+     */
+    public/*! #if ($TemplateOptions.VTypePrimitive)
+          VType []
+          #else !*/
+    Object[]
+    /*! #end !*/
+    values;
+
+    /**
+     * Number of entries of each leaf.
+     */
+    protected int[] leafSizes;
+
+    /**
+     * Next leaf in ascending order of each leaf, or -1 for the last one. Also chains the free leaves.
+     */
+    protected int[] nextLeaves;
+
+    /**
+     * Separating keys of the inner nodes: the children of node n are children[n * {@link #NODE_SIZE} + i] for i in [0; innerSizes[n][,
+     * and the keys of child i + 1 are greater or equal to separators[n * {@link #NODE_SIZE} + i],
+     * the keys of child i lower than it.
+     */
+    protected/*! #if ($TemplateOptions.KTypePrimitive)
+          KType []
+          #else !*/
+    Object[]
+    /*! #end !*/
+    separators;
+
+    /**
+     * Children of the inner nodes, which are leaves for the inner nodes just above the leaves. Also chains the free inner nodes.
+     */
+    protected int[] children;
+
+    /**
+     * Number of children of each inner node.
+     */
+    protected int[] innerSizes;
+
+    /**
+     * Root node, a leaf if {@link #height} is 0, else an inner node.
+     */
+    protected int root;
+
+    /**
+     * Number of levels of inner nodes.
+     */
+    protected int height;
+
+    /**
+     * Number of entries.
+     */
+    protected int size;
+
+    /**
+     * Number of leaves / inner nodes ever allocated, then heads of the chains of the free ones, or -1.
+     */
+    private int leafCount;
+    private int freeLeaves;
+    private int innerCount;
+    private int freeInners;
+
+    /**
+     * Inner nodes and child positions of the path to the last modified leaf, by level.
+     */
+    private final int[] pathNodes = new int[KTypeVTypeSortedMap.MAX_HEIGHT + 1];
+    private final int[] pathPositions = new int[KTypeVTypeSortedMap.MAX_HEIGHT + 1];
+
+    /**
+     * Default constructor: Creates a map with the default capacity of {@link Containers#DEFAULT_EXPECTED_ELEMENTS}.
+     */
+    public KTypeVTypeSortedMap() {
+
+        this(Containers.DEFAULT_EXPECTED_ELEMENTS);
+    }
+
+    /**
+     * Creates a map able to hold at least initialCapacity entries without reallocating its buffers.
+     */
+    public KTypeVTypeSortedMap(final int initialCapacity) {
+
+        final int leaves = Math.max(initialCapacity, 0) / KTypeVTypeSortedMap.MIN_NODE_SIZE + 1;
+        final int inners = leaves / KTypeVTypeSortedMap.MIN_NODE_SIZE + 1;
+
+        this.keys = Intrinsics.<KType> newArray(leaves * KTypeVTypeSortedMap.NODE_SIZE);
+        this.values = Intrinsics.<VType> newArray(leaves * KTypeVTypeSortedMap.NODE_SIZE);
+        this.leafSizes = new int[leaves];
+        this.nextLeaves = new int[leaves];
+
+        this.separators = Intrinsics.<KType> newArray(inners * KTypeVTypeSortedMap.NODE_SIZE);
+        this.children = new int[inners * KTypeVTypeSortedMap.NODE_SIZE];
+        this.innerSizes = new int[inners];
+
+        initTree();
+    }
+
+    /**
+     * Place a given key and value in the map.
+     * @return the previous value associated with key, or the default value if there was none.
+     */
+    public VType put(final KType key, final VType value) {
+
+        final int[] pathNodes = this.pathNodes;
+        final int[] pathPositions = this.pathPositions;
+
+        int node = this.root;
+
+        for (int level = this.height; level > 0; level--) {
+
+            final int position = childPosition(node, key);
+
+            pathNodes[level] = node;
+            pathPositions[level] = position;
+            node = this.children[node * KTypeVTypeSortedMap.NODE_SIZE + position];
+        }
+
+        final int base = node * KTypeVTypeSortedMap.NODE_SIZE;
+        final int index = search(key, base, base + this.leafSizes[node]);
+
+        if (index >= 0) {
+
+            final VType previousValue = Intrinsics.<VType> cast(this.values[index]);
+            this.values[index] = value;
+
+            return previousValue;
+        }
+
+        this.size++;
+
+        if (this.leafSizes[node] < KTypeVTypeSortedMap.NODE_SIZE) {
+
+            insertInLeaf(node, ~index, key, value);
+        } else {
+
+            splitLeaf(node, ~index - base, key, value);
+        }
+
+        return this.defaultValue;
+    }
+
+    /**
+     * Puts all keys from two index-aligned arrays into this map.
+     * @return the number of keys added to the map as a result of this call.
+     */
+    public int putAll(final KType[] keys, final VType[] values) {
+
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException("Arrays of keys and values must have an identical length.");
+        }
+
+        final int count = this.size;
+
+        for (int i = 0; i < keys.length; i++) {
+
+            put(keys[i], values[i]);
+        }
+
+        return this.size - count;
+    }
+
+    /**
+     * Put all the entries of another sorted map into this map.
+     * @return the number of keys added to the map as a result of this call.
+     */
+    public int putAll(final KTypeVTypeSortedMap<KType, VType> other) {
+
+        final int count = this.size;
+
+        final KType[] keys = Intrinsics.<KType[]> cast(other.keys);
+        final VType[] values = Intrinsics.<VType[]> cast(other.values);
+
+        for (int leaf = other.firstLeaf(); leaf != -1; leaf = other.nextLeaves[leaf]) {
+
+            final int base = leaf * KTypeVTypeSortedMap.NODE_SIZE;
+            final int end = base + other.leafSizes[leaf];
+
+            for (int i = base; i < end; i++) {
+
+                put(keys[i], values[i]);
+            }
+        }
+
+        return this.size - count;
+    }
+
+    /**
+     * <a href="http://trove4j.sourceforge.net">Trove</a>-inspired API method. An equivalent
+     * of the following code:
+     * <pre>
+     * if (!map.containsKey(key))
+     *      map.put(key, value);
+     * </pre>
+     *
+     * @param key The key of the value to check.
+     * @param value The value to put if <code>key</code> does not exist.
+     * @return <code>true</code> if <code>key</code> did not exist and <code>value</code>
+     * was placed in the map.
+     */
+    public boolean putIfAbsent(final KType key, final VType value) {
+
+        if (!containsKey(key)) {
+            put(key, value);
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the value associated with key, or the default value if key is not in the map.
+     */
+    public VType get(final KType key) {
+
+        final int leaf = leafOf(key);
+        final int base = leaf * KTypeVTypeSortedMap.NODE_SIZE;
+
+        final int index = search(key, base, base + this.leafSizes[leaf]);
+
+        if (index >= 0) {
+
+            return Intrinsics.<VType> cast(this.values[index]);
+        }
+
+        return this.defaultValue;
+    }
+
+    /**
+     * @return true if key is in the map.
+     */
+    public boolean containsKey(final KType key) {
+
+        final int leaf = leafOf(key);
+        final int base = leaf * KTypeVTypeSortedMap.NODE_SIZE;
+
+        return search(key, base, base + this.leafSizes[leaf]) >= 0;
+    }
+
+    /**
+     * Remove key and its associated value from the map.
+     * @return the removed value, or the default value if key was not in the map.
+     */
+    public VType remove(final KType key) {
+
+        final int[] pathNodes = this.pathNodes;
+        final int[] pathPositions = this.pathPositions;
+
+        int node = this.root;
+
+        for (int level = this.height; level > 0; level--) {
+
+            final int position = childPosition(node, key);
+
+            pathNodes[level] = node;
+            pathPositions[level] = position;
+            node = this.children[node * KTypeVTypeSortedMap.NODE_SIZE + position];
+        }
+
+        final int base = node * KTypeVTypeSortedMap.NODE_SIZE;
+        final int index = search(key, base, base + this.leafSizes[node]);
+
+        if (index < 0) {
+
+            return this.defaultValue;
+        }
+
+        final VType previousValue = Intrinsics.<VType> cast(this.values[index]);
+
+        removeFromLeaf(node, index);
+        this.size--;
+
+        if (this.height > 0 && this.leafSizes[node] < KTypeVTypeSortedMap.MIN_NODE_SIZE) {
+
+            rebalance(node);
+        }
+
+        return previousValue;
+    }
+
+    /**
+     * @return the lowest key of the map, or {@link #getDefaultKey()} if the map is empty, see {@link #firstIndex()}.
+     */
+    public KType firstKey() {
+
+        return keyOrDefault(firstIndex());
+    }
+
+    /**
+     * @return the greatest key of the map, or {@link #getDefaultKey()} if the map is empty, see {@link #lastIndex()}.
+     */
+    public KType lastKey() {
+
+        return keyOrDefault(lastIndex());
+    }
+
+    /**
+     * @return the greatest key lower than or equal to key, or {@link #getDefaultKey()} if there is none,
+     * see {@link #floorIndex(Object)}.
+     */
+    public KType floorKey(final KType key) {
+
+        return keyOrDefault(floorIndex(key));
+    }
+
+    /**
+     * @return the greatest key strictly lower than key, or {@link #getDefaultKey()} if there is none,
+     * see {@link #lowerIndex(Object)}.
+     */
+    public KType lowerKey(final KType key) {
+
+        return keyOrDefault(lowerIndex(key));
+    }
+
+    /**
+     * @return the lowest key greater than or equal to key, or {@link #getDefaultKey()} if there is none,
+     * see {@link #ceilingIndex(Object)}.
+     */
+    public KType ceilingKey(final KType key) {
+
+        return keyOrDefault(ceilingIndex(key));
+    }
+
+    /**
+     * @return the lowest key strictly greater than key, or {@link #getDefaultKey()} if there is none,
+     * see {@link #higherIndex(Object)}.
+     */
+    public KType higherKey(final KType key) {
+
+        return keyOrDefault(higherIndex(key));
+    }
+
+    /**
+     * @return the index of the lowest key of the map, or -1 if the map is empty.
+     * The index is valid until the next modification of the map.
+     */
+    public int firstIndex() {
+
+        return this.size == 0 ? -1 : firstLeaf() * KTypeVTypeSortedMap.NODE_SIZE;
+    }
+
+    /**
+     * @return the index of the greatest key of the map, or -1 if the map is empty.
+     * The index is valid until the next modification of the map.
+     */
+    public int lastIndex() {
+
+        return this.size == 0 ? -1 : lastIndexOf(this.root, this.height);
+    }
+
+    /**
+     * @return the index of the greatest key lower than or equal to key, or -1 if there is none.
+     * The index is valid until the next modification of the map.
+     */
+    public int floorIndex(final KType key) {
+
+        return lowerIndexOf(key, true);
+    }
+
+    /**
+     * @return the index of the greatest key strictly lower than key, or -1 if there is none.
+     * The index is valid until the next modification of the map.
+     */
+    public int lowerIndex(final KType key) {
+
+        return lowerIndexOf(key, false);
+    }
+
+    /**
+     * @return the index of the lowest key greater than or equal to key, or -1 if there is none.
+     * The index is valid until the next modification of the map.
+     */
+    public int ceilingIndex(final KType key) {
+
+        return higherIndexOf(key, true);
+    }
+
+    /**
+     * @return the index of the lowest key strictly greater than key, or -1 if there is none.
+     * The index is valid until the next modification of the map.
+     */
+    public int higherIndex(final KType key) {
+
+        return higherIndexOf(key, false);
+    }
+
+    /**
+     * @return the key at index, as returned by {@link #floorIndex(Object)} and the other <code>xxxIndex()</code> methods.
+     * @throws IndexOutOfBoundsException if index is not the index of an entry.
+     */
+    public KType keyAt(final int index) {
+
+        checkIndex(index);
+
+        return Intrinsics.<KType> cast(this.keys[index]);
+    }
+
+    /**
+     * @return the value at index, as returned by {@link #floorIndex(Object)} and the other <code>xxxIndex()</code> methods.
+     * @throws IndexOutOfBoundsException if index is not the index of an entry.
+     */
+    public VType valueAt(final int index) {
+
+        checkIndex(index);
+
+        return Intrinsics.<VType> cast(this.values[index]);
+    }
+
+    /**
+     * Clear all keys and values in the container.
+     */
+    public void clear() {
+
+        /*! #if ($TemplateOptions.KTypeGeneric) !*/
+        KTypeArrays.blankArray(this.keys, 0, this.leafCount * KTypeVTypeSortedMap.NODE_SIZE);
+        KTypeArrays.blankArray(this.separators, 0, this.innerCount * KTypeVTypeSortedMap.NODE_SIZE);
+        /*! #end !*/
+
+        /*! #if ($TemplateOptions.VTypeGeneric) !*/
+        VTypeArrays.blankArray(this.values, 0, this.leafCount * KTypeVTypeSortedMap.NODE_SIZE);
+        /*! #end !*/
+
+        initTree();
+    }
+
+    /**
+     * @return the number of entries.
+     */
+    public int size() {
+
+        return this.size;
+    }
+
+    /**
+     * @return true if the map is empty.
+     */
+    public boolean isEmpty() {
+
+        return this.size == 0;
+    }
+
+    /**
+     * @return the number of entries the leaves already allocated can hold.
+     */
+    public int capacity() {
+
+        return this.leafSizes.length * KTypeVTypeSortedMap.NODE_SIZE;
+    }
+
+    /**
+     * Applies a given procedure to all keys-value pairs in this container, in ascending order of keys.
+     * @return the input procedure.
+     */
+    public <T extends KTypeVTypeProcedure<? super KType, ? super VType>> T forEach(final T procedure) {
+
+        return forEachFrom(procedure, this.size == 0 ? -1 : firstLeaf() * KTypeVTypeSortedMap.NODE_SIZE, false, this.defaultKey);
+    }
+
+    /**
+     * Applies a given procedure to the keys-value pairs of keys in [fromKey; toKey[, in ascending order of keys.
+     * @return the input procedure.
+     */
+    public <T extends KTypeVTypeProcedure<? super KType, ? super VType>> T forEach(final T procedure, final KType fromKey, final KType toKey) {
+
+        return forEachFrom(procedure, higherIndexOf(fromKey, true), true, toKey);
+    }
+
+    /**
+     * Applies a given predicate to all keys-value pairs in this container, in ascending order of keys,
+     * until the predicate returns <code>false</code>.
+     * @return the input predicate.
+     */
+    public <T extends KTypeVTypePredicate<? super KType, ? super VType>> T forEach(final T predicate) {
+
+        return forEachFrom(predicate, this.size == 0 ? -1 : firstLeaf() * KTypeVTypeSortedMap.NODE_SIZE, false, this.defaultKey);
+    }
+
+    /**
+     * Applies a given predicate to the keys-value pairs of keys in [fromKey; toKey[, in ascending order of keys,
+     * until the predicate returns <code>false</code>.
+     * @return the input predicate.
+     */
+    public <T extends KTypeVTypePredicate<? super KType, ? super VType>> T forEach(final T predicate, final KType fromKey, final KType toKey) {
+
+        return forEachFrom(predicate, higherIndexOf(fromKey, true), true, toKey);
+    }
+
+    private <T extends KTypeVTypeProcedure<? super KType, ? super VType>> T forEachFrom(final T procedure, int index,
+            final boolean bounded, final KType toKey) {
+
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+        final VType[] values = Intrinsics.<VType[]> cast(this.values);
+
+        if (index == -1) {
+
+            return procedure;
+        }
+
+        for (int leaf = index / KTypeVTypeSortedMap.NODE_SIZE; leaf != -1; leaf = this.nextLeaves[leaf]) {
+
+            final int end = leaf * KTypeVTypeSortedMap.NODE_SIZE + this.leafSizes[leaf];
+
+            if (index < 0) {
+
+                index = leaf * KTypeVTypeSortedMap.NODE_SIZE;
+            }
+
+            for (; index < end; index++) {
+
+                if (bounded && !Intrinsics.<KType> isCompInfUnchecked(keys[index], toKey)) {
+
+                    return procedure;
+                }
+
+                procedure.apply(keys[index], values[index]);
+            }
+
+            index = -1;
+        }
+
+        return procedure;
+    }
+
+    private <T extends KTypeVTypePredicate<? super KType, ? super VType>> T forEachFrom(final T predicate, int index,
+            final boolean bounded, final KType toKey) {
+
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+        final VType[] values = Intrinsics.<VType[]> cast(this.values);
+
+        if (index == -1) {
+
+            return predicate;
+        }
+
+        for (int leaf = index / KTypeVTypeSortedMap.NODE_SIZE; leaf != -1; leaf = this.nextLeaves[leaf]) {
+
+            final int end = leaf * KTypeVTypeSortedMap.NODE_SIZE + this.leafSizes[leaf];
+
+            if (index < 0) {
+
+                index = leaf * KTypeVTypeSortedMap.NODE_SIZE;
+            }
+
+            for (; index < end; index++) {
+
+                if (bounded && !Intrinsics.<KType> isCompInfUnchecked(keys[index], toKey)) {
+
+                    return predicate;
+                }
+
+                if (!predicate.apply(keys[index], values[index])) {
+
+                    return predicate;
+                }
+            }
+
+            index = -1;
+        }
+
+        return predicate;
+    }
+
+    /**
+     * An iterator implementation for {@link #iterator()} and {@link #iterator(Object, Object)}, in ascending order of keys.
+     * Holds a KTypeVTypeCursor returning
+     * (key, value, index) = (KType key, VType value, index the position in {@link KTypeVTypeSortedMap#keys})
+     */
+    public final class EntryIterator extends AbstractIterator<KTypeVTypeCursor<KType, VType>>
+    {
+        public final KTypeVTypeCursor<KType, VType> cursor;
+
+        /**
+         * Position of the next entry in keys, or -1 at the end.
+         */
+        private int next;
+
+        /**
+         * Leaf of the next entry.
+         */
+        private int leaf;
+
+        /**
+         * If bounded, the keys must be strictly lower than toKey.
+         */
+        private boolean bounded;
+        private KType toKey;
+
+        public EntryIterator() {
+            this.cursor = new KTypeVTypeCursor<KType, VType>();
+        }
+
+        /**
+         * Start at the position index in keys, or -1 for an empty iteration.
+         */
+        void start(final int index, final boolean bounded, final KType toKey) {
+
+            this.next = index;
+            this.leaf = index / KTypeVTypeSortedMap.NODE_SIZE;
+            this.bounded = bounded;
+            this.toKey = toKey;
+        }
+
+        @Override
+        protected KTypeVTypeCursor<KType, VType> fetch() {
+
+            if (this.next == -1) {
+
+                return done();
+            }
+
+            if (this.next == this.leaf * KTypeVTypeSortedMap.NODE_SIZE + KTypeVTypeSortedMap.this.leafSizes[this.leaf]) {
+
+                this.leaf = KTypeVTypeSortedMap.this.nextLeaves[this.leaf];
+
+                if (this.leaf == -1) {
+
+                    this.next = -1;
+                    return done();
+                }
+
+                this.next = this.leaf * KTypeVTypeSortedMap.NODE_SIZE;
+            }
+
+            final KType key = Intrinsics.<KType> cast(KTypeVTypeSortedMap.this.keys[this.next]);
+
+            if (this.bounded && !Intrinsics.<KType> isCompInfUnchecked(key, this.toKey)) {
+
+                this.next = -1;
+                return done();
+            }
+
+            this.cursor.index = this.next;
+            this.cursor.key = key;
+            this.cursor.value = Intrinsics.<VType> cast(KTypeVTypeSortedMap.this.values[this.next]);
+
+            this.next++;
+
+            return this.cursor;
+        }
+    }
+
+    /**
+     * internal pool of EntryIterator
+     */
+    protected final IteratorPool<KTypeVTypeCursor<KType, VType>, EntryIterator> entryIteratorPool = new IteratorPool<KTypeVTypeCursor<KType, VType>, EntryIterator>(
+            new ObjectFactory<EntryIterator>() {
+
+                @Override
+                public EntryIterator create() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public void initialize(final EntryIterator obj) {
+
+                    final KTypeVTypeSortedMap<KType, VType> owner = KTypeVTypeSortedMap.this;
+
+                    obj.start(owner.size == 0 ? -1 : owner.firstLeaf() * KTypeVTypeSortedMap.NODE_SIZE, false, owner.defaultKey);
+                }
+
+                @Override
+                public void reset(final EntryIterator obj) {
+                    /*! #if ($TemplateOptions.KTypeGeneric) !*/
+                    obj.cursor.key = null;
+                    obj.toKey = null;
+                    /*! #end !*/
+
+                    /*! #if ($TemplateOptions.VTypeGeneric) !*/
+                    obj.cursor.value = null;
+                    /*! #end !*/
+                }
+            });
+
+    /**
+     * Iterate all the entries in ascending order of keys. The map must not be modified during the iteration.
+     */
+    @Override
+    public EntryIterator iterator() {
+        //return new EntryIterator();
+        return this.entryIteratorPool.borrow();
+    }
+
+    /**
+     * Iterate the entries of keys in [fromKey; toKey[ in ascending order of keys. The map must not be modified during the iteration.
+     */
+    public EntryIterator iterator(final KType fromKey, final KType toKey) {
+
+        final EntryIterator it = this.entryIteratorPool.borrow();
+
+        it.start(higherIndexOf(fromKey, true), true, toKey);
+
+        return it;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+
+        int h = 0;
+
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+        final VType[] values = Intrinsics.<VType[]> cast(this.values);
+
+        for (int leaf = firstLeaf(); leaf != -1; leaf = this.nextLeaves[leaf]) {
+
+            final int base = leaf * KTypeVTypeSortedMap.NODE_SIZE;
+            final int end = base + this.leafSizes[leaf];
+
+            for (int i = base; i < end; i++) {
+
+                h += BitMixer.mix(keys[i]) ^ BitMixer.mix(values[i]);
+            }
+        }
+
+        return h;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(final Object obj) {
+        if (obj != null) {
+            if (obj == this) {
+                return true;
+            }
+
+            //must be of the same class, subclasses are not comparable
+            if (obj.getClass() != this.getClass()) {
+                return false;
+            }
+
+            /* #if ($TemplateOptions.AnyGeneric) */
+            @SuppressWarnings("unchecked")
+            final/* #end */
+            KTypeVTypeSortedMap<KType, VType> other = (KTypeVTypeSortedMap<KType, VType>) obj;
+
+            //must be of the same size
+            if (other.size() != this.size()) {
+                return false;
+            }
+
+            //same entries in the same order
+            final EntryIterator it = this.iterator();
+            final EntryIterator otherIt = other.iterator();
+
+            while (it.hasNext()) {
+
+                final KTypeVTypeCursor<KType, VType> c = it.next();
+                final KTypeVTypeCursor<KType, VType> otherC = otherIt.next();
+
+                if (!Intrinsics.<KType> equals(c.key, otherC.key) || !Intrinsics.<VType> equals(c.value, otherC.value)) {
+
+                    //recycle
+                    it.release();
+                    otherIt.release();
+                    return false;
+                }
+            } //end while
+            otherIt.release();
+
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public KTypeVTypeSortedMap<KType, VType> clone() {
+
+        final KTypeVTypeSortedMap<KType, VType> cloned = new KTypeVTypeSortedMap<KType, VType>(0);
+
+        //the nodes are plain arrays, the tree can be copied as-is.
+        cloned.keys = this.keys.clone();
+        cloned.values = this.values.clone();
+        cloned.leafSizes = this.leafSizes.clone();
+        cloned.nextLeaves = this.nextLeaves.clone();
+        cloned.separators = this.separators.clone();
+        cloned.children = this.children.clone();
+        cloned.innerSizes = this.innerSizes.clone();
+
+        cloned.root = this.root;
+        cloned.height = this.height;
+        cloned.size = this.size;
+        cloned.leafCount = this.leafCount;
+        cloned.freeLeaves = this.freeLeaves;
+        cloned.innerCount = this.innerCount;
+        cloned.freeInners = this.freeInners;
+
+        cloned.defaultKey = this.defaultKey;
+        cloned.defaultValue = this.defaultValue;
+
+        return cloned;
+    }
+
+    /**
+     * Convert the contents of this map to a human-friendly string, in ascending order of keys.
+     */
+    @Override
+    public String toString() {
+
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[");
+
+        forEach(new KTypeVTypeProcedure<KType, VType>() {
+
+            boolean first = true;
+
+            @Override
+            public void apply(final KType key, final VType value) {
+
+                if (!this.first) {
+                    buffer.append(", ");
+                }
+                buffer.append(key);
+                buffer.append("=>");
+                buffer.append(value);
+                this.first = false;
+            }
+        });
+
+        buffer.append("]");
+        return buffer.toString();
+    }
+
+    /**
+     * Returns the "default value" value used
+     * in methods returning "default value"
+     */
+    public VType getDefaultValue() {
+
+        return this.defaultValue;
+    }
+
+    /**
+     * Set the "default value" value to be used
+     * in methods returning "default value"
+     */
+    public void setDefaultValue(final VType defaultValue) {
+
+        this.defaultValue = defaultValue;
+    }
+
+    /**
+     * Returns the "default key" returned by the key queries
+     * when there is no such key.
+     */
+    public KType getDefaultKey() {
+
+        return this.defaultKey;
+    }
+
+    /**
+     * Set the "default key" to be returned by the key queries
+     * when there is no such key.
+     */
+    public void setDefaultKey(final KType defaultKey) {
+
+        this.defaultKey = defaultKey;
+    }
+
+    /**
+     * Create a new sorted map without providing the full generic signature
+     * (constructor shortcut).
+     */
+    public static <KType, VType> KTypeVTypeSortedMap<KType, VType> newInstance() {
+        return new KTypeVTypeSortedMap<KType, VType>();
+    }
+
+    /**
+     * Create a new sorted map with initial capacity control
+     * (constructor shortcut).
+     */
+    public static <KType, VType> KTypeVTypeSortedMap<KType, VType> newInstance(final int initialCapacity) {
+        return new KTypeVTypeSortedMap<KType, VType>(initialCapacity);
+    }
+
+    /**
+     * Creates a sorted map from two index-aligned arrays of key-value pairs.
+     */
+    public static <KType, VType> KTypeVTypeSortedMap<KType, VType> from(final KType[] keys, final VType[] values) {
+
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException("Arrays of keys and values must have an identical length.");
+        }
+
+        final KTypeVTypeSortedMap<KType, VType> map = new KTypeVTypeSortedMap<KType, VType>(keys.length);
+        map.putAll(keys, values);
+
+        return map;
+    }
+
+    /**
+     * Reset to an empty tree, made of an empty root leaf.
+     */
+    private void initTree() {
+
+        this.leafCount = 0;
+        this.freeLeaves = -1;
+        this.innerCount = 0;
+        this.freeInners = -1;
+
+        this.height = 0;
+        this.size = 0;
+        this.root = allocateLeaf();
+    }
+
+    /**
+     * @return key at index, or the default key if index is -1.
+     */
+    private KType keyOrDefault(final int index) {
+
+        return index == -1 ? this.defaultKey : Intrinsics.<KType> cast(this.keys[index]);
+    }
+
+    /**
+     * @return the leftmost leaf.
+     */
+    private int firstLeaf() {
+
+        int node = this.root;
+
+        for (int level = this.height; level > 0; level--) {
+
+            node = this.children[node * KTypeVTypeSortedMap.NODE_SIZE];
+        }
+
+        return node;
+    }
+
+    /**
+     * @return the index in keys of the greatest key of the subtree of node, at level.
+     */
+    private int lastIndexOf(int node, final int level) {
+
+        for (int l = level; l > 0; l--) {
+
+            node = this.children[node * KTypeVTypeSortedMap.NODE_SIZE + this.innerSizes[node] - 1];
+        }
+
+        return node * KTypeVTypeSortedMap.NODE_SIZE + this.leafSizes[node] - 1;
+    }
+
+    /**
+     * @return the leaf where key is, or should be.
+     */
+    private int leafOf(final KType key) {
+
+        final int[] children = this.children;
+
+        int node = this.root;
+
+        for (int level = this.height; level > 0; level--) {
+
+            node = children[node * KTypeVTypeSortedMap.NODE_SIZE + childPosition(node, key)];
+        }
+
+        return node;
+    }
+
+    /**
+     * @return the position of the child of the inner node where key is, or should be:
+     * the number of its separators lower than or equal to key.
+     */
+    private int childPosition(final int node, final KType key) {
+
+        final KType[] separators = Intrinsics.<KType[]> cast(this.separators);
+
+        final int base = node * KTypeVTypeSortedMap.NODE_SIZE;
+
+        int low = base;
+        int high = base + this.innerSizes[node] - 2;
+
+        while (low <= high) {
+
+            final int mid = (low + high) >>> 1;
+
+            if (Intrinsics.<KType> isCompSupUnchecked(separators[mid], key)) {
+
+                high = mid - 1;
+            } else {
+
+                low = mid + 1;
+            }
+        }
+
+        return low - base;
+    }
+
+    /**
+     * Binary search of key in keys[from; to[.
+     * @return the index of key, or ~(the index where to insert it).
+     */
+    private int search(final KType key, final int from, final int to) {
+
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+
+        int low = from;
+        int high = to - 1;
+
+        while (low <= high) {
+
+            final int mid = (low + high) >>> 1;
+            final KType midKey = keys[mid];
+
+            if (Intrinsics.<KType> isCompInfUnchecked(midKey, key)) {
+
+                low = mid + 1;
+            } else if (Intrinsics.<KType> isCompSupUnchecked(midKey, key)) {
+
+                high = mid - 1;
+            } else {
+
+                return mid;
+            }
+        }
+
+        return ~low;
+    }
+
+    /**
+     * @return the index in keys of the greatest key lower than key (or equal to key if inclusive), or -1 if there is none.
+     */
+    private int lowerIndexOf(final KType key, final boolean inclusive) {
+
+        final int[] children = this.children;
+
+        //nearest subtree on the left of the path, holding lower keys only
+        int leftNode = -1;
+        int leftLevel = 0;
+
+        int node = this.root;
+
+        for (int level = this.height; level > 0; level--) {
+
+            final int base = node * KTypeVTypeSortedMap.NODE_SIZE;
+            final int position = childPosition(node, key);
+
+            if (position > 0) {
+
+                leftNode = children[base + position - 1];
+                leftLevel = level - 1;
+            }
+
+            node = children[base + position];
+        }
+
+        final int base = node * KTypeVTypeSortedMap.NODE_SIZE;
+
+        int index = search(key, base, base + this.leafSizes[node]);
+
+        if (index >= 0 && inclusive) {
+
+            return index;
+        }
+
+        if (index < 0) {
+
+            index = ~index;
+        }
+
+        if (index > base) {
+
+            return index - 1;
+        }
+
+        return leftNode == -1 ? -1 : lastIndexOf(leftNode, leftLevel);
+    }
+
+    /**
+     * @return the index in keys of the lowest key greater than key (or equal to key if inclusive), or -1 if there is none.
+     */
+    private int higherIndexOf(final KType key, final boolean inclusive) {
+
+        final int leaf = leafOf(key);
+        final int base = leaf * KTypeVTypeSortedMap.NODE_SIZE;
+
+        int index = search(key, base, base + this.leafSizes[leaf]);
+
+        if (index >= 0) {
+
+            if (inclusive) {
+                return index;
+            }
+
+            index++;
+        } else {
+
+            index = ~index;
+        }
+
+        if (index < base + this.leafSizes[leaf]) {
+
+            return index;
+        }
+
+        //leaves other than the root are never empty
+        final int next = this.nextLeaves[leaf];
+
+        return next == -1 ? -1 : next * KTypeVTypeSortedMap.NODE_SIZE;
+    }
+
+    /**
+     * @throws IndexOutOfBoundsException if index is not the index of an entry in its leaf.
+     */
+    private void checkIndex(final int index) {
+
+        if (index < 0 || index >= this.keys.length
+                || (index % KTypeVTypeSortedMap.NODE_SIZE) >= this.leafSizes[index / KTypeVTypeSortedMap.NODE_SIZE]) {
+
+            throw new IndexOutOfBoundsException("Index " + index + " is not the index of an entry.");
+        }
+    }
+
+    /**
+     * Insert key and value at index of a non-full leaf.
+     */
+    private void insertInLeaf(final int leaf, final int index, final KType key, final VType value) {
+
+        final int end = leaf * KTypeVTypeSortedMap.NODE_SIZE + this.leafSizes[leaf];
+
+        System.arraycopy(this.keys, index, this.keys, index + 1, end - index);
+        System.arraycopy(this.values, index, this.values, index + 1, end - index);
+
+        this.keys[index] = key;
+        this.values[index] = value;
+        this.leafSizes[leaf]++;
+    }
+
+    /**
+     * Split the full leaf in two, insert key and value at position of the leaf, then insert the new leaf
+     * in the parents along the path, splitting them in turn if needed.
+     */
+    private void splitLeaf(final int leaf, final int position, final KType key, final VType value) {
+
+        final int newLeaf = allocateLeaf();
+
+        final int base = leaf * KTypeVTypeSortedMap.NODE_SIZE;
+        final int newBase = newLeaf * KTypeVTypeSortedMap.NODE_SIZE;
+
+        //appending to the last leaf, as for ascending insertions: keep it full.
+        final int moved = (position == KTypeVTypeSortedMap.NODE_SIZE && this.nextLeaves[leaf] == -1) ? 0
+                : KTypeVTypeSortedMap.NODE_SIZE - KTypeVTypeSortedMap.MIN_NODE_SIZE;
+
+        final int kept = KTypeVTypeSortedMap.NODE_SIZE - moved;
+
+        System.arraycopy(this.keys, base + kept, this.keys, newBase, moved);
+        System.arraycopy(this.values, base + kept, this.values, newBase, moved);
+
+        /*! #if ($TemplateOptions.KTypeGeneric) !*/
+        KTypeArrays.blankArray(this.keys, base + kept, base + KTypeVTypeSortedMap.NODE_SIZE);
+        /*! #end !*/
+
+        /*! #if ($TemplateOptions.VTypeGeneric) !*/
+        VTypeArrays.blankArray(this.values, base + kept, base + KTypeVTypeSortedMap.NODE_SIZE);
+        /*! #end !*/
+
+        this.leafSizes[leaf] = kept;
+        this.leafSizes[newLeaf] = moved;
+        this.nextLeaves[newLeaf] = this.nextLeaves[leaf];
+        this.nextLeaves[leaf] = newLeaf;
+
+        if (position < kept) {
+
+            insertInLeaf(leaf, base + position, key, value);
+        } else {
+
+            insertInLeaf(newLeaf, newBase + position - kept, key, value);
+        }
+
+        final int[] pathNodes = this.pathNodes;
+        final int[] pathPositions = this.pathPositions;
+
+        KType separator = Intrinsics.<KType> cast(this.keys[newBase]);
+        int child = newLeaf;
+
+        for (int level = 1; level <= this.height; level++) {
+
+            final int node = pathNodes[level];
+            final int childPosition = pathPositions[level];
+
+            if (this.innerSizes[node] < KTypeVTypeSortedMap.NODE_SIZE) {
+
+                insertInInner(node, childPosition, separator, child);
+                return;
+            }
+
+            //split the full inner node: the new one takes the upper half of the children,
+            //the separator between the halves moves up.
+            final int newNode = allocateInner();
+
+            final int nodeBase = node * KTypeVTypeSortedMap.NODE_SIZE;
+            final int newNodeBase = newNode * KTypeVTypeSortedMap.NODE_SIZE;
+            final int half = KTypeVTypeSortedMap.MIN_NODE_SIZE;
+
+            System.arraycopy(this.children, nodeBase + half, this.children, newNodeBase, KTypeVTypeSortedMap.NODE_SIZE - half);
+            System.arraycopy(this.separators, nodeBase + half, this.separators, newNodeBase, KTypeVTypeSortedMap.NODE_SIZE - half - 1);
+
+            final KType middle = Intrinsics.<KType> cast(this.separators[nodeBase + half - 1]);
+
+            /*! #if ($TemplateOptions.KTypeGeneric) !*/
+            KTypeArrays.blankArray(this.separators, nodeBase + half - 1, nodeBase + KTypeVTypeSortedMap.NODE_SIZE - 1);
+            /*! #end !*/
+
+            this.innerSizes[node] = half;
+            this.innerSizes[newNode] = KTypeVTypeSortedMap.NODE_SIZE - half;
+
+            if (childPosition < half) {
+
+                insertInInner(node, childPosition, separator, child);
+            } else {
+
+                insertInInner(newNode, childPosition - half, separator, child);
+            }
+
+            separator = middle;
+            child = newNode;
+        }
+
+        //the root was split: grow a new root
+        final int newRoot = allocateInner();
+        final int rootBase = newRoot * KTypeVTypeSortedMap.NODE_SIZE;
+
+        this.children[rootBase] = this.root;
+        this.children[rootBase + 1] = child;
+        this.separators[rootBase] = separator;
+        this.innerSizes[newRoot] = 2;
+
+        this.root = newRoot;
+        this.height++;
+    }
+
+    /**
+     * Insert separator and child after the child at position of a non-full inner node.
+     */
+    private void insertInInner(final int node, final int position, final KType separator, final int child) {
+
+        final int base = node * KTypeVTypeSortedMap.NODE_SIZE;
+        final int moved = this.innerSizes[node] - 1 - position;
+
+        System.arraycopy(this.separators, base + position, this.separators, base + position + 1, moved);
+        System.arraycopy(this.children, base + position + 1, this.children, base + position + 2, moved);
+
+        this.separators[base + position] = separator;
+        this.children[base + position + 1] = child;
+        this.innerSizes[node]++;
+    }
+
+    /**
+     * Remove the entry at index of leaf.
+     */
+    private void removeFromLeaf(final int leaf, final int index) {
+
+        final int last = leaf * KTypeVTypeSortedMap.NODE_SIZE + this.leafSizes[leaf] - 1;
+
+        System.arraycopy(this.keys, index + 1, this.keys, index, last - index);
+        System.arraycopy(this.values, index + 1, this.values, index, last - index);
+
+        /*! #if ($TemplateOptions.KTypeGeneric) !*/
+        this.keys[last] = null;
+        /*! #end !*/
+
+        /*! #if ($TemplateOptions.VTypeGeneric) !*/
+        this.values[last] = null;
+        /*! #end !*/
+
+        this.leafSizes[leaf]--;
+    }
+
+    /**
+     * Remove the separator at position of an inner node, and the child after it.
+     */
+    private void removeFromInner(final int node, final int position) {
+
+        final int base = node * KTypeVTypeSortedMap.NODE_SIZE;
+        final int moved = this.innerSizes[node] - 2 - position;
+
+        System.arraycopy(this.separators, base + position + 1, this.separators, base + position, moved);
+        System.arraycopy(this.children, base + position + 2, this.children, base + position + 1, moved);
+
+        /*! #if ($TemplateOptions.KTypeGeneric) !*/
+        this.separators[base + this.innerSizes[node] - 2] = null;
+        /*! #end !*/
+
+        this.innerSizes[node]--;
+    }
+
+    /**
+     * Restore the minimum size of the underflowing leaf, at the end of the path, by redistributing the entries of its
+     * sibling, or merging with it, then the parents along the path in turn.
+     */
+    private void rebalance(final int leaf) {
+
+        final int[] pathNodes = this.pathNodes;
+        final int[] pathPositions = this.pathPositions;
+
+        int node = leaf;
+
+        for (int level = 1; level <= this.height; level++) {
+
+            final int parent = pathNodes[level];
+            final int position = pathPositions[level];
+            final int parentBase = parent * KTypeVTypeSortedMap.NODE_SIZE;
+
+            //node and its left sibling if any, else its right sibling.
+            final int left;
+            final int right;
+            final int separatorPosition;
+
+            if (position > 0) {
+
+                left = this.children[parentBase + position - 1];
+                right = node;
+                separatorPosition = position - 1;
+            } else {
+
+                left = node;
+                right = this.children[parentBase + 1];
+                separatorPosition = 0;
+            }
+
+            if (level == 1) {
+
+                if (this.leafSizes[left] + this.leafSizes[right] > KTypeVTypeSortedMap.NODE_SIZE) {
+
+                    redistributeLeaves(left, right, parentBase + separatorPosition);
+                    return;
+                }
+
+                mergeLeaves(left, right);
+            } else {
+
+                if (this.innerSizes[left] + this.innerSizes[right] > KTypeVTypeSortedMap.NODE_SIZE) {
+
+                    rotateInners(left, right, node == right, parentBase + separatorPosition);
+                    return;
+                }
+
+                mergeInners(left, right, Intrinsics.<KType> cast(this.separators[parentBase + separatorPosition]));
+            }
+
+            removeFromInner(parent, separatorPosition);
+
+            if (level == this.height) {
+
+                //the root only keeps its last child: it becomes the root
+                if (this.innerSizes[parent] == 1) {
+
+                    this.root = this.children[parentBase];
+                    freeInner(parent);
+                    this.height--;
+                }
+
+                return;
+            }
+
+            if (this.innerSizes[parent] >= KTypeVTypeSortedMap.MIN_NODE_SIZE) {
+
+                return;
+            }
+
+            node = parent;
+        }
+    }
+
+    /**
+     * Share evenly the entries of the adjacent leaves left and right, updating their separator at separatorIndex.
+     */
+    private void redistributeLeaves(final int left, final int right, final int separatorIndex) {
+
+        final int leftBase = left * KTypeVTypeSortedMap.NODE_SIZE;
+        final int rightBase = right * KTypeVTypeSortedMap.NODE_SIZE;
+
+        final int leftSize = this.leafSizes[left];
+        final int rightSize = this.leafSizes[right];
+        final int newLeftSize = (leftSize + rightSize) / 2;
+
+        if (newLeftSize < leftSize) {
+
+            //move the tail of left at the head of right
+            final int moved = leftSize - newLeftSize;
+
+            System.arraycopy(this.keys, rightBase, this.keys, rightBase + moved, rightSize);
+            System.arraycopy(this.values, rightBase, this.values, rightBase + moved, rightSize);
+            System.arraycopy(this.keys, leftBase + newLeftSize, this.keys, rightBase, moved);
+            System.arraycopy(this.values, leftBase + newLeftSize, this.values, rightBase, moved);
+
+            /*! #if ($TemplateOptions.KTypeGeneric) !*/
+            KTypeArrays.blankArray(this.keys, leftBase + newLeftSize, leftBase + leftSize);
+            /*! #end !*/
+
+            /*! #if ($TemplateOptions.VTypeGeneric) !*/
+            VTypeArrays.blankArray(this.values, leftBase + newLeftSize, leftBase + leftSize);
+            /*! #end !*/
+        } else {
+
+            //move the head of right at the tail of left
+            final int moved = newLeftSize - leftSize;
+
+            System.arraycopy(this.keys, rightBase, this.keys, leftBase + leftSize, moved);
+            System.arraycopy(this.values, rightBase, this.values, leftBase + leftSize, moved);
+            System.arraycopy(this.keys, rightBase + moved, this.keys, rightBase, rightSize - moved);
+            System.arraycopy(this.values, rightBase + moved, this.values, rightBase, rightSize - moved);
+
+            /*! #if ($TemplateOptions.KTypeGeneric) !*/
+            KTypeArrays.blankArray(this.keys, rightBase + rightSize - moved, rightBase + rightSize);
+            /*! #end !*/
+
+            /*! #if ($TemplateOptions.VTypeGeneric) !*/
+            VTypeArrays.blankArray(this.values, rightBase + rightSize - moved, rightBase + rightSize);
+            /*! #end !*/
+        }
+
+        this.leafSizes[left] = newLeftSize;
+        this.leafSizes[right] = leftSize + rightSize - newLeftSize;
+
+        this.separators[separatorIndex] = this.keys[rightBase];
+    }
+
+    /**
+     * Append the entries of leaf right to its left neighbour left, then free right.
+     */
+    private void mergeLeaves(final int left, final int right) {
+
+        final int leftEnd = left * KTypeVTypeSortedMap.NODE_SIZE + this.leafSizes[left];
+        final int rightBase = right * KTypeVTypeSortedMap.NODE_SIZE;
+        final int rightSize = this.leafSizes[right];
+
+        System.arraycopy(this.keys, rightBase, this.keys, leftEnd, rightSize);
+        System.arraycopy(this.values, rightBase, this.values, leftEnd, rightSize);
+
+        this.leafSizes[left] += rightSize;
+        this.nextLeaves[left] = this.nextLeaves[right];
+
+        freeLeaf(right);
+    }
+
+    /**
+     * Move one child from the adjacent inner nodes left and right to the other, through their separator at separatorIndex:
+     * to right if toRight, else to left.
+     */
+    private void rotateInners(final int left, final int right, final boolean toRight, final int separatorIndex) {
+
+        final int leftBase = left * KTypeVTypeSortedMap.NODE_SIZE;
+        final int rightBase = right * KTypeVTypeSortedMap.NODE_SIZE;
+
+        final int leftSize = this.innerSizes[left];
+        final int rightSize = this.innerSizes[right];
+
+        if (toRight) {
+
+            System.arraycopy(this.separators, rightBase, this.separators, rightBase + 1, rightSize - 1);
+            System.arraycopy(this.children, rightBase, this.children, rightBase + 1, rightSize);
+
+            this.children[rightBase] = this.children[leftBase + leftSize - 1];
+            this.separators[rightBase] = this.separators[separatorIndex];
+            this.separators[separatorIndex] = this.separators[leftBase + leftSize - 2];
+
+            /*! #if ($TemplateOptions.KTypeGeneric) !*/
+            this.separators[leftBase + leftSize - 2] = null;
+            /*! #end !*/
+
+            this.innerSizes[left]--;
+            this.innerSizes[right]++;
+        } else {
+
+            this.separators[leftBase + leftSize - 1] = this.separators[separatorIndex];
+            this.children[leftBase + leftSize] = this.children[rightBase];
+            this.separators[separatorIndex] = this.separators[rightBase];
+
+            System.arraycopy(this.separators, rightBase + 1, this.separators, rightBase, rightSize - 2);
+            System.arraycopy(this.children, rightBase + 1, this.children, rightBase, rightSize - 1);
+
+            /*! #if ($TemplateOptions.KTypeGeneric) !*/
+            this.separators[rightBase + rightSize - 2] = null;
+            /*! #end !*/
+
+            this.innerSizes[left]++;
+            this.innerSizes[right]--;
+        }
+    }
+
+    /**
+     * Append the separator of the adjacent inner nodes left and right, then the separators and children of right to left,
+     * then free right.
+     */
+    private void mergeInners(final int left, final int right, final KType separator) {
+
+        final int leftBase = left * KTypeVTypeSortedMap.NODE_SIZE;
+        final int rightBase = right * KTypeVTypeSortedMap.NODE_SIZE;
+
+        final int leftSize = this.innerSizes[left];
+        final int rightSize = this.innerSizes[right];
+
+        this.separators[leftBase + leftSize - 1] = separator;
+
+        System.arraycopy(this.separators, rightBase, this.separators, leftBase + leftSize, rightSize - 1);
+        System.arraycopy(this.children, rightBase, this.children, leftBase + leftSize, rightSize);
+
+        this.innerSizes[left] += rightSize;
+
+        freeInner(right);
+    }
+
+    /**
+     * @return a new empty leaf, reusing a free one if any, else growing the leaves arrays if needed.
+     */
+    private int allocateLeaf() {
+
+        int leaf = this.freeLeaves;
+
+        if (leaf != -1) {
+
+            this.freeLeaves = this.nextLeaves[leaf];
+        } else {
+
+            if (this.leafCount == this.leafSizes.length) {
+
+                final int newLength = growNodes(this.leafCount);
+
+                try {
+                    final KType[] newKeys = Intrinsics.<KType> newArray(newLength * KTypeVTypeSortedMap.NODE_SIZE);
+                    final VType[] newValues = Intrinsics.<VType> newArray(newLength * KTypeVTypeSortedMap.NODE_SIZE);
+                    final int[] newLeafSizes = new int[newLength];
+                    final int[] newNextLeaves = new int[newLength];
+
+                    System.arraycopy(this.keys, 0, newKeys, 0, this.keys.length);
+                    System.arraycopy(this.values, 0, newValues, 0, this.values.length);
+                    System.arraycopy(this.leafSizes, 0, newLeafSizes, 0, this.leafCount);
+                    System.arraycopy(this.nextLeaves, 0, newNextLeaves, 0, this.leafCount);
+
+                    this.keys = newKeys;
+                    this.values = newValues;
+                    this.leafSizes = newLeafSizes;
+                    this.nextLeaves = newNextLeaves;
+
+                } catch (final OutOfMemoryError e) {
+
+                    throw new BufferAllocationException(
+                            "Not enough memory to allocate buffers to grow from %d -> %d elements",
+                            e,
+                            this.leafCount * KTypeVTypeSortedMap.NODE_SIZE,
+                            newLength * KTypeVTypeSortedMap.NODE_SIZE);
+                }
+            }
+
+            leaf = this.leafCount++;
+        }
+
+        this.leafSizes[leaf] = 0;
+        this.nextLeaves[leaf] = -1;
+
+        return leaf;
+    }
+
+    /**
+     * Chain the emptied leaf in the free leaves.
+     */
+    private void freeLeaf(final int leaf) {
+
+        final int base = leaf * KTypeVTypeSortedMap.NODE_SIZE;
+
+        /*! #if ($TemplateOptions.KTypeGeneric) !*/
+        KTypeArrays.blankArray(this.keys, base, base + KTypeVTypeSortedMap.NODE_SIZE);
+        /*! #end !*/
+
+        /*! #if ($TemplateOptions.VTypeGeneric) !*/
+        VTypeArrays.blankArray(this.values, base, base + KTypeVTypeSortedMap.NODE_SIZE);
+        /*! #end !*/
+
+        this.leafSizes[leaf] = 0;
+        this.nextLeaves[leaf] = this.freeLeaves;
+        this.freeLeaves = leaf;
+    }
+
+    /**
+     * @return a new empty inner node, reusing a free one if any, else growing the inner nodes arrays if needed.
+     */
+    private int allocateInner() {
+
+        int node = this.freeInners;
+
+        if (node != -1) {
+
+            this.freeInners = this.children[node * KTypeVTypeSortedMap.NODE_SIZE];
+        } else {
+
+            if (this.innerCount == this.innerSizes.length) {
+
+                final int newLength = growNodes(this.innerCount);
+
+                try {
+                    final KType[] newSeparators = Intrinsics.<KType> newArray(newLength * KTypeVTypeSortedMap.NODE_SIZE);
+                    final int[] newChildren = new int[newLength * KTypeVTypeSortedMap.NODE_SIZE];
+                    final int[] newInnerSizes = new int[newLength];
+
+                    System.arraycopy(this.separators, 0, newSeparators, 0, this.separators.length);
+                    System.arraycopy(this.children, 0, newChildren, 0, this.children.length);
+                    System.arraycopy(this.innerSizes, 0, newInnerSizes, 0, this.innerCount);
+
+                    this.separators = newSeparators;
+                    this.children = newChildren;
+                    this.innerSizes = newInnerSizes;
+
+                } catch (final OutOfMemoryError e) {
+
+                    throw new BufferAllocationException(
+                            "Not enough memory to allocate buffers to grow from %d -> %d elements",
+                            e,
+                            this.innerCount * KTypeVTypeSortedMap.NODE_SIZE,
+                            newLength * KTypeVTypeSortedMap.NODE_SIZE);
+                }
+            }
+
+            node = this.innerCount++;
+        }
+
+        this.innerSizes[node] = 0;
+
+        return node;
+    }
+
+    /**
+     * Chain the emptied inner node in the free inner nodes.
+     */
+    private void freeInner(final int node) {
+
+        final int base = node * KTypeVTypeSortedMap.NODE_SIZE;
+
+        /*! #if ($TemplateOptions.KTypeGeneric) !*/
+        KTypeArrays.blankArray(this.separators, base, base + KTypeVTypeSortedMap.NODE_SIZE);
+        /*! #end !*/
+
+        this.innerSizes[node] = 0;
+        this.children[base] = this.freeInners;
+        this.freeInners = node;
+    }
+
+    /**
+     * @return the new number of nodes of arrays holding count nodes.
+     * @throws BufferAllocationException if the arrays can't hold more nodes.
+     */
+    private static int growNodes(final int count) {
+
+        final int maxNodes = Integer.MAX_VALUE / KTypeVTypeSortedMap.NODE_SIZE;
+
+        if (count >= maxNodes) {
+
+            throw new BufferAllocationException("Maximum array size exceeded (elements: %d)",
+                    count * KTypeVTypeSortedMap.NODE_SIZE);
+        }
+
+        return (int) Math.min((long) count * 2L + 1L, maxNodes);
+    }
+}
@@ -0,0 +1,864 @@
+package com.carrotsearch.hppcrt.maps;
+
+import com.carrotsearch.hppcrt.*;
+import com.carrotsearch.hppcrt.predicates.*;
+import com.carrotsearch.hppcrt.procedures.*;
+import com.carrotsearch.hppcrt.hash.*;
+
+/*! #import("com/carrotsearch/hppcrt/Intrinsics.java") !*/
+/**
+ * A hash map of <code>KType</code> to <code>VType</code>, implemented using open
+ * addressing in the "Swiss table" way: every slot has a control byte holding either its state (empty or deleted)
+ * or a 7-bit fragment of the hash of its key. Control bytes are packed by groups of {@link SwissGroups#GROUP_SIZE}
+ * in {@link #ctrl}, and a lookup compares the fragment against a whole group at once, probing groups in a triangular sequence.
+ * Keys are only read on fragment hits, so that negative lookups rarely touch the {@link #keys} array.
+ * <p>
+ * Compared to {@link KTypeVTypeHashMap}, removals leave tombstones instead of shifting keys,
+ * and no hash cache is needed for any key type. This is most profitable when keys are costly to compare
+#if ($TemplateOptions.KTypeGeneric)
+ * (<code>equals()</code> is only called on fragment hits),
+#end
+ * or when lookups of absent keys dominate.
+ * </p>
+ *
+#if ($TemplateOptions.KTypeGeneric)
+ * <p> As in {@link KTypeVTypeHashMap}, the hashing strategy can be changed
+ * by overriding ({@link #equalKeys(Object, Object)} and {@link #hashKey(Object)}) together.
+ * </p>
+ * <p>This implementation supports <code>null</code> keys.</p>
+#end
+#if ($TemplateOptions.VTypeGeneric)
+ * <p>This implementation supports <code>null</code> values.</p>
+#end
+ */
+/*! ${TemplateOptions.generatedAnnotation} !*/
+public class KTypeVTypeSwissHashMap<KType, VType> implements Cloneable
+{
+    protected VType defaultValue = Intrinsics.<VType> empty();
+
+    /**
+     * Control bytes of the slots, by groups of {@link SwissGroups#GROUP_SIZE}, see {@link SwissGroups}.
+     */
+    public long[] ctrl;
+
+    /**
+     * Hash-indexed array holding all keys.
+     * <p>
+     * Direct map iteration: iterate  {keys[i], values[i]} for i in [0; keys.length[ where keys[i] != 0/null, then also
+     * {0/null, {@link #allocatedDefaultKeyValue} } is in the map if {@link #allocatedDefaultKey} = true.
+     * </p>
+     */
+    public/*! #if ($TemplateOptions.KTypePrimitive)
+          KType []
+          #else !*/
+    Object[]
+            /*! #end !*/
+            keys;
+
+    /**
+     * Hash-indexed array holding all values associated to the keys.
+     * stored in {@link #keys}.
+     */
+    public/*! #if ($TemplateOptions.VTypePrimitive)
+          VType []
+          #else !*/
+    Object[]
+            /*! #end !*/
+            values;
+
+    /**
+     * True if key = 0/null is in the map.
+     */
+    public boolean allocatedDefaultKey = false;
+
+    /**
+     * if allocatedDefaultKey = true, contains the associated V to the key = 0/null
+     */
+    public VType allocatedDefaultKeyValue;
+
+    /**
+     * Cached number of assigned slots in {@link #keys}.
+     */
+    protected int assigned;
+
+    /**
+     * Number of {@link SwissGroups#DELETED} slots.
+     */
+    protected int deleted;
+
+    /**
+     * The load factor for this map (fraction of allocated slots
+     * before the buffers must be rehashed or reallocated).
+     */
+    protected final double loadFactor;
+
+    /**
+     * Rehash buffers when assigned + deleted slots hit this value.
+     */
+    private int resizeAt;
+
+    /**
+     * Per-instance perturbation
+     * introduced in rehashing to create a unique key distribution.
+     */
+    protected final int perturbation = Containers.randomSeed32();
+
+    /*! #if ($TemplateOptions.KTypeGeneric) !*/
+
+    /**
+     * Override this method, together with {@link #equalKeys(Object, Object)}
+     * to customize the hashing strategy. Note that this method is guaranteed
+     * to be called with a non-null key argument.
+     * By default, this method calls key.{@link #hashCode()}.
+     */
+    protected int hashKey(final KType key) {
+
+        //default maps on Object.hashCode()
+        return key.hashCode();
+    }
+
+    /**
+     * Override this method together with {@link #hashKey(Object)}
+     * to customize the hashing strategy. Note that this method is guaranteed
+     * to be called with both non-null arguments.
+     * By default, this method calls a.{@link #equals(b)}.
+     */
+    protected boolean equalKeys(final KType a, final KType b) {
+
+        //default maps on Object.equals()
+        return Intrinsics.<KType> equalsNotNull(a, b);
+    }
+
+    /*! #end !*/
+
+    /**
+     * Default constructor: Creates a hash map with the default capacity of {@link Containers#DEFAULT_EXPECTED_ELEMENTS},
+     * load factor of {@link HashContainers#DEFAULT_LOAD_FACTOR}.
+     */
+    public KTypeVTypeSwissHashMap() {
+        this(Containers.DEFAULT_EXPECTED_ELEMENTS);
+    }
+
+    /**
+     * Creates a hash map with the given initial capacity, default load factor of
+     * {@link HashContainers#DEFAULT_LOAD_FACTOR}.
+     */
+    public KTypeVTypeSwissHashMap(final int initialCapacity) {
+        this(initialCapacity, HashContainers.DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Creates a hash map with the given initial capacity,
+     * load factor.
+     *
+     * @param loadFactor The load factor (greater than zero and smaller than 1).
+     */
+    public KTypeVTypeSwissHashMap(final int initialCapacity, final double loadFactor) {
+        this.loadFactor = loadFactor;
+        //take into account of the load factor to guarantee no reallocations before reaching  initialCapacity.
+        allocateBuffers(Math.max(SwissGroups.GROUP_SIZE, HashContainers.minBufferSize(initialCapacity, loadFactor)));
+    }
+
+    /**
+     * Place a given key and value in the map.
+     * @return the previous value associated with key, or the default value if there was none.
+     */
+    public VType put(final KType key, final VType value) {
+
+        if (Intrinsics.<KType> isEmpty(key)) {
+
+            final VType previousValue = this.allocatedDefaultKey ? this.allocatedDefaultKeyValue : this.defaultValue;
+
+            this.allocatedDefaultKeyValue = value;
+            this.allocatedDefaultKey = true;
+
+            return previousValue;
+        }
+
+        final int hash = REHASH(key);
+        final int slot = slotOrFreeSlot(key, hash);
+
+        if (slot >= 0) {
+
+            final VType previousValue = Intrinsics.<VType> cast(this.values[slot]);
+            this.values[slot] = value;
+
+            return previousValue;
+        }
+
+        insertAt(key, value, hash, ~slot);
+
+        return this.defaultValue;
+    }
+
+    /**
+     * Put all the (keys[i], values[i]) pairs, for i in [0; keys.length[.
+     * @return the number of keys that were not in the map before.
+     * @throws IllegalArgumentException if keys and values do not have the same length.
+     */
+    public int putAll(final KType[] keys, final VType[] values) {
+
+        if (keys.length != values.length) {
+
+            throw new IllegalArgumentException("Arrays of keys and values must have an identical length.");
+        }
+
+        final int count = size();
+
+        for (int i = 0; i < keys.length; i++) {
+
+            put(keys[i], values[i]);
+        }
+
+        return size() - count;
+    }
+
+    /**
+     * Put key and value only if key is not in the map.
+     * @return true if key was not in the map, and has been added.
+     */
+    public boolean putIfAbsent(final KType key, final VType value) {
+
+        if (Intrinsics.<KType> isEmpty(key)) {
+
+            if (this.allocatedDefaultKey) {
+
+                return false;
+            }
+
+            this.allocatedDefaultKeyValue = value;
+            this.allocatedDefaultKey = true;
+
+            return true;
+        }
+
+        final int hash = REHASH(key);
+        final int slot = slotOrFreeSlot(key, hash);
+
+        if (slot >= 0) {
+
+            return false;
+        }
+
+        insertAt(key, value, hash, ~slot);
+
+        return true;
+    }
+
+    /*! #if ($TemplateOptions.VTypePrimitive) !*/
+    /**
+     * If <code>key</code> exists, <code>putValue</code> is inserted into the map,
+     * otherwise any existing value is incremented by <code>additionValue</code>.
+     *
+     * @return Returns the current value associated with <code>key</code> (after changes).
+     */
+    public VType putOrAdd(final KType key, VType putValue, final VType incrementValue) {
+
+        if (Intrinsics.<KType> isEmpty(key)) {
+
+            if (this.allocatedDefaultKey) {
+
+                putValue = (VType) (Intrinsics.<VType> add(this.allocatedDefaultKeyValue, incrementValue));
+            }
+
+            this.allocatedDefaultKeyValue = putValue;
+            this.allocatedDefaultKey = true;
+
+            return putValue;
+        }
+
+        //single probe, contrary to containsKey() + get() + put().
+        final int hash = REHASH(key);
+        final int slot = slotOrFreeSlot(key, hash);
+
+        if (slot >= 0) {
+
+            putValue = (VType) (Intrinsics.<VType> add(Intrinsics.<VType> cast(this.values[slot]), incrementValue));
+            this.values[slot] = putValue;
+
+            return putValue;
+        }
+
+        insertAt(key, putValue, hash, ~slot);
+
+        return putValue;
+    }
+
+    /**
+     * Adds <code>incrementValue</code> to any existing value for the given <code>key</code>
+     * or inserts <code>incrementValue</code> if <code>key</code> did not previously exist.
+     *
+     * @return Returns the current value associated with <code>key</code> (after changes).
+     */
+    public VType addTo(final KType key, final VType incrementValue) {
+
+        return putOrAdd(key, incrementValue, incrementValue);
+    }
+
+    /*! #end !*/
+
+    /**
+     * @return the value associated with key, or the default value if key is not in the map.
+     */
+    public VType get(final KType key) {
+
+        if (Intrinsics.<KType> isEmpty(key)) {
+
+            return this.allocatedDefaultKey ? this.allocatedDefaultKeyValue : this.defaultValue;
+        }
+
+        final int slot = findSlot(key, REHASH(key));
+
+        if (slot >= 0) {
+
+            return Intrinsics.<VType> cast(this.values[slot]);
+        }
+
+        return this.defaultValue;
+    }
+
+    /**
+     * @return true if key is in the map.
+     */
+    public boolean containsKey(final KType key) {
+
+        if (Intrinsics.<KType> isEmpty(key)) {
+
+            return this.allocatedDefaultKey;
+        }
+
+        return findSlot(key, REHASH(key)) >= 0;
+    }
+
+    /**
+     * Remove key and its associated value from the map.
+     * The slot becomes empty again if its group still has an empty slot, else a tombstone.
+     * @return the removed value, or the default value if key was not in the map.
+     */
+    public VType remove(final KType key) {
+
+        if (Intrinsics.<KType> isEmpty(key)) {
+
+            if (this.allocatedDefaultKey) {
+
+                final VType previousValue = this.allocatedDefaultKeyValue;
+
+                this.allocatedDefaultKey = false;
+                /*! #if ($TemplateOptions.VTypeGeneric) !*/
+                this.allocatedDefaultKeyValue = null;
+                /*! #end !*/
+
+                return previousValue;
+            }
+
+            return this.defaultValue;
+        }
+
+        final int slot = findSlot(key, REHASH(key));
+
+        if (slot < 0) {
+
+            return this.defaultValue;
+        }
+
+        final VType previousValue = Intrinsics.<VType> cast(this.values[slot]);
+
+        //No probe sequence can have walked past a group which has an empty slot,
+        //so the slot can be made empty again.
+        if (SwissGroups.matchEmpty(this.ctrl[slot >>> 3]) != 0) {
+
+            SwissGroups.set(this.ctrl, slot, SwissGroups.EMPTY);
+        } else {
+
+            SwissGroups.set(this.ctrl, slot, SwissGroups.DELETED);
+            this.deleted++;
+        }
+
+        this.keys[slot] = Intrinsics.<KType> empty();
+
+        /*! #if ($TemplateOptions.VTypeGeneric) !*/
+        this.values[slot] = Intrinsics.<VType> empty();
+        /*! #end !*/
+
+        this.assigned--;
+
+        return previousValue;
+    }
+
+    /**
+     * Clear all keys and values in the container.
+     * <p>Does not release internal buffers.</p>
+     */
+    public void clear() {
+
+        this.assigned = 0;
+        this.deleted = 0;
+
+        this.allocatedDefaultKey = false;
+
+        /*! #if ($TemplateOptions.VTypeGeneric) !*/
+        this.allocatedDefaultKeyValue = null;
+        /*! #end !*/
+
+        java.util.Arrays.fill(this.ctrl, SwissGroups.EMPTY_GROUP);
+
+        //Faster than Arrays.fill(keys, null); // Help the GC.
+        KTypeArrays.blankArray(this.keys, 0, this.keys.length);
+
+        /*! #if ($TemplateOptions.VTypeGeneric) !*/
+        VTypeArrays.blankArray(this.values, 0, this.values.length);
+        /*! #end !*/
+    }
+
+    /**
+     * @return the number of key-value pairs in the map.
+     */
+    public int size() {
+
+        return this.assigned + (this.allocatedDefaultKey ? 1 : 0);
+    }
+
+    /**
+     * @return true if the map is empty.
+     */
+    public boolean isEmpty() {
+
+        return size() == 0;
+    }
+
+    /**
+     * @return the number of keys the map can hold before its buffers are rehashed.
+     */
+    public int capacity() {
+
+        return this.resizeAt;
+    }
+
+    /**
+     * Applies a given procedure to all keys-value pairs in this container.
+     * @return the input procedure.
+     */
+    public <T extends KTypeVTypeProcedure<? super KType, ? super VType>> T forEach(final T procedure) {
+
+        if (this.allocatedDefaultKey) {
+
+            procedure.apply(Intrinsics.<KType> empty(), this.allocatedDefaultKeyValue);
+        }
+
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+        final VType[] values = Intrinsics.<VType[]> cast(this.values);
+
+        for (int i = keys.length - 1; i >= 0; i--) {
+            KType existing;
+            if (!Intrinsics.<KType> isEmpty(existing = keys[i])) {
+                procedure.apply(existing, values[i]);
+            }
+        }
+
+        return procedure;
+    }
+
+    /**
+     * Applies a given predicate to all keys-value pairs in this container,
+     * until the predicate returns <code>false</code>.
+     * @return the input predicate.
+     */
+    public <T extends KTypeVTypePredicate<? super KType, ? super VType>> T forEach(final T predicate) {
+
+        if (this.allocatedDefaultKey) {
+
+            if (!predicate.apply(Intrinsics.<KType> empty(), this.allocatedDefaultKeyValue)) {
+
+                return predicate;
+            }
+        }
+
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+        final VType[] values = Intrinsics.<VType[]> cast(this.values);
+
+        for (int i = keys.length - 1; i >= 0; i--) {
+            KType existing;
+            if (!Intrinsics.<KType> isEmpty(existing = keys[i])) {
+                if (!predicate.apply(existing, values[i])) {
+                    break;
+                }
+            }
+        }
+
+        return predicate;
+    }
+
+    /**
+     * Copy all the key-value pairs into a new {@link KTypeVTypeHashMap}.
+     */
+    public KTypeVTypeHashMap<KType, VType> toHashMap() {
+
+        final KTypeVTypeHashMap<KType, VType> map = new KTypeVTypeHashMap<KType, VType>(size(), this.loadFactor);
+
+        map.setDefaultValue(this.defaultValue);
+
+        forEach(new KTypeVTypeProcedure<KType, VType>() {
+
+            @Override
+            public void apply(final KType key, final VType value) {
+
+                map.put(key, value);
+            }
+        });
+
+        return map;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public KTypeVTypeSwissHashMap<KType, VType> clone() {
+
+        //clone to size() to prevent some cases of exponential sizes,
+        final KTypeVTypeSwissHashMap<KType, VType> cloned = new KTypeVTypeSwissHashMap<KType, VType>(size(), this.loadFactor);
+
+        cloned.defaultValue = this.defaultValue;
+
+        //We must NOT clone because of the independent perturbation seeds
+        forEach(new KTypeVTypeProcedure<KType, VType>() {
+
+            @Override
+            public void apply(final KType key, final VType value) {
+
+                cloned.put(key, value);
+            }
+        });
+
+        return cloned;
+    }
+
+    /**
+     * Convert the contents of this map to a human-friendly string.
+     */
+    @Override
+    public String toString() {
+
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[");
+
+        forEach(new KTypeVTypeProcedure<KType, VType>() {
+
+            boolean first = true;
+
+            @Override
+            public void apply(final KType key, final VType value) {
+
+                if (!this.first) {
+                    buffer.append(", ");
+                }
+                buffer.append(key);
+                buffer.append("=>");
+                buffer.append(value);
+                this.first = false;
+            }
+        });
+
+        buffer.append("]");
+        return buffer.toString();
+    }
+
+    /**
+     * Returns the "default value" value used
+     * in methods returning "default value"
+     */
+    public VType getDefaultValue() {
+
+        return this.defaultValue;
+    }
+
+    /**
+     * Set the "default value" value to be used
+     * in methods returning "default value"
+     */
+    public void setDefaultValue(final VType defaultValue) {
+
+        this.defaultValue = defaultValue;
+    }
+
+    /**
+     * Create a new hash map without providing the full generic signature
+     * (constructor shortcut).
+     */
+    public static <KType, VType> KTypeVTypeSwissHashMap<KType, VType> newInstance() {
+        return new KTypeVTypeSwissHashMap<KType, VType>();
+    }
+
+    /**
+     * Create a new hash map with initial capacity and load factor control.
+     * (constructor shortcut).
+     */
+    public static <KType, VType> KTypeVTypeSwissHashMap<KType, VType> newInstance(final int initialCapacity,
+            final double loadFactor) {
+        return new KTypeVTypeSwissHashMap<KType, VType>(initialCapacity, loadFactor);
+    }
+
+    /**
+     * Creates a hash map from two index-aligned arrays of key-value pairs. Default load factor is used.
+     */
+    public static <KType, VType> KTypeVTypeSwissHashMap<KType, VType> from(final KType[] keys, final VType[] values) {
+
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException("Arrays of keys and values must have an identical length.");
+        }
+
+        final KTypeVTypeSwissHashMap<KType, VType> map = new KTypeVTypeSwissHashMap<KType, VType>(keys.length);
+        map.putAll(keys, values);
+
+        return map;
+    }
+
+    /**
+     * Return the slot of key (not the default key) of the given hash, or -1 if key is not in the map.
+     */
+    private int findSlot(final KType key, final int hash) {
+
+        final long[] ctrl = this.ctrl;
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+        final int groupMask = ctrl.length - 1;
+
+        final int h2 = SwissGroups.h2(hash);
+        final long pattern = SwissGroups.broadcast(h2);
+
+        int g = SwissGroups.h1(hash) & groupMask;
+
+        //triangular probing visits all the groups, since their number is a power of two.
+        for (int step = 1;; step++) {
+
+            final long group = ctrl[g];
+
+            long matches = SwissGroups.matchFragment(group, pattern);
+
+            while (matches != 0) {
+
+                final int index = SwissGroups.lowestMatch(matches);
+                final int slot = (g << 3) + index;
+
+                if (SwissGroups.isFull(group, index, h2)) {
+
+                    final KType existing = keys[slot];
+
+                    if (KEYEQUALS(key, existing)) {
+
+                        return slot;
+                    }
+                }
+
+                matches &= matches - 1;
+            }
+
+            if (SwissGroups.matchEmpty(group) != 0) {
+
+                return -1;
+            }
+
+            g = (g + step) & groupMask;
+        } //end for
+    }
+
+    /**
+     * Return the slot of key (not the default key) of the given hash, or ~(the first free slot
+     * of its probe sequence) if key is not in the map: a single pass for both the lookup and the insertion.
+     */
+    private int slotOrFreeSlot(final KType key, final int hash) {
+
+        final long[] ctrl = this.ctrl;
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+        final int groupMask = ctrl.length - 1;
+
+        final int h2 = SwissGroups.h2(hash);
+        final long pattern = SwissGroups.broadcast(h2);
+
+        int g = SwissGroups.h1(hash) & groupMask;
+        int freeSlot = -1;
+
+        for (int step = 1;; step++) {
+
+            final long group = ctrl[g];
+
+            long matches = SwissGroups.matchFragment(group, pattern);
+
+            while (matches != 0) {
+
+                final int index = SwissGroups.lowestMatch(matches);
+                final int slot = (g << 3) + index;
+
+                if (SwissGroups.isFull(group, index, h2)) {
+
+                    final KType existing = keys[slot];
+
+                    if (KEYEQUALS(key, existing)) {
+
+                        return slot;
+                    }
+                }
+
+                matches &= matches - 1;
+            }
+
+            if (freeSlot < 0) {
+
+                final long free = SwissGroups.matchFree(group);
+
+                if (free != 0) {
+
+                    freeSlot = (g << 3) + SwissGroups.lowestMatch(free);
+                }
+            }
+
+            //an empty slot is also free, so freeSlot is always found here
+            if (SwissGroups.matchEmpty(group) != 0) {
+
+                return ~freeSlot;
+            }
+
+            g = (g + step) & groupMask;
+        } //end for
+    }
+
+    /**
+     * Insert a key known not to be in the map at slot, the first free slot of its probe sequence,
+     * rehashing first if needed.
+     */
+    private void insertAt(final KType key, final VType value, final int hash, int slot) {
+
+        if (SwissGroups.get(this.ctrl, slot) == SwissGroups.EMPTY) {
+
+            if (this.assigned + this.deleted >= this.resizeAt) {
+
+                //grow, or only purge the tombstones if they are a large part of the used slots.
+                final int capacity = this.keys.length;
+
+                rehash(this.assigned >= (this.resizeAt >> 1) ? HashContainers.nextBufferSize(capacity, this.assigned, this.loadFactor) : capacity);
+
+                slot = findFreeSlot(hash);
+            }
+        } else {
+
+            //reuse a tombstone
+            this.deleted--;
+        }
+
+        SwissGroups.set(this.ctrl, slot, SwissGroups.h2(hash));
+        this.keys[slot] = key;
+        this.values[slot] = value;
+        this.assigned++;
+    }
+
+    /**
+     * Return the first free (empty or deleted) slot in the probe sequence of hash.
+     */
+    private int findFreeSlot(final int hash) {
+
+        final long[] ctrl = this.ctrl;
+        final int groupMask = ctrl.length - 1;
+
+        int g = SwissGroups.h1(hash) & groupMask;
+
+        for (int step = 1;; step++) {
+
+            final long free = SwissGroups.matchFree(ctrl[g]);
+
+            if (free != 0) {
+
+                return (g << 3) + SwissGroups.lowestMatch(free);
+            }
+
+            g = (g + step) & groupMask;
+        }
+    }
+
+    /**
+     * Re-insert all the keys into new buffers of capacity slots, dropping the tombstones.
+     */
+    private void rehash(final int capacity) {
+
+        final KType[] oldKeys = Intrinsics.<KType[]> cast(this.keys);
+        final VType[] oldValues = Intrinsics.<VType[]> cast(this.values);
+
+        allocateBuffers(capacity);
+
+        final long[] ctrl = this.ctrl;
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+        final VType[] values = Intrinsics.<VType[]> cast(this.values);
+
+        for (int i = oldKeys.length; --i >= 0;) {
+            KType key;
+            if (!Intrinsics.<KType> isEmpty(key = oldKeys[i])) {
+
+                final int hash = REHASH(key);
+                final int slot = findFreeSlot(hash);
+
+                SwissGroups.set(ctrl, slot, SwissGroups.h2(hash));
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+
+        this.deleted = 0;
+    }
+
+    /**
+     * Allocate internal buffers for a given capacity.
+     *
+     * @param capacity New capacity (must be a power of two, at least {@link SwissGroups#GROUP_SIZE}).
+     */
+    @SuppressWarnings("boxing")
+    private void allocateBuffers(final int capacity) {
+        try {
+
+            final long[] ctrl = new long[capacity / SwissGroups.GROUP_SIZE];
+            java.util.Arrays.fill(ctrl, SwissGroups.EMPTY_GROUP);
+
+            final KType[] keys = Intrinsics.<KType> newArray(capacity);
+            final VType[] values = Intrinsics.<VType> newArray(capacity);
+
+            this.ctrl = ctrl;
+            this.keys = keys;
+            this.values = values;
+
+            //allocate so that there is at least one slot that remains empty
+            //this is compulsory to guarantee proper stop in searching loops
+            this.resizeAt = HashContainers.expandAtCount(capacity, this.loadFactor);
+
+        } catch (final OutOfMemoryError e) {
+
+            throw new BufferAllocationException(
+                    "Not enough memory to allocate buffers to grow from %d -> %d elements",
+                    e,
+                    (this.keys == null) ? 0 : this.keys.length,
+                    capacity);
+        }
+    }
+
+    /*! #if ($TemplateOptions.declareInline("REHASH(value)",
+    "<Object,*>==>BitMixer.mix(hashKey(value) , this.perturbation)",
+    "<*,*>==>BitMixer.mix(value , this.perturbation)")) !*/
+    /**
+     * REHASH method for rehashing the keys.
+     * (inlined in generated code)
+     */
+    private int REHASH(final KType value) {
+
+        return BitMixer.mix(hashKey(value), this.perturbation);
+    }
+
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.declareInline("KEYEQUALS(key1, key2)",
+    "<Object,*>==>equalKeys(key1, key2)",
+    "<*,*>==>Intrinsics.<KType> equalsNotNull(key1, key2)")) !*/
+    /**
+     * macro which hides the applied equality criteria
+     */
+    private boolean KEYEQUALS(final KType key1, final KType key2) {
+
+        return equalKeys(key1, key2);
+    }
+    /*! #end !*/
+}
@@ -1,5 +1,9 @@
 package com.carrotsearch.hppcrt.sets;
 
+import java.io.*;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
 import com.carrotsearch.hppcrt.*;
 import com.carrotsearch.hppcrt.cursors.*;
 import com.carrotsearch.hppcrt.predicates.*;
@@ -29,7 +33,10 @@ import com.carrotsearch.hppcrt.hash.*;
  * are always allocated to the nearest size that is a power of two. When
  * the capacity exceeds the given load factor, the buffer size is doubled.
  * </p>
- * 
+ * <p>
+ * By default, all the keys are rehashed at once into the doubled buffers, which is a latency spike for big sets.
+ * Alternatively the rehash can be incremental, see {@link #setIncrementalRehash(boolean)}.
+ * </p>
  *
 #if ($TemplateOptions.KTypeGeneric)
  * <p>This implementation supports <code>null</code> keys.</p>
@@ -110,6 +117,43 @@ implements KTypeLookupContainer<KType>, KTypeSet<KType>, Cloneable
      */
     private final int perturbation = Containers.randomSeed32();
 
+    /**
+     * Start slots of a block of the batched lookups, preallocated so that they do not generate garbage.
+     */
+    private final int[] lookupSlots = new int[HashContainers.LOOKUP_BATCH_SIZE];
+
+    /**
+     * True if the buffers are rehashed incrementally, see {@link #setIncrementalRehash(boolean)}.
+     */
+    protected boolean incrementalRehash = false;
+
+    /**
+     * During an incremental rehash, the previous keys buffer, holding the keys not migrated
+     * into {@link #keys} yet, else null.
+     */
+    protected/*! #if ($TemplateOptions.KTypePrimitive)
+          KType []
+          #else !*/
+    Object[]
+            /*! #end !*/
+            rehashKeys;
+
+    /**
+     * During an incremental rehash, the number of slots of {@link #rehashKeys} already visited by the migration.
+     */
+    private int rehashSlot;
+
+    /**
+     * Fraction of {@link #capacity()} under which removals shrink the buffers, 0 for never,
+     * see {@link #setShrinkFactor(double)}.
+     */
+    protected double shrinkFactor = 0.0;
+
+    /**
+     * Shrink buffers when the number of keys in {@link #keys} falls under this value.
+     */
+    private int shrinkAt;
+
     /*! #if ($TemplateOptions.KTypeGeneric) !*/
 
     /**
@@ -200,6 +244,11 @@ implements KTypeLookupContainer<KType>, KTypeSet<KType>, Cloneable
             return true;
         }
 
+        if (this.rehashKeys != null) {
+
+            rehashStep(key);
+        }
+
         final int mask = this.keys.length - 1;
 
         final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
@@ -374,6 +423,12 @@ implements KTypeLookupContainer<KType>, KTypeSet<KType>, Cloneable
         //default sentinel value is never in the keys[] array, so never trigger reallocs
         assert (!Intrinsics.<KType> isEmpty(pendingKey));
 
+        if (this.incrementalRehash) {
+
+            expandIncrementally(pendingKey);
+            return;
+        }
+
         // Try to allocate new buffers first. If we OOM, it'll be now without
         // leaving the data structure in an inconsistent state.
         final KType[] oldKeys = Intrinsics.<KType[]> cast(this.keys);
@@ -474,6 +529,207 @@ implements KTypeLookupContainer<KType>, KTypeSet<KType>, Cloneable
         }
     }
 
+    /**
+     * Incremental version of {@link #expandAndAdd}: the current buffer becomes the previous one
+     * ({@link #rehashKeys}), to be migrated little by little into the new buffers by the following operations.
+     */
+    private void expandIncrementally(final KType pendingKey) {
+
+        //the previous migration must be over before starting a new one. As every update migrates
+        //at least HashContainers.REHASH_STEP slots, this is normally the case long ago.
+        //assigned already counts all the keys, so the current buffers cannot overflow.
+        completeRehash();
+
+        final KType[] oldKeys = Intrinsics.<KType[]> cast(this.keys);
+
+        allocateBuffers(HashContainers.nextBufferSize(this.keys.length, this.assigned, this.loadFactor));
+
+        this.rehashKeys = oldKeys;
+        this.rehashSlot = 0;
+
+        //the previous buffer may be completely full with the pending key, so it goes to the new ones.
+        this.assigned++;
+        insertRehashed(pendingKey);
+
+        rehashStep(pendingKey);
+    }
+
+    /**
+     * Make key, if it is in the set, present in {@link #keys} only by migrating the part of its
+     * conflict chain in {@link #rehashKeys}, then migrate at least {@link HashContainers#REHASH_STEP} more slots.
+     */
+    private void rehashStep(final KType key) {
+
+        final KType[] oldKeys = Intrinsics.<KType[]> cast(this.rehashKeys);
+        final int mask = oldKeys.length - 1;
+
+        migrateChain(REHASH(key) & mask);
+
+        int slot = this.rehashSlot;
+        final int stepEnd = Math.min(slot + HashContainers.REHASH_STEP, oldKeys.length);
+
+        while (slot < stepEnd) {
+
+            //skip the migrated slots at once
+            slot += Math.max(1, migrateChain(slot & mask));
+        }
+
+        this.rehashSlot = slot;
+
+        if (slot >= oldKeys.length) {
+
+            this.rehashKeys = null;
+        }
+    }
+
+    /**
+     * Migrate the keys of {@link #rehashKeys} from slot to the next empty slot.
+     * The keys before slot in the same cluster are left in place: their conflict chains end before slot,
+     * so they are still found in {@link #rehashKeys}.
+     * @return the number of migrated keys.
+     */
+    private int migrateChain(int slot) {
+
+        final KType[] oldKeys = Intrinsics.<KType[]> cast(this.rehashKeys);
+        final int mask = oldKeys.length - 1;
+
+        int count = 0;
+        KType key;
+
+        while (!Intrinsics.<KType> isEmpty(key = oldKeys[slot])) {
+
+            insertRehashed(key);
+
+            oldKeys[slot] = Intrinsics.<KType> empty();
+
+            slot = (slot + 1) & mask;
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Insert a key known to be absent from {@link #keys}, without any size check, as in {@link #expandAndAdd}.
+     */
+    private void insertRehashed(KType key) {
+
+        final int mask = this.keys.length - 1;
+
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+
+        int slot = REHASH(key) & mask;
+
+        /*! #if ($RH) !*/
+        final int[] cached = this.hash_cache;
+
+        KType tmpKey;
+        int tmpAllocated;
+        int initial_slot = slot;
+        int dist = 0;
+        int existing_distance;
+        /*! #end !*/
+
+        while (is_allocated(slot, keys)) {
+            /*! #if ($RH) !*/
+            //re-shuffle keys to minimize variance
+            existing_distance = probe_distance(slot, cached);
+
+            if (dist > existing_distance) {
+                //swap current (key, initial_slot) with slot places
+                tmpKey = keys[slot];
+                keys[slot] = key;
+                key = tmpKey;
+
+                tmpAllocated = cached[slot];
+                cached[slot] = initial_slot;
+                initial_slot = tmpAllocated;
+
+                dist = existing_distance;
+            }
+            /*! #end !*/
+
+            slot = (slot + 1) & mask;
+
+            /*! #if ($RH) !*/
+            dist++;
+            /*! #end !*/
+        } //end while
+
+        /*! #if ($RH) !*/
+        cached[slot] = initial_slot;
+        /*! #end !*/
+
+        keys[slot] = key;
+    }
+
+    /**
+     * Rehash all the keys into a new buffer of capacity slots, able to hold them all.
+     */
+    private void rehash(final int capacity) {
+
+        final KType[] oldKeys = Intrinsics.<KType[]> cast(this.keys);
+
+        allocateBuffers(capacity);
+
+        //iterate backwards to minimize the conflict chain length, as in expandAndAdd()
+        for (int i = oldKeys.length; --i >= 0;) {
+            KType key;
+            if (!Intrinsics.<KType> isEmpty(key = oldKeys[i])) {
+
+                insertRehashed(key);
+            }
+        }
+    }
+
+    /**
+     * Complete a pending incremental rehash at once, see {@link #setIncrementalRehash(boolean)}.
+     * This must be called before iterating directly over {@link #keys}. Methods
+     * iterating over the whole set call it by themselves.
+     */
+    public void completeRehash() {
+
+        if (this.rehashKeys != null) {
+
+            final int length = this.rehashKeys.length;
+
+            for (int slot = this.rehashSlot; slot < length; slot++) {
+
+                migrateChain(slot);
+            }
+
+            this.rehashKeys = null;
+        }
+    }
+
+    /**
+     * Enable or disable incremental rehashing: when enabled, the keys are not rehashed all at once
+     * when the buffers are expanded, but the previous buffer is kept and its keys are migrated
+     * by the following add(), contains() and remove() calls, including the batched lookups for each of their keys,
+     * at least {@link HashContainers#REHASH_STEP}
+     * slots at a time, bounding the worst-case latency of these operations.
+     * The price is a second hash computation while the previous buffer exists, and holding both buffers meanwhile.
+     * Methods iterating over the whole set complete a pending rehash first.
+     * Disabling it completes a pending rehash.
+     */
+    public void setIncrementalRehash(final boolean incremental) {
+
+        if (!incremental) {
+
+            completeRehash();
+        }
+
+        this.incrementalRehash = incremental;
+    }
+
+    /**
+     * @return true if the rehash is incremental, see {@link #setIncrementalRehash(boolean)}.
+     */
+    public boolean isIncrementalRehash() {
+
+        return this.incrementalRehash;
+    }
+
     /**
      * Allocate internal buffers for a given capacity.
      *
@@ -498,6 +754,7 @@ implements KTypeLookupContainer<KType>, KTypeSet<KType>, Cloneable
             //allocate so that there is at least one slot that remains allocated = false
             //this is compulsory to guarantee proper stop in searching loops
             this.resizeAt = HashContainers.expandAtCount(capacity, this.loadFactor);
+            this.shrinkAt = HashContainers.shrinkAtCount(capacity, this.loadFactor, this.shrinkFactor);
         } catch (final OutOfMemoryError e) {
 
             throw new BufferAllocationException(
@@ -533,6 +790,11 @@ implements KTypeLookupContainer<KType>, KTypeSet<KType>, Cloneable
             return false;
         }
 
+        if (this.rehashKeys != null) {
+
+            rehashStep(key);
+        }
+
         final int mask = this.keys.length - 1;
 
         final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
@@ -550,6 +812,12 @@ implements KTypeLookupContainer<KType>, KTypeSet<KType>, Cloneable
             if (KEYEQUALS(key, existing)) {
 
                 shiftConflictingKeys(slot);
+
+                if (this.assigned < this.shrinkAt) {
+
+                    trimToSize();
+                }
+
                 return true;
             }
             slot = (slot + 1) & mask;
@@ -642,6 +910,11 @@ implements KTypeLookupContainer<KType>, KTypeSet<KType>, Cloneable
             return this.allocatedDefaultKey;
         }
 
+        if (this.rehashKeys != null) {
+
+            rehashStep(key);
+        }
+
         final int mask = this.keys.length - 1;
 
         final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
@@ -669,6 +942,102 @@ implements KTypeLookupContainer<KType>, KTypeSet<KType>, Cloneable
         return false;
     }
 
+    /**
+     * Batched {@link #contains(KType)}: <code>results[i] = contains(queries[i])</code> for i in [offset; offset + length[.
+     * <p>
+     * The queries are processed by blocks of {@link HashContainers#LOOKUP_BATCH_SIZE}: the start slots of
+     * a whole block are computed first, as a sequence of independent hash computations, then all the block is probed.
+     * This amortizes the hashing over the block and lets the CPU overlap it with the (likely cache-missing) probes.
+     * </p>
+     * @return the number of queries found.
+     * @throws IndexOutOfBoundsException if [offset; offset + length[ is out of queries or results.
+     */
+    public int contains(final KType[] queries, final int offset, final int length, final boolean[] results) {
+
+        HashContainers.checkBatchRange(offset, length, queries.length, results.length);
+
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+        final int mask = keys.length - 1;
+
+        /*! #if ($RH) !*/
+        final int[] cached = this.hash_cache;
+        /*! #end !*/
+
+        final int[] slots = this.lookupSlots;
+
+        final int end = offset + length;
+        int found = 0;
+
+        for (int start = offset; start < end; start += slots.length) {
+
+            final int batchEnd = Math.min(end, start + slots.length);
+
+            //1) hash the whole batch, -1 meaning the default key
+            for (int i = start; i < batchEnd; i++) {
+
+                final KType key = queries[i];
+
+                if (Intrinsics.<KType> isEmpty(key)) {
+
+                    slots[i - start] = -1;
+                    continue;
+                }
+
+                if (this.rehashKeys != null) {
+
+                    //as in contains(KType), before the probes of the batch
+                    rehashStep(key);
+                }
+
+                slots[i - start] = REHASH(key) & mask;
+            }
+
+            //2) probe
+            for (int i = start; i < batchEnd; i++) {
+
+                int slot = slots[i - start];
+                boolean result = false;
+
+                if (slot == -1) {
+
+                    result = this.allocatedDefaultKey;
+
+                } else {
+
+                    final KType key = queries[i];
+                    KType existing;
+
+                    /*! #if ($RH) !*/
+                    int dist = 0;
+                    /*! #end !*/
+
+                    while (!Intrinsics.<KType> isEmpty(existing = keys[slot])
+                            /*! #if ($RH) !*/&& dist <= probe_distance(slot, cached) /*! #end !*/) {
+
+                        if (KEYEQUALS(key, existing)) {
+
+                            result = true;
+                            break;
+                        }
+                        slot = (slot + 1) & mask;
+
+                        /*! #if ($RH) !*/
+                        dist++;
+                        /*! #end !*/
+                    } //end while
+                }
+
+                results[i] = result;
+
+                if (result) {
+                    found++;
+                }
+            }
+        }
+
+        return found;
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -681,6 +1050,9 @@ implements KTypeLookupContainer<KType>, KTypeSet<KType>, Cloneable
         // States are always cleared.
         this.allocatedDefaultKey = false;
 
+        //drop a pending incremental rehash
+        this.rehashKeys = null;
+
         //Faster than Arrays.fill(keys, null); // Help the GC.
         KTypeArrays.blankArray(this.keys, 0, this.keys.length);
     }
@@ -702,6 +1074,52 @@ implements KTypeLookupContainer<KType>, KTypeSet<KType>, Cloneable
         return this.resizeAt;
     }
 
+    /**
+     * Shrink the internal buffers to the smallest ones able to hold max(expectedElements, size()) keys
+     * without expansion, if they are smaller than the current ones.
+     */
+    public void shrink(final int expectedElements) {
+
+        completeRehash();
+
+        final int capacity = HashContainers.minBufferSize(Math.max(expectedElements, this.assigned), this.loadFactor);
+
+        if (capacity < this.keys.length) {
+
+            rehash(capacity);
+        }
+    }
+
+    /**
+     * Shrink the internal buffers to the smallest ones able to hold the current keys, see {@link #shrink(int)}.
+     */
+    public void trimToSize() {
+
+        shrink(0);
+    }
+
+    /**
+     * Enable the automatic shrinking of the buffers by the removal methods: the buffers are trimmed to size
+     * as soon as the number of keys falls under shrinkFactor * {@link #capacity()}, so that memory tracks
+     * the current size rather than the peak size. 0 (the default) disables it.
+     * @param shrinkFactor in [0; {@link HashContainers#MAX_SHRINK_FACTOR}].
+     */
+    public void setShrinkFactor(final double shrinkFactor) {
+
+        HashContainers.checkShrinkFactor(shrinkFactor);
+
+        this.shrinkFactor = shrinkFactor;
+        this.shrinkAt = HashContainers.shrinkAtCount(this.keys.length, this.loadFactor, shrinkFactor);
+    }
+
+    /**
+     * @return the shrink factor, see {@link #setShrinkFactor(double)}.
+     */
+    public double getShrinkFactor() {
+
+        return this.shrinkFactor;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -711,6 +1129,8 @@ implements KTypeLookupContainer<KType>, KTypeSet<KType>, Cloneable
 
         //allocated default key has hash = 0
 
+        completeRehash();
+
         final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
 
         for (int i = keys.length; --i >= 0;) {
@@ -825,6 +1245,7 @@ implements KTypeLookupContainer<KType>, KTypeSet<KType>, Cloneable
 
                 @Override
                 public void initialize(final EntryIterator obj) {
+                    completeRehash();
                     obj.cursor.index = KTypeHashSet.this.keys.length + 1;
                 }
 
@@ -857,6 +1278,8 @@ implements KTypeLookupContainer<KType>, KTypeSet<KType>, Cloneable
             procedure.apply(Intrinsics.<KType> empty());
         }
 
+        completeRehash();
+
         final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
 
         //Iterate in reverse for side-stepping the longest conflict chain
@@ -883,6 +1306,8 @@ implements KTypeLookupContainer<KType>, KTypeSet<KType>, Cloneable
             target[count++] = Intrinsics.<KType> empty();
         }
 
+        completeRehash();
+
         final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
 
         for (int i = 0; i < keys.length; i++) {
@@ -908,6 +1333,9 @@ implements KTypeLookupContainer<KType>, KTypeSet<KType>, Cloneable
         //We must NOT clone, because of the independent perturbation seeds
         cloned.addAll(this);
 
+        cloned.incrementalRehash = this.incrementalRehash;
+        cloned.setShrinkFactor(this.shrinkFactor);
+
         return cloned;
     }
 
@@ -924,6 +1352,8 @@ implements KTypeLookupContainer<KType>, KTypeSet<KType>, Cloneable
             }
         }
 
+        completeRehash();
+
         final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
 
         //Iterate in reverse for side-stepping the longest conflict chain
@@ -940,6 +1370,81 @@ implements KTypeLookupContainer<KType>, KTypeSet<KType>, Cloneable
         return predicate;
     }
 
+    /**
+     * @return an empty slot of {@link #keys}, there is always one.
+     */
+    private int emptySlot() {
+
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+
+        int slot = 0;
+
+        while (!Intrinsics.<KType> isEmpty(keys[slot])) {
+            slot++;
+        }
+
+        return slot;
+    }
+
+    /**
+     * Restore the probe chains broken by bulk removals emptying slots in place, in a single sweep
+     * of the buffers instead of one shift of the conflicting keys per removed key:
+     * each remaining key, visited from startSlot, is moved to the first empty slot from its ideal slot.
+     * No key is moved past another one, so the keys stay sorted by ideal slot in their chains, as Robin-hood
+     * hashing requires.
+     * @param startSlot a slot which was already empty before the removals, where no probe chain
+     * can start before and end after.
+     */
+    private void rebuildProbeChains(final int startSlot) {
+
+        final int mask = this.keys.length - 1;
+
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+
+        /*! #if ($RH) !*/
+        final int[] cached = this.hash_cache;
+        /*!  #else
+         final int perturb = this.perturbation;
+         #end !*/
+
+        int slot = startSlot;
+
+        for (int n = mask; n > 0; n--) {
+
+            slot = (slot + 1) & mask;
+
+            final KType existing = keys[slot];
+
+            if (Intrinsics.<KType> isEmpty(existing)) {
+                continue;
+            }
+
+            /*! #if ($RH) !*/
+            final int idealSlotModMask = cached[slot];
+            /*! #else
+            final int idealSlotModMask = REHASH2(existing, perturb) & mask;
+            #end !*/
+
+            //all the slots from the ideal one are already visited, up to slot
+            int target = idealSlotModMask;
+
+            while (target != slot && !Intrinsics.<KType> isEmpty(keys[target])) {
+                target = (target + 1) & mask;
+            }
+
+            if (target != slot) {
+
+                keys[target] = existing;
+
+                /*! #if ($RH) !*/
+                cached[target] = idealSlotModMask;
+                /*! #end !*/
+
+                keys[slot] = Intrinsics.<KType> empty();
+            }
+        } //end for
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -954,19 +1459,34 @@ implements KTypeLookupContainer<KType>, KTypeSet<KType>, Cloneable
             }
         }
 
+        completeRehash();
+
         final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
 
-        for (int i = 0; i < keys.length;) {
-            KType existing;
-            if (!Intrinsics.<KType> isEmpty(existing = keys[i]) && predicate.apply(existing)) {
+        final int startSlot = emptySlot();
+        final int assignedBefore = this.assigned;
+
+        try {
+            for (int i = 0; i < keys.length; i++) {
+                KType existing;
+                if (!Intrinsics.<KType> isEmpty(existing = keys[i]) && predicate.apply(existing)) {
+
+                    keys[i] = Intrinsics.<KType> empty();
+                    this.assigned--;
+                }
+            }
+        } finally {
+            if (this.assigned != assignedBefore) {
 
-                shiftConflictingKeys(i);
-                // Shift, do not increment slot.
-            } else {
-                i++;
+                rebuildProbeChains(startSlot);
             }
         }
 
+        if (this.assigned < this.shrinkAt) {
+
+            trimToSize();
+        }
+
         return before - this.size();
     }
 
@@ -986,6 +1506,110 @@ implements KTypeLookupContainer<KType>, KTypeSet<KType>, Cloneable
         return new KTypeHashSet<KType>(container);
     }
 
+    /**
+     * Write the set to <code>out</code> in a compact binary form: the size, followed by the keys
+     * of the assigned slots only, gathered by chunks of {@link ContainerIO#CHUNK_SIZE} and transferred in bulk.
+     #if ($TemplateOptions.KTypeGeneric)
+     * <code>out</code> must be an {@link ObjectOutput}.
+     #end
+     * @see #readFrom(DataInput)
+     */
+    public void writeTo(final DataOutput out) throws IOException {
+
+        final int size = size();
+
+        out.writeInt(size);
+
+        completeRehash();
+
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+
+        final KType[] chunk = Intrinsics.<KType> newArray(Math.min(size, ContainerIO.CHUNK_SIZE));
+
+        int count = 0;
+
+        if (this.allocatedDefaultKey) {
+
+            chunk[count++] = Intrinsics.<KType> empty();
+        }
+
+        for (int i = 0; i < keys.length; i++) {
+            KType existing;
+            if (!Intrinsics.<KType> isEmpty(existing = keys[i])) {
+
+                if (count == chunk.length) {
+
+                    ContainerIO.write(out, chunk, 0, count);
+                    count = 0;
+                }
+
+                chunk[count++] = existing;
+            }
+        }
+
+        ContainerIO.write(out, chunk, 0, count);
+    }
+
+    /**
+     * Write the set to <code>channel</code>, same format as {@link #writeTo(DataOutput)}.
+     * The channel is not closed.
+     */
+    public void writeTo(final WritableByteChannel channel) throws IOException {
+
+        /*! #if ($TemplateOptions.KTypeGeneric) !*/
+        final ObjectOutputStream out = ContainerIO.newObjectOutput(channel);
+        /*! #else
+        final DataOutputStream out = ContainerIO.newDataOutput(channel);
+        #end !*/
+        writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Create a set from the binary form written by {@link #writeTo(DataOutput)}, the keys
+     * being read by chunks into a set pre-sized to hold them, so that no rehash occurs.
+     #if ($TemplateOptions.KTypeGeneric)
+     * <code>in</code> must be an {@link ObjectInput}.
+     #end
+     */
+    public static <KType> KTypeHashSet<KType> readFrom(final DataInput in) throws IOException {
+
+        final int size = ContainerIO.readSize(in);
+
+        final KTypeHashSet<KType> set = new KTypeHashSet<KType>(size);
+
+        final KType[] chunk = Intrinsics.<KType> newArray(Math.min(size, ContainerIO.CHUNK_SIZE));
+
+        for (int done = 0; done < size;) {
+
+            final int count = Math.min(size - done, chunk.length);
+
+            ContainerIO.read(in, chunk, 0, count);
+
+            for (int i = 0; i < count; i++) {
+
+                set.add(chunk[i]);
+            }
+
+            done += count;
+        }
+
+        return set;
+    }
+
+    /**
+     * Create a set from the binary form written by {@link #writeTo(WritableByteChannel)}.
+     * The channel is not closed.
+     */
+    public static <KType> KTypeHashSet<KType> readFrom(final ReadableByteChannel channel) throws IOException {
+
+        /*! #if ($TemplateOptions.KTypeGeneric) !*/
+        return readFrom(ContainerIO.newObjectInput(channel));
+        /*! #else
+        return readFrom(ContainerIO.newDataInput(channel));
+        #end !*/
+    }
+
     /**
      * Create a new hash set with default parameters (shortcut
      * instead of using a constructor).
@@ -0,0 +1,612 @@
+package com.carrotsearch.hppcrt.sets;
+
+import com.carrotsearch.hppcrt.*;
+import com.carrotsearch.hppcrt.predicates.*;
+import com.carrotsearch.hppcrt.procedures.*;
+import com.carrotsearch.hppcrt.hash.*;
+
+/*! #import("com/carrotsearch/hppcrt/Intrinsics.java") !*/
+/**
+ * A hash set of <code>KType</code>s, implemented using open
+ * addressing in the "Swiss table" way: every slot has a control byte holding either its state (empty or deleted)
+ * or a 7-bit fragment of the hash of its key, matched a group of {@link SwissGroups#GROUP_SIZE} slots at once,
+ * so that negative lookups rarely touch the {@link #keys} array. See {@link SwissGroups} for the layout
+ * of {@link #ctrl}.
+ *
+#if ($TemplateOptions.KTypeGeneric)
+ * <p> As in {@link KTypeHashSet}, the hashing strategy can be changed
+ * by overriding ({@link #equalKeys(Object, Object)} and {@link #hashKey(Object)}) together.
+ * </p>
+ * <p>This implementation supports <code>null</code> keys.</p>
+#end
+ */
+/*! ${TemplateOptions.generatedAnnotation} !*/
+public class KTypeSwissHashSet<KType> implements Cloneable
+{
+    /**
+     * Control bytes of the slots, by groups of {@link SwissGroups#GROUP_SIZE}, see {@link SwissGroups}.
+     */
+    public long[] ctrl;
+
+    /**
+     * Hash-indexed array holding all set entries.
+     * <p>
+     * Direct set iteration: iterate  {keys[i]} for i in [0; keys.length[ where keys[i] != 0/null, then also
+     * {0/null} is in the set if {@link #allocatedDefaultKey} = true.
+     * </p>
+     */
+    public/*! #if ($TemplateOptions.KTypePrimitive)
+          KType []
+          #else !*/
+    Object[]
+            /*! #end !*/
+            keys;
+
+    /**
+     * True if key = 0/null is in the set.
+     */
+    public boolean allocatedDefaultKey = false;
+
+    /**
+     * Cached number of assigned slots in {@link #keys}.
+     */
+    protected int assigned;
+
+    /**
+     * Number of {@link SwissGroups#DELETED} slots.
+     */
+    protected int deleted;
+
+    /**
+     * The load factor for this set (fraction of allocated slots
+     * before the buffers must be rehashed or reallocated).
+     */
+    protected final double loadFactor;
+
+    /**
+     * Rehash buffers when assigned + deleted slots hit this value.
+     */
+    private int resizeAt;
+
+    /**
+     * Per-instance perturbation
+     * introduced in rehashing to create a unique key distribution.
+     */
+    protected final int perturbation = Containers.randomSeed32();
+
+    /*! #if ($TemplateOptions.KTypeGeneric) !*/
+
+    /**
+     * Override this method, together with {@link #equalKeys(Object, Object)}
+     * to customize the hashing strategy. Note that this method is guaranteed
+     * to be called with a non-null key argument.
+     * By default, this method calls key.{@link #hashCode()}.
+     */
+    protected int hashKey(final KType key) {
+
+        //default maps on Object.hashCode()
+        return key.hashCode();
+    }
+
+    /**
+     * Override this method together with {@link #hashKey(Object)}
+     * to customize the hashing strategy. Note that this method is guaranteed
+     * to be called with both non-null arguments.
+     * By default, this method calls a.{@link #equals(b)}.
+     */
+    protected boolean equalKeys(final KType a, final KType b) {
+
+        //default maps on Object.equals()
+        return Intrinsics.<KType> equalsNotNull(a, b);
+    }
+
+    /*! #end !*/
+
+    /**
+     * Default constructor: Creates a hash set with the default capacity of {@link Containers#DEFAULT_EXPECTED_ELEMENTS},
+     * load factor of {@link HashContainers#DEFAULT_LOAD_FACTOR}.
+     */
+    public KTypeSwissHashSet() {
+        this(Containers.DEFAULT_EXPECTED_ELEMENTS);
+    }
+
+    /**
+     * Creates a hash set with the given capacity,
+     * load factor of {@link HashContainers#DEFAULT_LOAD_FACTOR}.
+     */
+    public KTypeSwissHashSet(final int initialCapacity) {
+        this(initialCapacity, HashContainers.DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Creates a hash set with the given capacity and load factor.
+     *
+     * @param loadFactor The load factor (greater than zero and smaller than 1).
+     */
+    public KTypeSwissHashSet(final int initialCapacity, final double loadFactor) {
+        this.loadFactor = loadFactor;
+        //take into account of the load factor to guarantee no reallocations before reaching  initialCapacity.
+        allocateBuffers(Math.max(SwissGroups.GROUP_SIZE, HashContainers.minBufferSize(initialCapacity, loadFactor)));
+    }
+
+    /**
+     * Adds key to the set.
+     * @return true if key was not in the set before.
+     */
+    public boolean add(final KType key) {
+
+        if (Intrinsics.<KType> isEmpty(key)) {
+
+            if (this.allocatedDefaultKey) {
+
+                return false;
+            }
+
+            this.allocatedDefaultKey = true;
+
+            return true;
+        }
+
+        final int hash = REHASH(key);
+
+        if (findSlot(key, hash) >= 0) {
+
+            return false;
+        }
+
+        insertNew(key, hash);
+
+        return true;
+    }
+
+    /**
+     * Adds all elements from the given array to this set.
+     * @return Returns the number of elements actually added as a result of this call.
+     */
+    public int add(final KType... elements) {
+
+        int count = 0;
+
+        for (final KType e : elements) {
+
+            if (add(e)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * @return true if key is in the set.
+     */
+    public boolean contains(final KType key) {
+
+        if (Intrinsics.<KType> isEmpty(key)) {
+
+            return this.allocatedDefaultKey;
+        }
+
+        return findSlot(key, REHASH(key)) >= 0;
+    }
+
+    /**
+     * Remove key from the set.
+     * The slot becomes empty again if its group still has an empty slot, else a tombstone.
+     * @return true if key was in the set.
+     */
+    public boolean remove(final KType key) {
+
+        if (Intrinsics.<KType> isEmpty(key)) {
+
+            final boolean hadDefaultKey = this.allocatedDefaultKey;
+
+            this.allocatedDefaultKey = false;
+
+            return hadDefaultKey;
+        }
+
+        final int slot = findSlot(key, REHASH(key));
+
+        if (slot < 0) {
+
+            return false;
+        }
+
+        //No probe sequence can have walked past a group which has an empty slot,
+        //so the slot can be made empty again.
+        if (SwissGroups.matchEmpty(this.ctrl[slot >>> 3]) != 0) {
+
+            SwissGroups.set(this.ctrl, slot, SwissGroups.EMPTY);
+        } else {
+
+            SwissGroups.set(this.ctrl, slot, SwissGroups.DELETED);
+            this.deleted++;
+        }
+
+        this.keys[slot] = Intrinsics.<KType> empty();
+        this.assigned--;
+
+        return true;
+    }
+
+    /**
+     * Clear all keys in the container.
+     * <p>Does not release internal buffers.</p>
+     */
+    public void clear() {
+
+        this.assigned = 0;
+        this.deleted = 0;
+
+        this.allocatedDefaultKey = false;
+
+        java.util.Arrays.fill(this.ctrl, SwissGroups.EMPTY_GROUP);
+
+        //Faster than Arrays.fill(keys, null); // Help the GC.
+        KTypeArrays.blankArray(this.keys, 0, this.keys.length);
+    }
+
+    /**
+     * @return the number of keys in the set.
+     */
+    public int size() {
+
+        return this.assigned + (this.allocatedDefaultKey ? 1 : 0);
+    }
+
+    /**
+     * @return true if the set is empty.
+     */
+    public boolean isEmpty() {
+
+        return size() == 0;
+    }
+
+    /**
+     * @return the number of keys the set can hold before its buffers are rehashed.
+     */
+    public int capacity() {
+
+        return this.resizeAt;
+    }
+
+    /**
+     * Applies a given procedure to all keys in this container.
+     * @return the input procedure.
+     */
+    public <T extends KTypeProcedure<? super KType>> T forEach(final T procedure) {
+
+        if (this.allocatedDefaultKey) {
+
+            procedure.apply(Intrinsics.<KType> empty());
+        }
+
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+
+        for (int i = keys.length - 1; i >= 0; i--) {
+            KType existing;
+            if (!Intrinsics.<KType> isEmpty(existing = keys[i])) {
+                procedure.apply(existing);
+            }
+        }
+
+        return procedure;
+    }
+
+    /**
+     * Applies a given predicate to all keys in this container,
+     * until the predicate returns <code>false</code>.
+     * @return the input predicate.
+     */
+    public <T extends KTypePredicate<? super KType>> T forEach(final T predicate) {
+
+        if (this.allocatedDefaultKey) {
+
+            if (!predicate.apply(Intrinsics.<KType> empty())) {
+
+                return predicate;
+            }
+        }
+
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+
+        for (int i = keys.length - 1; i >= 0; i--) {
+            KType existing;
+            if (!Intrinsics.<KType> isEmpty(existing = keys[i])) {
+                if (!predicate.apply(existing)) {
+                    break;
+                }
+            }
+        }
+
+        return predicate;
+    }
+
+    /**
+     * Copy the keys of the set into a new array.
+     */
+    public KType[] toArray() {
+
+        final KType[] target = Intrinsics.<KType> newArray(size());
+
+        int count = 0;
+
+        if (this.allocatedDefaultKey) {
+
+            target[count++] = Intrinsics.<KType> empty();
+        }
+
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+
+        for (int i = 0; i < keys.length; i++) {
+            KType existing;
+            if (!Intrinsics.<KType> isEmpty(existing = keys[i])) {
+                target[count++] = existing;
+            }
+        }
+
+        assert count == target.length;
+
+        return target;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public KTypeSwissHashSet<KType> clone() {
+
+        //clone to size() to prevent some cases of exponential sizes,
+        final KTypeSwissHashSet<KType> cloned = new KTypeSwissHashSet<KType>(size(), this.loadFactor);
+
+        //We must NOT clone because of the independent perturbation seeds
+        forEach(new KTypeProcedure<KType>() {
+
+            @Override
+            public void apply(final KType key) {
+
+                cloned.add(key);
+            }
+        });
+
+        return cloned;
+    }
+
+    /**
+     * Convert the contents of this set to a human-friendly string.
+     */
+    @Override
+    public String toString() {
+
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[");
+
+        forEach(new KTypeProcedure<KType>() {
+
+            boolean first = true;
+
+            @Override
+            public void apply(final KType key) {
+
+                if (!this.first) {
+                    buffer.append(", ");
+                }
+                buffer.append(key);
+                this.first = false;
+            }
+        });
+
+        buffer.append("]");
+        return buffer.toString();
+    }
+
+    /**
+     * Create a set from a variable number of arguments or an array of <code>KType</code>.
+     */
+    public static <KType> KTypeSwissHashSet<KType> from(final KType... elements) {
+        final KTypeSwissHashSet<KType> set = new KTypeSwissHashSet<KType>(elements.length);
+        set.add(elements);
+        return set;
+    }
+
+    /**
+     * Create a new hash set without providing the full generic signature (constructor
+     * shortcut).
+     */
+    public static <KType> KTypeSwissHashSet<KType> newInstance() {
+        return new KTypeSwissHashSet<KType>();
+    }
+
+    /**
+     * Create a new hash set with initial capacity and load factor control.
+     * (constructor shortcut).
+     */
+    public static <KType> KTypeSwissHashSet<KType> newInstance(final int initialCapacity, final double loadFactor) {
+        return new KTypeSwissHashSet<KType>(initialCapacity, loadFactor);
+    }
+
+    /**
+     * Return the slot of key (not the default key) of the given hash, or -1 if key is not in the set.
+     */
+    private int findSlot(final KType key, final int hash) {
+
+        final long[] ctrl = this.ctrl;
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+        final int groupMask = ctrl.length - 1;
+
+        final int h2 = SwissGroups.h2(hash);
+        final long pattern = SwissGroups.broadcast(h2);
+
+        int g = SwissGroups.h1(hash) & groupMask;
+
+        //triangular probing visits all the groups, since their number is a power of two.
+        for (int step = 1;; step++) {
+
+            final long group = ctrl[g];
+
+            long matches = SwissGroups.matchFragment(group, pattern);
+
+            while (matches != 0) {
+
+                final int index = SwissGroups.lowestMatch(matches);
+                final int slot = (g << 3) + index;
+
+                if (SwissGroups.isFull(group, index, h2)) {
+
+                    final KType existing = keys[slot];
+
+                    if (KEYEQUALS(key, existing)) {
+
+                        return slot;
+                    }
+                }
+
+                matches &= matches - 1;
+            }
+
+            if (SwissGroups.matchEmpty(group) != 0) {
+
+                return -1;
+            }
+
+            g = (g + step) & groupMask;
+        } //end for
+    }
+
+    /**
+     * Insert a key known not to be in the set, rehashing first if needed.
+     */
+    private void insertNew(final KType key, final int hash) {
+
+        int slot = findFreeSlot(hash);
+
+        if (SwissGroups.get(this.ctrl, slot) == SwissGroups.EMPTY) {
+
+            if (this.assigned + this.deleted >= this.resizeAt) {
+
+                //grow, or only purge the tombstones if they are a large part of the used slots.
+                final int capacity = this.keys.length;
+
+                rehash(this.assigned >= (this.resizeAt >> 1) ? HashContainers.nextBufferSize(capacity, this.assigned, this.loadFactor) : capacity);
+
+                slot = findFreeSlot(hash);
+            }
+        } else {
+
+            //reuse a tombstone
+            this.deleted--;
+        }
+
+        SwissGroups.set(this.ctrl, slot, SwissGroups.h2(hash));
+        this.keys[slot] = key;
+        this.assigned++;
+    }
+
+    /**
+     * Return the first free (empty or deleted) slot in the probe sequence of hash.
+     */
+    private int findFreeSlot(final int hash) {
+
+        final long[] ctrl = this.ctrl;
+        final int groupMask = ctrl.length - 1;
+
+        int g = SwissGroups.h1(hash) & groupMask;
+
+        for (int step = 1;; step++) {
+
+            final long free = SwissGroups.matchFree(ctrl[g]);
+
+            if (free != 0) {
+
+                return (g << 3) + SwissGroups.lowestMatch(free);
+            }
+
+            g = (g + step) & groupMask;
+        }
+    }
+
+    /**
+     * Re-insert all the keys into new buffers of capacity slots, dropping the tombstones.
+     */
+    private void rehash(final int capacity) {
+
+        final KType[] oldKeys = Intrinsics.<KType[]> cast(this.keys);
+
+        allocateBuffers(capacity);
+
+        final long[] ctrl = this.ctrl;
+        final KType[] keys = Intrinsics.<KType[]> cast(this.keys);
+
+        for (int i = oldKeys.length; --i >= 0;) {
+            KType key;
+            if (!Intrinsics.<KType> isEmpty(key = oldKeys[i])) {
+
+                final int hash = REHASH(key);
+                final int slot = findFreeSlot(hash);
+
+                SwissGroups.set(ctrl, slot, SwissGroups.h2(hash));
+                keys[slot] = key;
+            }
+        }
+
+        this.deleted = 0;
+    }
+
+    /**
+     * Allocate internal buffers for a given capacity.
+     *
+     * @param capacity New capacity (must be a power of two, at least {@link SwissGroups#GROUP_SIZE}).
+     */
+    @SuppressWarnings("boxing")
+    private void allocateBuffers(final int capacity) {
+        try {
+
+            final long[] ctrl = new long[capacity / SwissGroups.GROUP_SIZE];
+            java.util.Arrays.fill(ctrl, SwissGroups.EMPTY_GROUP);
+
+            final KType[] keys = Intrinsics.<KType> newArray(capacity);
+
+            this.ctrl = ctrl;
+            this.keys = keys;
+
+            //allocate so that there is at least one slot that remains empty
+            //this is compulsory to guarantee proper stop in searching loops
+            this.resizeAt = HashContainers.expandAtCount(capacity, this.loadFactor);
+
+        } catch (final OutOfMemoryError e) {
+
+            throw new BufferAllocationException(
+                    "Not enough memory to allocate buffers to grow from %d -> %d elements",
+                    e,
+                    (this.keys == null) ? 0 : this.keys.length,
+                    capacity);
+        }
+    }
+
+    /*! #if ($TemplateOptions.declareInline("REHASH(value)",
+    "<Object>==>BitMixer.mix(hashKey(value) , this.perturbation)",
+    "<*>==>BitMixer.mix(value , this.perturbation)")) !*/
+    /**
+     * REHASH method for rehashing the keys.
+     * (inlined in generated code)
+     */
+    private int REHASH(final KType value) {
+
+        return BitMixer.mix(hashKey(value), this.perturbation);
+    }
+
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.declareInline("KEYEQUALS(key1, key2)",
+    "<Object>==>equalKeys(key1, key2)",
+    "<*>==>Intrinsics.<KType> equalsNotNull(key1, key2)")) !*/
+    /**
+     * macro which hides the applied equality criteria
+     */
+    private boolean KEYEQUALS(final KType key1, final KType key2) {
+
+        return equalKeys(key1, key2);
+    }
+    /*! #end !*/
+}
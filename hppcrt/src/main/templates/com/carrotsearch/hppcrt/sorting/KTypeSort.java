@@ -1,6 +1,10 @@
 package com.carrotsearch.hppcrt.sorting;
 
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.carrotsearch.hppcrt.*;
 import com.carrotsearch.hppcrt.strategies.*;
@@ -22,6 +26,43 @@ public final class KTypeSort
 
     private static final int DIST_SIZE_DUALQSORT = 13;
 
+    /**
+     * Minimum range length to sort as a separate task in parallel sorts.
+     */
+    public static final int MIN_LENGTH_FOR_PARALLEL_SORT = 1 << 13;
+
+    /*! #if ($TemplateOptions.KTypePrimitive) !*/
+    /**
+     * Minimum range length to apply radix sort, below which dual-pivot quicksort is faster.
+     */
+    public static final int MIN_LENGTH_FOR_RADIX_SORT = 128;
+
+    /**
+     * Number of 8-bit digits of a <code>KType</code> in radix sort.
+     */
+    /*! #if ($TemplateOptions.isKType("byte"))
+    private static final int RADIX_DIGITS = 1;
+    #elseif ($TemplateOptions.isKType("char", "short"))
+    private static final int RADIX_DIGITS = 2;
+    #elseif ($TemplateOptions.isKType("int", "float"))
+    private static final int RADIX_DIGITS = 4;
+    #else !*/
+    private static final int RADIX_DIGITS = 8;
+    /*! #end !*/
+
+    /**
+     * Minimum length of the digit counts scratch space of {@link #radixsort(KType[], int, int, KType[], int[])}:
+     * 256 counts per 8-bit digit of a <code>KType</code>.
+     */
+    public static final int RADIX_COUNTS_LENGTH = KTypeSort.RADIX_DIGITS << 8;
+
+    /**
+     * Minimum average length of the natural runs of a range to merge them in adaptive sort, below which dual-pivot quicksort is used.
+     */
+    public static final int MIN_AVERAGE_RUN_LENGTH_FOR_ADAPTIVE_SORT = 8;
+
+    /*! #end !*/
+
     private KTypeSort()
     {
         // Utility class, nothing to do
@@ -44,7 +85,7 @@ public final class KTypeSort
 
         if (endIndex - beginIndex > 1)
         {
-            KTypeSort.dualPivotQuicksort(table, beginIndex, endIndex - 1);
+            KTypeSort.dualPivotQuicksort(table, beginIndex, endIndex - 1, null);
         }
     }
 
@@ -82,7 +123,7 @@ public final class KTypeSort
 
         if (endIndex - beginIndex > 1)
         {
-            KTypeSort.dualPivotQuicksort(table, beginIndex, endIndex - 1);
+            KTypeSort.dualPivotQuicksort(table, beginIndex, endIndex - 1, null);
         }
     }
 
@@ -123,7 +164,7 @@ public final class KTypeSort
 
         if (endIndex - beginIndex > 1)
         {
-            KTypeSort.dualPivotQuicksort(table, beginIndex, endIndex - 1, comp);
+            KTypeSort.dualPivotQuicksort(table, beginIndex, endIndex - 1, comp, null);
         }
     }
 
@@ -165,7 +206,7 @@ public final class KTypeSort
 
         if (endIndex - beginIndex > 1)
         {
-            KTypeSort.dualPivotQuicksort(table, beginIndex, endIndex - 1, comp);
+            KTypeSort.dualPivotQuicksort(table, beginIndex, endIndex - 1, comp, null);
         }
     }
 
@@ -188,236 +229,614 @@ public final class KTypeSort
     }
 
     /**
-     * Insertion sort for smaller arrays, for Comparable
-     * @param a
-     * @param left
-     * @param right inclusive
+     * In-place sort by parallel dual-pivot quicksort an array of naturally comparable <code>KType</code>s from [beginIndex, endIndex[,
+     * the sub-ranges of at least {@value #MIN_LENGTH_FOR_PARALLEL_SORT} elements being sorted as tasks of executor,
+     * the smaller ones by the sequential {@link #quicksort(KType[], int, int)}.
+     * <p>
+     * Tasks never wait for each other, so any executor works, including one with a single thread.
+     * The calling thread waits for all the tasks to complete, and runs the tasks the executor rejects.
+     * </p>
+     * <p><b>
+     * This routine uses Dual-pivot Quicksort, from [Vladimir Yaroslavskiy 2009] #if ($TemplateOptions.KTypeGeneric), so is NOT stable. #end
+     * </b></p>
+     #if ($TemplateOptions.KTypeGeneric)
+     * @throws ClassCastException if the array contains elements that are not mutually Comparable.
+     #end
      */
-    /*! #if ($TemplateOptions.KTypeGeneric) !*/
-    @SuppressWarnings("unchecked")
-    //because of Intrinsics.xxxUnchecked inlining for objects.
-    /*! #end !*/
-    private static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void insertionsort(final KType[] a, final int left, final int right)
+    public static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void parallelQuicksort(final KType[] table, final int beginIndex, final int endIndex,
+            final ExecutorService executor)
     {
-        KType x;
-        // insertion sort on tiny array
-        for (int i = left + 1; i <= right; i++)
+        KTypeSort.checkRanges(beginIndex, endIndex, table.length);
+
+        if (endIndex - beginIndex > 1)
         {
-            for (int j = i; j > left && Intrinsics.<KType> isCompInfUnchecked(a[j], a[j - 1]); j--)
-            {
-                x = a[j - 1];
-                a[j - 1] = a[j];
-                a[j] = x;
-            }
+            final ParallelSort parallel = new ParallelSort(executor, KTypeSort.MIN_LENGTH_FOR_PARALLEL_SORT);
+
+            KTypeSort.forkOrSort(table, beginIndex, endIndex - 1, parallel);
+
+            parallel.await();
         }
     }
 
     /**
-     * Private recursive sort method, [left, right] inclusive for Comparable objects
-     * or natural ordering for primitives.
-     * @param a
-     * @param left
-     * @param right inclusive
+     * In-place sort by parallel dual-pivot quicksort an entire array of naturally comparable <code>KType</code>s.
+     * @see #parallelQuicksort(KType[], int, int, ExecutorService)
      */
-    /*! #if ($TemplateOptions.KTypeGeneric) !*/
-    @SuppressWarnings("unchecked")
-    //because of Intrinsics.xxxUnchecked inlining for objects.
-    /*! #end !*/
-    private static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void dualPivotQuicksort(final KType[] a, final int left, final int right)
+    public static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void parallelQuicksort(final KType[] table, final ExecutorService executor)
     {
-        final int len = right - left;
+        KTypeSort.parallelQuicksort(table, 0, table.length, executor);
+    }
 
-        KType x;
+    /**
+     * In-place sort by parallel dual-pivot quicksort a {@link KTypeIndexedContainer} of naturally comparable <code>KType</code>s from [beginIndex, endIndex[.
+     * The container must support concurrent get() and set() at distinct indices, as {@link com.carrotsearch.hppcrt.lists.KTypeArrayList} does.
+     * @see #parallelQuicksort(KType[], int, int, ExecutorService)
+     */
+    public static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void parallelQuicksort(final KTypeIndexedContainer<KType> table, final int beginIndex,
+            final int endIndex, final ExecutorService executor)
+    {
+        KTypeSort.checkRanges(beginIndex, endIndex, table.size());
 
-        //insertion sort
-        //to prevent too-big recursion, swap to insertion sort below a certain size
-        if (len < KTypeSort.MIN_LENGTH_FOR_INSERTION_SORT)
+        if (endIndex - beginIndex > 1)
         {
-            // insertion sort on tiny array
-            KTypeSort.insertionsort(a, left, right);
-            return;
+            final ParallelSort parallel = new ParallelSort(executor, KTypeSort.MIN_LENGTH_FOR_PARALLEL_SORT);
+
+            KTypeSort.forkOrSort(table, beginIndex, endIndex - 1, parallel);
+
+            parallel.await();
         }
+    }
 
-        // median indexes
-        final int sixth = len / 6;
-        final int m1 = left + sixth;
-        final int m2 = m1 + sixth;
-        final int m3 = m2 + sixth;
-        final int m4 = m3 + sixth;
-        final int m5 = m4 + sixth;
+    /**
+     * In-place sort by parallel dual-pivot quicksort an entire {@link KTypeIndexedContainer} of naturally comparable <code>KType</code>s.
+     * @see #parallelQuicksort(KTypeIndexedContainer, int, int, ExecutorService)
+     */
+    public static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void parallelQuicksort(final KTypeIndexedContainer<KType> table,
+            final ExecutorService executor)
+    {
+        KTypeSort.parallelQuicksort(table, 0, table.size(), executor);
+    }
 
-        // 5-element sorting network
-        if (Intrinsics.<KType> isCompSupUnchecked(a[m1], a[m2]) /* a[m1] > a[m2]*/)
+    /**
+     * In-place sort by parallel dual-pivot quicksort an array of <code>KType</code>s from [beginIndex, endIndex[
+     * using a #if ($TemplateOptions.KTypeGeneric) <code>Comparator</code> #else <code>KTypeComparator</code> #end, which must be thread-safe.
+     * @see #parallelQuicksort(KType[], int, int, ExecutorService)
+     */
+    public static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void parallelQuicksort(
+            final KType[] table, final int beginIndex, final int endIndex,
+            /*! #if ($TemplateOptions.KTypeGeneric) !*/
+            final Comparator<? super KType>
+            /*! #else
+            KTypeComparator<? super KType>
+             #end !*/
+            comp, final ExecutorService executor)
+    {
+        KTypeSort.checkRanges(beginIndex, endIndex, table.length);
+
+        if (endIndex - beginIndex > 1)
         {
-            x = a[m1];
-            a[m1] = a[m2];
-            a[m2] = x;
+            final ParallelSort parallel = new ParallelSort(executor, KTypeSort.MIN_LENGTH_FOR_PARALLEL_SORT);
+
+            KTypeSort.forkOrSort(table, beginIndex, endIndex - 1, comp, parallel);
+
+            parallel.await();
         }
-        if (Intrinsics.<KType> isCompSupUnchecked(a[m4], a[m5]) /* a[m4] > a[m5]*/)
+    }
+
+    /**
+     * In-place sort by parallel dual-pivot quicksort an entire array of <code>KType</code>s
+     * using a #if ($TemplateOptions.KTypeGeneric) <code>Comparator</code> #else <code>KTypeComparator</code> #end, which must be thread-safe.
+     * @see #parallelQuicksort(KType[], int, int, ExecutorService)
+     */
+    public static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void parallelQuicksort(final KType[] table,
+            /*! #if ($TemplateOptions.KTypeGeneric) !*/
+            final Comparator<? super KType>
+            /*! #else
+            KTypeComparator<? super KType>
+             #end !*/
+            comp, final ExecutorService executor)
+    {
+        KTypeSort.parallelQuicksort(table, 0, table.length, comp, executor);
+    }
+
+    /**
+     * In-place sort by parallel dual-pivot quicksort a {@link KTypeIndexedContainer} from [beginIndex, endIndex[
+     * using a #if ($TemplateOptions.KTypeGeneric) <code>Comparator</code> #else <code>KTypeComparator</code> #end, which must be thread-safe.
+     * The container must support concurrent get() and set() at distinct indices, as {@link com.carrotsearch.hppcrt.lists.KTypeArrayList} does.
+     * @see #parallelQuicksort(KType[], int, int, ExecutorService)
+     */
+    public static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void parallelQuicksort(
+            final KTypeIndexedContainer<KType> table, final int beginIndex, final int endIndex,
+            /*! #if ($TemplateOptions.KTypeGeneric) !*/
+            final Comparator<? super KType>
+            /*! #else
+            KTypeComparator<? super KType>
+             #end !*/
+            comp, final ExecutorService executor)
+    {
+        KTypeSort.checkRanges(beginIndex, endIndex, table.size());
+
+        if (endIndex - beginIndex > 1)
         {
-            x = a[m4];
-            a[m4] = a[m5];
-            a[m5] = x;
+            final ParallelSort parallel = new ParallelSort(executor, KTypeSort.MIN_LENGTH_FOR_PARALLEL_SORT);
+
+            KTypeSort.forkOrSort(table, beginIndex, endIndex - 1, comp, parallel);
+
+            parallel.await();
         }
-        if (Intrinsics.<KType> isCompSupUnchecked(a[m1], a[m3]) /*a[m1] > a[m3]*/)
+    }
+
+    /**
+     * In-place sort by parallel dual-pivot quicksort an entire {@link KTypeIndexedContainer}
+     * using a #if ($TemplateOptions.KTypeGeneric) <code>Comparator</code> #else <code>KTypeComparator</code> #end, which must be thread-safe.
+     * @see #parallelQuicksort(KTypeIndexedContainer, int, int, ExecutorService)
+     */
+    public static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void parallelQuicksort(final KTypeIndexedContainer<KType> table,
+            /*! #if ($TemplateOptions.KTypeGeneric) !*/
+            final Comparator<? super KType>
+            /*! #else
+            KTypeComparator<? super KType>
+             #end !*/
+            comp, final ExecutorService executor)
+    {
+        KTypeSort.parallelQuicksort(table, 0, table.size(), comp, executor);
+    }
+
+    /**
+     * Quickselect among naturally comparable <code>KType</code>s in [beginIndex, endIndex[: moves to index k the element which would be there
+     * if the range was sorted, the elements of [beginIndex, k[ being not greater and those of ]k, endIndex[ not smaller than it, in no particular order.
+     * cost: O(endIndex - beginIndex) on average, by the dual-pivot partitioning of {@link #quicksort(KType[], int, int)} only into the part containing k.
+     * @param k absolute index in [beginIndex, endIndex[
+     * @return the element at index k, e.g the median for k = (beginIndex + endIndex) / 2
+     #if ($TemplateOptions.KTypeGeneric)
+     * @throws ClassCastException if the array contains elements that are not mutually Comparable.
+     #end
+     */
+    public static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/KType select(final KType[] table, final int beginIndex, final int endIndex,
+            final int k)
+    {
+        KTypeSort.checkRanges(beginIndex, endIndex, table.length);
+        KTypeSort.checkRank(k, beginIndex, endIndex);
+
+        KTypeSort.dualPivotSelect(table, beginIndex, endIndex - 1, k);
+
+        return table[k];
+    }
+
+    /**
+     * Quickselect among an entire array of naturally comparable <code>KType</code>s.
+     * @see #select(KType[], int, int, int)
+     */
+    public static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/KType select(final KType[] table, final int k)
+    {
+        return KTypeSort.select(table, 0, table.length, k);
+    }
+
+    /**
+     * Multiple quickselect among naturally comparable <code>KType</code>s in [beginIndex, endIndex[: moves to each index of ranks the element which would be there
+     * if the range was sorted, in a single pass partitioning only the parts containing ranks, so that the elements between two consecutive ranks
+     * are in between the elements at these ranks, in no particular order. This is typically how several percentiles are computed at once.
+     * @param ranks absolute indices in [beginIndex, endIndex[, in ascending order.
+     * @see #select(KType[], int, int, int)
+     */
+    public static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void select(final KType[] table, final int beginIndex, final int endIndex,
+            final int[] ranks)
+    {
+        KTypeSort.checkRanges(beginIndex, endIndex, table.length);
+        KTypeSort.checkRanks(ranks, beginIndex, endIndex);
+
+        if (ranks.length > 0)
         {
-            x = a[m1];
-            a[m1] = a[m3];
-            a[m3] = x;
+            KTypeSort.dualPivotSelect(table, beginIndex, endIndex - 1, ranks, 0, ranks.length);
         }
-        if (Intrinsics.<KType> isCompSupUnchecked(a[m2], a[m3]) /* a[m2] > a[m3]*/)
+    }
+
+    /**
+     * Partial sort of naturally comparable <code>KType</code>s in [beginIndex, endIndex[: [beginIndex, k[ ends up holding the k - beginIndex smallest elements in sorted order,
+     * the others being in ]k, endIndex[ in no particular order. Same as, but faster than, sorting the whole range to read its first elements.
+     * @param k absolute index in [beginIndex, endIndex]
+     * @see #select(KType[], int, int, int)
+     */
+    public static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void partialSort(final KType[] table, final int beginIndex, final int endIndex,
+            final int k)
+    {
+        KTypeSort.checkRanges(beginIndex, endIndex, table.length);
+        KTypeSort.checkRank(k, beginIndex, endIndex + 1);
+
+        if (k - beginIndex > 1)
         {
-            x = a[m2];
-            a[m2] = a[m3];
-            a[m3] = x;
+            //the k - 1 first are not greater than the element at k - 1, sort them.
+            KTypeSort.dualPivotSelect(table, beginIndex, endIndex - 1, k - 1);
+            KTypeSort.dualPivotQuicksort(table, beginIndex, k - 2, null);
         }
-        if (Intrinsics.<KType> isCompSupUnchecked(a[m1], a[m4]) /* a[m1] > a[m4]*/)
+        else if (k > beginIndex)
         {
-            x = a[m1];
-            a[m1] = a[m4];
-            a[m4] = x;
+            KTypeSort.dualPivotSelect(table, beginIndex, endIndex - 1, k - 1);
         }
-        if (Intrinsics.<KType> isCompSupUnchecked(a[m3], a[m4]) /*a[m3] > a[m4]*/)
+    }
+
+    /**
+     * Partial sort of an entire array of naturally comparable <code>KType</code>s.
+     * @see #partialSort(KType[], int, int, int)
+     */
+    public static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void partialSort(final KType[] table, final int k)
+    {
+        KTypeSort.partialSort(table, 0, table.length, k);
+    }
+
+    /**
+     * Quickselect among <code>KType</code>s in [beginIndex, endIndex[ using a #if ($TemplateOptions.KTypeGeneric) <code>Comparator</code> #else <code>KTypeComparator</code> #end.
+     * @see #select(KType[], int, int, int)
+     */
+    public static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/KType select(final KType[] table, final int beginIndex, final int endIndex,
+            final int k,
+            /*! #if ($TemplateOptions.KTypeGeneric) !*/
+            final Comparator<? super KType>
+            /*! #else
+            KTypeComparator<? super KType>
+             #end !*/
+            comp)
+    {
+        KTypeSort.checkRanges(beginIndex, endIndex, table.length);
+        KTypeSort.checkRank(k, beginIndex, endIndex);
+
+        KTypeSort.dualPivotSelect(table, beginIndex, endIndex - 1, k, comp);
+
+        return table[k];
+    }
+
+    /**
+     * Quickselect among an entire array of <code>KType</code>s using a #if ($TemplateOptions.KTypeGeneric) <code>Comparator</code> #else <code>KTypeComparator</code> #end.
+     * @see #select(KType[], int, int, int)
+     */
+    public static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/KType select(final KType[] table, final int k,
+            /*! #if ($TemplateOptions.KTypeGeneric) !*/
+            final Comparator<? super KType>
+            /*! #else
+            KTypeComparator<? super KType>
+             #end !*/
+            comp)
+    {
+        return KTypeSort.select(table, 0, table.length, k, comp);
+    }
+
+    /**
+     * Multiple quickselect among <code>KType</code>s in [beginIndex, endIndex[ using a #if ($TemplateOptions.KTypeGeneric) <code>Comparator</code> #else <code>KTypeComparator</code> #end.
+     * @param ranks absolute indices in [beginIndex, endIndex[, in ascending order.
+     * @see #select(KType[], int, int, int[])
+     */
+    public static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void select(final KType[] table, final int beginIndex, final int endIndex,
+            final int[] ranks,
+            /*! #if ($TemplateOptions.KTypeGeneric) !*/
+            final Comparator<? super KType>
+            /*! #else
+            KTypeComparator<? super KType>
+             #end !*/
+            comp)
+    {
+        KTypeSort.checkRanges(beginIndex, endIndex, table.length);
+        KTypeSort.checkRanks(ranks, beginIndex, endIndex);
+
+        if (ranks.length > 0)
         {
-            x = a[m3];
-            a[m3] = a[m4];
-            a[m4] = x;
+            KTypeSort.dualPivotSelect(table, beginIndex, endIndex - 1, ranks, 0, ranks.length, comp);
         }
-        if (Intrinsics.<KType> isCompSupUnchecked(a[m2], a[m5]) /* a[m2] > a[m5]*/)
+    }
+
+    /**
+     * Partial sort of <code>KType</code>s in [beginIndex, endIndex[ using a #if ($TemplateOptions.KTypeGeneric) <code>Comparator</code> #else <code>KTypeComparator</code> #end.
+     * @param k absolute index in [beginIndex, endIndex]
+     * @see #partialSort(KType[], int, int, int)
+     */
+    public static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void partialSort(final KType[] table, final int beginIndex, final int endIndex,
+            final int k,
+            /*! #if ($TemplateOptions.KTypeGeneric) !*/
+            final Comparator<? super KType>
+            /*! #else
+            KTypeComparator<? super KType>
+             #end !*/
+            comp)
+    {
+        KTypeSort.checkRanges(beginIndex, endIndex, table.length);
+        KTypeSort.checkRank(k, beginIndex, endIndex + 1);
+
+        if (k - beginIndex > 1)
         {
-            x = a[m2];
-            a[m2] = a[m5];
-            a[m5] = x;
+            //the k - 1 first are not greater than the element at k - 1, sort them.
+            KTypeSort.dualPivotSelect(table, beginIndex, endIndex - 1, k - 1, comp);
+            KTypeSort.dualPivotQuicksort(table, beginIndex, k - 2, comp, null);
         }
-        if (Intrinsics.<KType> isCompSupUnchecked(a[m2], a[m3]) /*a[m2] > a[m3]*/)
+        else if (k > beginIndex)
         {
-            x = a[m2];
-            a[m2] = a[m3];
-            a[m3] = x;
+            KTypeSort.dualPivotSelect(table, beginIndex, endIndex - 1, k - 1, comp);
         }
-        if (Intrinsics.<KType> isCompSupUnchecked(a[m4], a[m5]) /* a[m4] > a[m5]*/)
-        {
-            x = a[m4];
-            a[m4] = a[m5];
-            a[m5] = x;
+    }
+
+    /**
+     * Partial sort of an entire array of <code>KType</code>s using a #if ($TemplateOptions.KTypeGeneric) <code>Comparator</code> #else <code>KTypeComparator</code> #end.
+     * @see #partialSort(KType[], int, int, int)
+     */
+    public static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void partialSort(final KType[] table, final int k,
+            /*! #if ($TemplateOptions.KTypeGeneric) !*/
+            final Comparator<? super KType>
+            /*! #else
+            KTypeComparator<? super KType>
+             #end !*/
+            comp)
+    {
+        KTypeSort.partialSort(table, 0, table.length, k, comp);
+    }
+
+    /*! #if ($TemplateOptions.KTypePrimitive) !*/
+    /**
+     * Sort by LSD radix sort an array of <code>KType</code>s from [beginIndex, endIndex[, in natural ordering
+     * #if ($TemplateOptions.isKType("float", "double")) as defined by compare(), i.e -0.0 before 0.0 and NaNs last, #end
+     * using buffer as scratch space.
+     * <p>
+     * The radix sort makes one pass over the range to count the occurrences of all the 8-bit digits of the elements,
+     * then one stable distribution pass per digit, back and forth between the range and buffer, skipping the digits
+     * shared by all elements. It is O(N) for N elements, and stable.
+     * No allocation occurs, buffer and counts being supplied by the caller.
+     * Ranges smaller than {@value #MIN_LENGTH_FOR_RADIX_SORT} elements are sorted by dual-pivot quicksort instead.
+     * </p>
+     * @param buffer scratch space, of length at least endIndex - beginIndex, distinct from table. Its contents is overwritten.
+     * @param counts scratch space for the digit counts, of length at least {@link #RADIX_COUNTS_LENGTH}. Its contents is overwritten.
+     */
+    public static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void radixsort(final KType[] table, final int beginIndex, final int endIndex,
+            final KType[] buffer, final int[] counts)
+    {
+        KTypeSort.checkRanges(beginIndex, endIndex, table.length);
+
+        final int length = endIndex - beginIndex;
+
+        if (buffer.length < length) {
+
+            throw new IllegalArgumentException("Buffer length " + buffer.length + " is < " + length + " elements to sort");
         }
 
-        // pivots: [ < pivot1 | pivot1 <= && <= pivot2 | > pivot2 ]
-        final KType pivot1 = a[m2];
-        final KType pivot2 = a[m4];
+        if (counts.length < KTypeSort.RADIX_COUNTS_LENGTH) {
 
-        final boolean diffPivots = !Intrinsics.<KType> isCompEqualUnchecked(pivot1, pivot2);
+            throw new IllegalArgumentException("Counts length " + counts.length + " is < " + KTypeSort.RADIX_COUNTS_LENGTH);
+        }
 
-        a[m2] = a[left];
-        a[m4] = a[right];
-        // center part pointers
-        int less = left + 1;
-        int great = right - 1;
-        // sorting
-        if (diffPivots)
+        if (length < KTypeSort.MIN_LENGTH_FOR_RADIX_SORT)
         {
-            for (int k = less; k <= great; k++)
+            if (length > 1)
             {
-                x = a[k];
+                KTypeSort.dualPivotQuicksort(table, beginIndex, endIndex - 1, null);
+            }
 
-                if (Intrinsics.<KType> isCompInfUnchecked(x, pivot1)/* x < pivot1 */)
-                {
-                    a[k] = a[less];
-                    a[less++] = x;
-                }
-                else if (Intrinsics.<KType> isCompSupUnchecked(x, pivot2) /* x > pivot2 */)
-                {
-                    while (Intrinsics.<KType> isCompSupUnchecked(a[great], pivot2) /* a[great] > pivot2 */&& k < great)
-                    {
-                        great--;
-                    }
-                    a[k] = a[great];
-                    a[great--] = x;
-                    x = a[k];
+            return;
+        }
 
-                    if (Intrinsics.<KType> isCompInfUnchecked(x, pivot1) /*x < pivot1*/)
-                    {
-                        a[k] = a[less];
-                        a[less++] = x;
-                    }
-                }
+        if (buffer == table) {
+
+            throw new IllegalArgumentException("buffer must be distinct from table");
+        }
+
+        final int digits = KTypeSort.RADIX_DIGITS;
+
+        //counts of digit d of value v at [(d << 8) + v]
+        Arrays.fill(counts, 0, KTypeSort.RADIX_COUNTS_LENGTH, 0);
+
+        for (int i = beginIndex; i < endIndex; i++)
+        {
+            final KType value = table[i];
+            final long key = RADIXKEY(value);
+
+            for (int d = 0; d < digits; d++)
+            {
+                counts[(d << 8) + (int) ((key >>> (d << 3)) & 0xFF)]++;
             }
         }
-        else
+
+        KType[] src = table;
+        KType[] dst = buffer;
+        int srcOffset = beginIndex;
+        int dstOffset = 0;
+
+        for (int d = 0; d < digits; d++)
         {
-            for (int k = less; k <= great; k++)
+            final int countsOffset = d << 8;
+            final int shift = d << 3;
+
+            final KType first = src[srcOffset];
+
+            //all the elements share this digit: nothing to distribute.
+            if (counts[countsOffset + (int) ((RADIXKEY(first) >>> shift) & 0xFF)] == length)
             {
-                x = a[k];
-                if (Intrinsics.<KType> isCompEqualUnchecked(x, pivot1) /*x == pivot1*/)
-                {
-                    continue;
-                }
-                if (Intrinsics.<KType> isCompInfUnchecked(x, pivot1) /* x < pivot1 */)
-                {
-                    a[k] = a[less];
-                    a[less++] = x;
-                }
-                else
-                {
-                    while (Intrinsics.<KType> isCompSupUnchecked(a[great], pivot2) /* a[great] > pivot2*/&& k < great)
-                    {
-                        great--;
-                    }
-                    a[k] = a[great];
-                    a[great--] = x;
-                    x = a[k];
+                continue;
+            }
 
-                    if (Intrinsics.<KType> isCompInfUnchecked(x, pivot1) /*x < pivot1*/)
-                    {
-                        a[k] = a[less];
-                        a[less++] = x;
-                    }
-                }
+            //counts become the next positions in dst of each digit value
+            int position = dstOffset;
+
+            for (int v = countsOffset; v < countsOffset + 256; v++)
+            {
+                final int count = counts[v];
+                counts[v] = position;
+                position += count;
+            }
+
+            for (int i = srcOffset; i < srcOffset + length; i++)
+            {
+                final KType value = src[i];
+
+                dst[counts[countsOffset + (int) ((RADIXKEY(value) >>> shift) & 0xFF)]++] = value;
             }
+
+            final KType[] tmp = src;
+            src = dst;
+            dst = tmp;
+
+            final int tmpOffset = srcOffset;
+            srcOffset = dstOffset;
+            dstOffset = tmpOffset;
         }
-        // swap
-        a[left] = a[less - 1];
-        a[less - 1] = pivot1;
-        a[right] = a[great + 1];
-        a[great + 1] = pivot2;
-        // left and right parts
-        KTypeSort.dualPivotQuicksort(a, left, less - 2);
-        KTypeSort.dualPivotQuicksort(a, great + 2, right);
 
-        // equal elements
-        if (great - less > len - KTypeSort.DIST_SIZE_DUALQSORT && diffPivots)
+        //an odd number of distribution passes left the sorted elements in buffer
+        if (src != table)
         {
-            for (int k = less; k <= great; k++)
+            System.arraycopy(src, srcOffset, table, beginIndex, length);
+        }
+    }
+
+    /**
+     * Sort by LSD radix sort an array of <code>KType</code>s from [beginIndex, endIndex[ using buffer as scratch space,
+     * allocating the {@link #RADIX_COUNTS_LENGTH} digit counts.
+     * @see #radixsort(KType[], int, int, KType[], int[])
+     */
+    public static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void radixsort(final KType[] table, final int beginIndex, final int endIndex,
+            final KType[] buffer)
+    {
+        KTypeSort.radixsort(table, beginIndex, endIndex, buffer, new int[KTypeSort.RADIX_COUNTS_LENGTH]);
+    }
+
+    /**
+     * Sort by LSD radix sort an array of <code>KType</code>s from [beginIndex, endIndex[, allocating a scratch buffer of endIndex - beginIndex elements
+     * and the digit counts.
+     * @see #radixsort(KType[], int, int, KType[], int[])
+     */
+    public static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void radixsort(final KType[] table, final int beginIndex, final int endIndex)
+    {
+        KTypeSort.checkRanges(beginIndex, endIndex, table.length);
+
+        final int length = endIndex - beginIndex;
+
+        KTypeSort.radixsort(table, beginIndex, endIndex,
+                length < KTypeSort.MIN_LENGTH_FOR_RADIX_SORT ? table : Intrinsics.<KType> newArray(length));
+    }
+
+    /**
+     * Sort by LSD radix sort an entire array of <code>KType</code>s, allocating a scratch buffer of table.length elements and the digit counts.
+     * @see #radixsort(KType[], int, int, KType[], int[])
+     */
+    public static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void radixsort(final KType[] table)
+    {
+        KTypeSort.radixsort(table, 0, table.length);
+    }
+
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.KTypePrimitive) !*/
+    /**
+     * Adaptive sort of an array of <code>KType</code>s from [beginIndex, endIndex[, in natural ordering, for partially sorted data, using buffer as scratch space.
+     * <p>
+     * A first pass detects the natural runs of the range, i.e its maximal non-descending or strictly descending sequences, reversing the latter.
+     * The runs are then merged by peeksort, the top-down sibling of powersort [J. Ian Munro, Sebastian Wild 2018], which splits the range at the run boundary
+     * nearest to its middle: it is O(N * (1 + H)) for N elements in runs of entropy H, so O(N) for a sorted range or one made of a few runs.
+     * Each merge skips the prefix and suffix already in place, then moves only the smaller of the two runs through buffer.
+     * </p>
+     * <p>
+     * If the runs average less than {@value #MIN_AVERAGE_RUN_LENGTH_FOR_ADAPTIVE_SORT} elements, as with random data, the first pass stops early
+     * and the range is sorted by {@link #quicksort(KType[], int, int)} instead. No allocation occurs, buffer being supplied by the caller.
+     * </p>
+     * @param buffer scratch space, of length at least (endIndex - beginIndex) / 2, distinct from table. Its contents is overwritten.
+     */
+    public static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void adaptiveSort(final KType[] table, final int beginIndex, final int endIndex,
+            final KType[] buffer)
+    {
+        KTypeSort.checkRanges(beginIndex, endIndex, table.length);
+
+        final int length = endIndex - beginIndex;
+
+        if (buffer.length < length / 2) {
+
+            throw new IllegalArgumentException("Buffer length " + buffer.length + " is < " + (length / 2) + ", half of the elements to sort");
+        }
+
+        if (length < KTypeSort.MIN_LENGTH_FOR_INSERTION_SORT)
+        {
+            if (length > 1)
             {
-                x = a[k];
-                if (Intrinsics.<KType> isCompEqualUnchecked(x, pivot1) /*x == pivot1*/)
+                KTypeSort.insertionsort(table, beginIndex, endIndex - 1);
+            }
+
+            return;
+        }
+
+        if (buffer == table) {
+
+            throw new IllegalArgumentException("buffer must be distinct from table");
+        }
+
+        //natural runs, at most one per MIN_AVERAGE_RUN_LENGTH_FOR_ADAPTIVE_SORT elements
+        final int maxRuns = length / KTypeSort.MIN_AVERAGE_RUN_LENGTH_FOR_ADAPTIVE_SORT;
+
+        int runs = 0;
+        int firstRunEnd = endIndex - 1;
+        int lastRunStart = beginIndex;
+
+        int runStart = beginIndex;
+
+        while (runStart < endIndex)
+        {
+            int runEnd = runStart + 1;
+
+            if (runEnd < endIndex && Intrinsics.<KType> isCompInfUnchecked(table[runEnd], table[runStart]))
+            {
+                //strictly descending run, reversed in place so stays stable
+                while (runEnd < endIndex && Intrinsics.<KType> isCompInfUnchecked(table[runEnd], table[runEnd - 1]))
                 {
-                    a[k] = a[less];
-                    a[less++] = x;
+                    runEnd++;
                 }
-                else if (Intrinsics.<KType> isCompEqualUnchecked(x, pivot2) /*x == pivot2*/)
-                {
-                    a[k] = a[great];
-                    a[great--] = x;
-                    x = a[k];
 
-                    if (Intrinsics.<KType> isCompEqualUnchecked(x, pivot1) /*x == pivot1*/)
-                    {
-                        a[k] = a[less];
-                        a[less++] = x;
-                    }
+                KTypeSort.reverse(table, runStart, runEnd - 1);
+            }
+            else
+            {
+                while (runEnd < endIndex && !Intrinsics.<KType> isCompInfUnchecked(table[runEnd], table[runEnd - 1]))
+                {
+                    runEnd++;
                 }
             }
+
+            if (++runs > maxRuns)
+            {
+                //too short runs to be worth merging
+                KTypeSort.dualPivotQuicksort(table, beginIndex, endIndex - 1, null);
+                return;
+            }
+
+            if (runStart == beginIndex)
+            {
+                firstRunEnd = runEnd - 1;
+            }
+
+            lastRunStart = runStart;
+            runStart = runEnd;
         }
-        // center part
-        if (diffPivots)
+
+        if (runs > 1)
         {
-            KTypeSort.dualPivotQuicksort(a, less, great);
+            KTypeSort.peeksort(table, beginIndex, endIndex - 1, firstRunEnd, lastRunStart, buffer);
         }
     }
 
     /**
-     * Insertion sort for smaller arrays, for KTypeIndexedContainer
+     * Adaptive sort of an array of <code>KType</code>s from [beginIndex, endIndex[, allocating a scratch buffer of (endIndex - beginIndex) / 2 elements.
+     * @see #adaptiveSort(KType[], int, int, KType[])
+     */
+    public static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void adaptiveSort(final KType[] table, final int beginIndex, final int endIndex)
+    {
+        KTypeSort.checkRanges(beginIndex, endIndex, table.length);
+
+        KTypeSort.adaptiveSort(table, beginIndex, endIndex, Intrinsics.<KType> newArray((endIndex - beginIndex) / 2));
+    }
+
+    /**
+     * Adaptive sort of an entire array of <code>KType</code>s, allocating a scratch buffer of table.length / 2 elements.
+     * @see #adaptiveSort(KType[], int, int, KType[])
+     */
+    public static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void adaptiveSort(final KType[] table)
+    {
+        KTypeSort.adaptiveSort(table, 0, table.length);
+    }
+
+    /*! #end !*/
+
+    /**
+     * Insertion sort for smaller arrays, for Comparable
      * @param a
      * @param left
      * @param right inclusive
@@ -426,125 +845,163 @@ public final class KTypeSort
     @SuppressWarnings("unchecked")
     //because of Intrinsics.xxxUnchecked inlining for objects.
     /*! #end !*/
-    private static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void insertionsort(final KTypeIndexedContainer<KType> a, final int left,
-            final int right)
+    private static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void insertionsort(final KType[] a, final int left, final int right)
     {
         KType x;
-
+        // insertion sort on tiny array
         for (int i = left + 1; i <= right; i++)
         {
-            for (int j = i; j > left && Intrinsics.<KType> isCompInfUnchecked(a.get(j), a.get(j - 1)); j--)
+            for (int j = i; j > left && Intrinsics.<KType> isCompInfUnchecked(a[j], a[j - 1]); j--)
             {
-                x = a.get(j - 1);
-                a.set(j - 1, a.get(j));
-                a.set(j, x);
+                x = a[j - 1];
+                a[j - 1] = a[j];
+                a[j] = x;
             }
         }
     }
 
     /**
-     * Private recursive sort method for KTypeIndexedContainer, [left, right] inclusive for Comparable objects
+     * Private recursive sort method, [left, right] inclusive for Comparable objects
      * or natural ordering for primitives.
      * @param a
      * @param left
      * @param right inclusive
+     * @param parallel if not null, sub-ranges of at least {@link ParallelSort#threshold} elements are sorted by its tasks.
      */
-    /*! #if ($TemplateOptions.KTypeGeneric) !*/
-    @SuppressWarnings("unchecked")
-    //because of Intrinsics.xxxUnchecked inlining for objects.
-    /*! #end !*/
-    private static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void dualPivotQuicksort(final KTypeIndexedContainer<KType> a, final int left,
-            final int right)
+    private static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void dualPivotQuicksort(final KType[] a, final int left, final int right,
+            final ParallelSort parallel)
     {
-        final int len = right - left;
-
-        KType x;
-
         //insertion sort
         //to prevent too-big recursion, swap to insertion sort below a certain size
-        if (len < KTypeSort.MIN_LENGTH_FOR_INSERTION_SORT)
+        if (right - left < KTypeSort.MIN_LENGTH_FOR_INSERTION_SORT)
         {
             // insertion sort on tiny array
             KTypeSort.insertionsort(a, left, right);
             return;
         }
 
-        // median indexes
-        final int sixth = len / 6;
-        final int m1 = left + sixth;
-        final int m2 = m1 + sixth;
-        final int m3 = m2 + sixth;
-        final int m4 = m3 + sixth;
-        final int m5 = m4 + sixth;
+        final long bounds = KTypeSort.dualPivotPartition(a, left, right, null);
 
-        // 5-element sorting network
-        if (Intrinsics.<KType> isCompSupUnchecked(a.get(m1), a.get(m2)) /* a[m1] > a[m2]*/)
+        final int less = (int) (bounds >>> 32) & Integer.MAX_VALUE;
+        final int great = (int) bounds;
+
+        // left and right parts
+        KTypeSort.forkOrSort(a, left, less - 2, parallel);
+        KTypeSort.forkOrSort(a, great + 2, right, parallel);
+
+        // center part, without the elements equal to the pivots
+        if (bounds >= 0)
         {
-            x = a.get(m1);
-            a.set(m1, a.get(m2));
-            a.set(m2, x);
+            final long center = KTypeSort.dualPivotCenter(a, less, great, right - left, null);
+
+            KTypeSort.forkOrSort(a, (int) (center >>> 32), (int) center, parallel);
         }
-        if (Intrinsics.<KType> isCompSupUnchecked(a.get(m4), a.get(m5)) /* a[m4] > a[m5]*/)
-        {
-            x = a.get(m4);
-            a.set(m4, a.get(m5));
-            a.set(m5, x);
+    }
+
+    /**
+     * Dual-pivot partitioning of [left, right] inclusive for Comparable objects or natural ordering for primitives, of at least
+     * {@link #MIN_LENGTH_FOR_INSERTION_SORT} elements: [ &lt; pivot1 | pivot1 &lt;= &amp;&amp; &lt;= pivot2 | &gt; pivot2 ]
+     * with pivot1 at less - 1 and pivot2 at great + 1. The elements of the center part equal to the pivots are left in place,
+     * see {@link #dualPivotCenter}.
+     * @param companions if not null, swaps the elements of companion arrays along with those of a,
+     * so that the co-sorting routines of KTypeVTypeSort share this partitioning (package visibility only).
+     * @return the bounds of the center part [less, great], packed as (less &lt;&lt; 32 | great), negative if all its elements are equal
+     * to the pivots, i.e it is already sorted.
+     */
+    /*! #if ($TemplateOptions.KTypeGeneric) !*/
+    @SuppressWarnings("unchecked")
+    //because of Intrinsics.xxxUnchecked inlining for objects.
+    /*! #end !*/
+    static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/long dualPivotPartition(final KType[] a, final int left, final int right,
+            final IndirectSwapper companions)
+    {
+        final int len = right - left;
+
+        KType x;
+
+        // median indexes
+        final int sixth = len / 6;
+        final int m1 = left + sixth;
+        final int m2 = m1 + sixth;
+        final int m3 = m2 + sixth;
+        final int m4 = m3 + sixth;
+        final int m5 = m4 + sixth;
 
+        // 5-element sorting network
+        if (Intrinsics.<KType> isCompSupUnchecked(a[m1], a[m2]) /* a[m1] > a[m2]*/)
+        {
+            x = a[m1];
+            a[m1] = a[m2];
+            a[m2] = x;
+            KTypeSort.swapCompanions(companions, m1, m2);
         }
-        if (Intrinsics.<KType> isCompSupUnchecked(a.get(m1), a.get(m3)) /*a[m1] > a[m3]*/)
+        if (Intrinsics.<KType> isCompSupUnchecked(a[m4], a[m5]) /* a[m4] > a[m5]*/)
         {
-            x = a.get(m1);
-            a.set(m1, a.get(m3));
-            a.set(m3, x);
+            x = a[m4];
+            a[m4] = a[m5];
+            a[m5] = x;
+            KTypeSort.swapCompanions(companions, m4, m5);
         }
-        if (Intrinsics.<KType> isCompSupUnchecked(a.get(m2), a.get(m3)) /* a[m2] > a[m3]*/)
+        if (Intrinsics.<KType> isCompSupUnchecked(a[m1], a[m3]) /*a[m1] > a[m3]*/)
         {
-            x = a.get(m2);
-            a.set(m2, a.get(m3));
-            a.set(m3, x);
-
+            x = a[m1];
+            a[m1] = a[m3];
+            a[m3] = x;
+            KTypeSort.swapCompanions(companions, m1, m3);
         }
-        if (Intrinsics.<KType> isCompSupUnchecked(a.get(m1), a.get(m4)) /* a[m1] > a[m4]*/)
+        if (Intrinsics.<KType> isCompSupUnchecked(a[m2], a[m3]) /* a[m2] > a[m3]*/)
         {
-            x = a.get(m1);
-            a.set(m1, a.get(m4));
-            a.set(m4, x);
-
+            x = a[m2];
+            a[m2] = a[m3];
+            a[m3] = x;
+            KTypeSort.swapCompanions(companions, m2, m3);
         }
-        if (Intrinsics.<KType> isCompSupUnchecked(a.get(m3), a.get(m4)) /*a[m3] > a[m4]*/)
+        if (Intrinsics.<KType> isCompSupUnchecked(a[m1], a[m4]) /* a[m1] > a[m4]*/)
         {
-            x = a.get(m3);
-            a.set(m3, a.get(m4));
-            a.set(m4, x);
-
+            x = a[m1];
+            a[m1] = a[m4];
+            a[m4] = x;
+            KTypeSort.swapCompanions(companions, m1, m4);
         }
-        if (Intrinsics.<KType> isCompSupUnchecked(a.get(m2), a.get(m5)) /* a[m2] > a[m5]*/)
+        if (Intrinsics.<KType> isCompSupUnchecked(a[m3], a[m4]) /*a[m3] > a[m4]*/)
         {
-            x = a.get(m2);
-            a.set(m2, a.get(m5));
-            a.set(m5, x);
+            x = a[m3];
+            a[m3] = a[m4];
+            a[m4] = x;
+            KTypeSort.swapCompanions(companions, m3, m4);
         }
-        if (Intrinsics.<KType> isCompSupUnchecked(a.get(m2), a.get(m3)) /*a[m2] > a[m3]*/)
+        if (Intrinsics.<KType> isCompSupUnchecked(a[m2], a[m5]) /* a[m2] > a[m5]*/)
         {
-            x = a.get(m2);
-            a.set(m2, a.get(m3));
-            a.set(m3, x);
+            x = a[m2];
+            a[m2] = a[m5];
+            a[m5] = x;
+            KTypeSort.swapCompanions(companions, m2, m5);
         }
-        if (Intrinsics.<KType> isCompSupUnchecked(a.get(m4), a.get(m5)) /* a[m4] > a[m5]*/)
+        if (Intrinsics.<KType> isCompSupUnchecked(a[m2], a[m3]) /*a[m2] > a[m3]*/)
         {
-            x = a.get(m4);
-            a.set(m4, a.get(m5));
-            a.set(m5, x);
+            x = a[m2];
+            a[m2] = a[m3];
+            a[m3] = x;
+            KTypeSort.swapCompanions(companions, m2, m3);
+        }
+        if (Intrinsics.<KType> isCompSupUnchecked(a[m4], a[m5]) /* a[m4] > a[m5]*/)
+        {
+            x = a[m4];
+            a[m4] = a[m5];
+            a[m5] = x;
+            KTypeSort.swapCompanions(companions, m4, m5);
         }
 
         // pivots: [ < pivot1 | pivot1 <= && <= pivot2 | > pivot2 ]
-        final KType pivot1 = a.get(m2);
-        final KType pivot2 = a.get(m4);
+        final KType pivot1 = a[m2];
+        final KType pivot2 = a[m4];
 
         final boolean diffPivots = !Intrinsics.<KType> isCompEqualUnchecked(pivot1, pivot2);
 
-        a.set(m2, a.get(left));
-        a.set(m4, a.get(right));
+        a[m2] = a[left];
+        a[m4] = a[right];
+        KTypeSort.swapCompanions(companions, left, m2);
+        KTypeSort.swapCompanions(companions, right, m4);
         // center part pointers
         int less = left + 1;
         int great = right - 1;
@@ -553,30 +1010,30 @@ public final class KTypeSort
         {
             for (int k = less; k <= great; k++)
             {
-                x = a.get(k);
+                x = a[k];
 
                 if (Intrinsics.<KType> isCompInfUnchecked(x, pivot1)/* x < pivot1 */)
                 {
-                    a.set(k, a.get(less));
-                    a.set(less, x);
-                    less++;
+                    a[k] = a[less];
+                    a[less++] = x;
+                    KTypeSort.swapCompanions(companions, k, less - 1);
                 }
                 else if (Intrinsics.<KType> isCompSupUnchecked(x, pivot2) /* x > pivot2 */)
                 {
-                    while (Intrinsics.<KType> isCompSupUnchecked(a.get(great), pivot2) /* a[great] > pivot2 */&& k < great)
+                    while (Intrinsics.<KType> isCompSupUnchecked(a[great], pivot2) /* a[great] > pivot2 */&& k < great)
                     {
                         great--;
                     }
-                    a.set(k, a.get(great));
-                    a.set(great, x);
-                    great--;
-                    x = a.get(k);
+                    a[k] = a[great];
+                    a[great--] = x;
+                    KTypeSort.swapCompanions(companions, k, great + 1);
+                    x = a[k];
 
                     if (Intrinsics.<KType> isCompInfUnchecked(x, pivot1) /*x < pivot1*/)
                     {
-                        a.set(k, a.get(less));
-                        a.set(less, x);
-                        less++;
+                        a[k] = a[less];
+                        a[less++] = x;
+                        KTypeSort.swapCompanions(companions, k, less - 1);
                     }
                 }
             }
@@ -585,127 +1042,141 @@ public final class KTypeSort
         {
             for (int k = less; k <= great; k++)
             {
-                x = a.get(k);
-
+                x = a[k];
                 if (Intrinsics.<KType> isCompEqualUnchecked(x, pivot1) /*x == pivot1*/)
                 {
                     continue;
                 }
                 if (Intrinsics.<KType> isCompInfUnchecked(x, pivot1) /* x < pivot1 */)
                 {
-                    a.set(k, a.get(less));
-                    a.set(less, x);
-                    less++;
+                    a[k] = a[less];
+                    a[less++] = x;
+                    KTypeSort.swapCompanions(companions, k, less - 1);
                 }
                 else
                 {
-                    while (Intrinsics.<KType> isCompSupUnchecked(a.get(great), pivot2) /* a[great] > pivot2*/&& k < great)
+                    while (Intrinsics.<KType> isCompSupUnchecked(a[great], pivot2) /* a[great] > pivot2*/&& k < great)
                     {
                         great--;
                     }
-                    a.set(k, a.get(great));
-                    a.set(great, x);
-                    great--;
-                    x = a.get(k);
+                    a[k] = a[great];
+                    a[great--] = x;
+                    KTypeSort.swapCompanions(companions, k, great + 1);
+                    x = a[k];
 
                     if (Intrinsics.<KType> isCompInfUnchecked(x, pivot1) /*x < pivot1*/)
                     {
-                        a.set(k, a.get(less));
-                        a.set(less, x);
-                        less++;
+                        a[k] = a[less];
+                        a[less++] = x;
+                        KTypeSort.swapCompanions(companions, k, less - 1);
                     }
                 }
             }
         }
         // swap
-        a.set(left, a.get(less - 1));
-        a.set(less - 1, pivot1);
-        a.set(right, a.get(great + 1));
-        a.set(great + 1, pivot2);
-        // left and right parts
-        KTypeSort.dualPivotQuicksort(a, left, less - 2);
-        KTypeSort.dualPivotQuicksort(a, great + 2, right);
+        a[left] = a[less - 1];
+        a[less - 1] = pivot1;
+        a[right] = a[great + 1];
+        a[great + 1] = pivot2;
+        KTypeSort.swapCompanions(companions, left, less - 1);
+        KTypeSort.swapCompanions(companions, right, great + 1);
+        //pack the center part bounds, flagged if it is made of elements equal to the pivots
+        final long bounds = ((long) less << 32) | great;
 
+        return diffPivots ? bounds : bounds | Long.MIN_VALUE;
+    }
+
+    /**
+     * Gathers the elements equal to the pivots at both ends of the center part [less, great] of a dual-pivot partitioning
+     * of len + 1 elements for Comparable objects or natural ordering for primitives, if the center part is large, i.e likely
+     * to contain many of them. To call after sorting the left and right parts, which do not include them.
+     * @param companions if not null, swaps the elements of companion arrays along with those of a.
+     * @return the bounds of the remaining center part, packed as (less &lt;&lt; 32 | great).
+     */
+    /*! #if ($TemplateOptions.KTypeGeneric) !*/
+    @SuppressWarnings("unchecked")
+    //because of Intrinsics.xxxUnchecked inlining for objects.
+    /*! #end !*/
+    static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/long dualPivotCenter(final KType[] a, int less, int great, final int len,
+            final IndirectSwapper companions)
+    {
         // equal elements
-        if (great - less > len - KTypeSort.DIST_SIZE_DUALQSORT && diffPivots)
+        if (great - less > len - KTypeSort.DIST_SIZE_DUALQSORT)
         {
+            final KType pivot1 = a[less - 1];
+            final KType pivot2 = a[great + 1];
+
+            KType x;
+
             for (int k = less; k <= great; k++)
             {
-                x = a.get(k);
+                x = a[k];
                 if (Intrinsics.<KType> isCompEqualUnchecked(x, pivot1) /*x == pivot1*/)
                 {
-                    a.set(k, a.get(less));
-                    a.set(less, x);
-                    less++;
+                    a[k] = a[less];
+                    a[less++] = x;
+                    KTypeSort.swapCompanions(companions, k, less - 1);
                 }
                 else if (Intrinsics.<KType> isCompEqualUnchecked(x, pivot2) /*x == pivot2*/)
                 {
-                    a.set(k, a.get(great));
-                    a.set(great, x);
-                    great--;
-                    x = a.get(k);
+                    a[k] = a[great];
+                    a[great--] = x;
+                    KTypeSort.swapCompanions(companions, k, great + 1);
+                    x = a[k];
 
                     if (Intrinsics.<KType> isCompEqualUnchecked(x, pivot1) /*x == pivot1*/)
                     {
-                        a.set(k, a.get(less));
-                        a.set(less, x);
-                        less++;
+                        a[k] = a[less];
+                        a[less++] = x;
+                        KTypeSort.swapCompanions(companions, k, less - 1);
                     }
                 }
             }
         }
-        // center part
-        if (diffPivots)
-        {
-            KTypeSort.dualPivotQuicksort(a, less, great);
-        }
+
+        return ((long) less << 32) | great;
     }
 
     /**
-     * Insertion sort for smaller arrays, with Comparator
+     * Insertion sort for smaller arrays, for KTypeIndexedContainer
      * @param a
      * @param left
      * @param right inclusive
      */
-    private static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void insertionsort(
-            final KType[] a,
-            final int left, final int right,
-            /*! #if ($TemplateOptions.KTypeGeneric) !*/
-            final Comparator<? super KType>
-            /*! #else
-            KTypeComparator<? super KType>
-             #end !*/
-            comp)
+    /*! #if ($TemplateOptions.KTypeGeneric) !*/
+    @SuppressWarnings("unchecked")
+    //because of Intrinsics.xxxUnchecked inlining for objects.
+    /*! #end !*/
+    private static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void insertionsort(final KTypeIndexedContainer<KType> a, final int left,
+            final int right)
     {
         KType x;
 
         for (int i = left + 1; i <= right; i++)
         {
-            for (int j = i; j > left && comp.compare(a[j], a[j - 1]) < 0; j--)
+            for (int j = i; j > left && Intrinsics.<KType> isCompInfUnchecked(a.get(j), a.get(j - 1)); j--)
             {
-                x = a[j - 1];
-                a[j - 1] = a[j];
-                a[j] = x;
+                x = a.get(j - 1);
+                a.set(j - 1, a.get(j));
+                a.set(j, x);
             }
         }
     }
 
     /**
-     * Private recursive sort method, [left, right] inclusive using KTypeComparator
-     * for comparison.
+     * Private recursive sort method for KTypeIndexedContainer, [left, right] inclusive for Comparable objects
+     * or natural ordering for primitives.
      * @param a
      * @param left
      * @param right inclusive
+     * @param parallel if not null, sub-ranges of at least {@link ParallelSort#threshold} elements are sorted by its tasks.
      */
-    private static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void dualPivotQuicksort(
-            final KType[] a,
-            final int left, final int right,
-            /*! #if ($TemplateOptions.KTypeGeneric) !*/
-            final Comparator<? super KType>
-            /*! #else
-            KTypeComparator<? super KType>
-             #end !*/
-            comp)
+    /*! #if ($TemplateOptions.KTypeGeneric) !*/
+    @SuppressWarnings("unchecked")
+    //because of Intrinsics.xxxUnchecked inlining for objects.
+    /*! #end !*/
+    private static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void dualPivotQuicksort(final KTypeIndexedContainer<KType> a, final int left,
+            final int right, final ParallelSort parallel)
     {
         final int len = right - left;
 
@@ -716,7 +1187,7 @@ public final class KTypeSort
         if (len < KTypeSort.MIN_LENGTH_FOR_INSERTION_SORT)
         {
             // insertion sort on tiny array
-            KTypeSort.insertionsort(a, left, right, comp);
+            KTypeSort.insertionsort(a, left, right);
             return;
         }
 
@@ -729,69 +1200,73 @@ public final class KTypeSort
         final int m5 = m4 + sixth;
 
         // 5-element sorting network
-        if (comp.compare(a[m1], a[m2]) > 0 /* a[m1] > a[m2]*/)
+        if (Intrinsics.<KType> isCompSupUnchecked(a.get(m1), a.get(m2)) /* a[m1] > a[m2]*/)
         {
-            x = a[m1];
-            a[m1] = a[m2];
-            a[m2] = x;
+            x = a.get(m1);
+            a.set(m1, a.get(m2));
+            a.set(m2, x);
         }
-        if (comp.compare(a[m4], a[m5]) > 0 /* a[m4] > a[m5]*/)
+        if (Intrinsics.<KType> isCompSupUnchecked(a.get(m4), a.get(m5)) /* a[m4] > a[m5]*/)
         {
-            x = a[m4];
-            a[m4] = a[m5];
-            a[m5] = x;
+            x = a.get(m4);
+            a.set(m4, a.get(m5));
+            a.set(m5, x);
+
         }
-        if (comp.compare(a[m1], a[m3]) > 0 /*a[m1] > a[m3]*/)
+        if (Intrinsics.<KType> isCompSupUnchecked(a.get(m1), a.get(m3)) /*a[m1] > a[m3]*/)
         {
-            x = a[m1];
-            a[m1] = a[m3];
-            a[m3] = x;
+            x = a.get(m1);
+            a.set(m1, a.get(m3));
+            a.set(m3, x);
         }
-        if (comp.compare(a[m2], a[m3]) > 0 /* a[m2] > a[m3]*/)
+        if (Intrinsics.<KType> isCompSupUnchecked(a.get(m2), a.get(m3)) /* a[m2] > a[m3]*/)
         {
-            x = a[m2];
-            a[m2] = a[m3];
-            a[m3] = x;
+            x = a.get(m2);
+            a.set(m2, a.get(m3));
+            a.set(m3, x);
+
         }
-        if (comp.compare(a[m1], a[m4]) > 0 /* a[m1] > a[m4]*/)
+        if (Intrinsics.<KType> isCompSupUnchecked(a.get(m1), a.get(m4)) /* a[m1] > a[m4]*/)
         {
-            x = a[m1];
-            a[m1] = a[m4];
-            a[m4] = x;
+            x = a.get(m1);
+            a.set(m1, a.get(m4));
+            a.set(m4, x);
+
         }
-        if (comp.compare(a[m3], a[m4]) > 0 /*a[m3] > a[m4]*/)
+        if (Intrinsics.<KType> isCompSupUnchecked(a.get(m3), a.get(m4)) /*a[m3] > a[m4]*/)
         {
-            x = a[m3];
-            a[m3] = a[m4];
-            a[m4] = x;
+            x = a.get(m3);
+            a.set(m3, a.get(m4));
+            a.set(m4, x);
+
         }
-        if (comp.compare(a[m2], a[m5]) > 0 /* a[m2] > a[m5]*/)
+        if (Intrinsics.<KType> isCompSupUnchecked(a.get(m2), a.get(m5)) /* a[m2] > a[m5]*/)
         {
-            x = a[m2];
-            a[m2] = a[m5];
-            a[m5] = x;
+            x = a.get(m2);
+            a.set(m2, a.get(m5));
+            a.set(m5, x);
         }
-        if (comp.compare(a[m2], a[m3]) > 0 /*a[m2] > a[m3]*/)
+        if (Intrinsics.<KType> isCompSupUnchecked(a.get(m2), a.get(m3)) /*a[m2] > a[m3]*/)
         {
-            x = a[m2];
-            a[m2] = a[m3];
-            a[m3] = x;
+            x = a.get(m2);
+            a.set(m2, a.get(m3));
+            a.set(m3, x);
         }
-        if (comp.compare(a[m4], a[m5]) > 0 /* a[m4] > a[m5]*/)
+        if (Intrinsics.<KType> isCompSupUnchecked(a.get(m4), a.get(m5)) /* a[m4] > a[m5]*/)
         {
-            x = a[m4];
-            a[m4] = a[m5];
-            a[m5] = x;
+            x = a.get(m4);
+            a.set(m4, a.get(m5));
+            a.set(m5, x);
         }
 
         // pivots: [ < pivot1 | pivot1 <= && <= pivot2 | > pivot2 ]
-        final KType pivot1 = a[m2];
-        final KType pivot2 = a[m4];
+        final KType pivot1 = a.get(m2);
+        final KType pivot2 = a.get(m4);
 
-        final boolean diffPivots = comp.compare(pivot1, pivot2) != 0;
+        final boolean diffPivots = !Intrinsics.<KType> isCompEqualUnchecked(pivot1, pivot2);
 
-        a[m2] = a[left];
-        a[m4] = a[right];
+        a.set(m2, a.get(left));
+        a.set(m4, a.get(right));
         // center part pointers
         int less = left + 1;
         int great = right - 1;
@@ -800,27 +1275,30 @@ public final class KTypeSort
         {
             for (int k = less; k <= great; k++)
             {
-                x = a[k];
+                x = a.get(k);
 
-                if (comp.compare(x, pivot1) < 0/* x < pivot1 */)
+                if (Intrinsics.<KType> isCompInfUnchecked(x, pivot1)/* x < pivot1 */)
                 {
-                    a[k] = a[less];
-                    a[less++] = x;
+                    a.set(k, a.get(less));
+                    a.set(less, x);
+                    less++;
                 }
-                else if (comp.compare(x, pivot2) > 0 /* x > pivot2 */)
+                else if (Intrinsics.<KType> isCompSupUnchecked(x, pivot2) /* x > pivot2 */)
                 {
-                    while (comp.compare(a[great], pivot2) > 0 /* a[great] > pivot2 */&& k < great)
+                    while (Intrinsics.<KType> isCompSupUnchecked(a.get(great), pivot2) /* a[great] > pivot2 */&& k < great)
                     {
                         great--;
                     }
-                    a[k] = a[great];
-                    a[great--] = x;
-                    x = a[k];
+                    a.set(k, a.get(great));
+                    a.set(great, x);
+                    great--;
+                    x = a.get(k);
 
-                    if (comp.compare(x, pivot1) < 0 /*x < pivot1*/)
+                    if (Intrinsics.<KType> isCompInfUnchecked(x, pivot1) /*x < pivot1*/)
                     {
-                        a[k] = a[less];
-                        a[less++] = x;
+                        a.set(k, a.get(less));
+                        a.set(less, x);
+                        less++;
                     }
                 }
             }
@@ -829,64 +1307,71 @@ public final class KTypeSort
         {
             for (int k = less; k <= great; k++)
             {
-                x = a[k];
-                if (comp.compare(x, pivot1) == 0 /*x == pivot1*/)
+                x = a.get(k);
+
+                if (Intrinsics.<KType> isCompEqualUnchecked(x, pivot1) /*x == pivot1*/)
                 {
                     continue;
                 }
-                if (comp.compare(x, pivot1) < 0 /* x < pivot1 */)
+                if (Intrinsics.<KType> isCompInfUnchecked(x, pivot1) /* x < pivot1 */)
                 {
-                    a[k] = a[less];
-                    a[less++] = x;
+                    a.set(k, a.get(less));
+                    a.set(less, x);
+                    less++;
                 }
                 else
                 {
-                    while (comp.compare(a[great], pivot2) > 0 /* a[great] > pivot2*/&& k < great)
+                    while (Intrinsics.<KType> isCompSupUnchecked(a.get(great), pivot2) /* a[great] > pivot2*/&& k < great)
                     {
                         great--;
                     }
-                    a[k] = a[great];
-                    a[great--] = x;
-                    x = a[k];
+                    a.set(k, a.get(great));
+                    a.set(great, x);
+                    great--;
+                    x = a.get(k);
 
-                    if (comp.compare(x, pivot1) < 0 /*x < pivot1*/)
+                    if (Intrinsics.<KType> isCompInfUnchecked(x, pivot1) /*x < pivot1*/)
                     {
-                        a[k] = a[less];
-                        a[less++] = x;
+                        a.set(k, a.get(less));
+                        a.set(less, x);
+                        less++;
                     }
                 }
             }
         }
         // swap
-        a[left] = a[less - 1];
-        a[less - 1] = pivot1;
-        a[right] = a[great + 1];
-        a[great + 1] = pivot2;
+        a.set(left, a.get(less - 1));
+        a.set(less - 1, pivot1);
+        a.set(right, a.get(great + 1));
+        a.set(great + 1, pivot2);
         // left and right parts
-        KTypeSort.dualPivotQuicksort(a, left, less - 2, comp);
-        KTypeSort.dualPivotQuicksort(a, great + 2, right, comp);
+        KTypeSort.forkOrSort(a, left, less - 2, parallel);
+        KTypeSort.forkOrSort(a, great + 2, right, parallel);
 
         // equal elements
         if (great - less > len - KTypeSort.DIST_SIZE_DUALQSORT && diffPivots)
         {
             for (int k = less; k <= great; k++)
             {
-                x = a[k];
-                if (comp.compare(x, pivot1) == 0 /*x == pivot1*/)
+                x = a.get(k);
+                if (Intrinsics.<KType> isCompEqualUnchecked(x, pivot1) /*x == pivot1*/)
                 {
-                    a[k] = a[less];
-                    a[less++] = x;
+                    a.set(k, a.get(less));
+                    a.set(less, x);
+                    less++;
                 }
-                else if (comp.compare(x, pivot2) == 0 /*x == pivot2*/)
+                else if (Intrinsics.<KType> isCompEqualUnchecked(x, pivot2) /*x == pivot2*/)
                 {
-                    a[k] = a[great];
-                    a[great--] = x;
-                    x = a[k];
+                    a.set(k, a.get(great));
+                    a.set(great, x);
+                    great--;
+                    x = a.get(k);
 
-                    if (comp.compare(x, pivot1) == 0 /*x == pivot1*/)
+                    if (Intrinsics.<KType> isCompEqualUnchecked(x, pivot1) /*x == pivot1*/)
                     {
-                        a[k] = a[less];
-                        a[less++] = x;
+                        a.set(k, a.get(less));
+                        a.set(less, x);
+                        less++;
                     }
                 }
             }
@@ -894,18 +1379,18 @@ public final class KTypeSort
         // center part
         if (diffPivots)
         {
-            KTypeSort.dualPivotQuicksort(a, less, great, comp);
+            KTypeSort.forkOrSort(a, less, great, parallel);
         }
     }
 
     /**
-     * Insertion sort for smaller KTypeIndexedContainer, Comparator version
+     * Insertion sort for smaller arrays, with Comparator
      * @param a
      * @param left
      * @param right inclusive
      */
     private static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void insertionsort(
-            final KTypeIndexedContainer<KType> a,
+            final KType[] a,
             final int left, final int right,
             /*! #if ($TemplateOptions.KTypeGeneric) !*/
             final Comparator<? super KType>
@@ -918,25 +1403,1028 @@ public final class KTypeSort
 
         for (int i = left + 1; i <= right; i++)
         {
-            for (int j = i; j > left && comp.compare(a.get(j), a.get(j - 1)) < 0; j--)
+            for (int j = i; j > left && comp.compare(a[j], a[j - 1]) < 0; j--)
             {
-                x = a.get(j - 1);
-                a.set(j - 1, a.get(j));
-                a.set(j, x);
+                x = a[j - 1];
+                a[j - 1] = a[j];
+                a[j] = x;
+            }
+        }
+    }
+
+    /**
+     * Private recursive sort method, [left, right] inclusive using KTypeComparator
+     * for comparison.
+     * @param a
+     * @param left
+     * @param right inclusive
+     * @param parallel if not null, sub-ranges of at least {@link ParallelSort#threshold} elements are sorted by its tasks.
+     */
+    private static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void dualPivotQuicksort(
+            final KType[] a,
+            final int left, final int right,
+            /*! #if ($TemplateOptions.KTypeGeneric) !*/
+            final Comparator<? super KType>
+            /*! #else
+            KTypeComparator<? super KType>
+             #end !*/
+            comp, final ParallelSort parallel)
+    {
+        //insertion sort
+        //to prevent too-big recursion, swap to insertion sort below a certain size
+        if (right - left < KTypeSort.MIN_LENGTH_FOR_INSERTION_SORT)
+        {
+            // insertion sort on tiny array
+            KTypeSort.insertionsort(a, left, right, comp);
+            return;
+        }
+
+        final long bounds = KTypeSort.dualPivotPartition(a, left, right, comp, null);
+
+        final int less = (int) (bounds >>> 32) & Integer.MAX_VALUE;
+        final int great = (int) bounds;
+
+        // left and right parts
+        KTypeSort.forkOrSort(a, left, less - 2, comp, parallel);
+        KTypeSort.forkOrSort(a, great + 2, right, comp, parallel);
+
+        // center part, without the elements equal to the pivots
+        if (bounds >= 0)
+        {
+            final long center = KTypeSort.dualPivotCenter(a, less, great, right - left, comp, null);
+
+            KTypeSort.forkOrSort(a, (int) (center >>> 32), (int) center, comp, parallel);
+        }
+    }
+
+    /**
+     * Dual-pivot partitioning of [left, right] inclusive using KTypeComparator for comparison, of at least
+     * {@link #MIN_LENGTH_FOR_INSERTION_SORT} elements: [ &lt; pivot1 | pivot1 &lt;= &amp;&amp; &lt;= pivot2 | &gt; pivot2 ]
+     * with pivot1 at less - 1 and pivot2 at great + 1. The elements of the center part equal to the pivots are left in place,
+     * see {@link #dualPivotCenter}.
+     * @param companions if not null, swaps the elements of companion arrays along with those of a,
+     * so that the co-sorting routines of KTypeVTypeSort share this partitioning (package visibility only).
+     * @return the bounds of the center part [less, great], packed as (less &lt;&lt; 32 | great), negative if all its elements are equal
+     * to the pivots, i.e it is already sorted.
+     */
+    static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/long dualPivotPartition(
+            final KType[] a,
+            final int left, final int right,
+            /*! #if ($TemplateOptions.KTypeGeneric) !*/
+            final Comparator<? super KType>
+            /*! #else
+            KTypeComparator<? super KType>
+             #end !*/
+            comp, final IndirectSwapper companions)
+    {
+        final int len = right - left;
+
+        KType x;
+
+        // median indexes
+        final int sixth = len / 6;
+        final int m1 = left + sixth;
+        final int m2 = m1 + sixth;
+        final int m3 = m2 + sixth;
+        final int m4 = m3 + sixth;
+        final int m5 = m4 + sixth;
+
+        // 5-element sorting network
+        if (comp.compare(a[m1], a[m2]) > 0 /* a[m1] > a[m2]*/)
+        {
+            x = a[m1];
+            a[m1] = a[m2];
+            a[m2] = x;
+            KTypeSort.swapCompanions(companions, m1, m2);
+        }
+        if (comp.compare(a[m4], a[m5]) > 0 /* a[m4] > a[m5]*/)
+        {
+            x = a[m4];
+            a[m4] = a[m5];
+            a[m5] = x;
+            KTypeSort.swapCompanions(companions, m4, m5);
+        }
+        if (comp.compare(a[m1], a[m3]) > 0 /*a[m1] > a[m3]*/)
+        {
+            x = a[m1];
+            a[m1] = a[m3];
+            a[m3] = x;
+            KTypeSort.swapCompanions(companions, m1, m3);
+        }
+        if (comp.compare(a[m2], a[m3]) > 0 /* a[m2] > a[m3]*/)
+        {
+            x = a[m2];
+            a[m2] = a[m3];
+            a[m3] = x;
+            KTypeSort.swapCompanions(companions, m2, m3);
+        }
+        if (comp.compare(a[m1], a[m4]) > 0 /* a[m1] > a[m4]*/)
+        {
+            x = a[m1];
+            a[m1] = a[m4];
+            a[m4] = x;
+            KTypeSort.swapCompanions(companions, m1, m4);
+        }
+        if (comp.compare(a[m3], a[m4]) > 0 /*a[m3] > a[m4]*/)
+        {
+            x = a[m3];
+            a[m3] = a[m4];
+            a[m4] = x;
+            KTypeSort.swapCompanions(companions, m3, m4);
+        }
+        if (comp.compare(a[m2], a[m5]) > 0 /* a[m2] > a[m5]*/)
+        {
+            x = a[m2];
+            a[m2] = a[m5];
+            a[m5] = x;
+            KTypeSort.swapCompanions(companions, m2, m5);
+        }
+        if (comp.compare(a[m2], a[m3]) > 0 /*a[m2] > a[m3]*/)
+        {
+            x = a[m2];
+            a[m2] = a[m3];
+            a[m3] = x;
+            KTypeSort.swapCompanions(companions, m2, m3);
+        }
+        if (comp.compare(a[m4], a[m5]) > 0 /* a[m4] > a[m5]*/)
+        {
+            x = a[m4];
+            a[m4] = a[m5];
+            a[m5] = x;
+            KTypeSort.swapCompanions(companions, m4, m5);
+        }
+
+        // pivots: [ < pivot1 | pivot1 <= && <= pivot2 | > pivot2 ]
+        final KType pivot1 = a[m2];
+        final KType pivot2 = a[m4];
+
+        final boolean diffPivots = comp.compare(pivot1, pivot2) != 0;
+
+        a[m2] = a[left];
+        a[m4] = a[right];
+        KTypeSort.swapCompanions(companions, left, m2);
+        KTypeSort.swapCompanions(companions, right, m4);
+        // center part pointers
+        int less = left + 1;
+        int great = right - 1;
+        // sorting
+        if (diffPivots)
+        {
+            for (int k = less; k <= great; k++)
+            {
+                x = a[k];
+
+                if (comp.compare(x, pivot1) < 0/* x < pivot1 */)
+                {
+                    a[k] = a[less];
+                    a[less++] = x;
+                    KTypeSort.swapCompanions(companions, k, less - 1);
+                }
+                else if (comp.compare(x, pivot2) > 0 /* x > pivot2 */)
+                {
+                    while (comp.compare(a[great], pivot2) > 0 /* a[great] > pivot2 */&& k < great)
+                    {
+                        great--;
+                    }
+                    a[k] = a[great];
+                    a[great--] = x;
+                    KTypeSort.swapCompanions(companions, k, great + 1);
+                    x = a[k];
+
+                    if (comp.compare(x, pivot1) < 0 /*x < pivot1*/)
+                    {
+                        a[k] = a[less];
+                        a[less++] = x;
+                        KTypeSort.swapCompanions(companions, k, less - 1);
+                    }
+                }
+            }
+        }
+        else
+        {
+            for (int k = less; k <= great; k++)
+            {
+                x = a[k];
+                if (comp.compare(x, pivot1) == 0 /*x == pivot1*/)
+                {
+                    continue;
+                }
+                if (comp.compare(x, pivot1) < 0 /* x < pivot1 */)
+                {
+                    a[k] = a[less];
+                    a[less++] = x;
+                    KTypeSort.swapCompanions(companions, k, less - 1);
+                }
+                else
+                {
+                    while (comp.compare(a[great], pivot2) > 0 /* a[great] > pivot2*/&& k < great)
+                    {
+                        great--;
+                    }
+                    a[k] = a[great];
+                    a[great--] = x;
+                    KTypeSort.swapCompanions(companions, k, great + 1);
+                    x = a[k];
+
+                    if (comp.compare(x, pivot1) < 0 /*x < pivot1*/)
+                    {
+                        a[k] = a[less];
+                        a[less++] = x;
+                        KTypeSort.swapCompanions(companions, k, less - 1);
+                    }
+                }
+            }
+        }
+        // swap
+        a[left] = a[less - 1];
+        a[less - 1] = pivot1;
+        a[right] = a[great + 1];
+        a[great + 1] = pivot2;
+        KTypeSort.swapCompanions(companions, left, less - 1);
+        KTypeSort.swapCompanions(companions, right, great + 1);
+        //pack the center part bounds, flagged if it is made of elements equal to the pivots
+        final long bounds = ((long) less << 32) | great;
+
+        return diffPivots ? bounds : bounds | Long.MIN_VALUE;
+    }
+
+    /**
+     * Gathers the elements equal to the pivots at both ends of the center part [less, great] of a dual-pivot partitioning
+     * of len + 1 elements using KTypeComparator for comparison, if the center part is large.
+     * @param companions if not null, swaps the elements of companion arrays along with those of a.
+     * @return the bounds of the remaining center part, packed as (less &lt;&lt; 32 | great).
+     * @see #dualPivotCenter(KType[], int, int, int, IndirectSwapper)
+     */
+    static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/long dualPivotCenter(
+            final KType[] a,
+            int less, int great, final int len,
+            /*! #if ($TemplateOptions.KTypeGeneric) !*/
+            final Comparator<? super KType>
+            /*! #else
+            KTypeComparator<? super KType>
+             #end !*/
+            comp, final IndirectSwapper companions)
+    {
+        // equal elements
+        if (great - less > len - KTypeSort.DIST_SIZE_DUALQSORT)
+        {
+            final KType pivot1 = a[less - 1];
+            final KType pivot2 = a[great + 1];
+
+            KType x;
+
+            for (int k = less; k <= great; k++)
+            {
+                x = a[k];
+                if (comp.compare(x, pivot1) == 0 /*x == pivot1*/)
+                {
+                    a[k] = a[less];
+                    a[less++] = x;
+                    KTypeSort.swapCompanions(companions, k, less - 1);
+                }
+                else if (comp.compare(x, pivot2) == 0 /*x == pivot2*/)
+                {
+                    a[k] = a[great];
+                    a[great--] = x;
+                    KTypeSort.swapCompanions(companions, k, great + 1);
+                    x = a[k];
+
+                    if (comp.compare(x, pivot1) == 0 /*x == pivot1*/)
+                    {
+                        a[k] = a[less];
+                        a[less++] = x;
+                        KTypeSort.swapCompanions(companions, k, less - 1);
+                    }
+                }
+            }
+        }
+
+        return ((long) less << 32) | great;
+    }
+
+    /**
+     * Insertion sort for smaller KTypeIndexedContainer, Comparator version
+     * @param a
+     * @param left
+     * @param right inclusive
+     */
+    private static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void insertionsort(
+            final KTypeIndexedContainer<KType> a,
+            final int left, final int right,
+            /*! #if ($TemplateOptions.KTypeGeneric) !*/
+            final Comparator<? super KType>
+            /*! #else
+            KTypeComparator<? super KType>
+             #end !*/
+            comp)
+    {
+        KType x;
+
+        for (int i = left + 1; i <= right; i++)
+        {
+            for (int j = i; j > left && comp.compare(a.get(j), a.get(j - 1)) < 0; j--)
+            {
+                x = a.get(j - 1);
+                a.set(j - 1, a.get(j));
+                a.set(j, x);
+            }
+        }
+    }
+
+    /**
+     * Private recursive sort method for KTypeIndexedContainer a , [left, right] inclusive using KTypeComparator
+     * for comparison.
+     * @param a
+     * @param left
+     * @param right inclusive
+     * @param parallel if not null, sub-ranges of at least {@link ParallelSort#threshold} elements are sorted by its tasks.
+     */
+    private static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void dualPivotQuicksort(
+            final KTypeIndexedContainer<KType> a,
+            final int left, final int right,
+            /*! #if ($TemplateOptions.KTypeGeneric) !*/
+            final Comparator<? super KType>
+            /*! #else
+            KTypeComparator<? super KType>
+             #end !*/
+            comp, final ParallelSort parallel)
+    {
+        final int len = right - left;
+
+        KType x;
+
+        //insertion sort
+        //to prevent too-big recursion, swap to insertion sort below a certain size
+        if (len < KTypeSort.MIN_LENGTH_FOR_INSERTION_SORT)
+        {
+            // insertion sort on tiny array
+            KTypeSort.insertionsort(a, left, right, comp);
+            return;
+        }
+
+        // median indexes
+        final int sixth = len / 6;
+        final int m1 = left + sixth;
+        final int m2 = m1 + sixth;
+        final int m3 = m2 + sixth;
+        final int m4 = m3 + sixth;
+        final int m5 = m4 + sixth;
+
+        // 5-element sorting network
+        if (comp.compare(a.get(m1), a.get(m2)) > 0 /* a[m1] > a[m2]*/)
+        {
+            x = a.get(m1);
+            a.set(m1, a.get(m2));
+            a.set(m2, x);
+        }
+        if (comp.compare(a.get(m4), a.get(m5)) > 0 /* a[m4] > a[m5]*/)
+        {
+            x = a.get(m4);
+            a.set(m4, a.get(m5));
+            a.set(m5, x);
+
+        }
+        if (comp.compare(a.get(m1), a.get(m3)) > 0 /*a[m1] > a[m3]*/)
+        {
+            x = a.get(m1);
+            a.set(m1, a.get(m3));
+            a.set(m3, x);
+        }
+        if (comp.compare(a.get(m2), a.get(m3)) > 0 /* a[m2] > a[m3]*/)
+        {
+            x = a.get(m2);
+            a.set(m2, a.get(m3));
+            a.set(m3, x);
+
+        }
+        if (comp.compare(a.get(m1), a.get(m4)) > 0 /* a[m1] > a[m4]*/)
+        {
+            x = a.get(m1);
+            a.set(m1, a.get(m4));
+            a.set(m4, x);
+
+        }
+        if (comp.compare(a.get(m3), a.get(m4)) > 0 /*a[m3] > a[m4]*/)
+        {
+            x = a.get(m3);
+            a.set(m3, a.get(m4));
+            a.set(m4, x);
+
+        }
+        if (comp.compare(a.get(m2), a.get(m5)) > 0 /* a[m2] > a[m5]*/)
+        {
+            x = a.get(m2);
+            a.set(m2, a.get(m5));
+            a.set(m5, x);
+        }
+        if (comp.compare(a.get(m2), a.get(m3)) > 0 /*a[m2] > a[m3]*/)
+        {
+            x = a.get(m2);
+            a.set(m2, a.get(m3));
+            a.set(m3, x);
+        }
+        if (comp.compare(a.get(m4), a.get(m5)) > 0 /* a[m4] > a[m5]*/)
+        {
+            x = a.get(m4);
+            a.set(m4, a.get(m5));
+            a.set(m5, x);
+        }
+
+        // pivots: [ < pivot1 | pivot1 <= && <= pivot2 | > pivot2 ]
+        final KType pivot1 = a.get(m2);
+        final KType pivot2 = a.get(m4);
+
+        final boolean diffPivots = (comp.compare(pivot1, pivot2) != 0);
+
+        a.set(m2, a.get(left));
+        a.set(m4, a.get(right));
+        // center part pointers
+        int less = left + 1;
+        int great = right - 1;
+        // sorting
+        if (diffPivots)
+        {
+            for (int k = less; k <= great; k++)
+            {
+                x = a.get(k);
+
+                if (comp.compare(x, pivot1) < 0/* x < pivot1 */)
+                {
+                    a.set(k, a.get(less));
+                    a.set(less, x);
+                    less++;
+                }
+                else if (comp.compare(x, pivot2) > 0/* x > pivot2 */)
+                {
+                    while (comp.compare(a.get(great), pivot2) > 0/* a[great] > pivot2 */&& k < great)
+                    {
+                        great--;
+                    }
+                    a.set(k, a.get(great));
+                    a.set(great, x);
+                    great--;
+                    x = a.get(k);
+
+                    if (comp.compare(x, pivot1) < 0/*x < pivot1*/)
+                    {
+                        a.set(k, a.get(less));
+                        a.set(less, x);
+                        less++;
+                    }
+                }
+            }
+        }
+        else
+        {
+            for (int k = less; k <= great; k++)
+            {
+                x = a.get(k);
+
+                if (comp.compare(x, pivot1) == 0/*x == pivot1*/)
+                {
+                    continue;
+                }
+                if (comp.compare(x, pivot1) < 0/* x < pivot1 */)
+                {
+                    a.set(k, a.get(less));
+                    a.set(less, x);
+                    less++;
+                }
+                else
+                {
+                    while (comp.compare(a.get(great), pivot2) > 0 /* a[great] > pivot2*/&& k < great)
+                    {
+                        great--;
+                    }
+                    a.set(k, a.get(great));
+                    a.set(great, x);
+                    great--;
+                    x = a.get(k);
+
+                    if (comp.compare(x, pivot1) < 0 /*x < pivot1*/)
+                    {
+                        a.set(k, a.get(less));
+                        a.set(less, x);
+                        less++;
+                    }
+                }
+            }
+        }
+        // swap
+        a.set(left, a.get(less - 1));
+        a.set(less - 1, pivot1);
+        a.set(right, a.get(great + 1));
+        a.set(great + 1, pivot2);
+        // left and right parts
+        KTypeSort.forkOrSort(a, left, less - 2, comp, parallel);
+        KTypeSort.forkOrSort(a, great + 2, right, comp, parallel);
+
+        // equal elements
+        if (great - less > len - KTypeSort.DIST_SIZE_DUALQSORT && diffPivots)
+        {
+            for (int k = less; k <= great; k++)
+            {
+                x = a.get(k);
+                if (comp.compare(x, pivot1) == 0/*x == pivot1*/)
+                {
+                    a.set(k, a.get(less));
+                    a.set(less, x);
+                    less++;
+                }
+                else if (comp.compare(x, pivot2) == 0 /*x == pivot2*/)
+                {
+                    a.set(k, a.get(great));
+                    a.set(great, x);
+                    great--;
+                    x = a.get(k);
+
+                    if (comp.compare(x, pivot1) == 0 /*x == pivot1*/)
+                    {
+                        a.set(k, a.get(less));
+                        a.set(less, x);
+                        less++;
+                    }
+                }
+            }
+        }
+        // center part
+        if (diffPivots)
+        {
+            KTypeSort.forkOrSort(a, less, great, comp, parallel);
+        }
+    }
+
+    /*! #if ($TemplateOptions.declareInline("RADIXKEY(value)",
+    "<byte>==>((value & 0xFF) ^ 0x80)",
+    "<char>==>value",
+    "<short>==>((value & 0xFFFF) ^ 0x8000)",
+    "<int>==>((value & 0xFFFFFFFFL) ^ 0x80000000L)",
+    "<long>==>(value ^ Long.MIN_VALUE)",
+    "<float>==>((Float.floatToIntBits(value) ^ ((Float.floatToIntBits(value) >> 31) | 0x80000000)) & 0xFFFFFFFFL)",
+    "<double>==>(Double.doubleToLongBits(value) ^ ((Double.doubleToLongBits(value) >> 63) | Long.MIN_VALUE))")) !*/
+    /**
+     * Maps value to a long whose unsigned ordering is the natural ordering of <code>KType</code>s,
+     * the sign bit being flipped, and for floating-point types all the other bits of negative values too.
+     * (inlined in generated code)
+     */
+    private static <KType> long RADIXKEY(final KType value)
+    {
+        return ((Number) value).longValue() ^ Long.MIN_VALUE;
+    }
+
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.KTypePrimitive) !*/
+    /**
+     * Peeksort of [left, right] inclusive, knowing that [left, leftRunEnd] and [rightRunStart, right] are non-descending:
+     * split at the run boundary nearest to the middle, sort both sides recursively then merge them.
+     */
+    private static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void peeksort(final KType[] a, final int left, final int right,
+            final int leftRunEnd, final int rightRunStart, final KType[] buffer)
+    {
+        if (leftRunEnd == right || rightRunStart == left)
+        {
+            //a single run
+            return;
+        }
+
+        if (right - left < KTypeSort.MIN_LENGTH_FOR_INSERTION_SORT)
+        {
+            KTypeSort.insertionsort(a, left, right);
+            return;
+        }
+
+        final int middle = (left + right) >>> 1;
+
+        if (middle <= leftRunEnd)
+        {
+            KTypeSort.peeksort(a, leftRunEnd + 1, right, leftRunEnd + 1, rightRunStart, buffer);
+            KTypeSort.merge(a, left, leftRunEnd + 1, right, buffer);
+        }
+        else if (middle >= rightRunStart)
+        {
+            KTypeSort.peeksort(a, left, rightRunStart - 1, leftRunEnd, rightRunStart - 1, buffer);
+            KTypeSort.merge(a, left, rightRunStart, right, buffer);
+        }
+        else
+        {
+            //bounds of the run around the middle
+            int runStart = middle;
+
+            while (runStart > left && !Intrinsics.<KType> isCompInfUnchecked(a[runStart], a[runStart - 1]))
+            {
+                runStart--;
+            }
+
+            int runEnd = middle;
+
+            while (runEnd < right && !Intrinsics.<KType> isCompInfUnchecked(a[runEnd + 1], a[runEnd]))
+            {
+                runEnd++;
+            }
+
+            if (runStart == left && runEnd == right)
+            {
+                return;
+            }
+
+            if (middle - runStart < runEnd - middle)
+            {
+                KTypeSort.peeksort(a, left, runStart - 1, leftRunEnd, runStart - 1, buffer);
+                KTypeSort.peeksort(a, runStart, right, runEnd, rightRunStart, buffer);
+                KTypeSort.merge(a, left, runStart, right, buffer);
+            }
+            else
+            {
+                KTypeSort.peeksort(a, left, runEnd, leftRunEnd, runStart, buffer);
+                KTypeSort.peeksort(a, runEnd + 1, right, runEnd + 1, rightRunStart, buffer);
+                KTypeSort.merge(a, left, runEnd + 1, right, buffer);
+            }
+        }
+    }
+
+    /**
+     * Stable merge of the sorted [left, middle[ and [middle, right], moving the smaller of them
+     * through buffer, once the elements already in place at both ends are skipped.
+     */
+    private static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void merge(final KType[] a, final int left, final int middle,
+            final int right, final KType[] buffer)
+    {
+        final KType lastOfLeft = a[middle - 1];
+        final KType firstOfRight = a[middle];
+
+        if (!Intrinsics.<KType> isCompSupUnchecked(lastOfLeft, firstOfRight))
+        {
+            //already in order
+            return;
+        }
+
+        //the left elements not greater than firstOfRight are in place
+        int low = left;
+        int high = middle - 1;
+
+        while (low < high)
+        {
+            final int mid = (low + high) >>> 1;
+
+            if (Intrinsics.<KType> isCompSupUnchecked(a[mid], firstOfRight))
+            {
+                high = mid;
+            }
+            else
+            {
+                low = mid + 1;
+            }
+        }
+
+        final int from = low;
+
+        //the right elements not smaller than lastOfLeft are in place
+        low = middle;
+        high = right;
+
+        while (low < high)
+        {
+            final int mid = (low + high + 1) >>> 1;
+
+            if (Intrinsics.<KType> isCompInfUnchecked(a[mid], lastOfLeft))
+            {
+                low = mid;
+            }
+            else
+            {
+                high = mid - 1;
+            }
+        }
+
+        final int to = low;
+
+        if (middle - from <= to - middle + 1)
+        {
+            //merge forward from buffer holding [from, middle[
+            final int leftLength = middle - from;
+
+            System.arraycopy(a, from, buffer, 0, leftLength);
+
+            int i = 0;
+            int j = middle;
+            int k = from;
+
+            while (i < leftLength && j <= to)
+            {
+                if (Intrinsics.<KType> isCompInfUnchecked(a[j], buffer[i]))
+                {
+                    a[k++] = a[j++];
+                }
+                else
+                {
+                    a[k++] = buffer[i++];
+                }
+            }
+
+            System.arraycopy(buffer, i, a, k, leftLength - i);
+        }
+        else
+        {
+            //merge backward from buffer holding [middle, to]
+            final int rightLength = to - middle + 1;
+
+            System.arraycopy(a, middle, buffer, 0, rightLength);
+
+            int i = middle - 1;
+            int j = rightLength - 1;
+            int k = to;
+
+            while (j >= 0 && i >= from)
+            {
+                if (Intrinsics.<KType> isCompSupUnchecked(a[i], buffer[j]))
+                {
+                    a[k--] = a[i--];
+                }
+                else
+                {
+                    a[k--] = buffer[j--];
+                }
+            }
+
+            System.arraycopy(buffer, 0, a, from, j + 1);
+        }
+    }
+
+    /**
+     * Reverse [left, right] inclusive.
+     */
+    private static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void reverse(final KType[] a, final int left, final int right)
+    {
+        KType x;
+
+        for (int i = left, j = right; i < j; i++, j--)
+        {
+            x = a[i];
+            a[i] = a[j];
+            a[j] = x;
+        }
+    }
+
+    /*! #end !*/
+
+    /**
+     * Sort [left, right] inclusive as a task of parallel if it is not null and the range is large enough, else in the current thread.
+     */
+    private static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void forkOrSort(final KType[] a, final int left, final int right,
+            final ParallelSort parallel)
+    {
+        if (parallel == null || right - left < parallel.threshold)
+        {
+            KTypeSort.dualPivotQuicksort(a, left, right, null);
+            return;
+        }
+
+        parallel.fork(new Runnable() {
+
+            @Override
+            public void run()
+            {
+                KTypeSort.dualPivotQuicksort(a, left, right, parallel);
+            }
+        });
+    }
+
+    /**
+     * Sort [left, right] inclusive as a task of parallel if it is not null and the range is large enough, else in the current thread.
+     */
+    private static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void forkOrSort(final KTypeIndexedContainer<KType> a, final int left,
+            final int right, final ParallelSort parallel)
+    {
+        if (parallel == null || right - left < parallel.threshold)
+        {
+            KTypeSort.dualPivotQuicksort(a, left, right, null);
+            return;
+        }
+
+        parallel.fork(new Runnable() {
+
+            @Override
+            public void run()
+            {
+                KTypeSort.dualPivotQuicksort(a, left, right, parallel);
+            }
+        });
+    }
+
+    /**
+     * Sort [left, right] inclusive as a task of parallel if it is not null and the range is large enough, else in the current thread.
+     */
+    private static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void forkOrSort(final KType[] a, final int left, final int right,
+            /*! #if ($TemplateOptions.KTypeGeneric) !*/
+            final Comparator<? super KType>
+            /*! #else
+            final KTypeComparator<? super KType>
+             #end !*/
+            comp, final ParallelSort parallel)
+    {
+        if (parallel == null || right - left < parallel.threshold)
+        {
+            KTypeSort.dualPivotQuicksort(a, left, right, comp, null);
+            return;
+        }
+
+        parallel.fork(new Runnable() {
+
+            @Override
+            public void run()
+            {
+                KTypeSort.dualPivotQuicksort(a, left, right, comp, parallel);
+            }
+        });
+    }
+
+    /**
+     * Sort [left, right] inclusive as a task of parallel if it is not null and the range is large enough, else in the current thread.
+     */
+    private static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void forkOrSort(final KTypeIndexedContainer<KType> a, final int left,
+            final int right,
+            /*! #if ($TemplateOptions.KTypeGeneric) !*/
+            final Comparator<? super KType>
+            /*! #else
+            final KTypeComparator<? super KType>
+             #end !*/
+            comp, final ParallelSort parallel)
+    {
+        if (parallel == null || right - left < parallel.threshold)
+        {
+            KTypeSort.dualPivotQuicksort(a, left, right, comp, null);
+            return;
+        }
+
+        parallel.fork(new Runnable() {
+
+            @Override
+            public void run()
+            {
+                KTypeSort.dualPivotQuicksort(a, left, right, comp, parallel);
+            }
+        });
+    }
+
+    /**
+     * Quickselect of index k in [left, right] inclusive for Comparable objects
+     * or natural ordering for primitives, partitioning only the part containing k.
+     */
+    private static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void dualPivotSelect(final KType[] a, final int left, final int right,
+            final int k)
+    {
+        int from = left;
+        int to = right;
+
+        while (to - from >= KTypeSort.MIN_LENGTH_FOR_INSERTION_SORT)
+        {
+            final long bounds = KTypeSort.dualPivotPartition(a, from, to, null);
+
+            final int less = (int) (bounds >>> 32) & Integer.MAX_VALUE;
+            final int great = (int) bounds;
+
+            if (k < less - 1)
+            {
+                to = less - 2;
+            }
+            else if (k > great + 1)
+            {
+                from = great + 2;
+            }
+            else if (k < less || k > great || bounds < 0)
+            {
+                //k is one of the pivots, or in a center part equal to them
+                return;
+            }
+            else
+            {
+                final long center = KTypeSort.dualPivotCenter(a, less, great, to - from, null);
+
+                from = (int) (center >>> 32);
+                to = (int) center;
+
+                if (k < from || k > to)
+                {
+                    //k is equal to one of the pivots
+                    return;
+                }
+            }
+        }
+
+        KTypeSort.insertionsort(a, from, to);
+    }
+
+    /**
+     * Quickselect of the indices ranks[fromRank, toRank[ in [left, right] inclusive for Comparable objects
+     * or natural ordering for primitives, partitioning only the parts containing some of them.
+     */
+    private static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void dualPivotSelect(final KType[] a, final int left, final int right,
+            final int[] ranks, final int fromRank, final int toRank)
+    {
+        if (right - left < KTypeSort.MIN_LENGTH_FOR_INSERTION_SORT)
+        {
+            KTypeSort.insertionsort(a, left, right);
+            return;
+        }
+
+        final long bounds = KTypeSort.dualPivotPartition(a, left, right, null);
+
+        final int less = (int) (bounds >>> 32) & Integer.MAX_VALUE;
+        final int great = (int) bounds;
+
+        // ranks of the left part are [fromRank, lessRank[, those of the right part [greatRank, toRank[
+        final int lessRank = KTypeSort.lowerBound(ranks, fromRank, toRank, less - 1);
+        final int greatRank = KTypeSort.lowerBound(ranks, lessRank, toRank, great + 2);
+
+        if (lessRank > fromRank)
+        {
+            KTypeSort.dualPivotSelect(a, left, less - 2, ranks, fromRank, lessRank);
+        }
+
+        if (toRank > greatRank)
+        {
+            KTypeSort.dualPivotSelect(a, great + 2, right, ranks, greatRank, toRank);
+        }
+
+        // center part, unless equal to the pivots
+        if (bounds >= 0 && greatRank > lessRank)
+        {
+            final long center = KTypeSort.dualPivotCenter(a, less, great, right - left, null);
+
+            final int centerLess = (int) (center >>> 32);
+            final int centerGreat = (int) center;
+
+            final int centerFromRank = KTypeSort.lowerBound(ranks, lessRank, greatRank, centerLess);
+            final int centerToRank = KTypeSort.lowerBound(ranks, centerFromRank, greatRank, centerGreat + 1);
+
+            if (centerToRank > centerFromRank)
+            {
+                KTypeSort.dualPivotSelect(a, centerLess, centerGreat, ranks, centerFromRank, centerToRank);
+            }
+        }
+    }
+
+    /**
+     * Quickselect of index k in [left, right] inclusive using KTypeComparator for comparison,
+     * partitioning only the part containing k.
+     */
+    private static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void dualPivotSelect(final KType[] a, final int left, final int right,
+            final int k,
+            /*! #if ($TemplateOptions.KTypeGeneric) !*/
+            final Comparator<? super KType>
+            /*! #else
+            KTypeComparator<? super KType>
+             #end !*/
+            comp)
+    {
+        int from = left;
+        int to = right;
+
+        while (to - from >= KTypeSort.MIN_LENGTH_FOR_INSERTION_SORT)
+        {
+            final long bounds = KTypeSort.dualPivotPartition(a, from, to, comp, null);
+
+            final int less = (int) (bounds >>> 32) & Integer.MAX_VALUE;
+            final int great = (int) bounds;
+
+            if (k < less - 1)
+            {
+                to = less - 2;
+            }
+            else if (k > great + 1)
+            {
+                from = great + 2;
+            }
+            else if (k < less || k > great || bounds < 0)
+            {
+                //k is one of the pivots, or in a center part equal to them
+                return;
+            }
+            else
+            {
+                final long center = KTypeSort.dualPivotCenter(a, less, great, to - from, comp, null);
+
+                from = (int) (center >>> 32);
+                to = (int) center;
+
+                if (k < from || k > to)
+                {
+                    //k is equal to one of the pivots
+                    return;
+                }
             }
         }
+
+        KTypeSort.insertionsort(a, from, to, comp);
     }
 
     /**
-     * Private recursive sort method for KTypeIndexedContainer a , [left, right] inclusive using KTypeComparator
-     * for comparison.
-     * @param a
-     * @param left
-     * @param right inclusive
+     * Quickselect of the indices ranks[fromRank, toRank[ in [left, right] inclusive using KTypeComparator for comparison,
+     * partitioning only the parts containing some of them.
      */
-    private static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void dualPivotQuicksort(
-            final KTypeIndexedContainer<KType> a,
-            final int left, final int right,
+    private static/*! #if ($TemplateOptions.KTypeGeneric) !*/<KType> /*! #end !*/void dualPivotSelect(final KType[] a, final int left, final int right,
+            final int[] ranks, final int fromRank, final int toRank,
             /*! #if ($TemplateOptions.KTypeGeneric) !*/
             final Comparator<? super KType>
             /*! #else
@@ -944,226 +2432,255 @@ public final class KTypeSort
              #end !*/
             comp)
     {
-        final int len = right - left;
-
-        KType x;
-
-        //insertion sort
-        //to prevent too-big recursion, swap to insertion sort below a certain size
-        if (len < KTypeSort.MIN_LENGTH_FOR_INSERTION_SORT)
+        if (right - left < KTypeSort.MIN_LENGTH_FOR_INSERTION_SORT)
         {
-            // insertion sort on tiny array
             KTypeSort.insertionsort(a, left, right, comp);
             return;
         }
 
-        // median indexes
-        final int sixth = len / 6;
-        final int m1 = left + sixth;
-        final int m2 = m1 + sixth;
-        final int m3 = m2 + sixth;
-        final int m4 = m3 + sixth;
-        final int m5 = m4 + sixth;
+        final long bounds = KTypeSort.dualPivotPartition(a, left, right, comp, null);
 
-        // 5-element sorting network
-        if (comp.compare(a.get(m1), a.get(m2)) > 0 /* a[m1] > a[m2]*/)
+        final int less = (int) (bounds >>> 32) & Integer.MAX_VALUE;
+        final int great = (int) bounds;
+
+        // ranks of the left part are [fromRank, lessRank[, those of the right part [greatRank, toRank[
+        final int lessRank = KTypeSort.lowerBound(ranks, fromRank, toRank, less - 1);
+        final int greatRank = KTypeSort.lowerBound(ranks, lessRank, toRank, great + 2);
+
+        if (lessRank > fromRank)
         {
-            x = a.get(m1);
-            a.set(m1, a.get(m2));
-            a.set(m2, x);
+            KTypeSort.dualPivotSelect(a, left, less - 2, ranks, fromRank, lessRank, comp);
         }
-        if (comp.compare(a.get(m4), a.get(m5)) > 0 /* a[m4] > a[m5]*/)
-        {
-            x = a.get(m4);
-            a.set(m4, a.get(m5));
-            a.set(m5, x);
 
-        }
-        if (comp.compare(a.get(m1), a.get(m3)) > 0 /*a[m1] > a[m3]*/)
+        if (toRank > greatRank)
         {
-            x = a.get(m1);
-            a.set(m1, a.get(m3));
-            a.set(m3, x);
+            KTypeSort.dualPivotSelect(a, great + 2, right, ranks, greatRank, toRank, comp);
         }
-        if (comp.compare(a.get(m2), a.get(m3)) > 0 /* a[m2] > a[m3]*/)
+
+        // center part, unless equal to the pivots
+        if (bounds >= 0 && greatRank > lessRank)
         {
-            x = a.get(m2);
-            a.set(m2, a.get(m3));
-            a.set(m3, x);
+            final long center = KTypeSort.dualPivotCenter(a, less, great, right - left, comp, null);
+
+            final int centerLess = (int) (center >>> 32);
+            final int centerGreat = (int) center;
+
+            final int centerFromRank = KTypeSort.lowerBound(ranks, lessRank, greatRank, centerLess);
+            final int centerToRank = KTypeSort.lowerBound(ranks, centerFromRank, greatRank, centerGreat + 1);
 
+            if (centerToRank > centerFromRank)
+            {
+                KTypeSort.dualPivotSelect(a, centerLess, centerGreat, ranks, centerFromRank, centerToRank, comp);
+            }
         }
-        if (comp.compare(a.get(m1), a.get(m4)) > 0 /* a[m1] > a[m4]*/)
+    }
+
+    /**
+     * @return the first index in [from, to[ of the ascending ranks whose rank is >= index, or to if none.
+     */
+    private static int lowerBound(final int[] ranks, final int from, final int to, final int index)
+    {
+        int low = from;
+        int high = to;
+
+        while (low < high)
         {
-            x = a.get(m1);
-            a.set(m1, a.get(m4));
-            a.set(m4, x);
+            final int mid = (low + high) >>> 1;
 
+            if (ranks[mid] < index)
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
+            }
         }
-        if (comp.compare(a.get(m3), a.get(m4)) > 0 /*a[m3] > a[m4]*/)
+
+        return low;
+    }
+
+    /**
+     * Applies the swap of the elements i and j to companions, if not null.
+     */
+    private static void swapCompanions(final IndirectSwapper companions, final int i, final int j)
+    {
+        if (companions != null)
         {
-            x = a.get(m3);
-            a.set(m3, a.get(m4));
-            a.set(m4, x);
+            companions.swap(i, j);
+        }
+    }
 
+    private static void checkRank(final int k, final int beginIndex, final int endIndex) {
+
+        if (k < beginIndex || k >= endIndex) {
+
+            throw new IndexOutOfBoundsException("Index k " + k + " out of bounds [" + beginIndex + ", " + endIndex + "[.");
         }
-        if (comp.compare(a.get(m2), a.get(m5)) > 0 /* a[m2] > a[m5]*/)
-        {
-            x = a.get(m2);
-            a.set(m2, a.get(m5));
-            a.set(m5, x);
+    }
+
+    private static void checkRanks(final int[] ranks, final int beginIndex, final int endIndex) {
+
+        for (int i = 0; i < ranks.length; i++) {
+
+            KTypeSort.checkRank(ranks[i], beginIndex, endIndex);
+
+            if (i > 0 && ranks[i] < ranks[i - 1]) {
+
+                throw new IllegalArgumentException("ranks[" + i + "] " + ranks[i] + " is < ranks[" + (i - 1) + "] " + ranks[i - 1]);
+            }
         }
-        if (comp.compare(a.get(m2), a.get(m3)) > 0 /*a[m2] > a[m3]*/)
-        {
-            x = a.get(m2);
-            a.set(m2, a.get(m3));
-            a.set(m3, x);
+    }
+
+    private static void checkRanges(final int beginIndex, final int endIndex, final int size) {
+
+        if (beginIndex > endIndex) {
+
+            throw new IllegalArgumentException("Index beginIndex " + beginIndex + " is > endIndex " + endIndex);
         }
-        if (comp.compare(a.get(m4), a.get(m5)) > 0 /* a[m4] > a[m5]*/)
-        {
-            x = a.get(m4);
-            a.set(m4, a.get(m5));
-            a.set(m5, x);
+
+        if (beginIndex < 0) {
+
+            throw new IndexOutOfBoundsException("Index beginIndex < 0");
         }
 
-        // pivots: [ < pivot1 | pivot1 <= && <= pivot2 | > pivot2 ]
-        final KType pivot1 = a.get(m2);
-        final KType pivot2 = a.get(m4);
+        if (endIndex > size) {
 
-        final boolean diffPivots = (comp.compare(pivot1, pivot2) != 0);
+            throw new IndexOutOfBoundsException("Index endIndex " + endIndex + " out of bounds [" + 0 + ", " + size + "].");
+        }
+    }
 
-        a.set(m2, a.get(left));
-        a.set(m4, a.get(right));
-        // center part pointers
-        int less = left + 1;
-        int great = right - 1;
-        // sorting
-        if (diffPivots)
+    /**
+     * Tracks the tasks of a parallel sort: tasks fork sub-tasks without waiting for them,
+     * only the calling thread waits in {@link #await()} until no task is pending.
+     */
+    private static final class ParallelSort
+    {
+        /**
+         * Minimum range length to sort as a separate task.
+         */
+        final int threshold;
+
+        private final ExecutorService executor;
+
+        private final AtomicInteger pending = new AtomicInteger();
+
+        /**
+         * First failure of a task, guarded by this.
+         */
+        private Throwable failure;
+
+        ParallelSort(final ExecutorService executor, final int threshold)
         {
-            for (int k = less; k <= great; k++)
-            {
-                x = a.get(k);
+            assert executor != null;
 
-                if (comp.compare(x, pivot1) < 0/* x < pivot1 */)
-                {
-                    a.set(k, a.get(less));
-                    a.set(less, x);
-                    less++;
-                }
-                else if (comp.compare(x, pivot2) > 0/* x > pivot2 */)
+            this.executor = executor;
+            this.threshold = threshold;
+        }
+
+        void fork(final Runnable task)
+        {
+            this.pending.incrementAndGet();
+
+            final Runnable tracked = new Runnable() {
+
+                @Override
+                public void run()
                 {
-                    while (comp.compare(a.get(great), pivot2) > 0/* a[great] > pivot2 */&& k < great)
+                    try
                     {
-                        great--;
+                        task.run();
                     }
-                    a.set(k, a.get(great));
-                    a.set(great, x);
-                    great--;
-                    x = a.get(k);
-
-                    if (comp.compare(x, pivot1) < 0/*x < pivot1*/)
+                    catch (final Throwable t)
                     {
-                        a.set(k, a.get(less));
-                        a.set(less, x);
-                        less++;
+                        fail(t);
+                    }
+                    finally
+                    {
+                        done();
                     }
                 }
+            };
+
+            try
+            {
+                this.executor.execute(tracked);
+            }
+            catch (final RejectedExecutionException e)
+            {
+                //saturated or shut down executor: run it here.
+                tracked.run();
             }
         }
-        else
+
+        /**
+         * Wait for all the tasks to complete, then rethrow the first failure if any.
+         */
+        void await()
         {
-            for (int k = less; k <= great; k++)
-            {
-                x = a.get(k);
+            boolean interrupted = false;
 
-                if (comp.compare(x, pivot1) == 0/*x == pivot1*/)
-                {
-                    continue;
-                }
-                if (comp.compare(x, pivot1) < 0/* x < pivot1 */)
-                {
-                    a.set(k, a.get(less));
-                    a.set(less, x);
-                    less++;
-                }
-                else
+            synchronized (this)
+            {
+                while (this.pending.get() != 0)
                 {
-                    while (comp.compare(a.get(great), pivot2) > 0 /* a[great] > pivot2*/&& k < great)
+                    try
                     {
-                        great--;
+                        wait();
                     }
-                    a.set(k, a.get(great));
-                    a.set(great, x);
-                    great--;
-                    x = a.get(k);
-
-                    if (comp.compare(x, pivot1) < 0 /*x < pivot1*/)
+                    catch (final InterruptedException e)
                     {
-                        a.set(k, a.get(less));
-                        a.set(less, x);
-                        less++;
+                        //the tasks are still sorting the range: keep waiting for them.
+                        interrupted = true;
                     }
                 }
             }
-        }
-        // swap
-        a.set(left, a.get(less - 1));
-        a.set(less - 1, pivot1);
-        a.set(right, a.get(great + 1));
-        a.set(great + 1, pivot2);
-        // left and right parts
-        KTypeSort.dualPivotQuicksort(a, left, less - 2, comp);
-        KTypeSort.dualPivotQuicksort(a, great + 2, right, comp);
 
-        // equal elements
-        if (great - less > len - KTypeSort.DIST_SIZE_DUALQSORT && diffPivots)
-        {
-            for (int k = less; k <= great; k++)
+            if (interrupted)
             {
-                x = a.get(k);
-                if (comp.compare(x, pivot1) == 0/*x == pivot1*/)
-                {
-                    a.set(k, a.get(less));
-                    a.set(less, x);
-                    less++;
-                }
-                else if (comp.compare(x, pivot2) == 0 /*x == pivot2*/)
-                {
-                    a.set(k, a.get(great));
-                    a.set(great, x);
-                    great--;
-                    x = a.get(k);
-
-                    if (comp.compare(x, pivot1) == 0 /*x == pivot1*/)
-                    {
-                        a.set(k, a.get(less));
-                        a.set(less, x);
-                        less++;
-                    }
-                }
+                Thread.currentThread().interrupt();
             }
-        }
-        // center part
-        if (diffPivots)
-        {
-            KTypeSort.dualPivotQuicksort(a, less, great, comp);
-        }
-    }
 
-    private static void checkRanges(final int beginIndex, final int endIndex, final int size) {
+            final Throwable t;
 
-        if (beginIndex > endIndex) {
+            synchronized (this)
+            {
+                t = this.failure;
+            }
 
-            throw new IllegalArgumentException("Index beginIndex " + beginIndex + " is > endIndex " + endIndex);
-        }
+            if (t instanceof RuntimeException)
+            {
+                throw (RuntimeException) t;
+            }
 
-        if (beginIndex < 0) {
+            if (t instanceof Error)
+            {
+                throw (Error) t;
+            }
 
-            throw new IndexOutOfBoundsException("Index beginIndex < 0");
+            if (t != null)
+            {
+                throw new RuntimeException(t);
+            }
         }
 
-        if (endIndex > size) {
+        private synchronized void fail(final Throwable t)
+        {
+            if (this.failure == null)
+            {
+                this.failure = t;
+            }
+        }
 
-            throw new IndexOutOfBoundsException("Index endIndex " + endIndex + " out of bounds [" + 0 + ", " + size + "].");
+        private void done()
+        {
+            if (this.pending.decrementAndGet() == 0)
+            {
+                synchronized (this)
+                {
+                    notifyAll();
+                }
+            }
         }
     }
-}
\ No newline at end of file
+}
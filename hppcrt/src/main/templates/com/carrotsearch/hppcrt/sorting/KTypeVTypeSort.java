@@ -0,0 +1,278 @@
+package com.carrotsearch.hppcrt.sorting;
+
+import java.util.Comparator;
+
+import com.carrotsearch.hppcrt.*;
+import com.carrotsearch.hppcrt.strategies.*;
+
+/*! #import("com/carrotsearch/hppcrt/Intrinsics.java") !*/
+/**
+ * In-place co-sorting of parallel arrays: sorts an array of <code>KType</code> keys, applying
+ * the same moves to a companion array of <code>VType</code> values, so that values[i] keeps
+ * following keys[i], and optionally to any number of other companion arrays through an {@link IndirectSwapper}.
+ * <p>
+ * Compared to sorting an order array by {@link IndirectSort} then permuting every array,
+ * co-sorting needs neither temporary arrays nor permutation passes.
+ * </p>
+ * <p><b>
+ * This routine uses Dual-pivot Quicksort, from [Vladimir Yaroslavskiy 2009], so is NOT stable: the
+ * companions of equal keys end up in unspecified order.
+ * </b></p>
+ */
+/*! ${TemplateOptions.generatedAnnotation} !*/
+public final class KTypeVTypeSort
+{
+    /**
+     * Minimum window length to apply insertion sort.
+     */
+    private static final int MIN_LENGTH_FOR_INSERTION_SORT = 24;
+
+    private KTypeVTypeSort()
+    {
+        // Utility class, nothing to do
+    }
+
+    /**
+     * In-place co-sort by dual-pivot quicksort of the naturally comparable <code>KType</code> keys from [beginIndex, endIndex[,
+     * applying the same moves to values and to companions.
+     * @param values the companion values, of length at least endIndex.
+     * @param companions swaps the elements of any other companion arrays, may be null.
+     #if ($TemplateOptions.KTypeGeneric)
+     * @throws ClassCastException if the keys are not mutually Comparable.
+     #end
+     */
+    public static <KType, VType> void quicksort(final KType[] keys, final int beginIndex, final int endIndex, final VType[] values,
+            final IndirectSwapper companions)
+    {
+        KTypeVTypeSort.checkRanges(beginIndex, endIndex, keys.length, values.length);
+
+        if (endIndex - beginIndex > 1)
+        {
+            KTypeVTypeSort.dualPivotQuicksort(keys, beginIndex, endIndex - 1, KTypeVTypeSort.valuesSwapper(values, companions));
+        }
+    }
+
+    /**
+     * In-place co-sort by dual-pivot quicksort of the naturally comparable <code>KType</code> keys from [beginIndex, endIndex[,
+     * applying the same moves to values.
+     * @see #quicksort(KType[], int, int, VType[], IndirectSwapper)
+     */
+    public static <KType, VType> void quicksort(final KType[] keys, final int beginIndex, final int endIndex, final VType[] values)
+    {
+        KTypeVTypeSort.quicksort(keys, beginIndex, endIndex, values, (IndirectSwapper) null);
+    }
+
+    /**
+     * In-place co-sort by dual-pivot quicksort of all the naturally comparable <code>KType</code> keys,
+     * applying the same moves to values.
+     * @see #quicksort(KType[], int, int, VType[], IndirectSwapper)
+     */
+    public static <KType, VType> void quicksort(final KType[] keys, final VType[] values)
+    {
+        KTypeVTypeSort.quicksort(keys, 0, keys.length, values, (IndirectSwapper) null);
+    }
+
+    /**
+     * In-place co-sort by dual-pivot quicksort of the <code>KType</code> keys from [beginIndex, endIndex[
+     * ordered by a #if ($TemplateOptions.KTypeGeneric) <code>Comparator</code> #else <code>KTypeComparator</code> #end,
+     * applying the same moves to values and to companions.
+     * @param values the companion values, of length at least endIndex.
+     * @param companions swaps the elements of any other companion arrays, may be null.
+     */
+    public static <KType, VType> void quicksort(final KType[] keys, final int beginIndex, final int endIndex, final VType[] values,
+            /*! #if ($TemplateOptions.KTypeGeneric) !*/
+            final Comparator<? super KType>
+            /*! #else
+            KTypeComparator<? super KType>
+             #end !*/
+            comp, final IndirectSwapper companions)
+    {
+        KTypeVTypeSort.checkRanges(beginIndex, endIndex, keys.length, values.length);
+
+        if (endIndex - beginIndex > 1)
+        {
+            KTypeVTypeSort.dualPivotQuicksort(keys, beginIndex, endIndex - 1, comp, KTypeVTypeSort.valuesSwapper(values, companions));
+        }
+    }
+
+    /**
+     * In-place co-sort by dual-pivot quicksort of the <code>KType</code> keys from [beginIndex, endIndex[
+     * ordered by a #if ($TemplateOptions.KTypeGeneric) <code>Comparator</code> #else <code>KTypeComparator</code> #end,
+     * applying the same moves to values.
+     * @see #quicksort(KType[], int, int, VType[], IndirectSwapper)
+     */
+    public static <KType, VType> void quicksort(final KType[] keys, final int beginIndex, final int endIndex, final VType[] values,
+            /*! #if ($TemplateOptions.KTypeGeneric) !*/
+            final Comparator<? super KType>
+            /*! #else
+            KTypeComparator<? super KType>
+             #end !*/
+            comp)
+    {
+        KTypeVTypeSort.quicksort(keys, beginIndex, endIndex, values, comp, null);
+    }
+
+    /**
+     * In-place co-sort by dual-pivot quicksort of all the <code>KType</code> keys
+     * ordered by a #if ($TemplateOptions.KTypeGeneric) <code>Comparator</code> #else <code>KTypeComparator</code> #end,
+     * applying the same moves to values.
+     * @see #quicksort(KType[], int, int, VType[], IndirectSwapper)
+     */
+    public static <KType, VType> void quicksort(final KType[] keys, final VType[] values,
+            /*! #if ($TemplateOptions.KTypeGeneric) !*/
+            final Comparator<? super KType>
+            /*! #else
+            KTypeComparator<? super KType>
+             #end !*/
+            comp)
+    {
+        KTypeVTypeSort.quicksort(keys, 0, keys.length, values, comp, null);
+    }
+
+    /**
+     * Private recursive sort method, [left, right] inclusive for Comparable objects
+     * or natural ordering for primitives, moving the values and companions along with the keys through swapper.
+     * The partitioning is shared with KTypeSort.
+     */
+    /*! #if ($TemplateOptions.KTypeGeneric) !*/
+    @SuppressWarnings("unchecked")
+    //because of Intrinsics.xxxUnchecked inlining for objects.
+    /*! #end !*/
+    private static <KType, VType> void dualPivotQuicksort(final KType[] keys, final int left, final int right,
+            final IndirectSwapper swapper)
+    {
+        //insertion sort
+        //to prevent too-big recursion, swap to insertion sort below a certain size
+        if (right - left < KTypeVTypeSort.MIN_LENGTH_FOR_INSERTION_SORT)
+        {
+            for (int i = left + 1; i <= right; i++)
+            {
+                for (int j = i; j > left && Intrinsics.<KType> isCompInfUnchecked(keys[j], keys[j - 1]); j--)
+                {
+                    KTypeVTypeSort.swap(keys, swapper, j, j - 1);
+                }
+            }
+
+            return;
+        }
+
+        final long bounds = KTypeSort.dualPivotPartition(keys, left, right, swapper);
+
+        final int less = (int) (bounds >>> 32) & Integer.MAX_VALUE;
+        final int great = (int) bounds;
+
+        // left and right parts
+        KTypeVTypeSort.dualPivotQuicksort(keys, left, less - 2, swapper);
+        KTypeVTypeSort.dualPivotQuicksort(keys, great + 2, right, swapper);
+
+        // center part, without the elements equal to the pivots
+        if (bounds >= 0)
+        {
+            final long center = KTypeSort.dualPivotCenter(keys, less, great, right - left, swapper);
+
+            KTypeVTypeSort.dualPivotQuicksort(keys, (int) (center >>> 32), (int) center, swapper);
+        }
+    }
+
+    /**
+     * Private recursive sort method, [left, right] inclusive for a Comparator,
+     * moving the values and companions along with the keys through swapper.
+     */
+    private static <KType, VType> void dualPivotQuicksort(final KType[] keys, final int left, final int right,
+            /*! #if ($TemplateOptions.KTypeGeneric) !*/
+            final Comparator<? super KType>
+            /*! #else
+            final KTypeComparator<? super KType>
+             #end !*/
+            comp, final IndirectSwapper swapper)
+    {
+        //insertion sort
+        //to prevent too-big recursion, swap to insertion sort below a certain size
+        if (right - left < KTypeVTypeSort.MIN_LENGTH_FOR_INSERTION_SORT)
+        {
+            for (int i = left + 1; i <= right; i++)
+            {
+                for (int j = i; j > left && comp.compare(keys[j], keys[j - 1]) < 0; j--)
+                {
+                    KTypeVTypeSort.swap(keys, swapper, j, j - 1);
+                }
+            }
+
+            return;
+        }
+
+        final long bounds = KTypeSort.dualPivotPartition(keys, left, right, comp, swapper);
+
+        final int less = (int) (bounds >>> 32) & Integer.MAX_VALUE;
+        final int great = (int) bounds;
+
+        // left and right parts
+        KTypeVTypeSort.dualPivotQuicksort(keys, left, less - 2, comp, swapper);
+        KTypeVTypeSort.dualPivotQuicksort(keys, great + 2, right, comp, swapper);
+
+        // center part, without the elements equal to the pivots
+        if (bounds >= 0)
+        {
+            final long center = KTypeSort.dualPivotCenter(keys, less, great, right - left, comp, swapper);
+
+            KTypeVTypeSort.dualPivotQuicksort(keys, (int) (center >>> 32), (int) center, comp, swapper);
+        }
+    }
+
+    /**
+     * @return the swapper applying the moves of the keys to values, then to companions if not null.
+     */
+    private static <KType, VType> IndirectSwapper valuesSwapper(final VType[] values, final IndirectSwapper companions)
+    {
+        return new IndirectSwapper() {
+
+            @Override
+            public void swap(final int indexA, final int indexB)
+            {
+                final VType value = values[indexA];
+                values[indexA] = values[indexB];
+                values[indexB] = value;
+
+                if (companions != null)
+                {
+                    companions.swap(indexA, indexB);
+                }
+            }
+        };
+    }
+
+    /**
+     * Swap the keys i and j, and the elements i and j of swapper.
+     */
+    private static <KType, VType> void swap(final KType[] keys, final IndirectSwapper swapper, final int i, final int j)
+    {
+        final KType key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+
+        swapper.swap(i, j);
+    }
+
+    private static void checkRanges(final int beginIndex, final int endIndex, final int keysSize, final int valuesSize) {
+
+        if (beginIndex > endIndex) {
+
+            throw new IllegalArgumentException("Index beginIndex " + beginIndex + " is > endIndex " + endIndex);
+        }
+
+        if (beginIndex < 0) {
+
+            throw new IndexOutOfBoundsException("Index beginIndex < 0");
+        }
+
+        if (endIndex > keysSize) {
+
+            throw new IndexOutOfBoundsException("Index endIndex " + endIndex + " out of keys bounds [" + 0 + ", " + keysSize + "].");
+        }
+
+        if (endIndex > valuesSize) {
+
+            throw new IndexOutOfBoundsException("Index endIndex " + endIndex + " out of values bounds [" + 0 + ", " + valuesSize + "].");
+        }
+    }
+}
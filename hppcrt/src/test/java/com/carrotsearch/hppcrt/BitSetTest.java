@@ -0,0 +1,262 @@
+package com.carrotsearch.hppcrt;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.carrotsearch.hppcrt.cursors.IntCursor;
+import com.carrotsearch.hppcrt.predicates.IntPredicate;
+import com.carrotsearch.randomizedtesting.RandomizedRunner;
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+
+@RunWith(RandomizedRunner.class)
+public class BitSetTest
+{
+    /* */
+    @Test
+    public void testSingleBits() {
+
+        final BitSet set = new BitSet();
+
+        Assert.assertTrue(set.isEmpty());
+        Assert.assertEquals(0, set.length());
+        Assert.assertEquals(-1, set.nextSetBit(0));
+        Assert.assertEquals(-1, set.prevSetBit(1000));
+
+        set.set(3);
+        set.set(64);
+        set.set(1000);
+
+        Assert.assertTrue(set.capacity() >= 1001);
+        Assert.assertEquals(3, set.cardinality());
+        Assert.assertEquals(1001, set.length());
+        Assert.assertEquals("{3, 64, 1000}", set.toString());
+
+        Assert.assertTrue(set.get(64));
+        Assert.assertFalse(set.get(65));
+        Assert.assertFalse(set.get(100000));
+
+        Assert.assertEquals(64, set.nextSetBit(4));
+        Assert.assertEquals(3, set.prevSetBit(63));
+        Assert.assertEquals(1000, set.prevSetBit(5000));
+        Assert.assertEquals(65, set.nextClearBit(64));
+
+        Assert.assertTrue(set.getAndSet(64));
+        Assert.assertTrue(set.getAndClear(64));
+        Assert.assertFalse(set.getAndClear(64));
+
+        set.flip(3);
+        set.clear(1000);
+
+        Assert.assertTrue(set.isEmpty());
+        Assert.assertEquals(0, set.length());
+        Assert.assertEquals(new BitSet(), set);
+        Assert.assertEquals(new BitSet().hashCode(), set.hashCode());
+    }
+
+    /* */
+    @Test
+    public void testAgainstJavaUtilBitSet() {
+
+        final Random rnd = RandomizedTest.getRandom();
+
+        final BitSet set = new BitSet();
+        final java.util.BitSet reference = new java.util.BitSet();
+
+        for (int round = 0; round < 20000; round++) {
+
+            final int index = rnd.nextInt(5000);
+            final int toIndex = index + rnd.nextInt(300);
+
+            switch (rnd.nextInt(8)) {
+
+                case 0:
+                    set.set(index);
+                    reference.set(index);
+                    break;
+                case 1:
+                    set.clear(index);
+                    reference.clear(index);
+                    break;
+                case 2:
+                    set.set(index, toIndex);
+                    reference.set(index, toIndex);
+                    break;
+                case 3:
+                    set.clear(index, toIndex);
+                    reference.clear(index, toIndex);
+                    break;
+                case 4:
+                    set.flip(index, toIndex);
+                    reference.flip(index, toIndex);
+                    break;
+                case 5:
+                    Assert.assertEquals(reference.nextSetBit(index), set.nextSetBit(index));
+                    Assert.assertEquals(reference.nextClearBit(index), set.nextClearBit(index));
+                    Assert.assertEquals(BitSetTest.prevSetBit(reference, index), set.prevSetBit(index));
+                    break;
+                case 6:
+                    Assert.assertEquals(reference.get(index), set.get(index));
+                    break;
+                default:
+                    set.flip(index);
+                    reference.flip(index);
+                    break;
+            }
+
+            Assert.assertEquals(reference.cardinality(), set.cardinality());
+        }
+
+        Assert.assertEquals(reference.length(), set.length());
+        Assert.assertEquals(reference.toString(), set.toString());
+
+        //the view
+        final IntLookupContainer view = set.asIntLookupContainer();
+
+        Assert.assertEquals(reference.cardinality(), view.size());
+
+        int expected = reference.nextSetBit(0);
+        int rank = 0;
+
+        for (final IntCursor c : view) {
+
+            Assert.assertEquals(expected, c.value);
+            Assert.assertEquals(rank++, c.index);
+            Assert.assertTrue(view.contains(c.value));
+
+            expected = reference.nextSetBit(expected + 1);
+        }
+
+        Assert.assertEquals(-1, expected);
+
+        final int[] values = view.toArray();
+
+        Assert.assertEquals(reference.cardinality(), values.length);
+
+        for (int i = 0; i < values.length; i++) {
+
+            Assert.assertTrue(reference.get(values[i]));
+        }
+
+        //removing from the view clears the bits
+        final int removed = set.asIntLookupContainer().removeAll(new IntPredicate() {
+
+            @Override
+            public boolean apply(final int value) {
+
+                return value % 3 == 0;
+            }
+        });
+
+        int expectedRemoved = 0;
+
+        for (int i = reference.nextSetBit(0); i >= 0; i = reference.nextSetBit(i + 1)) {
+
+            if (i % 3 == 0) {
+
+                reference.clear(i);
+                expectedRemoved++;
+            }
+        }
+
+        Assert.assertEquals(expectedRemoved, removed);
+        Assert.assertEquals(reference.toString(), set.toString());
+    }
+
+    /* */
+    @Test
+    public void testBulkOperations() {
+
+        final Random rnd = RandomizedTest.getRandom();
+
+        for (int round = 0; round < 50; round++) {
+
+            final java.util.BitSet referenceA = new java.util.BitSet();
+            final java.util.BitSet referenceB = new java.util.BitSet();
+
+            final BitSet a = BitSetTest.randomSet(rnd, referenceA);
+            final BitSet b = BitSetTest.randomSet(rnd, referenceB);
+
+            java.util.BitSet expected = (java.util.BitSet) referenceA.clone();
+            expected.and(referenceB);
+            Assert.assertEquals(expected.cardinality(), BitSet.intersectionCount(a, b));
+            Assert.assertEquals(!expected.isEmpty(), a.intersects(b));
+
+            BitSet result = a.clone();
+            result.and(b);
+            Assert.assertEquals(expected.toString(), result.toString());
+
+            expected = (java.util.BitSet) referenceA.clone();
+            expected.or(referenceB);
+            Assert.assertEquals(expected.cardinality(), BitSet.unionCount(a, b));
+
+            result = a.clone();
+            result.or(b);
+            Assert.assertEquals(expected.toString(), result.toString());
+
+            expected = (java.util.BitSet) referenceA.clone();
+            expected.andNot(referenceB);
+            Assert.assertEquals(expected.cardinality(), BitSet.andNotCount(a, b));
+
+            result = a.clone();
+            result.andNot(b);
+            Assert.assertEquals(expected.toString(), result.toString());
+
+            expected = (java.util.BitSet) referenceA.clone();
+            expected.xor(referenceB);
+            Assert.assertEquals(expected.cardinality(), BitSet.xorCount(a, b));
+
+            result = a.clone();
+            result.xor(b);
+            Assert.assertEquals(expected.toString(), result.toString());
+
+            //operands unchanged, equality ignores the trailing zero words
+            Assert.assertEquals(referenceA.toString(), a.toString());
+            Assert.assertEquals(referenceB.toString(), b.toString());
+
+            result = a.clone();
+            result.ensureCapacity(100000);
+            result.set(99999);
+            result.clear(99999);
+
+            Assert.assertEquals(a, result);
+            Assert.assertEquals(a.hashCode(), result.hashCode());
+            Assert.assertEquals(referenceA.equals(referenceB), a.equals(b));
+        }
+    }
+
+    private static BitSet randomSet(final Random rnd, final java.util.BitSet reference) {
+
+        final BitSet set = new BitSet(rnd.nextInt(1000));
+
+        final int maxIndex = 1 + rnd.nextInt(10000);
+        final int count = rnd.nextInt(maxIndex);
+
+        for (int i = 0; i < count; i++) {
+
+            final int index = rnd.nextInt(maxIndex);
+
+            set.set(index);
+            reference.set(index);
+        }
+
+        return set;
+    }
+
+    /**
+     * java.util.BitSet.previousSetBit() is Java 1.7+
+     */
+    private static int prevSetBit(final java.util.BitSet reference, final int index) {
+
+        for (int i = index; i >= 0; i--) {
+
+            if (reference.get(i)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,222 @@
+package com.carrotsearch.hppcrt;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.carrotsearch.hppcrt.cursors.IntCursor;
+import com.carrotsearch.hppcrt.lists.IntArrayList;
+
+/**
+ *
+ */
+public class IteratorPoolTest
+{
+    /**
+     * Iterator recording the thread which borrowed it.
+     */
+    public static class OwnedIterator extends AbstractIterator<Integer>
+    {
+        volatile Thread owner;
+
+        @Override
+        protected Integer fetch()
+        {
+            return done();
+        }
+    }
+
+    private static IteratorPool<Integer, OwnedIterator> createPool(final boolean threadSafe) {
+
+        return new IteratorPool<Integer, OwnedIterator>(new ObjectFactory<OwnedIterator>() {
+
+            @Override
+            public OwnedIterator create() {
+
+                return new OwnedIterator();
+            }
+
+            @Override
+            public void initialize(final OwnedIterator obj) {
+
+                obj.owner = Thread.currentThread();
+            }
+
+            @Override
+            public void reset(final OwnedIterator obj) {
+
+                obj.owner = null;
+            }
+        }, threadSafe);
+    }
+
+    @Test
+    public void testThreadSafeReuse()
+    {
+        final IteratorPool<Integer, OwnedIterator> pool = IteratorPoolTest.createPool(true);
+
+        Assert.assertTrue(pool.isThreadSafe());
+
+        final int initialSize = pool.size();
+
+        final OwnedIterator first = pool.borrow();
+        Assert.assertSame(Thread.currentThread(), first.owner);
+        Assert.assertEquals(initialSize - 1, pool.size());
+
+        //auto-release on exhaustion
+        Assert.assertFalse(first.hasNext());
+        Assert.assertNull(first.owner);
+        Assert.assertEquals(initialSize, pool.size());
+
+        //the released iterator is reused from the pool
+        final OwnedIterator second = pool.borrow();
+        Assert.assertSame(first, second);
+        second.release();
+
+        //much more releases than capacity: the pool remains bounded
+        final OwnedIterator[] borrowed = new OwnedIterator[4 * pool.capacity()];
+
+        for (int i = 0; i < borrowed.length; i++) {
+
+            borrowed[i] = pool.borrow();
+        }
+
+        for (int i = 0; i < borrowed.length; i++) {
+
+            borrowed[i].release();
+        }
+
+        Assert.assertTrue(pool.size() <= pool.capacity());
+    }
+
+    @Test
+    public void testConcurrentBorrowRelease() throws Throwable
+    {
+        final IteratorPool<Integer, OwnedIterator> pool = IteratorPoolTest.createPool(true);
+
+        final int nbThreads = 4;
+        final int nbRounds = 20000;
+
+        final Throwable[] failure = new Throwable[1];
+        final Thread[] threads = new Thread[nbThreads];
+
+        for (int t = 0; t < nbThreads; t++) {
+
+            threads[t] = new Thread() {
+
+                @Override
+                public void run() {
+
+                    try {
+                        final OwnedIterator[] nested = new OwnedIterator[3];
+
+                        for (int round = 0; round < nbRounds; round++) {
+
+                            //borrow a few nested iterators, or more now and then.
+                            final int nbNested = (round % 100 == 0) ? nested.length : 1 + round % 2;
+
+                            for (int i = 0; i < nbNested; i++) {
+
+                                nested[i] = pool.borrow();
+                            }
+
+                            for (int i = 0; i < nbNested; i++) {
+
+                                //an iterator must never be handed out to another thread while in use.
+                                Assert.assertSame(Thread.currentThread(), nested[i].owner);
+                                nested[i].release();
+                            }
+                        }
+                    } catch (final Throwable e) {
+
+                        synchronized (failure) {
+                            failure[0] = e;
+                        }
+                    }
+                }
+            };
+        }
+
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    @Test
+    public void testConcurrentContainerIteration() throws Throwable
+    {
+        final boolean previous = IteratorPool.isThreadSafePooling();
+
+        IteratorPool.configureThreadSafePooling(true);
+
+        final IntArrayList list;
+
+        try {
+            list = new IntArrayList();
+        } finally {
+            IteratorPool.configureThreadSafePooling(previous);
+        }
+
+        long expected = 0;
+
+        for (int i = 0; i < 100; i++) {
+
+            list.add(i);
+            expected += i;
+        }
+
+        final long expectedSum = expected;
+        final int nbThreads = 4;
+
+        final Throwable[] failure = new Throwable[1];
+        final Thread[] threads = new Thread[nbThreads];
+
+        for (int t = 0; t < nbThreads; t++) {
+
+            threads[t] = new Thread() {
+
+                @Override
+                public void run() {
+
+                    try {
+                        for (int round = 0; round < 5000; round++) {
+
+                            long sum = 0;
+
+                            for (final IntCursor c : list) {
+
+                                sum += c.value;
+                            }
+
+                            Assert.assertEquals(expectedSum, sum);
+                        }
+                    } catch (final Throwable e) {
+
+                        synchronized (failure) {
+                            failure[0] = e;
+                        }
+                    }
+                }
+            };
+        }
+
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.carrotsearch.hppcrt;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.carrotsearch.hppcrt.cursors.LongCursor;
+import com.carrotsearch.randomizedtesting.RandomizedRunner;
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+
+@RunWith(RandomizedRunner.class)
+public class LongBitSetTest
+{
+    /* */
+    @Test
+    public void testIndicesBeyondIntRange() {
+
+        final LongBitSet set = new LongBitSet();
+
+        final long far = 1L << 35;
+
+        //queries beyond the words in use do not grow the set
+        Assert.assertFalse(set.get(far));
+        Assert.assertEquals(-1L, set.nextSetBit(far));
+        Assert.assertEquals(far, set.nextClearBit(far));
+
+        set.clear(far);
+        set.clear(far, far + 100);
+
+        Assert.assertEquals(LongBitSet.DEFAULT_NUM_BITS, set.capacity());
+
+        final long index = (1L << 20) + 5;
+
+        set.set(index);
+
+        Assert.assertTrue(set.get(index));
+        Assert.assertFalse(set.get(index + (1L << 32)));
+        Assert.assertEquals(index + 1, set.length());
+        Assert.assertEquals(index, set.nextSetBit(0));
+        Assert.assertEquals(index, set.prevSetBit(far));
+        Assert.assertEquals("{" + index + "}", set.toString());
+
+        for (final LongCursor c : set.asLongLookupContainer()) {
+
+            Assert.assertEquals(index, c.value);
+            Assert.assertEquals(0, c.index);
+        }
+    }
+
+    /* */
+    @Test
+    public void testAgainstBitSet() {
+
+        final Random rnd = RandomizedTest.getRandom();
+
+        final LongBitSet set = new LongBitSet();
+        final java.util.BitSet reference = new java.util.BitSet();
+
+        for (int round = 0; round < 20000; round++) {
+
+            final int index = rnd.nextInt(5000);
+            final int toIndex = index + rnd.nextInt(300);
+
+            switch (rnd.nextInt(6)) {
+
+                case 0:
+                    set.set(index);
+                    reference.set(index);
+                    break;
+                case 1:
+                    set.clear(index, toIndex);
+                    reference.clear(index, toIndex);
+                    break;
+                case 2:
+                    set.set(index, toIndex);
+                    reference.set(index, toIndex);
+                    break;
+                case 3:
+                    set.flip(index, toIndex);
+                    reference.flip(index, toIndex);
+                    break;
+                case 4:
+                    Assert.assertEquals(reference.nextSetBit(index), set.nextSetBit(index));
+                    Assert.assertEquals(reference.nextClearBit(index), set.nextClearBit(index));
+                    break;
+                default:
+                    Assert.assertEquals(reference.get(index), set.get(index));
+                    break;
+            }
+
+            Assert.assertEquals(reference.cardinality(), set.cardinality());
+        }
+
+        Assert.assertEquals(reference.length(), set.length());
+        Assert.assertEquals(reference.toString(), set.toString());
+
+        final LongBitSet other = new LongBitSet();
+        other.set(rnd.nextInt(1000), 2000 + rnd.nextInt(5000));
+
+        final java.util.BitSet expected = (java.util.BitSet) reference.clone();
+        expected.and(LongBitSetTest.toBitSet(other));
+
+        Assert.assertEquals(expected.cardinality(), LongBitSet.intersectionCount(set, other));
+
+        final LongBitSet result = set.clone();
+        result.and(other);
+
+        Assert.assertEquals(expected.toString(), result.toString());
+        Assert.assertEquals(expected.cardinality(), result.asLongLookupContainer().size());
+    }
+
+    private static java.util.BitSet toBitSet(final LongBitSet set) {
+
+        final java.util.BitSet bits = new java.util.BitSet();
+
+        for (long i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) {
+
+            bits.set((int) i);
+        }
+
+        return bits;
+    }
+}
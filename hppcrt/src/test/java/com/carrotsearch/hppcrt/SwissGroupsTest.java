@@ -0,0 +1,65 @@
+package com.carrotsearch.hppcrt;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.carrotsearch.randomizedtesting.RandomizedRunner;
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+
+@RunWith(RandomizedRunner.class)
+public class SwissGroupsTest
+{
+    /* */
+    @Test
+    public void testMatchesAgainstBytes() {
+
+        final Random rnd = RandomizedTest.getRandom();
+
+        final long[] ctrl = new long[1];
+
+        for (int round = 0; round < 10000; round++) {
+
+            //random group of full, empty and deleted slots, with few distinct fragments to have matches.
+            final int[] bytes = new int[SwissGroups.GROUP_SIZE];
+
+            for (int i = 0; i < bytes.length; i++) {
+
+                final int kind = rnd.nextInt(4);
+
+                bytes[i] = (kind == 0) ? SwissGroups.EMPTY : (kind == 1) ? SwissGroups.DELETED : rnd.nextInt(4);
+                SwissGroups.set(ctrl, i, bytes[i]);
+            }
+
+            final long group = ctrl[0];
+            final int h2 = rnd.nextInt(4);
+
+            final long fragmentMatches = SwissGroups.matchFragment(group, SwissGroups.broadcast(h2));
+            final long emptyMatches = SwissGroups.matchEmpty(group);
+            final long freeMatches = SwissGroups.matchFree(group);
+
+            for (int i = 0; i < bytes.length; i++) {
+
+                final boolean matched = (fragmentMatches & (0x80L << (i << 3))) != 0;
+
+                Assert.assertEquals(bytes[i], SwissGroups.get(ctrl, i));
+                Assert.assertEquals(bytes[i] == h2, SwissGroups.isFull(group, i, h2));
+
+                //no false negatives, and isFull() sorts out the false positives.
+                if (bytes[i] == h2) {
+                    Assert.assertTrue(matched);
+                }
+
+                Assert.assertEquals(bytes[i] == SwissGroups.EMPTY, (emptyMatches & (0x80L << (i << 3))) != 0);
+                Assert.assertEquals(bytes[i] >= SwissGroups.EMPTY, (freeMatches & (0x80L << (i << 3))) != 0);
+            }
+
+            if (freeMatches != 0) {
+
+                Assert.assertTrue(bytes[SwissGroups.lowestMatch(freeMatches)] >= SwissGroups.EMPTY);
+            }
+        }
+    }
+}
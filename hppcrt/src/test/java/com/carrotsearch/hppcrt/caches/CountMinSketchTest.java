@@ -0,0 +1,89 @@
+package com.carrotsearch.hppcrt.caches;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.carrotsearch.hppcrt.hash.BitMixer;
+import com.carrotsearch.randomizedtesting.RandomizedRunner;
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+
+@RunWith(RandomizedRunner.class)
+public class CountMinSketchTest
+{
+    /* */
+    @Test
+    public void testNeverUnderestimates() {
+
+        final Random rnd = RandomizedTest.getRandom();
+
+        final CountMinSketch sketch = new CountMinSketch(1000);
+
+        final int[] counts = new int[500];
+
+        //less increments than the sample size: no aging
+        for (int i = 0; i < 5000; i++) {
+
+            final int key = rnd.nextInt(counts.length);
+
+            sketch.increment(BitMixer.mix(key));
+            counts[key]++;
+        }
+
+        for (int key = 0; key < counts.length; key++) {
+
+            Assert.assertTrue(sketch.frequency(BitMixer.mix(key)) >= Math.min(counts[key], CountMinSketch.MAX_FREQUENCY));
+        }
+    }
+
+    /* */
+    @Test
+    public void testSaturationAndAging() {
+
+        final CountMinSketch sketch = new CountMinSketch(100);
+
+        final int hash = BitMixer.mix(42);
+
+        for (int i = 0; i < 100; i++) {
+
+            sketch.increment(hash);
+        }
+
+        Assert.assertEquals(CountMinSketch.MAX_FREQUENCY, sketch.frequency(hash));
+
+        sketch.age();
+        Assert.assertEquals(CountMinSketch.MAX_FREQUENCY / 2, sketch.frequency(hash));
+
+        sketch.clear();
+        Assert.assertEquals(0, sketch.frequency(hash));
+    }
+
+    /* */
+    @Test
+    public void testAgesAtSampleSize() {
+
+        final CountMinSketch sketch = new CountMinSketch(100);
+
+        final int hot = BitMixer.mix(-1);
+
+        for (int i = 0; i < 10; i++) {
+
+            sketch.increment(hot);
+        }
+
+        //distinct keys, each incrementing at least one counter, up to the sample size
+        int key = 0;
+
+        //collisions may only raise the frequency of hot until the aging halves it
+        while (sketch.frequency(hot) >= 10) {
+
+            sketch.increment(BitMixer.mix(key++));
+
+            Assert.assertTrue(key <= sketch.getSampleSize());
+        }
+
+        Assert.assertTrue(sketch.frequency(hot) <= CountMinSketch.MAX_FREQUENCY / 2);
+    }
+}
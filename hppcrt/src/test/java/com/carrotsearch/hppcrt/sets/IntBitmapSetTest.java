@@ -0,0 +1,403 @@
+package com.carrotsearch.hppcrt.sets;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.carrotsearch.hppcrt.cursors.IntCursor;
+import com.carrotsearch.hppcrt.predicates.IntPredicate;
+import com.carrotsearch.hppcrt.procedures.IntProcedure;
+import com.carrotsearch.randomizedtesting.RandomizedRunner;
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+
+@RunWith(RandomizedRunner.class)
+public class IntBitmapSetTest
+{
+    /* */
+    @Test
+    public void testAddContainsRemove() {
+
+        final IntBitmapSet set = new IntBitmapSet();
+
+        Assert.assertTrue(set.isEmpty());
+
+        Assert.assertTrue(set.add(3));
+        Assert.assertFalse(set.add(3));
+        Assert.assertTrue(set.add(-1));
+        Assert.assertTrue(set.add(Integer.MIN_VALUE));
+        Assert.assertTrue(set.add(Integer.MAX_VALUE));
+        Assert.assertTrue(set.add(70000));
+
+        Assert.assertEquals(5, set.size());
+        Assert.assertEquals("[" + Integer.MIN_VALUE + ", -1, 3, 70000, " + Integer.MAX_VALUE + "]", set.toString());
+
+        Assert.assertTrue(set.contains(-1));
+        Assert.assertFalse(set.contains(4));
+        Assert.assertFalse(set.contains(65539));
+
+        Assert.assertTrue(set.remove(-1));
+        Assert.assertFalse(set.remove(-1));
+        Assert.assertFalse(set.contains(-1));
+        Assert.assertEquals(4, set.size());
+
+        set.clear();
+
+        Assert.assertTrue(set.isEmpty());
+        Assert.assertFalse(set.contains(3));
+        Assert.assertEquals("[]", set.toString());
+    }
+
+    /* */
+    @Test
+    public void testContainerConversions() {
+
+        final IntBitmapSet set = new IntBitmapSet();
+
+        //one chunk, grown past the array container limit
+        for (int i = 0; i <= IntBitmapSet.ARRAY_MAX_SIZE; i++) {
+
+            set.add(2 * i);
+        }
+
+        Assert.assertEquals(1, set.containerCount);
+        Assert.assertEquals(IntBitmapSet.BITMAP, set.types[0]);
+
+        set.remove(0);
+
+        Assert.assertEquals(IntBitmapSet.ARRAY, set.types[0]);
+        Assert.assertEquals(IntBitmapSet.ARRAY_MAX_SIZE, set.size());
+
+        //a range spanning 3 chunks, merged in the existing one
+        set.addRange(1000, 2 * 65536 + 10);
+
+        Assert.assertEquals(3, set.containerCount);
+        Assert.assertEquals(IntBitmapSet.BITMAP, set.types[0]);
+        Assert.assertEquals(IntBitmapSet.RUN, set.types[1]);
+        Assert.assertEquals(IntBitmapSet.RUN, set.types[2]);
+        Assert.assertEquals(499 + 2 * 65536 + 10 - 1000, set.size());
+
+        Assert.assertTrue(set.contains(65536 + 12345));
+        Assert.assertTrue(set.contains(2 * 65536 + 9));
+        Assert.assertFalse(set.contains(2 * 65536 + 10));
+        Assert.assertFalse(set.contains(999));
+        Assert.assertTrue(set.contains(998));
+
+        //modifying a run container expands it
+        Assert.assertFalse(set.add(65536));
+        Assert.assertTrue(set.remove(65536));
+        Assert.assertEquals(IntBitmapSet.BITMAP, set.types[1]);
+
+        final long before = set.sizeInBytes();
+
+        Assert.assertTrue(set.runOptimize());
+        Assert.assertEquals(IntBitmapSet.RUN, set.types[0]);
+        Assert.assertEquals(IntBitmapSet.RUN, set.types[1]);
+        Assert.assertTrue(set.sizeInBytes() < before);
+
+        Assert.assertFalse(set.runOptimize());
+        Assert.assertTrue(set.contains(65537));
+        Assert.assertFalse(set.contains(65536));
+    }
+
+    /* */
+    @Test
+    public void testAgainstTreeSet() {
+
+        final Random rnd = RandomizedTest.getRandom();
+
+        final IntBitmapSet set = new IntBitmapSet();
+        final TreeSet<Integer> reference = new TreeSet<Integer>();
+
+        for (int round = 0; round < 100000; round++) {
+
+            final int value = IntBitmapSetTest.randomValue(rnd);
+
+            switch (rnd.nextInt(10)) {
+
+                case 0:
+                case 1:
+                case 2:
+                    Assert.assertEquals(reference.remove(value), set.remove(value));
+                    break;
+                case 3:
+                    Assert.assertEquals(reference.contains(value), set.contains(value));
+                    break;
+                case 4:
+                    if (rnd.nextInt(100) == 0) {
+
+                        final int length = rnd.nextInt(20000);
+
+                        set.addRange(value, value + length);
+
+                        for (int v = value; v < value + length; v++) {
+                            reference.add(v);
+                        }
+                    }
+                    break;
+                case 5:
+                    if (rnd.nextInt(1000) == 0) {
+                        set.runOptimize();
+                    }
+                    break;
+                default:
+                    Assert.assertEquals(reference.add(value), set.add(value));
+                    break;
+            }
+
+            Assert.assertEquals(reference.size(), set.size());
+        }
+
+        IntBitmapSetTest.assertSameValues(reference, set);
+
+        //predicate removal
+        final int modulo = 2 + rnd.nextInt(5);
+
+        final int removed = set.removeAll(new IntPredicate() {
+
+            @Override
+            public boolean apply(final int value) {
+
+                return value % modulo == 0;
+            }
+        });
+
+        int expected = 0;
+
+        for (final Iterator<Integer> it = reference.iterator(); it.hasNext();) {
+
+            if (it.next() % modulo == 0) {
+
+                it.remove();
+                expected++;
+            }
+        }
+
+        Assert.assertEquals(expected, removed);
+        IntBitmapSetTest.assertSameValues(reference, set);
+
+        //clone and equals
+        final IntBitmapSet cloned = set.clone();
+
+        Assert.assertEquals(set, cloned);
+        Assert.assertEquals(set.hashCode(), cloned.hashCode());
+
+        if (!reference.isEmpty()) {
+
+            cloned.remove(reference.first());
+            Assert.assertFalse(set.equals(cloned));
+        }
+
+        IntBitmapSetTest.assertSameValues(reference, set);
+    }
+
+    /* */
+    @Test
+    public void testSetOperations() {
+
+        final Random rnd = RandomizedTest.getRandom();
+
+        for (int round = 0; round < 20; round++) {
+
+            final TreeSet<Integer> referenceA = new TreeSet<Integer>();
+            final TreeSet<Integer> referenceB = new TreeSet<Integer>();
+
+            final IntBitmapSet a = IntBitmapSetTest.randomSet(rnd, referenceA);
+            final IntBitmapSet b = IntBitmapSetTest.randomSet(rnd, referenceB);
+
+            final TreeSet<Integer> and = new TreeSet<Integer>(referenceA);
+            and.retainAll(referenceB);
+
+            final TreeSet<Integer> or = new TreeSet<Integer>(referenceA);
+            or.addAll(referenceB);
+
+            final TreeSet<Integer> andNot = new TreeSet<Integer>(referenceA);
+            andNot.removeAll(referenceB);
+
+            final TreeSet<Integer> xor = new TreeSet<Integer>(or);
+            xor.removeAll(and);
+
+            Assert.assertEquals(and.size(), IntBitmapSet.intersectionCount(a, b));
+            Assert.assertEquals(or.size(), IntBitmapSet.unionCount(a, b));
+            Assert.assertEquals(andNot.size(), IntBitmapSet.andNotCount(a, b));
+            Assert.assertEquals(xor.size(), IntBitmapSet.xorCount(a, b));
+
+            IntBitmapSet result = a.clone();
+            result.and(b);
+            IntBitmapSetTest.assertSameValues(and, result);
+
+            result = a.clone();
+            result.or(b);
+            IntBitmapSetTest.assertSameValues(or, result);
+
+            result = a.clone();
+            result.andNot(b);
+            IntBitmapSetTest.assertSameValues(andNot, result);
+
+            result = a.clone();
+            result.xor(b);
+            IntBitmapSetTest.assertSameValues(xor, result);
+
+            //the collection methods use the same operations
+            result = a.clone();
+            Assert.assertEquals(referenceA.size() - and.size(), result.retainAll(b));
+            IntBitmapSetTest.assertSameValues(and, result);
+
+            result = a.clone();
+            Assert.assertEquals(or.size() - referenceA.size(), result.addAll(b));
+            IntBitmapSetTest.assertSameValues(or, result);
+
+            result = a.clone();
+            Assert.assertEquals(referenceA.size() - andNot.size(), result.removeAll(b));
+            IntBitmapSetTest.assertSameValues(andNot, result);
+
+            //operands unchanged
+            IntBitmapSetTest.assertSameValues(referenceA, a);
+            IntBitmapSetTest.assertSameValues(referenceB, b);
+
+            //with itself
+            result = a.clone();
+            result.xor(result);
+            Assert.assertTrue(result.isEmpty());
+        }
+    }
+
+    /* */
+    @Test
+    public void testIterationOrder() {
+
+        final IntBitmapSet set = IntBitmapSet.from(5, -5, 1 << 20, -(1 << 20), 0);
+
+        set.addRange(100, 200);
+
+        final int[] expected = new int[] { -(1 << 20), -5, 0, 5 };
+
+        int index = 0;
+
+        for (final IntCursor c : set) {
+
+            Assert.assertEquals(index, c.index);
+
+            if (index < expected.length) {
+                Assert.assertEquals(expected[index], c.value);
+            } else if (index < expected.length + 100) {
+                Assert.assertEquals(100 + index - expected.length, c.value);
+            } else {
+                Assert.assertEquals(1 << 20, c.value);
+            }
+
+            index++;
+        }
+
+        Assert.assertEquals(set.size(), index);
+
+        //the predicate stops the iteration
+        final int[] count = new int[1];
+
+        set.forEach(new IntPredicate() {
+
+            @Override
+            public boolean apply(final int value) {
+
+                count[0]++;
+                return value < 0;
+            }
+        });
+
+        Assert.assertEquals(3, count[0]);
+    }
+
+    /**
+     * A value in a few chunks, of varying density.
+     */
+    private static int randomValue(final Random rnd) {
+
+        switch (rnd.nextInt(4)) {
+
+            case 0:
+                return rnd.nextInt();
+            case 1:
+                return -rnd.nextInt(3 * 65536);
+            case 2:
+                return rnd.nextInt(5000);
+            default:
+                return 65536 + rnd.nextInt(65536);
+        }
+    }
+
+    private static IntBitmapSet randomSet(final Random rnd, final TreeSet<Integer> reference) {
+
+        final IntBitmapSet set = new IntBitmapSet();
+
+        final int count = rnd.nextInt(30000);
+
+        for (int i = 0; i < count; i++) {
+
+            final int value = IntBitmapSetTest.randomValue(rnd);
+
+            set.add(value);
+            reference.add(value);
+        }
+
+        if (rnd.nextBoolean()) {
+
+            final int from = IntBitmapSetTest.randomValue(rnd);
+            final int length = rnd.nextInt(100000);
+
+            set.addRange(from, from + length);
+
+            for (int v = from; v < from + length; v++) {
+                reference.add(v);
+            }
+        }
+
+        if (rnd.nextBoolean()) {
+
+            set.runOptimize();
+        }
+
+        return set;
+    }
+
+    /**
+     * Same values in the same order, through the pooled iterator, forEach and toArray.
+     */
+    private static void assertSameValues(final TreeSet<Integer> reference, final IntBitmapSet set) {
+
+        Assert.assertEquals(reference.size(), set.size());
+
+        final Iterator<Integer> expected = reference.iterator();
+
+        for (final IntCursor c : set) {
+
+            Assert.assertEquals(expected.next().intValue(), c.value);
+        }
+
+        Assert.assertFalse(expected.hasNext());
+
+        final Iterator<Integer> expectedForEach = reference.iterator();
+
+        set.forEach(new IntProcedure() {
+
+            @Override
+            public void apply(final int value) {
+
+                Assert.assertEquals(expectedForEach.next().intValue(), value);
+            }
+        });
+
+        Assert.assertFalse(expectedForEach.hasNext());
+
+        final int[] values = set.toArray();
+
+        int i = 0;
+
+        for (final Integer value : reference) {
+
+            Assert.assertEquals(value.intValue(), values[i++]);
+        }
+    }
+}
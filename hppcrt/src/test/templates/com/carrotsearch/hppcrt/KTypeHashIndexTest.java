@@ -0,0 +1,74 @@
+package com.carrotsearch.hppcrt;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+
+/*! #import("com/carrotsearch/hppcrt/Intrinsics.java") !*/
+/**
+ * Unit tests for {@link KTypeHashIndex}.
+ */
+/*! ${TemplateOptions.generatedAnnotation} !*/
+public class KTypeHashIndexTest<KType> extends AbstractKTypeTest<KType>
+{
+    /* */
+    @Test
+    public void testInsertRemoveExpand()
+    {
+        final Random rnd = RandomizedTest.getRandom();
+
+        final KTypeHashIndex<KType> index = new KTypeHashIndex<KType>(0, HashContainers.DEFAULT_LOAD_FACTOR);
+
+        //dense keys by slot, the last slot moved in the hole of a removed one
+        final KType[] keys = Intrinsics.<KType> newArray(2000);
+        int count = 0;
+
+        for (int round = 0; round < 20000; round++) {
+
+            final KType key = cast(1 + rnd.nextInt(2000));
+            final int position = index.positionOf(key, keys);
+
+            if (rnd.nextInt(3) > 0) {
+
+                if (position < 0) {
+
+                    keys[count] = key;
+                    index.insert(position, count, keys);
+                    count++;
+                }
+            } else if (position >= 0) {
+
+                final int slot = index.slotAt(position);
+
+                index.removeAt(position, keys);
+                count--;
+
+                if (slot != count) {
+
+                    keys[slot] = keys[count];
+                    index.setSlotAt(index.positionOf(keys[slot], keys), slot);
+                }
+            }
+
+            Assert.assertEquals(count, index.size());
+            Assert.assertTrue(index.size() <= index.capacity());
+        }
+
+        for (int slot = 0; slot < count; slot++) {
+
+            Assert.assertEquals(slot, index.slotOf(keys[slot], keys));
+        }
+
+        final KTypeHashIndex<KType> cloned = index.clone();
+
+        index.clear();
+
+        Assert.assertEquals(0, index.size());
+        Assert.assertEquals(-1, index.slotOf(keys[0], keys));
+        Assert.assertEquals(count, cloned.size());
+        Assert.assertEquals(0, cloned.slotOf(keys[0], keys));
+    }
+}
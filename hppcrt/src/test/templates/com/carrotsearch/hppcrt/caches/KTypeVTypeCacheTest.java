@@ -0,0 +1,295 @@
+package com.carrotsearch.hppcrt.caches;
+
+import java.util.Random;
+
+import org.junit.*;
+
+import com.carrotsearch.hppcrt.*;
+import com.carrotsearch.hppcrt.maps.*;
+import com.carrotsearch.hppcrt.procedures.*;
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+
+/*! #import("com/carrotsearch/hppcrt/Intrinsics.java") !*/
+/**
+ * Tests for {@link KTypeVTypeCache}.
+ */
+//only test a few representative types.
+/*! ${TemplateOptions.doNotGenerateKType("BYTE", "CHAR", "SHORT", "FLOAT", "DOUBLE", "OBJECT")} !*/
+/*! ${TemplateOptions.doNotGenerateVType("BYTE", "CHAR", "SHORT")} !*/
+/*! ${TemplateOptions.generatedAnnotation} !*/
+public class KTypeVTypeCacheTest<KType, VType> extends AbstractKTypeVTypeTest<KType, VType>
+{
+    /**
+     * Keys evicted by the caches under test, in order.
+     */
+    protected final StringBuilder evictedKeys = new StringBuilder();
+
+    /* */
+    @Test
+    public void testLru()
+    {
+        final KTypeVTypeCache<KType, VType> cache = newCache(3, CachePolicy.LRU);
+
+        cache.put(cast(1), vcast(1));
+        cache.put(cast(2), vcast(2));
+        cache.put(cast(3), vcast(3));
+
+        TestUtils.assertEquals2(vcast(1), cache.get(cast(1)));
+
+        //peek() and containsKey() are not accesses
+        TestUtils.assertEquals2(vcast(2), cache.peek(cast(2)));
+        Assert.assertTrue(cache.containsKey(cast(2)));
+
+        cache.put(cast(4), vcast(4));
+
+        Assert.assertFalse(cache.containsKey(cast(2)));
+        Assert.assertEquals(3, cache.size());
+        Assert.assertEquals("[2]", "[" + this.evictedKeys + "]");
+
+        //updates are accesses
+        cache.put(cast(3), vcast(30));
+        cache.put(cast(5), vcast(5));
+
+        Assert.assertEquals("[2, 1]", "[" + this.evictedKeys + "]");
+
+        TestUtils.assertEquals2(cache.getDefaultValue(), cache.get(cast(1)));
+
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(2, cache.getEvictions());
+        Assert.assertEquals(0.5, cache.getHitRate(), 0.0);
+    }
+
+    /* */
+    @Test
+    public void testLfu()
+    {
+        final KTypeVTypeCache<KType, VType> cache = newCache(3, CachePolicy.LFU);
+
+        cache.put(cast(1), vcast(1));
+        cache.put(cast(2), vcast(2));
+        cache.put(cast(3), vcast(3));
+
+        cache.get(cast(1));
+        cache.get(cast(1));
+        cache.get(cast(2));
+
+        //3 is the least frequently used
+        cache.put(cast(4), vcast(4));
+        Assert.assertEquals("[3]", "[" + this.evictedKeys + "]");
+
+        //4 is the least recently used among the least frequently used
+        cache.put(cast(5), vcast(5));
+        Assert.assertEquals("[3, 4]", "[" + this.evictedKeys + "]");
+
+        cache.get(cast(5));
+        cache.get(cast(5));
+
+        //2 was accessed twice, 1 and 5 three times
+        cache.put(cast(6), vcast(6));
+        Assert.assertEquals("[3, 4, 2]", "[" + this.evictedKeys + "]");
+
+        Assert.assertTrue(cache.containsKey(cast(1)));
+        Assert.assertTrue(cache.containsKey(cast(5)));
+        Assert.assertTrue(cache.containsKey(cast(6)));
+    }
+
+    /* */
+    @Test
+    public void testScanResistance()
+    {
+        final KTypeVTypeCache<KType, VType> lru = newCache(100, CachePolicy.LRU);
+        final KTypeVTypeCache<KType, VType> tinyLfu = newCache(100, CachePolicy.W_TINY_LFU);
+
+        //a hot set, frequently accessed
+        for (int round = 0; round < 20; round++) {
+
+            for (int i = 1; i <= 50; i++) {
+
+                memoize(lru, i);
+                memoize(tinyLfu, i);
+            }
+        }
+
+        //a scan of one-hit wonders
+        for (int i = 1000; i < 3000; i++) {
+
+            memoize(lru, i);
+            memoize(tinyLfu, i);
+        }
+
+        int lruHot = 0;
+        int tinyLfuHot = 0;
+
+        for (int i = 1; i <= 50; i++) {
+
+            if (lru.containsKey(cast(i))) {
+                lruHot++;
+            }
+
+            if (tinyLfu.containsKey(cast(i))) {
+                tinyLfuHot++;
+            }
+        }
+
+        Assert.assertEquals(0, lruHot);
+        Assert.assertTrue("" + tinyLfuHot, tinyLfuHot >= 45);
+        Assert.assertEquals(100, tinyLfu.size());
+    }
+
+    /* */
+    @Test
+    public void testAgainstReference()
+    {
+        final Random rnd = RandomizedTest.getRandom();
+
+        for (final CachePolicy policy : CachePolicy.values()) {
+
+            final int capacity = 1 + rnd.nextInt(300);
+
+            final KTypeVTypeCache<KType, VType> cache = newCache(capacity, policy);
+
+            //last value put for each key
+            final KTypeVTypeHashMap<KType, VType> reference = new KTypeVTypeHashMap<KType, VType>();
+
+            int inserted = 0;
+            int removed = 0;
+
+            for (int round = 0; round < 20000; round++) {
+
+                final KType key = cast(rnd.nextInt(1000));
+                final VType value = vcast(rnd.nextInt(100));
+
+                switch (rnd.nextInt(4)) {
+
+                    case 0:
+                        if (cache.containsKey(key)) {
+                            removed++;
+                        }
+                        cache.remove(key);
+                        break;
+                    case 1:
+                        if (cache.containsKey(key)) {
+                            TestUtils.assertEquals2(reference.get(key), cache.get(key));
+                        } else {
+                            TestUtils.assertEquals2(cache.getDefaultValue(), cache.get(key));
+                        }
+                        break;
+                    default:
+                        if (!cache.containsKey(key)) {
+                            inserted++;
+                        }
+                        cache.put(key, value);
+                        reference.put(key, value);
+                        break;
+                }
+
+                Assert.assertTrue(cache.size() <= capacity);
+                Assert.assertEquals(cache.size(), countIndexed(cache));
+                Assert.assertEquals(inserted - removed - cache.size(), cache.getEvictions());
+            }
+
+            final int[] count = new int[1];
+
+            cache.forEach(new KTypeVTypeProcedure<KType, VType>() {
+
+                @Override
+                public void apply(final KType key, final VType value) {
+
+                    TestUtils.assertEquals2(reference.get(key), value);
+                    count[0]++;
+                }
+            });
+
+            Assert.assertEquals(cache.size(), count[0]);
+
+            cache.clear();
+            cache.resetStatistics();
+
+            Assert.assertTrue(cache.isEmpty());
+            Assert.assertEquals(0, cache.getEvictions());
+            Assert.assertEquals(0.0, cache.getHitRate(), 0.0);
+
+            //usable after clear()
+            for (int i = 0; i < 2 * capacity; i++) {
+
+                cache.put(cast(i), vcast(i));
+            }
+
+            Assert.assertEquals(capacity, cache.size());
+        }
+    }
+
+    /* */
+    @Test
+    public void testCapacityOne()
+    {
+        for (final CachePolicy policy : CachePolicy.values()) {
+
+            final KTypeVTypeCache<KType, VType> cache = newCache(1, policy);
+
+            cache.put(cast(1), vcast(1));
+            cache.put(cast(2), vcast(2));
+
+            Assert.assertEquals(1, cache.size());
+            Assert.assertEquals(1, cache.getEvictions());
+        }
+
+        try {
+            newCache(0, CachePolicy.LRU);
+            Assert.fail();
+        } catch (final IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    /**
+     * get() key, put() it on a miss.
+     */
+    private void memoize(final KTypeVTypeCache<KType, VType> cache, final int key) {
+
+        if (!cache.containsKey(cast(key))) {
+
+            cache.get(cast(key));
+            cache.put(cast(key), vcast(key));
+        } else {
+
+            cache.get(cast(key));
+        }
+    }
+
+    /**
+     * @return the number of used positions in the index of cache.
+     */
+    private int countIndexed(final KTypeVTypeCache<KType, VType> cache) {
+
+        int count = 0;
+
+        for (final int entry : cache.index.buffer) {
+
+            if (entry != 0) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private KTypeVTypeCache<KType, VType> newCache(final int capacity, final CachePolicy policy) {
+
+        return new KTypeVTypeCache<KType, VType>(capacity, policy) {
+
+            @Override
+            protected void evicted(final KType key, final VType value) {
+
+                final StringBuilder evictedKeys = KTypeVTypeCacheTest.this.evictedKeys;
+
+                if (evictedKeys.length() > 0) {
+                    evictedKeys.append(", ");
+                }
+
+                evictedKeys.append(castType(key));
+            }
+        };
+    }
+}
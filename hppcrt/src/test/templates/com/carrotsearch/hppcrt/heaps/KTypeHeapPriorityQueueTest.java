@@ -1,5 +1,7 @@
 package com.carrotsearch.hppcrt.heaps;
 
+import java.io.*;
+import java.nio.channels.Channels;
 import java.util.*;
 
 import org.junit.*;
@@ -164,6 +166,34 @@ public class KTypeHeapPriorityQueueTest<KType> extends AbstractKTypeTest<KType>
         assertPrioQueueEquals(this.prioqInverseComparator, 0, 0, 1, 1, 2, 2, 7, 8, 9);
     }
 
+    /* */
+    @Test
+    public void testBoundedOffer()
+    {
+        for (final int i : new int[] { 5, 2, 8, 1, 9, 3, 7 }) {
+
+            this.prioq.offer(cast(i), 3);
+            this.prioqNaturalComparator.offer(cast(i), 3);
+            this.prioqInverseComparator.offer(cast(i), 3);
+        }
+
+        //the 3 greatest elements for the ordering of each queue
+        assertPrioQueueEquals(this.prioq, 7, 8, 9);
+        assertPrioQueueEquals(this.prioqNaturalComparator, 7, 8, 9);
+        assertPrioQueueEquals(this.prioqInverseComparator, 1, 2, 3);
+
+        //not greater than the top: rejected
+        Assert.assertFalse(this.prioq.offer(cast(7), 3));
+        Assert.assertTrue(this.prioq.offer(cast(10), 3));
+        assertPrioQueueEquals(this.prioq, 8, 9, 10);
+
+        //bounded to 0 elements: always rejected
+        final KTypeHeapPriorityQueue<KType> none = new KTypeHeapPriorityQueue<KType>();
+
+        Assert.assertFalse(none.offer(this.key1, 0));
+        Assert.assertEquals(0, none.size());
+    }
+
     /* */
     @Test
     public void testPopTop()
@@ -2157,4 +2187,53 @@ public class KTypeHeapPriorityQueueTest<KType> extends AbstractKTypeTest<KType>
         //recursively test
         return isMinHeapComparator(q, left) && isMinHeapComparator(q, right);
     }
+
+    /* */
+    @Test
+    public void testWriteToReadFrom() throws IOException
+    {
+        final Random rnd = RandomizedTest.getRandom();
+
+        for (int i = 0; i < 5000; i++) {
+
+            final KType value = cast(rnd.nextInt(1000));
+
+            this.prioqNaturalComparator.add(value);
+            this.prioqInverseComparator.add(value);
+        }
+
+        //through channels
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        this.prioqNaturalComparator.writeTo(Channels.newChannel(bytes));
+
+        final KTypeHeapPriorityQueue<KType> fromChannel = KTypeHeapPriorityQueue.readFrom(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())), this.NATURAL_COMPARATOR);
+        Assert.assertEquals(this.prioqNaturalComparator, fromChannel);
+        Assert.assertEquals(this.prioqNaturalComparator.size(), fromChannel.size());
+
+        //through an ObjectOutput, which is also a DataOutput
+        final ByteArrayOutputStream objectBytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(objectBytes);
+        this.prioqNaturalComparator.writeTo(out);
+        out.close();
+
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(objectBytes.toByteArray()));
+        final KTypeHeapPriorityQueue<KType> fromData = KTypeHeapPriorityQueue.readFrom(in, this.NATURAL_COMPARATOR);
+        in.close();
+
+        Assert.assertEquals(this.prioqNaturalComparator, fromData);
+
+        //the heap is re-ordered when read with another comparator
+        final ByteArrayOutputStream inverseBytes = new ByteArrayOutputStream();
+        this.prioqInverseComparator.writeTo(Channels.newChannel(inverseBytes));
+
+        final KTypeHeapPriorityQueue<KType> reordered = KTypeHeapPriorityQueue.readFrom(
+                Channels.newChannel(new ByteArrayInputStream(inverseBytes.toByteArray())), this.NATURAL_COMPARATOR);
+
+        Assert.assertEquals(this.prioqNaturalComparator.size(), reordered.size());
+
+        while (!reordered.isEmpty()) {
+
+            TestUtils.assertEquals2(this.prioqNaturalComparator.popTop(), reordered.popTop());
+        }
+    }
 }
@@ -0,0 +1,229 @@
+package com.carrotsearch.hppcrt.heaps;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.*;
+
+import com.carrotsearch.hppcrt.*;
+import com.carrotsearch.hppcrt.procedures.*;
+import com.carrotsearch.hppcrt.strategies.*;
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakLingering;
+
+/*! #import("com/carrotsearch/hppcrt/Intrinsics.java") !*/
+/**
+ * Unit tests for {@link KTypeTopKCollector}.
+ */
+/*! ${TemplateOptions.generatedAnnotation} !*/
+public class KTypeTopKCollectorTest<KType> extends AbstractKTypeTest<KType>
+{
+    public final KTypeComparator<KType> INVERSE_COMPARATOR = new KTypeComparator<KType>() {
+
+        @Override
+        public int compare(final KType e1, final KType e2) {
+
+            return -Intrinsics.<KType> compareUnchecked(e1, e2);
+        }
+    };
+
+    /* */
+    @Test
+    public void testOfferAndDrain()
+    {
+        final KTypeTopKCollector<KType> collector = new KTypeTopKCollector<KType>(3);
+
+        Assert.assertTrue(collector.isEmpty());
+        Assert.assertEquals(3, collector.capacity());
+
+        Assert.assertTrue(collector.offer(this.k5));
+        Assert.assertTrue(collector.offer(this.k2));
+        Assert.assertTrue(collector.offer(this.k7));
+        Assert.assertTrue(collector.isFull());
+        TestUtils.assertEquals2(this.k2, collector.top());
+
+        //not greater than the top: rejected
+        Assert.assertFalse(collector.offer(this.k1));
+        Assert.assertFalse(collector.offer(this.k2));
+
+        Assert.assertTrue(collector.offer(this.k9));
+        TestUtils.assertEquals2(this.k5, collector.top());
+        Assert.assertEquals(3, collector.size());
+
+        final KType[] target = Intrinsics.<KType> newArray(4);
+
+        //too small from offset 2: nothing drained
+        try {
+            collector.drainTo(target, 2);
+            Assert.fail();
+
+        } catch (final IndexOutOfBoundsException e) {
+
+            //expected
+        }
+
+        Assert.assertEquals(3, collector.size());
+        Assert.assertEquals(3, collector.drainTo(target, 1));
+        TestUtils.assertEquals2(this.k9, target[1]);
+        TestUtils.assertEquals2(this.k7, target[2]);
+        TestUtils.assertEquals2(this.k5, target[3]);
+
+        Assert.assertTrue(collector.isEmpty());
+
+        //k = 0 retains nothing
+        final KTypeTopKCollector<KType> none = new KTypeTopKCollector<KType>(0);
+
+        Assert.assertFalse(none.offer(this.k1));
+        Assert.assertTrue(none.isEmpty());
+    }
+
+    /* */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeK()
+    {
+        new KTypeTopKCollector<KType>(-1);
+    }
+
+    /* */
+    @Test
+    public void testInverseComparatorKeepsSmallest()
+    {
+        final KTypeTopKCollector<KType> collector = new KTypeTopKCollector<KType>(this.INVERSE_COMPARATOR, 2);
+
+        final KType[] values = newArray(this.k4, this.k8, this.k1, this.k6, this.k3);
+
+        Assert.assertEquals(4, collector.offerAll(values, 0, values.length));
+
+        final KType[] target = Intrinsics.<KType> newArray(2);
+
+        collector.drainTo(target, 0);
+        TestUtils.assertEquals2(this.k1, target[0]);
+        TestUtils.assertEquals2(this.k3, target[1]);
+    }
+
+    /* */
+    @Test
+    public void testAgainstSortedReference()
+    {
+        final Random rnd = RandomizedTest.getRandom();
+
+        for (int round = 0; round < 50; round++) {
+
+            final int k = rnd.nextInt(100);
+            final int count = rnd.nextInt(5000);
+
+            final KTypeTopKCollector<KType> collector = new KTypeTopKCollector<KType>(k);
+
+            final List<Integer> reference = new ArrayList<Integer>();
+
+            for (int i = 0; i < count; i++) {
+
+                final int value = rnd.nextInt(100000);
+
+                reference.add(castType(cast(value)));
+                collector.offer(cast(value));
+            }
+
+            assertTopK(reference, k, collector);
+        }
+    }
+
+    /* */
+    @Test
+    @ThreadLeakLingering(linger = 1000)
+    public void testMergeAll() throws Exception
+    {
+        final Random rnd = RandomizedTest.getRandom();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            for (int round = 0; round < 20; round++) {
+
+                final int k = 1 + rnd.nextInt(50);
+                final int nbCollectors = 1 + rnd.nextInt(13);
+
+                final List<Integer> reference = new ArrayList<Integer>();
+                final List<KTypeTopKCollector<KType>> collectors = new ArrayList<KTypeTopKCollector<KType>>();
+
+                for (int c = 0; c < nbCollectors; c++) {
+
+                    final KTypeTopKCollector<KType> collector = new KTypeTopKCollector<KType>(k);
+
+                    final int count = rnd.nextInt(500);
+
+                    for (int i = 0; i < count; i++) {
+
+                        final int value = rnd.nextInt(100000);
+
+                        reference.add(castType(cast(value)));
+                        collector.offer(cast(value));
+                    }
+
+                    collectors.add(collector);
+                }
+
+                final KTypeTopKCollector<KType> merged = KTypeTopKCollector.mergeAll(collectors,
+                        rnd.nextBoolean() ? executor : null);
+
+                Assert.assertSame(collectors.get(0), merged);
+
+                assertTopK(reference, k, merged);
+            }
+        } finally {
+
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /* */
+    @Test
+    public void testCloneAndClear()
+    {
+        final KTypeTopKCollector<KType> collector = new KTypeTopKCollector<KType>(2);
+
+        collector.offer(this.k3);
+        collector.offer(this.k6);
+
+        final KTypeTopKCollector<KType> cloned = collector.clone();
+
+        collector.clear();
+        Assert.assertTrue(collector.isEmpty());
+        TestUtils.assertEquals2(collector.getDefaultValue(), collector.top());
+
+        Assert.assertEquals(2, cloned.size());
+        TestUtils.assertEquals2(this.k3, cloned.top());
+
+        final int[] sum = new int[1];
+
+        cloned.forEach(new KTypeProcedure<KType>() {
+
+            @Override
+            public void apply(final KType value) {
+
+                sum[0] += castType(value);
+            }
+        });
+
+        Assert.assertEquals(9, sum[0]);
+    }
+
+    private void assertTopK(final List<Integer> reference, final int k, final KTypeTopKCollector<KType> collector) {
+
+        Collections.sort(reference, Collections.reverseOrder());
+
+        final int expectedSize = Math.min(k, reference.size());
+
+        Assert.assertEquals(expectedSize, collector.size());
+
+        final KType[] target = Intrinsics.<KType> newArray(expectedSize);
+
+        Assert.assertEquals(expectedSize, collector.drainTo(target, 0));
+
+        for (int i = 0; i < expectedSize; i++) {
+
+            Assert.assertEquals(reference.get(i).intValue(), castType(target[i]));
+        }
+    }
+}
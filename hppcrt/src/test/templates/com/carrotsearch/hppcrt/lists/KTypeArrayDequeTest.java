@@ -1,5 +1,7 @@
 package com.carrotsearch.hppcrt.lists;
 
+import java.io.*;
+import java.nio.channels.Channels;
 import java.util.*;
 
 import org.junit.*;
@@ -352,4 +354,38 @@ public class KTypeArrayDequeTest<KType> extends AbstractKTypeTest<KType>
 
         return newDeque;
     }
+
+    /* */
+    @Test
+    public void testWriteToReadFrom() throws IOException
+    {
+        final Random rnd = RandomizedTest.getRandom();
+
+        //make the deque wrap around its buffer
+        for (int i = 0; i < 5000; i++) {
+
+            this.deque.addLast(cast(rnd.nextInt(1000)));
+            this.deque.addFirst(cast(rnd.nextInt(1000)));
+        }
+
+        //through channels
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        this.deque.writeTo(Channels.newChannel(bytes));
+
+        final KTypeArrayDeque<KType> fromChannel = KTypeArrayDeque.readFrom(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())));
+        Assert.assertEquals(this.deque, fromChannel);
+        Assert.assertEquals(this.deque.size(), fromChannel.size());
+
+        //through an ObjectOutput, which is also a DataOutput
+        final ByteArrayOutputStream objectBytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(objectBytes);
+        this.deque.writeTo(out);
+        out.close();
+
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(objectBytes.toByteArray()));
+        final KTypeArrayDeque<KType> fromData = KTypeArrayDeque.readFrom(in);
+        in.close();
+
+        Assert.assertEquals(this.deque, fromData);
+    }
 }
@@ -1,5 +1,7 @@
 package com.carrotsearch.hppcrt.lists;
 
+import java.io.*;
+import java.nio.channels.Channels;
 import java.util.*;
 
 import org.junit.*;
@@ -559,4 +561,42 @@ public class KTypeArrayListTest<KType> extends AbstractKTypeIndexedContainerTest
 
         return newArray;
     }
+
+    /* */
+    @Test
+    public void testWriteToReadFrom() throws IOException
+    {
+        final Random rnd = RandomizedTest.getRandom();
+
+        for (int i = 0; i < 5000; i++) {
+
+            this.arrayList.add(cast(rnd.nextInt(1000)));
+        }
+
+        //through channels
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        this.arrayList.writeTo(Channels.newChannel(bytes));
+
+        final KTypeArrayList<KType> fromChannel = KTypeArrayList.readFrom(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())));
+        Assert.assertEquals(this.arrayList, fromChannel);
+        Assert.assertEquals(this.arrayList.size(), fromChannel.size());
+
+        //through an ObjectOutput, which is also a DataOutput
+        final ByteArrayOutputStream objectBytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(objectBytes);
+        this.arrayList.writeTo(out);
+        out.close();
+
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(objectBytes.toByteArray()));
+        final KTypeArrayList<KType> fromData = KTypeArrayList.readFrom(in);
+        in.close();
+
+        Assert.assertEquals(this.arrayList, fromData);
+
+        //empty
+        final ByteArrayOutputStream emptyBytes = new ByteArrayOutputStream();
+        new KTypeArrayList<KType>().writeTo(Channels.newChannel(emptyBytes));
+
+        Assert.assertTrue(KTypeArrayList.readFrom(Channels.newChannel(new ByteArrayInputStream(emptyBytes.toByteArray()))).isEmpty());
+    }
 }
@@ -1,5 +1,7 @@
 package com.carrotsearch.hppcrt.lists;
 
+import java.io.*;
+import java.nio.channels.Channels;
 import java.util.*;
 
 import org.junit.*;
@@ -1360,4 +1362,38 @@ public class KTypeLinkedListTest<KType> extends AbstractKTypeTest<KType>
             Assert.assertEquals("At index = " + ii + ", ", expectedValues.get(ii).intValue(), castType(hppcList.get(ii)));
         }
     }
+
+    /* */
+    @Test
+    public void testWriteToReadFrom() throws IOException
+    {
+        final Random rnd = RandomizedTest.getRandom();
+
+        //mix insertions so that the buffer order is not the list order
+        for (int i = 0; i < 5000; i++) {
+
+            this.list.addLast(cast(rnd.nextInt(1000)));
+            this.list.addFirst(cast(rnd.nextInt(1000)));
+        }
+
+        //through channels
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        this.list.writeTo(Channels.newChannel(bytes));
+
+        final KTypeLinkedList<KType> fromChannel = KTypeLinkedList.readFrom(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())));
+        Assert.assertEquals(this.list, fromChannel);
+        Assert.assertEquals(this.list.size(), fromChannel.size());
+
+        //through an ObjectOutput, which is also a DataOutput
+        final ByteArrayOutputStream objectBytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(objectBytes);
+        this.list.writeTo(out);
+        out.close();
+
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(objectBytes.toByteArray()));
+        final KTypeLinkedList<KType> fromData = KTypeLinkedList.readFrom(in);
+        in.close();
+
+        Assert.assertEquals(this.list, fromData);
+    }
 }
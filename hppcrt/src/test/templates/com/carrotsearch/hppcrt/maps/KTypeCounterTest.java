@@ -0,0 +1,226 @@
+package com.carrotsearch.hppcrt.maps;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.*;
+
+import com.carrotsearch.hppcrt.*;
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+
+/*! #import("com/carrotsearch/hppcrt/Intrinsics.java") !*/
+/**
+ * Tests for {@link KTypeCounter}.
+ */
+//only test a few representative types.
+/*! ${TemplateOptions.doNotGenerateKType("BYTE", "CHAR", "SHORT", "FLOAT")} !*/
+/*! ${TemplateOptions.generatedAnnotation} !*/
+public class KTypeCounterTest<KType> extends AbstractKTypeTest<KType>
+{
+    /* */
+    @Test
+    public void testIncrementGetRemove()
+    {
+        final KTypeCounter<KType> counter = new KTypeCounter<KType>();
+
+        Assert.assertTrue(counter.isEmpty());
+
+        Assert.assertEquals(1, counter.increment(this.key1));
+        Assert.assertEquals(2, counter.increment(this.key1));
+        Assert.assertEquals(12, counter.add(this.key1, 10));
+        Assert.assertEquals(0, counter.add(this.key2, 0));
+        Assert.assertEquals(1, counter.increment(this.keyE));
+
+        Assert.assertEquals(3, counter.size());
+        Assert.assertEquals(12, counter.get(this.key1));
+        Assert.assertEquals(0, counter.get(this.key2));
+        Assert.assertEquals(0, counter.get(this.key3));
+        Assert.assertEquals(1, counter.get(this.keyE));
+        Assert.assertTrue(counter.containsKey(this.key2));
+        Assert.assertFalse(counter.containsKey(this.key3));
+        Assert.assertTrue(counter.containsKey(this.keyE));
+
+        Assert.assertEquals(12, counter.remove(this.key1));
+        Assert.assertEquals(0, counter.remove(this.key1));
+        Assert.assertEquals(1, counter.remove(this.keyE));
+        Assert.assertFalse(counter.containsKey(this.keyE));
+        Assert.assertEquals(1, counter.size());
+        Assert.assertEquals("[" + this.key2 + "=>0]", counter.toString());
+
+        counter.clear();
+
+        Assert.assertTrue(counter.isEmpty());
+        Assert.assertFalse(counter.containsKey(this.key2));
+        Assert.assertEquals("[]", counter.toString());
+    }
+
+    /* */
+    @Test
+    public void testSaturation()
+    {
+        final KTypeCounter<KType> counter = new KTypeCounter<KType>();
+
+        Assert.assertEquals(Integer.MAX_VALUE - 1, counter.add(this.key1, Integer.MAX_VALUE - 1));
+        Assert.assertEquals(Integer.MAX_VALUE, counter.add(this.key1, 5));
+        Assert.assertEquals(Integer.MAX_VALUE, counter.increment(this.key1));
+        Assert.assertEquals(Integer.MAX_VALUE, counter.get(this.key1));
+
+        counter.add(this.keyE, Integer.MAX_VALUE);
+        Assert.assertEquals(Integer.MAX_VALUE, counter.add(this.keyE, Integer.MAX_VALUE));
+    }
+
+    /* */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeIncrement()
+    {
+        new KTypeCounter<KType>().add(this.key1, -1);
+    }
+
+    /* */
+    @Test
+    public void testNarrowCountersPromotion()
+    {
+        final KTypeCounter<KType> counter = KTypeCounter.newNarrowInstance(4);
+
+        Assert.assertEquals(1, counter.counterBytes());
+
+        for (int i = 0; i < 50; i++) {
+
+            counter.add(cast(i), i);
+        }
+
+        Assert.assertEquals(1, counter.counterBytes());
+
+        Assert.assertEquals(255, counter.add(this.key1, 254));
+        Assert.assertEquals(1, counter.counterBytes());
+
+        Assert.assertEquals(256, counter.increment(this.key1));
+        Assert.assertEquals(2, counter.counterBytes());
+
+        Assert.assertEquals(65536, counter.add(this.key2, 65534));
+        Assert.assertEquals(4, counter.counterBytes());
+
+        Assert.assertEquals(Integer.MAX_VALUE, counter.add(this.key3, Integer.MAX_VALUE));
+
+        for (int i = 4; i < 50; i++) {
+
+            Assert.assertEquals(i, counter.get(cast(i)));
+        }
+
+        Assert.assertEquals(256, counter.get(this.key1));
+        Assert.assertEquals(65536, counter.get(this.key2));
+        Assert.assertEquals(Integer.MAX_VALUE, counter.get(this.key3));
+    }
+
+    /* */
+    @Test
+    public void testTopK()
+    {
+        final KTypeCounter<KType> counter = new KTypeCounter<KType>();
+
+        final KType[] keys = Intrinsics.<KType> newArray(5);
+        final int[] counts = new int[5];
+
+        Assert.assertEquals(0, counter.topK(3, keys, counts));
+
+        for (int i = 1; i <= 100; i++) {
+
+            counter.add(cast(i), i * 10);
+        }
+
+        counter.add(this.keyE, 995);
+
+        Assert.assertEquals(5, counter.topK(5, keys, counts));
+
+        Assert.assertEquals(1000, counts[0]);
+        Assert.assertEquals(100, castType(keys[0]));
+        Assert.assertEquals(995, counts[1]);
+        TestUtils.assertEquals2(this.keyE, keys[1]);
+        Assert.assertEquals(990, counts[2]);
+        Assert.assertEquals(99, castType(keys[2]));
+        Assert.assertEquals(970, counts[4]);
+        Assert.assertEquals(97, castType(keys[4]));
+
+        //n larger than the size
+        final KTypeCounter<KType> small = new KTypeCounter<KType>();
+        small.add(this.key1, 3);
+        small.add(this.key2, 7);
+
+        Assert.assertEquals(2, small.topK(5, keys, counts));
+        Assert.assertEquals(7, counts[0]);
+        Assert.assertEquals(3, counts[1]);
+        TestUtils.assertEquals2(this.key2, keys[0]);
+        TestUtils.assertEquals2(this.key1, keys[1]);
+    }
+
+    /* */
+    @Test
+    public void testAgainstHashMap()
+    {
+        final Random rnd = RandomizedTest.getRandom();
+
+        final Map<Integer, Integer> reference = new HashMap<Integer, Integer>();
+
+        final KTypeCounter<KType> counter = new KTypeCounter<KType>(rnd.nextInt(100),
+                HashContainers.DEFAULT_LOAD_FACTOR, rnd.nextBoolean());
+
+        final int keyRange = 1 + rnd.nextInt(2000);
+
+        for (int round = 0; round < 100000; round++) {
+
+            final int key = rnd.nextInt(keyRange);
+
+            if (rnd.nextInt(20) == 0) {
+
+                final Integer removed = reference.remove(key);
+
+                Assert.assertEquals(removed == null ? 0 : removed.intValue(), counter.remove(cast(key)));
+            } else {
+
+                final int increment = rnd.nextInt(50) == 0 ? rnd.nextInt(100000) : 1;
+
+                final Integer previous = reference.get(key);
+                final int count = (previous == null ? 0 : previous.intValue()) + increment;
+
+                reference.put(key, count);
+
+                Assert.assertEquals(count, counter.add(cast(key), increment));
+            }
+
+            Assert.assertEquals(reference.size(), counter.size());
+        }
+
+        for (final Map.Entry<Integer, Integer> entry : reference.entrySet()) {
+
+            Assert.assertEquals(entry.getValue().intValue(), counter.get(cast(entry.getKey())));
+        }
+
+        //clone, equals and hashCode
+        final KTypeCounter<KType> cloned = counter.clone();
+
+        Assert.assertEquals(counter, cloned);
+        Assert.assertEquals(counter.hashCode(), cloned.hashCode());
+
+        //merge into an empty counter of another width gives the same contents
+        final KTypeCounter<KType> merged = KTypeCounter.newNarrowInstance(0);
+        merged.merge(counter);
+
+        Assert.assertEquals(counter.hashCode(), merged.hashCode());
+
+        merged.merge(counter);
+
+        for (final Map.Entry<Integer, Integer> entry : reference.entrySet()) {
+
+            Assert.assertEquals(2 * entry.getValue().intValue(), merged.get(cast(entry.getKey())));
+        }
+
+        if (!reference.isEmpty()) {
+
+            final int key = reference.keySet().iterator().next();
+
+            cloned.increment(cast(key));
+            Assert.assertFalse(counter.equals(cloned));
+        }
+    }
+}
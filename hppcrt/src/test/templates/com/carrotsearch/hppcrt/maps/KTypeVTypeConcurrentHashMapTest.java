@@ -0,0 +1,199 @@
+package com.carrotsearch.hppcrt.maps;
+
+import org.junit.*;
+
+import com.carrotsearch.hppcrt.*;
+import com.carrotsearch.hppcrt.predicates.*;
+import com.carrotsearch.hppcrt.procedures.*;
+
+/*! #import("com/carrotsearch/hppcrt/Intrinsics.java") !*/
+/**
+ * Tests for {@link KTypeVTypeConcurrentHashMap}.
+ */
+/*! ${TemplateOptions.generatedAnnotation} !*/
+public class KTypeVTypeConcurrentHashMapTest<KType, VType> extends AbstractKTypeVTypeTest<KType, VType>
+{
+    private static final int NB_KEYS = 100;
+
+    /**
+     * Per-test fresh initialized instance.
+     */
+    protected KTypeVTypeConcurrentHashMap<KType, VType> map = new KTypeVTypeConcurrentHashMap<KType, VType>(0, HashContainers.MAX_LOAD_FACTOR, 4);
+
+    /**
+     * Key i, where key 0 is the default key 0/null.
+     */
+    protected KType key(final int i)
+    {
+        return (i == 0) ? this.keyE : cast(i);
+    }
+
+    /* */
+    @Test
+    public void testPutGetRemove()
+    {
+        Assert.assertTrue(this.map.isEmpty());
+
+        for (int i = 0; i < KTypeVTypeConcurrentHashMapTest.NB_KEYS; i++) {
+
+            this.map.put(key(i), vcast(i));
+        }
+
+        Assert.assertEquals(KTypeVTypeConcurrentHashMapTest.NB_KEYS, this.map.size());
+        Assert.assertFalse(this.map.isEmpty());
+
+        for (int i = 0; i < KTypeVTypeConcurrentHashMapTest.NB_KEYS; i++) {
+
+            Assert.assertTrue(this.map.containsKey(key(i)));
+            Assert.assertEquals(i, vcastType(this.map.get(key(i))));
+        }
+
+        //the default key is handled like any other
+        Assert.assertTrue(this.map.containsKey(this.keyE));
+        Assert.assertFalse(this.map.putIfAbsent(this.keyE, this.value9));
+        Assert.assertTrue(this.map.putIfAbsent(cast(KTypeVTypeConcurrentHashMapTest.NB_KEYS), this.value9));
+
+        for (int i = 0; i < KTypeVTypeConcurrentHashMapTest.NB_KEYS; i += 2) {
+
+            Assert.assertEquals(i, vcastType(this.map.remove(key(i))));
+        }
+
+        Assert.assertEquals(KTypeVTypeConcurrentHashMapTest.NB_KEYS / 2 + 1, this.map.size());
+        Assert.assertFalse(this.map.containsKey(this.keyE));
+        TestUtils.assertEquals2(this.map.getDefaultValue(), this.map.get(this.keyE));
+
+        this.map.clear();
+        Assert.assertEquals(0, this.map.size());
+        Assert.assertTrue(this.map.isEmpty());
+    }
+
+    /* */
+    @Test
+    public void testDefaultValue()
+    {
+        this.map.setDefaultValue(this.value5);
+        TestUtils.assertEquals2(this.value5, this.map.get(this.key1));
+        TestUtils.assertEquals2(this.value5, this.map.put(this.key1, this.value1));
+        TestUtils.assertEquals2(this.value1, this.map.put(this.key1, this.value2));
+        TestUtils.assertEquals2(this.value5, this.map.remove(this.key3));
+    }
+
+    /* */
+    @Test
+    public void testSnapshotAndForEach()
+    {
+        final KTypeVTypeHashMap<KType, VType> reference = new KTypeVTypeHashMap<KType, VType>();
+
+        for (int i = 0; i < KTypeVTypeConcurrentHashMapTest.NB_KEYS; i++) {
+
+            this.map.put(cast(i), vcast(i % 10));
+            reference.put(cast(i), vcast(i % 10));
+        }
+
+        assertSameMap(reference, this.map.snapshot());
+
+        final int[] count = new int[1];
+
+        this.map.forEach(new KTypeVTypeProcedure<KType, VType>() {
+
+            @Override
+            public void apply(final KType key, final VType value) {
+
+                Assert.assertEquals(castType(key) % 10, vcastType(value));
+                count[0]++;
+            }
+        });
+
+        Assert.assertEquals(KTypeVTypeConcurrentHashMapTest.NB_KEYS, count[0]);
+
+        count[0] = 0;
+
+        this.map.forEach(new KTypeVTypePredicate<KType, VType>() {
+
+            @Override
+            public boolean apply(final KType key, final VType value) {
+
+                count[0]++;
+                return count[0] < 10;
+            }
+        });
+
+        Assert.assertEquals(10, count[0]);
+    }
+
+    /* */
+    @Test
+    public void testRemoveAll()
+    {
+        for (int i = 0; i < KTypeVTypeConcurrentHashMapTest.NB_KEYS; i++) {
+
+            this.map.put(cast(i), vcast(i % 10));
+        }
+
+        Assert.assertEquals(KTypeVTypeConcurrentHashMapTest.NB_KEYS / 2, this.map.removeAll(new KTypePredicate<KType>() {
+
+            @Override
+            public boolean apply(final KType key) {
+
+                return castType(key) % 2 == 0;
+            }
+        }));
+
+        Assert.assertEquals(KTypeVTypeConcurrentHashMapTest.NB_KEYS / 10, this.map.removeAll(new KTypeVTypePredicate<KType, VType>() {
+
+            @Override
+            public boolean apply(final KType key, final VType value) {
+
+                return vcastType(value) == 1;
+            }
+        }));
+
+        Assert.assertEquals(KTypeVTypeConcurrentHashMapTest.NB_KEYS * 4 / 10, this.map.size());
+    }
+
+    /*! #if ($TemplateOptions.VTypePrimitive) !*/
+    /* */
+    @Test
+    public void testConcurrentAddTo() throws InterruptedException
+    {
+        final int nbThreads = 4;
+        final int nbRounds = 25;
+        final int nbKeys = 50;
+
+        final Thread[] threads = new Thread[nbThreads];
+
+        for (int t = 0; t < nbThreads; t++) {
+
+            threads[t] = new Thread() {
+
+                @Override
+                public void run() {
+
+                    for (int round = 0; round < nbRounds; round++) {
+
+                        for (int i = 0; i < nbKeys; i++) {
+
+                            KTypeVTypeConcurrentHashMapTest.this.map.addTo(cast(i), vcast(1));
+                        }
+                    }
+                }
+            };
+        }
+
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(nbKeys, this.map.size());
+
+        for (int i = 0; i < nbKeys; i++) {
+
+            Assert.assertEquals(nbThreads * nbRounds, vcastType(this.map.get(cast(i))));
+        }
+    }
+    /*! #end !*/
+}
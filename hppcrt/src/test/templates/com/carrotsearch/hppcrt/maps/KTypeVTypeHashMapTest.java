@@ -1,6 +1,15 @@
 package com.carrotsearch.hppcrt.maps;
 
+import java.io.*;
+import java.nio.channels.Channels;
+import java.util.Random;
+
+import org.junit.*;
+
 import com.carrotsearch.hppcrt.*;
+import com.carrotsearch.hppcrt.predicates.*;
+import com.carrotsearch.hppcrt.cursors.*;
+import com.carrotsearch.randomizedtesting.RandomizedTest;
 
 /*! #import("com/carrotsearch/hppcrt/Intrinsics.java") !*/
 /**
@@ -132,4 +141,407 @@ public class KTypeVTypeHashMapTest<KType, VType> extends AbstractKTypeVTypeHashM
 
     //none for now
 
+    /* */
+    @Test
+    public void testWriteToReadFrom() throws IOException
+    {
+        final Random rnd = RandomizedTest.getRandom();
+
+        final KTypeVTypeHashMap<KType, VType> map = new KTypeVTypeHashMap<KType, VType>();
+
+        for (int i = 0; i < 5000; i++) {
+
+            map.put(cast(rnd.nextInt(10000)), vcast(rnd.nextInt(100)));
+        }
+
+        //the default key is part of the binary form
+        map.put(this.keyE, this.value7);
+
+        //through channels
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        map.writeTo(Channels.newChannel(bytes));
+
+        final KTypeVTypeHashMap<KType, VType> fromChannel = KTypeVTypeHashMap.readFrom(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())));
+        Assert.assertEquals(map, fromChannel);
+        Assert.assertEquals(map.size(), fromChannel.size());
+
+        //through an ObjectOutput, which is also a DataOutput
+        final ByteArrayOutputStream objectBytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(objectBytes);
+        map.writeTo(out);
+        out.close();
+
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(objectBytes.toByteArray()));
+        final KTypeVTypeHashMap<KType, VType> fromData = KTypeVTypeHashMap.readFrom(in);
+        in.close();
+
+        Assert.assertEquals(map, fromData);
+        TestUtils.assertEquals2(this.value7, fromData.get(this.keyE));
+    }
+
+    /* */
+    @Test
+    public void testBatchedContainsKey()
+    {
+        final Random rnd = RandomizedTest.getRandom();
+
+        final KTypeVTypeHashMap<KType, VType> map = new KTypeVTypeHashMap<KType, VType>();
+
+        for (int i = 0; i < 1000; i++) {
+
+            map.put(cast(rnd.nextInt(2000)), this.value1);
+        }
+
+        map.put(this.keyE, this.value2);
+
+        //more than one batch, with a batch partially filled, and an offset
+        final int offset = 3;
+        final KType[] queries = Intrinsics.<KType> newArray(offset + 5 * HashContainers.LOOKUP_BATCH_SIZE + 7);
+        final boolean[] results = new boolean[queries.length];
+
+        for (int i = offset; i < queries.length; i++) {
+
+            queries[i] = (i % 50 == 0) ? this.keyE : cast(rnd.nextInt(4000));
+        }
+
+        final int found = map.containsKey(queries, offset, queries.length - offset, results);
+
+        int expectedFound = 0;
+
+        for (int i = 0; i < offset; i++) {
+
+            Assert.assertFalse(results[i]);
+        }
+
+        for (int i = offset; i < queries.length; i++) {
+
+            Assert.assertEquals(map.containsKey(queries[i]), results[i]);
+
+            if (results[i]) {
+                expectedFound++;
+            }
+        }
+
+        Assert.assertEquals(expectedFound, found);
+
+        //empty batch
+        Assert.assertEquals(0, map.containsKey(queries, 0, 0, results));
+
+        //range out of the results
+        try {
+            map.containsKey(queries, offset, queries.length - offset, new boolean[queries.length - 1]);
+            Assert.fail();
+
+        } catch (final IndexOutOfBoundsException e) {
+
+            //expected
+        }
+    }
+
+    /* */
+    @Test
+    public void testBatchedGetAll()
+    {
+        final Random rnd = RandomizedTest.getRandom();
+
+        final KTypeVTypeHashMap<KType, VType> batched = new KTypeVTypeHashMap<KType, VType>();
+
+        for (int i = 0; i < 20000; i++) {
+
+            batched.put(cast(rnd.nextInt(15000)), vcast(rnd.nextInt(100)));
+        }
+
+        batched.put(this.keyE, this.value1);
+
+        final int offset = 5;
+
+        //lookups, hits and misses
+        final KType[] queries = Intrinsics.<KType> newArray(offset + 5000);
+        final VType[] results = Intrinsics.<VType> newArray(queries.length);
+
+        for (int i = offset; i < queries.length; i++) {
+
+            queries[i] = (i % 100 == 0) ? this.keyE : cast(rnd.nextInt(30000));
+        }
+
+        batched.setDefaultValue(this.value9);
+
+        final int found = batched.getAll(queries, offset, queries.length - offset, results);
+
+        int expectedFound = 0;
+
+        for (int i = offset; i < queries.length; i++) {
+
+            TestUtils.assertEquals2(batched.get(queries[i]), results[i]);
+
+            if (batched.containsKey(queries[i])) {
+                expectedFound++;
+            }
+        }
+
+        Assert.assertEquals(expectedFound, found);
+
+        Assert.assertEquals(0, batched.getAll(queries, 0, 0, results));
+
+        //range out of the results
+        try {
+            batched.getAll(queries, offset, queries.length - offset, Intrinsics.<VType> newArray(queries.length - 1));
+            Assert.fail();
+
+        } catch (final IndexOutOfBoundsException e) {
+
+            //expected
+        }
+    }
+
+    /* */
+    @Test
+    public void testIncrementalRehash()
+    {
+        final Random rnd = RandomizedTest.getRandom();
+
+        final KTypeVTypeHashMap<KType, VType> reference = new KTypeVTypeHashMap<KType, VType>();
+        final KTypeVTypeHashMap<KType, VType> incremental = new KTypeVTypeHashMap<KType, VType>();
+
+        incremental.setIncrementalRehash(true);
+        Assert.assertTrue(incremental.isIncrementalRehash());
+
+        boolean rehashSeen = false;
+
+        for (int round = 0; round < 50000; round++) {
+
+            //the key range grows, so that the buffers expand several times
+            final KType key = cast(rnd.nextInt(1 + round / 2));
+            final VType value = vcast(rnd.nextInt(100));
+
+            switch (rnd.nextInt(5)) {
+
+                case 0:
+                    TestUtils.assertEquals2(reference.remove(key), incremental.remove(key));
+                    break;
+                case 1:
+                    Assert.assertEquals(reference.containsKey(key), incremental.containsKey(key));
+                    TestUtils.assertEquals2(reference.get(key), incremental.get(key));
+                    break;
+                case 2:
+                    //batched lookups migrate incrementally too
+                    final KType[] queries = Intrinsics.<KType> newArray(3);
+                    queries[0] = key;
+                    queries[1] = cast(rnd.nextInt(1 + round / 2));
+                    queries[2] = cast(rnd.nextInt(1 + round / 2));
+
+                    final boolean[] found = new boolean[3];
+                    final VType[] values = Intrinsics.<VType> newArray(3);
+
+                    final int nbFound = incremental.containsKey(queries, 0, 3, found);
+                    Assert.assertEquals(nbFound, incremental.getAll(queries, 0, 3, values));
+
+                    for (int i = 0; i < 3; i++) {
+
+                        Assert.assertEquals(reference.containsKey(queries[i]), found[i]);
+                        TestUtils.assertEquals2(reference.get(queries[i]), values[i]);
+                    }
+                    break;
+                default:
+                    TestUtils.assertEquals2(reference.put(key, value), incremental.put(key, value));
+                    break;
+            }
+
+            Assert.assertEquals(reference.size(), incremental.size());
+
+            if (incremental.rehashKeys != null) {
+
+                rehashSeen = true;
+
+                //whole map operations complete the rehash, check one in a while
+                if (rnd.nextInt(100) == 0) {
+
+                    Assert.assertEquals(reference, incremental.clone());
+                    Assert.assertEquals(reference.hashCode(), incremental.hashCode());
+                    Assert.assertNull(incremental.rehashKeys);
+                }
+            }
+        }
+
+        Assert.assertTrue(rehashSeen);
+        Assert.assertEquals(reference, incremental);
+
+        //disabling completes a pending rehash
+        incremental.put(cast(100000), this.value1);
+        incremental.setIncrementalRehash(false);
+
+        Assert.assertNull(incremental.rehashKeys);
+        Assert.assertFalse(incremental.isIncrementalRehash());
+    }
+
+    /* */
+    @Test
+    public void testShrink()
+    {
+        final KTypeVTypeHashMap<KType, VType> map = new KTypeVTypeHashMap<KType, VType>();
+
+        for (int i = 0; i < 2000; i++) {
+
+            map.put(cast(i), vcast(i));
+        }
+
+        final int peakLength = map.keys.length;
+
+        for (int i = 10; i < 2000; i++) {
+
+            map.remove(cast(i));
+        }
+
+        final KTypeVTypeHashMap<KType, VType> reference = map.clone();
+
+        //no shrinking by default
+        Assert.assertEquals(peakLength, map.keys.length);
+
+        //shrinking to a larger capacity does nothing
+        map.shrink(2000);
+        Assert.assertEquals(peakLength, map.keys.length);
+
+        map.shrink(100);
+        Assert.assertEquals(HashContainers.minBufferSize(100, map.loadFactor), map.keys.length);
+        Assert.assertEquals(reference, map);
+
+        map.trimToSize();
+        Assert.assertEquals(HashContainers.minBufferSize(map.size(), map.loadFactor), map.keys.length);
+        Assert.assertEquals(map.keys.length, map.values.length);
+        Assert.assertEquals(reference, map);
+
+        //still usable after the shrink
+        for (int i = 0; i < 2000; i++) {
+
+            map.put(cast(i), vcast(i));
+            reference.put(cast(i), vcast(i));
+        }
+
+        Assert.assertEquals(reference, map);
+    }
+
+    /* */
+    @Test
+    public void testShrinkFactor()
+    {
+        final KTypeVTypeHashMap<KType, VType> map = new KTypeVTypeHashMap<KType, VType>();
+        final KTypeVTypeHashMap<KType, VType> reference = new KTypeVTypeHashMap<KType, VType>();
+
+        map.setShrinkFactor(HashContainers.MAX_SHRINK_FACTOR);
+        Assert.assertEquals(HashContainers.MAX_SHRINK_FACTOR, map.getShrinkFactor(), 0.0);
+        Assert.assertEquals(HashContainers.MAX_SHRINK_FACTOR, map.clone().getShrinkFactor(), 0.0);
+
+        for (int i = 0; i < 2000; i++) {
+
+            map.put(cast(i), vcast(i));
+            reference.put(cast(i), vcast(i));
+        }
+
+        final int peakLength = map.keys.length;
+
+        for (int i = 0; i < 2000; i++) {
+
+            TestUtils.assertEquals2(reference.remove(cast(i)), map.remove(cast(i)));
+
+            //memory tracks the live size
+            if (map.keys.length > HashContainers.MIN_HASH_ARRAY_LENGTH) {
+
+                Assert.assertTrue(map.size() >= HashContainers.shrinkAtCount(map.keys.length, map.loadFactor,
+                        HashContainers.MAX_SHRINK_FACTOR));
+            }
+
+            if (i % 100 == 0) {
+
+                Assert.assertEquals(reference, map);
+            }
+        }
+
+        Assert.assertTrue(peakLength > map.keys.length);
+
+        //bulk removals shrink at once
+        for (int i = 0; i < 2000; i++) {
+
+            map.put(cast(i), vcast(i));
+        }
+
+        final KTypeVTypeHashMap<KType, VType> removed = map.clone();
+        removed.remove(cast(1));
+
+        map.removeAll(removed.keys());
+
+        Assert.assertTrue(map.size() <= 2);
+        Assert.assertEquals(HashContainers.minBufferSize(map.size(), map.loadFactor), map.keys.length);
+
+        try {
+            map.setShrinkFactor(0.5);
+            Assert.fail();
+        } catch (final IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    /* */
+    @Test
+    public void testBulkRemovalRebuildsProbeChains()
+    {
+        final Random rnd = RandomizedTest.getRandom();
+
+        final KTypeVTypeHashMap<KType, VType> map = new KTypeVTypeHashMap<KType, VType>();
+        final KTypeVTypeHashMap<KType, VType> victims = new KTypeVTypeHashMap<KType, VType>();
+
+        for (int i = 0; i < 20000; i++) {
+
+            final KType key = cast(rnd.nextInt());
+
+            map.put(key, vcast(i));
+
+            if (rnd.nextBoolean()) {
+
+                victims.put(key, vcast(i));
+            }
+        }
+
+        //reference: one by one removals
+        final KTypeVTypeHashMap<KType, VType> reference = map.clone();
+
+        for (final KTypeVTypeCursor<KType, VType> c : victims) {
+
+            reference.remove(c.key);
+        }
+
+        Assert.assertEquals(victims.size(), map.removeAll(new KTypePredicate<KType>() {
+
+            @Override
+            public boolean apply(final KType value) {
+
+                return victims.containsKey(value);
+            }
+        }));
+
+        Assert.assertEquals(reference, map);
+
+        for (final KTypeVTypeCursor<KType, VType> c : reference) {
+
+            Assert.assertTrue(map.containsKey(c.key));
+        }
+
+        for (final KTypeVTypeCursor<KType, VType> c : victims) {
+
+            Assert.assertFalse(map.containsKey(c.key));
+        }
+
+        //the remaining keys are removed by their values
+        final int remaining = map.size();
+
+        Assert.assertEquals(remaining, map.values().removeAll(new KTypePredicate<VType>() {
+
+            @Override
+            public boolean apply(final VType value) {
+
+                return true;
+            }
+        }));
+
+        Assert.assertEquals(0, map.size());
+    }
 }
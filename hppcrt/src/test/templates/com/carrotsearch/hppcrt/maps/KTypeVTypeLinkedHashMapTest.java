@@ -0,0 +1,426 @@
+package com.carrotsearch.hppcrt.maps;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.junit.*;
+
+import com.carrotsearch.hppcrt.*;
+import com.carrotsearch.hppcrt.cursors.*;
+import com.carrotsearch.hppcrt.predicates.*;
+import com.carrotsearch.hppcrt.procedures.*;
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+
+/*! #import("com/carrotsearch/hppcrt/Intrinsics.java") !*/
+/**
+ * Tests for {@link KTypeVTypeLinkedHashMap}.
+ */
+//only test a few representative types.
+/*! ${TemplateOptions.doNotGenerateKType("BYTE", "CHAR", "SHORT")} !*/
+/*! ${TemplateOptions.doNotGenerateVType("BYTE", "CHAR", "SHORT")} !*/
+/*! ${TemplateOptions.generatedAnnotation} !*/
+public class KTypeVTypeLinkedHashMapTest<KType, VType> extends AbstractKTypeVTypeTest<KType, VType>
+{
+    /**
+     * Per-test fresh initialized instance.
+     */
+    protected KTypeVTypeLinkedHashMap<KType, VType> map;
+
+    @Before
+    public void initialize() {
+
+        this.map = new KTypeVTypeLinkedHashMap<KType, VType>();
+    }
+
+    /* */
+    @Test
+    public void testPutGetRemove()
+    {
+        Assert.assertTrue(this.map.isEmpty());
+
+        TestUtils.assertEquals2(this.map.getDefaultValue(), this.map.put(this.key1, this.value1));
+        TestUtils.assertEquals2(this.value1, this.map.put(this.key1, this.value2));
+        TestUtils.assertEquals2(this.value2, this.map.get(this.key1));
+
+        //the default key
+        Assert.assertFalse(this.map.containsKey(this.keyE));
+        TestUtils.assertEquals2(this.map.getDefaultValue(), this.map.put(this.keyE, this.value3));
+        Assert.assertTrue(this.map.containsKey(this.keyE));
+        TestUtils.assertEquals2(this.value3, this.map.get(this.keyE));
+
+        Assert.assertEquals(2, this.map.size());
+
+        Assert.assertFalse(this.map.putIfAbsent(this.key1, this.value5));
+        Assert.assertTrue(this.map.putIfAbsent(this.key2, this.value5));
+
+        Assert.assertEquals("[" + this.key1 + "=>" + this.value2 + ", " + this.keyE + "=>" + this.value3 + ", "
+                + this.key2 + "=>" + this.value5 + "]", this.map.toString());
+
+        TestUtils.assertEquals2(this.value3, this.map.remove(this.keyE));
+        TestUtils.assertEquals2(this.value2, this.map.remove(this.key1));
+        TestUtils.assertEquals2(this.map.getDefaultValue(), this.map.remove(this.key1));
+
+        Assert.assertEquals(1, this.map.size());
+        Assert.assertTrue(this.map.containsKey(this.key2));
+
+        this.map.clear();
+
+        Assert.assertTrue(this.map.isEmpty());
+        Assert.assertFalse(this.map.containsKey(this.key2));
+        Assert.assertEquals("[]", this.map.toString());
+    }
+
+    /*! #if ($TemplateOptions.VTypePrimitive) !*/
+    /* */
+    @Test
+    public void testPutOrAddAndAddTo()
+    {
+        TestUtils.assertEquals2(this.value2, this.map.putOrAdd(this.key1, this.value2, this.value3));
+        TestUtils.assertEquals2(this.value5, this.map.putOrAdd(this.key1, this.value2, this.value3));
+
+        TestUtils.assertEquals2(this.value1, this.map.addTo(this.keyE, this.value1));
+        TestUtils.assertEquals2(this.value4, this.map.addTo(this.keyE, this.value3));
+
+        TestUtils.assertEquals2(this.value5, this.map.get(this.key1));
+        TestUtils.assertEquals2(this.value4, this.map.get(this.keyE));
+    }
+
+    /*! #end !*/
+
+    /* */
+    @Test
+    public void testInsertionOrder()
+    {
+        for (int i = 100; i >= 0; i--) {
+
+            this.map.put(cast(i), vcast(i));
+        }
+
+        //updates and lookups do not change the insertion order
+        this.map.put(cast(100), vcast(1));
+        this.map.get(cast(99));
+
+        this.map.remove(cast(50));
+        this.map.put(cast(50), vcast(50));
+
+        Assert.assertEquals(100, castType(this.map.eldestKey()));
+        Assert.assertEquals(1, vcastType(this.map.eldestValue()));
+        Assert.assertEquals(1, vcastType(this.map.removeEldest()));
+        Assert.assertEquals(99, castType(this.map.eldestKey()));
+
+        final int[] expected = new int[100];
+
+        int n = 0;
+
+        for (int i = 99; i >= 0; i--) {
+
+            if (i != 50) {
+                expected[n++] = i;
+            }
+        }
+
+        expected[n++] = 50;
+
+        assertOrder(expected, this.map);
+    }
+
+    /* */
+    @Test
+    public void testAccessOrderAndMaxSize()
+    {
+        final KTypeVTypeLinkedHashMap<KType, VType> lru = new KTypeVTypeLinkedHashMap<KType, VType>(0,
+                HashContainers.DEFAULT_LOAD_FACTOR, true);
+
+        Assert.assertTrue(lru.isAccessOrder());
+
+        for (int i = 0; i < 5; i++) {
+
+            lru.put(cast(i), vcast(i));
+        }
+
+        //access 0, update 1: 2 is now the least recently used.
+        lru.get(cast(0));
+        lru.put(cast(1), vcast(10));
+
+        //containsKey() is not an access
+        Assert.assertTrue(lru.containsKey(cast(2)));
+
+        assertOrder(new int[] { 2, 3, 4, 0, 1 }, lru);
+
+        lru.setMaxSize(3);
+        Assert.assertEquals(3, lru.getMaxSize());
+
+        assertOrder(new int[] { 4, 0, 1 }, lru);
+
+        lru.put(cast(5), vcast(5));
+
+        assertOrder(new int[] { 0, 1, 5 }, lru);
+
+        lru.get(cast(0));
+        lru.put(cast(6), vcast(6));
+
+        assertOrder(new int[] { 5, 0, 6 }, lru);
+
+        final KTypeVTypeLinkedHashMap<KType, VType> cloned = lru.clone();
+
+        Assert.assertEquals(lru, cloned);
+        Assert.assertTrue(cloned.isAccessOrder());
+        Assert.assertEquals(3, cloned.getMaxSize());
+        assertOrder(new int[] { 5, 0, 6 }, cloned);
+
+        try {
+            lru.setMaxSize(0);
+            Assert.fail();
+        } catch (final IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    /* */
+    @Test
+    public void testRemoveEldestEntryOverride()
+    {
+        final int[] evicted = new int[1];
+
+        final KTypeVTypeLinkedHashMap<KType, VType> evens = new KTypeVTypeLinkedHashMap<KType, VType>() {
+
+            @Override
+            protected boolean removeEldestEntry() {
+
+                //evict eldest odd keys only
+                if (castType(eldestKey()) % 2 == 1) {
+
+                    evicted[0]++;
+                    return true;
+                }
+
+                return false;
+            }
+        };
+
+        for (int i = 1; i <= 10; i++) {
+
+            evens.put(cast(i), vcast(i));
+        }
+
+        //1 is evicted by its own insertion, then the eldest key is always even
+        Assert.assertEquals(1, evicted[0]);
+
+        evens.remove(cast(2));
+        evens.put(cast(20), vcast(20));
+
+        Assert.assertEquals(2, evicted[0]);
+        assertOrder(new int[] { 4, 5, 6, 7, 8, 9, 10, 20 }, evens);
+    }
+
+    /* */
+    @Test
+    public void testEmptyEldest()
+    {
+        try {
+            this.map.removeEldest();
+            Assert.fail();
+        } catch (final NoSuchElementException e) {
+            //expected
+        }
+
+        try {
+            this.map.eldestKey();
+            Assert.fail();
+        } catch (final NoSuchElementException e) {
+            //expected
+        }
+    }
+
+    /* */
+    @Test
+    public void testAgainstLinkedHashMap()
+    {
+        final Random rnd = RandomizedTest.getRandom();
+
+        for (final boolean accessOrder : new boolean[] { false, true }) {
+
+            final int maxSize = 1 + rnd.nextInt(5000);
+
+            final Map<Integer, Integer> reference = new java.util.LinkedHashMap<Integer, Integer>(16, 0.75f, accessOrder) {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<Integer, Integer> eldest) {
+
+                    return size() > maxSize;
+                }
+            };
+
+            final KTypeVTypeLinkedHashMap<KType, VType> map = new KTypeVTypeLinkedHashMap<KType, VType>(0,
+                    HashContainers.DEFAULT_LOAD_FACTOR, accessOrder);
+
+            map.setMaxSize(maxSize);
+
+            for (int round = 0; round < 50000; round++) {
+
+                //restrict the key range to have hits, but large enough to trigger several rehashes
+                final int key = rnd.nextInt(10000);
+                final int value = rnd.nextInt(100);
+
+                switch (rnd.nextInt(6)) {
+
+                    case 0:
+                        Assert.assertEquals(reference.containsKey(key), map.containsKey(cast(key)));
+                        if (reference.containsKey(key)) {
+                            Assert.assertEquals(reference.remove(key).intValue(), vcastType(map.remove(cast(key))));
+                        } else {
+                            map.remove(cast(key));
+                        }
+                        break;
+                    case 1:
+                        if (reference.containsKey(key)) {
+                            Assert.assertEquals(reference.get(key).intValue(), vcastType(map.get(cast(key))));
+                        }
+                        break;
+                    case 2:
+                        if (!reference.isEmpty() && rnd.nextInt(10) == 0) {
+
+                            final Iterator<Integer> eldest = reference.keySet().iterator();
+                            Assert.assertEquals(eldest.next().intValue(), castType(map.eldestKey()));
+                            eldest.remove();
+                            map.removeEldest();
+                        }
+                        break;
+                    case 3:
+                        final boolean absent = !reference.containsKey(key);
+                        if (absent) {
+                            reference.put(key, value);
+                        }
+                        Assert.assertEquals(absent, map.putIfAbsent(cast(key), vcast(value)));
+                        break;
+                    default:
+                        reference.put(key, value);
+                        map.put(cast(key), vcast(value));
+                        break;
+                }
+
+                Assert.assertEquals(reference.size(), map.size());
+
+                if (round % 5000 == 0) {
+
+                    assertSameOrder(reference, map);
+                }
+            }
+
+            assertSameOrder(reference, map);
+            assertSameOrder(reference, map.clone());
+        }
+    }
+
+    /* */
+    @Test
+    public void testForEachAndIterator()
+    {
+        for (int i = 0; i < 100; i++) {
+
+            this.map.put(cast(i), vcast(i % 10));
+        }
+
+        final int[] count = new int[1];
+
+        this.map.forEach(new KTypeVTypeProcedure<KType, VType>() {
+
+            @Override
+            public void apply(final KType key, final VType value) {
+
+                Assert.assertEquals(count[0], castType(key));
+                Assert.assertEquals(castType(key) % 10, vcastType(value));
+                count[0]++;
+            }
+        });
+
+        Assert.assertEquals(100, count[0]);
+
+        count[0] = 0;
+
+        this.map.forEach(new KTypeVTypePredicate<KType, VType>() {
+
+            @Override
+            public boolean apply(final KType key, final VType value) {
+
+                count[0]++;
+                return count[0] < 10;
+            }
+        });
+
+        Assert.assertEquals(10, count[0]);
+
+        count[0] = 0;
+
+        for (final KTypeVTypeCursor<KType, VType> c : this.map) {
+
+            Assert.assertEquals(count[0], castType(c.key));
+            count[0]++;
+        }
+
+        Assert.assertEquals(100, count[0]);
+    }
+
+    /* */
+    @SuppressWarnings("unchecked")
+    @Test(expected = IllegalArgumentException.class)
+    public void testPutAllDifferentLengths()
+    {
+        this.map.putAll(newArray(this.key1, this.key2), newvArray(this.value1));
+    }
+
+    /* */
+    @Test
+    public void testFromAndEquals()
+    {
+        final KTypeVTypeLinkedHashMap<KType, VType> map = KTypeVTypeLinkedHashMap.from(
+                newArray(this.key1, this.key2, this.keyE),
+                newvArray(this.value1, this.value2, this.value3));
+
+        Assert.assertEquals(3, map.size());
+        TestUtils.assertEquals2(this.value2, map.get(this.key2));
+
+        //same entries in another order
+        this.map.put(this.keyE, this.value3);
+        this.map.put(this.key2, this.value2);
+        this.map.put(this.key1, this.value1);
+
+        Assert.assertEquals(map, this.map);
+        Assert.assertEquals(map.hashCode(), this.map.hashCode());
+
+        this.map.put(this.keyE, this.value1);
+
+        Assert.assertFalse(map.equals(this.map));
+    }
+
+    private void assertOrder(final int[] expectedKeys, final KTypeVTypeLinkedHashMap<KType, VType> map) {
+
+        Assert.assertEquals(expectedKeys.length, map.size());
+
+        int i = 0;
+
+        for (final KTypeVTypeCursor<KType, VType> c : map) {
+
+            Assert.assertEquals(expectedKeys[i++], castType(c.key));
+        }
+    }
+
+    private void assertSameOrder(final Map<Integer, Integer> reference, final KTypeVTypeLinkedHashMap<KType, VType> map) {
+
+        Assert.assertEquals(reference.size(), map.size());
+
+        final Iterator<Map.Entry<Integer, Integer>> it = reference.entrySet().iterator();
+
+        for (final KTypeVTypeCursor<KType, VType> c : map) {
+
+            final Map.Entry<Integer, Integer> expected = it.next();
+
+            Assert.assertEquals(expected.getKey().intValue(), castType(c.key));
+            Assert.assertEquals(expected.getValue().intValue(), vcastType(c.value));
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.carrotsearch.hppcrt.maps;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.*;
+
+import com.carrotsearch.hppcrt.*;
+import com.carrotsearch.hppcrt.predicates.*;
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+
+/*! #import("com/carrotsearch/hppcrt/Intrinsics.java") !*/
+/**
+ * Tests for {@link KTypeVTypeMappedHashMap}.
+ */
+//only test a few representative types.
+/*! ${TemplateOptions.doNotGenerateKType("OBJECT", "BYTE", "CHAR", "SHORT")} !*/
+/*! ${TemplateOptions.doNotGenerateVType("OBJECT", "BYTE", "CHAR", "SHORT")} !*/
+/*! ${TemplateOptions.generatedAnnotation} !*/
+public class KTypeVTypeMappedHashMapTest<KType, VType> extends AbstractKTypeVTypeTest<KType, VType>
+{
+    protected File snapshot;
+
+    @Before
+    public void initialize() throws IOException {
+
+        /*! #if ($TemplateOptions.KTypeGeneric) !*/
+        //The template itself has no binary layout, only the primitive versions have.
+        Assume.assumeTrue(false);
+        /*! #end !*/
+
+        this.snapshot = File.createTempFile("snapshot", ".bin");
+    }
+
+    @After
+    public void release() {
+
+        if (this.snapshot != null) {
+
+            this.snapshot.delete();
+        }
+    }
+
+    /* */
+    @Test
+    public void testWriteAndOpen() throws IOException
+    {
+        final Random rnd = RandomizedTest.getRandom();
+
+        final KTypeVTypeHashMap<KType, VType> reference = new KTypeVTypeHashMap<KType, VType>();
+
+        for (int i = 0; i < 20000; i++) {
+
+            reference.put(cast(rnd.nextInt(50000)), vcast(rnd.nextInt(1000)));
+        }
+
+        //the default key is part of the snapshot
+        reference.put(this.keyE, this.value7);
+
+        KTypeVTypeMappedHashMap.write(reference, this.snapshot);
+
+        final KTypeVTypeMappedHashMap<KType, VType> mapped = KTypeVTypeMappedHashMap.open(this.snapshot);
+
+        try {
+            Assert.assertEquals(reference.size(), mapped.size());
+            Assert.assertTrue(mapped.containsKey(this.keyE));
+            TestUtils.assertEquals2(this.value7, mapped.get(this.keyE));
+
+            for (int i = 0; i < 50000; i++) {
+
+                Assert.assertEquals(reference.containsKey(cast(i)), mapped.containsKey(cast(i)));
+                TestUtils.assertEquals2(reference.get(cast(i)), mapped.get(cast(i)));
+            }
+
+            assertSameMap(reference, mapped.toHeapMap());
+
+            final int[] count = new int[1];
+
+            mapped.forEach(new KTypeVTypePredicate<KType, VType>() {
+
+                @Override
+                public boolean apply(final KType key, final VType value) {
+
+                    count[0]++;
+                    return count[0] < 10;
+                }
+            });
+
+            Assert.assertEquals(10, count[0]);
+        } finally {
+            mapped.close();
+        }
+
+        Assert.assertTrue(mapped.isClosed());
+
+        try {
+            mapped.get(this.key1);
+            Assert.fail();
+        } catch (final IllegalStateException e) {
+            //expected
+        }
+    }
+
+    /* */
+    @Test
+    public void testEmptyMap() throws IOException
+    {
+        final KTypeVTypeHashMap<KType, VType> reference = new KTypeVTypeHashMap<KType, VType>();
+
+        KTypeVTypeMappedHashMap.write(reference, this.snapshot);
+
+        final KTypeVTypeMappedHashMap<KType, VType> mapped = KTypeVTypeMappedHashMap.open(this.snapshot);
+
+        try {
+            Assert.assertTrue(mapped.isEmpty());
+            Assert.assertFalse(mapped.containsKey(this.keyE));
+            Assert.assertFalse(mapped.containsKey(this.key1));
+
+            mapped.setDefaultValue(this.value3);
+            TestUtils.assertEquals2(this.value3, mapped.get(this.key1));
+        } finally {
+            mapped.close();
+        }
+    }
+
+    /* */
+    @Test
+    public void testInvalidFile() throws IOException
+    {
+        final FileOutputStream output = new FileOutputStream(this.snapshot);
+
+        try {
+            output.write(new byte[64]);
+        } finally {
+            output.close();
+        }
+
+        try {
+            KTypeVTypeMappedHashMap.open(this.snapshot);
+            Assert.fail();
+        } catch (final IOException e) {
+            //expected
+        }
+    }
+
+    /* */
+    @Test
+    public void testNoEmptySlot() throws IOException
+    {
+        KTypeVTypeMappedHashMap.write(new KTypeVTypeHashMap<KType, VType>(), this.snapshot);
+
+        //forge a file whose slots are all taken: lookups of missing keys must still terminate.
+        final RandomAccessFile file = new RandomAccessFile(this.snapshot, "rw");
+
+        try {
+            final byte[] filling = new byte[(int) file.length() - KTypeVTypeMappedHashMap.HEADER_SIZE];
+
+            Arrays.fill(filling, (byte) 0x01);
+
+            file.seek(KTypeVTypeMappedHashMap.HEADER_SIZE);
+            file.write(filling);
+        } finally {
+            file.close();
+        }
+
+        final KTypeVTypeMappedHashMap<KType, VType> mapped = KTypeVTypeMappedHashMap.open(this.snapshot);
+
+        try {
+            Assert.assertFalse(mapped.containsKey(this.key1));
+            TestUtils.assertEquals2(mapped.getDefaultValue(), mapped.get(this.key2));
+        } finally {
+            mapped.close();
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package com.carrotsearch.hppcrt.maps;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.*;
+
+import com.carrotsearch.hppcrt.*;
+import com.carrotsearch.hppcrt.predicates.*;
+import com.carrotsearch.hppcrt.procedures.*;
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+
+/*! #import("com/carrotsearch/hppcrt/Intrinsics.java") !*/
+/**
+ * Tests for {@link KTypeVTypeMultiMap}.
+ */
+//only test a few representative types.
+/*! ${TemplateOptions.doNotGenerateKType("BYTE", "CHAR", "SHORT", "OBJECT")} !*/
+/*! ${TemplateOptions.doNotGenerateVType("BYTE", "CHAR", "SHORT")} !*/
+/*! ${TemplateOptions.generatedAnnotation} !*/
+public class KTypeVTypeMultiMapTest<KType, VType> extends AbstractKTypeVTypeTest<KType, VType>
+{
+    /**
+     * Per-test fresh initialized instance.
+     */
+    protected KTypeVTypeMultiMap<KType, VType> multimap;
+
+    @Before
+    public void initialize() {
+
+        this.multimap = new KTypeVTypeMultiMap<KType, VType>();
+    }
+
+    /* */
+    @Test
+    public void testPutGetAll()
+    {
+        Assert.assertTrue(this.multimap.isEmpty());
+
+        Assert.assertEquals(1, this.multimap.put(this.key1, this.value1));
+        Assert.assertEquals(2, this.multimap.put(this.key1, this.value2));
+        Assert.assertEquals(1, this.multimap.put(this.key2, this.value3));
+        Assert.assertEquals(3, this.multimap.put(this.key1, this.value1));
+
+        Assert.assertEquals(2, this.multimap.keyCount());
+        Assert.assertEquals(4, this.multimap.size());
+        Assert.assertEquals(3, this.multimap.count(this.key1));
+        Assert.assertEquals(0, this.multimap.count(this.key3));
+        Assert.assertTrue(this.multimap.containsKey(this.key2));
+        Assert.assertFalse(this.multimap.containsKey(this.key3));
+
+        Assert.assertEquals("[" + this.key1 + "=>[" + this.value1 + ", " + this.value2 + ", " + this.value1 + "], "
+                + this.key2 + "=>[" + this.value3 + "]]", this.multimap.toString());
+
+        //into a buffer, from an offset
+        final VType[] buffer = Intrinsics.<VType> newArray(5);
+
+        Assert.assertEquals(3, this.multimap.getAll(this.key1, buffer, 1));
+        TestUtils.assertEquals2(this.value1, buffer[1]);
+        TestUtils.assertEquals2(this.value2, buffer[2]);
+        TestUtils.assertEquals2(this.value1, buffer[3]);
+
+        //truncated to the buffer
+        final VType[] small = Intrinsics.<VType> newArray(2);
+
+        Assert.assertEquals(3, this.multimap.getAll(this.key1, small, 0));
+        TestUtils.assertEquals2(this.value2, small[1]);
+
+        Assert.assertEquals(0, this.multimap.getAll(this.key3, buffer, 0));
+
+        Assert.assertEquals(3, this.multimap.removeAll(this.key1));
+        Assert.assertEquals(0, this.multimap.removeAll(this.key1));
+
+        Assert.assertEquals(1, this.multimap.keyCount());
+        Assert.assertEquals(1, this.multimap.size());
+        Assert.assertEquals(1, this.multimap.count(this.key2));
+
+        this.multimap.clear();
+
+        Assert.assertTrue(this.multimap.isEmpty());
+        Assert.assertEquals(0, this.multimap.keyCount());
+        Assert.assertFalse(this.multimap.containsKey(this.key2));
+        Assert.assertEquals("[]", this.multimap.toString());
+    }
+
+    /* */
+    @Test
+    public void testValuesAcrossBlocks()
+    {
+        //beyond the first blocks, and the maximum block size
+        final int count = 5000;
+
+        final VType[] values = Intrinsics.<VType> newArray(count);
+
+        for (int i = 0; i < count; i++) {
+
+            values[i] = vcast(i);
+        }
+
+        this.multimap.put(this.key1, vcast(-1));
+        Assert.assertEquals(1 + count, this.multimap.putAll(this.key1, values, 0, count));
+        Assert.assertEquals(1 + count + 10, this.multimap.putAll(this.key1, values, 10, 10));
+
+        try {
+            this.multimap.putAll(this.key1, values, count - 5, 10);
+            Assert.fail();
+
+        } catch (final IndexOutOfBoundsException e) {
+
+            //expected
+        }
+
+        Assert.assertEquals(1 + count + 10, this.multimap.count(this.key1));
+
+        for (int i = 0; i < 100; i++) {
+
+            this.multimap.put(this.key2, vcast(i));
+        }
+
+        final VType[] buffer = Intrinsics.<VType> newArray(count + 11);
+
+        Assert.assertEquals(count + 11, this.multimap.getAll(this.key1, buffer, 0));
+        Assert.assertEquals(-1, vcastType(buffer[0]));
+
+        for (int i = 0; i < count; i++) {
+
+            Assert.assertEquals(vcastType(vcast(i)), vcastType(buffer[i + 1]));
+        }
+
+        for (int i = 0; i < 10; i++) {
+
+            Assert.assertEquals(vcastType(vcast(10 + i)), vcastType(buffer[count + 1 + i]));
+        }
+
+        //forEach of a key, in insertion order
+        final int[] next = new int[1];
+
+        this.multimap.forEach(this.key2, new KTypeProcedure<VType>() {
+
+            @Override
+            public void apply(final VType value) {
+
+                Assert.assertEquals(vcastType(vcast(next[0]++)), vcastType(value));
+            }
+        });
+
+        Assert.assertEquals(100, next[0]);
+
+        //the predicate stops the iteration
+        next[0] = 0;
+
+        this.multimap.forEach(this.key1, new KTypePredicate<VType>() {
+
+            @Override
+            public boolean apply(final VType value) {
+
+                return ++next[0] < 50;
+            }
+        });
+
+        Assert.assertEquals(50, next[0]);
+
+        //all the pairs
+        next[0] = 0;
+
+        this.multimap.forEach(new KTypeVTypeProcedure<KType, VType>() {
+
+            @Override
+            public void apply(final KType key, final VType value) {
+
+                next[0]++;
+            }
+        });
+
+        Assert.assertEquals(this.multimap.size(), next[0]);
+    }
+
+    /* */
+    @Test
+    public void testRemovedBlocksAreRecycled()
+    {
+        for (int round = 0; round < 10; round++) {
+
+            for (int key = 0; key < 100; key++) {
+
+                for (int i = 0; i <= key; i++) {
+
+                    this.multimap.put(cast(key), vcast(i));
+                }
+            }
+
+            final int capacity = this.multimap.capacity();
+
+            for (int key = 0; key < 100; key++) {
+
+                Assert.assertEquals(key + 1, this.multimap.removeAll(cast(key)));
+            }
+
+            Assert.assertTrue(this.multimap.isEmpty());
+
+            //the same shapes reuse the freed blocks
+            for (int key = 0; key < 100; key++) {
+
+                for (int i = 0; i <= key; i++) {
+
+                    this.multimap.put(cast(key), vcast(i));
+                }
+            }
+
+            Assert.assertEquals(capacity, this.multimap.capacity());
+
+            for (int key = 0; key < 100; key++) {
+
+                Assert.assertEquals(key + 1, this.multimap.removeAll(cast(key)));
+            }
+        }
+    }
+
+    /* */
+    @Test
+    public void testAgainstHashMapOfLists()
+    {
+        final Random rnd = RandomizedTest.getRandom();
+
+        final Map<Integer, List<Integer>> reference = new HashMap<Integer, List<Integer>>();
+
+        final int keyRange = 1 + rnd.nextInt(1000);
+
+        for (int round = 0; round < 100000; round++) {
+
+            final int key = rnd.nextInt(keyRange);
+
+            if (rnd.nextInt(50) == 0) {
+
+                final List<Integer> removed = reference.remove(key);
+
+                Assert.assertEquals(removed == null ? 0 : removed.size(), this.multimap.removeAll(cast(key)));
+            } else {
+
+                final int value = rnd.nextInt(100);
+
+                List<Integer> list = reference.get(key);
+
+                if (list == null) {
+
+                    list = new ArrayList<Integer>();
+                    reference.put(key, list);
+                }
+
+                list.add(value);
+
+                Assert.assertEquals(list.size(), this.multimap.put(cast(key), vcast(value)));
+            }
+
+            Assert.assertEquals(reference.size(), this.multimap.keyCount());
+        }
+
+        assertSameValues(reference, this.multimap);
+
+        //clone, equals and hashCode
+        final KTypeVTypeMultiMap<KType, VType> cloned = this.multimap.clone();
+
+        Assert.assertEquals(this.multimap, cloned);
+        Assert.assertEquals(this.multimap.hashCode(), cloned.hashCode());
+
+        //same contents, other insertion order of the keys and other blocks
+        final KTypeVTypeMultiMap<KType, VType> other = new KTypeVTypeMultiMap<KType, VType>();
+
+        for (int key = keyRange - 1; key >= 0; key--) {
+
+            final List<Integer> list = reference.get(key);
+
+            if (list != null) {
+
+                for (final Integer value : list) {
+
+                    other.put(cast(key), vcast(value));
+                }
+            }
+        }
+
+        Assert.assertEquals(this.multimap, other);
+        Assert.assertEquals(this.multimap.hashCode(), other.hashCode());
+
+        if (!reference.isEmpty()) {
+
+            final int key = reference.keySet().iterator().next();
+
+            cloned.removeAll(cast(key));
+            Assert.assertFalse(this.multimap.equals(cloned));
+
+            cloned.put(cast(key), vcast(1000));
+            Assert.assertFalse(this.multimap.equals(cloned));
+        }
+
+        assertSameValues(reference, this.multimap);
+    }
+
+    private void assertSameValues(final Map<Integer, List<Integer>> reference, final KTypeVTypeMultiMap<KType, VType> multimap) {
+
+        Assert.assertEquals(reference.size(), multimap.keyCount());
+
+        int size = 0;
+
+        for (final Map.Entry<Integer, List<Integer>> entry : reference.entrySet()) {
+
+            final List<Integer> expected = entry.getValue();
+            final VType[] buffer = Intrinsics.<VType> newArray(expected.size());
+
+            Assert.assertEquals(expected.size(), multimap.getAll(cast(entry.getKey()), buffer, 0));
+
+            for (int i = 0; i < expected.size(); i++) {
+
+                Assert.assertEquals(vcastType(vcast(expected.get(i))), vcastType(buffer[i]));
+            }
+
+            size += expected.size();
+        }
+
+        Assert.assertEquals(size, multimap.size());
+    }
+}
@@ -0,0 +1,224 @@
+package com.carrotsearch.hppcrt.maps;
+
+import java.util.Random;
+
+import org.junit.*;
+
+import com.carrotsearch.hppcrt.*;
+import com.carrotsearch.hppcrt.predicates.*;
+import com.carrotsearch.hppcrt.procedures.*;
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+
+/*! #import("com/carrotsearch/hppcrt/Intrinsics.java") !*/
+/**
+ * Tests for {@link KTypeVTypeOffHeapHashMap}.
+ */
+//only test a few representative types.
+/*! ${TemplateOptions.doNotGenerateKType("OBJECT", "BYTE", "CHAR", "SHORT")} !*/
+/*! ${TemplateOptions.doNotGenerateVType("OBJECT", "BYTE", "CHAR", "SHORT")} !*/
+/*! ${TemplateOptions.generatedAnnotation} !*/
+public class KTypeVTypeOffHeapHashMapTest<KType, VType> extends AbstractKTypeVTypeTest<KType, VType>
+{
+    /**
+     * Per-test fresh initialized instance.
+     */
+    protected KTypeVTypeOffHeapHashMap<KType, VType> map;
+
+    @Before
+    public void initialize() {
+
+        /*! #if ($TemplateOptions.KTypeGeneric) !*/
+        //The template itself has no native storage, only the primitive versions have.
+        Assume.assumeTrue(false);
+        /*! #end !*/
+
+        this.map = new KTypeVTypeOffHeapHashMap<KType, VType>();
+    }
+
+    @After
+    public void release() {
+
+        if (this.map != null) {
+
+            this.map.close();
+        }
+    }
+
+    /* */
+    @Test
+    public void testPutGetRemove()
+    {
+        Assert.assertTrue(this.map.isEmpty());
+
+        TestUtils.assertEquals2(this.map.getDefaultValue(), this.map.put(this.key1, this.value1));
+        TestUtils.assertEquals2(this.value1, this.map.put(this.key1, this.value2));
+        TestUtils.assertEquals2(this.value2, this.map.get(this.key1));
+
+        //the default key
+        Assert.assertFalse(this.map.containsKey(this.keyE));
+        TestUtils.assertEquals2(this.map.getDefaultValue(), this.map.put(this.keyE, this.value3));
+        Assert.assertTrue(this.map.containsKey(this.keyE));
+        TestUtils.assertEquals2(this.value3, this.map.get(this.keyE));
+
+        Assert.assertEquals(2, this.map.size());
+
+        Assert.assertFalse(this.map.putIfAbsent(this.key1, this.value5));
+        Assert.assertTrue(this.map.putIfAbsent(this.key2, this.value5));
+
+        TestUtils.assertEquals2(this.value3, this.map.remove(this.keyE));
+        TestUtils.assertEquals2(this.value2, this.map.remove(this.key1));
+        TestUtils.assertEquals2(this.map.getDefaultValue(), this.map.remove(this.key1));
+
+        Assert.assertEquals(1, this.map.size());
+        Assert.assertTrue(this.map.containsKey(this.key2));
+
+        this.map.clear();
+
+        Assert.assertTrue(this.map.isEmpty());
+        Assert.assertFalse(this.map.containsKey(this.key2));
+    }
+
+    /* */
+    @Test
+    public void testPutOrAddAndAddTo()
+    {
+        TestUtils.assertEquals2(this.value2, this.map.putOrAdd(this.key1, this.value2, this.value3));
+        TestUtils.assertEquals2(this.value5, this.map.putOrAdd(this.key1, this.value2, this.value3));
+
+        TestUtils.assertEquals2(this.value1, this.map.addTo(this.keyE, this.value1));
+        TestUtils.assertEquals2(this.value4, this.map.addTo(this.keyE, this.value3));
+
+        TestUtils.assertEquals2(this.value5, this.map.get(this.key1));
+        TestUtils.assertEquals2(this.value4, this.map.get(this.keyE));
+    }
+
+    /* */
+    @Test
+    public void testAgainstHeapMap()
+    {
+        final Random rnd = RandomizedTest.getRandom();
+
+        final KTypeVTypeHashMap<KType, VType> reference = new KTypeVTypeHashMap<KType, VType>();
+
+        for (int round = 0; round < 50000; round++) {
+
+            //restrict the key range to have hits, but large enough to trigger several rehashes
+            final KType key = cast(rnd.nextInt(10000));
+            final VType value = vcast(rnd.nextInt(100));
+
+            switch (rnd.nextInt(4)) {
+
+                case 0:
+                case 1:
+                    TestUtils.assertEquals2(reference.put(key, value), this.map.put(key, value));
+                    break;
+                case 2:
+                    TestUtils.assertEquals2(reference.addTo(key, value), this.map.addTo(key, value));
+                    break;
+                default:
+                    TestUtils.assertEquals2(reference.remove(key), this.map.remove(key));
+                    break;
+            }
+
+            Assert.assertEquals(reference.size(), this.map.size());
+        }
+
+        assertSameMap(reference, this.map.toHeapMap());
+
+        for (int i = 0; i < 10000; i++) {
+
+            Assert.assertEquals(reference.containsKey(cast(i)), this.map.containsKey(cast(i)));
+            TestUtils.assertEquals2(reference.get(cast(i)), this.map.get(cast(i)));
+        }
+    }
+
+    /* */
+    @Test
+    public void testForEach()
+    {
+        for (int i = 0; i < 100; i++) {
+
+            this.map.put(cast(i), vcast(i % 10));
+        }
+
+        final int[] count = new int[1];
+
+        this.map.forEach(new KTypeVTypeProcedure<KType, VType>() {
+
+            @Override
+            public void apply(final KType key, final VType value) {
+
+                Assert.assertEquals(castType(key) % 10, vcastType(value));
+                count[0]++;
+            }
+        });
+
+        Assert.assertEquals(100, count[0]);
+
+        count[0] = 0;
+
+        this.map.forEach(new KTypeVTypePredicate<KType, VType>() {
+
+            @Override
+            public boolean apply(final KType key, final VType value) {
+
+                count[0]++;
+                return count[0] < 10;
+            }
+        });
+
+        Assert.assertEquals(10, count[0]);
+    }
+
+    /* */
+    @Test
+    public void testPagedBuffers()
+    {
+        //more slots than a single page
+        final int nbKeys = KTypeVTypeOffHeapHashMap.PAGE_SIZE;
+
+        final KTypeVTypeOffHeapHashMap<KType, VType> bigMap = new KTypeVTypeOffHeapHashMap<KType, VType>(nbKeys);
+
+        try {
+            Assert.assertTrue(bigMap.keyPages.length > 1);
+
+            for (int i = 0; i < 1000; i++) {
+
+                bigMap.put(cast(i), vcast(i));
+            }
+
+            for (int i = 0; i < 1000; i++) {
+
+                Assert.assertTrue(bigMap.containsKey(cast(i)));
+                Assert.assertEquals(i, vcastType(bigMap.get(cast(i))));
+            }
+        } finally {
+            bigMap.close();
+        }
+    }
+
+    /* */
+    @Test
+    public void testClose()
+    {
+        this.map.put(this.key1, this.value1);
+
+        Assert.assertTrue(this.map.nativeMemoryUsed() > 0);
+
+        this.map.close();
+
+        Assert.assertTrue(this.map.isClosed());
+        Assert.assertEquals(0, this.map.size());
+        Assert.assertEquals(0L, this.map.nativeMemoryUsed());
+
+        //closing twice is harmless
+        this.map.close();
+
+        try {
+            this.map.get(this.key1);
+            Assert.fail();
+        } catch (final IllegalStateException e) {
+            //expected
+        }
+    }
+}
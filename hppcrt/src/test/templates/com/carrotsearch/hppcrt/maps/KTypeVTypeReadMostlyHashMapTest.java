@@ -0,0 +1,258 @@
+package com.carrotsearch.hppcrt.maps;
+
+import org.junit.*;
+
+import com.carrotsearch.hppcrt.*;
+
+/*! #import("com/carrotsearch/hppcrt/Intrinsics.java") !*/
+/**
+ * Tests for {@link KTypeVTypeReadMostlyHashMap}.
+ */
+//only test a few representative types, the concurrent test is rather long.
+/*! ${TemplateOptions.doNotGenerateKType("BYTE", "CHAR", "SHORT", "FLOAT", "DOUBLE")} !*/
+/*! ${TemplateOptions.doNotGenerateVType("BYTE", "CHAR", "SHORT", "FLOAT", "DOUBLE")} !*/
+/*! ${TemplateOptions.generatedAnnotation} !*/
+public class KTypeVTypeReadMostlyHashMapTest<KType, VType> extends AbstractKTypeVTypeHashMapTest<KType, VType>
+{
+    @Override
+    protected KTypeVTypeMap<KType, VType> createNewMapInstance(final int initialCapacity, final double loadFactor) {
+
+        if (initialCapacity == 0 && loadFactor == HashContainers.DEFAULT_LOAD_FACTOR) {
+
+            return new KTypeVTypeReadMostlyHashMap<KType, VType>();
+
+        } else if (loadFactor == HashContainers.DEFAULT_LOAD_FACTOR) {
+
+            return new KTypeVTypeReadMostlyHashMap<KType, VType>(initialCapacity);
+        }
+
+        //generic case
+        return new KTypeVTypeReadMostlyHashMap<KType, VType>(initialCapacity, loadFactor);
+    }
+
+    @Override
+    protected KType[] getKeys(final KTypeVTypeMap<KType, VType> testMap) {
+
+        final KTypeVTypeReadMostlyHashMap<KType, VType> concreteClass = (KTypeVTypeReadMostlyHashMap<KType, VType>) (testMap);
+
+        return Intrinsics.<KType[]> cast(concreteClass.keys);
+    }
+
+    @Override
+    protected VType[] getValues(final KTypeVTypeMap<KType, VType> testMap) {
+        final KTypeVTypeReadMostlyHashMap<KType, VType> concreteClass = (KTypeVTypeReadMostlyHashMap<KType, VType>) (testMap);
+
+        return Intrinsics.<VType[]> cast(concreteClass.values);
+    }
+
+    @Override
+    protected boolean isAllocatedDefaultKey(final KTypeVTypeMap<KType, VType> testMap) {
+        final KTypeVTypeReadMostlyHashMap<KType, VType> concreteClass = (KTypeVTypeReadMostlyHashMap<KType, VType>) (testMap);
+
+        return concreteClass.allocatedDefaultKey;
+
+    }
+
+    @Override
+    protected VType getAllocatedDefaultKeyValue(final KTypeVTypeMap<KType, VType> testMap) {
+        final KTypeVTypeReadMostlyHashMap<KType, VType> concreteClass = (KTypeVTypeReadMostlyHashMap<KType, VType>) (testMap);
+
+        return concreteClass.allocatedDefaultKeyValue;
+    }
+
+    @Override
+    protected KTypeVTypeMap<KType, VType> getClone(final KTypeVTypeMap<KType, VType> testMap) {
+        final KTypeVTypeReadMostlyHashMap<KType, VType> concreteClass = (KTypeVTypeReadMostlyHashMap<KType, VType>) (testMap);
+
+        return concreteClass.clone();
+    }
+
+    @Override
+    protected KTypeVTypeMap<KType, VType> getFrom(final KTypeVTypeMap<KType, VType> testMap) {
+        final KTypeVTypeReadMostlyHashMap<KType, VType> concreteClass = (KTypeVTypeReadMostlyHashMap<KType, VType>) (testMap);
+
+        return KTypeVTypeReadMostlyHashMap.from(concreteClass);
+    }
+
+    @Override
+    protected KTypeVTypeMap<KType, VType> getFromArrays(final KType[] keys, final VType[] values) {
+
+        return KTypeVTypeReadMostlyHashMap.from(Intrinsics.<KType[]> cast(keys),
+                Intrinsics.<VType[]> cast(values));
+    }
+
+    @Override
+    protected KTypeVTypeMap<KType, VType> getCopyConstructor(final KTypeVTypeMap<KType, VType> testMap) {
+        final KTypeVTypeReadMostlyHashMap<KType, VType> concreteClass = (KTypeVTypeReadMostlyHashMap<KType, VType>) (testMap);
+
+        return new KTypeVTypeReadMostlyHashMap<KType, VType>(concreteClass);
+    }
+
+    @Override
+    protected int getEntryPoolSize(final KTypeVTypeMap<KType, VType> testMap) {
+        final KTypeVTypeReadMostlyHashMap<KType, VType> concreteClass = (KTypeVTypeReadMostlyHashMap<KType, VType>) (testMap);
+
+        return concreteClass.entryIteratorPool.size();
+    }
+
+    @Override
+    protected int getKeysPoolSize(final KTypeCollection<KType> keys) {
+
+        final KTypeVTypeHashMap<KType, VType>.KeysCollection concreteClass = (KTypeVTypeHashMap<KType, VType>.KeysCollection) (keys);
+
+        return concreteClass.keyIteratorPool.size();
+    }
+
+    @Override
+    protected int getValuesPoolSize(final KTypeCollection<VType> values) {
+        final KTypeVTypeHashMap<KType, VType>.ValuesCollection concreteClass = (KTypeVTypeHashMap<KType, VType>.ValuesCollection) (values);
+
+        return concreteClass.valuesIteratorPool.size();
+    }
+
+    @Override
+    protected int getEntryPoolCapacity(final KTypeVTypeMap<KType, VType> testMap) {
+        final KTypeVTypeReadMostlyHashMap<KType, VType> concreteClass = (KTypeVTypeReadMostlyHashMap<KType, VType>) (testMap);
+
+        return concreteClass.entryIteratorPool.capacity();
+    }
+
+    @Override
+    protected int getKeysPoolCapacity(final KTypeCollection<KType> keys) {
+        final KTypeVTypeHashMap<KType, VType>.KeysCollection concreteClass = (KTypeVTypeHashMap<KType, VType>.KeysCollection) (keys);
+
+        return concreteClass.keyIteratorPool.capacity();
+    }
+
+    @Override
+    protected int getValuesPoolCapacity(final KTypeCollection<VType> values) {
+        final KTypeVTypeHashMap<KType, VType>.ValuesCollection concreteClass = (KTypeVTypeHashMap<KType, VType>.ValuesCollection) (values);
+
+        return concreteClass.valuesIteratorPool.capacity();
+    }
+
+    //////////////////////////////////////
+    /// Implementation-specific tests
+    /////////////////////////////////////
+
+    /* */
+    @Test
+    public void testConcurrentReadsDuringWrites() throws Throwable
+    {
+        final KTypeVTypeReadMostlyHashMap<KType, VType> map = new KTypeVTypeReadMostlyHashMap<KType, VType>(0);
+
+        final int nbStableKeys = 100;
+        final int nbVolatileKeys = 4000;
+        final int nbWriteBatch = 100;
+        final int nbReaders = 3;
+
+        //stable keys [0; nbStableKeys[, including the default key, never change
+        for (int i = 0; i < nbStableKeys; i++) {
+
+            map.put(cast(i), vcast(i));
+        }
+
+        final KType[] stableKeys = Intrinsics.<KType> newArray(nbStableKeys);
+
+        for (int i = 0; i < nbStableKeys; i++) {
+
+            stableKeys[i] = cast(i);
+        }
+
+        final Throwable[] failure = new Throwable[1];
+        final boolean[] done = new boolean[1];
+
+        final Thread[] readers = new Thread[nbReaders];
+
+        for (int t = 0; t < nbReaders; t++) {
+
+            readers[t] = new Thread() {
+
+                @Override
+                public void run() {
+
+                    final boolean[] found = new boolean[nbStableKeys];
+                    final VType[] values = Intrinsics.<VType> newArray(nbStableKeys);
+
+                    try {
+                        while (true) {
+
+                            synchronized (done) {
+
+                                if (done[0]) {
+                                    break;
+                                }
+                            }
+
+                            for (int i = 0; i < nbStableKeys; i++) {
+
+                                Assert.assertTrue(map.containsKey(cast(i)));
+                                Assert.assertEquals(i, vcastType(map.get(cast(i))));
+                            }
+
+                            Assert.assertEquals(nbStableKeys, map.containsKey(stableKeys, 0, nbStableKeys, found));
+                            Assert.assertEquals(nbStableKeys, map.getAll(stableKeys, 0, nbStableKeys, values));
+
+                            for (int i = 0; i < nbStableKeys; i++) {
+
+                                Assert.assertTrue(found[i]);
+                                Assert.assertEquals(i, vcastType(values[i]));
+                            }
+                        }
+                    } catch (final Throwable e) {
+
+                        synchronized (failure) {
+                            failure[0] = e;
+                        }
+                    }
+                }
+            };
+
+            readers[t].start();
+        }
+
+        //writer: grow the map through several rehashes by batches, then shrink it.
+        final KTypeVTypeHashMap<KType, VType> batch = new KTypeVTypeHashMap<KType, VType>(nbWriteBatch);
+
+        for (int round = 0; round < 3; round++) {
+
+            for (int i = nbStableKeys; i < nbStableKeys + nbVolatileKeys; i += nbWriteBatch) {
+
+                batch.clear();
+
+                for (int j = i; j < i + nbWriteBatch; j++) {
+
+                    batch.put(cast(j), vcast(j));
+                }
+
+                map.putAll(batch);
+            }
+
+            for (int i = nbStableKeys; i < nbStableKeys + nbVolatileKeys; i += nbWriteBatch) {
+
+                batch.clear();
+
+                for (int j = i; j < i + nbWriteBatch; j++) {
+
+                    batch.put(cast(j), vcast(j));
+                }
+
+                map.removeAll(batch.keys());
+            }
+        }
+
+        synchronized (done) {
+            done[0] = true;
+        }
+
+        for (final Thread reader : readers) {
+            reader.join();
+        }
+
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+
+        Assert.assertEquals(nbStableKeys, map.size());
+    }
+}
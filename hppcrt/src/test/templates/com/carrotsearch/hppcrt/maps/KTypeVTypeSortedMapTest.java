@@ -0,0 +1,420 @@
+package com.carrotsearch.hppcrt.maps;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.*;
+
+import com.carrotsearch.hppcrt.*;
+import com.carrotsearch.hppcrt.cursors.*;
+import com.carrotsearch.hppcrt.predicates.*;
+import com.carrotsearch.hppcrt.procedures.*;
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+
+/*! #import("com/carrotsearch/hppcrt/Intrinsics.java") !*/
+/**
+ * Tests for {@link KTypeVTypeSortedMap}.
+ */
+//only test a few representative types.
+/*! ${TemplateOptions.doNotGenerateKType("BYTE", "CHAR", "SHORT")} !*/
+/*! ${TemplateOptions.doNotGenerateVType("BYTE", "CHAR", "SHORT")} !*/
+/*! ${TemplateOptions.generatedAnnotation} !*/
+public class KTypeVTypeSortedMapTest<KType, VType> extends AbstractKTypeVTypeTest<KType, VType>
+{
+    /**
+     * Per-test fresh initialized instance.
+     */
+    protected KTypeVTypeSortedMap<KType, VType> map;
+
+    @Before
+    public void initialize() {
+
+        this.map = new KTypeVTypeSortedMap<KType, VType>();
+    }
+
+    /* */
+    @Test
+    public void testPutGetRemove()
+    {
+        Assert.assertTrue(this.map.isEmpty());
+
+        TestUtils.assertEquals2(this.map.getDefaultValue(), this.map.put(this.key3, this.value1));
+        TestUtils.assertEquals2(this.value1, this.map.put(this.key3, this.value2));
+        TestUtils.assertEquals2(this.value2, this.map.get(this.key3));
+
+        this.map.put(this.key1, this.value3);
+        this.map.put(this.key0, this.value4);
+
+        Assert.assertFalse(this.map.putIfAbsent(this.key1, this.value5));
+        Assert.assertTrue(this.map.putIfAbsent(this.key2, this.value5));
+
+        Assert.assertEquals(4, this.map.size());
+        Assert.assertEquals("[" + this.key0 + "=>" + this.value4 + ", " + this.key1 + "=>" + this.value3 + ", "
+                + this.key2 + "=>" + this.value5 + ", " + this.key3 + "=>" + this.value2 + "]", this.map.toString());
+
+        TestUtils.assertEquals2(this.value4, this.map.remove(this.key0));
+        TestUtils.assertEquals2(this.value3, this.map.remove(this.key1));
+        TestUtils.assertEquals2(this.map.getDefaultValue(), this.map.remove(this.key1));
+
+        Assert.assertEquals(2, this.map.size());
+        Assert.assertTrue(this.map.containsKey(this.key2));
+        Assert.assertFalse(this.map.containsKey(this.key1));
+
+        this.map.clear();
+
+        Assert.assertTrue(this.map.isEmpty());
+        Assert.assertFalse(this.map.containsKey(this.key2));
+        Assert.assertEquals("[]", this.map.toString());
+    }
+
+    /* */
+    @Test
+    public void testKeyQueries()
+    {
+        this.map.setDefaultKey(cast(-1));
+
+        TestUtils.assertEquals2(cast(-1), this.map.firstKey());
+        TestUtils.assertEquals2(cast(-1), this.map.lastKey());
+        TestUtils.assertEquals2(cast(-1), this.map.floorKey(cast(5)));
+
+        //keys 10, 20, ... 5000, spanning several leaves and levels
+        for (int i = 500; i >= 1; i--) {
+
+            this.map.put(cast(i * 10), vcast(i));
+        }
+
+        TestUtils.assertEquals2(cast(10), this.map.firstKey());
+        TestUtils.assertEquals2(cast(5000), this.map.lastKey());
+
+        for (int k = 0; k <= 5010; k++) {
+
+            final int floor = k < 10 ? -1 : Math.min(k / 10 * 10, 5000);
+            final int lower = k <= 10 ? -1 : Math.min((k - 1) / 10 * 10, 5000);
+            final int ceiling = k > 5000 ? -1 : Math.max((k + 9) / 10 * 10, 10);
+            final int higher = k >= 5000 ? -1 : Math.max((k + 10) / 10 * 10, 10);
+
+            TestUtils.assertEquals2(cast(floor), this.map.floorKey(cast(k)));
+            TestUtils.assertEquals2(cast(lower), this.map.lowerKey(cast(k)));
+            TestUtils.assertEquals2(cast(ceiling), this.map.ceilingKey(cast(k)));
+            TestUtils.assertEquals2(cast(higher), this.map.higherKey(cast(k)));
+        }
+    }
+
+    /* */
+    @Test
+    public void testIndexQueries()
+    {
+        this.map.setDefaultKey(cast(0));
+
+        Assert.assertEquals(-1, this.map.firstIndex());
+        Assert.assertEquals(-1, this.map.lastIndex());
+        Assert.assertEquals(-1, this.map.floorIndex(cast(5)));
+
+        //the default key is a key of the map: only the index tells a found key apart
+        this.map.put(this.map.getDefaultKey(), vcast(1));
+        this.map.put(cast(10), vcast(2));
+
+        Assert.assertEquals(this.map.firstIndex(), this.map.floorIndex(cast(5)));
+        TestUtils.assertEquals2(this.map.getDefaultKey(), this.map.keyAt(this.map.floorIndex(cast(5))));
+        Assert.assertEquals(1, vcastType(this.map.valueAt(this.map.floorIndex(cast(5)))));
+
+        Assert.assertEquals(-1, this.map.lowerIndex(this.map.getDefaultKey()));
+        Assert.assertEquals(-1, this.map.higherIndex(cast(10)));
+        Assert.assertEquals(this.map.lastIndex(), this.map.ceilingIndex(cast(5)));
+        TestUtils.assertEquals2(cast(10), this.map.keyAt(this.map.higherIndex(this.map.getDefaultKey())));
+        Assert.assertEquals(2, vcastType(this.map.valueAt(this.map.lastIndex())));
+
+        //-1, as returned when there is no such key
+        try {
+            this.map.keyAt(this.map.higherIndex(cast(10)));
+            Assert.fail();
+
+        } catch (final IndexOutOfBoundsException e) {
+
+            //expected
+        }
+
+        //past the entries of the leaf
+        try {
+            this.map.valueAt(this.map.lastIndex() + 1);
+            Assert.fail();
+
+        } catch (final IndexOutOfBoundsException e) {
+
+            //expected
+        }
+    }
+
+    /* */
+    @Test
+    public void testRangeIteration()
+    {
+        for (int i = 0; i < 1000; i++) {
+
+            this.map.put(cast(i * 2), vcast(i));
+        }
+
+        //[101; 201[ holds 102, 104, ... 200
+        final int[] count = new int[1];
+
+        this.map.forEach(new KTypeVTypeProcedure<KType, VType>() {
+
+            int expected = 102;
+
+            @Override
+            public void apply(final KType key, final VType value) {
+
+                Assert.assertEquals(this.expected, castType(key));
+                Assert.assertEquals(this.expected / 2, vcastType(value));
+                this.expected += 2;
+                count[0]++;
+            }
+        }, cast(101), cast(201));
+
+        Assert.assertEquals(50, count[0]);
+
+        //the pooled range iterator, from an existing key
+        int expected = 100;
+
+        for (final KTypeVTypeCursor<KType, VType> c : new Iterable<KTypeVTypeCursor<KType, VType>>() {
+
+            @Override
+            public Iterator<KTypeVTypeCursor<KType, VType>> iterator() {
+
+                return KTypeVTypeSortedMapTest.this.map.iterator(cast(100), cast(200));
+            }
+        }) {
+            Assert.assertEquals(expected, castType(c.key));
+            Assert.assertEquals(expected, castType(this.map.keys[c.index]));
+            expected += 2;
+        }
+
+        Assert.assertEquals(200, expected);
+
+        //empty ranges
+        Assert.assertFalse(this.map.iterator(cast(101), cast(102)).hasNext());
+        Assert.assertFalse(this.map.iterator(cast(5000), cast(6000)).hasNext());
+        Assert.assertFalse(this.map.iterator(cast(300), cast(100)).hasNext());
+
+        //predicate stops the iteration
+        count[0] = 0;
+
+        this.map.forEach(new KTypeVTypePredicate<KType, VType>() {
+
+            @Override
+            public boolean apply(final KType key, final VType value) {
+
+                count[0]++;
+                return castType(key) < 1000;
+            }
+        }, cast(900), cast(2000));
+
+        Assert.assertEquals(51, count[0]);
+
+        //the whole map, in order
+        expected = 0;
+
+        for (final KTypeVTypeCursor<KType, VType> c : this.map) {
+
+            Assert.assertEquals(expected, castType(c.key));
+            expected += 2;
+        }
+
+        Assert.assertEquals(2000, expected);
+    }
+
+    /* */
+    @Test
+    public void testAscendingInsertionsFillLeaves()
+    {
+        for (int i = 0; i < 100 * KTypeVTypeSortedMap.NODE_SIZE; i++) {
+
+            this.map.put(cast(i), vcast(i));
+        }
+
+        int leaves = 0;
+
+        for (int leaf = 0; leaf != -1; leaf = this.map.nextLeaves[leaf]) {
+
+            Assert.assertEquals(KTypeVTypeSortedMap.NODE_SIZE, this.map.leafSizes[leaf]);
+            leaves++;
+        }
+
+        Assert.assertEquals(100, leaves);
+    }
+
+    /* */
+    @Test
+    public void testAgainstTreeMap()
+    {
+        final Random rnd = RandomizedTest.getRandom();
+
+        final TreeMap<Integer, Integer> reference = new TreeMap<Integer, Integer>();
+
+        this.map.setDefaultKey(cast(-1));
+
+        final int keyRange = 1 + rnd.nextInt(50000);
+
+        for (int round = 0; round < 200000; round++) {
+
+            final int key = rnd.nextInt(keyRange);
+            final int value = rnd.nextInt(100);
+
+            switch (rnd.nextInt(5)) {
+
+                case 0:
+                case 1:
+                    if (reference.containsKey(key)) {
+                        Assert.assertEquals(reference.remove(key).intValue(), vcastType(this.map.remove(cast(key))));
+                    } else {
+                        TestUtils.assertEquals2(this.map.getDefaultValue(), this.map.remove(cast(key)));
+                    }
+                    break;
+                case 2:
+                    Assert.assertEquals(reference.containsKey(key), this.map.containsKey(cast(key)));
+                    assertKey(reference.floorKey(key), this.map.floorKey(cast(key)));
+                    assertKey(reference.lowerKey(key), this.map.lowerKey(cast(key)));
+                    assertKey(reference.ceilingKey(key), this.map.ceilingKey(cast(key)));
+                    assertKey(reference.higherKey(key), this.map.higherKey(cast(key)));
+                    assertIndex(reference.floorKey(key), this.map.floorIndex(cast(key)));
+                    assertIndex(reference.lowerKey(key), this.map.lowerIndex(cast(key)));
+                    assertIndex(reference.ceilingKey(key), this.map.ceilingIndex(cast(key)));
+                    assertIndex(reference.higherKey(key), this.map.higherIndex(cast(key)));
+                    break;
+                default:
+                    final Integer previous = reference.put(key, value);
+                    final VType previousValue = this.map.put(cast(key), vcast(value));
+                    if (previous != null) {
+                        Assert.assertEquals(previous.intValue(), vcastType(previousValue));
+                    }
+                    break;
+            }
+
+            Assert.assertEquals(reference.size(), this.map.size());
+
+            if (round % 20000 == 0) {
+
+                assertSameEntries(reference, this.map);
+            }
+        }
+
+        assertSameEntries(reference, this.map);
+
+        //range iteration
+        final int from = rnd.nextInt(keyRange);
+        final int to = from + rnd.nextInt(keyRange);
+
+        final Iterator<Map.Entry<Integer, Integer>> expected = reference.subMap(from, to).entrySet().iterator();
+
+        this.map.forEach(new KTypeVTypeProcedure<KType, VType>() {
+
+            @Override
+            public void apply(final KType key, final VType value) {
+
+                final Map.Entry<Integer, Integer> entry = expected.next();
+
+                Assert.assertEquals(entry.getKey().intValue(), castType(key));
+                Assert.assertEquals(entry.getValue().intValue(), vcastType(value));
+            }
+        }, cast(from), cast(to));
+
+        Assert.assertFalse(expected.hasNext());
+
+        //clone and equals
+        final KTypeVTypeSortedMap<KType, VType> cloned = this.map.clone();
+
+        Assert.assertEquals(this.map, cloned);
+        Assert.assertEquals(this.map.hashCode(), cloned.hashCode());
+
+        //empty the map, merging all the nodes
+        for (final Integer key : reference.keySet()) {
+
+            this.map.remove(cast(key));
+        }
+
+        Assert.assertTrue(this.map.isEmpty());
+        Assert.assertEquals(0, this.map.height);
+        Assert.assertFalse(this.map.iterator().hasNext());
+        TestUtils.assertEquals2(cast(-1), this.map.firstKey());
+
+        //the clone is independent
+        assertSameEntries(reference, cloned);
+
+        if (!reference.isEmpty()) {
+
+            Assert.assertFalse(this.map.equals(cloned));
+        }
+
+        //reusable after emptying it
+        for (final Map.Entry<Integer, Integer> entry : reference.entrySet()) {
+
+            this.map.put(cast(entry.getKey()), vcast(entry.getValue()));
+        }
+
+        assertSameEntries(reference, this.map);
+    }
+
+    /* */
+    @Test
+    public void testEqualsAndHashCode()
+    {
+        final KTypeVTypeSortedMap<KType, VType> other = KTypeVTypeSortedMap.newInstance();
+
+        for (int i = 0; i < 300; i++) {
+
+            this.map.put(cast(i), vcast(i));
+            other.put(cast(299 - i), vcast(299 - i));
+        }
+
+        Assert.assertEquals(this.map, other);
+        Assert.assertEquals(this.map.hashCode(), other.hashCode());
+
+        other.put(cast(5), vcast(6));
+        Assert.assertFalse(this.map.equals(other));
+
+        other.remove(cast(5));
+        Assert.assertFalse(this.map.equals(other));
+
+        final KTypeVTypeSortedMap<KType, VType> copy = new KTypeVTypeSortedMap<KType, VType>();
+        Assert.assertEquals(300, copy.putAll(this.map));
+        Assert.assertEquals(this.map, copy);
+    }
+
+    private void assertKey(final Integer expected, final KType actual) {
+
+        Assert.assertEquals(expected == null ? -1 : expected.intValue(), castType(actual));
+    }
+
+    private void assertIndex(final Integer expected, final int actual) {
+
+        if (expected == null) {
+
+            Assert.assertEquals(-1, actual);
+        } else {
+
+            Assert.assertEquals(expected.intValue(), castType(this.map.keyAt(actual)));
+            TestUtils.assertEquals2(this.map.get(cast(expected.intValue())), this.map.valueAt(actual));
+        }
+    }
+
+    /**
+     * Same entries in the same order, through the pooled iterator.
+     */
+    private void assertSameEntries(final TreeMap<Integer, Integer> reference, final KTypeVTypeSortedMap<KType, VType> map) {
+
+        final Iterator<Map.Entry<Integer, Integer>> expected = reference.entrySet().iterator();
+
+        for (final KTypeVTypeCursor<KType, VType> c : map) {
+
+            final Map.Entry<Integer, Integer> entry = expected.next();
+
+            Assert.assertEquals(entry.getKey().intValue(), castType(c.key));
+            Assert.assertEquals(entry.getValue().intValue(), vcastType(c.value));
+        }
+
+        Assert.assertFalse(expected.hasNext());
+        Assert.assertEquals(reference.size(), map.size());
+    }
+}
@@ -0,0 +1,222 @@
+package com.carrotsearch.hppcrt.maps;
+
+import java.util.Random;
+
+import org.junit.*;
+
+import com.carrotsearch.hppcrt.*;
+import com.carrotsearch.hppcrt.predicates.*;
+import com.carrotsearch.hppcrt.procedures.*;
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+
+/*! #import("com/carrotsearch/hppcrt/Intrinsics.java") !*/
+/**
+ * Tests for {@link KTypeVTypeSwissHashMap}.
+ */
+//only test a few representative types.
+/*! ${TemplateOptions.doNotGenerateKType("BYTE", "CHAR", "SHORT")} !*/
+/*! ${TemplateOptions.doNotGenerateVType("BYTE", "CHAR", "SHORT")} !*/
+/*! ${TemplateOptions.generatedAnnotation} !*/
+public class KTypeVTypeSwissHashMapTest<KType, VType> extends AbstractKTypeVTypeTest<KType, VType>
+{
+    /**
+     * Per-test fresh initialized instance.
+     */
+    protected KTypeVTypeSwissHashMap<KType, VType> map;
+
+    @Before
+    public void initialize() {
+
+        this.map = new KTypeVTypeSwissHashMap<KType, VType>();
+    }
+
+    /* */
+    @Test
+    public void testPutGetRemove()
+    {
+        Assert.assertTrue(this.map.isEmpty());
+
+        TestUtils.assertEquals2(this.map.getDefaultValue(), this.map.put(this.key1, this.value1));
+        TestUtils.assertEquals2(this.value1, this.map.put(this.key1, this.value2));
+        TestUtils.assertEquals2(this.value2, this.map.get(this.key1));
+
+        //the default key
+        Assert.assertFalse(this.map.containsKey(this.keyE));
+        TestUtils.assertEquals2(this.map.getDefaultValue(), this.map.put(this.keyE, this.value3));
+        Assert.assertTrue(this.map.containsKey(this.keyE));
+        TestUtils.assertEquals2(this.value3, this.map.get(this.keyE));
+
+        Assert.assertEquals(2, this.map.size());
+
+        Assert.assertFalse(this.map.putIfAbsent(this.key1, this.value5));
+        Assert.assertTrue(this.map.putIfAbsent(this.key2, this.value5));
+
+        TestUtils.assertEquals2(this.value3, this.map.remove(this.keyE));
+        TestUtils.assertEquals2(this.value2, this.map.remove(this.key1));
+        TestUtils.assertEquals2(this.map.getDefaultValue(), this.map.remove(this.key1));
+
+        Assert.assertEquals(1, this.map.size());
+        Assert.assertTrue(this.map.containsKey(this.key2));
+
+        this.map.clear();
+
+        Assert.assertTrue(this.map.isEmpty());
+        Assert.assertFalse(this.map.containsKey(this.key2));
+    }
+
+    /*! #if ($TemplateOptions.VTypePrimitive) !*/
+    /* */
+    @Test
+    public void testPutOrAddAndAddTo()
+    {
+        TestUtils.assertEquals2(this.value2, this.map.putOrAdd(this.key1, this.value2, this.value3));
+        TestUtils.assertEquals2(this.value5, this.map.putOrAdd(this.key1, this.value2, this.value3));
+
+        TestUtils.assertEquals2(this.value1, this.map.addTo(this.keyE, this.value1));
+        TestUtils.assertEquals2(this.value4, this.map.addTo(this.keyE, this.value3));
+
+        TestUtils.assertEquals2(this.value5, this.map.get(this.key1));
+        TestUtils.assertEquals2(this.value4, this.map.get(this.keyE));
+    }
+
+    /*! #end !*/
+
+    /* */
+    @Test
+    public void testAgainstHashMap()
+    {
+        final Random rnd = RandomizedTest.getRandom();
+
+        final KTypeVTypeHashMap<KType, VType> reference = new KTypeVTypeHashMap<KType, VType>();
+
+        for (int round = 0; round < 50000; round++) {
+
+            //restrict the key range to have hits, but large enough to trigger several rehashes
+            final KType key = cast(rnd.nextInt(10000));
+            final VType value = vcast(rnd.nextInt(100));
+
+            final int op = rnd.nextInt(4);
+
+            if (op == 0) {
+
+                TestUtils.assertEquals2(reference.remove(key), this.map.remove(key));
+            } else if (op == 1) {
+
+                Assert.assertEquals(reference.putIfAbsent(key, value), this.map.putIfAbsent(key, value));
+            } else {
+
+                TestUtils.assertEquals2(reference.put(key, value), this.map.put(key, value));
+            }
+
+            Assert.assertEquals(reference.size(), this.map.size());
+        }
+
+        assertSameMap(reference, this.map.toHashMap());
+
+        for (int i = 0; i < 20000; i++) {
+
+            Assert.assertEquals(reference.containsKey(cast(i)), this.map.containsKey(cast(i)));
+            TestUtils.assertEquals2(reference.get(cast(i)), this.map.get(cast(i)));
+        }
+
+        assertSameMap(reference, this.map.clone().toHashMap());
+    }
+
+    /* */
+    @Test
+    public void testTombstonesDoNotGrowBuffers()
+    {
+        for (int i = 1; i <= 100; i++) {
+
+            this.map.put(cast(i), this.value1);
+        }
+
+        //always distinct keys, so that every put() needs a fresh slot while the size stays constant:
+        //after a first rehash at most, the tombstones are purged in place.
+        int bufferSize = 0;
+
+        for (int i = 101; i < 100000; i++) {
+
+            this.map.put(cast(i), this.value2);
+            this.map.remove(cast(i - 100));
+
+            if (i == 10000) {
+
+                bufferSize = this.map.keys.length;
+            } else if (i > 10000) {
+
+                Assert.assertEquals(bufferSize, this.map.keys.length);
+            }
+        }
+
+        Assert.assertEquals(100, this.map.size());
+
+        for (int i = 100000 - 100; i < 100000; i++) {
+
+            Assert.assertTrue(this.map.containsKey(cast(i)));
+        }
+    }
+
+    /* */
+    @Test
+    public void testForEach()
+    {
+        for (int i = 0; i < 100; i++) {
+
+            this.map.put(cast(i), vcast(i % 10));
+        }
+
+        final int[] count = new int[1];
+
+        this.map.forEach(new KTypeVTypeProcedure<KType, VType>() {
+
+            @Override
+            public void apply(final KType key, final VType value) {
+
+                Assert.assertEquals(castType(key) % 10, vcastType(value));
+                count[0]++;
+            }
+        });
+
+        Assert.assertEquals(100, count[0]);
+
+        count[0] = 0;
+
+        this.map.forEach(new KTypeVTypePredicate<KType, VType>() {
+
+            @Override
+            public boolean apply(final KType key, final VType value) {
+
+                count[0]++;
+                return count[0] < 10;
+            }
+        });
+
+        Assert.assertEquals(10, count[0]);
+    }
+
+    /* */
+    @SuppressWarnings("unchecked")
+    @Test(expected = IllegalArgumentException.class)
+    public void testPutAllDifferentLengths()
+    {
+        this.map.putAll(newArray(this.key1, this.key2), newvArray(this.value1));
+    }
+
+    /* */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testFromAndToString()
+    {
+        final KTypeVTypeSwissHashMap<KType, VType> map = KTypeVTypeSwissHashMap.from(
+                newArray(this.key1, this.key2),
+                newvArray(this.value1, this.value2));
+
+        Assert.assertEquals(2, map.size());
+        TestUtils.assertEquals2(this.value2, map.get(this.key2));
+
+        map.remove(this.key2);
+
+        Assert.assertEquals("[" + this.key1 + "=>" + this.value1 + "]", map.toString());
+    }
+}
@@ -1,10 +1,16 @@
 package com.carrotsearch.hppcrt.sets;
 
+import java.io.*;
+import java.nio.channels.Channels;
+import java.util.Random;
+
 import org.junit.*;
 
 import com.carrotsearch.hppcrt.*;
+import com.carrotsearch.hppcrt.cursors.*;
 
 import com.carrotsearch.hppcrt.TestUtils;
+import com.carrotsearch.randomizedtesting.RandomizedTest;
 
 /*! #import("com/carrotsearch/hppcrt/Intrinsics.java") !*/
 /**
@@ -121,4 +127,302 @@ public class KTypeHashSetTest<KType> extends AbstractKTypeHashSetTest<KType>
         Assert.assertEquals(1, testSet.add(this.keyE, this.key1));
         Assert.assertEquals(3, testSet.size());
     }
+
+    /* */
+    @Test
+    public void testWriteToReadFrom() throws IOException
+    {
+        final Random rnd = RandomizedTest.getRandom();
+
+        final KTypeHashSet<KType> set = new KTypeHashSet<KType>();
+
+        for (int i = 0; i < 5000; i++) {
+
+            set.add(cast(rnd.nextInt(10000)));
+        }
+
+        //the default key is part of the binary form
+        set.add(this.keyE);
+
+        //through channels
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        set.writeTo(Channels.newChannel(bytes));
+
+        final KTypeHashSet<KType> fromChannel = KTypeHashSet.readFrom(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())));
+        Assert.assertEquals(set, fromChannel);
+        Assert.assertEquals(set.size(), fromChannel.size());
+
+        //through an ObjectOutput, which is also a DataOutput
+        final ByteArrayOutputStream objectBytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(objectBytes);
+        set.writeTo(out);
+        out.close();
+
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(objectBytes.toByteArray()));
+        final KTypeHashSet<KType> fromData = KTypeHashSet.readFrom(in);
+        in.close();
+
+        Assert.assertEquals(set, fromData);
+        Assert.assertTrue(fromData.contains(this.keyE));
+    }
+
+    /* */
+    @Test
+    public void testBatchedContains()
+    {
+        final Random rnd = RandomizedTest.getRandom();
+
+        final KTypeHashSet<KType> set = new KTypeHashSet<KType>();
+
+        for (int i = 0; i < 1000; i++) {
+
+            set.add(cast(rnd.nextInt(2000)));
+        }
+
+        set.add(this.keyE);
+
+        //more than one batch, with a batch partially filled, and an offset
+        final int offset = 3;
+        final KType[] queries = Intrinsics.<KType> newArray(offset + 5 * HashContainers.LOOKUP_BATCH_SIZE + 7);
+        final boolean[] results = new boolean[queries.length];
+
+        for (int i = offset; i < queries.length; i++) {
+
+            queries[i] = (i % 50 == 0) ? this.keyE : cast(rnd.nextInt(4000));
+        }
+
+        final int found = set.contains(queries, offset, queries.length - offset, results);
+
+        int expectedFound = 0;
+
+        for (int i = 0; i < offset; i++) {
+
+            Assert.assertFalse(results[i]);
+        }
+
+        for (int i = offset; i < queries.length; i++) {
+
+            Assert.assertEquals(set.contains(queries[i]), results[i]);
+
+            if (results[i]) {
+                expectedFound++;
+            }
+        }
+
+        Assert.assertEquals(expectedFound, found);
+
+        //empty batch
+        Assert.assertEquals(0, set.contains(queries, 0, 0, results));
+
+        //range out of the results
+        try {
+            set.contains(queries, offset, queries.length - offset, new boolean[queries.length - 1]);
+            Assert.fail();
+
+        } catch (final IndexOutOfBoundsException e) {
+
+            //expected
+        }
+    }
+
+    /* */
+    @Test
+    public void testIncrementalRehash()
+    {
+        final Random rnd = RandomizedTest.getRandom();
+
+        final KTypeHashSet<KType> reference = new KTypeHashSet<KType>();
+        final KTypeHashSet<KType> incremental = new KTypeHashSet<KType>();
+
+        incremental.setIncrementalRehash(true);
+
+        boolean rehashSeen = false;
+
+        for (int round = 0; round < 50000; round++) {
+
+            //the key range grows, so that the buffers expand several times
+            final KType key = cast(rnd.nextInt(1 + round / 2));
+
+            switch (rnd.nextInt(4)) {
+
+                case 0:
+                    Assert.assertEquals(reference.remove(key), incremental.remove(key));
+                    break;
+                case 1:
+                    Assert.assertEquals(reference.contains(key), incremental.contains(key));
+                    break;
+                case 2:
+                    //batched lookups migrate incrementally too
+                    final KType[] queries = Intrinsics.<KType> newArray(3);
+                    queries[0] = key;
+                    queries[1] = cast(rnd.nextInt(1 + round / 2));
+                    queries[2] = cast(rnd.nextInt(1 + round / 2));
+
+                    final boolean[] found = new boolean[3];
+
+                    incremental.contains(queries, 0, 3, found);
+
+                    for (int i = 0; i < 3; i++) {
+
+                        Assert.assertEquals(reference.contains(queries[i]), found[i]);
+                    }
+                    break;
+                default:
+                    Assert.assertEquals(reference.add(key), incremental.add(key));
+                    break;
+            }
+
+            Assert.assertEquals(reference.size(), incremental.size());
+
+            if (incremental.rehashKeys != null) {
+
+                rehashSeen = true;
+
+                //whole set operations complete the rehash, check one in a while
+                if (rnd.nextInt(100) == 0) {
+
+                    Assert.assertEquals(reference, incremental.clone());
+                    Assert.assertNull(incremental.rehashKeys);
+                }
+            }
+        }
+
+        Assert.assertTrue(rehashSeen);
+        Assert.assertEquals(reference, incremental);
+    }
+
+    /* */
+    @Test
+    public void testShrink()
+    {
+        final KTypeHashSet<KType> set = new KTypeHashSet<KType>();
+
+        for (int i = 0; i < 2000; i++) {
+
+            set.add(cast(i));
+        }
+
+        final int peakLength = set.keys.length;
+
+        for (int i = 10; i < 2000; i++) {
+
+            set.remove(cast(i));
+        }
+
+        final KTypeHashSet<KType> reference = set.clone();
+
+        //no shrinking by default
+        Assert.assertEquals(peakLength, set.keys.length);
+
+        //shrinking to a larger capacity does nothing
+        set.shrink(2000);
+        Assert.assertEquals(peakLength, set.keys.length);
+
+        set.shrink(100);
+        Assert.assertEquals(HashContainers.minBufferSize(100, set.loadFactor), set.keys.length);
+        Assert.assertEquals(reference, set);
+
+        set.trimToSize();
+        Assert.assertEquals(HashContainers.minBufferSize(set.size(), set.loadFactor), set.keys.length);
+        Assert.assertEquals(reference, set);
+    }
+
+    /* */
+    @Test
+    public void testShrinkFactor()
+    {
+        final KTypeHashSet<KType> set = new KTypeHashSet<KType>();
+        final KTypeHashSet<KType> reference = new KTypeHashSet<KType>();
+
+        set.setShrinkFactor(HashContainers.MAX_SHRINK_FACTOR);
+        Assert.assertEquals(HashContainers.MAX_SHRINK_FACTOR, set.clone().getShrinkFactor(), 0.0);
+
+        for (int i = 0; i < 2000; i++) {
+
+            set.add(cast(i));
+            reference.add(cast(i));
+        }
+
+        final int peakLength = set.keys.length;
+
+        for (int i = 0; i < 2000; i++) {
+
+            Assert.assertEquals(reference.remove(cast(i)), set.remove(cast(i)));
+
+            //memory tracks the live size
+            if (set.keys.length > HashContainers.MIN_HASH_ARRAY_LENGTH) {
+
+                Assert.assertTrue(set.size() >= HashContainers.shrinkAtCount(set.keys.length, set.loadFactor,
+                        HashContainers.MAX_SHRINK_FACTOR));
+            }
+        }
+
+        Assert.assertEquals(reference, set);
+        Assert.assertTrue(peakLength > set.keys.length);
+
+        //bulk removals shrink at once
+        for (int i = 0; i < 2000; i++) {
+
+            set.add(cast(i));
+        }
+
+        final KTypeHashSet<KType> removed = set.clone();
+        removed.remove(cast(1));
+
+        set.removeAll(removed);
+
+        Assert.assertTrue(set.size() <= 2);
+        Assert.assertEquals(HashContainers.minBufferSize(set.size(), set.loadFactor), set.keys.length);
+
+        try {
+            set.setShrinkFactor(-1);
+            Assert.fail();
+        } catch (final IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    /* */
+    @Test
+    public void testBulkRemovalRebuildsProbeChains()
+    {
+        final Random rnd = RandomizedTest.getRandom();
+
+        final KTypeHashSet<KType> set = new KTypeHashSet<KType>();
+        final KTypeHashSet<KType> victims = new KTypeHashSet<KType>();
+
+        for (int i = 0; i < 20000; i++) {
+
+            final KType key = cast(rnd.nextInt());
+
+            set.add(key);
+
+            if (rnd.nextBoolean()) {
+
+                victims.add(key);
+            }
+        }
+
+        //reference: one by one removals
+        final KTypeHashSet<KType> reference = set.clone();
+
+        for (final KTypeCursor<KType> c : victims) {
+
+            reference.remove(c.value);
+        }
+
+        Assert.assertEquals(victims.size(), set.removeAll(victims));
+
+        Assert.assertEquals(reference, set);
+
+        for (final KTypeCursor<KType> c : reference) {
+
+            Assert.assertTrue(set.contains(c.value));
+        }
+
+        for (final KTypeCursor<KType> c : victims) {
+
+            Assert.assertFalse(set.contains(c.value));
+        }
+    }
 }
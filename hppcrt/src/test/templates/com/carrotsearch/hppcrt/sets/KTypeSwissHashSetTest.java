@@ -0,0 +1,151 @@
+package com.carrotsearch.hppcrt.sets;
+
+import java.util.Random;
+
+import org.junit.*;
+
+import com.carrotsearch.hppcrt.*;
+import com.carrotsearch.hppcrt.procedures.*;
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+
+/*! #import("com/carrotsearch/hppcrt/Intrinsics.java") !*/
+/**
+ * Unit tests for {@link KTypeSwissHashSet}.
+ */
+//only test a few representative types.
+/*! ${TemplateOptions.doNotGenerateKType("BYTE", "CHAR", "SHORT")} !*/
+/*! ${TemplateOptions.generatedAnnotation} !*/
+public class KTypeSwissHashSetTest<KType> extends AbstractKTypeTest<KType>
+{
+    /**
+     * Per-test fresh initialized instance.
+     */
+    protected KTypeSwissHashSet<KType> set;
+
+    @Before
+    public void initialize() {
+
+        this.set = new KTypeSwissHashSet<KType>();
+    }
+
+    /* */
+    @Test
+    public void testAddContainsRemove()
+    {
+        Assert.assertTrue(this.set.isEmpty());
+
+        Assert.assertTrue(this.set.add(this.key1));
+        Assert.assertFalse(this.set.add(this.key1));
+        Assert.assertTrue(this.set.add(this.keyE));
+        Assert.assertFalse(this.set.add(this.keyE));
+
+        Assert.assertEquals(2, this.set.size());
+        Assert.assertTrue(this.set.contains(this.key1));
+        Assert.assertTrue(this.set.contains(this.keyE));
+        Assert.assertFalse(this.set.contains(this.key2));
+
+        Assert.assertTrue(this.set.remove(this.keyE));
+        Assert.assertFalse(this.set.remove(this.keyE));
+        Assert.assertTrue(this.set.remove(this.key1));
+        Assert.assertFalse(this.set.remove(this.key1));
+
+        Assert.assertTrue(this.set.isEmpty());
+
+        Assert.assertEquals(3, this.set.add(this.key1, this.key2, this.key3, this.key1));
+
+        this.set.clear();
+
+        Assert.assertTrue(this.set.isEmpty());
+        Assert.assertFalse(this.set.contains(this.key2));
+    }
+
+    /* */
+    @Test
+    public void testAgainstHashSet()
+    {
+        final Random rnd = RandomizedTest.getRandom();
+
+        final KTypeHashSet<KType> reference = new KTypeHashSet<KType>();
+
+        for (int round = 0; round < 50000; round++) {
+
+            //restrict the key range to have hits, but large enough to trigger several rehashes
+            final KType key = cast(rnd.nextInt(10000));
+
+            if (rnd.nextInt(3) == 0) {
+
+                Assert.assertEquals(reference.remove(key), this.set.remove(key));
+            } else {
+
+                Assert.assertEquals(reference.add(key), this.set.add(key));
+            }
+
+            Assert.assertEquals(reference.size(), this.set.size());
+        }
+
+        for (int i = 0; i < 20000; i++) {
+
+            Assert.assertEquals(reference.contains(cast(i)), this.set.contains(cast(i)));
+        }
+
+        final KTypeSwissHashSet<KType> cloned = this.set.clone();
+
+        Assert.assertEquals(reference.size(), cloned.size());
+
+        for (final KType key : this.set.toArray()) {
+
+            Assert.assertTrue(reference.contains(key));
+            Assert.assertTrue(cloned.contains(key));
+        }
+    }
+
+    /* */
+    @Test
+    public void testTombstonesDoNotGrowBuffers()
+    {
+        for (int i = 1; i <= 100; i++) {
+
+            this.set.add(cast(i));
+        }
+
+        //always distinct keys, so that every add() needs a fresh slot while the size stays constant:
+        //after a first rehash at most, the tombstones are purged in place.
+        int bufferSize = 0;
+
+        for (int i = 101; i < 100000; i++) {
+
+            this.set.add(cast(i));
+            this.set.remove(cast(i - 100));
+
+            if (i == 10000) {
+
+                bufferSize = this.set.keys.length;
+            } else if (i > 10000) {
+
+                Assert.assertEquals(bufferSize, this.set.keys.length);
+            }
+        }
+
+        Assert.assertEquals(100, this.set.size());
+    }
+
+    /* */
+    @Test
+    public void testForEach()
+    {
+        this.set.add(this.keyE, this.key1, this.key2, this.key3);
+
+        final int[] sum = new int[1];
+
+        this.set.forEach(new KTypeProcedure<KType>() {
+
+            @Override
+            public void apply(final KType key) {
+
+                sum[0] += castType(key);
+            }
+        });
+
+        Assert.assertEquals(6, sum[0]);
+    }
+}
@@ -2,15 +2,21 @@ package com.carrotsearch.hppcrt.sorting;
 
 import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Assert;
 import org.junit.Test;
 
 import com.carrotsearch.hppcrt.*;
+import com.carrotsearch.hppcrt.lists.*;
 import com.carrotsearch.hppcrt.strategies.*;
 import com.carrotsearch.randomizedtesting.RandomizedTest;
 import com.carrotsearch.randomizedtesting.annotations.Repeat;
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakLingering;
 
+/*! #import("com/carrotsearch/hppcrt/Intrinsics.java") !*/
 /**
  * Unit tests for {@link KTypeSort}.
  */
@@ -23,9 +29,14 @@ public class KTypeSortTest<KType> extends AbstractKTypeTest<KType>
 
     enum Algorithm
     {
-        QUICKSORT, QUICKSORT_COMPARATOR
+        QUICKSORT, QUICKSORT_COMPARATOR, RADIXSORT, PARALLEL_QUICKSORT, PARALLEL_QUICKSORT_COMPARATOR, ADAPTIVE_SORT
     }
 
+    /**
+     * Executor of the parallel algorithms
+     */
+    private ExecutorService executor;
+
     public KTypeSortTest()
     {
         //nothing
@@ -43,6 +54,452 @@ public class KTypeSortTest<KType> extends AbstractKTypeTest<KType>
         sortCertification(Algorithm.QUICKSORT_COMPARATOR);
     }
 
+    /*! #if ($TemplateOptions.KTypePrimitive) !*/
+    @Test
+    public void testRadixsort()
+    {
+        sortCertification(Algorithm.RADIXSORT);
+    }
+
+    @Test
+    public void testRadixsortAgainstArraysSort()
+    {
+        final Random rnd = RandomizedTest.getRandom();
+
+        //reused across rounds, so left dirty by the previous ones
+        final int[] counts = new int[KTypeSort.RADIX_COUNTS_LENGTH];
+
+        for (int round = 0; round < 100; round++) {
+
+            final int size = rnd.nextInt(3000);
+            final int lowerRange = rnd.nextInt(size + 1);
+            final int upperRange = lowerRange + rnd.nextInt(size - lowerRange + 1);
+
+            final KType[] table = Intrinsics.<KType> newArray(size);
+
+            for (int i = 0; i < size; i++) {
+
+                //full range values, including negative ones
+                table[i] = cast(rnd.nextBoolean() ? rnd.nextInt() : rnd.nextInt(100) - 50);
+            }
+
+            final KType[] expected = copy(table);
+            Arrays.sort(expected, lowerRange, upperRange);
+
+            //into a larger buffer, whose extra contents is irrelevant
+            final KType[] buffer = Intrinsics.<KType> newArray(upperRange - lowerRange + rnd.nextInt(10));
+
+            if (rnd.nextBoolean()) {
+
+                KTypeSort.radixsort(table, lowerRange, upperRange, buffer, counts);
+            } else {
+
+                KTypeSort.radixsort(table, lowerRange, upperRange, buffer);
+            }
+
+            for (int i = 0; i < size; i++) {
+
+                Assert.assertEquals(castType(expected[i]), castType(table[i]));
+            }
+        }
+    }
+
+    @Test
+    public void testRadixsortBadScratch()
+    {
+        final KType[] table = Intrinsics.<KType> newArray(KTypeSort.MIN_LENGTH_FOR_RADIX_SORT);
+
+        try {
+            KTypeSort.radixsort(table, 0, table.length, table);
+            Assert.fail();
+
+        } catch (final IllegalArgumentException e) {
+
+            //expected
+        }
+
+        try {
+            KTypeSort.radixsort(table, 0, table.length, Intrinsics.<KType> newArray(table.length), new int[KTypeSort.RADIX_COUNTS_LENGTH - 1]);
+            Assert.fail();
+
+        } catch (final IllegalArgumentException e) {
+
+            //expected
+        }
+    }
+
+    @Test
+    public void testAdaptiveSort()
+    {
+        sortCertification(Algorithm.ADAPTIVE_SORT);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAdaptiveSortBufferIsTable()
+    {
+        final KType[] table = Intrinsics.<KType> newArray(100);
+
+        KTypeSort.adaptiveSort(table, 0, table.length, table);
+    }
+
+    @Test
+    public void testAdaptiveSortOnRuns()
+    {
+        final Random rnd = RandomizedTest.getRandom();
+
+        for (int round = 0; round < 200; round++) {
+
+            final int size = rnd.nextInt(round < 150 ? 500 : 50000);
+            final int lowerRange = rnd.nextInt(size + 1);
+            final int upperRange = lowerRange + rnd.nextInt(size - lowerRange + 1);
+
+            final KType[] table = Intrinsics.<KType> newArray(size);
+
+            //ascending or descending runs of random lengths, possibly with a random tail
+            final int maxRunLength = 1 + rnd.nextInt(1000);
+            final int tail = rnd.nextBoolean() ? rnd.nextInt(size / 10 + 1) : 0;
+
+            int i = 0;
+
+            while (i < size - tail) {
+
+                final int runLength = Math.min(1 + rnd.nextInt(maxRunLength), size - tail - i);
+                final boolean descending = rnd.nextInt(4) == 0;
+                int value = rnd.nextInt(100);
+
+                for (int j = 0; j < runLength; j++) {
+
+                    table[i + (descending ? runLength - 1 - j : j)] = cast(value);
+                    value += rnd.nextInt(3);
+                }
+
+                i += runLength;
+            }
+
+            while (i < size) {
+
+                table[i++] = cast(rnd.nextInt(1000));
+            }
+
+            final KType[] expected = copy(table);
+            KTypeSort.quicksort(expected, lowerRange, upperRange);
+
+            //the smallest allowed buffer
+            final KType[] buffer = Intrinsics.<KType> newArray((upperRange - lowerRange) / 2);
+
+            KTypeSort.adaptiveSort(table, lowerRange, upperRange, buffer);
+
+            for (int j = 0; j < size; j++) {
+
+                TestUtils.assertEquals2(expected[j], table[j]);
+            }
+        }
+
+        try {
+            KTypeSort.adaptiveSort(Intrinsics.<KType> newArray(100), 0, 100, Intrinsics.<KType> newArray(49));
+            Assert.fail();
+
+        } catch (final IllegalArgumentException e) {
+
+            //expected: too small buffer
+        }
+    }
+
+    /*! #end !*/
+
+    /*! #if ($TemplateOptions.isKType("float", "double"))
+    @Test
+    public void testRadixsortSpecialValues()
+    {
+        final Random rnd = RandomizedTest.getRandom();
+
+        final KType[] special = newArray((KType) (0.0 / 0.0), (KType) -0.0, (KType) 0.0, (KType) (1.0 / 0.0), (KType) (-1.0 / 0.0),
+                (KType) -1.5, (KType) 2.5, (KType) 1e-40, (KType) -1e-40);
+
+        final KType[] table = Intrinsics.<KType> newArray(1000);
+
+        for (int i = 0; i < table.length; i++) {
+
+            table[i] = special[rnd.nextInt(special.length)];
+        }
+
+        final KType[] expected = copy(table);
+        Arrays.sort(expected);
+
+        KTypeSort.radixsort(table);
+
+        for (int i = 0; i < table.length; i++) {
+
+            Assert.assertEquals(Double.doubleToLongBits(expected[i]), Double.doubleToLongBits(table[i]));
+        }
+    }
+    #end !*/
+
+    @Test
+    @ThreadLeakLingering(linger = 1000)
+    public void testParallelQuicksort() throws Exception
+    {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            this.executor = executor;
+
+            sortCertification(Algorithm.PARALLEL_QUICKSORT);
+            sortCertification(Algorithm.PARALLEL_QUICKSORT_COMPARATOR);
+
+        } finally {
+
+            this.executor = null;
+
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    @ThreadLeakLingering(linger = 1000)
+    public void testParallelQuicksortAgainstSequential() throws Exception
+    {
+        final Random rnd = RandomizedTest.getRandom();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(1 + rnd.nextInt(4));
+
+        try {
+            for (int round = 0; round < 10; round++) {
+
+                final int size = rnd.nextInt(200000);
+                final int lowerRange = rnd.nextInt(size + 1);
+                final int upperRange = lowerRange + rnd.nextInt(size - lowerRange + 1);
+
+                final KType[] table = Intrinsics.<KType> newArray(size);
+
+                for (int i = 0; i < size; i++) {
+
+                    table[i] = cast(rnd.nextBoolean() ? rnd.nextInt() : rnd.nextInt(100));
+                }
+
+                final KType[] expected = copy(table);
+                KTypeSort.quicksort(expected, lowerRange, upperRange);
+
+                //array
+                final KType[] array = copy(table);
+                KTypeSort.parallelQuicksort(array, lowerRange, upperRange, executor);
+
+                //container
+                final KTypeArrayList<KType> list = new KTypeArrayList<KType>();
+                list.add(table, 0, size);
+                KTypeSort.parallelQuicksort(list, lowerRange, upperRange, executor);
+
+                for (int i = 0; i < size; i++) {
+
+                    TestUtils.assertEquals2(expected[i], array[i]);
+                    TestUtils.assertEquals2(expected[i], list.get(i));
+                }
+            }
+
+            //a shut down executor rejects the tasks, which then run in the calling thread
+            executor.shutdown();
+
+            final KType[] table = createArrayWithComparableRandomData(50000, rnd.nextLong());
+
+            KTypeSort.parallelQuicksort(table, executor);
+            assertOrder(table);
+
+        } finally {
+
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    @ThreadLeakLingering(linger = 1000)
+    public void testParallelQuicksortComparatorFailure() throws Exception
+    {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        final KType[] table = createArrayWithComparableRandomData(100000, RandomizedTest.randomLong());
+
+        try {
+            KTypeSort.parallelQuicksort(table, new KTypeComparator<KType>() {
+
+                @Override
+                public int compare(final KType e1, final KType e2)
+                {
+                    throw new IllegalStateException("failing comparator");
+                }
+            }, executor);
+
+            Assert.fail();
+
+        } catch (final IllegalStateException e) {
+
+            //expected: the failure of a task is rethrown to the caller
+        } finally {
+
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testSelectAndPartialSort()
+    {
+        final Random rnd = RandomizedTest.getRandom();
+
+        //natural ordering comparator
+        final KTypeComparator<KType> comp = new KTypeComparator<KType>() {
+
+            @Override
+            public int compare(final KType e1, final KType e2)
+            {
+                return Intrinsics.<KType> compareUnchecked(e1, e2);
+            }
+        };
+
+        for (int round = 0; round < 300; round++) {
+
+            final int size = 1 + rnd.nextInt(round < 250 ? 200 : 20000);
+            final int lowerRange = rnd.nextInt(size);
+            final int upperRange = lowerRange + 1 + rnd.nextInt(size - lowerRange);
+
+            //few distinct values or many
+            final int valueRange = rnd.nextBoolean() ? 1 + rnd.nextInt(5) : 100000;
+
+            final KType[] table = Intrinsics.<KType> newArray(size);
+
+            for (int i = 0; i < size; i++) {
+
+                table[i] = cast(rnd.nextInt(valueRange));
+            }
+
+            final KType[] sorted = copy(table);
+            KTypeSort.quicksort(sorted, lowerRange, upperRange);
+
+            final boolean useComparator = rnd.nextBoolean();
+
+            //A) select
+            final int k = RandomizedTest.between(lowerRange, upperRange - 1);
+            final KType[] selected = copy(table);
+
+            final KType kth = useComparator ? KTypeSort.select(selected, lowerRange, upperRange, k, comp) :
+                KTypeSort.select(selected, lowerRange, upperRange, k);
+
+            TestUtils.assertEquals2(sorted[k], kth);
+            assertPartitioned(table, selected, lowerRange, upperRange, new int[] { k });
+
+            //B) multi-select
+            final int[] ranks = new int[rnd.nextInt(10)];
+
+            for (int i = 0; i < ranks.length; i++) {
+
+                ranks[i] = RandomizedTest.between(lowerRange, upperRange - 1);
+            }
+
+            Arrays.sort(ranks);
+
+            final KType[] multiSelected = copy(table);
+
+            if (useComparator) {
+
+                KTypeSort.select(multiSelected, lowerRange, upperRange, ranks, comp);
+            } else {
+
+                KTypeSort.select(multiSelected, lowerRange, upperRange, ranks);
+            }
+
+            for (final int rank : ranks) {
+
+                TestUtils.assertEquals2(sorted[rank], multiSelected[rank]);
+            }
+
+            assertPartitioned(table, multiSelected, lowerRange, upperRange, ranks);
+
+            //C) partial sort
+            final int partial = RandomizedTest.between(lowerRange, upperRange);
+            final KType[] partiallySorted = copy(table);
+
+            if (useComparator) {
+
+                KTypeSort.partialSort(partiallySorted, lowerRange, upperRange, partial, comp);
+            } else {
+
+                KTypeSort.partialSort(partiallySorted, lowerRange, upperRange, partial);
+            }
+
+            for (int i = lowerRange; i < partial; i++) {
+
+                TestUtils.assertEquals2(sorted[i], partiallySorted[i]);
+            }
+
+            assertPartitioned(table, partiallySorted, lowerRange, upperRange, partial > lowerRange ? new int[] { partial - 1 } : new int[0]);
+        }
+    }
+
+    @Test
+    public void testSelectRanges()
+    {
+        final KType[] table = newArray(this.k3, this.k1, this.k2);
+
+        TestUtils.assertEquals2(this.k2, KTypeSort.select(table, 1));
+        KTypeSort.partialSort(table, 3);
+        assertOrder(table);
+
+        try {
+            KTypeSort.select(table, 0, 2, 2);
+            Assert.fail();
+
+        } catch (final IndexOutOfBoundsException e) {
+
+            //expected
+        }
+
+        try {
+            KTypeSort.select(table, 0, 3, new int[] { 2, 1 });
+            Assert.fail();
+
+        } catch (final IllegalArgumentException e) {
+
+            //expected
+        }
+    }
+
+    /**
+     * Check that selected is a permutation of original in [lowerRange, upperRange[, left as is outside,
+     * and that each of the ascending ranks has no greater elements before it and no smaller after it.
+     */
+    private void assertPartitioned(final KType[] original, final KType[] selected, final int lowerRange, final int upperRange, final int[] ranks)
+    {
+        final KType[] expected = copy(original);
+        KTypeSort.quicksort(expected, lowerRange, upperRange);
+
+        final KType[] actual = copy(selected);
+        KTypeSort.quicksort(actual, lowerRange, upperRange);
+
+        for (int i = 0; i < original.length; i++) {
+
+            TestUtils.assertEquals2(expected[i], actual[i]);
+
+            if (i < lowerRange || i >= upperRange) {
+
+                TestUtils.assertEquals2(original[i], selected[i]);
+            }
+        }
+
+        for (final int rank : ranks) {
+
+            for (int i = lowerRange; i < rank; i++) {
+
+                Assert.assertTrue(Intrinsics.<KType> compareUnchecked(selected[i], selected[rank]) <= 0);
+            }
+
+            for (int i = rank + 1; i < upperRange; i++) {
+
+                Assert.assertTrue(Intrinsics.<KType> compareUnchecked(selected[i], selected[rank]) >= 0);
+            }
+        }
+    }
+
     @Test
     public void testRandomizedSort()
     {
@@ -294,6 +751,33 @@ public class KTypeSortTest<KType> extends AbstractKTypeTest<KType>
             KTypeSort.quicksort(order, comp);
             assertOrder(order);
             break;
+
+        case RADIXSORT:
+            /*! #if ($TemplateOptions.KTypePrimitive) !*/
+            KTypeSort.radixsort(order);
+            assertOrder(order);
+            /*! #end !*/
+            break;
+
+        case ADAPTIVE_SORT:
+            /*! #if ($TemplateOptions.KTypePrimitive) !*/
+            KTypeSort.adaptiveSort(order);
+            assertOrder(order);
+            /*! #end !*/
+            break;
+
+        case PARALLEL_QUICKSORT:
+            final KType[] parallelComparable = newArray(order);
+
+            KTypeSort.parallelQuicksort(parallelComparable, this.executor);
+            assertOrder(parallelComparable);
+            break;
+
+        case PARALLEL_QUICKSORT_COMPARATOR:
+            KTypeSort.parallelQuicksort(order, comp, this.executor);
+            assertOrder(order);
+            break;
+
         default:
             Assert.fail();
             throw new RuntimeException();
@@ -0,0 +1,175 @@
+package com.carrotsearch.hppcrt.sorting;
+
+import java.util.Random;
+
+import org.junit.*;
+
+import com.carrotsearch.hppcrt.*;
+import com.carrotsearch.hppcrt.strategies.*;
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+
+/*! #import("com/carrotsearch/hppcrt/Intrinsics.java") !*/
+/**
+ * Tests for {@link KTypeVTypeSort}.
+ */
+//only test a few representative types.
+/*! ${TemplateOptions.doNotGenerateKType("BYTE", "CHAR", "SHORT", "FLOAT")} !*/
+/*! ${TemplateOptions.doNotGenerateVType("BYTE", "CHAR", "SHORT", "DOUBLE")} !*/
+/*! ${TemplateOptions.generatedAnnotation} !*/
+public class KTypeVTypeSortTest<KType, VType> extends AbstractKTypeVTypeTest<KType, VType>
+{
+    /**
+     * Inverse natural ordering comparator
+     */
+    public final KTypeComparator<KType> INVERSE_COMPARATOR = new KTypeComparator<KType>() {
+
+        @Override
+        public int compare(final KType e1, final KType e2)
+        {
+            return -Intrinsics.<KType> compareUnchecked(e1, e2);
+        }
+    };
+
+    /* */
+    @Test
+    public void testCoSort()
+    {
+        final KType[] keys = newArray(this.k5, this.k2, this.k9, this.k1, this.k7);
+        final VType[] values = newvArray(this.value5, this.value2, this.value9, this.value1, this.value7);
+
+        KTypeVTypeSort.quicksort(keys, values);
+
+        for (int i = 0; i < keys.length; i++) {
+
+            Assert.assertEquals(vcastType(values[i]), castType(keys[i]));
+        }
+
+        Assert.assertEquals(1, castType(keys[0]));
+        Assert.assertEquals(9, castType(keys[4]));
+
+        KTypeVTypeSort.quicksort(keys, values, this.INVERSE_COMPARATOR);
+
+        for (int i = 0; i < keys.length; i++) {
+
+            Assert.assertEquals(vcastType(values[i]), castType(keys[i]));
+        }
+
+        Assert.assertEquals(9, castType(keys[0]));
+        Assert.assertEquals(1, castType(keys[4]));
+    }
+
+    /* */
+    @Test
+    public void testCheckRanges()
+    {
+        final KType[] keys = newArray(this.k1, this.k2, this.k3);
+        final VType[] values = newvArray(this.value1, this.value2);
+
+        try {
+            KTypeVTypeSort.quicksort(keys, values);
+            Assert.fail();
+
+        } catch (final IndexOutOfBoundsException e) {
+
+            //expected: values too short
+        }
+
+        //a range within both arrays is fine
+        KTypeVTypeSort.quicksort(keys, 0, 2, values);
+
+        try {
+            KTypeVTypeSort.quicksort(keys, 2, 1, values);
+            Assert.fail();
+
+        } catch (final IllegalArgumentException e) {
+
+            //expected
+        }
+    }
+
+    /* */
+    @Test
+    public void testAgainstOriginalPairs()
+    {
+        final Random rnd = RandomizedTest.getRandom();
+
+        for (int round = 0; round < 200; round++) {
+
+            final int size = rnd.nextInt(round < 190 ? 300 : 50000);
+            final int lowerRange = rnd.nextInt(size + 1);
+            final int upperRange = lowerRange + rnd.nextInt(size - lowerRange + 1);
+
+            //few distinct keys or many
+            final int keyRange = rnd.nextBoolean() ? 1 + rnd.nextInt(10) : 100000;
+
+            final KType[] keys = Intrinsics.<KType> newArray(size);
+            final VType[] values = Intrinsics.<VType> newArray(size);
+
+            for (int i = 0; i < size; i++) {
+
+                keys[i] = cast(rnd.nextInt(keyRange));
+                values[i] = vcast(rnd.nextInt(100));
+            }
+
+            final KType[] originalKeys = copy(keys);
+            final VType[] originalValues = Intrinsics.<VType> newArray(size);
+            System.arraycopy(values, 0, originalValues, 0, size);
+
+            //a third array tracks the original positions
+            final int[] positions = new int[size];
+
+            for (int i = 0; i < size; i++) {
+
+                positions[i] = i;
+            }
+
+            final IndirectSwapper positionsSwapper = new IndirectSwapper() {
+
+                @Override
+                public void swap(final int indexA, final int indexB)
+                {
+                    final int tmp = positions[indexA];
+                    positions[indexA] = positions[indexB];
+                    positions[indexB] = tmp;
+                }
+            };
+
+            final boolean inverse = rnd.nextBoolean();
+
+            if (inverse) {
+
+                KTypeVTypeSort.quicksort(keys, lowerRange, upperRange, values, this.INVERSE_COMPARATOR, positionsSwapper);
+            } else {
+
+                KTypeVTypeSort.quicksort(keys, lowerRange, upperRange, values, positionsSwapper);
+            }
+
+            final boolean[] seen = new boolean[size];
+
+            for (int i = 0; i < size; i++) {
+
+                final int position = positions[i];
+
+                //outside the range, nothing moves
+                if (i < lowerRange || i >= upperRange) {
+
+                    Assert.assertEquals(i, position);
+                }
+
+                Assert.assertTrue(position >= lowerRange && position < upperRange || position == i);
+                Assert.assertFalse(seen[position]);
+                seen[position] = true;
+
+                TestUtils.assertEquals2(originalKeys[position], keys[i]);
+                TestUtils.assertEquals2(originalValues[position], values[i]);
+
+                if (i > lowerRange && i < upperRange) {
+
+                    final int order = Intrinsics.<KType> compareUnchecked(keys[i - 1], keys[i]);
+
+                    Assert.assertTrue(inverse ? order >= 0 : order <= 0);
+                }
+            }
+        }
+    }
+}